@@ -75,6 +75,21 @@ public class DL4JSystemProperties {
      */
     public static final String CRASH_DUMP_OUTPUT_DIRECTORY_PROPERTY = "org.deeplearning4j.crash.reporting.directory";
 
+    /**
+     * Applicability: deeplearning4j-nn<br>
+     * Description: If set to true, the LSTM and GravesLSTM layers use the native CPU helper (CpuLSTMHelper, based on
+     * the fused "lstmLayer" libnd4j ops) when the ops are available in the native library. Default: false
+     */
+    public static final String CPU_LSTM_HELPER_ENABLED_PROPERTY = "org.deeplearning4j.helpers.cpu.lstm.enabled";
+
+    /**
+     * Applicability: deeplearning4j-nn<br>
+     * Description: If set to true, the ConvolutionLayer uses the native CPU helper (CpuConvolutionHelper, based on the
+     * "conv2d_cpu" libnd4j ops, with Winograd and direct convolution) when the ops are available in the native library.
+     * Default: false
+     */
+    public static final String CPU_CONVOLUTION_HELPER_ENABLED_PROPERTY = "org.deeplearning4j.helpers.cpu.conv.enabled";
+
     /**
      * Applicability: deeplearning4j-ui_2.xx<br>
      * Description: The DL4J training UI (StatsListener + UIServer.getInstance().attach(ss)) will subsample the number
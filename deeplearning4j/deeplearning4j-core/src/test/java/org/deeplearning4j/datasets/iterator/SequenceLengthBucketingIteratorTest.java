@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.datasets.iterator;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SequenceLengthBucketingIteratorTest extends BaseDL4JTest {
+
+    @Test
+    public void testBucketing() {
+        int nIn = 3;
+        int nOut = 2;
+        int maxLength = 20;
+        int minibatch = 10;
+        int numBatches = 5;
+
+        //Examples padded to max length, with feature and label masks. Example id is stored in features[0,0,0]
+        Random r = new Random(12345);
+        List<DataSet> list = new ArrayList<>();
+        int[] lengths = new int[minibatch * numBatches];
+        for (int b = 0; b < numBatches; b++) {
+            INDArray features = Nd4j.rand(new int[] {minibatch, nIn, maxLength});
+            INDArray labels = Nd4j.rand(new int[] {minibatch, nOut, maxLength});
+            INDArray mask = Nd4j.zeros(minibatch, maxLength);
+            for (int i = 0; i < minibatch; i++) {
+                int id = b * minibatch + i;
+                lengths[id] = r.nextInt(maxLength) + 1;
+                mask.get(NDArrayIndex.point(i), NDArrayIndex.interval(0, lengths[id])).assign(1.0);
+                features.putScalar(new int[] {i, 0, 0}, id);
+            }
+            list.add(new DataSet(features, labels, mask, mask.dup()));
+        }
+
+        SequenceLengthBucketingIterator iter =
+                        new SequenceLengthBucketingIterator(new ExistingDataSetIterator(list), 4, 5, 10, 15);
+        assertEquals(4, iter.batch());
+
+        for (int epoch = 0; epoch < 2; epoch++) {
+            Set<Integer> seen = new HashSet<>();
+            while (iter.hasNext()) {
+                DataSet ds = iter.next();
+                int n = ds.numExamples();
+                assertTrue(n >= 1 && n <= 4);
+
+                long batchLength = ds.getFeatures().size(2);
+                int bucket = iter.bucketFor(batchLength);
+                long prevLength = Long.MAX_VALUE;
+                for (int i = 0; i < n; i++) {
+                    int id = (int) ds.getFeatures().getDouble(i, 0, 0);
+                    assertTrue(seen.add(id));
+
+                    //All examples in the minibatch come from the same bucket, longest first
+                    long length = SequenceLengthBucketingIterator.sequenceLength(ds.get(i));
+                    assertEquals(lengths[id], length);
+                    assertEquals(bucket, iter.bucketFor(length));
+                    assertTrue(length <= prevLength);
+                    if (i == 0)
+                        assertEquals(batchLength, length);
+                    prevLength = length;
+
+                    INDArray expMask = Nd4j.zeros(1, batchLength);
+                    expMask.get(NDArrayIndex.all(), NDArrayIndex.interval(0, length)).assign(1.0);
+                    assertEquals(expMask, ds.getFeaturesMaskArray().getRow(i));
+                    assertEquals(expMask, ds.getLabelsMaskArray().getRow(i));
+                }
+            }
+            assertEquals(lengths.length, seen.size());
+            iter.reset();
+        }
+    }
+
+    @Test
+    public void testNoMasks() {
+        //Without masks, each example has the full time series length: examples are batched by that
+        List<DataSet> list = new ArrayList<>();
+        for (int length : new int[] {3, 8, 4, 9, 2}) {
+            list.add(new DataSet(Nd4j.rand(new int[] {1, 2, length}), Nd4j.rand(1, 3)));
+        }
+
+        SequenceLengthBucketingIterator iter =
+                        new SequenceLengthBucketingIterator(new ExistingDataSetIterator(list), 2, 5);
+
+        //Lengths 3, 4 fill bucket 0 first; then 8, 9 fill bucket 1; 2 is returned last
+        DataSet ds = iter.next();
+        assertArrayEquals(new long[] {2, 2, 4}, ds.getFeatures().shape());
+        assertArrayEquals(new long[] {2, 4}, ds.getFeaturesMaskArray().shape());
+        assertEquals(Nd4j.create(new double[] {1, 1, 1, 0}), ds.getFeaturesMaskArray().getRow(1));
+        assertArrayEquals(new long[] {2, 3}, ds.getLabels().shape());
+
+        ds = iter.next();
+        assertArrayEquals(new long[] {2, 2, 9}, ds.getFeatures().shape());
+
+        ds = iter.next();
+        assertArrayEquals(new long[] {1, 2, 2}, ds.getFeatures().shape());
+        assertNull(ds.getFeaturesMaskArray());
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testZeroLengthExamples() {
+        //Fully masked example (length 0) should not be dropped
+        INDArray features = Nd4j.rand(new int[] {3, 2, 4});
+        INDArray mask = Nd4j.create(new double[][] {{1, 1, 1, 0}, {0, 0, 0, 0}, {1, 1, 0, 0}});
+        List<DataSet> list = new ArrayList<>();
+        list.add(new DataSet(features, Nd4j.rand(3, 3), mask, null));
+
+        SequenceLengthBucketingIterator iter =
+                        new SequenceLengthBucketingIterator(new ExistingDataSetIterator(list), 4, 5);
+        DataSet ds = iter.next();
+        assertFalse(iter.hasNext());
+        assertEquals(3, ds.numExamples());
+        assertArrayEquals(new long[] {3, 2, 3}, ds.getFeatures().shape());
+        assertEquals(Nd4j.create(new double[] {1, 1, 0}), ds.getFeaturesMaskArray().getRow(1));
+        assertEquals(Nd4j.zeros(1, 3), ds.getFeaturesMaskArray().getRow(2));
+        assertEquals(0, SequenceLengthBucketingIterator.sequenceLength(ds.get(2)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBoundaries() {
+        new SequenceLengthBucketingIterator(new ExistingDataSetIterator(new ArrayList<DataSet>()), 2, 10, 5);
+    }
+}
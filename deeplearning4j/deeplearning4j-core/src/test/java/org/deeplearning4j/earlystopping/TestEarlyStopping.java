@@ -515,6 +515,94 @@ public class TestEarlyStopping extends BaseDL4JTest {
         assertEquals(1, listener.onCompletionCallCount);
     }
 
+    @Test
+    public void testAsyncScoreCalculation() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345)
+                        .optimizationAlgo(OptimizationAlgorithm.STOCHASTIC_GRADIENT_DESCENT)
+                        .updater(new Sgd(0.01)).weightInit(WeightInit.XAVIER).list()
+                        .layer(0, new OutputLayer.Builder().nIn(4).nOut(3)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                        .pretrain(false).backprop(true).build();
+
+        Map<Integer, Double> syncScores = null;
+        for (boolean async : new boolean[] {false, true}) {
+            MultiLayerNetwork net = new MultiLayerNetwork(conf);
+            net.init();
+
+            //Score calculation must use a separate iterator to the training data when async
+            DataSetIterator trainIter = new IrisDataSetIterator(150, 150);
+            DataSetIterator testIter = new IrisDataSetIterator(150, 150);
+            EarlyStoppingConfiguration<MultiLayerNetwork> esConf =
+                            new EarlyStoppingConfiguration.Builder<MultiLayerNetwork>()
+                                            .epochTerminationConditions(new MaxEpochsTerminationCondition(5))
+                                            .scoreCalculator(new DataSetLossCalculator(testIter, true))
+                                            .asyncScoreCalculation(async)
+                                            .modelSaver(new InMemoryModelSaver<MultiLayerNetwork>()).build();
+
+            LoggingEarlyStoppingListener listener = new LoggingEarlyStoppingListener();
+            IEarlyStoppingTrainer<MultiLayerNetwork> trainer = new EarlyStoppingTrainer(esConf, net, trainIter, listener);
+            EarlyStoppingResult<MultiLayerNetwork> result = trainer.fit();
+            System.out.println(result);
+
+            assertEquals(EarlyStoppingResult.TerminationReason.EpochTerminationCondition, result.getTerminationReason());
+            assertEquals(5, result.getScoreVsEpoch().size());
+            assertEquals(5, listener.onEpochCallCount);
+            assertEquals(1, listener.onCompletionCallCount);
+
+            //Best model must correspond to the best score, even though it was scored on a copy
+            double bestScore = new DataSetLossCalculator(testIter, true).calculateScore(result.getBestModel());
+            assertEquals(result.getBestModelScore(), bestScore, 1e-6);
+
+            if (!async) {
+                assertEquals(5, result.getTotalEpochs());
+                syncScores = result.getScoreVsEpoch();
+            } else {
+                //Termination is applied one epoch late; scores for each epoch should be unchanged
+                assertEquals(6, result.getTotalEpochs());
+                for (int i = 0; i < 5; i++) {
+                    assertEquals(syncScores.get(i), result.getScoreVsEpoch().get(i), 1e-6);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testParallelDataSetLossCalculator() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345)
+                        .updater(new Sgd(0.1)).weightInit(WeightInit.XAVIER).list()
+                        .layer(0, new DenseLayer.Builder().nIn(4).nOut(10).activation(Activation.TANH).build())
+                        .layer(1, new OutputLayer.Builder().nIn(10).nOut(3).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                        .pretrain(false).backprop(true).build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        DataSetIterator iter = new IrisDataSetIterator(10, 150);
+        for (boolean average : new boolean[] {false, true}) {
+            ScoreCalculator<Model> parallel = new ParallelDataSetLossCalculator(iter, average, 4);
+            for (int i = 0; i < 3; i++) {
+                double exp = new DataSetLossCalculator(iter, average).calculateScore(net);
+                double act = parallel.calculateScore(net);
+                assertEquals(exp, act, 1e-5 * Math.abs(exp));
+
+                //Parameters of the copies should be updated on each call
+                net.fit(new IrisDataSetIterator(150, 150));
+            }
+        }
+
+        //Use in early stopping (also asynchronously):
+        EarlyStoppingConfiguration<MultiLayerNetwork> esConf =
+                        new EarlyStoppingConfiguration.Builder<MultiLayerNetwork>()
+                                        .epochTerminationConditions(new MaxEpochsTerminationCondition(3))
+                                        .scoreCalculator(new ParallelDataSetLossCalculator(iter, true, 2))
+                                        .asyncScoreCalculation(true).build();
+        EarlyStoppingResult<MultiLayerNetwork> result =
+                        new EarlyStoppingTrainer(esConf, net, new IrisDataSetIterator(150, 150)).fit();
+        assertEquals(3, result.getScoreVsEpoch().size());
+        assertEquals(new DataSetLossCalculator(iter, true).calculateScore(result.getBestModel()),
+                        result.getBestModelScore(), 1e-5);
+    }
+
     private static class LoggingEarlyStoppingListener implements EarlyStoppingListener<MultiLayerNetwork> {
 
         private static Logger log = LoggerFactory.getLogger(LoggingEarlyStoppingListener.class);
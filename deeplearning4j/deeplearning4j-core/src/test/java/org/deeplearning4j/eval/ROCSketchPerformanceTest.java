@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.eval;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.BaseDL4JTest;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.random.impl.BernoulliDistribution;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+/**
+ * Accuracy, memory and time of sketch mode ROC ({@link ROC#sketch(int)}) for a range of compression values, compared to
+ * exact mode ROC. Memory figures are the size of the stored predictions (exact) or centroids (sketch)
+ */
+@Slf4j
+@Ignore
+public class ROCSketchPerformanceTest extends BaseDL4JTest {
+    private static final int MINIBATCH = 10000;
+    private static final int[] COMPRESSION = {50, 100, 200, 500};
+
+    @Test
+    public void testSketchVsExact() {
+        for (int numMinibatches : new int[] {10, 100, 1000}) {
+            Nd4j.getRandom().setSeed(12345);
+            ROC exact = new ROC(0);
+            ROC[] sketches = new ROC[COMPRESSION.length];
+            for (int i = 0; i < COMPRESSION.length; i++) {
+                sketches[i] = ROC.sketch(COMPRESSION[i]);
+            }
+            long exactTime = 0;
+            long[] sketchTime = new long[COMPRESSION.length];
+
+            for (int m = 0; m < numMinibatches; m++) {
+                INDArray labels = Nd4j.getExecutioner()
+                                .exec(new BernoulliDistribution(Nd4j.createUninitialized(MINIBATCH, 1), 0.1));
+                INDArray predictions = Transforms.sigmoid(Nd4j.randn(MINIBATCH, 1).addi(labels.mul(2.0)).muli(3.0),
+                                false);
+
+                long start = System.nanoTime();
+                exact.eval(labels, predictions);
+                exactTime += System.nanoTime() - start;
+                for (int i = 0; i < COMPRESSION.length; i++) {
+                    start = System.nanoTime();
+                    sketches[i].eval(labels, predictions);
+                    sketchTime[i] += System.nanoTime() - start;
+                }
+            }
+
+            long start = System.nanoTime();
+            double auc = exact.calculateAUC();
+            double auprc = exact.calculateAUCPR();
+            exactTime += System.nanoTime() - start;
+            long exactBytes = exact.getProbAndLabel().length() * exact.getProbAndLabel().data().getElementSize();
+            log.info("{} examples, exact: AUC={}, AUPRC={}, time {} ms, memory {} kB", numMinibatches * MINIBATCH,
+                            auc, auprc, exactTime / 1000000, exactBytes / 1024);
+
+            for (int i = 0; i < COMPRESSION.length; i++) {
+                start = System.nanoTime();
+                double sketchAuc = sketches[i].calculateAUC();
+                double sketchAuprc = sketches[i].calculateAUCPR();
+                sketchTime[i] += System.nanoTime() - start;
+                int numCentroids = sketches[i].getPositiveSketch().numCentroids()
+                                + sketches[i].getNegativeSketch().numCentroids();
+                //Centroids: mean and weight. Buffers: value and weight, 5 x compression per sketch
+                long sketchBytes = 16L * numCentroids + 2 * 16L * 5 * COMPRESSION[i];
+                log.info("    compression {}: AUC error {}, AUPRC error {}, time {} ms, {} centroids, memory {} kB",
+                                COMPRESSION[i], Math.abs(sketchAuc - auc), Math.abs(sketchAuprc - auprc),
+                                sketchTime[i] / 1000000, numCentroids, sketchBytes / 1024);
+            }
+        }
+    }
+}
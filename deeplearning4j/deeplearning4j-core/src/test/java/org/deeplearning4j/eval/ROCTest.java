@@ -36,6 +36,7 @@ import org.nd4j.linalg.dataset.api.preprocessor.NormalizerStandardize;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
+import org.nd4j.linalg.ops.transforms.Transforms;
 
 import java.util.*;
 
@@ -1050,4 +1051,114 @@ public class ROCTest extends BaseDL4JTest {
         }
     }
 
+
+    @Test
+    public void testRocSketchSmallDataExact(){
+        //With few examples, every value has its own centroid: sketch mode should match exact mode
+        Nd4j.getRandom().setSeed(12345);
+        INDArray labels = Nd4j.getExecutioner().exec(new BernoulliDistribution(Nd4j.createUninitialized(100, 1), 0.3));
+        INDArray predictions = Nd4j.rand(100, 1);
+
+        ROC exact = new ROC(0);
+        ROC sketch = ROC.sketch(200);
+        exact.eval(labels, predictions);
+        sketch.eval(labels, predictions);
+
+        assertTrue(sketch.isSketch());
+        assertEquals(exact.getCountActualPositive(), sketch.getCountActualPositive());
+        assertEquals(exact.getCountActualNegative(), sketch.getCountActualNegative());
+        assertEquals(exact.calculateAUC(), sketch.calculateAUC(), 1e-6);
+        assertEquals(exact.calculateAUCPR(), sketch.calculateAUCPR(), 1e-6);
+    }
+
+    @Test
+    public void testRocSketchLarge(){
+        //Skewed predictions, as for a well-trained classifier: most of the curve is determined by the tails
+        Nd4j.getRandom().setSeed(12345);
+        ROC exact = new ROC(0);
+        ROC sketch = ROC.sketch(200);
+        ROC sketch1 = ROC.sketch(200);
+        ROC sketch2 = ROC.sketch(200);
+        for( int i=0; i<20; i++ ){
+            INDArray labels = Nd4j.getExecutioner().exec(new BernoulliDistribution(Nd4j.createUninitialized(5000, 1), 0.1));
+            INDArray z = Nd4j.randn(5000, 1).addi(labels.mul(2.0)).muli(3.0);
+            INDArray predictions = Transforms.sigmoid(z, false);
+
+            exact.eval(labels, predictions);
+            sketch.eval(labels, predictions);
+            (i % 2 == 0 ? sketch1 : sketch2).eval(labels, predictions);
+        }
+
+        double aucExact = exact.calculateAUC();
+        double auprcExact = exact.calculateAUCPR();
+        assertEquals(aucExact, sketch.calculateAUC(), 1e-3);
+        assertEquals(auprcExact, sketch.calculateAUCPR(), 2e-3);
+
+        //Bounded memory: number of centroids independent of the number of examples
+        assertTrue(sketch.getPositiveSketch().numCentroids() <= 400);
+        assertTrue(sketch.getNegativeSketch().numCentroids() <= 400);
+
+        sketch1.merge(sketch2);
+        assertEquals(100000, sketch1.getCountActualPositive() + sketch1.getCountActualNegative());
+        assertEquals(exact.getCountActualPositive(), sketch1.getCountActualPositive());
+        assertEquals(aucExact, sketch1.calculateAUC(), 1e-3);
+        assertEquals(auprcExact, sketch1.calculateAUCPR(), 2e-3);
+    }
+
+    @Test
+    public void testRocSketchJsonAndMerge(){
+        Nd4j.getRandom().setSeed(12345);
+        int nOut = 4;
+        ROC roc = ROC.sketch(500);
+        ROCBinary rocBinary = ROCBinary.sketch(500);
+        ROCMultiClass rocMultiClass = ROCMultiClass.sketch(500);
+        ROCBinary exactBinary = new ROCBinary();
+        ROCMultiClass exactMultiClass = new ROCMultiClass();
+
+        Random r = new Random(12345);
+        for( int i=0; i<10; i++ ){
+            INDArray labels = Nd4j.zeros(20, nOut);
+            for( int j=0; j<20; j++ ){
+                labels.putScalar(j, r.nextInt(nOut), 1.0 );
+            }
+            INDArray out = Nd4j.rand(20, nOut);
+            out.diviColumnVector(out.sum(1));
+
+            roc.eval(labels.getColumn(0), out.getColumn(0));
+            rocBinary.eval(labels, out);
+            rocMultiClass.eval(labels, out);
+            exactBinary.eval(labels, out);
+            exactMultiClass.eval(labels, out);
+        }
+
+        for( int i=0; i<nOut; i++ ){
+            assertEquals(exactBinary.calculateAUC(i), rocBinary.calculateAUC(i), 1e-6);
+            assertEquals(exactMultiClass.calculateAUC(i), rocMultiClass.calculateAUC(i), 1e-6);
+        }
+        assertTrue(rocMultiClass.stats().contains("Sketch"));
+
+        //JSON round trip: sketches are stored, so deserialized instances can still be merged
+        ROC fromJson = ROC.fromJson(roc.toJson(), ROC.class);
+        assertTrue(fromJson.isSketch());
+        assertEquals(roc.calculateAUC(), fromJson.calculateAUC(), 1e-6);
+
+        //Merging duplicates every value: the curve is unchanged, other than smoothing of the merged centroids
+        ROC copy = ROC.fromJson(roc.toJson(), ROC.class);
+        fromJson.merge(copy);
+        assertEquals(2 * roc.getCountActualPositive(), fromJson.getCountActualPositive());
+        assertEquals(2 * roc.getCountActualNegative(), fromJson.getCountActualNegative());
+        assertEquals(roc.calculateAUC(), fromJson.calculateAUC(), 2e-3);
+
+        ROCMultiClass mcFromJson = ROCMultiClass.fromJson(rocMultiClass.toJson(), ROCMultiClass.class);
+        for( int i=0; i<nOut; i++ ){
+            assertEquals(rocMultiClass.calculateAUC(i), mcFromJson.calculateAUC(i), 1e-6);
+        }
+
+        try {
+            roc.merge(new ROC(0));
+            fail("Expected exception");
+        } catch (UnsupportedOperationException e){
+            assertTrue(e.getMessage().contains("sketch"));
+        }
+    }
 }
@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.gradientcheck;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.api.OptimizationAlgorithm;
+import org.deeplearning4j.nn.api.layers.IOutputLayer;
+import org.deeplearning4j.nn.conf.CacheMode;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.nn.conf.dropout.Dropout;
+import org.deeplearning4j.nn.conf.distribution.NormalDistribution;
+import org.deeplearning4j.nn.conf.graph.ElementWiseVertex;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.memory.MemoryUseMode;
+import org.deeplearning4j.nn.conf.memory.NetworkMemoryReport;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.NoOp;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Gradient checks for training with activation checkpointing (activations recomputed during backprop), for
+ * MultiLayerNetwork and ComputationGraph
+ */
+public class ActivationCheckpointGradientCheckTests extends BaseDL4JTest {
+
+    private static final boolean PRINT_RESULTS = true;
+    private static final boolean RETURN_ON_FIRST_FAILURE = false;
+    private static final double DEFAULT_EPS = 1e-6;
+    private static final double DEFAULT_MAX_REL_ERROR = 1e-3;
+    private static final double DEFAULT_MIN_ABS_ERROR = 1e-8;
+
+    static {
+        Nd4j.setDataType(DataBuffer.Type.DOUBLE);
+    }
+
+    @Test
+    public void testGradientMLN() {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray input = Nd4j.rand(5, 4);
+        INDArray labels = Nd4j.zeros(5, 3);
+        for (int i = 0; i < 5; i++) {
+            labels.putScalar(i, i % 3, 1.0);
+        }
+
+        for (WorkspaceMode wsm : WorkspaceMode.values()) {
+            for (int[] checkpoints : new int[][] {{1, 3}, {0}, {4}, {0, 1, 2, 3, 4}}) {
+                MultiLayerNetwork net = getMLN(wsm, checkpoints);
+
+                String msg = "workspaceMode=" + wsm + ", checkpoints=" + Arrays.toString(checkpoints);
+                if (PRINT_RESULTS) {
+                    System.out.println(msg);
+                }
+                boolean gradOK = GradientCheckUtil.checkGradients(net, DEFAULT_EPS, DEFAULT_MAX_REL_ERROR,
+                                DEFAULT_MIN_ABS_ERROR, PRINT_RESULTS, RETURN_ON_FIRST_FAILURE, input, labels);
+                assertTrue(msg, gradOK);
+            }
+        }
+    }
+
+    @Test
+    public void testGradientGraph() {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray input = Nd4j.rand(5, 4);
+        INDArray labels1 = Nd4j.zeros(5, 3);
+        INDArray labels2 = Nd4j.rand(5, 2);
+        for (int i = 0; i < 5; i++) {
+            labels1.putScalar(i, i % 3, 1.0);
+        }
+
+        //"d1" as a checkpoint: the skip connection from "d0" to "add" crosses a segment boundary
+        for (WorkspaceMode wsm : WorkspaceMode.values()) {
+            for (String[] checkpoints : new String[][] {{"d1"}, {"d0", "add"}, {"d0", "d1", "d2", "add"}}) {
+                ComputationGraph graph = getGraph(wsm, checkpoints);
+
+                String msg = "workspaceMode=" + wsm + ", checkpoints=" + Arrays.toString(checkpoints);
+                if (PRINT_RESULTS) {
+                    System.out.println(msg);
+                }
+                boolean gradOK = GradientCheckUtil.checkGradients(graph, DEFAULT_EPS, DEFAULT_MAX_REL_ERROR,
+                                DEFAULT_MIN_ABS_ERROR, PRINT_RESULTS, RETURN_ON_FIRST_FAILURE, new INDArray[] {input},
+                                new INDArray[] {labels1, labels2});
+                assertTrue(msg, gradOK);
+            }
+        }
+    }
+
+    @Test
+    public void testSameAsWithoutCheckpoints() {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray input = Nd4j.rand(5, 4);
+        INDArray labels1 = Nd4j.zeros(5, 3);
+        INDArray labels2 = Nd4j.rand(5, 2);
+        for (int i = 0; i < 5; i++) {
+            labels1.putScalar(i, i % 3, 1.0);
+        }
+
+        MultiLayerNetwork net = getMLN(WorkspaceMode.ENABLED, null);
+        MultiLayerNetwork netCheckpoints = getMLN(WorkspaceMode.ENABLED, 1, 3);
+        netCheckpoints.setParams(net.params());
+        net.setInput(input);
+        net.setLabels(labels1);
+        net.computeGradientAndScore();
+        netCheckpoints.setInput(input);
+        netCheckpoints.setLabels(labels1);
+        netCheckpoints.computeGradientAndScore();
+        assertEquals(net.score(), netCheckpoints.score(), 1e-10);
+        assertEquals(net.gradient().gradient(), netCheckpoints.gradient().gradient());
+
+        ComputationGraph graph = getGraph(WorkspaceMode.ENABLED);
+        ComputationGraph graphCheckpoints = getGraph(WorkspaceMode.ENABLED, "d1");
+        graphCheckpoints.setParams(graph.params());
+        graph.setInputs(input);
+        graph.setLabels(labels1, labels2);
+        graph.computeGradientAndScore();
+        graphCheckpoints.setInputs(input);
+        graphCheckpoints.setLabels(labels1, labels2);
+        graphCheckpoints.computeGradientAndScore();
+        assertEquals(graph.score(), graphCheckpoints.score(), 1e-10);
+        assertEquals(graph.gradient().gradient(), graphCheckpoints.gradient().gradient());
+    }
+
+    @Test
+    public void testGradientWithDropout() {
+        //Dropout masks differ between calls, so the gradients are checked against the checkpointed forward pass itself,
+        // with the global RNG reset before each call: the recomputation must reuse the masks of the first forward pass
+        Nd4j.getRandom().setSeed(12345);
+        INDArray input = Nd4j.rand(5, 4);
+        INDArray labels1 = Nd4j.zeros(5, 3);
+        INDArray labels2 = Nd4j.rand(5, 2);
+        for (int i = 0; i < 5; i++) {
+            labels1.putScalar(i, i % 3, 1.0);
+        }
+
+        for (WorkspaceMode wsm : WorkspaceMode.values()) {
+            MultiLayerNetwork net = getMLN(wsm, 1, 3);
+            for (Layer l : net.getLayers()) {
+                setDropout(l);
+            }
+            net.setInput(input);
+            net.setLabels(labels1);
+            checkGradientsSameRng(net, "MultiLayerNetwork, workspaceMode=" + wsm);
+
+            ComputationGraph graph = getGraph(wsm, "d1");
+            for (Layer l : graph.getLayers()) {
+                setDropout(l);
+            }
+            graph.setInputs(input);
+            graph.setLabels(labels1, labels2);
+            checkGradientsSameRng(graph, "ComputationGraph, workspaceMode=" + wsm);
+        }
+    }
+
+    private static void setDropout(Layer l) {
+        if (!(l instanceof IOutputLayer)) {
+            l.conf().getLayer().setIDropout(new Dropout(0.7));
+        }
+    }
+
+    private static void checkGradientsSameRng(Model model, String msg) {
+        LayerWorkspaceMgr mgr = LayerWorkspaceMgr.noWorkspaces();
+        Nd4j.getRandom().setSeed(12345);
+        model.computeGradientAndScore(mgr);
+        //The segments use their own RNG: the global RNG must not have been reseeded
+        assertEquals(msg, 12345, Nd4j.getRandom().getSeed());
+        INDArray gradient = model.gradient().gradient().dup();
+
+        INDArray params = model.params();
+        for (int i = 0; i < params.length(); i++) {
+            double orig = params.getDouble(i);
+            params.putScalar(i, orig + DEFAULT_EPS);
+            Nd4j.getRandom().setSeed(12345);
+            model.computeGradientAndScore(mgr);
+            double scorePlus = model.score();
+            params.putScalar(i, orig - DEFAULT_EPS);
+            Nd4j.getRandom().setSeed(12345);
+            model.computeGradientAndScore(mgr);
+            double scoreMinus = model.score();
+            params.putScalar(i, orig);
+
+            double numerical = (scorePlus - scoreMinus) / (2 * DEFAULT_EPS);
+            double analytic = gradient.getDouble(i);
+            double absError = Math.abs(analytic - numerical);
+            double relError = (absError == 0.0 ? 0.0 : absError / (Math.abs(analytic) + Math.abs(numerical)));
+            assertTrue(msg + ", param " + i + ": analytic " + analytic + ", numerical " + numerical,
+                            relError < DEFAULT_MAX_REL_ERROR || absError < DEFAULT_MIN_ABS_ERROR);
+        }
+    }
+
+    @Test
+    public void testConfiguration() {
+        MultiLayerConfiguration conf = getMLN(WorkspaceMode.ENABLED, 3, 1).getLayerWiseConfigurations();
+        assertEquals(Arrays.toString(new int[] {1, 3}), Arrays.toString(conf.getActivationCheckpoints()));
+        assertEquals(conf, MultiLayerConfiguration.fromJson(conf.toJson()));
+
+        ComputationGraphConfiguration graphConf = getGraph(WorkspaceMode.ENABLED, "d1").getConfiguration();
+        assertEquals(Arrays.asList("d1"), graphConf.getActivationCheckpoints());
+        assertEquals(graphConf, ComputationGraphConfiguration.fromJson(graphConf.toJson()));
+
+        try {
+            getMLN(WorkspaceMode.ENABLED, 5);
+            fail("Expected exception: output layer as checkpoint");
+        } catch (IllegalStateException e) {
+            //OK
+        }
+        try {
+            getGraph(WorkspaceMode.ENABLED, "out1");
+            fail("Expected exception: output layer as checkpoint");
+        } catch (IllegalStateException e) {
+            //OK
+        }
+    }
+
+    @Test
+    public void testMemoryReport() {
+        MultiLayerConfiguration conf = getMLN(WorkspaceMode.ENABLED, null).getLayerWiseConfigurations();
+        NetworkMemoryReport report = conf.getMemoryReport(InputType.feedForward(4));
+
+        long activations = report.getCheckpointedActivationMemoryBytes(32, Arrays.<String>asList(),
+                        DataBuffer.Type.FLOAT);
+        long activationsWithCheckpoints = report.getCheckpointedActivationMemoryBytes(32,
+                        Arrays.asList("layer1", "layer3"), DataBuffer.Type.FLOAT);
+        assertTrue(activationsWithCheckpoints < activations);
+
+        long total = report.getTotalMemoryBytes(32, MemoryUseMode.TRAINING, CacheMode.NONE, DataBuffer.Type.FLOAT);
+        long totalWithCheckpoints = report.getTotalMemoryBytesWithCheckpoints(32, CacheMode.NONE,
+                        DataBuffer.Type.FLOAT, Arrays.asList("layer1", "layer3"));
+        assertEquals(total - activations + activationsWithCheckpoints, totalWithCheckpoints);
+    }
+
+    private static MultiLayerNetwork getMLN(WorkspaceMode wsm, int... checkpoints) {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345)
+                        .optimizationAlgo(OptimizationAlgorithm.STOCHASTIC_GRADIENT_DESCENT).updater(new NoOp())
+                        .weightInit(new NormalDistribution(0, 1)).activation(Activation.TANH)
+                        .trainingWorkspaceMode(wsm).inferenceWorkspaceMode(wsm)
+                        .list()
+                        .layer(new DenseLayer.Builder().nIn(4).nOut(5).build())
+                        .layer(new DenseLayer.Builder().nIn(5).nOut(6).build())
+                        .layer(new DenseLayer.Builder().nIn(6).nOut(5).build())
+                        .layer(new DenseLayer.Builder().nIn(5).nOut(4).build())
+                        .layer(new DenseLayer.Builder().nIn(4).nOut(5).build())
+                        .layer(new OutputLayer.Builder().nIn(5).nOut(3).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                        .activationCheckpoints(checkpoints)
+                        .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+
+    private static ComputationGraph getGraph(WorkspaceMode wsm, String... checkpoints) {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345)
+                        .optimizationAlgo(OptimizationAlgorithm.STOCHASTIC_GRADIENT_DESCENT).updater(new NoOp())
+                        .weightInit(new NormalDistribution(0, 1)).activation(Activation.TANH)
+                        .trainingWorkspaceMode(wsm).inferenceWorkspaceMode(wsm)
+                        .graphBuilder()
+                        .addInputs("in")
+                        .addLayer("d0", new DenseLayer.Builder().nIn(4).nOut(5).build(), "in")
+                        .addLayer("d1", new DenseLayer.Builder().nIn(5).nOut(6).build(), "d0")
+                        .addLayer("d2", new DenseLayer.Builder().nIn(6).nOut(5).build(), "d1")
+                        .addVertex("add", new ElementWiseVertex(ElementWiseVertex.Op.Add), "d0", "d2")
+                        .addLayer("out1", new OutputLayer.Builder().nIn(5).nOut(3).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "add")
+                        .addLayer("out2", new OutputLayer.Builder().nIn(6).nOut(2).activation(Activation.IDENTITY)
+                                        .lossFunction(LossFunctions.LossFunction.MSE).build(), "d1")
+                        .setOutputs("out1", "out2")
+                        .activationCheckpoints(checkpoints)
+                        .build();
+        ComputationGraph graph = new ComputationGraph(conf);
+        graph.init();
+        return graph;
+    }
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.layers.convolution;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.GlobalPoolingLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.layers.PoolingType;
+import org.deeplearning4j.nn.conf.layers.SubsamplingLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+/**
+ * Forward and forward + backward time for channels-last (NHWC) image data, as produced by NativeImageLoader
+ * or expected by imported Keras/TensorFlow models:<br>
+ * - NCHW network, with the input permuted and copied to NCHW before each call<br>
+ * - NCHW network with an NHWC input type (a Cnn2DFormatPreProcessor does the same copy inside the network)<br>
+ * - NHWC network: no explicit layout conversion (ops that need contiguous arrays may still copy the permuted views)
+ */
+@Slf4j
+@Ignore
+public class ConvDataFormatPerformanceTest {
+    private static final int MINIBATCH = 32;
+    private static final int SIZE = 112;
+    private static final int CHANNELS = 3;
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 10;
+
+    @Test
+    public void testDataFormatTimes() {
+        INDArray inputNhwc = Nd4j.rand(new int[] {MINIBATCH, SIZE, SIZE, CHANNELS});
+        INDArray labels = Nd4j.zeros(MINIBATCH, 10);
+        for (int i = 0; i < MINIBATCH; i++) {
+            labels.putScalar(i, i % 10, 1.0);
+        }
+        log.info("Input: {} elements, {} MB per conversion copy", inputNhwc.length(),
+                        inputNhwc.length() * Nd4j.sizeOfDataType() / (1024 * 1024));
+
+        String[] names = {"NCHW network, permute + dup input", "NCHW network, NHWC input type", "NHWC network"};
+        for (int test = 0; test < names.length; test++) {
+            boolean permuteInput = test == 0;
+            CNN2DFormat inputFormat = test == 0 ? CNN2DFormat.NCHW : CNN2DFormat.NHWC;
+            CNN2DFormat layerFormat = test == 2 ? CNN2DFormat.NHWC : CNN2DFormat.NCHW;
+            MultiLayerNetwork net = getNetwork(inputFormat, layerFormat);
+
+            for (int i = 0; i < WARMUP; i++) {
+                net.output(input(inputNhwc, permuteInput));
+                net.fit(new DataSet(input(inputNhwc, permuteInput), labels));
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                net.output(input(inputNhwc, permuteInput));
+            }
+            long forwardTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                net.fit(new DataSet(input(inputNhwc, permuteInput), labels));
+            }
+            long fitTime = System.nanoTime() - start;
+
+            log.info("{}: forward {} ms, forward + backward {} ms", names[test], forwardTime / 1000000 / ITERATIONS,
+                            fitTime / 1000000 / ITERATIONS);
+        }
+    }
+
+    private static INDArray input(INDArray nhwc, boolean permute) {
+        return permute ? nhwc.permute(0, 3, 1, 2).dup('c') : nhwc;
+    }
+
+    private static MultiLayerNetwork getNetwork(CNN2DFormat inputFormat, CNN2DFormat layerFormat) {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(new Sgd(0.01))
+                        .convolutionMode(ConvolutionMode.Same).activation(Activation.RELU).list()
+                        .layer(new ConvolutionLayer.Builder().kernelSize(3, 3).nOut(32).dataFormat(layerFormat)
+                                        .build())
+                        .layer(new BatchNormalization.Builder().dataFormat(layerFormat).build())
+                        .layer(new SubsamplingLayer.Builder().kernelSize(2, 2).stride(2, 2).dataFormat(layerFormat)
+                                        .build())
+                        .layer(new ConvolutionLayer.Builder().kernelSize(3, 3).nOut(64).dataFormat(layerFormat)
+                                        .build())
+                        .layer(new GlobalPoolingLayer.Builder().poolingType(PoolingType.AVG).dataFormat(layerFormat)
+                                        .build())
+                        .layer(new OutputLayer.Builder().nOut(10).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                        .setInputType(InputType.convolutional(SIZE, SIZE, CHANNELS, inputFormat))
+                        .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+}
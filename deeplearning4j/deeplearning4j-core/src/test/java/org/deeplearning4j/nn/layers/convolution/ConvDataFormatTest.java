@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.layers.convolution;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.GlobalPoolingLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.layers.PoolingType;
+import org.deeplearning4j.nn.conf.layers.SubsamplingLayer;
+import org.deeplearning4j.nn.conf.layers.Upsampling2D;
+import org.deeplearning4j.nn.conf.preprocessor.Cnn2DFormatPreProcessor;
+import org.deeplearning4j.nn.conf.preprocessor.CnnToFeedForwardPreProcessor;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.NoOp;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that CNN layers configured for NHWC (channels last) activations give the same results as the equivalent
+ * NCHW network, and that format conversions are inserted where required
+ */
+public class ConvDataFormatTest extends BaseDL4JTest {
+    private static final double EPS = 1e-8;
+
+    static {
+        Nd4j.setDataType(DataBuffer.Type.DOUBLE);
+    }
+
+    @Test
+    public void testNchwNhwcEquivalence() {
+        int miniBatch = 3;
+        int h = 8;
+        int w = 6;
+        int c = 2;
+
+        MultiLayerNetwork nchw = getNetwork(CNN2DFormat.NCHW, h, w, c);
+        MultiLayerNetwork nhwc = getNetwork(CNN2DFormat.NHWC, h, w, c);
+        nhwc.setParams(nchw.params());
+
+        //No conversions between NHWC layers
+        for (int i = 0; i < 7; i++) {
+            assertEquals(null, nhwc.getLayerWiseConfigurations().getInputPreProcess(i));
+        }
+
+        INDArray inNchw = Nd4j.rand(new int[] {miniBatch, c, h, w});
+        INDArray inNhwc = inNchw.permute(0, 2, 3, 1).dup('c');
+        INDArray labels = Nd4j.zeros(miniBatch, 3);
+        for (int i = 0; i < miniBatch; i++) {
+            labels.putScalar(i, i % 3, 1.0);
+        }
+
+        assertEquals(nchw.output(inNchw), nhwc.output(inNhwc));
+
+        //Intermediate activations: the same values, in the other layout
+        INDArray actNchw = nchw.feedForwardToLayer(3, inNchw, false).get(4);
+        INDArray actNhwc = nhwc.feedForwardToLayer(3, inNhwc, false).get(4);
+        assertArrayEquals(new long[] {miniBatch, h, w, 4}, actNhwc.shape());
+        assertEquals(actNchw, actNhwc.permute(0, 3, 1, 2));
+
+        nchw.setInput(inNchw);
+        nchw.setLabels(labels);
+        nchw.computeGradientAndScore();
+        nhwc.setInput(inNhwc);
+        nhwc.setLabels(labels);
+        nhwc.computeGradientAndScore();
+
+        assertEquals(nchw.score(), nhwc.score(), EPS);
+        INDArray gradNchw = nchw.gradient().gradient();
+        INDArray gradNhwc = nhwc.gradient().gradient();
+        assertTrue(gradNchw.equalsWithEps(gradNhwc, EPS));
+    }
+
+    @Test
+    public void testPreProcessors() {
+        int h = 8;
+        int w = 6;
+        int c = 2;
+
+        //NHWC input to an NCHW layer: a format conversion is inserted
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().list()
+                        .layer(new ConvolutionLayer.Builder().kernelSize(3, 3).nOut(4).build())
+                        .layer(new ConvolutionLayer.Builder().kernelSize(3, 3).nOut(4).dataFormat(CNN2DFormat.NHWC)
+                                        .build())
+                        .layer(new DenseLayer.Builder().nOut(5).build())
+                        .layer(new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX).build())
+                        .setInputType(InputType.convolutional(h, w, c, CNN2DFormat.NHWC))
+                        .build();
+
+        assertEquals(new Cnn2DFormatPreProcessor(CNN2DFormat.NHWC, CNN2DFormat.NCHW), conf.getInputPreProcess(0));
+        assertEquals(new Cnn2DFormatPreProcessor(CNN2DFormat.NCHW, CNN2DFormat.NHWC), conf.getInputPreProcess(1));
+        CnnToFeedForwardPreProcessor cnnToFf = (CnnToFeedForwardPreProcessor) conf.getInputPreProcess(2);
+        assertEquals(CNN2DFormat.NHWC, cnnToFf.getFormat());
+        assertEquals(4, cnnToFf.getNumChannels());
+
+        //JSON round trip, including the data format of the layers and preprocessors
+        MultiLayerConfiguration fromJson = MultiLayerConfiguration.fromJson(conf.toJson());
+        assertEquals(conf, fromJson);
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        INDArray out = net.output(Nd4j.rand(new int[] {2, h, w, c}));
+        assertArrayEquals(new long[] {2, 3}, out.shape());
+    }
+
+    @Test
+    public void testFormatPreProcessor() {
+        INDArray nchw = Nd4j.rand(new int[] {2, 3, 4, 5});
+        Cnn2DFormatPreProcessor toNhwc = new Cnn2DFormatPreProcessor(CNN2DFormat.NCHW, CNN2DFormat.NHWC);
+
+        INDArray nhwc = toNhwc.preProcess(nchw, 2, LayerWorkspaceMgr.noWorkspaces());
+        assertArrayEquals(new long[] {2, 4, 5, 3}, nhwc.shape());
+        assertEquals('c', nhwc.ordering());
+        assertEquals(nchw.getDouble(1, 2, 3, 4), nhwc.getDouble(1, 3, 4, 2), 0.0);
+
+        INDArray back = toNhwc.backprop(nhwc, 2, LayerWorkspaceMgr.noWorkspaces());
+        assertEquals(nchw, back);
+
+        InputType outType = toNhwc.getOutputType(InputType.convolutional(4, 5, 3));
+        assertEquals(InputType.convolutional(4, 5, 3, CNN2DFormat.NHWC), outType);
+    }
+
+    private static MultiLayerNetwork getNetwork(CNN2DFormat format, int h, int w, int c) {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(new NoOp())
+                        .convolutionMode(ConvolutionMode.Same).activation(Activation.TANH).list()
+                        .layer(new ConvolutionLayer.Builder().kernelSize(3, 3).nOut(4).dataFormat(format).build())
+                        .layer(new BatchNormalization.Builder().dataFormat(format).build())
+                        .layer(new SubsamplingLayer.Builder().kernelSize(2, 2).stride(2, 2)
+                                        .poolingType(SubsamplingLayer.PoolingType.MAX).dataFormat(format).build())
+                        .layer(new Upsampling2D.Builder().size(2).dataFormat(format).build())
+                        .layer(new ConvolutionLayer.Builder().kernelSize(2, 2).nOut(3).dataFormat(format).build())
+                        .layer(new GlobalPoolingLayer.Builder().poolingType(PoolingType.AVG).dataFormat(format)
+                                        .build())
+                        .layer(new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                        .setInputType(InputType.convolutional(h, w, c, format))
+                        .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+}
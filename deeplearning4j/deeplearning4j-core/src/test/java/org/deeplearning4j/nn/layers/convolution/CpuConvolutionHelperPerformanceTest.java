@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.layers.convolution;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.CnnLossLayer;
+import org.deeplearning4j.nn.layers.convolution.CpuConvolutionHelper.Algorithm;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+/**
+ * Forward and forward + backward time of single convolution layers with ResNet and VGG shapes, with im2col + gemm
+ * (built-in implementation), Winograd and direct convolution.
+ */
+@Slf4j
+@Ignore
+public class CpuConvolutionHelperPerformanceTest {
+    //{inDepth, outDepth, height/width, kernel, stride}
+    private static final int[][] SHAPES = {
+                    {3, 64, 224, 3, 1},     //VGG conv1_1
+                    {64, 64, 224, 3, 1},    //VGG conv1_2
+                    {128, 128, 112, 3, 1},  //VGG conv2_2
+                    {256, 256, 56, 3, 1},   //VGG conv3_x
+                    {512, 512, 28, 3, 1},   //VGG conv4_x
+                    {3, 64, 224, 7, 2},     //ResNet conv1
+                    {64, 64, 56, 3, 1},     //ResNet conv2_x
+                    {128, 128, 28, 3, 1},   //ResNet conv3_x
+                    {256, 256, 14, 3, 1},   //ResNet conv4_x
+                    {512, 512, 7, 3, 1},    //ResNet conv5_x
+                    {256, 64, 56, 1, 1}};   //ResNet bottleneck 1x1
+    private static final int MINIBATCH = 8;
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 10;
+
+    @Test
+    public void testLayerTimes() {
+        for (int[] s : SHAPES) {
+            INDArray input = Nd4j.rand(new int[] {MINIBATCH, s[0], s[2], s[2]});
+            Algorithm selected = CpuConvolutionHelper.selectAlgorithm(MINIBATCH, s[0], s[1], s[2] / s[4],
+                            s[2] / s[4], new int[] {s[3], s[3]}, new int[] {s[4], s[4]}, new int[] {1, 1});
+
+            for (Algorithm algorithm : Algorithm.values()) {
+                if (algorithm == Algorithm.WINOGRAD && (s[3] != 3 || s[4] != 1)) {
+                    continue;
+                }
+                MultiLayerNetwork net = getNetwork(s);
+                ((ConvolutionLayer) net.getLayer(0)).helper =
+                                algorithm == Algorithm.IM2COL ? null : new CpuConvolutionHelper(algorithm);
+                INDArray labels = Nd4j.rand(net.output(input).shape());
+                DataSet ds = new DataSet(input, labels);
+
+                for (int i = 0; i < WARMUP; i++) {
+                    net.output(input);
+                    net.fit(ds);
+                }
+
+                long start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    net.output(input);
+                }
+                long forwardTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    net.fit(ds);
+                }
+                long fitTime = System.nanoTime() - start;
+
+                log.info("in={}, out={}, size={}, kernel={}, stride={}, {}{}: forward {} ms, forward + backward {} ms",
+                                s[0], s[1], s[2], s[3], s[4], algorithm, algorithm == selected ? " (selected)" : "",
+                                forwardTime / 1000000 / ITERATIONS, fitTime / 1000000 / ITERATIONS);
+            }
+        }
+    }
+
+    private static MultiLayerNetwork getNetwork(int[] s) {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(new Sgd(0.01))
+                        .convolutionMode(ConvolutionMode.Same).list()
+                        .layer(new org.deeplearning4j.nn.conf.layers.ConvolutionLayer.Builder().kernelSize(s[3], s[3])
+                                        .stride(s[4], s[4]).nOut(s[1]).activation(Activation.RELU).build())
+                        .layer(new CnnLossLayer.Builder(LossFunctions.LossFunction.MSE).activation(Activation.IDENTITY)
+                                        .build())
+                        .setInputType(InputType.convolutional(s[2], s[2], s[0])).build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+}
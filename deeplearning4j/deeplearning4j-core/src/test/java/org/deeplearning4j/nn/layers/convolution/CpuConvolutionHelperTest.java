@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.layers.convolution;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.layers.convolution.CpuConvolutionHelper.Algorithm;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that the native CPU convolution helper gives the same activations and gradients as the built-in
+ * im2col + gemm implementation, for each algorithm
+ */
+public class CpuConvolutionHelperTest extends BaseDL4JTest {
+    private static final double EPS = 1e-8;
+
+    static {
+        Nd4j.setDataType(DataBuffer.Type.DOUBLE);
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        MultiLayerNetwork net = getNetwork(16, 16, 8, 8, new int[] {3, 3}, new int[] {1, 1}, new int[] {1, 1},
+                        ConvolutionMode.Same, true);
+        assertNull(((ConvolutionLayer) net.getLayer(0)).getHelper());
+    }
+
+    @Test
+    public void testAlgorithmSelection() {
+        int[] one = {1, 1};
+        int[] two = {2, 2};
+        //VGG/ResNet 3x3 layers
+        assertEquals(Algorithm.WINOGRAD, CpuConvolutionHelper.selectAlgorithm(32, 64, 64, 56, 56, new int[] {3, 3}, one, one));
+        //First layer: few input channels
+        assertEquals(Algorithm.DIRECT, CpuConvolutionHelper.selectAlgorithm(32, 3, 64, 224, 224, new int[] {3, 3}, one, one));
+        assertEquals(Algorithm.DIRECT, CpuConvolutionHelper.selectAlgorithm(32, 1, 20, 24, 24, new int[] {5, 5}, one, one));
+        //Strided and 1x1 layers with many channels: im2col + gemm
+        assertEquals(Algorithm.IM2COL, CpuConvolutionHelper.selectAlgorithm(32, 128, 256, 14, 14, new int[] {3, 3}, two, one));
+        assertEquals(Algorithm.IM2COL, CpuConvolutionHelper.selectAlgorithm(32, 256, 64, 56, 56, new int[] {1, 1}, one, one));
+        //Huge im2col buffer
+        assertEquals(Algorithm.DIRECT, CpuConvolutionHelper.selectAlgorithm(64, 128, 128, 112, 112, new int[] {5, 5}, two, one));
+    }
+
+    @Test
+    public void testEquivalence() {
+        assumeTrue(CpuConvolutionHelper.isAvailable());
+
+        int nIn = 4;
+        int nOut = 5;
+        int miniBatch = 3;
+        int h = 9;
+        int w = 8;
+        Random r = new Random(12345);
+
+        int[][] kernels = {{3, 3}, {3, 3}, {2, 3}, {3, 3}};
+        int[][] strides = {{1, 1}, {1, 1}, {2, 1}, {1, 1}};
+        int[][] dilations = {{1, 1}, {1, 1}, {1, 1}, {2, 1}};
+        ConvolutionMode[] modes = {ConvolutionMode.Same, ConvolutionMode.Truncate, ConvolutionMode.Same,
+                        ConvolutionMode.Truncate};
+
+        for (Algorithm algorithm : new Algorithm[] {Algorithm.WINOGRAD, Algorithm.DIRECT}) {
+            for (int i = 0; i < kernels.length; i++) {
+                for (boolean hasBias : new boolean[] {true, false}) {
+                    String msg = algorithm + ", kernel=" + kernels[i][0] + "x" + kernels[i][1] + ", stride="
+                                    + strides[i][0] + ", dilation=" + dilations[i][0] + ", mode=" + modes[i]
+                                    + ", bias=" + hasBias;
+
+                    MultiLayerNetwork withHelper = getNetwork(nIn, nOut, h, w, kernels[i], strides[i], dilations[i],
+                                    modes[i], hasBias);
+                    MultiLayerNetwork standard = getNetwork(nIn, nOut, h, w, kernels[i], strides[i], dilations[i],
+                                    modes[i], hasBias);
+                    standard.setParams(withHelper.params().dup());
+                    ((ConvolutionLayer) withHelper.getLayer(0)).helper = new CpuConvolutionHelper(algorithm);
+                    ((ConvolutionLayer) standard.getLayer(0)).helper = null;
+
+                    INDArray input = Nd4j.rand(new int[] {miniBatch, nIn, h, w}).subi(0.5);
+                    INDArray labels = Nd4j.zeros(miniBatch, 3);
+                    for (int j = 0; j < miniBatch; j++) {
+                        labels.putScalar(j, r.nextInt(3), 1.0);
+                    }
+
+                    INDArray exp = standard.output(input, false);
+                    INDArray act = withHelper.output(input, false);
+                    assertTrue(msg, exp.equalsWithEps(act, EPS));
+
+                    standard.setInput(input);
+                    standard.setLabels(labels);
+                    standard.computeGradientAndScore();
+                    withHelper.setInput(input);
+                    withHelper.setLabels(labels);
+                    withHelper.computeGradientAndScore();
+
+                    assertEquals(msg, standard.score(), withHelper.score(), EPS);
+                    assertTrue(msg, standard.gradient().gradient().equalsWithEps(withHelper.gradient().gradient(), EPS));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIm2colFallback() {
+        assumeTrue(CpuConvolutionHelper.isAvailable());
+
+        //Shape selected for im2col: the helper returns null, and the built-in implementation is used
+        MultiLayerNetwork net = getNetwork(128, 8, 6, 6, new int[] {3, 3}, new int[] {2, 2}, new int[] {1, 1},
+                        ConvolutionMode.Same, true);
+        ((ConvolutionLayer) net.getLayer(0)).helper = new CpuConvolutionHelper();
+        MultiLayerNetwork standard = net.clone();
+        ((ConvolutionLayer) standard.getLayer(0)).helper = null;
+
+        INDArray input = Nd4j.rand(new int[] {2, 128, 6, 6});
+        assertTrue(standard.output(input).equalsWithEps(net.output(input), EPS));
+    }
+
+    private static MultiLayerNetwork getNetwork(int nIn, int nOut, int h, int w, int[] kernel, int[] stride,
+                    int[] dilation, ConvolutionMode mode, boolean hasBias) {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345)
+                        .weightInit(WeightInit.XAVIER).updater(new Sgd(0.1)).convolutionMode(mode).list()
+                        .layer(new org.deeplearning4j.nn.conf.layers.ConvolutionLayer.Builder().kernelSize(kernel)
+                                        .stride(stride).dilation(dilation).nOut(nOut).hasBias(hasBias)
+                                        .activation(Activation.TANH).build())
+                        .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).activation(Activation.SOFTMAX)
+                                        .nOut(3).build())
+                        .setInputType(InputType.convolutional(h, w, nIn)).build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+}
@@ -19,6 +19,7 @@ package org.deeplearning4j.nn.layers.feedforward.embedding;
 import org.deeplearning4j.BaseDL4JTest;
 import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.OptimizationAlgorithm;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.layers.*;
@@ -26,13 +27,17 @@ import org.deeplearning4j.nn.conf.layers.EmbeddingLayer;
 import org.deeplearning4j.nn.conf.layers.EmbeddingSequenceLayer;
 import org.deeplearning4j.nn.conf.preprocessor.FeedForwardToRnnPreProcessor;
 import org.deeplearning4j.nn.conf.preprocessor.RnnToFeedForwardPreProcessor;
+import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.nn.params.DefaultParamInitializer;
 import org.deeplearning4j.nn.weights.WeightInit;
 import org.junit.Test;
 import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.learning.config.IUpdater;
 import org.nd4j.linalg.learning.config.Sgd;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 
@@ -43,6 +48,8 @@ import java.util.Random;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 public class EmbeddingLayerTest extends BaseDL4JTest {
 
@@ -516,4 +523,135 @@ public class EmbeddingLayerTest extends BaseDL4JTest {
         }
     }
 
+    @Test
+    public void testSparseGradientsSgdSameAsDense() {
+        //Without updater state or L1/L2, the lazy update is the same as the dense update
+        for (boolean sequence : new boolean[] {false, true}) {
+            MultiLayerNetwork net = getSparseGradientNet(sequence, false, new Sgd(0.1));
+            MultiLayerNetwork netSparse = getSparseGradientNet(sequence, true, new Sgd(0.1));
+            assertEquals(net.params(), netSparse.params());
+
+            Random r = new Random(12345);
+            for (int i = 0; i < 5; i++) {
+                DataSet ds = getSparseGradientData(r, sequence, 0, 50);
+                net.fit(ds);
+                netSparse.fit(ds);
+                assertEquals(net.params(), netSparse.params());
+            }
+
+            //Gradients after a lazy update: only the rows for the current minibatch are set
+            DataSet ds = getSparseGradientData(r, sequence, 0, 50);
+            net.setInput(ds.getFeatures());
+            net.setLabels(ds.getLabels());
+            net.computeGradientAndScore();
+            netSparse.setInput(ds.getFeatures());
+            netSparse.setLabels(ds.getLabels());
+            netSparse.computeGradientAndScore();
+            assertEquals(net.gradient().gradient(), netSparse.gradient().gradient());
+        }
+    }
+
+    @Test
+    public void testSparseGradientsLazyAdam() {
+        MultiLayerNetwork net = getSparseGradientNet(false, false, new Adam(0.01));
+        MultiLayerNetwork netSparse = getSparseGradientNet(false, true, new Adam(0.01));
+
+        //First iteration: Adam update is zero for rows without gradients, so dense and lazy are the same
+        Random r = new Random(12345);
+        DataSet ds = getSparseGradientData(r, false, 0, 25);
+        net.fit(ds);
+        netSparse.fit(ds);
+        assertEquals(net.params(), netSparse.params());
+
+        //Second iteration, disjoint indices: rows used in the first iteration are updated by dense Adam (moments),
+        // but not by lazy Adam
+        INDArray wBefore = netSparse.getParam("0_W").dup();
+        INDArray wDenseBefore = net.getParam("0_W").dup();
+        INDArray firstIndices = ds.getFeatures();
+        ds = getSparseGradientData(r, false, 25, 50);
+        net.fit(ds);
+        netSparse.fit(ds);
+        INDArray w = netSparse.getParam("0_W");
+        INDArray wDense = net.getParam("0_W");
+        for (int i = 0; i < firstIndices.length(); i++) {
+            int idx = firstIndices.getInt(i, 0);
+            assertEquals(wBefore.getRow(idx), w.getRow(idx));
+            assertNotEquals(wDenseBefore.getRow(idx), wDense.getRow(idx));
+        }
+        boolean anyChanged = false;
+        for (int i = 25; i < 50; i++) {
+            anyChanged |= !wBefore.getRow(i).equals(w.getRow(i));
+        }
+        assertTrue(anyChanged);
+        //Other parameters: standard update in both cases
+        assertEquals(net.getParam("1_W"), netSparse.getParam("1_W"));
+    }
+
+    @Test
+    public void testSparseGradientsGraph() {
+        for (boolean sparse : new boolean[] {false, true}) {
+            ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345)
+                    .updater(new Adam(0.01)).activation(Activation.TANH).graphBuilder()
+                    .addInputs("in")
+                    .addLayer("emb", new EmbeddingLayer.Builder().nIn(50).nOut(5).sparseGradients(sparse).build(),
+                            "in")
+                    .addLayer("out", new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(5).nOut(4)
+                            .activation(Activation.SOFTMAX).build(), "emb")
+                    .setOutputs("out")
+                    .build();
+            assertEquals(conf, ComputationGraphConfiguration.fromJson(conf.toJson()));
+            ComputationGraph graph = new ComputationGraph(conf);
+            graph.init();
+
+            Random r = new Random(12345);
+            DataSet ds = getSparseGradientData(r, false, 0, 25);
+            graph.fit(ds);
+            INDArray wBefore = graph.getParam("emb_W").dup();
+            graph.fit(getSparseGradientData(r, false, 25, 50));
+            INDArray w = graph.getParam("emb_W");
+            for (int i = 0; i < ds.getFeatures().length(); i++) {
+                int idx = ds.getFeatures().getInt(i, 0);
+                assertEquals(sparse, wBefore.getRow(idx).equals(w.getRow(idx)));
+            }
+        }
+    }
+
+    private static MultiLayerNetwork getSparseGradientNet(boolean sequence, boolean sparse, IUpdater updater) {
+        org.deeplearning4j.nn.conf.layers.Layer embedding = sequence
+                ? new EmbeddingSequenceLayer.Builder().nIn(50).nOut(5).inputLength(3).sparseGradients(sparse).build()
+                : new EmbeddingLayer.Builder().nIn(50).nOut(5).sparseGradients(sparse).build();
+        org.deeplearning4j.nn.conf.layers.Layer out = sequence
+                ? new RnnOutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(5).nOut(4)
+                        .activation(Activation.SOFTMAX).build()
+                : new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(5).nOut(4)
+                        .activation(Activation.SOFTMAX).build();
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(updater)
+                .activation(Activation.TANH).list()
+                .layer(embedding)
+                .layer(out)
+                .build();
+        assertEquals(conf, MultiLayerConfiguration.fromJson(conf.toJson()));
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+
+    private static DataSet getSparseGradientData(Random r, boolean sequence, int minIndex, int maxIndex) {
+        int mb = 4;
+        int length = 3;
+        INDArray in = sequence ? Nd4j.create(mb, length) : Nd4j.create(mb, 1);
+        INDArray labels = sequence ? Nd4j.create(new int[] {mb, 4, length}, 'f') : Nd4j.create(mb, 4);
+        for (int i = 0; i < mb; i++) {
+            if (sequence) {
+                for (int j = 0; j < length; j++) {
+                    in.putScalar(i, j, minIndex + r.nextInt(maxIndex - minIndex));
+                    labels.putScalar(new int[] {i, r.nextInt(4), j}, 1.0);
+                }
+            } else {
+                in.putScalar(i, 0, minIndex + r.nextInt(maxIndex - minIndex));
+                labels.putScalar(i, r.nextInt(4), 1.0);
+            }
+        }
+        return new DataSet(in, labels);
+    }
 }
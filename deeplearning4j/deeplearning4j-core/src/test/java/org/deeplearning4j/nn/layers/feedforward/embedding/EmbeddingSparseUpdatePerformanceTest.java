@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.layers.feedforward.embedding;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.EmbeddingLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.learning.config.IUpdater;
+import org.nd4j.linalg.learning.config.RmsProp;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.Random;
+
+/**
+ * Time per iteration for an embedding layer with a large vocabulary: dense gradients and update (every row of the
+ * embedding table and updater state is zeroed/updated each iteration) vs. sparse gradients and lazy update (only the
+ * rows for the current minibatch)
+ */
+@Slf4j
+@Ignore
+public class EmbeddingSparseUpdatePerformanceTest {
+    private static final int VOCAB_SIZE = 1000000;
+    private static final int EMBEDDING_SIZE = 128;
+    private static final int MINIBATCH = 256;
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 20;
+
+    @Test
+    public void testSparseVsDenseUpdate() {
+        Random r = new Random(12345);
+        INDArray in = Nd4j.create(MINIBATCH, 1);
+        INDArray labels = Nd4j.create(MINIBATCH, 10);
+        for (int i = 0; i < MINIBATCH; i++) {
+            in.putScalar(i, 0, r.nextInt(VOCAB_SIZE));
+            labels.putScalar(i, r.nextInt(10), 1.0);
+        }
+        DataSet ds = new DataSet(in, labels);
+
+        for (IUpdater updater : new IUpdater[] {new Adam(1e-3), new RmsProp(1e-3)}) {
+            for (boolean sparse : new boolean[] {false, true}) {
+                MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(updater)
+                                .list()
+                                .layer(new EmbeddingLayer.Builder().nIn(VOCAB_SIZE).nOut(EMBEDDING_SIZE)
+                                                .activation(Activation.IDENTITY).sparseGradients(sparse).build())
+                                .layer(new OutputLayer.Builder().nIn(EMBEDDING_SIZE).nOut(10)
+                                                .activation(Activation.SOFTMAX)
+                                                .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                                .build();
+                MultiLayerNetwork net = new MultiLayerNetwork(conf);
+                net.init();
+
+                for (int i = 0; i < WARMUP; i++) {
+                    net.fit(ds);
+                }
+
+                long start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    net.fit(ds);
+                }
+                long time = System.nanoTime() - start;
+
+                log.info("{}, {} gradients: {} ms per iteration", updater.getClass().getSimpleName(),
+                                (sparse ? "sparse" : "dense"), time / 1000000 / ITERATIONS);
+            }
+        }
+    }
+}
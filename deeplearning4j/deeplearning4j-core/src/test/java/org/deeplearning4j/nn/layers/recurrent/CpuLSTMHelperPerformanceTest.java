@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.layers.recurrent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+/**
+ * Training and inference throughput of the LSTM layer at different hidden layer sizes, with the native CPU helper
+ * and with the standard implementation (separate ops per time step).
+ * Throughput is reported in time steps (examples * time series length) per second.
+ */
+@Slf4j
+@Ignore
+public class CpuLSTMHelperPerformanceTest {
+    private static final int[] LAYER_SIZES = {32, 128, 256, 512};
+    private static final int N_IN = 64;
+    private static final int MINIBATCH = 32;
+    private static final int TS_LENGTH = 100;
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 20;
+
+    @Test
+    public void testThroughput() {
+        INDArray input = Nd4j.rand(new int[] {MINIBATCH, N_IN, TS_LENGTH});
+        INDArray labels = Nd4j.rand(new int[] {MINIBATCH, 10, TS_LENGTH});
+        DataSet ds = new DataSet(input, labels);
+        long steps = (long) MINIBATCH * TS_LENGTH;
+
+        for (int layerSize : LAYER_SIZES) {
+            for (boolean useHelper : new boolean[] {false, true}) {
+                MultiLayerNetwork net = getNetwork(layerSize);
+                ((LSTM) net.getLayer(0)).helper = useHelper ? new CpuLSTMHelper() : null;
+
+                for (int i = 0; i < WARMUP; i++) {
+                    net.output(input);
+                    net.fit(ds);
+                }
+
+                long start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    net.output(input);
+                }
+                long inferenceTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    net.fit(ds);
+                }
+                long fitTime = System.nanoTime() - start;
+
+                log.info("Layer size {}, {}: inference {} steps/s, training {} steps/s", layerSize,
+                                useHelper ? "native helper" : "standard",
+                                (long) (steps * ITERATIONS / (inferenceTime / 1e9)),
+                                (long) (steps * ITERATIONS / (fitTime / 1e9)));
+            }
+        }
+    }
+
+    private static MultiLayerNetwork getNetwork(int layerSize) {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(new Adam(1e-3))
+                        .list()
+                        .layer(new org.deeplearning4j.nn.conf.layers.LSTM.Builder().nIn(N_IN).nOut(layerSize)
+                                        .activation(Activation.TANH).build())
+                        .layer(new RnnOutputLayer.Builder(LossFunctions.LossFunction.MSE).activation(Activation.IDENTITY)
+                                        .nIn(layerSize).nOut(10).build())
+                        .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+}
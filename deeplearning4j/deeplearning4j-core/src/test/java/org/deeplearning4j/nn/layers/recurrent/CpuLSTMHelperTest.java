@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.layers.recurrent;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.config.DL4JSystemProperties;
+import org.deeplearning4j.nn.conf.BackpropType;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that the native CPU LSTM helper gives the same activations, gradients and parameter updates
+ * as the standard implementation in {@link LSTMHelpers}
+ */
+public class CpuLSTMHelperTest extends BaseDL4JTest {
+    private static final double EPS = 1e-8;
+
+    static {
+        Nd4j.setDataType(DataBuffer.Type.DOUBLE);
+    }
+
+    @Before
+    public void before() {
+        System.setProperty(DL4JSystemProperties.CPU_LSTM_HELPER_ENABLED_PROPERTY, "true");
+    }
+
+    @After
+    public void after() {
+        System.clearProperty(DL4JSystemProperties.CPU_LSTM_HELPER_ENABLED_PROPERTY);
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        System.clearProperty(DL4JSystemProperties.CPU_LSTM_HELPER_ENABLED_PROPERTY);
+        for (boolean graves : new boolean[] {false, true}) {
+            assertNull(getHelper(getNetwork(graves, 3, 4, 2, false)));
+        }
+    }
+
+    @Test
+    public void testEquivalence() {
+        assumeTrue(CpuLSTMHelper.isAvailable());
+
+        int nIn = 3;
+        int layerSize = 6;
+        int nOut = 4;
+        int miniBatch = 5;
+        int tsLength = 7;
+        Random r = new Random(12345);
+
+        for (boolean graves : new boolean[] {false, true}) {
+            for (boolean masks : new boolean[] {false, true}) {
+                String msg = (graves ? "GravesLSTM" : "LSTM") + ", masks=" + masks;
+
+                MultiLayerNetwork withHelper = getNetwork(graves, nIn, layerSize, nOut, false);
+                MultiLayerNetwork standard = getNetwork(graves, nIn, layerSize, nOut, false);
+                standard.setParams(withHelper.params().dup());
+                assertNotNull(msg, getHelper(withHelper));
+                setHelper(withHelper, new CpuLSTMHelper());
+                setHelper(standard, null);
+
+                INDArray input = Nd4j.rand(new int[] {miniBatch, nIn, tsLength});
+                INDArray labels = Nd4j.zeros(miniBatch, nOut, tsLength);
+                for (int i = 0; i < miniBatch; i++) {
+                    for (int t = 0; t < tsLength; t++) {
+                        labels.putScalar(i, r.nextInt(nOut), t, 1.0);
+                    }
+                }
+                INDArray mask = null;
+                if (masks) {
+                    mask = Nd4j.ones(miniBatch, tsLength);
+                    for (int i = 0; i < miniBatch; i++) {
+                        int length = 1 + r.nextInt(tsLength);
+                        if (length < tsLength) {
+                            mask.get(NDArrayIndex.point(i), NDArrayIndex.interval(length, tsLength)).assign(0.0);
+                        }
+                    }
+                }
+
+                //Inference
+                INDArray exp = standard.output(input, false, mask, mask);
+                INDArray act = withHelper.output(input, false, mask, mask);
+                assertTrue(msg, exp.equalsWithEps(act, EPS));
+
+                //Gradients
+                standard.setInput(input);
+                standard.setLabels(labels);
+                standard.setLayerMaskArrays(mask, mask);
+                standard.computeGradientAndScore();
+                withHelper.setInput(input);
+                withHelper.setLabels(labels);
+                withHelper.setLayerMaskArrays(mask, mask);
+                withHelper.computeGradientAndScore();
+
+                assertEquals(msg, standard.score(), withHelper.score(), EPS);
+                assertTrue(msg, standard.gradient().gradient().equalsWithEps(withHelper.gradient().gradient(), EPS));
+
+                //Stored state: rnnTimeStep over two halves of the input
+                if (!masks) {
+                    for (MultiLayerNetwork net : new MultiLayerNetwork[] {standard, withHelper}) {
+                        net.rnnClearPreviousState();
+                    }
+                    for (int[] range : new int[][] {{0, 3}, {3, tsLength}}) {
+                        INDArray in = input.get(NDArrayIndex.all(), NDArrayIndex.all(),
+                                        NDArrayIndex.interval(range[0], range[1])).dup();
+                        exp = standard.rnnTimeStep(in);
+                        act = withHelper.rnnTimeStep(in);
+                        assertTrue(msg, exp.equalsWithEps(act, EPS));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTruncatedBPTT() {
+        assumeTrue(CpuLSTMHelper.isAvailable());
+
+        int nIn = 3;
+        int layerSize = 5;
+        int nOut = 2;
+        for (boolean graves : new boolean[] {false, true}) {
+            MultiLayerNetwork withHelper = getNetwork(graves, nIn, layerSize, nOut, true);
+            MultiLayerNetwork standard = getNetwork(graves, nIn, layerSize, nOut, true);
+            standard.setParams(withHelper.params().dup());
+            setHelper(withHelper, new CpuLSTMHelper());
+            setHelper(standard, null);
+
+            INDArray input = Nd4j.rand(new int[] {4, nIn, 12});
+            INDArray labels = Nd4j.rand(new int[] {4, nOut, 12});
+            DataSet ds = new DataSet(input, labels);
+            for (int i = 0; i < 3; i++) {
+                standard.fit(ds);
+                withHelper.fit(ds);
+            }
+
+            String msg = graves ? "GravesLSTM" : "LSTM";
+            assertTrue(msg, standard.params().equalsWithEps(withHelper.params(), EPS));
+        }
+    }
+
+    private static MultiLayerNetwork getNetwork(boolean graves, int nIn, int layerSize, int nOut, boolean tbptt) {
+        org.deeplearning4j.nn.conf.layers.Layer rnn = graves
+                        ? new org.deeplearning4j.nn.conf.layers.GravesLSTM.Builder().nIn(nIn).nOut(layerSize)
+                                        .activation(Activation.TANH).build()
+                        : new org.deeplearning4j.nn.conf.layers.LSTM.Builder().nIn(nIn).nOut(layerSize)
+                                        .activation(Activation.TANH).build();
+
+        NeuralNetConfiguration.ListBuilder builder = new NeuralNetConfiguration.Builder().seed(12345)
+                        .weightInit(WeightInit.XAVIER).updater(new Sgd(0.1)).list()
+                        .layer(rnn)
+                        .layer(new RnnOutputLayer.Builder(LossFunctions.LossFunction.MCXENT)
+                                        .activation(Activation.SOFTMAX).nIn(layerSize).nOut(nOut).build());
+        if (tbptt) {
+            builder.backpropType(BackpropType.TruncatedBPTT).tBPTTForwardLength(5).tBPTTBackwardLength(3);
+        }
+        MultiLayerConfiguration conf = builder.build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+
+    private static LSTMHelper getHelper(MultiLayerNetwork net) {
+        org.deeplearning4j.nn.api.Layer l = net.getLayer(0);
+        return l instanceof LSTM ? ((LSTM) l).helper : ((GravesLSTM) l).helper;
+    }
+
+    private static void setHelper(MultiLayerNetwork net, LSTMHelper helper) {
+        org.deeplearning4j.nn.api.Layer l = net.getLayer(0);
+        if (l instanceof LSTM) {
+            ((LSTM) l).helper = helper;
+        } else {
+            ((GravesLSTM) l).helper = helper;
+        }
+    }
+}
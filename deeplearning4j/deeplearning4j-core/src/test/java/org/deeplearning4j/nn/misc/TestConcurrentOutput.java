@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.misc;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.LSTM;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MultiLayerNetwork/ComputationGraph.outputConcurrent and rnnTimeStepConcurrent: many threads/sessions, one network
+ */
+public class TestConcurrentOutput extends BaseDL4JTest {
+    private static final int NUM_THREADS = 8;
+    private static final int ITERATIONS = 50;
+
+    @Test
+    public void testConcurrentOutputMLN() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).list()
+                        .layer(new LSTM.Builder().nIn(3).nOut(8).activation(Activation.TANH).build())
+                        .layer(new RnnOutputLayer.Builder().nIn(8).nOut(4).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                        .build();
+        final MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        INDArray paramsBefore = net.params().dup();
+
+        //Different input per thread, with different sequence lengths and masks
+        final List<INDArray> inputs = new ArrayList<>();
+        final List<INDArray> masks = new ArrayList<>();
+        final List<INDArray> expected = new ArrayList<>();
+        for (int i = 0; i < NUM_THREADS; i++) {
+            INDArray in = Nd4j.rand(new int[] {2, 3, 5 + i});
+            INDArray mask = Nd4j.ones(2, 5 + i);
+            mask.putScalar(1, 4 + i, 0.0);
+            inputs.add(in);
+            masks.add(mask);
+            expected.add(net.output(in, false, mask, null));
+        }
+
+        ExecutorService exec = Executors.newFixedThreadPool(NUM_THREADS);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int t = 0; t < NUM_THREADS; t++) {
+                final int idx = t;
+                futures.add(exec.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        for (int i = 0; i < ITERATIONS; i++) {
+                            INDArray out = net.outputConcurrent(inputs.get(idx), masks.get(idx), null);
+                            if (!expected.get(idx).equalsWithEps(out, 1e-5))
+                                return false;
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> f : futures)
+                assertTrue(f.get());
+        } finally {
+            exec.shutdown();
+        }
+
+        //Parameters are shared, not modified
+        assertEquals(paramsBefore, net.params());
+
+        //Replicas must follow parameter changes made in place
+        INDArray in = inputs.get(0);
+        net.params().muli(0.5);
+        assertEquals(net.output(in, false, masks.get(0), null), net.outputConcurrent(in, masks.get(0), null));
+    }
+
+    @Test
+    public void testConcurrentOutputCG() throws Exception {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).graphBuilder()
+                        .addInputs("in1", "in2")
+                        .addLayer("d1", new DenseLayer.Builder().nIn(4).nOut(6).build(), "in1")
+                        .addLayer("d2", new DenseLayer.Builder().nIn(5).nOut(6).build(), "in2")
+                        .addLayer("out", new OutputLayer.Builder().nIn(12).nOut(3).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "d1", "d2")
+                        .setOutputs("out").build();
+        final ComputationGraph net = new ComputationGraph(conf);
+        net.init();
+
+        final List<INDArray[]> inputs = new ArrayList<>();
+        final List<INDArray> expected = new ArrayList<>();
+        for (int i = 0; i < NUM_THREADS; i++) {
+            INDArray[] in = new INDArray[] {Nd4j.rand(i + 1, 4), Nd4j.rand(i + 1, 5)};
+            inputs.add(in);
+            expected.add(net.outputSingle(in));
+        }
+
+        ExecutorService exec = Executors.newFixedThreadPool(NUM_THREADS);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int t = 0; t < NUM_THREADS; t++) {
+                final int idx = t;
+                futures.add(exec.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        for (int i = 0; i < ITERATIONS; i++) {
+                            INDArray[] out = net.outputConcurrent(inputs.get(idx));
+                            if (out.length != 1 || !expected.get(idx).equalsWithEps(out[0], 1e-5))
+                                return false;
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> f : futures)
+                assertTrue(f.get());
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test
+    public void testRnnTimeStepConcurrentMLN() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).list()
+                        .layer(new LSTM.Builder().nIn(3).nOut(8).activation(Activation.TANH).build())
+                        .layer(new RnnOutputLayer.Builder().nIn(8).nOut(4).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                        .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        //Two independent sessions, interleaved on one network: compare to rnnTimeStep with stored state
+        INDArray in1 = Nd4j.rand(new int[] {1, 3, 6});
+        INDArray in2 = Nd4j.rand(new int[] {1, 3, 6});
+        INDArray exp1 = net.rnnTimeStep(in1);
+        net.rnnClearPreviousState();
+        INDArray exp2 = net.rnnTimeStep(in2);
+        net.rnnClearPreviousState();
+
+        Map<Integer, Map<String, INDArray>> state1 = null;
+        Map<Integer, Map<String, INDArray>> state2 = null;
+        for (int t = 0; t < 6; t++) {
+            INDArray step1 = in1.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(t));
+            INDArray step2 = in2.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(t));
+
+            Pair<INDArray, Map<Integer, Map<String, INDArray>>> out1 = net.rnnTimeStepConcurrent(step1, state1);
+            Pair<INDArray, Map<Integer, Map<String, INDArray>>> out2 = net.rnnTimeStepConcurrent(step2, state2);
+            assertEquals(exp1.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(t)), out1.getFirst());
+            assertEquals(exp2.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(t)), out2.getFirst());
+            state1 = out1.getSecond();
+            state2 = out2.getSecond();
+        }
+        //Stored state of the network itself is not used or modified
+        assertTrue(net.rnnGetPreviousState(0).isEmpty());
+
+        //Both sessions batched together: concatenate inputs and states along dimension 0
+        INDArray next1 = Nd4j.rand(1, 3);
+        INDArray next2 = Nd4j.rand(1, 3);
+        Map<Integer, Map<String, INDArray>> batchState = new HashMap<>();
+        for (Integer layer : state1.keySet()) {
+            Map<String, INDArray> m = new HashMap<>();
+            for (String key : state1.get(layer).keySet()) {
+                m.put(key, Nd4j.vstack(state1.get(layer).get(key), state2.get(layer).get(key)));
+            }
+            batchState.put(layer, m);
+        }
+        INDArray batchOut = net.rnnTimeStepConcurrent(Nd4j.vstack(next1, next2), batchState).getFirst();
+        assertEquals(net.rnnTimeStepConcurrent(next1, state1).getFirst(), batchOut.getRow(0));
+        assertEquals(net.rnnTimeStepConcurrent(next2, state2).getFirst(), batchOut.getRow(1));
+    }
+
+    @Test
+    public void testRnnTimeStepConcurrentCG() {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).graphBuilder()
+                        .addInputs("in")
+                        .addLayer("lstm", new LSTM.Builder().nIn(3).nOut(8).activation(Activation.TANH).build(), "in")
+                        .addLayer("out", new RnnOutputLayer.Builder().nIn(8).nOut(4).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "lstm")
+                        .setOutputs("out").build();
+        ComputationGraph net = new ComputationGraph(conf);
+        net.init();
+
+        INDArray in = Nd4j.rand(new int[] {2, 3, 5});
+        INDArray exp = net.rnnTimeStep(in)[0];
+        net.rnnClearPreviousState();
+
+        Map<String, Map<String, INDArray>> state = null;
+        for (int t = 0; t < 5; t++) {
+            INDArray step = in.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(t));
+            Pair<INDArray[], Map<String, Map<String, INDArray>>> out = net.rnnTimeStepConcurrent(state, step);
+            assertEquals(exp.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(t)), out.getFirst()[0]);
+            state = out.getSecond();
+        }
+        assertTrue(state.containsKey("lstm"));
+        assertTrue(net.rnnGetPreviousState("lstm").isEmpty());
+    }
+}
@@ -0,0 +1,280 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.misc;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MixedPrecision;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.updater.LossScaler;
+import org.deeplearning4j.util.MixedPrecisionUtils;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestMixedPrecision extends BaseDL4JTest {
+
+    @Override
+    public DataBuffer.Type getDataType() {
+        return DataBuffer.Type.FLOAT;
+    }
+
+    @Test
+    public void testRoundToHalf() {
+        INDArray arr = Nd4j.create(new float[] {1.0f, -2.5f, 65504f, 1e5f, -1e5f, 1.0001f, 1e-8f});
+        MixedPrecisionUtils.roundToHalf(arr);
+
+        assertEquals(1.0, arr.getDouble(0), 0.0);
+        assertEquals(-2.5, arr.getDouble(1), 0.0);
+        assertEquals(65504.0, arr.getDouble(2), 0.0);           //Max FP16 value
+        assertTrue(Double.isInfinite(arr.getDouble(3)) && arr.getDouble(3) > 0);
+        assertTrue(Double.isInfinite(arr.getDouble(4)) && arr.getDouble(4) < 0);
+        assertEquals(1.0, arr.getDouble(5), 0.0);               //Below FP16 precision
+        assertEquals(0.0, arr.getDouble(6), 0.0);               //Underflow
+
+        //Views: only the view is modified
+        INDArray matrix = Nd4j.valueArrayOf(3, 4, 1.0001);
+        MixedPrecisionUtils.roundToHalf(matrix.getColumn(1));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1.0, matrix.getDouble(i, 1), 0.0);
+            assertEquals(1.0001, matrix.getDouble(i, 0), 1e-6);
+        }
+
+        //Arrays larger than the per thread buffer are rounded in chunks
+        int length = 2 * MixedPrecisionUtils.MAX_HALF_BUFFER_LENGTH + 3;
+        INDArray large = Nd4j.valueArrayOf(1, length, 1.0001);
+        MixedPrecisionUtils.roundToHalf(large);
+        assertEquals(Nd4j.ones(1, length), large);
+    }
+
+    @Test
+    public void testLossScaler() {
+        MixedPrecision mp = new MixedPrecision.Builder().initialLossScale(1024).growthInterval(2).build();
+        LossScaler scaler = new LossScaler(mp);
+        assertEquals(1024.0, scaler.getScale(), 0.0);
+
+        INDArray grad = Nd4j.valueArrayOf(1, 4, 2048.0);
+        assertTrue(scaler.unscale(grad));
+        assertFalse(scaler.isSkipStep());
+        assertEquals(Nd4j.valueArrayOf(1, 4, 2.0), grad);
+        assertEquals(1024.0, scaler.getScale(), 0.0);
+
+        //Growth after growthInterval iterations without overflow
+        assertTrue(scaler.unscale(Nd4j.ones(1, 4)));
+        assertEquals(2048.0, scaler.getScale(), 0.0);
+
+        //Overflow: gradients unchanged, skip step and back off
+        INDArray overflow = Nd4j.create(new float[] {1.0f, Float.POSITIVE_INFINITY, 3.0f});
+        assertFalse(scaler.unscale(overflow));
+        assertTrue(scaler.isSkipStep());
+        assertEquals(1, scaler.getSkippedSteps());
+        assertEquals(1024.0, scaler.getScale(), 0.0);
+        assertEquals(1.0, overflow.getDouble(0), 0.0);
+
+        assertFalse(scaler.unscale(Nd4j.create(new float[] {Float.NaN})));
+        assertEquals(2, scaler.getSkippedSteps());
+        assertEquals(512.0, scaler.getScale(), 0.0);
+
+        assertTrue(scaler.unscale(Nd4j.ones(1, 4)));
+        assertFalse(scaler.isSkipStep());
+
+        //Static loss scale: overflow iterations are skipped, but the scale doesn't change
+        LossScaler staticScaler = new LossScaler(new MixedPrecision.Builder().initialLossScale(128)
+                        .dynamicLossScaling(false).growthInterval(1).build());
+        assertFalse(staticScaler.unscale(Nd4j.create(new float[] {Float.NaN})));
+        assertTrue(staticScaler.unscale(Nd4j.ones(1, 4)));
+        assertEquals(128.0, staticScaler.getScale(), 0.0);
+    }
+
+    @Test
+    public void testConfiguration() {
+        MixedPrecision mp = new MixedPrecision.Builder().initialLossScale(256).growthInterval(100)
+                        .halfPrecisionActivations(false).build();
+
+        MultiLayerConfiguration conf = getMLN(mp, 0.0).getLayerWiseConfigurations();
+        assertEquals(mp, conf.getMixedPrecision());
+        MultiLayerConfiguration fromJson = MultiLayerConfiguration.fromJson(conf.toJson());
+        assertEquals(conf, fromJson);
+        assertEquals(mp, fromJson.getMixedPrecision());
+        assertNull(getMLN(null, 0.0).getLayerWiseConfigurations().getMixedPrecision());
+
+        ComputationGraphConfiguration graphConf = getGraph(mp).getConfiguration();
+        assertEquals(mp, graphConf.getMixedPrecision());
+        assertEquals(graphConf, ComputationGraphConfiguration.fromJson(graphConf.toJson()));
+
+        try {
+            new MixedPrecision.Builder().initialLossScale(0).build();
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            //OK
+        }
+        try {
+            new MixedPrecision.Builder().backoffFactor(2.0).build();
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            //OK
+        }
+    }
+
+    @Test
+    public void testGradientsSameAsFP32() {
+        //Without FP16 rounding, loss scaling by a power of 2 should not change the gradients
+        MixedPrecision mp = new MixedPrecision.Builder().initialLossScale(1024).halfPrecisionActivations(false)
+                        .build();
+        DataSet ds = getData();
+
+        MultiLayerNetwork net = getMLN(null, 0.0);
+        MultiLayerNetwork netMp = getMLN(mp, 0.0);
+        net.setInput(ds.getFeatures());
+        net.setLabels(ds.getLabels());
+        net.computeGradientAndScore();
+        netMp.setInput(ds.getFeatures());
+        netMp.setLabels(ds.getLabels());
+        netMp.computeGradientAndScore();
+        assertEquals(net.score(), netMp.score(), 1e-6);
+        assertTrue(net.gradient().gradient().equalsWithEps(netMp.gradient().gradient(), 1e-6));
+        assertNotNull(netMp.getLossScaler());
+        assertFalse(netMp.getLossScaler().isSkipStep());
+
+        ComputationGraph graph = getGraph(null);
+        ComputationGraph graphMp = getGraph(mp);
+        graph.setInputs(ds.getFeatures());
+        graph.setLabels(ds.getLabels());
+        graph.computeGradientAndScore();
+        graphMp.setInputs(ds.getFeatures());
+        graphMp.setLabels(ds.getLabels());
+        graphMp.computeGradientAndScore();
+        assertEquals(graph.score(), graphMp.score(), 1e-6);
+        assertTrue(graph.gradient().gradient().equalsWithEps(graphMp.gradient().gradient(), 1e-6));
+    }
+
+    @Test
+    public void testOverflowSkipsUpdate() {
+        //Large loss scale + large errors: the scaled activation gradients overflow FP16
+        MixedPrecision mp = new MixedPrecision.Builder().initialLossScale(16777216).growthInterval(1000).build();
+        MultiLayerNetwork net = getMLN(mp, 0.0);
+        DataSet ds = getData();
+        ds.getLabels().muli(100);
+
+        INDArray paramsBefore = net.params().dup();
+        INDArray input = ds.getFeatures().dup();
+        net.fit(ds);
+        assertEquals(paramsBefore, net.params());
+        assertEquals(input, ds.getFeatures());      //Input should never be modified
+        LossScaler scaler = net.getLossScaler();
+        assertEquals(1, scaler.getSkippedSteps());
+        assertEquals(16777216 / 2, scaler.getScale(), 0.0);
+
+        //Loss scale is reduced until the gradients no longer overflow
+        for (int i = 0; i < 30; i++) {
+            net.fit(ds);
+        }
+        assertTrue(scaler.getScale() < 16777216 / 2);
+        assertFalse(scaler.isSkipStep());
+        assertFalse(paramsBefore.equals(net.params()));
+    }
+
+    @Test
+    public void testConvergenceSimilarToFP32() {
+        MixedPrecision mp = new MixedPrecision.Builder().growthInterval(10).build();
+        DataSet ds = getData();
+
+        MultiLayerNetwork net = getMLN(null, 0.01);
+        MultiLayerNetwork netMp = getMLN(mp, 0.01);
+        double initialScore = net.score(ds);
+        for (int i = 0; i < 100; i++) {
+            net.fit(ds);
+            netMp.fit(ds);
+        }
+        double score = net.score(ds);
+        double scoreMp = netMp.score(ds);
+        assertTrue(score < 0.5 * initialScore);
+        assertTrue(scoreMp < 0.5 * initialScore);
+        assertEquals(score, scoreMp, 0.1 * initialScore);
+
+        ComputationGraph graph = getGraph(null);
+        ComputationGraph graphMp = getGraph(mp);
+        initialScore = graph.score(ds);
+        for (int i = 0; i < 100; i++) {
+            graph.fit(ds);
+            graphMp.fit(ds);
+        }
+        score = graph.score(ds);
+        scoreMp = graphMp.score(ds);
+        assertTrue(score < 0.5 * initialScore);
+        assertTrue(scoreMp < 0.5 * initialScore);
+        assertEquals(score, scoreMp, 0.1 * initialScore);
+    }
+
+    private static DataSet getData() {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray features = Nd4j.rand(20, 4);
+        INDArray labels = Nd4j.zeros(20, 3);
+        for (int i = 0; i < 20; i++) {
+            //Label: a simple function of the features
+            labels.putScalar(i, features.getDouble(i, 0) > 0.5 ? 0 : (features.getDouble(i, 1) > 0.5 ? 1 : 2), 1.0);
+        }
+        return new DataSet(features, labels);
+    }
+
+    private static MultiLayerNetwork getMLN(MixedPrecision mp, double learningRate) {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345)
+                        .updater(learningRate > 0 ? new Adam(learningRate) : new Sgd(1.0))
+                        .activation(Activation.TANH).mixedPrecision(mp)
+                        .list()
+                        .layer(new DenseLayer.Builder().nIn(4).nOut(10).build())
+                        .layer(new OutputLayer.Builder().nIn(10).nOut(3).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                        .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+
+    private static ComputationGraph getGraph(MixedPrecision mp) {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345)
+                        .updater(new Adam(0.01)).activation(Activation.TANH).mixedPrecision(mp)
+                        .graphBuilder()
+                        .addInputs("in")
+                        .addLayer("d0", new DenseLayer.Builder().nIn(4).nOut(10).build(), "in")
+                        .addLayer("out", new OutputLayer.Builder().nIn(10).nOut(3).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "d0")
+                        .setOutputs("out")
+                        .build();
+        ComputationGraph graph = new ComputationGraph(conf);
+        graph.init();
+        return graph;
+    }
+}
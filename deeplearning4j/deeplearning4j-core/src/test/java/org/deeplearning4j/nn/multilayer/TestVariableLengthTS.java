@@ -568,6 +568,51 @@ public class TestVariableLengthTS extends BaseDL4JTest {
     }
 
 
+    @Test
+    public void testPackedSequenceInference() {
+        //Inference with masks skips masked time steps/examples in LSTM layers: check that outputs are the same as
+        // for each example on its own, for both sorted (by length) and unsorted minibatches
+        int nIn = 3;
+        int nOut = 4;
+        int[][] lengthsToTest = {{10, 9, 7, 7, 3, 1}, {3, 10, 1, 7, 9, 7}};
+
+        Layer[] rnnLayers = {new LSTM.Builder().nIn(nIn).nOut(5).activation(Activation.TANH).build(),
+                        new GravesLSTM.Builder().nIn(nIn).nOut(5).activation(Activation.TANH).build(),
+                        new GravesBidirectionalLSTM.Builder().nIn(nIn).nOut(5).activation(Activation.TANH).build()};
+
+        for (Layer rnn : rnnLayers) {
+            MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345L)
+                            .weightInit(WeightInit.XAVIER).list()
+                            .layer(0, rnn)
+                            .layer(1, new RnnOutputLayer.Builder(LossFunctions.LossFunction.MCXENT)
+                                            .activation(Activation.SOFTMAX).nIn(5).nOut(nOut).build())
+                            .build();
+            MultiLayerNetwork net = new MultiLayerNetwork(conf);
+            net.init();
+
+            for (int[] lengths : lengthsToTest) {
+                String msg = rnn.getClass().getSimpleName() + " - " + Arrays.toString(lengths);
+                int maxLength = 10;
+                INDArray input = Nd4j.rand(new int[] {lengths.length, nIn, maxLength});
+                INDArray mask = Nd4j.zeros(lengths.length, maxLength);
+                for (int i = 0; i < lengths.length; i++) {
+                    mask.get(NDArrayIndex.point(i), NDArrayIndex.interval(0, lengths[i])).assign(1.0);
+                }
+
+                INDArray out = net.output(input, false, mask, null);
+
+                for (int i = 0; i < lengths.length; i++) {
+                    INDArray in = input.get(NDArrayIndex.point(i), NDArrayIndex.all(),
+                                    NDArrayIndex.interval(0, lengths[i])).reshape(1, nIn, lengths[i]);
+                    INDArray exp = net.output(in);
+                    INDArray act = out.get(NDArrayIndex.point(i), NDArrayIndex.all(),
+                                    NDArrayIndex.interval(0, lengths[i])).reshape(1, nOut, lengths[i]);
+                    assertEquals(msg, exp, act);
+                }
+            }
+        }
+    }
+
     @Test
     public void testReverse(){
 
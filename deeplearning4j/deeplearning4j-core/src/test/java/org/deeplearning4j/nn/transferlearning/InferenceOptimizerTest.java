@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.transferlearning;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.ElementWiseVertex;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.*;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.BatchNormalizationParamInitializer;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InferenceOptimizerTest extends BaseDL4JTest {
+
+    @Override
+    public DataBuffer.Type getDataType() {
+        return DataBuffer.Type.DOUBLE;
+    }
+
+    @Test
+    public void testFoldBatchNormCnn() {
+        for (boolean hasBias : new boolean[] {true, false}) {
+            MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(new Sgd(0.1))
+                            .list()
+                            .layer(new ConvolutionLayer.Builder().kernelSize(2, 2).nOut(4).hasBias(hasBias)
+                                            .activation(Activation.IDENTITY).build())
+                            .layer(new BatchNormalization.Builder().build())
+                            .layer(new ActivationLayer.Builder().activation(Activation.RELU).build())
+                            .layer(new DropoutLayer.Builder(0.5).build())
+                            .layer(new ConvolutionLayer.Builder().kernelSize(2, 2).nOut(3)
+                                            .activation(Activation.IDENTITY).build())
+                            .layer(new BatchNormalization.Builder().activation(Activation.TANH).build())
+                            .layer(new SubsamplingLayer.Builder().kernelSize(2, 2).stride(1, 1).build())
+                            .layer(new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                                            .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                            .setInputType(InputType.convolutional(6, 6, 2))
+                            .build();
+            MultiLayerNetwork net = new MultiLayerNetwork(conf);
+            net.init();
+            randomizeBatchNorm(net.getLayers());
+
+            MultiLayerNetwork optimized = InferenceOptimizer.optimize(net);
+            //conv, activation, conv (with tanh), subsampling, output
+            assertEquals(5, optimized.getnLayers());
+            assertTrue(optimized.getLayer(0).conf().getLayer() instanceof ConvolutionLayer);
+            assertTrue(optimized.getLayer(1).conf().getLayer() instanceof ActivationLayer);
+            assertEquals(Activation.TANH.getActivationFunction(),
+                            ((ConvolutionLayer) optimized.getLayer(2).conf().getLayer()).getActivationFn());
+
+            INDArray in = Nd4j.rand(new int[] {5, 2, 6, 6});
+            INDArray exp = net.output(in);
+            INDArray out = optimized.output(in);
+            assertTrue(exp.equalsWithEps(out, 1e-8));
+        }
+    }
+
+    @Test
+    public void testFoldBatchNormDense() {
+        for (boolean lockGammaBeta : new boolean[] {false, true}) {
+            MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(new Sgd(0.1))
+                            .list()
+                            .layer(new DenseLayer.Builder().nIn(5).nOut(6).activation(Activation.IDENTITY).build())
+                            .layer(new BatchNormalization.Builder().lockGammaBeta(lockGammaBeta).gamma(1.5).beta(0.5)
+                                            .activation(Activation.RELU).build())
+                            .layer(new DenseLayer.Builder().nOut(6).activation(Activation.TANH).dropOut(0.5).build())
+                            .layer(new BatchNormalization.Builder().build())
+                            .layer(new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                                            .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                            .setInputType(InputType.feedForward(5))
+                            .build();
+            MultiLayerNetwork net = new MultiLayerNetwork(conf);
+            net.init();
+            randomizeBatchNorm(net.getLayers());
+
+            MultiLayerNetwork optimized = InferenceOptimizer.optimize(net);
+            //Second batch norm can't be folded: previous layer has tanh activation
+            assertEquals(4, optimized.getnLayers());
+            assertTrue(optimized.getLayer(2).conf().getLayer() instanceof BatchNormalization);
+            assertNull(optimized.getLayer(1).conf().getLayer().getIDropout());
+
+            INDArray in = Nd4j.rand(10, 5);
+            INDArray exp = net.output(in);
+            INDArray out = optimized.output(in);
+            assertTrue(exp.equalsWithEps(out, 1e-8));
+        }
+    }
+
+    @Test
+    public void testRemoveNoOpLayersPreProcessor() {
+        //Dropout layer with CNN -> FF preprocessor: preprocessor should be moved to the next layer
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(new Sgd(0.1))
+                        .list()
+                        .layer(new ConvolutionLayer.Builder().kernelSize(2, 2).nOut(4).activation(Activation.RELU)
+                                        .build())
+                        .layer(new ActivationLayer.Builder().activation(Activation.IDENTITY).build())
+                        .layer(new DenseLayer.Builder().nOut(5).activation(Activation.TANH).build())
+                        .layer(new DropoutLayer.Builder(0.5).build())
+                        .layer(new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                        .setInputType(InputType.convolutional(5, 5, 1))
+                        .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        MultiLayerNetwork optimized = InferenceOptimizer.optimize(net);
+        assertEquals(3, optimized.getnLayers());
+        assertNotNull(optimized.getLayerWiseConfigurations().getInputPreProcess(1));
+
+        INDArray in = Nd4j.rand(new int[] {3, 1, 5, 5});
+        assertEquals(net.output(in), optimized.output(in));
+    }
+
+    @Test
+    public void testComputationGraph() {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(new Sgd(0.1))
+                        .activation(Activation.IDENTITY)
+                        .graphBuilder()
+                        .addInputs("in")
+                        .addLayer("d1", new DenseLayer.Builder().nOut(5).build(), "in")
+                        .addLayer("bn1", new BatchNormalization.Builder().build(), "d1")
+                        .addLayer("d2", new DenseLayer.Builder().nOut(5).build(), "in")
+                        .addLayer("bn2", new BatchNormalization.Builder().build(), "d2")
+                        .addLayer("d3", new DenseLayer.Builder().nOut(5).activation(Activation.TANH).build(), "in")
+                        .addVertex("add1", new ElementWiseVertex(ElementWiseVertex.Op.Add), "bn1", "bn2")
+                        .addVertex("add2", new ElementWiseVertex(ElementWiseVertex.Op.Add), "add1", "d3")
+                        .addLayer("drop", new DropoutLayer.Builder(0.5).build(), "add2")
+                        //d4 has two consumers: batch norm can't be folded
+                        .addLayer("d4", new DenseLayer.Builder().nOut(5).build(), "drop")
+                        .addLayer("bn4", new BatchNormalization.Builder().build(), "d4")
+                        .addVertex("prod", new ElementWiseVertex(ElementWiseVertex.Op.Product), "bn4", "d4")
+                        .addLayer("out", new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "prod")
+                        .setOutputs("out")
+                        .setInputTypes(InputType.feedForward(4))
+                        .build();
+        ComputationGraph net = new ComputationGraph(conf);
+        net.init();
+        randomizeBatchNorm(net.getLayers());
+
+        ComputationGraph optimized = InferenceOptimizer.optimize(net);
+        ComputationGraphConfiguration c = optimized.getConfiguration();
+        assertFalse(c.getVertices().containsKey("bn1"));
+        assertFalse(c.getVertices().containsKey("bn2"));
+        assertFalse(c.getVertices().containsKey("add1"));
+        assertFalse(c.getVertices().containsKey("drop"));
+        assertTrue(c.getVertices().containsKey("bn4"));
+        List<String> add2Inputs = c.getVertexInputs().get("add2");
+        assertEquals(3, add2Inputs.size());
+        assertTrue(add2Inputs.contains("d1") && add2Inputs.contains("d2") && add2Inputs.contains("d3"));
+        assertEquals("add2", c.getVertexInputs().get("d4").get(0));
+
+        INDArray in = Nd4j.rand(10, 4);
+        INDArray exp = net.outputSingle(in);
+        INDArray out = optimized.outputSingle(in);
+        assertTrue(exp.equalsWithEps(out, 1e-8));
+
+        //Original network should not be modified
+        assertTrue(net.getConfiguration().getVertices().containsKey("bn1"));
+        assertEquals(exp, net.outputSingle(in));
+    }
+
+    private static void randomizeBatchNorm(Layer[] layers) {
+        for (Layer l : layers) {
+            if (l.conf().getLayer() instanceof BatchNormalization) {
+                int n = (int) l.getParam(BatchNormalizationParamInitializer.GLOBAL_MEAN).length();
+                l.getParam(BatchNormalizationParamInitializer.GLOBAL_MEAN).assign(Nd4j.rand(1, n));
+                l.getParam(BatchNormalizationParamInitializer.GLOBAL_VAR).assign(Nd4j.rand(1, n).addi(0.5));
+                if (!((BatchNormalization) l.conf().getLayer()).isLockGammaBeta()) {
+                    l.getParam(BatchNormalizationParamInitializer.GAMMA).assign(Nd4j.rand(1, n).addi(0.5));
+                    l.getParam(BatchNormalizationParamInitializer.BETA).assign(Nd4j.rand(1, n));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.transferlearning;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.datasets.iterator.impl.MnistDataSetIterator;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.layers.PoolingType;
+import org.deeplearning4j.nn.conf.layers.SubsamplingLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.deeplearning4j.optimize.listeners.PruningListener;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * FLOPs, inference time and accuracy of a LeNet-style network on MNIST: trained, pruned (50% of the units/filters of
+ * each layer, removed gradually while fine-tuning with {@link PruningListener}), and compacted with
+ * {@link NetworkPruner#compact(MultiLayerNetwork)}
+ */
+@Slf4j
+@Ignore
+public class NetworkPrunerPerformanceTest extends BaseDL4JTest {
+    private static final int MINIBATCH = 64;
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 20;
+
+    @Test
+    public void testPruneAndCompactLeNet() throws Exception {
+        DataSetIterator train = new MnistDataSetIterator(MINIBATCH, true, 12345);
+        DataSetIterator test = new MnistDataSetIterator(MINIBATCH, false, 12345);
+        InputType inputType = InputType.convolutionalFlat(28, 28, 1);
+
+        MultiLayerNetwork net = getLeNet(inputType);
+        net.fit(train);
+        double accuracy = net.evaluate(test).accuracy();
+
+        //Fine-tune for one more epoch while pruning (10 steps), then compact
+        MultiLayerNetwork pruned = net.clone();
+        pruned.setListeners(new PruningListener.Builder(0.5).structured(true).pruneEveryNIterations(50)
+                        .numPruningSteps(10).build());
+        pruned.fit(train);
+        double prunedAccuracy = pruned.evaluate(test).accuracy();
+        MultiLayerNetwork compacted = NetworkPruner.compact(pruned);
+        double compactedAccuracy = compacted.evaluate(test).accuracy();
+
+        INDArray in = Nd4j.rand(MINIBATCH, 784);
+        assertTrue(pruned.output(in).equalsWithEps(compacted.output(in), 1e-4));
+
+        long flops = NetworkPruner.flops(net, inputType);
+        long compactedFlops = NetworkPruner.flops(compacted, inputType);
+        long time = time(net, in);
+        long compactedTime = time(compacted, in);
+        log.info("Original: {} parameters, {} MFLOPs per example, {} ms per minibatch of {}, accuracy {}",
+                        net.numParams(), flops / 1e6, time / 1e6, MINIBATCH, accuracy);
+        log.info("Pruned and compacted: {} parameters, {} MFLOPs per example, {} ms per minibatch of {}, accuracy {} "
+                        + "(before compaction: {})", compacted.numParams(), compactedFlops / 1e6, compactedTime / 1e6,
+                        MINIBATCH, compactedAccuracy, prunedAccuracy);
+        log.info("FLOPs reduced {}x, inference time reduced {}x, accuracy change {}", (double) flops / compactedFlops,
+                        (double) time / compactedTime, compactedAccuracy - accuracy);
+    }
+
+    private static long time(MultiLayerNetwork net, INDArray in) {
+        for (int i = 0; i < WARMUP; i++) {
+            net.output(in);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            net.output(in);
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+
+    private static MultiLayerNetwork getLeNet(InputType inputType) {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                        .seed(12345)
+                        .updater(new Adam(1e-3))
+                        .weightInit(WeightInit.XAVIER)
+                        .list()
+                        .layer(new ConvolutionLayer.Builder().kernelSize(5, 5).nOut(20).activation(Activation.RELU)
+                                        .build())
+                        .layer(new SubsamplingLayer.Builder(PoolingType.MAX).kernelSize(2, 2).stride(2, 2).build())
+                        .layer(new ConvolutionLayer.Builder().kernelSize(5, 5).nOut(50).activation(Activation.RELU)
+                                        .build())
+                        .layer(new SubsamplingLayer.Builder(PoolingType.MAX).kernelSize(2, 2).stride(2, 2).build())
+                        .layer(new DenseLayer.Builder().nOut(500).activation(Activation.RELU).build())
+                        .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nOut(10)
+                                        .activation(Activation.SOFTMAX).build())
+                        .setInputType(inputType)
+                        .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+}
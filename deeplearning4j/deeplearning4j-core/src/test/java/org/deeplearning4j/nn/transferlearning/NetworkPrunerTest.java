@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.transferlearning;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.MergeVertex;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.*;
+import org.deeplearning4j.nn.conf.preprocessor.CnnToFeedForwardPreProcessor;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.BatchNormalizationParamInitializer;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.deeplearning4j.optimize.listeners.PruningListener;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class NetworkPrunerTest extends BaseDL4JTest {
+
+    @Override
+    public DataBuffer.Type getDataType() {
+        return DataBuffer.Type.DOUBLE;
+    }
+
+    @Test
+    public void testPruneWeights() {
+        MultiLayerNetwork net = getDenseNetwork();
+        INDArray outputW = net.getLayer(3).getParam(DefaultParamInitializer.WEIGHT_KEY).dup();
+
+        Map<String, INDArray> masks = NetworkPruner.pruneWeights(net, 0.75);
+        assertEquals(2, masks.size());
+        assertTrue(masks.containsKey("0_W") && masks.containsKey("2_W"));
+        for (int i : new int[] {0, 2}) {
+            INDArray w = net.getLayer(i).getParam(DefaultParamInitializer.WEIGHT_KEY);
+            double zeros = w.length() - w.neq(0.0).sumNumber().doubleValue();
+            assertEquals(0.75, zeros / w.length(), 0.05);
+        }
+        assertEquals(0.75, NetworkPruner.sparsity(net), 0.05);
+        //Output layer is not pruned
+        assertEquals(outputW, net.getLayer(3).getParam(DefaultParamInitializer.WEIGHT_KEY));
+
+        //Masks keep pruned weights at 0
+        double sparsity = NetworkPruner.sparsity(net);
+        net.fit(new DataSet(Nd4j.rand(8, 5), Nd4j.rand(8, 3)));
+        NetworkPruner.applyMasks(net, masks);
+        assertTrue(NetworkPruner.sparsity(net) >= sparsity);
+    }
+
+    @Test
+    public void testCompactDense() {
+        MultiLayerNetwork net = getDenseNetwork();
+        randomizeBatchNorm(net.getLayers());
+        Map<String, INDArray> masks = NetworkPruner.pruneChannels(net, 0.5);
+        assertEquals(4, masks.size());
+        //Also remove a unit with non-zero bias: its constant output must be folded into the next layer
+        int unit = 0;
+        while (masks.get("2_b").getDouble(unit) == 0.0) {
+            unit++;
+        }
+        net.getLayer(2).getParam(DefaultParamInitializer.WEIGHT_KEY).getColumn(unit).assign(0.0);
+        net.getLayer(2).getParam(DefaultParamInitializer.BIAS_KEY).putScalar(unit, 0.5);
+
+        MultiLayerNetwork compacted = NetworkPruner.compact(net);
+        assertEquals(5, ((FeedForwardLayer) compacted.getLayer(0).conf().getLayer()).getNOut());
+        assertEquals(5, ((FeedForwardLayer) compacted.getLayer(1).conf().getLayer()).getNIn());
+        assertEquals(5, ((FeedForwardLayer) compacted.getLayer(2).conf().getLayer()).getNIn());
+        assertEquals(2, ((FeedForwardLayer) compacted.getLayer(2).conf().getLayer()).getNOut());
+        assertEquals(2, ((FeedForwardLayer) compacted.getLayer(3).conf().getLayer()).getNIn());
+        assertTrue(compacted.numParams() < net.numParams());
+        assertTrue(NetworkPruner.flops(compacted, InputType.feedForward(5))
+                        < NetworkPruner.flops(net, InputType.feedForward(5)));
+
+        INDArray in = Nd4j.rand(10, 5);
+        assertTrue(net.output(in).equalsWithEps(compacted.output(in), 1e-8));
+
+        //Original network should not be modified
+        assertEquals(10, ((FeedForwardLayer) net.getLayer(0).conf().getLayer()).getNOut());
+    }
+
+    @Test
+    public void testCompactCnn() {
+        for (boolean globalPooling : new boolean[] {false, true}) {
+            MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(new Sgd(0.1))
+                            .list()
+                            .layer(new ConvolutionLayer.Builder().kernelSize(2, 2).nOut(6).activation(Activation.RELU)
+                                            .build())
+                            .layer(new BatchNormalization.Builder().build())
+                            .layer(new SubsamplingLayer.Builder().kernelSize(2, 2).stride(1, 1).build())
+                            .layer(new ConvolutionLayer.Builder().kernelSize(2, 2).nOut(4)
+                                            .activation(Activation.SIGMOID).build())
+                            .layer(globalPooling ? new GlobalPoolingLayer.Builder(PoolingType.AVG).build()
+                                            : new DropoutLayer.Builder(0.5).build())
+                            .layer(new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                                            .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                            .setInputType(InputType.convolutional(6, 6, 2))
+                            .build();
+            MultiLayerNetwork net = new MultiLayerNetwork(conf);
+            net.init();
+            randomizeBatchNorm(net.getLayers());
+            NetworkPruner.pruneChannels(net, 0.5);
+
+            MultiLayerNetwork compacted = NetworkPruner.compact(net);
+            assertEquals(3, ((FeedForwardLayer) compacted.getLayer(0).conf().getLayer()).getNOut());
+            assertEquals(3, ((FeedForwardLayer) compacted.getLayer(1).conf().getLayer()).getNOut());
+            assertEquals(3, ((FeedForwardLayer) compacted.getLayer(3).conf().getLayer()).getNIn());
+            assertEquals(2, ((FeedForwardLayer) compacted.getLayer(3).conf().getLayer()).getNOut());
+            if (!globalPooling) {
+                //Removed channels output sigmoid(bias) everywhere: folded into the output layer bias
+                CnnToFeedForwardPreProcessor p = (CnnToFeedForwardPreProcessor) compacted.getLayerWiseConfigurations()
+                                .getInputPreProcess(5);
+                assertEquals(2, p.getNumChannels());
+            }
+
+            INDArray in = Nd4j.rand(new int[] {5, 2, 6, 6});
+            assertTrue(net.output(in).equalsWithEps(compacted.output(in), 1e-8));
+            assertTrue(NetworkPruner.flops(compacted, InputType.convolutional(6, 6, 2))
+                            < NetworkPruner.flops(net, InputType.convolutional(6, 6, 2)));
+        }
+    }
+
+    @Test
+    public void testCompactComputationGraph() {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(new Sgd(0.1))
+                        .activation(Activation.TANH)
+                        .graphBuilder()
+                        .addInputs("in")
+                        .addLayer("d_1", new DenseLayer.Builder().nOut(8).build(), "in")
+                        .addLayer("d_2", new DenseLayer.Builder().nOut(8).build(), "d_1")
+                        .addLayer("d_3", new DenseLayer.Builder().nOut(8).build(), "in")
+                        //d_2 and d_3 are used by a merge vertex: can't be compacted
+                        .addVertex("merge", new MergeVertex(), "d_2", "d_3")
+                        .addLayer("out", new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "merge")
+                        .setOutputs("out")
+                        .setInputTypes(InputType.feedForward(4))
+                        .build();
+        ComputationGraph net = new ComputationGraph(conf);
+        net.init();
+        Map<String, INDArray> masks = NetworkPruner.pruneChannels(net, 0.5);
+        assertTrue(masks.containsKey("d_1_W") && masks.containsKey("d_1_b"));
+        NetworkPruner.applyMasks(net, masks);
+
+        ComputationGraph compacted = NetworkPruner.compact(net);
+        assertEquals(4, ((FeedForwardLayer) compacted.getLayer("d_1").conf().getLayer()).getNOut());
+        assertEquals(4, ((FeedForwardLayer) compacted.getLayer("d_2").conf().getLayer()).getNIn());
+        assertEquals(8, ((FeedForwardLayer) compacted.getLayer("d_2").conf().getLayer()).getNOut());
+        assertEquals(8, ((FeedForwardLayer) compacted.getLayer("d_3").conf().getLayer()).getNOut());
+
+        INDArray in = Nd4j.rand(10, 4);
+        assertTrue(net.outputSingle(in).equalsWithEps(compacted.outputSingle(in), 1e-8));
+        assertTrue(NetworkPruner.flops(compacted, InputType.feedForward(4))
+                        < NetworkPruner.flops(net, InputType.feedForward(4)));
+    }
+
+    @Test
+    public void testPruningListener() {
+        MultiLayerNetwork net = getDenseNetwork();
+        PruningListener l = new PruningListener.Builder(0.5).structured(true).startIteration(2)
+                        .pruneEveryNIterations(3).numPruningSteps(2).build();
+        net.setListeners(l);
+
+        DataSet ds = new DataSet(Nd4j.rand(8, 5), Nd4j.rand(8, 3));
+        //Sparsity: 0.5 * (1 - 0.5^3) = 0.4375 after the first step (4 of 10 units of layer 0), 0.5 after the second
+        int[] expZeroUnits = {0, 4, 5};
+        for (int i = 0; i < 10; i++) {
+            net.fit(ds);
+            INDArray w = net.getLayer(0).getParam(DefaultParamInitializer.WEIGHT_KEY);
+            INDArray nonZero = w.neq(0.0).sum(0);
+            assertEquals(expZeroUnits[l.getPruningStepsDone()],
+                            nonZero.length() - nonZero.neq(0.0).sumNumber().intValue());
+        }
+        assertEquals(2, l.getPruningStepsDone());
+    }
+
+    @Test
+    public void testPruningListenerSerialization() {
+        MultiLayerNetwork net = getDenseNetwork();
+        PruningListener l = new PruningListener.Builder(0.5).structured(true).pruneEveryNIterations(100)
+                        .numPruningSteps(2).build();
+        net.setListeners(l);
+
+        //First pruning step at iteration 0: 4 of 10 units of layer 0 removed
+        DataSet ds = new DataSet(Nd4j.rand(8, 5), Nd4j.rand(8, 3));
+        net.fit(ds);
+        assertEquals(1, l.getPruningStepsDone());
+
+        //Masks are transient: they must be rebuilt from the pruned weights, so that pruned units stay removed
+        PruningListener restored = SerializationUtils.clone(l);
+        assertEquals(1, restored.getPruningStepsDone());
+        assertNull(restored.getMasks());
+        net.setListeners(restored);
+        for (int i = 0; i < 3; i++) {
+            net.fit(ds);
+            INDArray w = net.getLayer(0).getParam(DefaultParamInitializer.WEIGHT_KEY);
+            INDArray b = net.getLayer(0).getParam(DefaultParamInitializer.BIAS_KEY);
+            INDArray nonZero = w.neq(0.0).sum(0);
+            assertEquals(4, nonZero.length() - nonZero.neq(0.0).sumNumber().intValue());
+            assertEquals(0.0, b.mul(nonZero.eq(0.0)).sumNumber().doubleValue(), 0.0);
+        }
+        assertNotNull(restored.getMasks());
+        assertEquals(1, restored.getPruningStepsDone());
+    }
+
+    private static MultiLayerNetwork getDenseNetwork() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(new Sgd(0.1))
+                        .list()
+                        .layer(new DenseLayer.Builder().nIn(5).nOut(10).activation(Activation.RELU).build())
+                        .layer(new BatchNormalization.Builder().activation(Activation.TANH).build())
+                        .layer(new DenseLayer.Builder().nOut(6).activation(Activation.SIGMOID).build())
+                        .layer(new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                        .setInputType(InputType.feedForward(5))
+                        .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+
+    private static void randomizeBatchNorm(Layer[] layers) {
+        for (Layer l : layers) {
+            if (l.conf().getLayer() instanceof BatchNormalization) {
+                int n = (int) l.getParam(BatchNormalizationParamInitializer.GLOBAL_MEAN).length();
+                l.getParam(BatchNormalizationParamInitializer.GLOBAL_MEAN).assign(Nd4j.rand(1, n));
+                l.getParam(BatchNormalizationParamInitializer.GLOBAL_VAR).assign(Nd4j.rand(1, n).addi(0.5));
+                l.getParam(BatchNormalizationParamInitializer.GAMMA).assign(Nd4j.rand(1, n).addi(0.5));
+                l.getParam(BatchNormalizationParamInitializer.BETA).assign(Nd4j.rand(1, n));
+            }
+        }
+    }
+}
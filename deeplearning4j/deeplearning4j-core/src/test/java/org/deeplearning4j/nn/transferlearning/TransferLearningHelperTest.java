@@ -18,6 +18,8 @@ package org.deeplearning4j.nn.transferlearning;
 
 import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.datasets.iterator.ExistingDataSetIterator;
+import org.deeplearning4j.datasets.iterator.IteratorMultiDataSetIterator;
 import org.deeplearning4j.nn.api.OptimizationAlgorithm;
 import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
@@ -27,7 +29,9 @@ import org.deeplearning4j.nn.conf.layers.DenseLayer;
 import org.deeplearning4j.nn.conf.layers.OutputLayer;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
@@ -36,9 +40,12 @@ import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.learning.config.Sgd;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 /**
  * Created by susaneraly on 2/24/17.
@@ -46,6 +53,9 @@ import static org.junit.Assert.assertEquals;
 @Slf4j
 public class TransferLearningHelperTest extends BaseDL4JTest {
 
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
     @Test
     public void tesUnfrozenSubset() {
 
@@ -247,4 +257,171 @@ public class TransferLearningHelperTest extends BaseDL4JTest {
         INDArray act = modelNow.params();
         assertEquals(expected, act);
     }
+
+    @Test
+    public void testFeaturizeToDiskMLN() throws Exception {
+        MultiLayerNetwork net = new MultiLayerNetwork(new NeuralNetConfiguration.Builder().updater(new Sgd(0.1))
+                        .seed(12345).activation(Activation.TANH).list()
+                        .layer(0, new DenseLayer.Builder().nIn(4).nOut(10).build())
+                        .layer(1, new DenseLayer.Builder().nIn(10).nOut(8).build())
+                        .layer(2, new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT)
+                                        .activation(Activation.SOFTMAX).nIn(8).nOut(3).build())
+                        .build());
+        net.init();
+        MultiLayerNetwork net2 = net.clone();
+        TransferLearningHelper helper = new TransferLearningHelper(net, 1);
+
+        List<DataSet> data = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            data.add(new DataSet(Nd4j.rand(5, 4), Nd4j.rand(5, 3)));
+        }
+
+        for (String compression : new String[] {null, "FLOAT16"}) {
+            File dir = testDir.newFolder();
+            FeaturizedDataSetIterator iter =
+                            helper.featurizeToDisk(new ExistingDataSetIterator(data), dir, 3, compression);
+            assertEquals(data.size(), iter.numBatches());
+
+            //Iterate twice: featurized data should be reusable for multiple epochs
+            for (int epoch = 0; epoch < 2; epoch++) {
+                int count = 0;
+                while (iter.hasNext()) {
+                    DataSet exp = helper.featurize(data.get(count++));
+                    DataSet act = iter.next();
+                    assertFalse(act.getFeatures().isCompressed());
+                    if (compression == null) {
+                        assertEquals(exp.getFeatures(), act.getFeatures());
+                    } else {
+                        assertTrue(exp.getFeatures().equalsWithEps(act.getFeatures(), 1e-2));
+                    }
+                    assertEquals(exp.getLabels(), act.getLabels());
+                }
+                assertEquals(data.size(), count);
+                iter.reset();
+            }
+
+            //Existing cache can be loaded directly; existing cache should not be overwritten
+            assertEquals(data.size(), new FeaturizedDataSetIterator(dir).numBatches());
+            try {
+                helper.featurizeToDisk(new ExistingDataSetIterator(data), dir, 3, compression);
+                fail("Expected exception");
+            } catch (IllegalStateException e) {
+                assertTrue(e.getMessage().contains("already contains"));
+            }
+        }
+
+        //Fitting from the cache should give the same result as fitting the featurized data directly
+        TransferLearningHelper helper2 = new TransferLearningHelper(net2, 1);
+        FeaturizedDataSetIterator iter = helper.featurizeToDisk(new ExistingDataSetIterator(data), testDir.newFolder());
+        for (int epoch = 0; epoch < 2; epoch++) {
+            helper.fitFeaturized(iter);
+            for (DataSet ds : data) {
+                helper2.fitFeaturized(helper2.featurize(ds));
+            }
+        }
+        assertEquals(net2.params(), net.params());
+    }
+
+    @Test
+    public void testFeaturizeToDiskFailure() throws Exception {
+        MultiLayerNetwork net = new MultiLayerNetwork(new NeuralNetConfiguration.Builder().updater(new Sgd(0.1))
+                        .seed(12345).activation(Activation.TANH).list()
+                        .layer(0, new DenseLayer.Builder().nIn(4).nOut(10).build())
+                        .layer(1, new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT)
+                                        .activation(Activation.SOFTMAX).nIn(10).nOut(3).build())
+                        .build());
+        net.init();
+        TransferLearningHelper helper = new TransferLearningHelper(net, 0);
+
+        final List<DataSet> data = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            data.add(new DataSet(Nd4j.rand(5, 4), Nd4j.rand(5, 3)));
+        }
+        //Source fails after 3 minibatches
+        Iterator<DataSet> failing = new Iterator<DataSet>() {
+            private int count = 0;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public DataSet next() {
+                if (count == 3) {
+                    throw new IllegalStateException("Source failed");
+                }
+                return data.get(count++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        File dir = testDir.newFolder();
+        try {
+            helper.featurizeToDisk(new ExistingDataSetIterator(failing), dir, 2, null);
+            fail("Expected exception");
+        } catch (RuntimeException e) {
+            //expected
+        }
+
+        //The partial cache can't be loaded
+        try {
+            new FeaturizedDataSetIterator(dir);
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("Incomplete"));
+        }
+
+        //Featurizing again to the same directory replaces the partial cache
+        FeaturizedDataSetIterator iter = helper.featurizeToDisk(new ExistingDataSetIterator(data), dir, 2, null);
+        assertEquals(data.size(), iter.numBatches());
+        int count = 0;
+        while (iter.hasNext()) {
+            assertEquals(helper.featurize(data.get(count++)).getFeatures(), iter.next().getFeatures());
+        }
+        assertEquals(data.size(), count);
+    }
+
+    @Test
+    public void testFeaturizeToDiskGraph() throws Exception {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder().updater(new Sgd(0.1)).seed(12345)
+                        .activation(Activation.TANH).graphBuilder().addInputs("in1", "in2")
+                        .addLayer("dense1", new DenseLayer.Builder().nIn(4).nOut(6).build(), "in1")
+                        .addLayer("dense2", new DenseLayer.Builder().nIn(6).nOut(5).build(), "dense1")
+                        .addVertex("merge", new MergeVertex(), "dense2", "in2")
+                        .addLayer("out", new OutputLayer.Builder(LossFunctions.LossFunction.MSE)
+                                        .activation(Activation.IDENTITY).nIn(7).nOut(3).build(), "merge")
+                        .setOutputs("out").build();
+        ComputationGraph graph = new ComputationGraph(conf);
+        graph.init();
+        TransferLearningHelper helper = new TransferLearningHelper(graph, "dense2");
+
+        List<org.nd4j.linalg.dataset.api.MultiDataSet> data = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            data.add(new MultiDataSet(new INDArray[] {Nd4j.rand(5, 4), Nd4j.rand(5, 2)},
+                            new INDArray[] {Nd4j.rand(5, 3)}));
+        }
+
+        FeaturizedMultiDataSetIterator iter = helper.featurizeToDisk(
+                        new IteratorMultiDataSetIterator(data.iterator(), 5), testDir.newFolder(), 2, "FLOAT16");
+        assertEquals(data.size(), iter.numBatches());
+        int count = 0;
+        while (iter.hasNext()) {
+            MultiDataSet exp = helper.featurize((MultiDataSet) data.get(count++));
+            org.nd4j.linalg.dataset.api.MultiDataSet act = iter.next();
+            assertEquals(exp.getFeatures().length, act.getFeatures().length);
+            for (int i = 0; i < exp.getFeatures().length; i++) {
+                assertTrue(exp.getFeatures(i).equalsWithEps(act.getFeatures(i), 1e-2));
+            }
+            assertEquals(exp.getLabels(0), act.getLabels(0));
+        }
+        assertEquals(data.size(), count);
+
+        iter.reset();
+        helper.fitFeaturized(iter);
+    }
 }
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.updater;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.GradientNormalization;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.*;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that the fused updater gives the same parameters and updater state as the standard updater implementation,
+ * including L1/L2 regularization and gradient normalization
+ */
+public class FusedUpdaterHelperTest extends BaseDL4JTest {
+    private static final double EPS = 1e-8;
+
+    static {
+        Nd4j.setDataType(DataBuffer.Type.DOUBLE);
+    }
+
+    @Before
+    public void before() {
+        FusedUpdaterHelper.setEnabled(true);
+    }
+
+    @After
+    public void after() {
+        FusedUpdaterHelper.setEnabled(false);
+    }
+
+    @Test
+    public void testEquivalence() {
+        assumeTrue(FusedUpdaterHelper.isAvailable());
+
+        IUpdater[] updaters = {new Sgd(0.1), new Nesterovs(0.1, 0.9), new Adam(0.01), new RmsProp(0.01)};
+        for (IUpdater u : updaters) {
+            for (boolean mixedBlocks : new boolean[] {false, true}) {
+                String msg = u.getClass().getSimpleName() + ", mixedBlocks=" + mixedBlocks;
+
+                MultiLayerNetwork fused = getNetwork(u, mixedBlocks);
+                MultiLayerNetwork standard = getNetwork(u, mixedBlocks);
+                standard.setParams(fused.params().dup());
+
+                //Check that the fused updater is used for (at least) the first block
+                List<UpdaterBlock> blocks = ((BaseMultiLayerUpdater) fused.getUpdater()).getUpdaterBlocks();
+                assertTrue(msg, blocks.get(0).usesFusedUpdater());
+
+                Nd4j.getRandom().setSeed(12345);
+                for (int i = 0; i < 5; i++) {
+                    DataSet ds = new DataSet(Nd4j.rand(8, 10).muli(4).subi(2), Nd4j.zeros(8, 3));
+                    for (int j = 0; j < 8; j++) {
+                        ds.getLabels().putScalar(j, j % 3, 1.0);
+                    }
+
+                    FusedUpdaterHelper.setEnabled(true);
+                    fused.fit(ds);
+                    FusedUpdaterHelper.setEnabled(false);
+                    assertFalse(msg, blocks.get(0).usesFusedUpdater());
+                    standard.fit(ds);
+
+                    assertTrue(msg + ", iter=" + i, standard.params().equalsWithEps(fused.params(), EPS));
+                    INDArray stateStandard = standard.getUpdater().getStateViewArray();
+                    INDArray stateFused = fused.getUpdater().getStateViewArray();
+                    if (stateStandard != null) {
+                        assertTrue(msg + ", iter=" + i, stateStandard.equalsWithEps(stateFused, EPS));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAppliesClipping() {
+        DenseLayer clip = new DenseLayer.Builder().nIn(2).nOut(2)
+                        .gradientNormalization(GradientNormalization.ClipElementWiseAbsoluteValue)
+                        .gradientNormalizationThreshold(0.5).build();
+        DenseLayer renorm = new DenseLayer.Builder().nIn(2).nOut(2)
+                        .gradientNormalization(GradientNormalization.RenormalizeL2PerLayer).build();
+        assertTrue(FusedUpdaterHelper.appliesClipping(clip));
+        assertFalse(FusedUpdaterHelper.appliesClipping(renorm));
+
+        assertTrue(FusedUpdaterHelper.supports(new Adam()));
+        assertTrue(FusedUpdaterHelper.supports(new Sgd()));
+        assertFalse(FusedUpdaterHelper.supports(new AdaGrad()));
+        assertFalse(FusedUpdaterHelper.supports(new NoOp()));
+    }
+
+    private static MultiLayerNetwork getNetwork(IUpdater updater, boolean mixedBlocks) {
+        //Layer 0: elementwise clipping, L1 and L2. Layer 1: L2 only, normalization not supported by fused updater
+        //Layer 2: no regularization; with mixedBlocks, a different (unsupported) updater for the bias
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                        .seed(12345)
+                        .updater(updater)
+                        .weightInit(WeightInit.XAVIER)
+                        .list()
+                        .layer(0, new DenseLayer.Builder().nIn(10).nOut(12).activation(Activation.TANH)
+                                        .l1(0.001).l2(0.01)
+                                        .gradientNormalization(GradientNormalization.ClipElementWiseAbsoluteValue)
+                                        .gradientNormalizationThreshold(0.05).build())
+                        .layer(1, new DenseLayer.Builder().nIn(12).nOut(8).activation(Activation.TANH)
+                                        .l2(0.02)
+                                        .gradientNormalization(mixedBlocks ? GradientNormalization.RenormalizeL2PerLayer
+                                                        : GradientNormalization.None).build())
+                        .layer(2, new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(8).nOut(3)
+                                        .activation(Activation.SOFTMAX)
+                                        .biasUpdater(mixedBlocks ? new AdaGrad(0.1) : null).build())
+                        .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+}
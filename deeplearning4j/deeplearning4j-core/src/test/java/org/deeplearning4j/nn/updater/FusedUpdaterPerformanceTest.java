@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.updater;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.GradientNormalization;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.*;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+/**
+ * Time per updater application (updater, L2 and elementwise gradient clipping) for a network with ~100M parameters,
+ * with and without the fused updater ({@link FusedUpdaterHelper})
+ */
+@Slf4j
+@Ignore
+public class FusedUpdaterPerformanceTest extends BaseDL4JTest {
+    //10000 x 10000 dense layer: 100M parameters
+    private static final int SIZE = 10000;
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 20;
+
+    @Before
+    public void before() {
+        FusedUpdaterHelper.setEnabled(true);
+    }
+
+    @After
+    public void after() {
+        FusedUpdaterHelper.setEnabled(false);
+    }
+
+    @Test
+    public void testUpdaterPerformance() {
+        IUpdater[] updaters = {new Sgd(0.1), new Nesterovs(0.1, 0.9), new Adam(1e-3), new RmsProp(1e-3)};
+        for (IUpdater u : updaters) {
+            for (boolean clipping : new boolean[] {false, true}) {
+                MultiLayerNetwork net = getNetwork(u, clipping);
+                net.setInput(Nd4j.rand(4, SIZE));
+                net.setLabels(Nd4j.create(4, 10).putScalar(0, 1.0));
+                net.computeGradientAndScore();
+                Gradient gradient = net.gradient();
+                INDArray original = gradient.gradient().dup();
+
+                long standard = timeUpdater(net, gradient, original, false);
+                long fused = timeUpdater(net, gradient, original, true);
+                log.info("{}, {} parameters, clipping={}: standard {} ms, fused {} ms per update ({}x)",
+                                u.getClass().getSimpleName(), net.numParams(), clipping, standard / 1000000.0,
+                                fused / 1000000.0, (double) standard / fused);
+            }
+        }
+    }
+
+    private static long timeUpdater(MultiLayerNetwork net, Gradient gradient, INDArray original, boolean fused) {
+        FusedUpdaterHelper.setEnabled(fused);
+        long total = 0;
+        for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+            gradient.gradient().assign(original);
+            Nd4j.getExecutioner().commit();
+            long start = System.nanoTime();
+            net.getUpdater().update(net, gradient, i, 0, 4, LayerWorkspaceMgr.noWorkspaces());
+            Nd4j.getExecutioner().commit();
+            if (i >= WARMUP) {
+                total += System.nanoTime() - start;
+            }
+        }
+        return total / ITERATIONS;
+    }
+
+    private static MultiLayerNetwork getNetwork(IUpdater updater, boolean clipping) {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                        .updater(updater)
+                        .weightInit(WeightInit.XAVIER)
+                        .l2(1e-4)
+                        .gradientNormalization(clipping ? GradientNormalization.ClipElementWiseAbsoluteValue
+                                        : GradientNormalization.None)
+                        .gradientNormalizationThreshold(1.0)
+                        .list()
+                        .layer(0, new DenseLayer.Builder().nIn(SIZE).nOut(SIZE).activation(Activation.TANH).build())
+                        .layer(1, new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(SIZE).nOut(10)
+                                        .activation(Activation.SOFTMAX).build())
+                        .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+}
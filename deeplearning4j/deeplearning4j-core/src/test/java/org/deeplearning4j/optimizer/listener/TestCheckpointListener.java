@@ -22,6 +22,7 @@ import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.layers.OutputLayer;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.optimize.listeners.Checkpoint;
 import org.deeplearning4j.optimize.listeners.CheckpointListener;
 import org.deeplearning4j.util.ModelSerializer;
 import org.junit.Rule;
@@ -35,6 +36,7 @@ import org.nd4j.linalg.primitives.Pair;
 import java.io.File;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -242,6 +244,47 @@ public class TestCheckpointListener extends BaseDL4JTest {
         assertEquals(5, l.availableCheckpoints().size());
     }
 
+    @Test
+    public void testCheckpointListenerAsync() throws Exception {
+        File f = tempDir.newFolder();
+        Pair<MultiLayerNetwork, DataSetIterator> p = getNetAndData();
+        MultiLayerNetwork net = p.getFirst();
+        DataSetIterator iter = p.getSecond();
+
+
+        CheckpointListener l = new CheckpointListener.Builder(f)
+                .keepLast(3)
+                .saveEveryEpoch()
+                .asyncSave(2, true)
+                .build();
+        net.setListeners(l);
+
+        for(int i=0; i<6; i++ ){
+            net.fit(iter);
+        }
+        l.flush();
+
+        //Expect models saved at end of epochs 0 to 5, but keep only 3, 4 and 5
+        List<Checkpoint> available = l.availableCheckpoints();
+        assertEquals(3, available.size());
+        assertEquals(6, l.getAsyncCheckpointsWritten());
+        assertEquals(0, l.getDroppedCheckpoints());
+        for(File f2 : f.listFiles()){
+            assertFalse(f2.getName(), f2.getName().endsWith(".tmp"));
+        }
+
+        for(int i=0; i<3; i++ ){
+            MultiLayerNetwork n = l.loadCheckpointMLN(available.get(i));
+            assertEquals(3 + i, n.getEpochCount());
+            assertEquals(2 * (4 + i), n.getIterationCount());
+        }
+
+        //Last checkpoint was saved at the end of training: should match the current network, including updater state
+        MultiLayerNetwork last = l.loadCheckpointMLN(available.get(2));
+        assertEquals(net.params(), last.params());
+        assertEquals(net.getUpdater().getStateViewArray(), last.getUpdater().getStateViewArray());
+    }
+
     @Test
     public void testDeleteExisting() throws Exception {
         File f = tempDir.newFolder();
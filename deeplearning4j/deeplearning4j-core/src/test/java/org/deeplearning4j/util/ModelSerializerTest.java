@@ -17,6 +17,7 @@
 package org.deeplearning4j.util;
 
 import lombok.val;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.lang3.SerializationUtils;
 import org.deeplearning4j.BaseDL4JTest;
 import org.deeplearning4j.datasets.iterator.impl.IrisDataSetIterator;
@@ -40,6 +41,7 @@ import org.nd4j.linalg.dataset.api.preprocessor.Normalizer;
 import org.nd4j.linalg.dataset.api.preprocessor.NormalizerMinMaxScaler;
 import org.nd4j.linalg.dataset.api.preprocessor.NormalizerStandardize;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
 import org.nd4j.linalg.learning.config.Sgd;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 import org.nd4j.linalg.primitives.Pair;
@@ -49,6 +51,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.util.*;
+import java.util.zip.ZipEntry;
 
 import static org.junit.Assert.*;
 
@@ -497,4 +500,85 @@ public class ModelSerializerTest extends BaseDL4JTest {
         ComputationGraph restoredNet = ModelSerializer.restoreComputationGraph(tempFile);
         assertEquals(net.params(), restoredNet.params());
     }
+
+    @Test
+    public void testUncompressedParamsMemoryMappedMLN() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(new Adam(0.01))
+                        .activation(Activation.TANH).weightInit(WeightInit.XAVIER).list()
+                        .layer(0, new DenseLayer.Builder().nIn(4).nOut(20).build())
+                        .layer(1, new OutputLayer.Builder().lossFunction(LossFunctions.LossFunction.MCXENT)
+                                        .activation(Activation.SOFTMAX).nIn(20).nOut(3).build())
+                        .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        DataSet ds = new IrisDataSetIterator(150, 150).next();
+        net.fit(ds);
+
+        File tempFile = tempDir.newFile();
+        ModelSerializer.writeModel(net, tempFile, true, null, true);
+
+        //Parameters should be stored uncompressed, and aligned
+        try (org.apache.commons.compress.archivers.zip.ZipFile zf =
+                        new org.apache.commons.compress.archivers.zip.ZipFile(tempFile)) {
+            ZipArchiveEntry e = zf.getEntry(ModelSerializer.COEFFICIENTS_BIN);
+            assertEquals(ZipEntry.STORED, e.getMethod());
+            assertEquals(0, e.getDataOffset() % 64);
+        }
+
+        MultiLayerNetwork mapped = ModelSerializer.restoreMultiLayerNetworkMemoryMapped(tempFile);
+        assertEquals(net.params(), mapped.params());
+        assertEquals(net.output(ds.getFeatures()), mapped.output(ds.getFeatures()));
+        //Updater state should only be loaded when required
+        assertNull(mapped.getUpdater(false));
+        assertEquals(net.getUpdater().getStateViewArray(), mapped.getUpdater().getStateViewArray());
+
+        //Training should not modify the file
+        mapped.fit(ds);
+        net.fit(ds);
+        assertEquals(net.params(), mapped.params());
+
+        //Standard restore of a model with uncompressed parameters
+        MultiLayerNetwork restored = ModelSerializer.restoreMultiLayerNetwork(tempFile);
+        assertNotEquals(net.params(), restored.params());
+        MultiLayerNetwork restored2 = ModelSerializer.restoreMultiLayerNetworkMemoryMapped(tempFile);
+        assertEquals(restored.params(), restored2.params());
+        assertEquals(restored.getUpdater().getStateViewArray(), restored2.getUpdater().getStateViewArray());
+    }
+
+    @Test
+    public void testUncompressedParamsMemoryMappedCG() throws Exception {
+        ComputationGraphConfiguration config = new NeuralNetConfiguration.Builder().seed(12345)
+                        .updater(new Adam(0.01)).graphBuilder().addInputs("in")
+                        .addLayer("dense", new DenseLayer.Builder().nIn(4).nOut(2).build(), "in")
+                        .addLayer("out", new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(2).nOut(3)
+                                        .activation(Activation.SOFTMAX).build(), "dense")
+                        .setOutputs("out").build();
+
+        ComputationGraph cg = new ComputationGraph(config);
+        cg.init();
+        DataSet ds = new IrisDataSetIterator(150, 150).next();
+        cg.fit(ds);
+
+        File tempFile = tempDir.newFile();
+        ModelSerializer.writeModel(cg, tempFile, true, null, true);
+
+        ComputationGraph mapped = ModelSerializer.restoreComputationGraphMemoryMapped(tempFile);
+        assertEquals(cg.getConfiguration().toJson(), mapped.getConfiguration().toJson());
+        assertEquals(cg.params(), mapped.params());
+        assertNull(mapped.getUpdater(false));
+        assertEquals(cg.getUpdater().getStateViewArray(), mapped.getUpdater().getStateViewArray());
+
+        ComputationGraph restored = ModelSerializer.restoreComputationGraph(tempFile);
+        assertEquals(cg.params(), restored.params());
+        assertEquals(cg.getUpdater().getStateViewArray(), restored.getUpdater().getStateViewArray());
+
+        //Memory mapped restore of a model saved in the standard format: copied, but updater state still loaded lazily
+        File standardFile = tempDir.newFile();
+        ModelSerializer.writeModel(cg, standardFile, true);
+        ComputationGraph fromStandard = ModelSerializer.restoreComputationGraphMemoryMapped(standardFile);
+        assertEquals(cg.params(), fromStandard.params());
+        assertNull(fromStandard.getUpdater(false));
+        assertEquals(cg.getUpdater().getStateViewArray(), fromStandard.getUpdater().getStateViewArray());
+    }
 }
@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.datasets.iterator;
+
+import lombok.NonNull;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * A DataSetIterator wrapper for variable length time series: examples from the underlying iterator are grouped into
+ * buckets by sequence length, and minibatches are built from a single bucket only. Each example is trimmed to its
+ * own length, and the minibatch is padded (with mask arrays) to the longest sequence in it - so padding is bounded by
+ * the bucket width rather than by the longest sequence in the underlying minibatch.<br>
+ * Examples within each minibatch are sorted by sequence length, longest first: together with the packed forward pass
+ * of LSTM layers, this means that inference cost is proportional to the number of real (unmasked) time steps.<br>
+ * <br>
+ * The sequence length of an example is the position of its last unmasked time step + 1 (features mask if present,
+ * otherwise labels mask), or the full time series length if the example has no mask arrays. Time series labels
+ * (and label masks) are trimmed along with the features; this assumes features and labels are aligned at the start.
+ * <br>
+ * Bucket i holds sequences with length in range (bucketBoundaries[i-1], bucketBoundaries[i]]. Sequences longer than
+ * the last boundary go to an additional bucket. A minibatch is returned as soon as a bucket holds batchSize examples;
+ * once the underlying iterator is exhausted, the remaining (partial) buckets are returned, shortest sequences first.
+ * Note that batches are thus not returned in the order of the underlying data.<br>
+ * Examples with sequence length 0 (all time steps masked) are not dropped: they are trimmed to a single, masked, time
+ * step and go to the first bucket. The number of examples returned is always the same as for the underlying iterator.
+ */
+public class SequenceLengthBucketingIterator implements DataSetIterator {
+
+    private final DataSetIterator underlyingIterator;
+    private final int batchSize;
+    private final int[] bucketBoundaries;
+    private final List<List<DataSet>> buckets;
+    private final LinkedList<DataSet> ready = new LinkedList<>();
+    private DataSetPreProcessor preProcessor;
+
+    /**
+     * @param underlyingIterator iterator to wrap. Features should be time series (rank 3)
+     * @param batchSize          number of examples in each returned minibatch (except for the last one of a bucket)
+     * @param bucketBoundaries   upper bounds (inclusive) for the sequence lengths in each bucket, in ascending order
+     */
+    public SequenceLengthBucketingIterator(@NonNull DataSetIterator underlyingIterator, int batchSize,
+                    @NonNull int... bucketBoundaries) {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("Batch size has to be > 0, got " + batchSize);
+        if (bucketBoundaries.length == 0)
+            throw new IllegalArgumentException("At least one bucket boundary is required");
+        for (int i = 1; i < bucketBoundaries.length; i++) {
+            if (bucketBoundaries[i] <= bucketBoundaries[i - 1])
+                throw new IllegalArgumentException("Bucket boundaries should be strictly ascending, got "
+                                + Arrays.toString(bucketBoundaries));
+        }
+
+        this.underlyingIterator = underlyingIterator;
+        this.batchSize = batchSize;
+        this.bucketBoundaries = bucketBoundaries.clone();
+        this.buckets = new ArrayList<>(bucketBoundaries.length + 1);
+        for (int i = 0; i <= bucketBoundaries.length; i++)
+            buckets.add(new ArrayList<DataSet>(batchSize));
+    }
+
+    /**
+     * @return index of the bucket for the given sequence length
+     */
+    public int bucketFor(long length) {
+        for (int i = 0; i < bucketBoundaries.length; i++) {
+            if (length <= bucketBoundaries[i])
+                return i;
+        }
+        return bucketBoundaries.length;
+    }
+
+    /**
+     * Sequence length of a single example: position of the last unmasked time step + 1, or the time series length
+     * if no mask arrays are present
+     */
+    public static long sequenceLength(DataSet example) {
+        INDArray mask = example.getFeaturesMaskArray();
+        if (mask == null && example.getLabels() != null && example.getLabels().rank() == 3)
+            mask = example.getLabelsMaskArray();
+        if (mask == null || mask.rank() != 2)
+            return example.getFeatures().size(2);
+
+        for (long i = mask.size(1) - 1; i >= 0; i--) {
+            if (mask.getDouble(0, i) != 0.0)
+                return i + 1;
+        }
+        return 0;
+    }
+
+    @Override
+    public DataSet next(int num) {
+        throw new UnsupportedOperationException("Minibatch size is fixed for bucketing iterator");
+    }
+
+    @Override
+    public int inputColumns() {
+        return underlyingIterator.inputColumns();
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return underlyingIterator.totalOutcomes();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return underlyingIterator.resetSupported();
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        ready.clear();
+        for (List<DataSet> bucket : buckets)
+            bucket.clear();
+        underlyingIterator.reset();
+    }
+
+    @Override
+    public int batch() {
+        return batchSize;
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return underlyingIterator.getLabels();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!ready.isEmpty() || underlyingIterator.hasNext())
+            return true;
+        for (List<DataSet> bucket : buckets) {
+            if (!bucket.isEmpty())
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public DataSet next() {
+        while (ready.isEmpty() && underlyingIterator.hasNext()) {
+            DataSet ds = underlyingIterator.next();
+            if (ds.getFeatures().rank() != 3)
+                throw new IllegalStateException("Sequence length bucketing requires time series (rank 3) features, got "
+                                + "features with shape " + Arrays.toString(ds.getFeatures().shape()));
+
+            List<? extends Serializable> metaData = ds.getExampleMetaData();
+            for (int i = 0; i < ds.numExamples(); i++) {
+                DataSet example = ds.get(i);
+                if (metaData != null && metaData.size() > i)
+                    example.setExampleMetaData(Collections.singletonList(metaData.get(i)));
+                long length = sequenceLength(example);
+
+                //Fully masked examples are kept, so that the number of examples matches the underlying iterator
+                List<DataSet> bucket = buckets.get(length == 0 ? 0 : bucketFor(length));
+                bucket.add(trim(example, Math.max(length, 1)));
+                if (bucket.size() == batchSize) {
+                    ready.add(merge(bucket));
+                    bucket.clear();
+                }
+            }
+        }
+
+        if (ready.isEmpty()) {
+            //Underlying iterator is exhausted: return partial buckets
+            for (List<DataSet> bucket : buckets) {
+                if (!bucket.isEmpty()) {
+                    ready.add(merge(bucket));
+                    bucket.clear();
+                    break;
+                }
+            }
+        }
+
+        if (ready.isEmpty())
+            throw new NoSuchElementException("No more elements");
+
+        DataSet out = ready.removeFirst();
+        if (preProcessor != null)
+            preProcessor.preProcess(out);
+        return out;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private static DataSet merge(List<DataSet> examples) {
+        List<DataSet> sorted = new ArrayList<>(examples);
+        //Longest first: masked examples then form a contiguous range at the end of the minibatch
+        Collections.sort(sorted, new Comparator<DataSet>() {
+            @Override
+            public int compare(DataSet o1, DataSet o2) {
+                return Long.compare(o2.getFeatures().size(2), o1.getFeatures().size(2));
+            }
+        });
+        return DataSet.merge(sorted);
+    }
+
+    private static DataSet trim(DataSet example, long length) {
+        INDArray features = example.getFeatures();
+        long timeSeriesLength = features.size(2);
+
+        INDArray labels = example.getLabels();
+        INDArray featuresMask = example.getFeaturesMaskArray();
+        INDArray labelsMask = example.getLabelsMaskArray();
+
+        features = trimTimeSeries(features, timeSeriesLength, length);
+        labels = trimTimeSeries(labels, timeSeriesLength, length);
+        featuresMask = trimMask(featuresMask, timeSeriesLength, length);
+        labelsMask = trimMask(labelsMask, timeSeriesLength, length);
+
+        DataSet out = new DataSet(features, labels, featuresMask, labelsMask);
+        out.setExampleMetaData(example.getExampleMetaData());
+        return out;
+    }
+
+    private static INDArray trimTimeSeries(INDArray arr, long timeSeriesLength, long length) {
+        if (arr == null || arr.rank() != 3 || arr.size(2) != timeSeriesLength)
+            return arr == null ? null : arr.dup();
+        return arr.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.interval(0, length)).dup();
+    }
+
+    private static INDArray trimMask(INDArray mask, long timeSeriesLength, long length) {
+        if (mask == null || mask.rank() != 2 || mask.size(1) != timeSeriesLength)
+            return mask == null ? null : mask.dup();
+        return mask.get(NDArrayIndex.all(), NDArrayIndex.interval(0, length)).dup();
+    }
+}
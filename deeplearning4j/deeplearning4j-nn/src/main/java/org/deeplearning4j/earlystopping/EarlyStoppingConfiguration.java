@@ -40,6 +40,7 @@ import java.util.List;
  *     (ii) Epoch termination conditions: calculated once per epoch. For example, maxEpochs or no improvement for N epochs<br>
  * (c) Score calculator: what score should be calculated at every epoch? (For example: test set loss or test set accuracy)<br>
  * (d) How frequently (ever N epochs) should scores be calculated? (Default: every epoch)<br>
+ * (e) Should scores be calculated asynchronously, concurrently with training of the next epoch? (Default: false)<br>
  * @param <T> Type of model. For example, {@link org.deeplearning4j.nn.multilayer.MultiLayerNetwork} or {@link org.deeplearning4j.nn.graph.ComputationGraph}
  * @author Alex Black
  */
@@ -54,6 +55,7 @@ public class EarlyStoppingConfiguration<T extends Model> implements Serializable
     private int evaluateEveryNEpochs;
     private ScoreCalculator<T> scoreCalculator;
     private Supplier<ScoreCalculator> scoreCalculatorSupplier;
+    private boolean asyncScoreCalculation;
 
     private EarlyStoppingConfiguration(Builder<T> builder) {
         this.modelSaver = builder.modelSaver;
@@ -63,6 +65,7 @@ public class EarlyStoppingConfiguration<T extends Model> implements Serializable
         this.evaluateEveryNEpochs = builder.evaluateEveryNEpochs;
         this.scoreCalculator = builder.scoreCalculator;
         this.scoreCalculatorSupplier = builder.scoreCalculatorSupplier;
+        this.asyncScoreCalculation = builder.asyncScoreCalculation;
     }
 
     public ScoreCalculator<T> getScoreCalculator(){
@@ -106,6 +109,7 @@ public class EarlyStoppingConfiguration<T extends Model> implements Serializable
         private int evaluateEveryNEpochs = 1;
         private ScoreCalculator<T> scoreCalculator;
         private Supplier<ScoreCalculator> scoreCalculatorSupplier;
+        private boolean asyncScoreCalculation = false;
 
 
         /** How should models be saved? (Default: in memory)*/
@@ -166,6 +170,21 @@ public class EarlyStoppingConfiguration<T extends Model> implements Serializable
             return this;
         }
 
+        /**
+         * If true: calculate the score for each epoch in a background thread, on a copy of the model parameters taken
+         * at the end of the epoch, while training of the next epoch continues on the main thread. This hides the cost
+         * of score calculation (for example, on a large validation set) from the training time.<br>
+         * As the score for an epoch is only available during the following epoch, epoch termination conditions are
+         * applied one epoch late: training may continue for one epoch after the condition would otherwise have been
+         * hit. The best model is saved from the copy that was scored, so the returned best model is unaffected.
+         * Note that this requires memory for one additional copy of the model, and that the score calculator must not
+         * use the same iterator instance as the training data. Default: false
+         */
+        public Builder<T> asyncScoreCalculation(boolean asyncScoreCalculation) {
+            this.asyncScoreCalculation = asyncScoreCalculation;
+            return this;
+        }
+
         /** Create the early stopping configuration */
         public EarlyStoppingConfiguration<T> build() {
             return new EarlyStoppingConfiguration<>(this);
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.earlystopping.scorecalc;
+
+import lombok.NoArgsConstructor;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.shade.jackson.annotation.JsonIgnore;
+import org.nd4j.shade.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.deeplearning4j.earlystopping.scorecalc.base.BaseScoreCalculator.get0;
+
+/**
+ * Given a DataSetIterator: calculate the total loss for the model on that data set, as per {@link DataSetLossCalculator},
+ * but using multiple threads. Each thread scores minibatches with its own copy of the model; the copies are created
+ * on first use, and their parameters are updated from the network on each call to {@link #calculateScore(Model)}.<br>
+ * Useful for large validation sets, where single-threaded score calculation would otherwise dominate the time
+ * spent in early stopping training. The result is the same as for {@link DataSetLossCalculator}, other than
+ * floating point summation order.<br>
+ * Can be used for both MultiLayerNetwork and ComputationGraph
+ */
+@NoArgsConstructor
+public class ParallelDataSetLossCalculator implements ScoreCalculator<Model> {
+
+    @JsonIgnore
+    private DataSetIterator dataSetIterator;
+    @JsonIgnore
+    private MultiDataSetIterator multiDataSetIterator;
+    @JsonProperty
+    private boolean average;
+    @JsonProperty
+    private int workers;
+
+    private transient Model replicaSource;
+    private transient BlockingQueue<Model> replicas;
+
+    /**
+     * Calculate the score (loss function value) on a given data set (usually a test set)
+     *
+     * @param dataSetIterator Data set to calculate the score for
+     * @param average         Whether to return the average (sum of loss / N) or just (sum of loss)
+     * @param workers         Number of threads (and copies of the model) to use
+     */
+    public ParallelDataSetLossCalculator(DataSetIterator dataSetIterator, boolean average, int workers) {
+        this(average, workers);
+        this.dataSetIterator = dataSetIterator;
+    }
+
+    /**
+     * Calculate the score (loss function value) on a given data set (usually a test set)
+     *
+     * @param dataSetIterator Data set to calculate the score for
+     * @param average         Whether to return the average (sum of loss / N) or just (sum of loss)
+     * @param workers         Number of threads (and copies of the model) to use
+     */
+    public ParallelDataSetLossCalculator(MultiDataSetIterator dataSetIterator, boolean average, int workers) {
+        this(average, workers);
+        this.multiDataSetIterator = dataSetIterator;
+    }
+
+    private ParallelDataSetLossCalculator(boolean average, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Number of workers must be >= 1: got " + workers);
+        }
+        this.average = average;
+        this.workers = workers;
+    }
+
+    @Override
+    public double calculateScore(Model network) {
+        initReplicas(network);
+
+        //Fixed size pool: when all threads are busy and the queue is full, the calling thread scores the minibatch
+        // itself, limiting the number of minibatches held in memory
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<Runnable>(2 * workers), new ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable r) {
+                                Thread t = Executors.defaultThreadFactory().newThread(r);
+                                t.setName("ParallelDataSetLossCalculator-" + t.getId());
+                                t.setDaemon(true);
+                                return t;
+                            }
+                        }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+        List<Future<double[]>> results = new ArrayList<>();
+        try {
+            if (dataSetIterator != null) {
+                if (!dataSetIterator.hasNext())
+                    dataSetIterator.reset();
+                while (dataSetIterator.hasNext()) {
+                    DataSet ds = dataSetIterator.next();
+                    ds.detach();
+                    results.add(executor.submit(new ScoreTask(ds, null)));
+                }
+            } else {
+                if (!multiDataSetIterator.hasNext())
+                    multiDataSetIterator.reset();
+                while (multiDataSetIterator.hasNext()) {
+                    MultiDataSet mds = multiDataSetIterator.next();
+                    mds.detach();
+                    results.add(executor.submit(new ScoreTask(null, mds)));
+                }
+            }
+
+            double scoreSum = 0.0;
+            long exampleCount = 0;
+            for (Future<double[]> f : results) {
+                double[] r = f.get();
+                scoreSum += r[0];
+                exampleCount += (long) r[1];
+            }
+            return average ? scoreSum / exampleCount : scoreSum;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted during score calculation", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error during score calculation", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void initReplicas(Model network) {
+        if (replicaSource != network) {
+            replicas = new ArrayBlockingQueue<>(workers);
+            for (int i = 0; i < workers; i++) {
+                if (network instanceof MultiLayerNetwork) {
+                    replicas.add(((MultiLayerNetwork) network).clone());
+                } else if (network instanceof ComputationGraph) {
+                    replicas.add(((ComputationGraph) network).clone());
+                } else {
+                    throw new RuntimeException("Unknown model type: " + network.getClass());
+                }
+            }
+            replicaSource = network;
+        } else {
+            for (Model m : replicas) {
+                m.setParams(network.params());
+            }
+        }
+    }
+
+    private class ScoreTask implements Callable<double[]> {
+        private final DataSet ds;
+        private final MultiDataSet mds;
+
+        private ScoreTask(DataSet ds, MultiDataSet mds) {
+            this.ds = ds;
+            this.mds = mds;
+        }
+
+        @Override
+        public double[] call() throws Exception {
+            Model m = replicas.take();
+            try {
+                if (ds != null) {
+                    long n = ds.getFeatures().size(0);
+                    if (m instanceof MultiLayerNetwork) {
+                        return new double[] {((MultiLayerNetwork) m).score(ds, false) * n, n};
+                    } else {
+                        return new double[] {((ComputationGraph) m).score(ds) * n, n};
+                    }
+                } else {
+                    long n = mds.getFeatures(0).size(0);
+                    if (m instanceof MultiLayerNetwork) {
+                        DataSet d = new DataSet(get0(mds.getFeatures()), get0(mds.getLabels()),
+                                        get0(mds.getFeaturesMaskArrays()), get0(mds.getLabelsMaskArrays()));
+                        return new double[] {((MultiLayerNetwork) m).score(d, false) * n, n};
+                    } else {
+                        return new double[] {((ComputationGraph) m).score(mds) * n, n};
+                    }
+                }
+            } finally {
+                //Ensure all operations on this replica are complete before another thread can use it
+                Nd4j.getExecutioner().commit();
+                replicas.put(m);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ParallelDataSetLossCalculator(average=" + average + ", workers=" + workers + ")";
+    }
+
+    @Override
+    public boolean minimizeScore() {
+        return true;    //Minimize loss
+    }
+}
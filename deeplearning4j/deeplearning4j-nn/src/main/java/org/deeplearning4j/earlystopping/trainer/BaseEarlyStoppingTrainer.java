@@ -31,6 +31,7 @@ import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.dataset.api.MultiDataSet;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,9 +41,12 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.*;
 
 /**Base/abstract class for conducting early stopping training locally (single machine).<br>
- * Can be used to train a {@link MultiLayerNetwork} or a {@link ComputationGraph} via early stopping
+ * Can be used to train a {@link MultiLayerNetwork} or a {@link ComputationGraph} via early stopping.<br>
+ * If {@link EarlyStoppingConfiguration#isAsyncScoreCalculation()} is set, scores are calculated in a background thread
+ * on a copy of the model, concurrently with training of the next epoch
  * @author Alex Black
  */
 public abstract class BaseEarlyStoppingTrainer<T extends Model> implements IEarlyStoppingTrainer<T> {
@@ -106,6 +110,24 @@ public abstract class BaseEarlyStoppingTrainer<T extends Model> implements IEarl
             bestModelScore = -Double.MAX_VALUE;
         }
 
+        ExecutorService scoreExecutor = null;
+        if (esConfig.isAsyncScoreCalculation()) {
+            scoreExecutor = scoreExecutor();
+        }
+        try {
+            return fitHelper(scoreVsEpoch, scoreExecutor);
+        } finally {
+            if (scoreExecutor != null) {
+                scoreExecutor.shutdownNow();
+            }
+        }
+    }
+
+    private EarlyStoppingResult<T> fitHelper(Map<Integer, Double> scoreVsEpoch, ExecutorService scoreExecutor) {
+        T scoringModel = null;
+        Future<Double> pendingScore = null;
+        int pendingScoreEpoch = -1;
+
         int epochCount = 0;
         while (true) {
             reset();
@@ -123,6 +145,11 @@ public abstract class BaseEarlyStoppingTrainer<T extends Model> implements IEarl
                 } catch (Exception e) {
                     log.warn("Early stopping training terminated due to exception at epoch {}, iteration {}",
                             epochCount, iterCount, e);
+                    if (pendingScore != null) {
+                        //Record the last score (the scored model may be the best model), but terminate regardless
+                        processScore(pendingScoreEpoch, awaitScore(pendingScore), scoringModel, epochCount,
+                                scoreVsEpoch, false);
+                    }
                     //Load best model to return
                     T bestModel;
                     try {
@@ -160,6 +187,12 @@ public abstract class BaseEarlyStoppingTrainer<T extends Model> implements IEarl
                 log.info("Hit per iteration epoch termination condition at epoch {}, iteration {}. Reason: {}",
                         epochCount, iterCount, terminationReason);
 
+                if (pendingScore != null) {
+                    //Record the last score (the scored model may be the best model), but terminate regardless
+                    processScore(pendingScoreEpoch, awaitScore(pendingScore), scoringModel, epochCount,
+                            scoreVsEpoch, false);
+                }
+
                 if (esConfig.isSaveLastModel()) {
                     //Save last model:
                     try {
@@ -194,102 +227,194 @@ public abstract class BaseEarlyStoppingTrainer<T extends Model> implements IEarl
 
             log.info("Completed training epoch {}", epochCount);
 
+            if (pendingScore != null) {
+                //Score for an earlier epoch was calculated while this epoch was trained: termination conditions are
+                // applied one epoch late, and the best model (from the scored copy) is returned
+                EarlyStoppingResult<T> result = processScore(pendingScoreEpoch, awaitScore(pendingScore),
+                        scoringModel, epochCount + 1, scoreVsEpoch, true);
+                pendingScore = null;
+                if (result != null) {
+                    return result;
+                }
+            }
 
             if ((epochCount == 0 && esConfig.getEvaluateEveryNEpochs() == 1)
                     || epochCount % esConfig.getEvaluateEveryNEpochs() == 0) {
-                //Calculate score at this epoch:
-                ScoreCalculator sc = esConfig.getScoreCalculator();
-                double score = esConfig.getScoreCalculator().calculateScore(model);
-                scoreVsEpoch.put(epochCount, score);
-
-                boolean invalidScore = Double.isNaN(score) || Double.isInfinite(score);
-                if(invalidScore){
-                    log.warn("Score is not finite for epoch {}: score = {}", epochCount, score);
-                }
-
-                if ((sc.minimizeScore() && score < bestModelScore) || (!sc.minimizeScore() && score > bestModelScore) || (bestModelEpoch == -1 && invalidScore)) {
-                    //Save best model:
-                    if (bestModelEpoch == -1) {
-                        //First calculated/reported score
-                        log.info("Score at epoch {}: {}", epochCount, score);
+                if (scoreExecutor != null) {
+                    //Calculate score at this epoch, in the background on a copy of the current parameters
+                    if (scoringModel == null) {
+                        scoringModel = cloneModel(model);
                     } else {
-                        log.info("New best model: score = {}, epoch = {} (previous: score = {}, epoch = {})", score,
-                                epochCount, bestModelScore, bestModelEpoch);
-                    }
-                    bestModelScore = score;
-                    bestModelEpoch = epochCount;
-
-                    try {
-                        esConfig.getModelSaver().saveBestModel(model, score);
-                    } catch (IOException e) {
-                        throw new RuntimeException("Error saving best model", e);
+                        scoringModel.setParams(model.params());
                     }
+                    final ScoreCalculator<T> sc = esConfig.getScoreCalculator();
+                    final T toScore = scoringModel;
+                    pendingScore = scoreExecutor.submit(new Callable<Double>() {
+                        @Override
+                        public Double call() {
+                            return sc.calculateScore(toScore);
+                        }
+                    });
+                    pendingScoreEpoch = epochCount;
                 } else {
-                    log.info("Score at epoch {}: {}", epochCount, score);
+                    //Calculate score at this epoch:
+                    double score = esConfig.getScoreCalculator().calculateScore(model);
+                    EarlyStoppingResult<T> result = processScore(epochCount, score, model, epochCount + 1,
+                            scoreVsEpoch, true);
+                    if (result != null) {
+                        return result;
+                    }
                 }
+            }
+            epochCount++;
 
-                if (esConfig.isSaveLastModel()) {
-                    //Save last model:
+        }
+    }
+
+    /**
+     * Handle the score for an epoch: save the best and latest models, notify the listener, and check the epoch
+     * termination conditions
+     *
+     * @param epochCount  Epoch that was scored
+     * @param score       Score for the epoch
+     * @param scoredModel Model (or copy of the model) that was scored
+     * @param totalEpochs Total number of epochs trained so far, to report if terminating
+     * @param checkTermination If false: don't check the epoch termination conditions (already terminating)
+     * @return Result if an epoch termination condition was hit, or null otherwise
+     */
+    private EarlyStoppingResult<T> processScore(int epochCount, double score, T scoredModel, int totalEpochs,
+                                                Map<Integer, Double> scoreVsEpoch, boolean checkTermination) {
+        ScoreCalculator sc = esConfig.getScoreCalculator();
+        scoreVsEpoch.put(epochCount, score);
+
+        boolean invalidScore = Double.isNaN(score) || Double.isInfinite(score);
+        if(invalidScore){
+            log.warn("Score is not finite for epoch {}: score = {}", epochCount, score);
+        }
+
+        if ((sc.minimizeScore() && score < bestModelScore) || (!sc.minimizeScore() && score > bestModelScore) || (bestModelEpoch == -1 && invalidScore)) {
+            //Save best model:
+            if (bestModelEpoch == -1) {
+                //First calculated/reported score
+                log.info("Score at epoch {}: {}", epochCount, score);
+            } else {
+                log.info("New best model: score = {}, epoch = {} (previous: score = {}, epoch = {})", score,
+                        epochCount, bestModelScore, bestModelEpoch);
+            }
+            bestModelScore = score;
+            bestModelEpoch = epochCount;
+
+            try {
+                esConfig.getModelSaver().saveBestModel(scoredModel, score);
+            } catch (IOException e) {
+                throw new RuntimeException("Error saving best model", e);
+            }
+        } else {
+            log.info("Score at epoch {}: {}", epochCount, score);
+        }
+
+        if (esConfig.isSaveLastModel()) {
+            //Save last model:
+            try {
+                esConfig.getModelSaver().saveLatestModel(scoredModel, score);
+            } catch (IOException e) {
+                throw new RuntimeException("Error saving most recent model", e);
+            }
+        }
+
+        if (listener != null) {
+            listener.onEpoch(epochCount, score, esConfig, scoredModel);
+        }
+
+        if (!checkTermination) {
+            return null;
+        }
+
+        //Check per-epoch termination conditions:
+        boolean epochTerminate = false;
+        EpochTerminationCondition termReason = null;
+        for (EpochTerminationCondition c : esConfig.getEpochTerminationConditions()) {
+            if (c.terminate(epochCount, score)) {
+                epochTerminate = true;
+                termReason = c;
+                break;
+            }
+        }
+        if (epochTerminate) {
+            log.info("Hit epoch termination condition at epoch {}. Details: {}", epochCount,
+                    termReason.toString());
+            T bestModel;
+            try {
+                bestModel = esConfig.getModelSaver().getBestModel();
+            } catch (IOException e2) {
+                //Best model does not exist. Just save the current model
+                if(esConfig.isSaveLastModel()) {
                     try {
-                        esConfig.getModelSaver().saveLatestModel(model, score);
+                        esConfig.getModelSaver().saveBestModel(scoredModel,0.0);
+                        bestModel = scoredModel;
                     } catch (IOException e) {
-                        throw new RuntimeException("Error saving most recent model", e);
+                        log.error("Unable to save model.",e);
+                        throw new RuntimeException(e);
                     }
                 }
-
-                if (listener != null) {
-                    listener.onEpoch(epochCount, score, esConfig, model);
+                else {
+                    log.error("Error with earlystopping",e2);
+                    throw new RuntimeException(e2);
                 }
 
-                //Check per-epoch termination conditions:
-                boolean epochTerminate = false;
-                EpochTerminationCondition termReason = null;
-                for (EpochTerminationCondition c : esConfig.getEpochTerminationConditions()) {
-                    if (c.terminate(epochCount, score)) {
-                        epochTerminate = true;
-                        termReason = c;
-                        break;
-                    }
-                }
-                if (epochTerminate) {
-                    log.info("Hit epoch termination condition at epoch {}. Details: {}", epochCount,
-                            termReason.toString());
-                    T bestModel;
-                    try {
-                        bestModel = esConfig.getModelSaver().getBestModel();
-                    } catch (IOException e2) {
-                        //Best model does not exist. Just save the current model
-                        if(esConfig.isSaveLastModel()) {
-                            try {
-                                esConfig.getModelSaver().saveBestModel(model,0.0);
-                                bestModel = model;
-                            } catch (IOException e) {
-                                log.error("Unable to save model.",e);
-                                throw new RuntimeException(e);
-                            }
-                        }
-                        else {
-                            log.error("Error with earlystopping",e2);
-                            throw new RuntimeException(e2);
-                        }
+            }
 
-                    }
 
+            EarlyStoppingResult<T> result = new EarlyStoppingResult<>(
+                    EarlyStoppingResult.TerminationReason.EpochTerminationCondition,
+                    termReason.toString(), scoreVsEpoch, bestModelEpoch, bestModelScore, totalEpochs,
+                    bestModel);
+            if (listener != null) {
+                listener.onCompletion(result);
+            }
 
-                    EarlyStoppingResult<T> result = new EarlyStoppingResult<>(
-                            EarlyStoppingResult.TerminationReason.EpochTerminationCondition,
-                            termReason.toString(), scoreVsEpoch, bestModelEpoch, bestModelScore, epochCount + 1,
-                            bestModel);
-                    if (listener != null) {
-                        listener.onCompletion(result);
-                    }
+            return result;
+        }
+        return null;
+    }
 
-                    return result;
-                }
+    private static double awaitScore(Future<Double> score) {
+        try {
+            return score.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for score calculation", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error during asynchronous score calculation", e.getCause());
+        }
+    }
+
+    /**
+     * Single daemon thread for asynchronous score calculation, attached to the same device as the training thread
+     */
+    private static ExecutorService scoreExecutor() {
+        final Integer deviceId = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = Executors.defaultThreadFactory().newThread(r);
+                t.setName("EarlyStoppingScoreCalculator-" + t.getId());
+                t.setDaemon(true);
+                Nd4j.getAffinityManager().attachThreadToDevice(t, deviceId);
+                return t;
             }
-            epochCount++;
+        });
+    }
 
+    @SuppressWarnings("unchecked")
+    protected T cloneModel(T model) {
+        if (model instanceof MultiLayerNetwork) {
+            return (T) ((MultiLayerNetwork) model).clone();
+        } else if (model instanceof ComputationGraph) {
+            return (T) ((ComputationGraph) model).clone();
         }
+        throw new UnsupportedOperationException("Cannot clone model of type " + model.getClass().getName()
+                + " for asynchronous score calculation");
     }
 
     @Override
@@ -21,6 +21,7 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.deeplearning4j.eval.curves.PrecisionRecallCurve;
 import org.deeplearning4j.eval.curves.RocCurve;
 import org.deeplearning4j.eval.serde.ROCSerializer;
+import org.deeplearning4j.eval.sketch.TDigest;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.ops.Op;
 import org.nd4j.linalg.api.ops.impl.transforms.arithmetic.MulOp;
@@ -46,9 +47,10 @@ import static org.nd4j.linalg.indexing.NDArrayIndex.interval;
 
 /**
  * ROC (Receiver Operating Characteristic) for binary classifiers.<br>
- * ROC has 2 modes of operation:
+ * ROC has 3 modes of operation:
  * (a) Thresholded (less memory)<br>
- * (b) Exact (default; use numSteps == 0 to set. May not scale to very large datasets)
+ * (b) Exact (default; use numSteps == 0 to set. May not scale to very large datasets)<br>
+ * (c) Sketch (bounded memory; use {@link #sketch(int)} to create)
  *
  * <p>
  * Thresholded Is an approximate method, that (for large datasets) may use significantly less memory than exact..
@@ -59,15 +61,22 @@ import static org.nd4j.linalg.indexing.NDArrayIndex.interval;
  * Note that in some cases (very skewed probability predictions, for example) the threshold approach can be inaccurate,
  * often underestimating the true area.
  * <p>
+ * Sketch mode stores the predicted probabilities for the positive and negative examples in two quantile sketches
+ * ({@link TDigest}), using a fixed amount of memory regardless of the number of examples. The ROC and precision-recall
+ * curves are calculated from the estimated distributions, with thresholds placed automatically (as for exact mode),
+ * giving AUC and AUPRC values that are usually within 0.001 or so of the exact values. Sketches can be merged, making
+ * this mode suitable for distributed evaluation of very large data sets.
+ * <p>
  * The data is assumed to be binary classification - nColumns == 1 (single binary output variable) or nColumns == 2
  * (probability distribution over 2 classes, with column 1 being values for 'positive' examples)
  *
  * @author Alex Black
  */
 @EqualsAndHashCode(callSuper = true,
-                exclude = {"auc", "auprc", "probAndLabel", "exactAllocBlockSize", "rocCurve", "prCurve"})
+                exclude = {"auc", "auprc", "probAndLabel", "exactAllocBlockSize", "rocCurve", "prCurve",
+                                "positiveSketch", "negativeSketch"})
 @Data
-@ToString(exclude = {"probAndLabel", "exactAllocBlockSize", "rocCurve", "prCurve"})
+@ToString(exclude = {"probAndLabel", "exactAllocBlockSize", "rocCurve", "prCurve", "positiveSketch", "negativeSketch"})
 @JsonIgnoreProperties({"probAndLabel", "exactAllocBlockSize"})
 @JsonSerialize(using = ROCSerializer.class)
 @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS, include = JsonTypeInfo.As.PROPERTY)
@@ -90,6 +99,10 @@ public class ROC extends BaseEvaluation<ROC> {
     private boolean rocRemoveRedundantPts;
     private int exactAllocBlockSize;
 
+    private int sketchCompression;
+    private TDigest positiveSketch;
+    private TDigest negativeSketch;
+
     public ROC() {
         //Default to exact
         this(0);
@@ -138,6 +151,39 @@ public class ROC extends BaseEvaluation<ROC> {
         this.exactAllocBlockSize = exactAllocBlockSize;
     }
 
+    /**
+     * Create a ROC instance in sketch mode: bounded memory, near-exact AUC and AUPRC. See {@link ROC} for details.
+     *
+     * @param compression Compression parameter for the underlying sketches - for example,
+     *                    {@link TDigest#DEFAULT_COMPRESSION}. Larger values are more accurate but use more memory:
+     *                    memory use is approximately 200 x compression bytes, independent of the number of examples
+     */
+    public static ROC sketch(int compression) {
+        return sketch(compression, true);
+    }
+
+    /**
+     * Create a ROC instance in sketch mode: bounded memory, near-exact AUC and AUPRC. See {@link ROC} for details.
+     *
+     * @param compression           Compression parameter for the underlying sketches
+     * @param rocRemoveRedundantPts Usually set to true. If true,  remove any redundant points from ROC and P-R curves
+     */
+    public static ROC sketch(int compression, boolean rocRemoveRedundantPts) {
+        ROC roc = new ROC(0, rocRemoveRedundantPts);
+        roc.isExact = false;
+        roc.sketchCompression = compression;
+        roc.positiveSketch = new TDigest(compression);
+        roc.negativeSketch = new TDigest(compression);
+        return roc;
+    }
+
+    /**
+     * @return True if this ROC instance uses sketch mode
+     */
+    public boolean isSketch() {
+        return sketchCompression > 0;
+    }
+
     protected INDArray getProbAndLabelUsed() {
         if (probAndLabel == null || exampleCount == 0) {
             return null;
@@ -169,6 +215,9 @@ public class ROC extends BaseEvaluation<ROC> {
 
         if (isExact) {
             probAndLabel = null;
+        } else if (isSketch()) {
+            positiveSketch.reset();
+            negativeSketch.reset();
         } else {
             double step = 1.0 / thresholdSteps;
             for (int i = 0; i <= thresholdSteps; i++) {
@@ -187,7 +236,11 @@ public class ROC extends BaseEvaluation<ROC> {
         StringBuilder sb = new StringBuilder();
         sb.append("AUC (Area under ROC Curve):                ").append(calculateAUC()).append("\n");
         sb.append("AUPRC (Area under Precision/Recall Curve): ").append(calculateAUCPR());
-        if(!isExact){
+        if(isSketch()){
+            sb.append("\n");
+            sb.append("[Note: Sketch-based AUC/AUPRC calculation used with compression ").append(sketchCompression)
+                    .append("; values are approximate]");
+        } else if(!isExact){
             sb.append("\n");
             sb.append("[Note: Thresholded AUC/AUPRC calculation used with ").append(thresholdSteps)
                     .append(" steps); accuracy may reduced compared to exact mode]");
@@ -258,6 +311,28 @@ public class ROC extends BaseEvaluation<ROC> {
             int countClass1CurrMinibatch = labelClass1.sumNumber().intValue();
             countActualPositive += countClass1CurrMinibatch;
             countActualNegative += labels.size(0) - countClass1CurrMinibatch;
+        } else if (isSketch()) {
+            //Sketch approach: add each probability to the sketch for its actual class
+            INDArray probClass1;
+            INDArray labelClass1;
+            if (singleOutput) {
+                probClass1 = predictions;
+                labelClass1 = labels;
+            } else {
+                probClass1 = predictions.getColumn(1);
+                labelClass1 = labels.getColumn(1);
+            }
+            double[] p = probClass1.dup().data().asDouble();
+            double[] l = labelClass1.dup().data().asDouble();
+            for (int i = 0; i < p.length; i++) {
+                if (l[i] != 0.0) {
+                    positiveSketch.add(p[i]);
+                    countActualPositive++;
+                } else {
+                    negativeSketch.add(p[i]);
+                    countActualNegative++;
+                }
+            }
         } else {
             //Thresholded approach
             INDArray positivePredictedClassColumn;
@@ -431,6 +506,46 @@ public class ROC extends BaseEvaluation<ROC> {
             ArrayUtils.reverse(fpCountOut);
             ArrayUtils.reverse(fnCountOut);
 
+            if (rocRemoveRedundantPts) {
+                Pair<double[][], int[][]> pair = removeRedundant(thresholdOut, precisionOut, recallOut, tpCountOut,
+                                fpCountOut, fnCountOut);
+                double[][] temp = pair.getFirst();
+                int[][] temp2 = pair.getSecond();
+                thresholdOut = temp[0];
+                precisionOut = temp[1];
+                recallOut = temp[2];
+                tpCountOut = temp2[0];
+                fpCountOut = temp2[1];
+                fnCountOut = temp2[2];
+            }
+        } else if (isSketch()) {
+            //Lowest to highest threshold. Estimated TP/FP counts: number of positive/negative examples > threshold
+            double[] t = sketchThresholds();
+            thresholdOut = new double[t.length + 2];
+            precisionOut = new double[t.length + 2];
+            recallOut = new double[t.length + 2];
+            tpCountOut = new int[t.length + 2];
+            fpCountOut = new int[t.length + 2];
+            fnCountOut = new int[t.length + 2];
+
+            //Edge cases: threshold of 0.0 -> all predicted positive; threshold of 1.0 -> all predicted negative
+            thresholdOut[0] = 0.0;
+            tpCountOut[0] = (int) countActualPositive;
+            fpCountOut[0] = (int) countActualNegative;
+            thresholdOut[t.length + 1] = 1.0;
+            for (int i = 0; i < t.length; i++) {
+                thresholdOut[i + 1] = t[i];
+                tpCountOut[i + 1] = (int) Math.round(countAbove(positiveSketch, t[i]));
+                fpCountOut[i + 1] = (int) Math.round(countAbove(negativeSketch, t[i]));
+            }
+            for (int i = 0; i < thresholdOut.length; i++) {
+                int tp = tpCountOut[i];
+                int fp = fpCountOut[i];
+                fnCountOut[i] = (int) countActualPositive - tp;
+                precisionOut[i] = (tp == 0 && fp == 0 ? 1.0 : tp / (double) (tp + fp));
+                recallOut[i] = (countActualPositive == 0 ? 1.0 : tp / (double) countActualPositive);
+            }
+
             if (rocRemoveRedundantPts) {
                 Pair<double[][], int[][]> pair = removeRedundant(thresholdOut, precisionOut, recallOut, tpCountOut,
                                 fpCountOut, fnCountOut);
@@ -549,6 +664,35 @@ public class ROC extends BaseEvaluation<ROC> {
 
             this.rocCurve = new RocCurve(tOut, x_fpr_out, y_tpr_out);
 
+            return rocCurve;
+        } else if (isSketch()) {
+            //Highest to lowest threshold, as for exact mode
+            double[] t = sketchThresholds();
+            int length = t.length;
+            double[] tOut = new double[length + 2];
+            double[] x_fpr_out = new double[length + 2];
+            double[] y_tpr_out = new double[length + 2];
+
+            //Edge cases
+            tOut[0] = 1.0;
+            x_fpr_out[length + 1] = 1.0;
+            y_tpr_out[length + 1] = 1.0;
+            for (int i = 0; i < length; i++) {
+                double thr = t[length - 1 - i];
+                tOut[i + 1] = thr;
+                x_fpr_out[i + 1] = countAbove(negativeSketch, thr) / countActualNegative;
+                y_tpr_out[i + 1] = countAbove(positiveSketch, thr) / countActualPositive;
+            }
+
+            if (rocRemoveRedundantPts) {
+                Pair<double[][], int[][]> p = removeRedundant(tOut, x_fpr_out, y_tpr_out, null, null, null);
+                double[][] temp = p.getFirst();
+                tOut = temp[0];
+                x_fpr_out = temp[1];
+                y_tpr_out = temp[2];
+            }
+
+            this.rocCurve = new RocCurve(tOut, x_fpr_out, y_tpr_out);
             return rocCurve;
         } else {
 
@@ -568,6 +712,48 @@ public class ROC extends BaseEvaluation<ROC> {
         }
     }
 
+    /**
+     * Thresholds to use for the ROC and precision-recall curves in sketch mode, in ascending order: the centroids and
+     * extreme values of both sketches. Both estimated distributions are piecewise linear between these points, so no
+     * area is lost relative to the estimated distributions.
+     */
+    private double[] sketchThresholds() {
+        double[] pos = positiveSketch.centroidMeans();
+        double[] neg = negativeSketch.centroidMeans();
+        double[] all = new double[pos.length + neg.length + 4];
+        int n = 0;
+        for (TDigest d : new TDigest[] {positiveSketch, negativeSketch}) {
+            if (d.getCount() > 0) {
+                all[n++] = d.getMin();
+                all[n++] = d.getMax();
+            }
+        }
+        System.arraycopy(pos, 0, all, n, pos.length);
+        n += pos.length;
+        System.arraycopy(neg, 0, all, n, neg.length);
+        n += neg.length;
+        Arrays.sort(all, 0, n);
+
+        //Remove duplicates
+        int unique = 0;
+        for (int i = 0; i < n; i++) {
+            if (unique == 0 || all[i] != all[unique - 1]) {
+                all[unique++] = all[i];
+            }
+        }
+        return Arrays.copyOf(all, unique);
+    }
+
+    /**
+     * Estimated number of values greater than the specified threshold, for the given sketch
+     */
+    private static double countAbove(TDigest sketch, double threshold) {
+        if (sketch.getCount() == 0) {
+            return 0.0;
+        }
+        return sketch.getCount() * (1.0 - sketch.cdf(threshold));
+    }
+
     private static Pair<double[][], int[][]> removeRedundant(double[] threshold, double[] x, double[] y, int[] tpCount,
                     int[] fpCount, int[] fnCount) {
         double[] t_compacted = new double[threshold.length];
@@ -673,6 +859,10 @@ public class ROC extends BaseEvaluation<ROC> {
                             "Cannot merge ROC instances with different numbers of threshold steps ("
                                             + this.thresholdSteps + " vs. " + other.thresholdSteps + ")");
         }
+        if (this.isSketch() != other.isSketch()) {
+            throw new UnsupportedOperationException("Cannot merge ROC instances: sketch mode ROC can only be merged "
+                            + "with another sketch mode ROC");
+        }
         this.countActualPositive += other.countActualPositive;
         this.countActualNegative += other.countActualNegative;
         this.auc = null;
@@ -704,6 +894,9 @@ public class ROC extends BaseEvaluation<ROC> {
             probAndLabel.put(new INDArrayIndex[] {
                             interval(exampleCount, exampleCount + other.exampleCount), all()},
                             toPut);
+        } else if (isSketch()) {
+            positiveSketch.merge(other.positiveSketch);
+            negativeSketch.merge(other.negativeSketch);
         } else {
             for (Double d : this.counts.keySet()) {
                 CountsForThreshold cft = this.counts.get(d);
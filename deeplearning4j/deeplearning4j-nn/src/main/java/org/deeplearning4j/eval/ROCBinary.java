@@ -31,7 +31,8 @@ import java.util.List;
 
 /**
  * ROC (Receiver Operating Characteristic) for multi-task binary classifiers.
- * As per {@link ROC}, ROCBinary supports both exact (thersholdSteps == 0) and thresholded; see {@link ROC} for details.
+ * As per {@link ROC}, ROCBinary supports exact (thersholdSteps == 0), thresholded and sketch ({@link #sketch(int)})
+ * modes; see {@link ROC} for details.
  * <p>
  * Unlike {@link ROC} (which supports a single binary label (as a single column probability, or 2 column 'softmax' probability
  * distribution), ROCBinary assumes that all outputs are independent binary variables. This also differs from
@@ -50,6 +51,7 @@ public class ROCBinary extends BaseEvaluation<ROCBinary> {
 
     private int thresholdSteps;
     private boolean rocRemoveRedundantPts;
+    private int sketchCompression;
     private List<String> labels;
 
     public ROCBinary() {
@@ -72,6 +74,19 @@ public class ROCBinary extends BaseEvaluation<ROCBinary> {
         this.rocRemoveRedundantPts = rocRemoveRedundantPts;
     }
 
+    /**
+     * Create an instance in sketch mode: bounded memory, near-exact AUC and AUPRC for each output.
+     * See {@link ROC#sketch(int)} for details.
+     *
+     * @param compression Compression parameter for the underlying sketches - for example,
+     *                    {@link org.deeplearning4j.eval.sketch.TDigest#DEFAULT_COMPRESSION}
+     */
+    public static ROCBinary sketch(int compression) {
+        ROCBinary out = new ROCBinary(0, true);
+        out.sketchCompression = compression;
+        return out;
+    }
+
 
     @Override
     public void reset() {
@@ -100,7 +115,8 @@ public class ROCBinary extends BaseEvaluation<ROCBinary> {
         if (underlying == null) {
             underlying = new ROC[n];
             for (int i = 0; i < n; i++) {
-                underlying[i] = new ROC(thresholdSteps, rocRemoveRedundantPts);
+                underlying[i] = (sketchCompression > 0 ? ROC.sketch(sketchCompression, rocRemoveRedundantPts)
+                                : new ROC(thresholdSteps, rocRemoveRedundantPts));
             }
         }
 
@@ -325,7 +341,11 @@ public class ROCBinary extends BaseEvaluation<ROCBinary> {
                                 getCountActualNegative(i)));
             }
 
-            if(thresholdSteps > 0){
+            if(sketchCompression > 0){
+                sb.append("\n");
+                sb.append("[Note: Sketch-based AUC/AUPRC calculation used with compression ").append(sketchCompression)
+                        .append("; values are approximate]");
+            } else if(thresholdSteps > 0){
                 sb.append("\n");
                 sb.append("[Note: Thresholded AUC/AUPRC calculation used with ").append(thresholdSteps)
                         .append(" steps); accuracy may reduced compared to exact mode]");
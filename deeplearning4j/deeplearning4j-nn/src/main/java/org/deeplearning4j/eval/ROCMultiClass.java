@@ -29,7 +29,8 @@ import java.util.List;
 
 /**
  * ROC (Receiver Operating Characteristic) for multi-class classifiers.
-  As per {@link ROC}, ROCBinary supports both exact (thersholdSteps == 0) and thresholded; see {@link ROC} for details.
+  As per {@link ROC}, ROCMultiClass supports exact (thersholdSteps == 0), thresholded and sketch ({@link #sketch(int)})
+ * modes; see {@link ROC} for details.
  * <p>
  * The ROC curves are produced by treating the predictions as a set of one-vs-all classifiers, and then calculating
  * ROC curves for each. In practice, this means for N classes, we get N ROC curves.
@@ -43,6 +44,7 @@ public class ROCMultiClass extends BaseEvaluation<ROCMultiClass> {
 
     private int thresholdSteps;
     private boolean rocRemoveRedundantPts;
+    private int sketchCompression;
     @JsonSerialize(using = ROCArraySerializer.class)
     private ROC[] underlying;
     private List<String> labels;
@@ -68,6 +70,19 @@ public class ROCMultiClass extends BaseEvaluation<ROCMultiClass> {
         this.rocRemoveRedundantPts = rocRemoveRedundantPts;
     }
 
+    /**
+     * Create an instance in sketch mode: bounded memory, near-exact AUC and AUPRC for each class.
+     * See {@link ROC#sketch(int)} for details.
+     *
+     * @param compression Compression parameter for the underlying sketches - for example,
+     *                    {@link org.deeplearning4j.eval.sketch.TDigest#DEFAULT_COMPRESSION}
+     */
+    public static ROCMultiClass sketch(int compression) {
+        ROCMultiClass out = new ROCMultiClass(0, true);
+        out.sketchCompression = compression;
+        return out;
+    }
+
     @Override
     public void reset() {
         underlying = null;
@@ -111,7 +126,11 @@ public class ROCMultiClass extends BaseEvaluation<ROCMultiClass> {
 
             sb.append("Average AUC: ").append(String.format("%-12." + printPrecision + "f", calculateAverageAUC()));
 
-            if(thresholdSteps > 0){
+            if(sketchCompression > 0){
+                sb.append("\n");
+                sb.append("[Note: Sketch-based AUC/AUPRC calculation used with compression ").append(sketchCompression)
+                        .append("; values are approximate]");
+            } else if(thresholdSteps > 0){
                 sb.append("\n");
                 sb.append("[Note: Thresholded AUC/AUPRC calculation used with ").append(thresholdSteps)
                         .append(" steps); accuracy may reduced compared to exact mode]");
@@ -148,7 +167,8 @@ public class ROCMultiClass extends BaseEvaluation<ROCMultiClass> {
         if (underlying == null) {
             underlying = new ROC[n];
             for (int i = 0; i < n; i++) {
-                underlying[i] = new ROC(thresholdSteps, rocRemoveRedundantPts);
+                underlying[i] = (sketchCompression > 0 ? ROC.sketch(sketchCompression, rocRemoveRedundantPts)
+                                : new ROC(thresholdSteps, rocRemoveRedundantPts));
             }
         }
 
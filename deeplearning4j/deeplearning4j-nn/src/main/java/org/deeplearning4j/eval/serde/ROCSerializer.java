@@ -57,6 +57,14 @@ public class ROCSerializer extends JsonSerializer<ROC> {
         jsonGenerator.writeBooleanField("isExact", roc.isExact());
         jsonGenerator.writeNumberField("exampleCount", roc.getExampleCount());
         jsonGenerator.writeBooleanField("rocRemoveRedundantPts", roc.isRocRemoveRedundantPts());
+        if (roc.isSketch()) {
+            //Sketches are small (bounded size), and are required to merge deserialized instances
+            roc.getPositiveSketch().compress();
+            roc.getNegativeSketch().compress();
+            jsonGenerator.writeNumberField("sketchCompression", roc.getSketchCompression());
+            jsonGenerator.writeObjectField("positiveSketch", roc.getPositiveSketch());
+            jsonGenerator.writeObjectField("negativeSketch", roc.getNegativeSketch());
+        }
     }
 
     @Override
@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.eval.sketch;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.nd4j.shade.jackson.annotation.JsonIgnore;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A mergeable, bounded-memory sketch of the distribution of a set of values (a "merging t-digest", as described by
+ * Dunning and Ertl, "Computing Extremely Accurate Quantiles Using t-Digests").<br>
+ * Values are summarized by a set of centroids (mean, weight); centroids near the extremes of the distribution are
+ * kept small, so that the tails of the distribution - which determine the edges of ROC and precision-recall curves for
+ * well-performing classifiers - are represented with high accuracy.<br>
+ * The number of centroids is bounded by approximately (pi/2 x compression), independent of the number of values.
+ * Incoming values are buffered, and merged into the centroids once the buffer is full.<br>
+ * Used by {@link org.deeplearning4j.eval.ROC} in sketch mode.
+ */
+@NoArgsConstructor
+@EqualsAndHashCode(exclude = {"bufferValues", "bufferWeights", "bufferSize"})
+public class TDigest implements Serializable {
+    public static final int DEFAULT_COMPRESSION = 200;
+
+    @Getter
+    private double compression;
+    private double[] mean = new double[0];
+    private double[] weight = new double[0];
+    @Getter
+    private long count;
+    @Getter
+    private double min;
+    @Getter
+    private double max;
+
+    @JsonIgnore
+    private double[] bufferValues;
+    @JsonIgnore
+    private double[] bufferWeights;
+    @JsonIgnore
+    private int bufferSize;
+
+    /**
+     * @param compression Compression parameter. Larger values give more accurate results, at the cost of more memory.
+     *                    Values in the range 100 to 1000 are typical
+     */
+    public TDigest(double compression) {
+        if (compression < 10) {
+            throw new IllegalArgumentException("Compression must be >= 10: got " + compression);
+        }
+        this.compression = compression;
+    }
+
+    /**
+     * Add a single value, with weight 1
+     */
+    public void add(double value) {
+        add(value, 1L);
+    }
+
+    /**
+     * Add a value with the specified weight
+     */
+    public void add(double value, long w) {
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("Cannot add NaN to TDigest");
+        }
+        if (bufferValues == null) {
+            int bufferLength = (int) Math.ceil(5 * compression);
+            bufferValues = new double[bufferLength];
+            bufferWeights = new double[bufferLength];
+        }
+        if (count == 0) {
+            min = value;
+            max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        bufferValues[bufferSize] = value;
+        bufferWeights[bufferSize] = w;
+        bufferSize++;
+        count += w;
+
+        if (bufferSize == bufferValues.length) {
+            compress();
+        }
+    }
+
+    /**
+     * Add all values from the other digest to this one. The other digest is not modified, other than merging its
+     * own buffered values.
+     */
+    public void merge(TDigest other) {
+        if (other == null || other.count == 0) {
+            return;
+        }
+        other.compress();
+        double otherMin = other.min;
+        double otherMax = other.max;
+        for (int i = 0; i < other.mean.length; i++) {
+            add(other.mean[i], (long) other.weight[i]);
+        }
+        //Centroid means lie within [min, max]: restore the exact extremes
+        min = Math.min(min, otherMin);
+        max = Math.max(max, otherMax);
+    }
+
+    /**
+     * Merge any buffered values into the centroids
+     */
+    public void compress() {
+        if (bufferSize == 0) {
+            return;
+        }
+
+        //Sort the buffer, then merge it with the (already sorted) centroids
+        sort(bufferValues, bufferWeights, 0, bufferSize - 1);
+
+        int n = mean.length + bufferSize;
+        double[] allMean = new double[n];
+        double[] allWeight = new double[n];
+        int i = 0, j = 0, k = 0;
+        while (i < mean.length || j < bufferSize) {
+            if (j >= bufferSize || (i < mean.length && mean[i] <= bufferValues[j])) {
+                allMean[k] = mean[i];
+                allWeight[k++] = weight[i++];
+            } else {
+                allMean[k] = bufferValues[j];
+                allWeight[k++] = bufferWeights[j++];
+            }
+        }
+
+        double total = 0;
+        for (double w : allWeight) {
+            total += w;
+        }
+
+        double[] newMean = new double[n];
+        double[] newWeight = new double[n];
+        int numCentroids = 0;
+        double wSoFar = 0;
+        double wLimit = total * qLimit(0.0);
+        double curMean = allMean[0];
+        double curWeight = allWeight[0];
+        for (int m = 1; m < n; m++) {
+            if (wSoFar + curWeight + allWeight[m] <= wLimit) {
+                //Merge into current centroid
+                curWeight += allWeight[m];
+                curMean += (allMean[m] - curMean) * allWeight[m] / curWeight;
+            } else {
+                newMean[numCentroids] = curMean;
+                newWeight[numCentroids++] = curWeight;
+                wSoFar += curWeight;
+                wLimit = total * qLimit(wSoFar / total);
+                curMean = allMean[m];
+                curWeight = allWeight[m];
+            }
+        }
+        newMean[numCentroids] = curMean;
+        newWeight[numCentroids++] = curWeight;
+
+        mean = Arrays.copyOf(newMean, numCentroids);
+        weight = Arrays.copyOf(newWeight, numCentroids);
+        bufferSize = 0;
+    }
+
+    /**
+     * Sort values (and the corresponding weights) in ascending order, in place
+     */
+    private static void sort(double[] values, double[] weights, int lo, int hi) {
+        while (hi - lo > 16) {
+            double pivot = values[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, weights, i++, j--);
+                }
+            }
+            //Recurse on the smaller partition, loop on the larger one
+            if (j - lo < hi - i) {
+                sort(values, weights, lo, j);
+                lo = i;
+            } else {
+                sort(values, weights, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && values[j - 1] > values[j]; j--) {
+                swap(values, weights, j, j - 1);
+            }
+        }
+    }
+
+    private static void swap(double[] values, double[] weights, int i, int j) {
+        double v = values[i];
+        values[i] = values[j];
+        values[j] = v;
+        double w = weights[i];
+        weights[i] = weights[j];
+        weights[j] = w;
+    }
+
+    /**
+     * Upper quantile limit for a centroid starting at quantile q, using the scale function
+     * k(q) = compression / (2 pi) * asin(2q - 1): each centroid spans at most 1 unit of k
+     */
+    private double qLimit(double q) {
+        double k = compression / (2 * Math.PI) * Math.asin(2 * q - 1) + 1.0;
+        double kMax = compression / 4.0;
+        if (k >= kMax) {
+            return 1.0;
+        }
+        return (Math.sin(k * 2 * Math.PI / compression) + 1) / 2;
+    }
+
+    /**
+     * Estimate the fraction of values that are less than or equal to the specified value.<br>
+     * Centroids with a weight of 1 represent a single value exactly. For larger centroids, half of the weight is
+     * assumed to be spread uniformly on either side of the mean, up to the neighbouring centroids. Consequently, the
+     * result is exact when the number of values is small enough for every value to have its own centroid.
+     *
+     * @param x Value
+     * @return Estimated cumulative distribution function at x, between 0 and 1
+     */
+    public double cdf(double x) {
+        compress();
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (x < min) {
+            return 0.0;
+        }
+        if (x >= max) {
+            return 1.0;
+        }
+        int n = mean.length;
+        if (n == 1) {
+            return (x - min) / (max - min);
+        }
+        if (x < mean[0]) {
+            return spread(0) * (x - min) / (mean[0] - min) / count;
+        }
+
+        double cumulative = 0;
+        for (int i = 0; i < n - 1; i++) {
+            if (x < mean[i + 1]) {
+                double frac = (x - mean[i]) / (mean[i + 1] - mean[i]);
+                return (cumulative + weight[i] - spread(i) + (spread(i) + spread(i + 1)) * frac) / count;
+            }
+            cumulative += weight[i];
+        }
+        //Between last centroid mean and max
+        return (cumulative + weight[n - 1] - spread(n - 1)
+                        + spread(n - 1) * (x - mean[n - 1]) / (max - mean[n - 1])) / count;
+    }
+
+    /**
+     * Weight of centroid i that is spread out on each side of its mean: none for single values
+     */
+    private double spread(int i) {
+        return weight[i] > 1 ? weight[i] / 2 : 0.0;
+    }
+
+    /**
+     * @return The centroid means (after merging any buffered values), in ascending order
+     */
+    public double[] centroidMeans() {
+        compress();
+        return mean;
+    }
+
+    /**
+     * @return Number of centroids (after merging any buffered values)
+     */
+    public int numCentroids() {
+        compress();
+        return mean.length;
+    }
+
+    /**
+     * Remove all values from this digest
+     */
+    public void reset() {
+        mean = new double[0];
+        weight = new double[0];
+        count = 0;
+        min = 0;
+        max = 0;
+        bufferSize = 0;
+    }
+}
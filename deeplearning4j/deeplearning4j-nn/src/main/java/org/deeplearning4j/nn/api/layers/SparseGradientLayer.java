@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.api.layers;
+
+import org.deeplearning4j.nn.api.Layer;
+
+/**
+ * A layer with row-sparse gradients for one or more parameters: only some rows of the (2d) parameter have non-zero
+ * gradients after each backprop pass. For example, the weights of an embedding layer, where only the rows for the
+ * indices in the current minibatch have non-zero gradients.<br>
+ * The updater uses this for a lazy update: the updater (Adam, RMSProp, etc) is applied only to the rows with non-zero
+ * gradients. The parameters and updater state of all other rows are not modified.
+ *
+ * @see org.deeplearning4j.nn.updater.UpdaterBlock
+ */
+public interface SparseGradientLayer extends Layer {
+
+    /**
+     * @param paramName Parameter name
+     * @return True if the gradients for the specified parameter are row-sparse, and a lazy update should be used
+     */
+    boolean isSparseGradientParam(String paramName);
+
+    /**
+     * @param paramName Parameter name
+     * @return The rows of the parameter with non-zero gradients for the last backprop pass (unique, in ascending
+     * order), or null if not available (in which case a standard dense update is used)
+     */
+    int[] getGradientRows(String paramName);
+
+    /**
+     * Called by the updater after a lazy update for the parameter: after this, the gradient view for the parameter
+     * is non-zero only for the rows returned by {@link #getGradientRows(String)}, so only these rows need to be zeroed
+     * before the next backprop pass (instead of the full gradient array)
+     *
+     * @param paramName Parameter name
+     */
+    void sparseUpdateApplied(String paramName);
+}
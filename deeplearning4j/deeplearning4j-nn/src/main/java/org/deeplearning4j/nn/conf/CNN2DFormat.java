@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.conf;
+
+/**
+ * CNN2DFormat defines the format of the activations (including input images) for 2D convolutional neural networks.<br>
+ * <b>NCHW</b>: "channels first" - activations have shape [minibatch, channels, height, width]. This is the default.<br>
+ * <b>NHWC</b>: "channels last" - activations have shape [minibatch, height, width, channels]. This is the format used
+ * by image decoders such as NativeImageLoader (when permuted from its default) and by TensorFlow/Keras models.<br>
+ * <br>
+ * Layers configured with NHWC accept and return channels last activations: the layer works on an NCHW view (a
+ * permutation, which doesn't copy by itself) of its input, and returns an NHWC view of its output. This avoids an
+ * explicit layout conversion of the data, but not all copies: operations that need contiguous arrays copy these views
+ * internally - for example some native convolution ops, and {@code CnnToFeedForwardPreProcessor} when flattening.
+ */
+public enum CNN2DFormat {
+    NCHW, NHWC;
+
+    /**
+     * @return The dimension (axis) of the channels in a rank 4 array with this format
+     */
+    public int channelsDimension() {
+        return this == NCHW ? 1 : 3;
+    }
+}
@@ -92,6 +92,12 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
     protected int tbpttFwdLength = 20;
     protected int tbpttBackLength = 20;
 
+    //Names of the vertices whose activations are kept for backprop when activation checkpointing is used. Null: disabled
+    protected List<String> activationCheckpoints;
+
+    //Mixed precision training (FP16 activations, loss scaling). Null: disabled
+    protected MixedPrecision mixedPrecision;
+
     protected NeuralNetConfiguration defaultConfiguration;
 
     //Counter for the number of parameter updates so far
@@ -257,6 +263,8 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         conf.backpropType = backpropType;
         conf.tbpttFwdLength = tbpttFwdLength;
         conf.tbpttBackLength = tbpttBackLength;
+        conf.activationCheckpoints = (activationCheckpoints == null ? null : new ArrayList<>(activationCheckpoints));
+        conf.mixedPrecision = (mixedPrecision == null ? null : mixedPrecision.clone());
         conf.defaultConfiguration = defaultConfiguration.clone();
         conf.trainingWorkspaceMode = trainingWorkspaceMode;
         conf.inferenceWorkspaceMode = inferenceWorkspaceMode;
@@ -602,6 +610,7 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         protected BackpropType backpropType = BackpropType.Standard;
         protected int tbpttFwdLength = DEFAULT_TBPTT_LENGTH;
         protected int tbpttBackLength = DEFAULT_TBPTT_LENGTH;
+        protected List<String> activationCheckpoints;
 
         protected Map<String, InputPreProcessor> inputPreProcessors = new LinkedHashMap<>();
 
@@ -629,6 +638,7 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             this.backpropType = clonedConf.getBackpropType();
             this.tbpttFwdLength = clonedConf.getTbpttFwdLength();
             this.tbpttBackLength = clonedConf.getTbpttBackLength();
+            this.activationCheckpoints = clonedConf.getActivationCheckpoints();
             this.globalConfiguration = globalConfiguration;
             //this.getGlobalConfiguration().setSeed(clonedConf.getDefaultConfiguration().getSeed());
         }
@@ -678,6 +688,24 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Enable activation checkpointing (also known as gradient checkpointing) for training, to reduce the memory
+         * used for the activations stored for backprop, at the cost of recomputing them.<br>
+         * The vertices are split into segments in topological order, ending at each of the specified vertices. During
+         * the forward pass, only the activations of the checkpoint vertices, the network inputs, and any other
+         * activations that are used by a later segment (for example skip connections across a checkpoint) are kept.
+         * During backprop, the activations of each segment are recomputed from these, one segment at a time.<br>
+         * Random state is reset for recomputation, so dropout masks etc are the same for both forward passes.
+         * Not used with truncated BPTT.
+         *
+         * @param vertexNames Names of the checkpoint vertices. Null or empty to disable activation checkpointing
+         */
+        public GraphBuilder activationCheckpoints(String... vertexNames) {
+            this.activationCheckpoints = (vertexNames == null || vertexNames.length == 0 ? null
+                            : new ArrayList<>(Arrays.asList(vertexNames)));
+            return this;
+        }
+
         /**
          * When doing truncated BPTT: how many steps of forward pass should we do
          * before doing (truncated) backprop?<br>
@@ -984,6 +1012,7 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             conf.backpropType = backpropType;
             conf.tbpttBackLength = tbpttBackLength;
             conf.tbpttFwdLength = tbpttFwdLength;
+            conf.activationCheckpoints = activationCheckpoints;
 
             conf.networkInputs = networkInputs;
             conf.networkOutputs = networkOutputs;
@@ -993,6 +1022,7 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             conf.trainingWorkspaceMode = globalConfiguration.trainingWorkspaceMode;
             conf.inferenceWorkspaceMode = globalConfiguration.inferenceWorkspaceMode;
             conf.cacheMode = globalConfiguration.cacheMode;
+            conf.mixedPrecision = globalConfiguration.mixedPrecision;
 
             conf.defaultConfiguration = globalConfiguration.build();
             conf.getDefaultConfiguration().setPretrain(pretrain);
@@ -1035,6 +1065,19 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             ComputationGraphConfiguration conf = buildConfig();
             conf.validate(allowDisconnected, allowNoOutput); //throws exception for invalid configuration
 
+            if (activationCheckpoints != null) {
+                for (String name : activationCheckpoints) {
+                    if (!vertices.containsKey(name) || networkOutputs.contains(name)) {
+                        throw new IllegalStateException("Invalid activation checkpoint \"" + name + "\": must be the "
+                                        + "name of a vertex in the graph, other than a network output");
+                    }
+                }
+                if (backpropType == BackpropType.TruncatedBPTT) {
+                    log.warn("Activation checkpointing is not supported for truncated backpropagation through time: " +
+                            "all activations will be stored for backprop");
+                }
+            }
+
             //Automatically add preprocessors, set nIns for CNN->dense transitions, etc
             if (!networkInputTypes.isEmpty()) {
                 conf.addPreProcessors(networkInputTypes.toArray(new InputType[networkInputs.size()]));
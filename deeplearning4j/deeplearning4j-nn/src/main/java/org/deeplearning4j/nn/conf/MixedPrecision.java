@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.conf;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Configuration for mixed precision training: FP16 (half precision) activations and activation gradients, with
+ * parameters and updater state kept in FP32, and dynamic loss scaling.<br>
+ * <br>
+ * Loss scaling: the gradients of the loss are multiplied by the loss scale before they are backpropagated through
+ * the network, so that small activation gradients don't underflow to zero in FP16. The parameter gradients are divided
+ * by the loss scale again before the updater is applied. If any of the gradients are not finite (i.e., the loss scale
+ * is too large and the FP16 values have overflowed), the parameter update for that iteration is skipped, and the loss
+ * scale is reduced by {@link #getBackoffFactor()}. After {@link #getGrowthInterval()} consecutive iterations without
+ * overflow, the loss scale is increased by {@link #getGrowthFactor()}.<br>
+ * <br>
+ * ND4J uses a single data type for all arrays, and the CPU backend does not support HALF for training. The network
+ * data type should therefore be FLOAT: parameters, updater state and gradients are FP32. With
+ * {@link #isHalfPrecisionActivations()}, the activations and activation gradients computed during training are
+ * rounded to FP16 precision (while being stored as FP32), so the numerical behaviour of half precision training can be
+ * reproduced and validated against FP32 training on any backend.<br>
+ * Set on {@link NeuralNetConfiguration.Builder#mixedPrecision(MixedPrecision)}; used by MultiLayerNetwork and
+ * ComputationGraph.
+ */
+@Data
+@NoArgsConstructor
+public class MixedPrecision implements Serializable, Cloneable {
+
+    public static final double DEFAULT_INITIAL_LOSS_SCALE = 65536.0;
+    public static final double DEFAULT_GROWTH_FACTOR = 2.0;
+    public static final double DEFAULT_BACKOFF_FACTOR = 0.5;
+    public static final int DEFAULT_GROWTH_INTERVAL = 2000;
+
+    private double initialLossScale = DEFAULT_INITIAL_LOSS_SCALE;
+    private boolean dynamicLossScaling = true;
+    private double growthFactor = DEFAULT_GROWTH_FACTOR;
+    private double backoffFactor = DEFAULT_BACKOFF_FACTOR;
+    private int growthInterval = DEFAULT_GROWTH_INTERVAL;
+    private double minLossScale = 1.0;
+    private double maxLossScale = 16777216.0;
+    private boolean halfPrecisionActivations = true;
+
+    private MixedPrecision(Builder builder) {
+        this.initialLossScale = builder.initialLossScale;
+        this.dynamicLossScaling = builder.dynamicLossScaling;
+        this.growthFactor = builder.growthFactor;
+        this.backoffFactor = builder.backoffFactor;
+        this.growthInterval = builder.growthInterval;
+        this.minLossScale = builder.minLossScale;
+        this.maxLossScale = builder.maxLossScale;
+        this.halfPrecisionActivations = builder.halfPrecisionActivations;
+    }
+
+    @Override
+    public MixedPrecision clone() {
+        try {
+            return (MixedPrecision) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static class Builder {
+        private double initialLossScale = DEFAULT_INITIAL_LOSS_SCALE;
+        private boolean dynamicLossScaling = true;
+        private double growthFactor = DEFAULT_GROWTH_FACTOR;
+        private double backoffFactor = DEFAULT_BACKOFF_FACTOR;
+        private int growthInterval = DEFAULT_GROWTH_INTERVAL;
+        private double minLossScale = 1.0;
+        private double maxLossScale = 16777216.0;
+        private boolean halfPrecisionActivations = true;
+
+        /**
+         * Loss scale to use for the first iteration. Default: 65536 (2^16)
+         *
+         * @param initialLossScale Initial loss scale, > 0
+         */
+        public Builder initialLossScale(double initialLossScale) {
+            this.initialLossScale = initialLossScale;
+            return this;
+        }
+
+        /**
+         * If true (default): adjust the loss scale after overflows and after growthInterval iterations without
+         * overflow. If false: always use the initial loss scale (iterations with overflow are still skipped)
+         */
+        public Builder dynamicLossScaling(boolean dynamicLossScaling) {
+            this.dynamicLossScaling = dynamicLossScaling;
+            return this;
+        }
+
+        /**
+         * Factor to multiply the loss scale by after growthInterval iterations without overflow. Default: 2
+         */
+        public Builder growthFactor(double growthFactor) {
+            this.growthFactor = growthFactor;
+            return this;
+        }
+
+        /**
+         * Factor to multiply the loss scale by when an overflow is detected. Default: 0.5
+         */
+        public Builder backoffFactor(double backoffFactor) {
+            this.backoffFactor = backoffFactor;
+            return this;
+        }
+
+        /**
+         * Number of consecutive iterations without overflow before the loss scale is increased. Default: 2000
+         */
+        public Builder growthInterval(int growthInterval) {
+            this.growthInterval = growthInterval;
+            return this;
+        }
+
+        /**
+         * Minimum and maximum loss scale, for dynamic loss scaling. Default: 1 and 2^24
+         */
+        public Builder lossScaleRange(double minLossScale, double maxLossScale) {
+            this.minLossScale = minLossScale;
+            this.maxLossScale = maxLossScale;
+            return this;
+        }
+
+        /**
+         * If true (default): round activations and activation gradients to FP16 precision during training.
+         * If false: only loss scaling is applied
+         */
+        public Builder halfPrecisionActivations(boolean halfPrecisionActivations) {
+            this.halfPrecisionActivations = halfPrecisionActivations;
+            return this;
+        }
+
+        public MixedPrecision build() {
+            if (initialLossScale <= 0 || minLossScale <= 0 || maxLossScale < minLossScale) {
+                throw new IllegalStateException("Invalid loss scale configuration: initial loss scale and minimum "
+                                + "loss scale must be > 0, and maximum loss scale must be >= minimum loss scale. Got: "
+                                + "initial=" + initialLossScale + ", min=" + minLossScale + ", max=" + maxLossScale);
+            }
+            if (growthFactor < 1.0 || backoffFactor <= 0.0 || backoffFactor > 1.0 || growthInterval <= 0) {
+                throw new IllegalStateException("Invalid loss scale configuration: growth factor must be >= 1, backoff "
+                                + "factor must be in (0, 1] and growth interval must be > 0. Got: growthFactor="
+                                + growthFactor + ", backoffFactor=" + backoffFactor + ", growthInterval="
+                                + growthInterval);
+            }
+            return new MixedPrecision(this);
+        }
+    }
+}
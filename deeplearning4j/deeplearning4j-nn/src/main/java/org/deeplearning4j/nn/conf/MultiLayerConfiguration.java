@@ -73,6 +73,12 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
     @Setter
     protected CacheMode cacheMode;
 
+    //Indices of the layers whose activations are kept for backprop when activation checkpointing is used. Null: disabled
+    protected int[] activationCheckpoints;
+
+    //Mixed precision training (FP16 activations, loss scaling). Null: disabled
+    protected MixedPrecision mixedPrecision;
+
     //Counter for the number of parameter updates so far
     // This is important for learning rate schedules, for example, and is stored here to ensure it is persisted
     // for Spark and model serialization
@@ -315,6 +321,8 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             clone.inferenceWorkspaceMode = this.inferenceWorkspaceMode;
             clone.trainingWorkspaceMode = this.trainingWorkspaceMode;
             clone.cacheMode = this.cacheMode;
+            clone.activationCheckpoints = (this.activationCheckpoints == null ? null : this.activationCheckpoints.clone());
+            clone.mixedPrecision = (this.mixedPrecision == null ? null : this.mixedPrecision.clone());
 
             return clone;
 
@@ -398,7 +406,9 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
 
         protected WorkspaceMode trainingWorkspaceMode = WorkspaceMode.ENABLED;
         protected WorkspaceMode inferenceWorkspaceMode = WorkspaceMode.ENABLED;
+        protected int[] activationCheckpoints;
         protected CacheMode cacheMode = CacheMode.NONE;
+        protected MixedPrecision mixedPrecision;
 
         /**
          * Specify the processors.
@@ -459,6 +469,35 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Mixed precision training configuration. Usually set using
+         * {@link NeuralNetConfiguration.Builder#mixedPrecision(MixedPrecision)}
+         *
+         * @param mixedPrecision Mixed precision configuration. Null to disable mixed precision training
+         */
+        public Builder mixedPrecision(MixedPrecision mixedPrecision) {
+            this.mixedPrecision = mixedPrecision;
+            return this;
+        }
+
+        /**
+         * Enable activation checkpointing (also known as gradient checkpointing) for training, to reduce the memory
+         * used for the activations stored for backprop, at the cost of recomputing them.<br>
+         * Only the output activations of the specified layers (and the network input) are kept during the forward pass.
+         * During backprop, the activations of the layers between two checkpoints are recomputed from the
+         * activations of the first checkpoint, one segment at a time, so only the activations of one segment are in
+         * memory at any time. With checkpoints every sqrt(n) layers, activation memory scales with sqrt(n) instead of
+         * n, for roughly one additional forward pass per iteration.<br>
+         * Random state is reset for recomputation, so dropout masks etc are the same for both forward passes.
+         * Not used with truncated BPTT.
+         *
+         * @param layerIndices Indices of the checkpoint layers. Null or empty to disable activation checkpointing
+         */
+        public Builder activationCheckpoints(int... layerIndices) {
+            this.activationCheckpoints = (layerIndices == null || layerIndices.length == 0 ? null : layerIndices);
+            return this;
+        }
+
         /**The type of backprop. Default setting is used for most networks (MLP, CNN etc),
          * but optionally truncated BPTT can be used for training recurrent neural networks.
          * If using TruncatedBPTT make sure you set both tBPTTForwardLength() and tBPTTBackwardLength()
@@ -532,6 +571,19 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
                         " settings will only take effect if backprop type is set to BackpropType.TruncatedBPTT");
             }
 
+            if (activationCheckpoints != null) {
+                for (int idx : activationCheckpoints) {
+                    if (idx < 0 || idx >= confs.size() - 1) {
+                        throw new IllegalStateException("Invalid activation checkpoint layer index " + idx
+                                        + ": must be between 0 and " + (confs.size() - 2)
+                                        + " (the activations of the output layer are never stored)");
+                    }
+                }
+                if (backpropType == BackpropType.TruncatedBPTT) {
+                    log.warn("Activation checkpointing is not supported for truncated backpropagation through time: " +
+                            "all activations will be stored for backprop");
+                }
+            }
 
             if (inputType == null && inputPreProcessors.get(0) == null) {
                 //User hasn't set the InputType. Sometimes we can infer it...
@@ -605,6 +657,12 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             conf.trainingWorkspaceMode = trainingWorkspaceMode;
             conf.inferenceWorkspaceMode = inferenceWorkspaceMode;
             conf.cacheMode = cacheMode;
+            conf.mixedPrecision = mixedPrecision;
+            if (activationCheckpoints != null) {
+                int[] sorted = activationCheckpoints.clone();
+                Arrays.sort(sorted);
+                conf.activationCheckpoints = sorted;
+            }
 
             Nd4j.getRandom().setSeed(conf.getConf(0).getSeed());
             return conf;
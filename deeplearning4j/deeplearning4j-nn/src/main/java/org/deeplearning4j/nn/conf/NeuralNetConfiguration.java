@@ -272,6 +272,7 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
                             .pretrain(pretrain).backpropType(backpropType).tBPTTForwardLength(tbpttFwdLength)
                             .tBPTTBackwardLength(tbpttBackLength).setInputType(this.inputType)
                             .trainingWorkspaceMode(wsmTrain).cacheMode(globalConfig.cacheMode)
+                            .mixedPrecision(globalConfig.mixedPrecision)
                             .inferenceWorkspaceMode(wsmTest).confs(list).build();
         }
 
@@ -510,6 +511,7 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
         protected boolean setTWM = false;
         protected boolean setIWM = false;
         protected CacheMode cacheMode = CacheMode.NONE;
+        protected MixedPrecision mixedPrecision;
 
         protected ConvolutionMode convolutionMode = ConvolutionMode.Truncate;
         protected ConvolutionLayer.AlgoMode cudnnAlgoMode = ConvolutionLayer.AlgoMode.PREFER_FASTEST;
@@ -582,6 +584,19 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Enable mixed precision training: FP16 activations and activation gradients, FP32 parameters and updater
+         * state, and dynamic loss scaling with skipping of iterations where the gradients overflow.
+         * See {@link MixedPrecision} for details.
+         *
+         * @param mixedPrecision Mixed precision configuration. Null (default) to disable mixed precision training
+         * @return Builder
+         */
+        public Builder mixedPrecision(MixedPrecision mixedPrecision) {
+            this.mixedPrecision = mixedPrecision;
+            return this;
+        }
+
         /**
          * Objective function to minimize or maximize cost function
          * Default set to minimize true.
@@ -18,6 +18,7 @@ package org.deeplearning4j.nn.conf.graph;
 
 
 import lombok.val;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
 import org.deeplearning4j.nn.conf.inputs.InputType;
 import org.deeplearning4j.nn.conf.inputs.InvalidInputTypeException;
 import org.deeplearning4j.nn.conf.memory.LayerMemoryReport;
@@ -141,6 +142,12 @@ public class MergeVertex extends GraphVertex {
             //CNN inputs... also check that the channels, width and heights match:
             InputType.InputTypeConvolutional firstConv = (InputType.InputTypeConvolutional) first;
 
+            if (firstConv.getFormat() == CNN2DFormat.NHWC) {
+                //Activations are merged along dimension 1 - the channels dimension for NCHW only
+                throw new InvalidInputTypeException("Invalid input: MergeVertex can only merge CNN activations in "
+                                + CNN2DFormat.NCHW + " format, got " + CNN2DFormat.NHWC + " activations");
+            }
+
             // FIXME: int cast
             val fd = (int) firstConv.getChannels();
             val fw = (int) firstConv.getWidth();
@@ -157,6 +164,12 @@ public class MergeVertex extends GraphVertex {
                 }
 
                 InputType.InputTypeConvolutional otherConv = (InputType.InputTypeConvolutional) vertexInputs[i];
+                if (otherConv.getFormat() != firstConv.getFormat()) {
+                    throw new InvalidInputTypeException(
+                                    "Invalid input: MergeVertex cannot merge CNN activations with different data formats:"
+                                                    + " first format = " + firstConv.getFormat() + ", input " + i
+                                                    + " format = " + otherConv.getFormat());
+                }
 
                 // FIXME: int cast
                 val od = (int) otherConv.getChannels();
@@ -17,6 +17,7 @@
 package org.deeplearning4j.nn.conf.inputs;
 
 import lombok.*;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.shade.jackson.annotation.JsonIgnore;
 import org.nd4j.shade.jackson.annotation.JsonInclude;
@@ -47,7 +48,8 @@ public abstract class InputType implements Serializable {
      * The type of activations in/out of a given GraphVertex<br>
      * FF: Standard feed-foward (2d minibatch, 1d per example) data<br>
      * RNN: Recurrent neural network (3d minibatch) time series data<br>
-     * CNN: 2D Convolutional neural network (4d minibatch, [miniBatchSize, channels, height, width])
+     * CNN: 2D Convolutional neural network (4d minibatch, [miniBatchSize, channels, height, width], or
+     * [miniBatchSize, height, width, channels] for the NHWC format)
      * CNNFlat: Flattened 2D conv net data (2d minibatch, [miniBatchSize, height * width * channels])
      * CNN3D: 3D convolutional neural network (5d minibatch, [miniBatchSize, channels, height, width, channels])
      */
@@ -127,6 +129,20 @@ public abstract class InputType implements Serializable {
         return new InputTypeConvolutional(height, width, depth);
     }
 
+    /**
+     * Input type for convolutional (CNN) data, that is 4d with shape [miniBatchSize, channels, height, width] (NCHW)
+     * or [miniBatchSize, height, width, channels] (NHWC), depending on the format
+     *
+     * @param height   height of the input
+     * @param width    Width of the input
+     * @param channels Number of channels
+     * @param format   Format of the data: NCHW (channels first) or NHWC (channels last)
+     * @return InputTypeConvolutional
+     */
+    public static InputType convolutional(long height, long width, long channels, CNN2DFormat format) {
+        return new InputTypeConvolutional(height, width, channels, format);
+    }
+
     /**
      * Input type for 3D convolutional (CNN3D) data, that is 5d with shape
      * [miniBatchSize, channels, height, width, channels].
@@ -235,6 +251,11 @@ public abstract class InputType implements Serializable {
         private long height;
         private long width;
         private long channels;
+        private CNN2DFormat format = CNN2DFormat.NCHW;     //Default for JSON deserialization of older configurations
+
+        public InputTypeConvolutional(long height, long width, long channels) {
+            this(height, width, channels, CNN2DFormat.NCHW);
+        }
 
 
         /**
@@ -265,7 +286,8 @@ public abstract class InputType implements Serializable {
 
         @Override
         public String toString() {
-            return "InputTypeConvolutional(h=" + height + ",w=" + width + ",c=" + channels + ")";
+            return "InputTypeConvolutional(h=" + height + ",w=" + width + ",c=" + channels
+                            + (format == CNN2DFormat.NHWC ? ",NHWC" : "") + ")";
         }
 
         @Override
@@ -275,6 +297,10 @@ public abstract class InputType implements Serializable {
 
         @Override
         public long[] getShape(boolean includeBatchDim) {
+            if (format == CNN2DFormat.NHWC) {
+                if(includeBatchDim) return new long[]{-1, height, width, channels};
+                else return new long[]{height, width, channels};
+            }
             if(includeBatchDim) return new long[]{-1, channels, height, width};
             else return new long[]{channels, height, width};
         }
@@ -20,6 +20,7 @@ import lombok.*;
 import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.ParamInitializer;
 import org.deeplearning4j.nn.api.layers.LayerConstraint;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
 import org.deeplearning4j.nn.conf.InputPreProcessor;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.inputs.InputType;
@@ -56,6 +57,7 @@ public class BatchNormalization extends FeedForwardLayer {
     protected double gamma = 1.0;
     protected double beta = 0.0;
     protected boolean lockGammaBeta = false;
+    protected CNN2DFormat cnn2dDataFormat = CNN2DFormat.NCHW; //Default for JSON deserialization of older configurations
 
     private BatchNormalization(Builder builder) {
         super(builder);
@@ -65,6 +67,7 @@ public class BatchNormalization extends FeedForwardLayer {
         this.gamma = builder.gamma;
         this.beta = builder.beta;
         this.lockGammaBeta = builder.lockGammaBeta;
+        this.cnn2dDataFormat = builder.cnn2dDataFormat;
         initializeConstraints(builder);
     }
 
@@ -111,9 +114,10 @@ public class BatchNormalization extends FeedForwardLayer {
         //Can handle CNN, flat CNN or FF input formats only
         switch (inputType.getType()) {
             case FF:
-            case CNN:
             case CNNFlat:
                 return inputType; //OK
+            case CNN:
+                return InputTypeUtil.withFormat(inputType, cnn2dDataFormat);
             default:
                 throw new IllegalStateException(
                                 "Invalid input type: Batch norm layer expected input of type CNN, CNN Flat or FF, got "
@@ -150,6 +154,8 @@ public class BatchNormalization extends FeedForwardLayer {
             return new FeedForwardToCnnPreProcessor(i.getHeight(), i.getWidth(), i.getDepth());
         } else if(inputType.getType() == InputType.Type.RNN){
             return new RnnToFeedForwardPreProcessor();
+        } else if(inputType.getType() == InputType.Type.CNN){
+            return InputTypeUtil.getPreProcessorForInputTypeCnnLayers(inputType, getLayerName(), cnn2dDataFormat);
         }
 
         return null;
@@ -225,6 +231,7 @@ public class BatchNormalization extends FeedForwardLayer {
         protected double beta = 0.0;
         protected List<LayerConstraint> betaConstraints;
         protected List<LayerConstraint> gammaConstraints;
+        protected CNN2DFormat cnn2dDataFormat = CNN2DFormat.NCHW;
 
         public Builder(double decay, boolean isMinibatch) {
             this.decay = decay;
@@ -344,6 +351,18 @@ public class BatchNormalization extends FeedForwardLayer {
             return this;
         }
 
+        /**
+         * Set the data format for CNN activations (rank 4 input): NCHW ([minibatch, channels, height, width], the
+         * default) or NHWC ([minibatch, height, width, channels]). See {@link CNN2DFormat} for more details.
+         * Not used for other (non-CNN) activations.
+         *
+         * @param format Format of the input and output activations
+         */
+        public Builder dataFormat(CNN2DFormat format) {
+            this.cnn2dDataFormat = format;
+            return this;
+        }
+
         @Override
         public BatchNormalization build() {
             return new BatchNormalization(this);
@@ -19,6 +19,7 @@ package org.deeplearning4j.nn.conf.layers;
 import lombok.*;
 import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.ParamInitializer;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
 import org.deeplearning4j.nn.conf.CacheMode;
 import org.deeplearning4j.nn.conf.ConvolutionMode;
 import org.deeplearning4j.nn.conf.InputPreProcessor;
@@ -37,7 +38,9 @@ import java.util.Map;
 
 /**
  * 2D Convolution layer (for example, spatial convolution over images).
- * Input activations should be format {@code [minibatch, channels, height, width]}
+ * Input activations should be format {@code [minibatch, channels, height, width]}, or
+ * {@code [minibatch, height, width, channels]} when the layer is configured with the NHWC data format
+ * (see {@link Builder#dataFormat(CNN2DFormat)})
  *
  * @author Adam Gibson
  */
@@ -53,6 +56,7 @@ public class ConvolutionLayer extends FeedForwardLayer {
     protected int[] stride; // Default is 2. Down-sample by a factor of 2
     protected int[] padding;
     protected boolean cudnnAllowFallback = true;
+    protected CNN2DFormat cnn2dDataFormat = CNN2DFormat.NCHW; //Default for JSON deserialization of older configurations
 
     /**
      * The "PREFER_FASTEST" mode will pick the fastest algorithm for the specified parameters
@@ -133,6 +137,7 @@ public class ConvolutionLayer extends FeedForwardLayer {
         this.cudnnBwdFilterAlgo = builder.cudnnBwdFilterAlgo;
         this.cudnnBwdDataAlgo = builder.cudnnBwdDataAlgo;
         this.cudnnAllowFallback = builder.cudnnAllowFallback;
+        this.cnn2dDataFormat = builder.cnn2dDataFormat;
 
         initializeConstraints(builder);
     }
@@ -181,8 +186,9 @@ public class ConvolutionLayer extends FeedForwardLayer {
                     + "\"): Expected CNN input, got " + inputType);
         }
 
-        return InputTypeUtil.getOutputTypeCnnLayers(inputType, kernelSize, stride, padding, dilation,
+        InputType outputType = InputTypeUtil.getOutputTypeCnnLayers(inputType, kernelSize, stride, padding, dilation,
                 convolutionMode, nOut, layerIndex, getLayerName(), ConvolutionLayer.class);
+        return InputTypeUtil.withFormat(outputType, cnn2dDataFormat);
     }
 
     @Override
@@ -205,7 +211,7 @@ public class ConvolutionLayer extends FeedForwardLayer {
                     + "\"): input is null");
         }
 
-        return InputTypeUtil.getPreProcessorForInputTypeCnnLayers(inputType, getLayerName());
+        return InputTypeUtil.getPreProcessorForInputTypeCnnLayers(inputType, getLayerName(), cnn2dDataFormat);
     }
 
     @Override
@@ -324,6 +330,17 @@ public class ConvolutionLayer extends FeedForwardLayer {
             return this;
         }
 
+        /**
+         * Set the data format for the layer activations: NCHW ([minibatch, channels, height, width], the default)
+         * or NHWC ([minibatch, height, width, channels]). See {@link CNN2DFormat} for more details.
+         *
+         * @param format Format of the input and output activations
+         */
+        public Builder dataFormat(CNN2DFormat format) {
+            this.cnn2dDataFormat = format;
+            return this;
+        }
+
         @Override
         @SuppressWarnings("unchecked")
         public ConvolutionLayer build() {
@@ -347,6 +364,7 @@ public class ConvolutionLayer extends FeedForwardLayer {
         protected BwdFilterAlgo cudnnBwdFilterAlgo;
         protected BwdDataAlgo cudnnBwdDataAlgo;
         protected boolean cudnnAllowFallback = true;
+        protected CNN2DFormat cnn2dDataFormat = CNN2DFormat.NCHW;
 
 
         protected BaseConvBuilder(int[] kernelSize, int[] stride, int[] padding, int[] dilation, int dim) {
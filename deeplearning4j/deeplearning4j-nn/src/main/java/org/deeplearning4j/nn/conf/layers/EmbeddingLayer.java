@@ -50,10 +50,12 @@ import java.util.Map;
 @EqualsAndHashCode(callSuper = true)
 public class EmbeddingLayer extends FeedForwardLayer {
     private boolean hasBias = true; //Default for pre-0.9.2 implementations
+    private boolean sparseGradients = false;
 
     private EmbeddingLayer(Builder builder) {
         super(builder);
         this.hasBias = builder.hasBias;
+        this.sparseGradients = builder.sparseGradients;
         initializeConstraints(builder);
     }
 
@@ -103,6 +105,7 @@ public class EmbeddingLayer extends FeedForwardLayer {
     public static class Builder extends FeedForwardLayer.Builder<Builder> {
 
         private boolean hasBias = false;
+        private boolean sparseGradients = false;
 
         /**
          * If true: include bias parameters in the layer. False (default): no bias.
@@ -114,6 +117,22 @@ public class EmbeddingLayer extends FeedForwardLayer {
             return this;
         }
 
+        /**
+         * If true: use row-sparse weight gradients and a lazy update. Only the rows of the weight matrix (embeddings)
+         * for the indices in the current minibatch are zeroed and updated each iteration: the updater (Adam, RMSProp,
+         * etc) is applied only to these rows, and the weights and updater state (for example, Adam moments) of all
+         * other rows are not modified. L1/L2 regularization is also applied to these rows only.<br>
+         * This is much faster than the standard (dense) update for large vocabularies, but note that the results
+         * differ from the dense update for updaters with state (as in "lazy Adam").<br>
+         * Default: false
+         *
+         * @param sparseGradients If true: use sparse gradients and a lazy update for the weights
+         */
+        public Builder sparseGradients(boolean sparseGradients) {
+            this.sparseGradients = sparseGradients;
+            return this;
+        }
+
         @Override
         @SuppressWarnings("unchecked")
         public EmbeddingLayer build() {
@@ -52,12 +52,14 @@ public class EmbeddingSequenceLayer extends FeedForwardLayer {
     private int inputLength = 1; // By default only use one index to embed
     private boolean hasBias = false;
     private boolean inferInputLength = false; // use input length as provided by input data
+    private boolean sparseGradients = false;
 
     private EmbeddingSequenceLayer(Builder builder) {
         super(builder);
         this.hasBias = builder.hasBias;
         this.inputLength = builder.inputLength;
         this.inferInputLength = builder.inferInputLength;
+        this.sparseGradients = builder.sparseGradients;
         initializeConstraints(builder);
     }
 
@@ -115,6 +117,7 @@ public class EmbeddingSequenceLayer extends FeedForwardLayer {
         private boolean hasBias = false;
         private int inputLength = 1;
         private boolean inferInputLength = true;
+        private boolean sparseGradients = false;
 
         /**
          * If true: include bias parameters in the layer. False (default): no bias.
@@ -149,6 +152,22 @@ public class EmbeddingSequenceLayer extends FeedForwardLayer {
             return this;
         }
 
+        /**
+         * If true: use row-sparse weight gradients and a lazy update. Only the rows of the weight matrix (embeddings)
+         * for the indices in the current minibatch are zeroed and updated each iteration: the updater (Adam, RMSProp,
+         * etc) is applied only to these rows, and the weights and updater state (for example, Adam moments) of all
+         * other rows are not modified. L1/L2 regularization is also applied to these rows only.<br>
+         * This is much faster than the standard (dense) update for large vocabularies, but note that the results
+         * differ from the dense update for updaters with state (as in "lazy Adam").<br>
+         * Default: false
+         *
+         * @param sparseGradients If true: use sparse gradients and a lazy update for the weights
+         */
+        public Builder sparseGradients(boolean sparseGradients) {
+            this.sparseGradients = sparseGradients;
+            return this;
+        }
+
         @Override
         @SuppressWarnings("unchecked")
         public EmbeddingSequenceLayer build() {
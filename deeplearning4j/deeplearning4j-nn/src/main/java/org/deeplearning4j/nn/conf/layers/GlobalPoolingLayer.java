@@ -20,6 +20,7 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import org.deeplearning4j.nn.api.ParamInitializer;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
 import org.deeplearning4j.nn.conf.InputPreProcessor;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.inputs.InputType;
@@ -58,6 +59,8 @@ import java.util.Map;
  * - [miniBatchSize, channels, 1, 1] for CNN output, and<br>
  * - [miniBatchSize, channels, 1, 1, 1] for CNN3D output.<br>
  * <br>
+ * For CNN activations in NHWC format ([miniBatchSize, height, width, channels]), set the data format with
+ * {@link Builder#dataFormat(CNN2DFormat)}; the non-collapsed output then has shape [miniBatchSize, 1, 1, channels].<br>
  *
  * @author Alex Black
  */
@@ -69,6 +72,7 @@ public class GlobalPoolingLayer extends NoParamLayer {
     private int[] poolingDimensions;
     private int pnorm;
     private boolean collapseDimensions = true;
+    private CNN2DFormat cnn2dDataFormat = CNN2DFormat.NCHW; //Default for JSON deserialization of older configurations
 
     private GlobalPoolingLayer(Builder builder) {
         super(builder);
@@ -76,6 +80,7 @@ public class GlobalPoolingLayer extends NoParamLayer {
         this.poolingDimensions = builder.poolingDimensions;
         this.collapseDimensions = builder.collapseDimensions;
         this.pnorm = builder.pnorm;
+        this.cnn2dDataFormat = builder.cnn2dDataFormat;
         this.layerName = builder.layerName;
     }
 
@@ -130,7 +135,7 @@ public class GlobalPoolingLayer extends NoParamLayer {
                 if (collapseDimensions) {
                     return InputType.feedForward(conv.getChannels());
                 } else {
-                    return InputType.convolutional(1, 1, conv.getChannels());
+                    return InputType.convolutional(1, 1, conv.getChannels(), cnn2dDataFormat);
                 }
             case CNN3D:
                 InputType.InputTypeConvolutional3D conv3d = (InputType.InputTypeConvolutional3D) inputType;
@@ -165,10 +170,12 @@ public class GlobalPoolingLayer extends NoParamLayer {
                                 "Global max pooling cannot be applied to feed-forward input type. Got input type = "
                                                 + inputType);
             case RNN:
-            case CNN:
             case CNN3D:
                 //No preprocessor required
                 return null;
+            case CNN:
+                //No preprocessor required, unless the activations need to be converted to another format
+                return InputTypeUtil.getPreProcessorForInputTypeCnnLayers(inputType, getLayerName(), cnn2dDataFormat);
             case CNNFlat:
                 InputType.InputTypeConvolutionalFlat cFlat = (InputType.InputTypeConvolutionalFlat) inputType;
                 return new FeedForwardToCnnPreProcessor(cFlat.getHeight(), cFlat.getWidth(), cFlat.getDepth());
@@ -221,6 +228,7 @@ public class GlobalPoolingLayer extends NoParamLayer {
         private int[] poolingDimensions;
         private int pnorm = 2;
         private boolean collapseDimensions = true;
+        private CNN2DFormat cnn2dDataFormat = CNN2DFormat.NCHW;
 
         public Builder() {
 
@@ -283,6 +291,18 @@ public class GlobalPoolingLayer extends NoParamLayer {
             return this;
         }
 
+        /**
+         * Set the data format for CNN activations (rank 4 input): NCHW ([minibatch, channels, height, width], the
+         * default) or NHWC ([minibatch, height, width, channels]). See {@link CNN2DFormat} for more details.
+         * Default pooling dimensions for NHWC activations are 1,2 (height and width).
+         *
+         * @param format Format of the input activations
+         */
+        public Builder dataFormat(CNN2DFormat format) {
+            this.cnn2dDataFormat = format;
+            return this;
+        }
+
         @SuppressWarnings("unchecked")
         public GlobalPoolingLayer build() {
             return new GlobalPoolingLayer(this);
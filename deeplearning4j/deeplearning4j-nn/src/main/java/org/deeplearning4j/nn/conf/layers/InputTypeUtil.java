@@ -19,10 +19,13 @@ package org.deeplearning4j.nn.conf.layers;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.deeplearning4j.exception.DL4JInvalidConfigException;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
 import org.deeplearning4j.nn.conf.ConvolutionMode;
 import org.deeplearning4j.nn.conf.InputPreProcessor;
 import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.preprocessor.Cnn2DFormatPreProcessor;
 import org.deeplearning4j.nn.conf.preprocessor.CnnToRnnPreProcessor;
+import org.deeplearning4j.nn.conf.preprocessor.ComposableInputPreProcessor;
 import org.deeplearning4j.nn.conf.preprocessor.FeedForwardToCnnPreProcessor;
 import org.deeplearning4j.nn.conf.preprocessor.FeedForwardToRnnPreProcessor;
 
@@ -385,6 +388,17 @@ public class InputTypeUtil {
         return InputType.convolutional(hOut, wOut, outputDepth);
     }
 
+    /**
+     * @return The given CNN input type, with the activations in the specified format
+     */
+    public static InputType withFormat(InputType cnnInputType, CNN2DFormat format) {
+        InputType.InputTypeConvolutional c = (InputType.InputTypeConvolutional) cnnInputType;
+        if (format == null || c.getFormat() == format) {
+            return c;
+        }
+        return InputType.convolutional(c.getHeight(), c.getWidth(), c.getChannels(), format);
+    }
+
     private static String getConfigErrorCommonLine(long layerIdx, String layerName, Class<?> layerClass,
                                                    boolean isHeight) {
         String name = layerName == null ? "(not named)" : layerName;
@@ -435,12 +449,28 @@ public class InputTypeUtil {
 
     /**
      * Utility method for determining the appropriate preprocessor for CNN layers, such as {@link ConvolutionLayer} and
-     * {@link SubsamplingLayer}
+     * {@link SubsamplingLayer}, that expect NCHW activations
      *
      * @param inputType     Input type to get the preprocessor for
      * @return              Null if no preprocessor is required; otherwise the appropriate preprocessor for the given input type
      */
     public static InputPreProcessor getPreProcessorForInputTypeCnnLayers(InputType inputType, String layerName) {
+        return getPreProcessorForInputTypeCnnLayers(inputType, layerName, CNN2DFormat.NCHW);
+    }
+
+    /**
+     * Utility method for determining the appropriate preprocessor for CNN layers, such as {@link ConvolutionLayer} and
+     * {@link SubsamplingLayer}
+     *
+     * @param inputType     Input type to get the preprocessor for
+     * @param format        Format of the activations expected by the layer
+     * @return              Null if no preprocessor is required; otherwise the appropriate preprocessor for the given input type
+     */
+    public static InputPreProcessor getPreProcessorForInputTypeCnnLayers(InputType inputType, String layerName,
+                    CNN2DFormat format) {
+        if (format == null) {
+            format = CNN2DFormat.NCHW;
+        }
 
         //To add x-to-CNN preprocessor: need to know image channels/width/height after reshaping
         //But this can't be inferred from the FF/RNN activations directly (could be anything)
@@ -459,12 +489,20 @@ public class InputTypeUtil {
                                 + layerName + "\")");
                 return null;
             case CNN:
-                //CNN -> CNN: no preprocessor required
+                //CNN -> CNN: no preprocessor required, unless the activations need to be converted to another format
+                InputType.InputTypeConvolutional c = (InputType.InputTypeConvolutional) inputType;
+                if (c.getFormat() != format) {
+                    return new Cnn2DFormatPreProcessor(c.getFormat(), format);
+                }
                 return null;
             case CNNFlat:
                 //CNN (flat) -> CNN
                 InputType.InputTypeConvolutionalFlat f = (InputType.InputTypeConvolutionalFlat) inputType;
-                return new FeedForwardToCnnPreProcessor(f.getHeight(), f.getWidth(), f.getDepth());
+                FeedForwardToCnnPreProcessor ffToCnn = new FeedForwardToCnnPreProcessor(f.getHeight(), f.getWidth(), f.getDepth());
+                if (format == CNN2DFormat.NHWC) {
+                    return new ComposableInputPreProcessor(ffToCnn, new Cnn2DFormatPreProcessor(CNN2DFormat.NCHW, format));
+                }
+                return ffToCnn;
             default:
                 throw new RuntimeException("Unknown input type: " + inputType);
         }
@@ -488,7 +526,11 @@ public class InputTypeUtil {
             case CNN:
                 //CNN -> RNN
                 InputType.InputTypeConvolutional c = (InputType.InputTypeConvolutional) inputType;
-                return new CnnToRnnPreProcessor(c.getHeight(), c.getWidth(), c.getChannels());
+                CnnToRnnPreProcessor cnnToRnn = new CnnToRnnPreProcessor(c.getHeight(), c.getWidth(), c.getChannels());
+                if (c.getFormat() == CNN2DFormat.NHWC) {
+                    return new ComposableInputPreProcessor(new Cnn2DFormatPreProcessor(CNN2DFormat.NHWC, CNN2DFormat.NCHW), cnnToRnn);
+                }
+                return cnnToRnn;
             default:
                 throw new RuntimeException("Unknown input type: " + inputType);
         }
@@ -18,6 +18,7 @@ package org.deeplearning4j.nn.conf.layers;
 
 import lombok.*;
 import org.deeplearning4j.nn.api.ParamInitializer;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
 import org.deeplearning4j.nn.conf.ConvolutionMode;
 import org.deeplearning4j.nn.conf.InputPreProcessor;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
@@ -54,6 +55,7 @@ public class SubsamplingLayer extends NoParamLayer {
     protected int pnorm;
     protected double eps;
     protected boolean cudnnAllowFallback = true;
+    protected CNN2DFormat cnn2dDataFormat = CNN2DFormat.NCHW; //Default for JSON deserialization of older configurations
 
     public enum PoolingType {
         MAX, AVG, SUM, PNORM;
@@ -86,6 +88,7 @@ public class SubsamplingLayer extends NoParamLayer {
         this.convolutionMode = builder.convolutionMode;
         if(builder instanceof Builder){
             this.dilation = ((Builder)builder).dilation;
+            this.cnn2dDataFormat = ((Builder)builder).cnn2dDataFormat;
         }
         this.pnorm = builder.pnorm;
         this.eps = builder.eps;
@@ -134,9 +137,10 @@ public class SubsamplingLayer extends NoParamLayer {
                             + "\"): Expected CNN input, got " + inputType);
         }
 
-        return InputTypeUtil.getOutputTypeCnnLayers(inputType, kernelSize, stride, padding, dilation, convolutionMode,
-                        ((InputType.InputTypeConvolutional) inputType).getChannels(), layerIndex, getLayerName(),
-                        SubsamplingLayer.class);
+        InputType outputType = InputTypeUtil.getOutputTypeCnnLayers(inputType, kernelSize, stride, padding, dilation,
+                        convolutionMode, ((InputType.InputTypeConvolutional) inputType).getChannels(), layerIndex,
+                        getLayerName(), SubsamplingLayer.class);
+        return InputTypeUtil.withFormat(outputType, cnn2dDataFormat);
     }
 
     @Override
@@ -151,7 +155,7 @@ public class SubsamplingLayer extends NoParamLayer {
                             + "\"): input is null");
         }
 
-        return InputTypeUtil.getPreProcessorForInputTypeCnnLayers(inputType, getLayerName());
+        return InputTypeUtil.getPreProcessorForInputTypeCnnLayers(inputType, getLayerName(), cnn2dDataFormat);
     }
 
     @Override
@@ -209,6 +213,7 @@ public class SubsamplingLayer extends NoParamLayer {
     public static class Builder extends BaseSubsamplingBuilder<Builder> {
 
         private int[] dilation = new int[]{1,1};
+        private CNN2DFormat cnn2dDataFormat = CNN2DFormat.NCHW;
 
         public Builder(PoolingType poolingType, int[] kernelSize, int[] stride) {
             super(poolingType, kernelSize, stride);
@@ -305,6 +310,17 @@ public class SubsamplingLayer extends NoParamLayer {
             return this;
         }
 
+        /**
+         * Set the data format for the layer activations: NCHW ([minibatch, channels, height, width], the default)
+         * or NHWC ([minibatch, height, width, channels]). See {@link CNN2DFormat} for more details.
+         *
+         * @param format Format of the input and output activations
+         */
+        public Builder dataFormat(CNN2DFormat format){
+            this.cnn2dDataFormat = format;
+            return this;
+        }
+
 
         @Override
         @SuppressWarnings("unchecked")
@@ -17,6 +17,7 @@
 package org.deeplearning4j.nn.conf.layers;
 
 import lombok.*;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
 import org.deeplearning4j.nn.conf.InputPreProcessor;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.inputs.InputType;
@@ -36,7 +37,8 @@ import java.util.Map;
  * Repeats each value (or rather, set of depth values) in the height and width dimensions by size[0] and size[1]
  * times respectively.<br>
  * If input has shape {@code [minibatch, channels, height, width]} then output has shape
- * {@code [minibatch, channels, height*size[0], width*size[1]]}<br>
+ * {@code [minibatch, channels, height*size[0], width*size[1]]} (or the equivalent NHWC shapes, when configured with
+ * the NHWC data format)<br>
  * Example:
  * <pre>
  * Input (slice for one example and channel)
@@ -61,10 +63,14 @@ public class Upsampling2D extends BaseUpsamplingLayer {
 
     @JsonDeserialize(using= LegacyIntArrayDeserializer.class)
     protected int[] size;
+    protected CNN2DFormat cnn2dDataFormat = CNN2DFormat.NCHW; //Default for JSON deserialization of older configurations
 
     protected Upsampling2D(UpsamplingBuilder builder) {
         super(builder);
         this.size = builder.size;
+        if (builder instanceof Builder) {
+            this.cnn2dDataFormat = ((Builder) builder).cnn2dDataFormat;
+        }
     }
 
     @Override
@@ -99,7 +105,7 @@ public class Upsampling2D extends BaseUpsamplingLayer {
         val inWidth = i.getWidth();
         val inDepth = i.getChannels();
 
-        return InputType.convolutional(size[0] * inHeight, size[1] * inWidth, inDepth);
+        return InputType.convolutional(size[0] * inHeight, size[1] * inWidth, inDepth, cnn2dDataFormat);
     }
 
     @Override
@@ -108,7 +114,7 @@ public class Upsampling2D extends BaseUpsamplingLayer {
             throw new IllegalStateException("Invalid input for Upsampling 2D layer (layer name=\"" + getLayerName()
                     + "\"): input is null");
         }
-        return InputTypeUtil.getPreProcessorForInputTypeCnnLayers(inputType, getLayerName());
+        return InputTypeUtil.getPreProcessorForInputTypeCnnLayers(inputType, getLayerName(), cnn2dDataFormat);
     }
 
     @Override
@@ -138,6 +144,8 @@ public class Upsampling2D extends BaseUpsamplingLayer {
     @NoArgsConstructor
     public static class Builder extends UpsamplingBuilder<Builder> {
 
+        private CNN2DFormat cnn2dDataFormat = CNN2DFormat.NCHW;
+
         public Builder(int size) {
             super(new int[]{size, size});
         }
@@ -166,6 +174,17 @@ public class Upsampling2D extends BaseUpsamplingLayer {
             return this;
         }
 
+        /**
+         * Set the data format for the layer activations: NCHW ([minibatch, channels, height, width], the default)
+         * or NHWC ([minibatch, height, width, channels]). See {@link CNN2DFormat} for more details.
+         *
+         * @param format Format of the input and output activations
+         */
+        public Builder dataFormat(CNN2DFormat format) {
+            this.cnn2dDataFormat = format;
+            return this;
+        }
+
         @Override
         @SuppressWarnings("unchecked")
         public Upsampling2D build() {
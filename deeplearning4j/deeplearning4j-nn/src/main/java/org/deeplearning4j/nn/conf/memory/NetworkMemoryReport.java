@@ -26,6 +26,7 @@ import org.nd4j.shade.jackson.annotation.JsonProperty;
 
 import java.text.DecimalFormat;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -107,6 +108,60 @@ public class NetworkMemoryReport extends MemoryReport {
         return totalBytes + maxWorkingFixed + maxWorkingVariable;
     }
 
+    /**
+     * Total memory requirements for training with activation checkpointing (see
+     * {@link org.deeplearning4j.nn.conf.MultiLayerConfiguration.Builder#activationCheckpoints(int...)} and
+     * {@link org.deeplearning4j.nn.conf.ComputationGraphConfiguration.GraphBuilder#activationCheckpoints(String...)}).
+     * This is the same as {@link #getTotalMemoryBytes(int, MemoryUseMode, CacheMode, DataBuffer.Type)} in training
+     * mode, with the activations replaced by {@link #getCheckpointedActivationMemoryBytes(int, Collection, DataBuffer.Type)}
+     *
+     * @param minibatchSize Mini batch size
+     * @param cacheMode     Cache mode
+     * @param dataType      Data type
+     * @param checkpoints   Names of the checkpoint layers/vertices ("layer0", "layer1", etc by default for MultiLayerNetwork)
+     * @return Estimated total memory for training, in bytes
+     */
+    public long getTotalMemoryBytesWithCheckpoints(int minibatchSize, @NonNull CacheMode cacheMode,
+                    @NonNull DataBuffer.Type dataType, @NonNull Collection<String> checkpoints) {
+        return getTotalMemoryBytes(minibatchSize, MemoryUseMode.TRAINING, cacheMode, dataType)
+                        - getMemoryBytes(MemoryType.ACTIVATIONS, minibatchSize, MemoryUseMode.TRAINING, cacheMode,
+                                        dataType)
+                        + getCheckpointedActivationMemoryBytes(minibatchSize, checkpoints, dataType);
+    }
+
+    /**
+     * Peak activation memory for training with activation checkpointing: the activations of the checkpoint
+     * layers/vertices are kept for the whole iteration, all other activations only while the segment (the layers
+     * between two checkpoints, in topological order) they belong to is recomputed and backpropagated. This is the sum
+     * of the checkpoint activations, plus the activations of the largest segment.<br>
+     * Note that activation gradients are estimated as for training without checkpointing.
+     *
+     * @param minibatchSize Mini batch size
+     * @param checkpoints   Names of the checkpoint layers/vertices ("layer0", "layer1", etc by default for MultiLayerNetwork)
+     * @param dataType      Data type
+     * @return Estimated activation memory, in bytes
+     */
+    public long getCheckpointedActivationMemoryBytes(int minibatchSize, @NonNull Collection<String> checkpoints,
+                    @NonNull DataBuffer.Type dataType) {
+        long checkpointBytes = 0;
+        long segmentBytes = 0;
+        long maxSegmentBytes = 0;
+        for (Map.Entry<String, MemoryReport> e : layerAndVertexReports.entrySet()) {
+            long bytes = e.getValue().getMemoryBytes(MemoryType.ACTIVATIONS, minibatchSize, MemoryUseMode.TRAINING,
+                            CacheMode.NONE, dataType);
+            if (checkpoints.contains(e.getKey())) {
+                checkpointBytes += bytes;
+                maxSegmentBytes = Math.max(maxSegmentBytes, segmentBytes);
+                segmentBytes = 0;
+            } else {
+                segmentBytes += bytes;
+            }
+        }
+        maxSegmentBytes = Math.max(maxSegmentBytes, segmentBytes);
+
+        return checkpointBytes + maxSegmentBytes;
+    }
+
     @Override
     public long getMemoryBytes(MemoryType memoryType, int minibatchSize, MemoryUseMode memoryUseMode,
                     CacheMode cacheMode, DataBuffer.Type dataType) {
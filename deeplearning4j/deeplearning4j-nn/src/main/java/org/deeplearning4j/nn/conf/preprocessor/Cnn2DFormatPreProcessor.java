@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.conf.preprocessor;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+import org.deeplearning4j.nn.api.MaskState;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.workspace.ArrayType;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.primitives.Pair;
+import org.nd4j.shade.jackson.annotation.JsonCreator;
+import org.nd4j.shade.jackson.annotation.JsonProperty;
+
+import java.util.Arrays;
+
+/**
+ * A preprocessor to convert 2D CNN activations between the NCHW (channels first) and NHWC (channels last) formats.<br>
+ * This is added automatically (when using {@code setInputType}) in front of layers that expect a different format than
+ * their input activations have; for example, when a layer that only supports NCHW follows a layer configured for NHWC.
+ * Note that unlike layers configured for NHWC (which work on permuted views, copied only where an operation needs a
+ * contiguous array), this preprocessor always copies the activations and the epsilons to the new layout.
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class Cnn2DFormatPreProcessor extends BaseInputPreProcessor {
+    private CNN2DFormat from;
+    private CNN2DFormat to;
+
+    /**
+     * @param from Format of the input activations
+     * @param to   Format of the output activations
+     */
+    @JsonCreator
+    public Cnn2DFormatPreProcessor(@NonNull @JsonProperty("from") CNN2DFormat from,
+                    @NonNull @JsonProperty("to") CNN2DFormat to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public INDArray preProcess(INDArray input, int miniBatchSize, LayerWorkspaceMgr workspaceMgr) {
+        if (input.rank() != 4) {
+            throw new IllegalStateException("Invalid input array: expected rank 4 CNN activations in " + from
+                            + " format, got array with shape " + Arrays.toString(input.shape()));
+        }
+        if (from == to) {
+            return workspaceMgr.leverageTo(ArrayType.ACTIVATIONS, input);
+        }
+        return workspaceMgr.dup(ArrayType.ACTIVATIONS, permute(input, from, to), 'c');
+    }
+
+    @Override
+    public INDArray backprop(INDArray output, int miniBatchSize, LayerWorkspaceMgr workspaceMgr) {
+        if (from == to) {
+            return workspaceMgr.leverageTo(ArrayType.ACTIVATION_GRAD, output);
+        }
+        return workspaceMgr.dup(ArrayType.ACTIVATION_GRAD, permute(output, to, from), 'c');
+    }
+
+    /**
+     * @return A view of the rank 4 array in the target format
+     */
+    public static INDArray permute(INDArray arr, CNN2DFormat from, CNN2DFormat to) {
+        if (from == to) {
+            return arr;
+        }
+        return to == CNN2DFormat.NHWC ? arr.permute(0, 2, 3, 1) : arr.permute(0, 3, 1, 2);
+    }
+
+    @Override
+    public InputType getOutputType(InputType inputType) {
+        if (inputType == null || inputType.getType() != InputType.Type.CNN) {
+            throw new IllegalStateException("Invalid input type: Expected input of type CNN, got " + inputType);
+        }
+        InputType.InputTypeConvolutional c = (InputType.InputTypeConvolutional) inputType;
+        return InputType.convolutional(c.getHeight(), c.getWidth(), c.getChannels(), to);
+    }
+
+    @Override
+    public Pair<INDArray, MaskState> feedForwardMaskArray(INDArray maskArray, MaskState currentMaskState,
+                    int minibatchSize) {
+        if (maskArray == null || maskArray.rank() != 4) {
+            return new Pair<>(maskArray, currentMaskState);
+        }
+        return new Pair<>(permute(maskArray, from, to), currentMaskState);
+    }
+
+    @Override
+    public Cnn2DFormatPreProcessor clone() {
+        return (Cnn2DFormatPreProcessor) super.clone();
+    }
+}
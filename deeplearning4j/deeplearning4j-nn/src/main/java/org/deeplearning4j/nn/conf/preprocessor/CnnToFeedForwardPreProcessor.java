@@ -19,6 +19,7 @@ package org.deeplearning4j.nn.conf.preprocessor;
 import lombok.Data;
 import lombok.val;
 import org.deeplearning4j.nn.api.MaskState;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
 import org.deeplearning4j.nn.conf.InputPreProcessor;
 import org.deeplearning4j.nn.conf.inputs.InputType;
 import org.nd4j.linalg.api.ndarray.INDArray;
@@ -43,7 +44,10 @@ import java.util.Arrays;
  * (a) Reshapes epsilons (weights*deltas) out of FeedFoward layer (which is 2D or 3D with shape
  * [numExamples, inputHeight*inputWidth*numChannels]) into 4d epsilons (with shape
  * [numExamples, numChannels, inputHeight, inputWidth]) suitable to feed into CNN layers.<br>
- * Note: numChannels is equivalent to channels or featureMaps referenced in different literature
+ * Note: numChannels is equivalent to channels or featureMaps referenced in different literature<br>
+ * For activations in NHWC format ([numExamples, inputHeight, inputWidth, numChannels]), the activations are flattened
+ * in height, width, channels order - i.e., the same order as TensorFlow/Keras Flatten layers. NHWC layers output
+ * permuted views, so these activations are copied (to 'c' order) before being flattened.
  * @author Adam Gibson
  * @see FeedForwardToCnnPreProcessor for opposite case (i.e., DenseLayer -> CNNetc)
  */
@@ -52,19 +56,31 @@ public class CnnToFeedForwardPreProcessor implements InputPreProcessor {
     protected long inputHeight;
     protected long inputWidth;
     protected long numChannels;
+    protected CNN2DFormat format = CNN2DFormat.NCHW;
 
     /**
      * @param inputHeight the columns
      * @param inputWidth the rows
      * @param numChannels the channels
      */
+    public CnnToFeedForwardPreProcessor(long inputHeight, long inputWidth, long numChannels) {
+        this(inputHeight, inputWidth, numChannels, CNN2DFormat.NCHW);
+    }
 
+    /**
+     * @param inputHeight the columns
+     * @param inputWidth the rows
+     * @param numChannels the channels
+     * @param format format of the input activations: NCHW or NHWC
+     */
     @JsonCreator
     public CnnToFeedForwardPreProcessor(@JsonProperty("inputHeight") long inputHeight,
-                    @JsonProperty("inputWidth") long inputWidth, @JsonProperty("numChannels") long numChannels) {
+                    @JsonProperty("inputWidth") long inputWidth, @JsonProperty("numChannels") long numChannels,
+                    @JsonProperty("format") CNN2DFormat format) {
         this.inputHeight = inputHeight;
         this.inputWidth = inputWidth;
         this.numChannels = numChannels;
+        this.format = (format == null ? CNN2DFormat.NCHW : format);    //Null for JSON of older configurations
     }
 
     public CnnToFeedForwardPreProcessor(long inputHeight, long inputWidth) {
@@ -81,8 +97,15 @@ public class CnnToFeedForwardPreProcessor implements InputPreProcessor {
         if (input.rank() == 2)
             return input; //Should usually never happen
 
-        //Check input: nchw format
-        if(input.size(1) != numChannels || input.size(2) != inputHeight ||
+        //Check input: nchw or nhwc format
+        if (format == CNN2DFormat.NHWC) {
+            if(input.size(3) != numChannels || input.size(1) != inputHeight ||
+                    input.size(2) != inputWidth){
+                throw new IllegalStateException("Invalid input array: expected shape [minibatch, height, width, channels] = "
+                        + "[minibatch, " + inputHeight + ", " + inputWidth + ", " + numChannels + "] - got "
+                        + Arrays.toString(input.shape()));
+            }
+        } else if(input.size(1) != numChannels || input.size(2) != inputHeight ||
                 input.size(3) != inputWidth){
             throw new IllegalStateException("Invalid input array: expected shape [minibatch, channels, height, width] = "
                     + "[minibatch, " + numChannels + ", " + inputHeight + ", " + inputWidth + "] - got "
@@ -94,7 +117,7 @@ public class CnnToFeedForwardPreProcessor implements InputPreProcessor {
         if (input.ordering() != 'c' || !Shape.hasDefaultStridesForShape(input))
             input = workspaceMgr.dup(ArrayType.ACTIVATIONS, input, 'c');
 
-        val inShape = input.shape(); //[miniBatch,depthOut,outH,outW]
+        val inShape = input.shape(); //[miniBatch,depthOut,outH,outW] or [miniBatch,outH,outW,depthOut]
         val outShape = new long[]{inShape[0], inShape[1] * inShape[2] * inShape[3]};
 
         return workspaceMgr.leverageTo(ArrayType.ACTIVATIONS, input.reshape('c', outShape));    //Should be zero copy reshape
@@ -114,7 +137,12 @@ public class CnnToFeedForwardPreProcessor implements InputPreProcessor {
                             + inputHeight + " x columns " + inputWidth + " x channels " + numChannels + " but was instead "
                             + Arrays.toString(epsilons.shape()));
 
-        INDArray ret = epsilons.reshape('c', epsilons.size(0), numChannels, inputHeight, inputWidth);
+        INDArray ret;
+        if (format == CNN2DFormat.NHWC) {
+            ret = epsilons.reshape('c', epsilons.size(0), inputHeight, inputWidth, numChannels);
+        } else {
+            ret = epsilons.reshape('c', epsilons.size(0), numChannels, inputHeight, inputWidth);
+        }
         return workspaceMgr.leverageTo(ArrayType.ACTIVATION_GRAD, ret); //Move if required to specified workspace
     }
 
@@ -46,6 +46,8 @@ import org.deeplearning4j.nn.layers.FrozenLayer;
 import org.deeplearning4j.nn.layers.FrozenLayerWithBackprop;
 import org.deeplearning4j.nn.layers.recurrent.BidirectionalLayer;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.updater.LossScaler;
+import org.deeplearning4j.nn.updater.UpdaterStateLoader;
 import org.deeplearning4j.nn.updater.graph.ComputationGraphUpdater;
 import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
@@ -54,6 +56,7 @@ import org.deeplearning4j.optimize.api.ConvexOptimizer;
 import org.deeplearning4j.optimize.api.TrainingListener;
 import org.deeplearning4j.optimize.solvers.accumulation.GradientsAccumulator;
 import org.deeplearning4j.util.CrashReportingUtil;
+import org.deeplearning4j.util.MixedPrecisionUtils;
 import org.deeplearning4j.util.ModelSerializer;
 import org.deeplearning4j.util.NetworkUtils;
 import org.nd4j.base.Preconditions;
@@ -64,12 +67,14 @@ import org.nd4j.linalg.api.memory.enums.LearningPolicy;
 import org.nd4j.linalg.api.memory.enums.ResetPolicy;
 import org.nd4j.linalg.api.memory.enums.SpillPolicy;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.rng.Random;
 import org.nd4j.linalg.dataset.api.DataSet;
 import org.nd4j.linalg.dataset.api.DataSetUtil;
 import org.nd4j.linalg.dataset.api.MultiDataSet;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.RandomFactory;
 import org.nd4j.linalg.heartbeat.Heartbeat;
 import org.nd4j.linalg.heartbeat.reports.Environment;
 import org.nd4j.linalg.heartbeat.reports.Event;
@@ -86,6 +91,7 @@ import org.nd4j.util.OneTimeLogger;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -111,6 +117,16 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
     //Workspaces for CUDNN. Pass to LayerWorkspaceMgr for re-use in cudnn helpers
     @Getter
     protected transient Map<String,Pointer> helperWorkspaces = new HashMap<>();
+    //Mixed precision training: dynamic loss scale state. Created on first use, if configured
+    protected LossScaler lossScaler;
+    //Updater state to be loaded when the updater is first created - see ModelSerializer.restoreComputationGraphMemoryMapped
+    protected transient UpdaterStateLoader updaterStateLoader;
+
+    //RNG for the forward passes of activation checkpointing: the same seed is used for the forward pass and the
+    // recomputation of each segment
+    protected transient Random checkpointRandom;
+    //Idle replicas for outputConcurrent: these share this network's parameters array, but have their own vertices and layer state
+    protected transient volatile Queue<ComputationGraph> inferenceReplicas = new ConcurrentLinkedQueue<>();
 
     private transient final AtomicLong occupiedBy = new AtomicLong(-1);
 
@@ -134,6 +150,12 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
      */
     protected static final String WS_OUTPUT_MEM = "WS_OUTPUT_MEM";
 
+    /**
+     * Workspace for activations and activation gradients of one segment (the vertices between two checkpoints) when
+     * activation checkpointing is used. Opened and closed once per segment, for each of forward and backward passes
+     */
+    protected static final String WS_CHECKPOINT_SEGMENT = "WS_CHECKPOINT_SEGMENT";
+
     protected final WorkspaceConfiguration WS_LAYER_WORKING_MEM_CONFIG;
 
     protected static final WorkspaceConfiguration WS_ALL_LAYERS_ACT_CONFIG = WorkspaceConfiguration.builder()
@@ -1355,6 +1377,11 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         FwdPassType fwdType = (tbptt ? FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE : FwdPassType.STANDARD);
         synchronizeIterEpochCounts();
 
+        if (useActivationCheckpoints(tbptt)) {
+            computeGradientAndScoreWithActivationCheckpoints(workspaceMgr);
+            return;
+        }
+
         //Calculate activations (which are stored in each layer, and used in backprop)
         try(MemoryWorkspace wsAllActivations = workspaceMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
             Map<String, INDArray> activations = ffToLayerActivationsInWS(true, -1, getOutputLayerIndices(),
@@ -1409,6 +1436,395 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         }
     }
 
+    /**
+     * @param tbptt Whether truncated BPTT is being used
+     * @return True if activation checkpointing is configured and can be used for this network
+     */
+    protected boolean useActivationCheckpoints(boolean tbptt) {
+        return configuration.getActivationCheckpoints() != null && !tbptt;
+    }
+
+    /**
+     * As per {@link #computeGradientAndScore()}, with activation checkpointing: only the activations needed by later
+     * segments are stored, and the score is calculated as part of the backward pass
+     */
+    private void computeGradientAndScoreWithActivationCheckpoints(LayerWorkspaceMgr workspaceMgr) {
+        try(MemoryWorkspace wsAllActivations = workspaceMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+            calcGradientsWithActivationCheckpoints(workspaceMgr);
+
+            //Listeners
+            if (!trainingListeners.isEmpty()) {
+                try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                    for (TrainingListener tl : trainingListeners) {
+                        tl.onBackwardPass(this);
+                    }
+                }
+            }
+        }
+
+        for(GraphVertex gv : vertices){
+            gv.clear();
+        }
+    }
+
+    /**
+     * Calculate gradients and score using activation checkpointing.<br>
+     * The vertices are split into segments in topological order, each ending at a checkpoint vertex (the last segment
+     * ends with the last vertex). Forward pass: each segment is run in its own workspace, and only the activations
+     * used by later segments (checkpoint activations, and any skip connections across a checkpoint) are kept in
+     * WS_ALL_LAYERS_ACT, along with the network inputs. Backward pass: for each segment, last to first, the segment
+     * activations are recomputed from the stored activations, then the segment is backpropagated. Only the epsilons
+     * for vertices in earlier segments are kept in WS_ALL_LAYERS_ACT.<br>
+     * Segments without any vertices to backprop through (for example, frozen feature extractors) are not recomputed.<br>
+     * Must be called with WS_ALL_LAYERS_ACT open (if workspaces are used), and the inputs, labels and masks set.
+     *
+     * @param mgr Workspace manager for WS_ALL_LAYERS_ACT
+     */
+    protected void calcGradientsWithActivationCheckpoints(LayerWorkspaceMgr mgr) {
+        if (flattenedGradients == null) {
+            initGradientsView();
+        }
+        //As per ffToLayerActivationsInWS
+        setLayerMaskArrays(inputMaskArrays, labelMaskArrays);
+
+        boolean noWorkspaces = configuration.getTrainingWorkspaceMode() == WorkspaceMode.NONE;
+        LayerWorkspaceMgr segMgr;
+        if (noWorkspaces) {
+            segMgr = LayerWorkspaceMgr.noWorkspaces();
+        } else {
+            segMgr = LayerWorkspaceMgr.builder()
+                    .with(ArrayType.INPUT, WS_CHECKPOINT_SEGMENT, WS_LAYER_ACT_X_CONFIG)
+                    .with(ArrayType.ACTIVATIONS, WS_CHECKPOINT_SEGMENT, WS_LAYER_ACT_X_CONFIG)
+                    .with(ArrayType.ACTIVATION_GRAD, WS_CHECKPOINT_SEGMENT, WS_LAYER_ACT_X_CONFIG)
+                    .with(ArrayType.FF_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
+                    .with(ArrayType.BP_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
+                    .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
+                    .with(ArrayType.RNN_BP_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
+                    .build();
+            if (configuration.getCacheMode() != CacheMode.NONE) {
+                segMgr.setWorkspace(ArrayType.FF_CACHE, WS_CHECKPOINT_SEGMENT, WS_LAYER_ACT_X_CONFIG);
+            }
+            //Stored activations (and the inputs) are used directly, not copied into the segment workspace
+            segMgr.setNoLeverageOverride(WS_ALL_LAYERS_ACT);
+            for (INDArray in : inputs) {
+                if (in != null && in.isAttached()) {
+                    segMgr.setNoLeverageOverride(in.data().getParentWorkspace().getId());
+                }
+            }
+        }
+        segMgr.setHelperWorkspacePointers(helperWorkspaces);
+
+        //Segment of each vertex (by vertex index): number of checkpoints before it in topological order
+        int[] topoPosition = new int[topologicalOrder.length];
+        for (int i = 0; i < topologicalOrder.length; i++) {
+            topoPosition[topologicalOrder[i]] = i;
+        }
+        List<Integer> checkpointPositions = new ArrayList<>();
+        for (String name : configuration.getActivationCheckpoints()) {
+            int pos = topoPosition[verticesMap.get(name).getVertexIndex()];
+            if (!checkpointPositions.contains(pos)) {
+                checkpointPositions.add(pos);
+            }
+        }
+        Collections.sort(checkpointPositions);
+        int[] segmentOf = new int[topologicalOrder.length];
+        int[] segmentStart = new int[checkpointPositions.size() + 1];
+        int nSegments = 0;
+        for (int i = 0; i < topologicalOrder.length; i++) {
+            segmentOf[topologicalOrder[i]] = nSegments;
+            if (nSegments < checkpointPositions.size() && checkpointPositions.get(nSegments) == i) {
+                segmentStart[++nSegments] = i + 1;
+            }
+        }
+        if (segmentStart[nSegments] < topologicalOrder.length) {
+            nSegments++;
+        }
+
+        //Which vertices are processed in the forward pass, and which activations must be kept for later segments
+        boolean[] forward = new boolean[topologicalOrder.length];
+        boolean[] backward = new boolean[topologicalOrder.length];
+        boolean[] store = new boolean[topologicalOrder.length];
+        boolean[] segmentHasBackward = new boolean[nSegments];
+        int[] outputIdxs = getOutputLayerIndices();
+        for (GraphVertex gv : vertices) {
+            int idx = gv.getVertexIndex();
+            if (gv.isInputVertex()) {
+                continue;
+            }
+            forward[idx] = !ArrayUtils.contains(outputIdxs, idx);
+            backward[idx] = !(gv.hasLayer() && gv.getLayer() instanceof FrozenLayer || gv instanceof FrozenVertex);
+            segmentHasBackward[segmentOf[idx]] |= backward[idx];
+            if (gv.getOutputVertices() != null) {
+                for (VertexIndices v : gv.getOutputVertices()) {
+                    store[idx] |= segmentOf[v.getVertexIndex()] > segmentOf[idx];
+                }
+            }
+        }
+
+        //Forward pass: keep only the activations needed by later segments
+        INDArray[] stored = new INDArray[topologicalOrder.length];
+        for (GraphVertex gv : vertices) {
+            if (gv.isInputVertex()) {
+                stored[gv.getVertexIndex()] = inputs[gv.getVertexIndex()];
+            }
+        }
+        long[] seeds = new long[nSegments];
+        for (int k = 0; k < nSegments; k++) {
+            seeds[k] = Nd4j.getRandom().nextLong();
+            if (k == nSegments - 1) {
+                //Last segment: nothing to store, forward pass is done as part of the backward pass
+                break;
+            }
+            try (MemoryWorkspace wsSeg = segMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+                activateGraphSegment(k, segmentOf, segmentStart, nSegments, forward, stored, store, seeds[k],
+                        segMgr, mgr);
+            }
+            releaseGraphSegment(k, segmentStart, nSegments, noWorkspaces);
+        }
+
+        if (!trainingListeners.isEmpty()) {
+            Map<String, INDArray> storedActivations = new HashMap<>();
+            for (int i = 0; i < stored.length; i++) {
+                if (stored[i] != null) {
+                    storedActivations.put(vertices[i].getVertexName(), stored[i]);
+                }
+            }
+            try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                for (TrainingListener tl : trainingListeners) {
+                    tl.onForwardPass(this, storedActivations);
+                }
+            }
+        }
+
+        //Backward pass, in reverse topological order: recompute each segment, then backprop through it
+        double l1 = calcL1();
+        double l2 = calcL2();
+        score = 0.0;
+        LinkedList<Triple<String, INDArray, Character>> gradients = new LinkedList<>();
+        boolean[] setVertexEpsilon = new boolean[topologicalOrder.length];
+        LossScaler scaler = getLossScaler();
+        for (int k = nSegments - 1; k >= 0; k--) {
+            if (!segmentHasBackward[k]) {
+                continue;
+            }
+            int end = (k == nSegments - 1 ? topologicalOrder.length : segmentStart[k + 1]);
+            try (MemoryWorkspace wsSeg = segMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+                activateGraphSegment(k, segmentOf, segmentStart, nSegments, forward, stored, null, seeds[k],
+                        segMgr, mgr);
+
+                for (int i = end - 1; i >= segmentStart[k]; i--) {
+                    GraphVertex current = vertices[topologicalOrder[i]];
+                    if (!backward[current.getVertexIndex()]) {
+                        continue;
+                    }
+
+                    IOutputLayer outputLayer = null;
+                    int thisOutputNumber = -1;
+                    if (current.isOutputVertex()) {
+                        thisOutputNumber = configuration.getNetworkOutputs().indexOf(current.getVertexName());
+                        Layer currentLayer = current.getLayer();
+                        if (currentLayer instanceof FrozenLayerWithBackprop) {
+                            currentLayer = ((FrozenLayerWithBackprop) currentLayer).getInsideLayer();
+                        }
+                        if (!(currentLayer instanceof IOutputLayer)) {
+                            throw new DL4JException("Layer \"" + current.getVertexName() + "\" is set as network output "
+                                    + "but isn't an IOutputLayer: only IOutputLayer network outputs are supported with "
+                                    + "activation checkpointing");
+                        }
+                        outputLayer = (IOutputLayer) currentLayer;
+                        outputLayer.setLabels(labels[thisOutputNumber]);
+                    }
+
+                    Pair<Gradient, INDArray[]> pair;
+                    try (MemoryWorkspace wsWorkingMem = segMgr.notifyScopeEntered(ArrayType.BP_WORKING_MEM)) {
+                        pair = current.doBackward(false, segMgr);
+                    }
+                    INDArray[] epsilons = pair.getSecond();
+                    if (scaler != null && outputLayer != null) {
+                        scaler.scale(pair.getFirst(), epsilons);
+                    }
+                    for (INDArray eps : epsilons) {
+                        applyHalfPrecision(eps);
+                    }
+
+                    //Set epsilons for the vertices that provide inputs to this vertex. Epsilons for vertices in earlier
+                    // segments must outlive this segment's workspace
+                    VertexIndices[] inputVertices = current.getInputVertices();
+                    if (inputVertices != null) {
+                        int j = 0;
+                        for (VertexIndices v : inputVertices) {
+                            GraphVertex gv = vertices[v.getVertexIndex()];
+                            INDArray eps = epsilons[j++];
+                            if (gv.isInputVertex()) {
+                                continue;
+                            }
+                            if (eps != null && segmentOf[gv.getVertexIndex()] < k) {
+                                eps = mgr.leverageTo(ArrayType.ACTIVATIONS, eps);
+                            }
+                            if (setVertexEpsilon[gv.getVertexIndex()]) {
+                                gv.setEpsilon(gv.getEpsilon().addi(eps));
+                            } else {
+                                gv.setEpsilon(eps);
+                            }
+                            setVertexEpsilon[gv.getVertexIndex()] = true;
+                        }
+                    }
+
+                    if (pair.getFirst() != null) {
+                        Gradient g = pair.getFirst();
+                        LinkedList<Triple<String, INDArray, Character>> tempList = new LinkedList<>();
+                        for (Map.Entry<String, INDArray> entry : g.gradientForVariable().entrySet()) {
+                            String origName = entry.getKey();
+                            tempList.addFirst(new Triple<>(current.getVertexName() + "_" + origName, entry.getValue(),
+                                    g.flatteningOrderForVariable(origName)));
+                        }
+                        for (Triple<String, INDArray, Character> t : tempList)
+                            gradients.addFirst(t);
+                    }
+
+                    //Score for this output: the input to the output layer is only available within this segment
+                    if (outputLayer != null) {
+                        ((Layer) outputLayer).setMaskArray(
+                                (labelMaskArrays == null) ? null : labelMaskArrays[thisOutputNumber]);
+                        try (MemoryWorkspace ws = segMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+                            score += outputLayer.computeScore(l1, l2, true, segMgr);
+                        }
+                        //Only want to add l1/l2 once...
+                        l1 = 0.0;
+                        l2 = 0.0;
+                    }
+                }
+            }
+            releaseGraphSegment(k, segmentStart, nSegments, noWorkspaces);
+        }
+
+        //Add the gradients in the order we need them in for flattening (same as params order)
+        Gradient gradient = new DefaultGradient(flattenedGradients);
+        for (Triple<String, INDArray, Character> t : gradients) {
+            gradient.setGradientFor(t.getFirst(), t.getSecond(), t.getThird());
+        }
+        this.gradient = gradient;
+        if (scaler != null) {
+            scaler.unscale(flattenedGradients);
+        }
+    }
+
+    /**
+     * Mixed precision training: get the loss scaler for this network, creating it if required
+     *
+     * @return The loss scaler, or null if mixed precision training is not configured
+     */
+    public LossScaler getLossScaler() {
+        if (lossScaler == null && configuration.getMixedPrecision() != null) {
+            lossScaler = new LossScaler(configuration.getMixedPrecision());
+        }
+        return lossScaler;
+    }
+
+    /**
+     * Mixed precision training: round activations or activation gradients computed during training to FP16
+     * precision, in place. Arrays sharing a network input's buffer are never modified
+     */
+    private void applyHalfPrecision(INDArray arr) {
+        MixedPrecision mp = configuration.getMixedPrecision();
+        if (mp == null || !mp.isHalfPrecisionActivations() || arr == null) {
+            return;
+        }
+        if (inputs != null) {
+            for (INDArray in : inputs) {
+                if (in != null && in.data() == arr.data()) {
+                    return;
+                }
+            }
+        }
+        MixedPrecisionUtils.roundToHalf(arr);
+    }
+
+    /**
+     * Forward pass (training mode) for the vertices of segment k. Inputs from earlier segments are taken from the
+     * stored activations. The layers draw their random numbers from a dedicated RNG seeded with the given seed, so the
+     * global RNG (and any seed set by the user) is not affected.
+     *
+     * @param store If non-null: activations of vertices with store[idx] == true are leveraged to WS_ALL_LAYERS_ACT and
+     *              kept in the stored array
+     */
+    private void activateGraphSegment(int k, int[] segmentOf, int[] segmentStart, int nSegments, boolean[] forward,
+                                      INDArray[] stored, boolean[] store, long seed, LayerWorkspaceMgr segMgr,
+                                      LayerWorkspaceMgr mgr) {
+        RandomFactory randomFactory = Nd4j.getRandomFactory();
+        Random globalRandom = randomFactory.getRandom();
+        if (checkpointRandom == null) {
+            checkpointRandom = randomFactory.getNewRandomInstance(seed);
+        } else {
+            checkpointRandom.setSeed(seed);
+        }
+        randomFactory.setRandom(checkpointRandom);
+        try {
+            for (int i = 0; i < stored.length; i++) {
+                if (stored[i] == null || vertices[i].getOutputVertices() == null) {
+                    continue;
+                }
+                for (VertexIndices v : vertices[i].getOutputVertices()) {
+                    if (segmentOf[v.getVertexIndex()] == k) {
+                        vertices[v.getVertexIndex()].setInput(v.getVertexEdgeNumber(), stored[i], segMgr);
+                    }
+                }
+            }
+
+            int end = (k == nSegments - 1 ? topologicalOrder.length : segmentStart[k + 1]);
+            for (int i = segmentStart[k]; i < end; i++) {
+                GraphVertex current = vertices[topologicalOrder[i]];
+                int vIdx = current.getVertexIndex();
+                if (!forward[vIdx]) {
+                    continue;
+                }
+                try (MemoryWorkspace wsFFWorking = segMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+                    INDArray out = current.doForward(true, segMgr);
+                    if (!current.isInputVertex()) {
+                        applyHalfPrecision(out);
+                    }
+                    if (current.getOutputVertices() != null) {
+                        for (VertexIndices v : current.getOutputVertices()) {
+                            if (segmentOf[v.getVertexIndex()] == k) {
+                                vertices[v.getVertexIndex()].setInput(v.getVertexEdgeNumber(), out, segMgr);
+                            }
+                        }
+                    }
+                    if (store != null && store[vIdx]) {
+                        stored[vIdx] = mgr.leverageTo(ArrayType.ACTIVATIONS, out);
+                    }
+                }
+            }
+        } finally {
+            randomFactory.setRandom(globalRandom);
+        }
+    }
+
+    /**
+     * Release the per-iteration state of the vertices in segment k once the segment has been processed: weight noise
+     * is cleared so that the recomputation draws the same random numbers as the first forward pass. Without
+     * workspaces, vertex inputs and epsilons are also cleared (keeping layer mask arrays), so the activations can be
+     * garbage collected
+     */
+    private void releaseGraphSegment(int k, int[] segmentStart, int nSegments, boolean clearInputs) {
+        int end = (k == nSegments - 1 ? topologicalOrder.length : segmentStart[k + 1]);
+        for (int i = segmentStart[k]; i < end; i++) {
+            GraphVertex gv = vertices[topologicalOrder[i]];
+            if (gv.isInputVertex()) {
+                continue;
+            }
+            if (clearInputs) {
+                INDArray layerMask = gv.hasLayer() ? gv.getLayer().getMaskArray() : null;
+                gv.clear();
+                if (gv.hasLayer()) {
+                    gv.getLayer().setMaskArray(layerMask);
+                }
+            } else if (gv.hasLayer()) {
+                gv.getLayer().clearNoiseWeightParams();
+            }
+        }
+    }
+
 
     /**
      * Conduct forward pass using a single input array. Note that this method can only be used with ComputationGraphs
@@ -1726,6 +2142,77 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         }
     }
 
+    /**
+     * Thread safe, non blocking equivalent of {@link #output(INDArray...)}: see {@link #outputConcurrent(INDArray[], INDArray[], INDArray[])}
+     *
+     * @param input Inputs to the network
+     * @return Output activations (detached)
+     */
+    public INDArray[] outputConcurrent(INDArray... input) {
+        return outputConcurrent(input, null, null);
+    }
+
+    /**
+     * Thread safe, non blocking equivalent of {@link #output(boolean, INDArray[], INDArray[], INDArray[])} at test time.<br>
+     * The other output methods are synchronized, as layers store their input and mask arrays during the forward pass.
+     * This method instead runs the forward pass on a replica of this network: replicas share this network's parameters
+     * array (no copy of the parameters is made) but have their own vertices, and hence their own per call state.
+     * Idle replicas are pooled and reused; a new replica is only created when all existing replicas are in use, so
+     * N threads can call this method on the same network concurrently without blocking each other.<br>
+     * PLEASE NOTE: the parameters are read without synchronization: the network must not be trained or otherwise
+     * modified while this method is being called.
+     *
+     * @param input      Input arrays to the network
+     * @param inputMasks Optional input mask arrays (may be null)
+     * @param labelMasks Optional label mask arrays (may be null)
+     * @return Output activations (detached)
+     */
+    public INDArray[] outputConcurrent(@NonNull INDArray[] input, INDArray[] inputMasks, INDArray[] labelMasks) {
+        ComputationGraph replica = acquireInferenceReplica();
+        try {
+            return replica.output(false, input, inputMasks, labelMasks);
+        } finally {
+            replica.clearLayersStates();
+            inferenceReplicas().offer(replica);
+        }
+    }
+
+    /**
+     * Remove all pooled inference replicas used by {@link #outputConcurrent(INDArray[], INDArray[], INDArray[])},
+     * releasing their layers and workspaces once garbage collected.
+     */
+    public void clearInferenceReplicas() {
+        inferenceReplicas().clear();
+    }
+
+    protected ComputationGraph acquireInferenceReplica() {
+        if (!initCalled)
+            throw new IllegalStateException("Network has not been initialized: call init() before outputConcurrent()");
+
+        Queue<ComputationGraph> replicas = inferenceReplicas();
+        ComputationGraph replica;
+        while ((replica = replicas.poll()) != null) {
+            //Replicas are dropped if the parameters array was replaced since they were created
+            if (replica.params() == params())
+                return replica;
+        }
+
+        replica = new ComputationGraph(configuration.clone());
+        replica.init(params(), false);
+        return replica;
+    }
+
+    private Queue<ComputationGraph> inferenceReplicas() {
+        if (inferenceReplicas == null) {
+            //Java deserialization doesn't run field initializers
+            synchronized (this) {
+                if (inferenceReplicas == null)
+                    inferenceReplicas = new ConcurrentLinkedQueue<>();
+            }
+        }
+        return inferenceReplicas;
+    }
+
     /**
      * A convenience method that returns a single INDArray, instead of an INDArray[].
      * Useful for ComputationGraphs that have only a single output.
@@ -2092,6 +2579,9 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     }
 
                     validateArrayWorkspaces(workspaceMgr, out, ArrayType.ACTIVATIONS, vName, false, "Feed forward (inference)");
+                    if (train) {
+                        applyHalfPrecision(out);
+                    }
                 }
                 activations.put(current.getVertexName(), out);
 
@@ -2463,6 +2953,9 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
         }
 
+        //Mixed precision training: loss scaling only applies to the standard (not external errors) case
+        LossScaler scaler = (externalEpsilons == null || externalEpsilons.length == 0 ? getLossScaler() : null);
+
         //Position in array: index of vertex. Value at position: the step (in topological order) that the activation
         // gradients of the specified vertex have been consumed by
         //Put another way: this is the step that it's safe to deallocate the layer's activation gradients by closing the
@@ -2559,6 +3052,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                 }
                 workspaceMgr.setHelperWorkspacePointers(helperWorkspaces);
 
+                boolean isOutputLayer = false;
                 if (current.isOutputVertex()) {
                     //Two reasons for a vertex to be an output vertex:
                     //(a) it's an output layer (i.e., instanceof IOutputLayer), or
@@ -2574,6 +3068,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
                         INDArray currLabels = labels[thisOutputNumber];
                         outputLayer.setLabels(currLabels);
+                        isOutputLayer = true;
                     } else {
                         if ((externalEpsilons == null || externalEpsilons.length == 0)
                                 && labels[thisOutputNumber] != null) {
@@ -2621,6 +3116,14 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                             validateArrayWorkspaces(workspaceMgr, epsilon, ArrayType.ACTIVATION_GRAD, vertexName, false, "Backprop");
                         }
                     }
+                    if (scaler != null) {
+                        if (isOutputLayer) {
+                            scaler.scale(pair.getFirst(), epsilons);
+                        }
+                        for (INDArray epsilon : epsilons) {
+                            applyHalfPrecision(epsilon);
+                        }
+                    }
                 }
 
                 //Inputs to the current GraphVertex:
@@ -2685,6 +3188,10 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
         this.gradient = gradient;
 
+        if (scaler != null) {
+            scaler.unscale(flattenedGradients);
+        }
+
         if(truncatedBPTT && clearTbpttState){
             rnnClearPreviousState();
         }
@@ -2833,10 +3340,41 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         return null;
     }
 
+    /**
+     * Set the source of the updater state, to be loaded when the updater is first created (for example, when training
+     * starts) instead of immediately. Has no effect if the updater has already been created.
+     *
+     * @param updaterStateLoader Updater state loader. May be null
+     */
+    public void setUpdaterStateLoader(UpdaterStateLoader updaterStateLoader) {
+        this.updaterStateLoader = updaterStateLoader;
+    }
+
+    /**
+     * Load the updater state from the loader set by {@link #setUpdaterStateLoader(UpdaterStateLoader)}, if any. Each
+     * loader is used only once. Called when the updater is created.<br>
+     * Any failure is rethrown as an unchecked exception, as the updater is created on demand (from fit, etc)
+     *
+     * @return The updater state, or null if there is no pending updater state
+     */
+    public synchronized INDArray loadPendingUpdaterState() {
+        UpdaterStateLoader loader = updaterStateLoader;
+        updaterStateLoader = null;
+        if (loader == null) {
+            return null;
+        }
+        try {
+            return loader.loadUpdaterState();
+        } catch (IOException e) {
+            throw new IllegalStateException("Error loading updater state", e);
+        }
+    }
+
     /**
      * Set the computationGraphUpdater for the network
      */
     public void setUpdater(ComputationGraphUpdater updater) {
+        updaterStateLoader = null;
         if (solver == null) {
             solver = new Solver.Builder().configure(conf()).listeners(getListeners()).model(this).build();
         }
@@ -3479,6 +4017,37 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         }
     }
 
+    /**
+     * Thread safe equivalent of {@link #rnnTimeStep(INDArray...)}, where the RNN layer state is passed in and returned
+     * explicitly instead of being stored in the layers of this network. This allows one network instance to serve many
+     * independent streams (sessions): the caller keeps the state of each stream, and may batch time steps of different
+     * streams together by concatenating inputs and states along dimension 0.<br>
+     * As with {@link #outputConcurrent(INDArray[], INDArray[], INDArray[])}, the forward pass is done on a pooled replica
+     * of this network, so this method can be called from multiple threads concurrently. The stored state of this network
+     * (as used by {@link #rnnTimeStep(INDArray...)}) is neither used nor modified.
+     *
+     * @param previousStates States of the RNN layers before this time step, keyed by layer name, as returned by an
+     *                       earlier call of this method or by {@link #rnnGetPreviousStates()}. Null (or no entry for a
+     *                       layer) to start from the default initial state
+     * @param inputs         Inputs to the network, as per {@link #rnnTimeStep(INDArray...)}
+     * @return Pair of (output activations, RNN layer states after the last time step of the input). All arrays are
+     * detached
+     */
+    public Pair<INDArray[], Map<String, Map<String, INDArray>>> rnnTimeStepConcurrent(
+                    Map<String, Map<String, INDArray>> previousStates, INDArray... inputs) {
+        ComputationGraph replica = acquireInferenceReplica();
+        try {
+            replica.rnnClearPreviousState();
+            if (previousStates != null)
+                replica.rnnSetPreviousStates(previousStates);
+            INDArray[] out = replica.rnnTimeStep(inputs);
+            return new Pair<>(out, replica.rnnGetPreviousStates());
+        } finally {
+            replica.rnnClearPreviousState();
+            inferenceReplicas().offer(replica);
+        }
+    }
+
     /**
      * Clear the previous state of the RNN layers (if any), used in {@link #rnnTimeStep(INDArray...)}
      */
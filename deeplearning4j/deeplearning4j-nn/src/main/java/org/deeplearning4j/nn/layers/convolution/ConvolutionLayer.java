@@ -20,9 +20,11 @@ package org.deeplearning4j.nn.layers.convolution;
 import org.deeplearning4j.exception.DL4JInvalidInputException;
 import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.MaskState;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
 import org.deeplearning4j.nn.conf.CacheMode;
 import org.deeplearning4j.nn.conf.ConvolutionMode;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.preprocessor.Cnn2DFormatPreProcessor;
 import org.deeplearning4j.nn.gradient.DefaultGradient;
 import org.deeplearning4j.nn.gradient.Gradient;
 import org.deeplearning4j.nn.graph.ComputationGraph;
@@ -93,6 +95,9 @@ public class ConvolutionLayer extends BaseLayer<org.deeplearning4j.nn.conf.layer
                             + "For more information, please refer to: https://deeplearning4j.org/cudnn", t);
                 }
             }
+        } else if (CpuConvolutionHelper.isEnabled() && CpuConvolutionHelper.isAvailable()) {
+            helper = new CpuConvolutionHelper();
+            log.debug("CpuConvolutionHelper successfully initialized");
         }
     }
 
@@ -104,6 +109,30 @@ public class ConvolutionLayer extends BaseLayer<org.deeplearning4j.nn.conf.layer
     @Override
     public Pair<Gradient, INDArray> backpropGradient(INDArray epsilon, LayerWorkspaceMgr workspaceMgr) {
         assertInputSet(true);
+        if (!isNHWC()) {
+            return backpropGradientNCHW(epsilon, workspaceMgr);
+        }
+
+        //NHWC: backprop is done on NCHW views (permutations) of the input and epsilon
+        input = Cnn2DFormatPreProcessor.permute(input, CNN2DFormat.NHWC, CNN2DFormat.NCHW);
+        try {
+            Pair<Gradient, INDArray> ret = backpropGradientNCHW(
+                            Cnn2DFormatPreProcessor.permute(epsilon, CNN2DFormat.NHWC, CNN2DFormat.NCHW), workspaceMgr);
+            ret.setSecond(Cnn2DFormatPreProcessor.permute(ret.getSecond(), CNN2DFormat.NCHW, CNN2DFormat.NHWC));
+            return ret;
+        } finally {
+            input = Cnn2DFormatPreProcessor.permute(input, CNN2DFormat.NCHW, CNN2DFormat.NHWC);
+        }
+    }
+
+    /**
+     * @return True if the layer is configured for NHWC (channels last) activations, and the input is a 4d array
+     */
+    protected boolean isNHWC() {
+        return layerConf().getCnn2dDataFormat() == CNN2DFormat.NHWC && input != null && input.rank() == 4;
+    }
+
+    private Pair<Gradient, INDArray> backpropGradientNCHW(INDArray epsilon, LayerWorkspaceMgr workspaceMgr) {
         INDArray weights = getParamWithNoise(ConvolutionParamInitializer.WEIGHT_KEY, true, workspaceMgr);
 
         // FIXME: int cast
@@ -166,7 +195,7 @@ public class ConvolutionLayer extends BaseLayer<org.deeplearning4j.nn.conf.layer
             } catch (Exception e){
                 if(layerConf().isCudnnAllowFallback()){
                     helperCountFail++;
-                    log.warn("CuDNN execution failed - falling back on built-in implementation",e);
+                    log.warn("{} execution failed - falling back on built-in implementation", helper.getClass().getSimpleName(), e);
                 } else {
                     throw new RuntimeException(e);
                 }
@@ -344,7 +373,7 @@ public class ConvolutionLayer extends BaseLayer<org.deeplearning4j.nn.conf.layer
             } catch (Exception e){
                 if(layerConf().isCudnnAllowFallback()){
                     helperCountFail++;
-                    log.warn("CuDNN execution failed - falling back on built-in implementation",e);
+                    log.warn("{} execution failed - falling back on built-in implementation", helper.getClass().getSimpleName(), e);
                 } else {
                     throw new RuntimeException(e);
                 }
@@ -402,7 +431,22 @@ public class ConvolutionLayer extends BaseLayer<org.deeplearning4j.nn.conf.layer
         if (input == null) {
             throw new IllegalArgumentException("Cannot perform forward pass with null input " + layerId());
         }
+        if (!isNHWC()) {
+            return activateNCHW(training, workspaceMgr);
+        }
+
+        //NHWC: the forward pass is done on an NCHW view of the input. The input field is permuted back afterwards
+        //(instead of being restored) as dropout may have replaced it
+        input = Cnn2DFormatPreProcessor.permute(input, CNN2DFormat.NHWC, CNN2DFormat.NCHW);
+        try {
+            return Cnn2DFormatPreProcessor.permute(activateNCHW(training, workspaceMgr), CNN2DFormat.NCHW,
+                            CNN2DFormat.NHWC);
+        } finally {
+            input = Cnn2DFormatPreProcessor.permute(input, CNN2DFormat.NCHW, CNN2DFormat.NHWC);
+        }
+    }
 
+    private INDArray activateNCHW(boolean training, LayerWorkspaceMgr workspaceMgr) {
         if (cacheMode == null)
             cacheMode = CacheMode.NONE;
 
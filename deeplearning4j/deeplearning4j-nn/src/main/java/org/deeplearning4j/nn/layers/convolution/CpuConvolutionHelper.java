@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.layers.convolution;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.config.DL4JSystemProperties;
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer.AlgoMode;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer.BwdDataAlgo;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer.BwdFilterAlgo;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer.FwdAlgo;
+import org.deeplearning4j.nn.gradient.DefaultGradient;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.deeplearning4j.nn.params.ConvolutionParamInitializer;
+import org.deeplearning4j.nn.workspace.ArrayType;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.deeplearning4j.util.ConvolutionUtils;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.CustomOp;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Native CPU helper for the 2D convolution layer, based on the "conv2d_cpu" and "conv2d_cpu_bp" libnd4j ops.
+ * Instead of always using im2col + gemm (as the built-in implementation does), the algorithm is selected per layer
+ * from the layer shape:<br>
+ * - {@link Algorithm#WINOGRAD}: Winograd F(2x2,3x3) for 3x3 kernels with stride 1 and no dilation (the most common
+ * layer in VGG/ResNet style networks), with enough channels for the transformed gemm calls to be efficient.
+ * This needs about 2.25x fewer multiplications than im2col + gemm, and no im2col buffer.<br>
+ * - {@link Algorithm#DIRECT}: direct convolution, blocked over output channels, for layers with few input channels
+ * (for example the first layer of a network, where the gemm inner dimension is tiny) or where the im2col buffer
+ * would be very large.<br>
+ * - {@link Algorithm#IM2COL}: everything else; the helper returns null and the layer uses the built-in implementation.<br>
+ * <br>
+ * Backprop uses the same algorithm as the forward pass for the input gradients; weight gradients are computed
+ * directly, without an im2col buffer.<br>
+ * <br>
+ * The helper is disabled by default: set the {@link DL4JSystemProperties#CPU_CONVOLUTION_HELPER_ENABLED_PROPERTY}
+ * system property to true to enable it.
+ */
+@Slf4j
+public class CpuConvolutionHelper implements ConvolutionHelper {
+    public static final String FORWARD_OP = "conv2d_cpu";
+    public static final String BACKPROP_OP = "conv2d_cpu_bp";
+
+    /**
+     * Minimum number of input and output channels for Winograd convolution
+     */
+    public static final int WINOGRAD_MIN_CHANNELS = 16;
+    /**
+     * Maximum size of one patch (inDepth * kH * kW) for direct convolution to be used instead of im2col + gemm
+     */
+    public static final int DIRECT_MAX_PATCH_SIZE = 64;
+    /**
+     * im2col buffer size (number of elements) above which direct convolution is used instead of im2col + gemm
+     */
+    public static final long DIRECT_MIN_IM2COL_LENGTH = 1L << 27;
+
+    public enum Algorithm {
+        IM2COL(0), WINOGRAD(1), DIRECT(2);
+
+        private final int opArg;
+
+        Algorithm(int opArg) {
+            this.opArg = opArg;
+        }
+
+        public int getOpArg() {
+            return opArg;
+        }
+    }
+
+    private final Algorithm algorithm;
+
+    /**
+     * Helper with the algorithm selected from the layer shape, see {@link #selectAlgorithm(long, long, long, long, long, int[], int[], int[])}
+     */
+    public CpuConvolutionHelper() {
+        this(null);
+    }
+
+    /**
+     * @param algorithm Algorithm to use for all layer shapes it supports, or null to select the algorithm from the
+     *                  layer shape. Winograd falls back to direct convolution for unsupported kernels, strides and dilations.
+     */
+    public CpuConvolutionHelper(Algorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * @return True if the helper has been enabled with the
+     * {@link DL4JSystemProperties#CPU_CONVOLUTION_HELPER_ENABLED_PROPERTY} system property
+     */
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(DL4JSystemProperties.CPU_CONVOLUTION_HELPER_ENABLED_PROPERTY));
+    }
+
+    /**
+     * @return True if the current ND4J backend is a CPU backend, and the ops used by this helper are available
+     */
+    public static boolean isAvailable() {
+        try {
+            String backend = Nd4j.getExecutioner().getEnvironmentInformation().getProperty("backend");
+            if ("CUDA".equalsIgnoreCase(backend)) {
+                return false;
+            }
+            Map<String, ?> ops = Nd4j.getExecutioner().getCustomOperations();
+            return ops != null && ops.containsKey(FORWARD_OP) && ops.containsKey(BACKPROP_OP);
+        } catch (Throwable t) {
+            log.debug("Could not check for native convolution ops", t);
+            return false;
+        }
+    }
+
+    /**
+     * Select the convolution algorithm for the given layer shape
+     *
+     * @param miniBatch Minibatch size
+     * @param inDepth   Number of input channels
+     * @param outDepth  Number of output channels
+     * @param outH      Output height
+     * @param outW      Output width
+     * @param kernel    Kernel size
+     * @param strides   Strides
+     * @param dilation  Dilation
+     */
+    public static Algorithm selectAlgorithm(long miniBatch, long inDepth, long outDepth, long outH, long outW,
+                    int[] kernel, int[] strides, int[] dilation) {
+        if (supportsWinograd(kernel, strides, dilation) && inDepth >= WINOGRAD_MIN_CHANNELS
+                        && outDepth >= WINOGRAD_MIN_CHANNELS) {
+            return Algorithm.WINOGRAD;
+        }
+        long patchSize = inDepth * kernel[0] * kernel[1];
+        if (patchSize <= DIRECT_MAX_PATCH_SIZE || miniBatch * outH * outW * patchSize >= DIRECT_MIN_IM2COL_LENGTH) {
+            return Algorithm.DIRECT;
+        }
+        return Algorithm.IM2COL;
+    }
+
+    private static boolean supportsWinograd(int[] kernel, int[] strides, int[] dilation) {
+        return kernel[0] == 3 && kernel[1] == 3 && strides[0] == 1 && strides[1] == 1 && dilation[0] == 1
+                        && dilation[1] == 1;
+    }
+
+    private Algorithm algorithmFor(long miniBatch, long inDepth, long outDepth, long outH, long outW, int[] kernel,
+                    int[] strides, int[] dilation) {
+        if (algorithm == null) {
+            return selectAlgorithm(miniBatch, inDepth, outDepth, outH, outW, kernel, strides, dilation);
+        }
+        if (algorithm == Algorithm.WINOGRAD && !supportsWinograd(kernel, strides, dilation)) {
+            return Algorithm.DIRECT;
+        }
+        return algorithm;
+    }
+
+    @Override
+    public boolean checkSupported() {
+        return isAvailable();
+    }
+
+    @Override
+    public Pair<Gradient, INDArray> backpropGradient(INDArray input, INDArray weights, INDArray delta, int[] kernel,
+                    int[] strides, int[] pad, INDArray biasGradView, INDArray weightGradView, IActivation afn,
+                    AlgoMode mode, BwdFilterAlgo bwdFilterAlgo, BwdDataAlgo bwdDataAlgo,
+                    ConvolutionMode convolutionMode, int[] dilation, LayerWorkspaceMgr workspaceMgr) {
+        Algorithm algo = algorithmFor(input.size(0), input.size(1), weights.size(0), delta.size(2), delta.size(3),
+                        kernel, strides, dilation);
+        if (algo == Algorithm.IM2COL) {
+            return null;
+        }
+
+        INDArray epsNext = workspaceMgr.createUninitialized(ArrayType.ACTIVATION_GRAD, input.shape(), 'c');
+
+        CustomOp op = DynamicCustomOp.builder(BACKPROP_OP)
+                        .addInputs(input, weights, delta)
+                        .addIntegerArguments(kernel[0], kernel[1], strides[0], strides[1], pad[0], pad[1],
+                                        dilation[0], dilation[1], convolutionMode == ConvolutionMode.Same ? 1 : 0,
+                                        algo.getOpArg())
+                        .addOutputs(epsNext, weightGradView, biasGradView)
+                        .callInplace(false)
+                        .build();
+        Nd4j.getExecutioner().exec(op);
+
+        Gradient retGradient = new DefaultGradient();
+        retGradient.setGradientFor(ConvolutionParamInitializer.BIAS_KEY, biasGradView);
+        retGradient.setGradientFor(ConvolutionParamInitializer.WEIGHT_KEY, weightGradView, 'c');
+
+        return new Pair<>(retGradient, epsNext);
+    }
+
+    @Override
+    public INDArray preOutput(INDArray input, INDArray weights, INDArray bias, int[] kernel, int[] strides, int[] pad,
+                    AlgoMode mode, FwdAlgo fwdAlgo, ConvolutionMode convolutionMode, int[] dilation,
+                    LayerWorkspaceMgr workspaceMgr) {
+        int[] outSize = ConvolutionUtils.getOutputSize(input, kernel, strides,
+                        convolutionMode == ConvolutionMode.Same ? null : pad, convolutionMode, dilation);
+        Algorithm algo = algorithmFor(input.size(0), input.size(1), weights.size(0), outSize[0], outSize[1], kernel,
+                        strides, dilation);
+        if (algo == Algorithm.IM2COL) {
+            return null;
+        }
+
+        INDArray z = workspaceMgr.createUninitialized(ArrayType.ACTIVATIONS,
+                        new long[] {input.size(0), weights.size(0), outSize[0], outSize[1]}, 'c');
+
+        CustomOp op = DynamicCustomOp.builder(FORWARD_OP)
+                        .addInputs(input, weights, bias)
+                        .addIntegerArguments(kernel[0], kernel[1], strides[0], strides[1], pad[0], pad[1],
+                                        dilation[0], dilation[1], convolutionMode == ConvolutionMode.Same ? 1 : 0,
+                                        algo.getOpArg())
+                        .addOutputs(z)
+                        .callInplace(false)
+                        .build();
+        Nd4j.getExecutioner().exec(op);
+
+        return z;
+    }
+
+    @Override
+    public INDArray activate(INDArray z, IActivation afn) {
+        //Activation functions are applied by the layer
+        return null;
+    }
+
+    @Override
+    public Map<String, Long> helperMemoryUse() {
+        //No persistent memory use other than the layer parameters
+        return Collections.emptyMap();
+    }
+}
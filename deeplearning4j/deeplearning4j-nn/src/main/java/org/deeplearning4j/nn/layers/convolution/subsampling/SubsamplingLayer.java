@@ -20,9 +20,11 @@ import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.exception.DL4JInvalidInputException;
 import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.MaskState;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
 import org.deeplearning4j.nn.conf.ConvolutionMode;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.layers.PoolingType;
+import org.deeplearning4j.nn.conf.preprocessor.Cnn2DFormatPreProcessor;
 import org.deeplearning4j.nn.gradient.DefaultGradient;
 import org.deeplearning4j.nn.gradient.Gradient;
 import org.deeplearning4j.nn.layers.AbstractLayer;
@@ -113,6 +115,30 @@ public class SubsamplingLayer extends AbstractLayer<org.deeplearning4j.nn.conf.l
     @Override
     public Pair<Gradient, INDArray> backpropGradient(INDArray epsilon, LayerWorkspaceMgr workspaceMgr) {
         assertInputSet(true);
+        if (!isNHWC()) {
+            return backpropGradientNCHW(epsilon, workspaceMgr);
+        }
+
+        //NHWC: backprop is done on NCHW views (permutations) of the input and epsilon
+        input = Cnn2DFormatPreProcessor.permute(input, CNN2DFormat.NHWC, CNN2DFormat.NCHW);
+        try {
+            Pair<Gradient, INDArray> ret = backpropGradientNCHW(
+                            Cnn2DFormatPreProcessor.permute(epsilon, CNN2DFormat.NHWC, CNN2DFormat.NCHW), workspaceMgr);
+            ret.setSecond(Cnn2DFormatPreProcessor.permute(ret.getSecond(), CNN2DFormat.NCHW, CNN2DFormat.NHWC));
+            return ret;
+        } finally {
+            input = Cnn2DFormatPreProcessor.permute(input, CNN2DFormat.NCHW, CNN2DFormat.NHWC);
+        }
+    }
+
+    /**
+     * @return True if the layer is configured for NHWC (channels last) activations, and the input is a 4d array
+     */
+    protected boolean isNHWC() {
+        return layerConf().getCnn2dDataFormat() == CNN2DFormat.NHWC && input != null && input.rank() == 4;
+    }
+
+    private Pair<Gradient, INDArray> backpropGradientNCHW(INDArray epsilon, LayerWorkspaceMgr workspaceMgr) {
 
         // FIXME: int cast
         int miniBatch = (int) input.size(0);
@@ -296,6 +322,22 @@ public class SubsamplingLayer extends AbstractLayer<org.deeplearning4j.nn.conf.l
     @Override
     public INDArray activate(boolean training, LayerWorkspaceMgr workspaceMgr) {
         assertInputSet(false);
+        if (!isNHWC()) {
+            return activateNCHW(training, workspaceMgr);
+        }
+
+        //NHWC: the forward pass is done on an NCHW view of the input. The input field is permuted back afterwards
+        //(instead of being restored) as dropout may have replaced it
+        input = Cnn2DFormatPreProcessor.permute(input, CNN2DFormat.NHWC, CNN2DFormat.NCHW);
+        try {
+            return Cnn2DFormatPreProcessor.permute(activateNCHW(training, workspaceMgr), CNN2DFormat.NCHW,
+                            CNN2DFormat.NHWC);
+        } finally {
+            input = Cnn2DFormatPreProcessor.permute(input, CNN2DFormat.NCHW, CNN2DFormat.NHWC);
+        }
+    }
+
+    private INDArray activateNCHW(boolean training, LayerWorkspaceMgr workspaceMgr) {
         if (training && !dropoutApplied && layerConf().getIDropout() != null) {
             applyDropOutIfNecessary(true, workspaceMgr);
         }
@@ -19,6 +19,7 @@ package org.deeplearning4j.nn.layers.convolution.upsampling;
 import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.exception.DL4JInvalidInputException;
 import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
 import org.deeplearning4j.nn.conf.CacheMode;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.gradient.DefaultGradient;
@@ -76,17 +77,11 @@ public class Upsampling2D extends AbstractLayer<org.deeplearning4j.nn.conf.layer
     public Pair<Gradient, INDArray> backpropGradient(INDArray epsilon, LayerWorkspaceMgr workspaceMgr) {
         assertInputSet(true);
 
-        // FIXME: int cast
-        int miniBatch = (int) input.size(0);
-        int inDepth = (int) input.size(1);
-        int inH = (int) input.size(2);
-        int inW = (int) input.size(3);
-
-        INDArray reshapedEpsilon =  workspaceMgr.createUninitialized(ArrayType.ACTIVATION_GRAD, new int[]{miniBatch, inDepth, inH, inW}, 'c');
+        INDArray reshapedEpsilon =  workspaceMgr.createUninitialized(ArrayType.ACTIVATION_GRAD, input.shape(), 'c');
 
         Gradient gradient = new DefaultGradient();
 
-        int[] intArgs = new int[] {1}; // 1 is for NCHW
+        int[] intArgs = new int[] {getFormat() == CNN2DFormat.NCHW ? 1 : 0}; // 1 is for NCHW, 0 for NHWC
 
 
         CustomOp op = DynamicCustomOp.builder("upsampling_bp")
@@ -105,6 +100,10 @@ public class Upsampling2D extends AbstractLayer<org.deeplearning4j.nn.conf.layer
         return layerConf().getSize();
     }
 
+    protected CNN2DFormat getFormat(){
+        return layerConf().getCnn2dDataFormat();
+    }
+
     protected INDArray preOutput(boolean training, boolean forBackprop, LayerWorkspaceMgr workspaceMgr) {
         assertInputSet(false);
         applyDropOutIfNecessary(training, workspaceMgr);
@@ -120,19 +119,22 @@ public class Upsampling2D extends AbstractLayer<org.deeplearning4j.nn.conf.layer
             return preOutput;
         }
 
+        boolean nchw = getFormat() == CNN2DFormat.NCHW;
+        int hIdx = nchw ? 2 : 1;
         // FIXME: int cast
         int miniBatch = (int) input.size(0);
-        int inDepth = (int) input.size(1);
-        int inH = (int) input.size(2);
-        int inW = (int) input.size(3);
+        int inDepth = (int) input.size(nchw ? 1 : 3);
+        int inH = (int) input.size(hIdx);
+        int inW = (int) input.size(hIdx + 1);
 
         int[] size = getSize();
         int outH = inH * size[0];
         int outW = inW * size[1];
 
-        INDArray reshapedOutput = workspaceMgr.createUninitialized(ArrayType.ACTIVATIONS, new int[]{miniBatch, inDepth, outH, outW}, 'c');
+        int[] outShape = nchw ? new int[]{miniBatch, inDepth, outH, outW} : new int[]{miniBatch, outH, outW, inDepth};
+        INDArray reshapedOutput = workspaceMgr.createUninitialized(ArrayType.ACTIVATIONS, outShape, 'c');
 
-        int[] intArgs = new int[] {size[0], size[1], 1}; // 1 is for NCHW
+        int[] intArgs = new int[] {size[0], size[1], nchw ? 1 : 0}; // 1 is for NCHW, 0 for NHWC
 
         CustomOp upsampling = DynamicCustomOp.builder("upsampling2d")
                 .addIntegerArguments(intArgs)
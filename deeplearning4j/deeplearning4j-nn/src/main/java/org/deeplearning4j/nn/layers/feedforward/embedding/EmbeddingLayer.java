@@ -21,6 +21,7 @@ import lombok.val;
 import org.nd4j.linalg.api.ops.custom.ScatterUpdate;
 import org.nd4j.linalg.primitives.Pair;
 import org.deeplearning4j.exception.DL4JInvalidInputException;
+import org.deeplearning4j.nn.api.layers.SparseGradientLayer;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.gradient.DefaultGradient;
 import org.deeplearning4j.nn.gradient.Gradient;
@@ -42,9 +43,12 @@ import org.deeplearning4j.nn.workspace.ArrayType;
  * @author Alex Black
  */
 @Slf4j
-public class EmbeddingLayer extends BaseLayer<org.deeplearning4j.nn.conf.layers.EmbeddingLayer> {
+public class EmbeddingLayer extends BaseLayer<org.deeplearning4j.nn.conf.layers.EmbeddingLayer>
+                implements SparseGradientLayer {
     private static final int[] DIM_1 = new int[]{1};
 
+    private final RowSparseGradient sparseGradient = new RowSparseGradient();
+
     public EmbeddingLayer(NeuralNetConfiguration conf) {
         super(conf);
     }
@@ -61,7 +65,6 @@ public class EmbeddingLayer extends BaseLayer<org.deeplearning4j.nn.conf.layers.
         }
 
         INDArray weightGradients = gradientViews.get(DefaultParamInitializer.WEIGHT_KEY);
-        weightGradients.assign(0);
 
         // FIXME: int cast
         int[] indexes = new int[(int) input.length()];
@@ -69,6 +72,13 @@ public class EmbeddingLayer extends BaseLayer<org.deeplearning4j.nn.conf.layers.
             indexes[i] = input.getInt(i, 0);
         }
 
+        if (layerConf().isSparseGradients()) {
+            sparseGradient.zeroGradients(weightGradients, workspaceMgr);
+            sparseGradient.setRows(indexes);
+        } else {
+            weightGradients.assign(0);
+        }
+
         ScatterUpdate op = new ScatterUpdate(weightGradients, delta, indexes, DIM_1, ScatterUpdate.UpdateOp.ADD);
         Nd4j.getExecutioner().exec(op);
 
@@ -143,6 +153,23 @@ public class EmbeddingLayer extends BaseLayer<org.deeplearning4j.nn.conf.layers.
         return false;
     }
 
+    @Override
+    public boolean isSparseGradientParam(String paramName) {
+        return layerConf().isSparseGradients() && DefaultParamInitializer.WEIGHT_KEY.equals(paramName);
+    }
+
+    @Override
+    public int[] getGradientRows(String paramName) {
+        return isSparseGradientParam(paramName) ? sparseGradient.getRows() : null;
+    }
+
+    @Override
+    public void sparseUpdateApplied(String paramName) {
+        if (isSparseGradientParam(paramName)) {
+            sparseGradient.updateApplied();
+        }
+    }
+
     @Override
     protected void applyDropOutIfNecessary(boolean training, LayerWorkspaceMgr workspaceMgr) {
         throw new UnsupportedOperationException("Dropout not supported with EmbeddingLayer " + layerId());
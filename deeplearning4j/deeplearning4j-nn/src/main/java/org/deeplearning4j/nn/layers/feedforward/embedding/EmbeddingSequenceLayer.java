@@ -19,6 +19,7 @@ package org.deeplearning4j.nn.layers.feedforward.embedding;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.deeplearning4j.exception.DL4JInvalidInputException;
+import org.deeplearning4j.nn.api.layers.SparseGradientLayer;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.gradient.DefaultGradient;
 import org.deeplearning4j.nn.gradient.Gradient;
@@ -48,7 +49,8 @@ import static org.nd4j.linalg.api.shape.Shape.hasDefaultStridesForShape;
  * @author Max Pumperla
  */
 @Slf4j
-public class EmbeddingSequenceLayer extends BaseLayer<org.deeplearning4j.nn.conf.layers.EmbeddingSequenceLayer> {
+public class EmbeddingSequenceLayer extends BaseLayer<org.deeplearning4j.nn.conf.layers.EmbeddingSequenceLayer>
+                implements SparseGradientLayer {
     private static final int[] WEIGHT_DIM = new int[]{1};
 
     public EmbeddingSequenceLayer(NeuralNetConfiguration conf) {
@@ -56,6 +58,7 @@ public class EmbeddingSequenceLayer extends BaseLayer<org.deeplearning4j.nn.conf
     }
 
     private int[] indexes;
+    private final RowSparseGradient sparseGradient = new RowSparseGradient();
 
     @Override
     public Pair<Gradient, INDArray> backpropGradient(INDArray epsilon, LayerWorkspaceMgr workspaceMgr) {
@@ -79,7 +82,12 @@ public class EmbeddingSequenceLayer extends BaseLayer<org.deeplearning4j.nn.conf
         delta = delta.reshape('c',inputLength * numSamples, nOut);
 
         INDArray weightGradients = gradientViews.get(DefaultParamInitializer.WEIGHT_KEY);
-        weightGradients.assign(0);
+        if (layerConf().isSparseGradients()) {
+            sparseGradient.zeroGradients(weightGradients, workspaceMgr);
+            sparseGradient.setRows(indexes);
+        } else {
+            weightGradients.assign(0);
+        }
 
         if (!hasDefaultStridesForShape(input))
             input = workspaceMgr.dup(ArrayType.ACTIVATIONS, input, 'f');
@@ -209,4 +217,21 @@ public class EmbeddingSequenceLayer extends BaseLayer<org.deeplearning4j.nn.conf
         super.clear();
         indexes = null;
     }
+
+    @Override
+    public boolean isSparseGradientParam(String paramName) {
+        return layerConf().isSparseGradients() && DefaultParamInitializer.WEIGHT_KEY.equals(paramName);
+    }
+
+    @Override
+    public int[] getGradientRows(String paramName) {
+        return isSparseGradientParam(paramName) ? sparseGradient.getRows() : null;
+    }
+
+    @Override
+    public void sparseUpdateApplied(String paramName) {
+        if (isSparseGradientParam(paramName)) {
+            sparseGradient.updateApplied();
+        }
+    }
 }
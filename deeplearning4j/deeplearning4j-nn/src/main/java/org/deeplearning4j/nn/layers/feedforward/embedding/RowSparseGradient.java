@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.layers.feedforward.embedding;
+
+import org.deeplearning4j.nn.workspace.ArrayType;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.custom.ScatterUpdate;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Row-sparse weight gradient state for the embedding layers, as used for
+ * {@link org.deeplearning4j.nn.api.layers.SparseGradientLayer}: tracks the rows with non-zero gradients, so that
+ * only these rows need to be zeroed before each backprop pass after a lazy update
+ */
+class RowSparseGradient implements Serializable {
+    private static final int[] DIM_1 = new int[]{1};
+
+    private int[] rows;
+    private boolean onlyRowsNonZero;
+
+    /**
+     * Zero the weight gradients before the scatter-add for a new backprop pass: only the rows used in the last pass
+     * if the last update was a lazy update, otherwise the full array
+     */
+    void zeroGradients(INDArray weightGradients, LayerWorkspaceMgr workspaceMgr) {
+        if (onlyRowsNonZero && rows != null && rows.length < weightGradients.size(0)) {
+            INDArray zeros = workspaceMgr.create(ArrayType.BP_WORKING_MEM, rows.length, weightGradients.size(1));
+            Nd4j.getExecutioner().exec(new ScatterUpdate(weightGradients, zeros, rows, DIM_1,
+                    ScatterUpdate.UpdateOp.ASSIGN));
+        } else {
+            weightGradients.assign(0);
+        }
+        onlyRowsNonZero = false;
+    }
+
+    /**
+     * @param indexes Indices for the current backprop pass, possibly with duplicates
+     */
+    void setRows(int[] indexes) {
+        int[] sorted = Arrays.copyOf(indexes, indexes.length);
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        rows = Arrays.copyOf(sorted, n);
+    }
+
+    int[] getRows() {
+        return rows;
+    }
+
+    void updateApplied() {
+        onlyRowsNonZero = true;
+    }
+}
@@ -19,7 +19,9 @@ package org.deeplearning4j.nn.layers.normalization;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.preprocessor.Cnn2DFormatPreProcessor;
 import org.deeplearning4j.nn.gradient.DefaultGradient;
 import org.deeplearning4j.nn.gradient.Gradient;
 import org.deeplearning4j.nn.layers.BaseLayer;
@@ -108,6 +110,27 @@ public class BatchNormalization extends BaseLayer<org.deeplearning4j.nn.conf.lay
     @Override
     public Pair<Gradient, INDArray> backpropGradient(INDArray epsilon, LayerWorkspaceMgr workspaceMgr) {
         assertInputSet(true);
+        if (!isNHWC()) {
+            return backpropGradientNCHW(epsilon, workspaceMgr);
+        }
+
+        //NHWC: backprop is done on NCHW views (permutations) of the input and epsilon
+        input = Cnn2DFormatPreProcessor.permute(input, CNN2DFormat.NHWC, CNN2DFormat.NCHW);
+        try {
+            Pair<Gradient, INDArray> ret = backpropGradientNCHW(
+                            Cnn2DFormatPreProcessor.permute(epsilon, CNN2DFormat.NHWC, CNN2DFormat.NCHW), workspaceMgr);
+            ret.setSecond(Cnn2DFormatPreProcessor.permute(ret.getSecond(), CNN2DFormat.NCHW, CNN2DFormat.NHWC));
+            return ret;
+        } finally {
+            input = Cnn2DFormatPreProcessor.permute(input, CNN2DFormat.NCHW, CNN2DFormat.NHWC);
+        }
+    }
+
+    private boolean isNHWC() {
+        return layerConf().getCnn2dDataFormat() == CNN2DFormat.NHWC && input.rank() == 4;
+    }
+
+    private Pair<Gradient, INDArray> backpropGradientNCHW(INDArray epsilon, LayerWorkspaceMgr workspaceMgr) {
         INDArray nextEpsilon;
         val shape = getShape(epsilon);
         val batchSize = epsilon.size(0); // number examples in batch
@@ -264,7 +287,19 @@ public class BatchNormalization extends BaseLayer<org.deeplearning4j.nn.conf.lay
     @Override
     public INDArray activate(boolean training, LayerWorkspaceMgr workspaceMgr) {
         assertInputSet(false);
-        return preOutput(input, training ? TrainingMode.TRAIN : TrainingMode.TEST, workspaceMgr);
+        if (!isNHWC()) {
+            return preOutput(input, training ? TrainingMode.TRAIN : TrainingMode.TEST, workspaceMgr);
+        }
+
+        //NHWC: normalize an NCHW view of the input (mean/variance over dimensions 0, 2 and 3). As for the other NHWC
+        //layers, the input field is permuted back afterwards rather than restored
+        input = Cnn2DFormatPreProcessor.permute(input, CNN2DFormat.NHWC, CNN2DFormat.NCHW);
+        try {
+            INDArray out = preOutput(input, training ? TrainingMode.TRAIN : TrainingMode.TEST, workspaceMgr);
+            return Cnn2DFormatPreProcessor.permute(out, CNN2DFormat.NCHW, CNN2DFormat.NHWC);
+        } finally {
+            input = Cnn2DFormatPreProcessor.permute(input, CNN2DFormat.NCHW, CNN2DFormat.NHWC);
+        }
     }
 
     @Override
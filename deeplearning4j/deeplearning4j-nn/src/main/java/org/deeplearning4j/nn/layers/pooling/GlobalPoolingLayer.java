@@ -20,8 +20,10 @@ import lombok.val;
 import org.apache.commons.lang3.ArrayUtils;
 import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.MaskState;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.layers.PoolingType;
+import org.deeplearning4j.nn.conf.preprocessor.Cnn2DFormatPreProcessor;
 import org.deeplearning4j.nn.gradient.DefaultGradient;
 import org.deeplearning4j.nn.gradient.Gradient;
 import org.deeplearning4j.nn.layers.AbstractLayer;
@@ -70,12 +72,14 @@ public class GlobalPoolingLayer extends AbstractLayer<org.deeplearning4j.nn.conf
     private static final int[] DEFAULT_TIMESERIES_POOL_DIMS = new int[]{2};
     private static final int[] DEFAULT_CNN_POOL_DIMS = new int[]{2, 3};
     private static final int[] DEFAULT_CNN3D_POOL_DIMS = new int[]{2, 3, 4};
+    private static final int[] NHWC_TO_NCHW_DIMS = new int[]{0, 2, 3, 1};
 
 
     private final int[] poolingDimensions;
     private final boolean collapseDimensions;
     private final PoolingType poolingType;
     private final int pNorm;
+    private final boolean nhwc;
 
     public GlobalPoolingLayer(NeuralNetConfiguration conf) {
         super(conf);
@@ -83,10 +87,19 @@ public class GlobalPoolingLayer extends AbstractLayer<org.deeplearning4j.nn.conf
         org.deeplearning4j.nn.conf.layers.GlobalPoolingLayer layerConf =
                 (org.deeplearning4j.nn.conf.layers.GlobalPoolingLayer) conf.getLayer();
 
-        poolingDimensions = layerConf.getPoolingDimensions();
+        int[] poolingDimensions = layerConf.getPoolingDimensions();
         collapseDimensions = layerConf.isCollapseDimensions();
         poolingType = layerConf.getPoolingType();
         pNorm = layerConf.getPnorm();
+        nhwc = layerConf.getCnn2dDataFormat() == CNN2DFormat.NHWC;
+        if (nhwc && poolingDimensions != null) {
+            //Pooling is done on an NCHW view of the activations: map the dimensions from NHWC to NCHW
+            poolingDimensions = new int[layerConf.getPoolingDimensions().length];
+            for (int i = 0; i < poolingDimensions.length; i++) {
+                poolingDimensions[i] = NHWC_TO_NCHW_DIMS[layerConf.getPoolingDimensions()[i]];
+            }
+        }
+        this.poolingDimensions = poolingDimensions;
     }
 
     @Override
@@ -117,6 +130,27 @@ public class GlobalPoolingLayer extends AbstractLayer<org.deeplearning4j.nn.conf
     @Override
     public INDArray activate(boolean training, LayerWorkspaceMgr workspaceMgr) {
         assertInputSet(false);
+        if (!nhwc || input.rank() != 4) {
+            return activateHelper(workspaceMgr);
+        }
+
+        //NHWC: pool over an NCHW view of the input (and mask). As for the other NHWC layers, the input field is
+        //permuted back afterwards; the mask is never replaced, so it is simply restored
+        INDArray origMask = maskArray;
+        input = Cnn2DFormatPreProcessor.permute(input, CNN2DFormat.NHWC, CNN2DFormat.NCHW);
+        if (maskArray != null && maskArray.rank() == 4) {
+            maskArray = Cnn2DFormatPreProcessor.permute(maskArray, CNN2DFormat.NHWC, CNN2DFormat.NCHW);
+        }
+        try {
+            INDArray out = activateHelper(workspaceMgr);
+            return collapseDimensions ? out : Cnn2DFormatPreProcessor.permute(out, CNN2DFormat.NCHW, CNN2DFormat.NHWC);
+        } finally {
+            input = Cnn2DFormatPreProcessor.permute(input, CNN2DFormat.NCHW, CNN2DFormat.NHWC);
+            maskArray = origMask;
+        }
+    }
+
+    private INDArray activateHelper(LayerWorkspaceMgr workspaceMgr) {
 
         int[] poolDim;
         if (input.rank() == 3) {
@@ -233,6 +267,29 @@ public class GlobalPoolingLayer extends AbstractLayer<org.deeplearning4j.nn.conf
     @Override
     public Pair<Gradient, INDArray> backpropGradient(INDArray epsilon, LayerWorkspaceMgr workspaceMgr) {
         assertInputSet(true);
+        if (!nhwc || input.rank() != 4) {
+            return backpropHelper(epsilon, workspaceMgr);
+        }
+
+        INDArray origMask = maskArray;
+        input = Cnn2DFormatPreProcessor.permute(input, CNN2DFormat.NHWC, CNN2DFormat.NCHW);
+        if (maskArray != null && maskArray.rank() == 4) {
+            maskArray = Cnn2DFormatPreProcessor.permute(maskArray, CNN2DFormat.NHWC, CNN2DFormat.NCHW);
+        }
+        if (epsilon.rank() == 4) {
+            epsilon = Cnn2DFormatPreProcessor.permute(epsilon, CNN2DFormat.NHWC, CNN2DFormat.NCHW);
+        }
+        try {
+            Pair<Gradient, INDArray> ret = backpropHelper(epsilon, workspaceMgr);
+            ret.setSecond(Cnn2DFormatPreProcessor.permute(ret.getSecond(), CNN2DFormat.NCHW, CNN2DFormat.NHWC));
+            return ret;
+        } finally {
+            input = Cnn2DFormatPreProcessor.permute(input, CNN2DFormat.NCHW, CNN2DFormat.NHWC);
+            maskArray = origMask;
+        }
+    }
+
+    private Pair<Gradient, INDArray> backpropHelper(INDArray epsilon, LayerWorkspaceMgr workspaceMgr) {
 
         if (!collapseDimensions && epsilon.rank() != 2) {
             val origShape = epsilon.shape();
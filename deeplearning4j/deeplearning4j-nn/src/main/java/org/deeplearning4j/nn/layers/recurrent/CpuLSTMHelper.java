@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.layers.recurrent;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.deeplearning4j.config.DL4JSystemProperties;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.gradient.DefaultGradient;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.deeplearning4j.nn.workspace.ArrayType;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.activations.impl.ActivationSigmoid;
+import org.nd4j.linalg.activations.impl.ActivationTanH;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.CustomOp;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Native CPU helper for the LSTM and GravesLSTM layers, based on the fused "lstmLayer" and "lstmLayer_bp" libnd4j ops.
+ * For each time step, the pre-activations of all four gates are computed with one gemm call for the input weights and
+ * one for the recurrent weights, and the gate activations, memory cell update and layer output are computed in a
+ * single fused loop - i.e., no per time step arrays or op calls, as in {@link LSTMHelpers}.<br>
+ * Backprop through time is done the same way, in a single op call.<br>
+ * <br>
+ * Only sigmoid gate activations and tanh layer activations are supported, and the ops must be present in the
+ * native library; otherwise the layer uses the standard implementation.<br>
+ * The helper is disabled by default: set the {@link DL4JSystemProperties#CPU_LSTM_HELPER_ENABLED_PROPERTY} system
+ * property to true to enable it.
+ */
+@Slf4j
+public class CpuLSTMHelper implements LSTMHelper {
+    public static final String FORWARD_OP = "lstmLayer";
+    public static final String BACKPROP_OP = "lstmLayer_bp";
+
+    /**
+     * @return True if the helper has been enabled with the {@link DL4JSystemProperties#CPU_LSTM_HELPER_ENABLED_PROPERTY}
+     * system property
+     */
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(DL4JSystemProperties.CPU_LSTM_HELPER_ENABLED_PROPERTY));
+    }
+
+    /**
+     * @return True if the current ND4J backend is a CPU backend, and the ops used by this helper are available
+     */
+    public static boolean isAvailable() {
+        try {
+            String backend = Nd4j.getExecutioner().getEnvironmentInformation().getProperty("backend");
+            if ("CUDA".equalsIgnoreCase(backend)) {
+                return false;
+            }
+            Map<String, ?> ops = Nd4j.getExecutioner().getCustomOperations();
+            return ops != null && ops.containsKey(FORWARD_OP) && ops.containsKey(BACKPROP_OP);
+        } catch (Throwable t) {
+            log.debug("Could not check for native LSTM ops", t);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean checkSupported(IActivation gateActivationFn, IActivation activationFn,
+                    boolean hasPeepholeConnections) {
+        boolean supported = isAvailable();
+        if (!(gateActivationFn instanceof ActivationSigmoid)) {
+            supported = false;
+            log.debug("Not supported: Gate activation functions != ActivationSigmoid");
+        }
+        if (!(activationFn instanceof ActivationTanH)) {
+            supported = false;
+            log.debug("Not supported: Layer activation functions != ActivationTanH");
+        }
+        return supported;
+    }
+
+    @Override
+    public Pair<Gradient, INDArray> backpropGradient(final NeuralNetConfiguration conf,
+                    final IActivation gateActivationFn, final INDArray input, final INDArray recurrentWeights, //Shape: [hiddenLayerSize,4*hiddenLayerSize+3]; order: [wI,wF,wO,wG,wFF,wOO,wGG]
+                    final INDArray inputWeights, //Shape: [n^(L-1),4*hiddenLayerSize]; order: [wi,wf,wo,wg]
+                    final INDArray epsilon, final boolean truncatedBPTT, final int tbpttBackwardLength,
+                    final FwdPassReturn fwdPass, final boolean forwards, final String inputWeightKey,
+                    final String recurrentWeightKey, final String biasWeightKey,
+                    final Map<String, INDArray> gradientViews, INDArray maskArray, //Input mask: should only be used with bidirectional RNNs + variable length
+                    final boolean hasPeepholeConnections, //True for GravesLSTM, false for LSTM
+                    final LayerWorkspaceMgr workspaceMgr) {
+        if (fwdPass.memCellStates == null || fwdPass.gateActivations == null || epsilon.rank() != 3) {
+            //Forward pass was not done by this helper
+            return null;
+        }
+
+        val miniBatchSize = input.size(0);
+        val prevLayerSize = inputWeights.size(0);
+        val timeSeriesLength = input.size(2);
+
+        INDArray epsilonNext = workspaceMgr.createUninitialized(ArrayType.ACTIVATION_GRAD,
+                        new long[] {miniBatchSize, prevLayerSize, timeSeriesLength}, 'f');
+        INDArray iwGradientsOut = gradientViews.get(inputWeightKey);
+        INDArray rwGradientsOut = gradientViews.get(recurrentWeightKey); //Order: {I,F,O,G,FF,OO,GG}
+        INDArray bGradientsOut = gradientViews.get(biasWeightKey);
+
+        //The mask of the forward pass always applies to the memory cell states; the gradients are only masked if a
+        // mask array is provided for backprop (as in LSTMHelpers)
+        INDArray mask = maskArray != null ? maskArray : fwdPass.fwdPassMask;
+        List<INDArray> inputs = new ArrayList<>();
+        Collections.addAll(inputs, input, inputWeights, recurrentWeights, fwdPass.prevAct, fwdPass.prevMemCell,
+                        fwdPass.fwdPassOutput, fwdPass.memCellStates, fwdPass.gateActivations, epsilon);
+        if (mask != null) {
+            inputs.add(mask);
+        }
+
+        CustomOp op = DynamicCustomOp.builder(BACKPROP_OP)
+                        .addInputs(inputs.toArray(new INDArray[inputs.size()]))
+                        .addIntegerArguments(hasPeepholeConnections ? 1 : 0, forwards ? 1 : 0,
+                                        truncatedBPTT ? tbpttBackwardLength : -1, maskArray != null ? 1 : 0)
+                        .addOutputs(epsilonNext, iwGradientsOut, rwGradientsOut, bGradientsOut)
+                        .callInplace(false)
+                        .build();
+        Nd4j.getExecutioner().exec(op);
+
+        Gradient retGradient = new DefaultGradient();
+        retGradient.gradientForVariable().put(inputWeightKey, iwGradientsOut);
+        retGradient.gradientForVariable().put(recurrentWeightKey, rwGradientsOut);
+        retGradient.gradientForVariable().put(biasWeightKey, bGradientsOut);
+
+        return new Pair<>(retGradient, epsilonNext);
+    }
+
+    @Override
+    public FwdPassReturn activate(final Layer layer, final NeuralNetConfiguration conf,
+                    final IActivation gateActivationFn, //Activation function for the gates - sigmoid or hard sigmoid (must be found in range 0 to 1)
+                    final INDArray input, final INDArray recurrentWeights, //Shape: [hiddenLayerSize,4*hiddenLayerSize+3]; order: [wI,wF,wO,wG,wFF,wOO,wGG]
+                    final INDArray inputWeights, //Shape: [n^(L-1),4*hiddenLayerSize]; order: [wi,wf,wo,wg]
+                    final INDArray biases, //Shape: [4,hiddenLayerSize]; order: [bi,bf,bo,bg]^T
+                    final boolean training, final INDArray prevOutputActivations, final INDArray prevMemCellState,
+                    boolean forBackprop, boolean forwards, final String inputWeightKey, INDArray maskArray, //Input mask: should only be used with bidirectional RNNs + variable length
+                    final boolean hasPeepholeConnections, //True for GravesLSTM, false for LSTM
+                    final LayerWorkspaceMgr workspaceMgr) {
+        if (input.rank() != 3) {
+            //Edge case of T=1 with 2d input: use the standard implementation
+            return null;
+        }
+
+        val miniBatchSize = input.size(0);
+        val hiddenLayerSize = recurrentWeights.size(0);
+        val timeSeriesLength = input.size(2);
+
+        INDArray prevAct = prevOutputActivations != null ? prevOutputActivations
+                        : Nd4j.zeros(new long[] {miniBatchSize, hiddenLayerSize}, 'f');
+        INDArray prevMemCell = prevMemCellState != null ? prevMemCellState
+                        : Nd4j.zeros(new long[] {miniBatchSize, hiddenLayerSize}, 'f');
+
+        //F order to keep time steps together
+        INDArray outputActivations = workspaceMgr.createUninitialized(ArrayType.ACTIVATIONS,
+                        new long[] {miniBatchSize, hiddenLayerSize, timeSeriesLength}, 'f');
+        INDArray memCellState;
+        INDArray gateActivations;
+        if (forBackprop) {
+            memCellState = workspaceMgr.createUninitialized(ArrayType.BP_WORKING_MEM,
+                            new long[] {miniBatchSize, hiddenLayerSize, timeSeriesLength}, 'f');
+            gateActivations = workspaceMgr.createUninitialized(ArrayType.BP_WORKING_MEM,
+                            new long[] {miniBatchSize, 4 * hiddenLayerSize, timeSeriesLength}, 'f');
+        } else {
+            //Only the last memory cell state is kept for inference
+            memCellState = workspaceMgr.createUninitialized(ArrayType.FF_WORKING_MEM,
+                            new long[] {miniBatchSize, hiddenLayerSize}, 'f');
+            gateActivations = workspaceMgr.createUninitialized(ArrayType.FF_WORKING_MEM,
+                            new long[] {miniBatchSize, 4 * hiddenLayerSize}, 'f');
+        }
+
+        List<INDArray> inputs = new ArrayList<>();
+        Collections.addAll(inputs, input, inputWeights, recurrentWeights, biases, prevAct, prevMemCell);
+        if (maskArray != null) {
+            inputs.add(maskArray);
+        }
+
+        CustomOp op = DynamicCustomOp.builder(FORWARD_OP)
+                        .addInputs(inputs.toArray(new INDArray[inputs.size()]))
+                        .addIntegerArguments(hasPeepholeConnections ? 1 : 0, forwards ? 1 : 0, forBackprop ? 1 : 0)
+                        .addOutputs(outputActivations, memCellState, gateActivations)
+                        .callInplace(false)
+                        .build();
+        Nd4j.getExecutioner().exec(op);
+
+        long lastTime = forwards ? timeSeriesLength - 1 : 0;
+        FwdPassReturn toReturn = new FwdPassReturn();
+        toReturn.fwdPassOutput = outputActivations;
+        toReturn.lastAct = outputActivations.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(lastTime));
+        if (forBackprop) {
+            INDArray lastMemCell = memCellState.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(lastTime));
+            if (maskArray != null) {
+                lastMemCell = lastMemCell.mulColumnVector(maskArray.getColumn(lastTime));
+            }
+            toReturn.lastMemCell = lastMemCell;
+            toReturn.memCellStates = memCellState;
+            toReturn.gateActivations = gateActivations;
+            toReturn.fwdPassMask = maskArray;
+        } else {
+            toReturn.lastMemCell = memCellState;
+        }
+        toReturn.prevAct = prevAct;
+        toReturn.prevMemCell = prevMemCell;
+
+        return toReturn;
+    }
+
+    @Override
+    public Map<String, Long> helperMemoryUse() {
+        //No persistent memory use other than the layer parameters
+        return Collections.emptyMap();
+    }
+}
@@ -45,6 +45,11 @@ public class FwdPassReturn {
     //Last 2: needed only for TBPTT
     public INDArray prevAct;
     public INDArray prevMemCell;
+    //Next 3: needed for backpropGradient with CpuLSTMHelper only: memory cell states (before masking) with shape
+    // [m,n^L,T], gate activations [m,4*n^L,T], and the mask array used in the forward pass
+    public INDArray memCellStates;
+    public INDArray gateActivations;
+    public INDArray fwdPassMask;
 
     /**
      * This method is OPTIONAL, and written mostly for future use
@@ -110,6 +115,12 @@ public class FwdPassReturn {
         if (lastMemCell != null)
             lastMemCell = lastMemCell.leverageTo(id);
 
+        if (memCellStates != null)
+            memCellStates = memCellStates.leverageTo(id);
+
+        if (gateActivations != null)
+            gateActivations = gateActivations.leverageTo(id);
+
         //Don't want to leverage previous activations if present - assume that has already happened (either passed
         // externally, or was originally a lastAct/lastMemCell)
     }
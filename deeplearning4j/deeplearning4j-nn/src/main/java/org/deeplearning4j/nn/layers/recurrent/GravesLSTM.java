@@ -47,14 +47,27 @@ public class GravesLSTM extends BaseRecurrentLayer<org.deeplearning4j.nn.conf.la
     public static final String STATE_KEY_PREV_ACTIVATION = "prevAct";
     public static final String STATE_KEY_PREV_MEMCELL = "prevMem";
 
+    protected LSTMHelper helper = null;
     protected FwdPassReturn cachedFwdPass;
 
     public GravesLSTM(NeuralNetConfiguration conf) {
         super(conf);
+        initializeHelper();
     }
 
     public GravesLSTM(NeuralNetConfiguration conf, INDArray input) {
         super(conf, input);
+        initializeHelper();
+    }
+
+    void initializeHelper() {
+        //cuDNN does not support peephole connections: only the native CPU helper applies here
+        if (CpuLSTMHelper.isEnabled() && CpuLSTMHelper.isAvailable()) {
+            helper = new CpuLSTMHelper();
+            if (!helper.checkSupported(layerConf().getGateActivationFn(), layerConf().getActivationFn(), true)) {
+                helper = null;
+            }
+        }
     }
 
     @Override
@@ -98,7 +111,7 @@ public class GravesLSTM extends BaseRecurrentLayer<org.deeplearning4j.nn.conf.la
         Pair<Gradient, INDArray> p = LSTMHelpers.backpropGradientHelper(this.conf, this.layerConf().getGateActivationFn(), this.input,
                         recurrentWeights, inputWeights, epsilon, truncatedBPTT, tbpttBackwardLength, fwdPass, true,
                         GravesLSTMParamInitializer.INPUT_WEIGHT_KEY, GravesLSTMParamInitializer.RECURRENT_WEIGHT_KEY,
-                        GravesLSTMParamInitializer.BIAS_KEY, gradientViews, maskArray, true, null,
+                        GravesLSTMParamInitializer.BIAS_KEY, gradientViews, maskArray, true, helper,
                         workspaceMgr);
 
         weightNoiseParams.clear();
@@ -143,7 +156,7 @@ public class GravesLSTM extends BaseRecurrentLayer<org.deeplearning4j.nn.conf.la
         FwdPassReturn fwd = LSTMHelpers.activateHelper(this, this.conf, this.layerConf().getGateActivationFn(),
                         this.input, recurrentWeights, inputWeights, biases, training, prevOutputActivations,
                         prevMemCellState, forBackprop || (cacheMode != CacheMode.NONE && training), true,
-                        GravesLSTMParamInitializer.INPUT_WEIGHT_KEY, maskArray, true, null,
+                        GravesLSTMParamInitializer.INPUT_WEIGHT_KEY, maskArray, true, helper,
                         cacheMode, workspaceMgr);
 
 
@@ -78,6 +78,12 @@ public class LSTM extends BaseRecurrentLayer<org.deeplearning4j.nn.conf.layers.L
                             + "For more information, please refer to: https://deeplearning4j.org/cudnn", t);
                 }
             }
+        } else if (CpuLSTMHelper.isEnabled() && CpuLSTMHelper.isAvailable()) {
+            helper = new CpuLSTMHelper();
+            log.debug("CpuLSTMHelper successfully initialized");
+            if (!helper.checkSupported(layerConf().getGateActivationFn(), layerConf().getActivationFn(), false)) {
+                helper = null;
+            }
         }
     }
 
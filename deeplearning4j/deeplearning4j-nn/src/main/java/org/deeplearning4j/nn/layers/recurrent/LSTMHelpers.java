@@ -210,6 +210,16 @@ public class LSTMHelpers {
             }
         }
 
+        if (maskArray != null && !forBackprop && !is2dInput) {
+            //Inference with variable length sequences: only compute the examples that are present at each time step
+            activatePacked(layer, gateActivationFn, input, inputWeights, recurrentWeightsIFOG, wFFTranspose,
+                            wOOTranspose, wGGTranspose, biases, training, prevOutputActivations, prevMemCellState,
+                            forwards, maskArray, hasPeepholeConnections, outputActivations, toReturn, workspaceMgr);
+            toReturn.prevAct = originalPrevOutputActivations;
+            toReturn.prevMemCell = originalPrevMemCellState;
+            return toReturn;
+        }
+
         for (int iTimeIndex = 0; iTimeIndex < timeSeriesLength; iTimeIndex++) {
             try(MemoryWorkspace ws = workspaceMgr.notifyScopeEntered(ArrayType.RNN_FF_LOOP_WORKING_MEM)) {
                 int time = iTimeIndex;
@@ -410,6 +420,128 @@ public class LSTMHelpers {
         return toReturn;
     }
 
+    /**
+     * Forward pass (inference only) for masked, variable length input, with packed sequence semantics.<br>
+     * Masked examples have zero activations and zero memory cell state (same as in the regular forward pass),
+     * so at each time step only the range of examples from the first to the last unmasked one is computed,
+     * and time steps where every example is masked are skipped entirely. When examples are sorted by sequence
+     * length (see SequenceLengthBucketingIterator), cost is proportional to the number of real (unmasked) time steps
+     * rather than to minibatch size * longest sequence length.
+     */
+    private static void activatePacked(final BaseLayer layer, final IActivation gateActivationFn, final INDArray input,
+                    final INDArray inputWeights, final INDArray recurrentWeightsIFOG, final INDArray wFFTranspose,
+                    final INDArray wOOTranspose, final INDArray wGGTranspose, final INDArray biases,
+                    final boolean training, INDArray prevOutputActivations, INDArray prevMemCellState,
+                    final boolean forwards, final INDArray maskArray, final boolean hasPeepholeConnections,
+                    final INDArray outputActivations, final FwdPassReturn toReturn,
+                    final LayerWorkspaceMgr workspaceMgr) {
+        int timeSeriesLength = (int) input.size(2);
+        int hiddenLayerSize = (int) recurrentWeightsIFOG.size(0);
+        int miniBatchSize = (int) input.size(0);
+        IActivation afn = layer.layerConf().getActivationFn();
+
+        //Range of examples present at each time step: [first, last). Mask array has shape [minibatch, timeSeriesLength]:
+        //both ends are computed with column-wise max reductions over (mask != 0) * example index, so only 2 values per
+        //time step are copied to the host, not the whole mask
+        INDArray present = maskArray.neq(0.0);
+        INDArray index = Nd4j.arange(1, miniBatchSize + 1).reshape(miniBatchSize, 1);
+        //last present example + 1, or 0 if no example is present
+        double[] lastPresent = present.mulColumnVector(index).max(0).data().asDouble();
+        //miniBatchSize - first present example, or 0 if no example is present
+        double[] firstPresent = present.mulColumnVector(index.rsub(miniBatchSize + 1)).max(0).data().asDouble();
+
+        for (int iTimeIndex = 0; iTimeIndex < timeSeriesLength; iTimeIndex++) {
+            try (MemoryWorkspace ws = workspaceMgr.notifyScopeEntered(ArrayType.RNN_FF_LOOP_WORKING_MEM)) {
+                int time = forwards ? iTimeIndex : timeSeriesLength - iTimeIndex - 1;
+                int first = miniBatchSize - (int) firstPresent[time];
+                int last = (int) lastPresent[time];
+
+                INDArray outputStep = outputActivations.tensorAlongDimension(time, 1, 0);
+                if (last == 0) {
+                    //All examples are masked: activations and memory cell state are zero
+                    outputStep.assign(0.0);
+                    prevOutputActivations = workspaceMgr.create(ArrayType.FF_WORKING_MEM,
+                                    new int[] {miniBatchSize, hiddenLayerSize}, 'f');
+                    prevMemCellState = workspaceMgr.create(ArrayType.FF_WORKING_MEM,
+                                    new int[] {miniBatchSize, hiddenLayerSize}, 'f');
+                    toReturn.lastAct = prevOutputActivations;
+                    toReturn.lastMemCell = prevMemCellState;
+                    continue;
+                }
+
+                boolean all = first == 0 && last == miniBatchSize;
+                INDArray miniBatchData = input.tensorAlongDimension(time, 1, 0);
+                INDArray prevAct = prevOutputActivations;
+                INDArray prevMem = prevMemCellState;
+                INDArray maskColumn = maskArray.getColumn(time);
+                if (!all) {
+                    miniBatchData = miniBatchData.get(interval(first, last), NDArrayIndex.all());
+                    prevAct = prevAct.get(interval(first, last), NDArrayIndex.all()).dup('f');
+                    prevMem = prevMem.get(interval(first, last), NDArrayIndex.all()).dup('f');
+                    maskColumn = maskColumn.get(interval(first, last), NDArrayIndex.all());
+                }
+                miniBatchData = Shape.toMmulCompatible(miniBatchData);
+
+                INDArray ifogActivations = miniBatchData.mmul(inputWeights); //Shape: [examples,4*layerSize]
+                Nd4j.gemm(prevAct, recurrentWeightsIFOG, ifogActivations, false, false, 1.0, 1.0);
+                ifogActivations.addiRowVector(biases);
+
+                INDArray inputActivations =
+                                ifogActivations.get(NDArrayIndex.all(), NDArrayIndex.interval(0, hiddenLayerSize));
+                afn.getActivation(inputActivations, training);
+
+                INDArray forgetGateActivations = ifogActivations.get(NDArrayIndex.all(),
+                                NDArrayIndex.interval(hiddenLayerSize, 2 * hiddenLayerSize));
+                if (hasPeepholeConnections)
+                    forgetGateActivations.addi(prevMem.mulRowVector(wFFTranspose));
+                gateActivationFn.getActivation(forgetGateActivations, training);
+
+                INDArray inputModGateActivations = ifogActivations.get(NDArrayIndex.all(),
+                                NDArrayIndex.interval(3 * hiddenLayerSize, 4 * hiddenLayerSize));
+                if (hasPeepholeConnections)
+                    inputModGateActivations.addi(prevMem.mulRowVector(wGGTranspose));
+                gateActivationFn.getActivation(inputModGateActivations, training);
+
+                INDArray currentMemoryCellState = workspaceMgr.leverageTo(ArrayType.FF_WORKING_MEM,
+                                forgetGateActivations.muli(prevMem));
+                currentMemoryCellState.addi(inputModGateActivations.muli(inputActivations));
+
+                INDArray outputGateActivations = ifogActivations.get(NDArrayIndex.all(),
+                                NDArrayIndex.interval(2 * hiddenLayerSize, 3 * hiddenLayerSize));
+                if (hasPeepholeConnections)
+                    outputGateActivations.addi(currentMemoryCellState.mulRowVector(wOOTranspose));
+                gateActivationFn.getActivation(outputGateActivations, training);
+
+                INDArray currHiddenUnitActivations =
+                                workspaceMgr.dup(ArrayType.FF_WORKING_MEM, currentMemoryCellState, 'f');
+                currHiddenUnitActivations = afn.getActivation(currHiddenUnitActivations, training)
+                                .muli(outputGateActivations);
+
+                currHiddenUnitActivations.muliColumnVector(maskColumn);
+                currentMemoryCellState.muliColumnVector(maskColumn);
+
+                if (!all) {
+                    //Examples outside of the computed range are masked: zero activations and state
+                    INDArray fullActivations = workspaceMgr.create(ArrayType.FF_WORKING_MEM,
+                                    new int[] {miniBatchSize, hiddenLayerSize}, 'f');
+                    INDArray fullMemoryCellState = workspaceMgr.create(ArrayType.FF_WORKING_MEM,
+                                    new int[] {miniBatchSize, hiddenLayerSize}, 'f');
+                    fullActivations.get(interval(first, last), NDArrayIndex.all()).assign(currHiddenUnitActivations);
+                    fullMemoryCellState.get(interval(first, last), NDArrayIndex.all()).assign(currentMemoryCellState);
+                    currHiddenUnitActivations = fullActivations;
+                    currentMemoryCellState = fullMemoryCellState;
+                }
+
+                outputStep.assign(currHiddenUnitActivations);
+
+                prevOutputActivations = currHiddenUnitActivations;
+                prevMemCellState = currentMemoryCellState;
+                toReturn.lastAct = currHiddenUnitActivations;
+                toReturn.lastMemCell = currentMemoryCellState;
+            }
+        }
+    }
+
     private static boolean shouldCache(boolean training, CacheMode cacheMode, LayerWorkspaceMgr workspaceMgr){
         return training && cacheMode != CacheMode.NONE && workspaceMgr.hasConfiguration(ArrayType.FF_CACHE) && workspaceMgr.isWorkspaceOpen(ArrayType.FF_CACHE);
     }
@@ -45,8 +45,10 @@ import org.deeplearning4j.nn.layers.FrozenLayer;
 import org.deeplearning4j.nn.layers.FrozenLayerWithBackprop;
 import org.deeplearning4j.nn.layers.recurrent.BidirectionalLayer;
 import org.deeplearning4j.nn.layers.LayerHelper;
+import org.deeplearning4j.nn.updater.LossScaler;
 import org.deeplearning4j.nn.updater.MultiLayerUpdater;
 import org.deeplearning4j.nn.updater.UpdaterCreator;
+import org.deeplearning4j.nn.updater.UpdaterStateLoader;
 import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
 import org.deeplearning4j.optimize.Solver;
@@ -54,6 +56,7 @@ import org.deeplearning4j.optimize.api.ConvexOptimizer;
 import org.deeplearning4j.optimize.api.TrainingListener;
 import org.deeplearning4j.optimize.solvers.accumulation.GradientsAccumulator;
 import org.deeplearning4j.util.CrashReportingUtil;
+import org.deeplearning4j.util.MixedPrecisionUtils;
 import org.deeplearning4j.util.ModelSerializer;
 import org.deeplearning4j.util.NetworkUtils;
 import org.nd4j.base.Preconditions;
@@ -64,11 +67,13 @@ import org.nd4j.linalg.api.memory.enums.LearningPolicy;
 import org.nd4j.linalg.api.memory.enums.ResetPolicy;
 import org.nd4j.linalg.api.memory.enums.SpillPolicy;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.rng.Random;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.dataset.api.MultiDataSet;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.RandomFactory;
 import org.nd4j.linalg.heartbeat.Heartbeat;
 import org.nd4j.linalg.heartbeat.reports.Environment;
 import org.nd4j.linalg.heartbeat.reports.Event;
@@ -86,6 +91,7 @@ import org.nd4j.util.OneTimeLogger;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 
 /**
@@ -129,6 +135,16 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
     //Workspaces for CUDNN. Pass to LayerWorkspaceMgr for re-use in cudnn helpers
     @Getter
     protected transient Map<String,Pointer> helperWorkspaces = new HashMap<>();
+    //Idle replicas for outputConcurrent: these share this network's parameters array, but have their own layers and layer state
+    protected transient volatile Queue<MultiLayerNetwork> inferenceReplicas = new ConcurrentLinkedQueue<>();
+    //Mixed precision training: dynamic loss scale state. Created on first use, if configured
+    protected LossScaler lossScaler;
+    //Updater state to be loaded when the updater is first created - see ModelSerializer.restoreMultiLayerNetworkMemoryMapped
+    protected transient UpdaterStateLoader updaterStateLoader;
+
+    //RNG for the forward passes of activation checkpointing: the same seed is used for the forward pass and the
+    // recomputation of each segment
+    protected transient Random checkpointRandom;
 
 
     /**
@@ -160,6 +176,12 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
      */
     protected static final String WS_RNN_LOOP_WORKING_MEM = "WS_RNN_LOOP_WORKING_MEM";
 
+    /**
+     * Workspace for activations and activation gradients of one segment (the layers between two checkpoints) when
+     * activation checkpointing is used. Opened and closed once per segment, for each of forward and backward passes
+     */
+    protected static final String WS_CHECKPOINT_SEGMENT = "WS_CHECKPOINT_SEGMENT";
+
 
     protected WorkspaceConfiguration WS_LAYER_WORKING_MEM_CONFIG;
 
@@ -1058,6 +1080,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 if(input == null){
                     throw new IllegalStateException("Layer " + i + " returned null activations");
                 }
+                applyHalfPrecision(input);
 
                 //Validation: Exception if invalid (bad layer implementation)
                 validateArrayWorkspaces(workspaceMgr, input, ArrayType.ACTIVATIONS, i, false, "Feed forward to layer (training)");
@@ -1656,6 +1679,14 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
 
         //Calculate activations (which are stored in each layer, and used in backprop)
         try(MemoryWorkspace ws = mgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+            if (useActivationCheckpoints(false)) {
+                Pair<Gradient,INDArray> p = calcGradientsWithActivationCheckpoints(false, true, mgr);
+                if(p.getSecond() != null){
+                    p.setSecond( p.getSecond().detach());
+                }
+                return p;
+            }
+
             //First: do a feed-forward through the network
             //Note that we don't actually need to do the full forward pass through the output layer right now; but we do
             // need the input to the output layer to be set (such that backprop can be done)
@@ -1770,6 +1801,10 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         LinkedList<Triple<String, INDArray, Character>> gradientList = new LinkedList<>();
 
 
+        //Mixed precision training: loss scaling only applies to the standard (not external errors) case
+        LossScaler scaler = (epsilon == null && withOutputLayer ? getLossScaler() : null);
+        double lossScale = (scaler == null ? 1.0 : scaler.getScale());
+
         Pair<Gradient, INDArray> currPair = null;
         MemoryWorkspace wsActGradCloseNext = null;
         MemoryWorkspace wsActGradTemp = null;
@@ -1824,6 +1859,9 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                         validateArrayWorkspaces(workspaceMgr, currPair.getSecond(), ArrayType.ACTIVATION_GRAD, numLayers - 1,
                                 false, "Backprop");
                     }
+                    if (scaler != null && i == layers.length - 1) {
+                        scaler.scale(currPair.getFirst(), currPair.getSecond());
+                    }
 
                     for (Map.Entry<String, INDArray> entry : currPair.getFirst().gradientForVariable().entrySet()) {
                         String origName = entry.getKey();
@@ -1841,6 +1879,10 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                         }
                     }
 
+                    if (epsilon == null && i > 0) {
+                        applyHalfPrecision(currPair.getSecond());
+                    }
+
                     if(i == 0 ){
                         if(returnInputActGrad && currPair.getSecond() != null){
                             currPair.setSecond(currPair.getSecond().detach());
@@ -1883,9 +1925,280 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
             gradient.setGradientFor(triple.getFirst(), triple.getSecond(), triple.getThird());
         }
 
+        if (scaler != null) {
+            unscaleGradients(scaler, lossScale, currPair.getSecond());
+        }
+
         return new Pair<>(gradient, currPair.getSecond());
     }
 
+    /**
+     * @param tbptt Whether truncated BPTT is being used
+     * @return True if activation checkpointing is configured and can be used for this network
+     */
+    protected boolean useActivationCheckpoints(boolean tbptt) {
+        return layerWiseConfigurations.getActivationCheckpoints() != null && !tbptt && layers.length > 1;
+    }
+
+    /**
+     * Calculate gradients (and optionally the score) using activation checkpointing.<br>
+     * The network is split into segments ending at each checkpoint layer (the last segment ends at the output layer).
+     * Forward pass: each segment is run in its own workspace, and only the segment outputs (the checkpoint activations)
+     * are kept in WS_ALL_LAYERS_ACT. Backward pass: for each segment, last to first, the segment activations are
+     * recomputed from the checkpoint activations, then the segment is backpropagated. Only the epsilons at the segment
+     * boundaries are kept in WS_ALL_LAYERS_ACT.<br>
+     * Each segment uses a dedicated RNG with the same seed for both forward passes, so dropout etc is the same.<br>
+     * Must be called with WS_ALL_LAYERS_ACT open (if workspaces are used), and the input, labels and masks set.
+     *
+     * @param computeScore       If true: calculate the score (as part of the backward pass)
+     * @param returnInputActGrad If true: return the activation gradients for the network input
+     * @param mgr                Workspace manager for WS_ALL_LAYERS_ACT
+     * @return Gradients and the epsilon at the input (null if returnInputActGrad is false)
+     */
+    protected Pair<Gradient, INDArray> calcGradientsWithActivationCheckpoints(boolean computeScore,
+                                                                              boolean returnInputActGrad,
+                                                                              LayerWorkspaceMgr mgr) {
+        if (flattenedGradients == null) {
+            initGradientsView();
+        }
+        if (!(getOutputLayer() instanceof IOutputLayer)) {
+            throw new DL4JException(
+                    "Cannot calculate gradients with activation checkpointing: final layer is not an IOutputLayer");
+        }
+        IOutputLayer outputLayer = (IOutputLayer) getOutputLayer();
+        if (labels == null && outputLayer.needsLabels())
+            throw new IllegalStateException("No labels found");
+        //As per ffToLayerActivationsInWs
+        setLayerMaskArrays(mask, null);
+
+        boolean noWorkspaces = layerWiseConfigurations.getTrainingWorkspaceMode() == WorkspaceMode.NONE;
+        LayerWorkspaceMgr segMgr;
+        if (noWorkspaces) {
+            segMgr = LayerWorkspaceMgr.noWorkspaces();
+        } else {
+            segMgr = LayerWorkspaceMgr.builder()
+                    .with(ArrayType.INPUT, WS_CHECKPOINT_SEGMENT, WS_LAYER_ACT_X_CONFIG)
+                    .with(ArrayType.ACTIVATIONS, WS_CHECKPOINT_SEGMENT, WS_LAYER_ACT_X_CONFIG)
+                    .with(ArrayType.ACTIVATION_GRAD, WS_CHECKPOINT_SEGMENT, WS_LAYER_ACT_X_CONFIG)
+                    .with(ArrayType.FF_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
+                    .with(ArrayType.BP_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
+                    .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
+                    .with(ArrayType.RNN_BP_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
+                    .build();
+            if (layerWiseConfigurations.getCacheMode() != CacheMode.NONE) {
+                segMgr.setWorkspace(ArrayType.FF_CACHE, WS_CHECKPOINT_SEGMENT, WS_LAYER_ACT_X_CONFIG);
+            }
+            //Checkpoint activations (and the input) are used directly, not copied into the segment workspace
+            segMgr.setNoLeverageOverride(WS_ALL_LAYERS_ACT);
+            if (input.isAttached()) {
+                segMgr.setNoLeverageOverride(input.data().getParentWorkspace().getId());
+            }
+        }
+        segMgr.setHelperWorkspacePointers(helperWorkspaces);
+
+        //Segments: {first layer, last layer}. The last segment includes the output layer
+        int nLayers = layers.length;
+        List<int[]> segments = new ArrayList<>();
+        int start = 0;
+        for (int c : layerWiseConfigurations.getActivationCheckpoints()) {
+            if (c >= start) {
+                segments.add(new int[] {start, c});
+                start = c + 1;
+            }
+        }
+        segments.add(new int[] {start, nLayers - 1});
+        int nSegments = segments.size();
+
+        //Forward pass: keep only the segment inputs (network input and checkpoint activations)
+        INDArray[] segmentInputs = new INDArray[nSegments];
+        long[] seeds = new long[nSegments];
+        INDArray current = input;
+        for (int k = 0; k < nSegments; k++) {
+            seeds[k] = Nd4j.getRandom().nextLong();
+            segmentInputs[k] = current;
+            if (k == nSegments - 1) {
+                //Last segment: forward pass is done as part of the backward pass
+                break;
+            }
+            int[] seg = segments.get(k);
+            try (MemoryWorkspace wsSeg = segMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+                INDArray out = activateSegment(seg[0], seg[1], current, seeds[k], segMgr);
+                current = mgr.leverageTo(ArrayType.ACTIVATIONS, out);
+            }
+            releaseSegment(seg[0], seg[1], noWorkspaces);
+        }
+
+        if (!trainingListeners.isEmpty()) {
+            List<INDArray> stored = Arrays.asList(segmentInputs);
+            for (TrainingListener tl : trainingListeners) {
+                tl.onForwardPass(this, stored);
+            }
+        }
+
+        //Backward pass: recompute each segment from its input, then backprop through it
+        Gradient gradient = new DefaultGradient(flattenedGradients);
+        LinkedList<Triple<String, INDArray, Character>> gradientList = new LinkedList<>();
+        INDArray epsilon = null;
+        boolean frozen = false;
+        LossScaler scaler = getLossScaler();
+        double lossScale = (scaler == null ? 1.0 : scaler.getScale());
+        for (int k = nSegments - 1; k >= 0 && !frozen; k--) {
+            int[] seg = segments.get(k);
+            boolean last = (k == nSegments - 1);
+            int lastHidden = last ? nLayers - 2 : seg[1];
+            try (MemoryWorkspace wsSeg = segMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+                INDArray segmentOut = activateSegment(seg[0], lastHidden, segmentInputs[k], seeds[k], segMgr);
+                if (last) {
+                    if (layerWiseConfigurations.getInputPreProcess(nLayers - 1) != null) {
+                        segmentOut = layerWiseConfigurations.getInputPreProcess(nLayers - 1)
+                                .preProcess(segmentOut, getInputMiniBatchSize(), segMgr);
+                    }
+                    getOutputLayer().setInput(segmentOut, segMgr);
+                    outputLayer.setLabels(labels);
+                }
+
+                for (int i = seg[1]; i >= seg[0]; i--) {
+                    if (layers[i] instanceof FrozenLayer) {
+                        frozen = true;
+                        break;
+                    }
+                    try (MemoryWorkspace wsBPWorking = segMgr.notifyScopeEntered(ArrayType.BP_WORKING_MEM)) {
+                        Pair<Gradient, INDArray> p = layers[i].backpropGradient(epsilon, segMgr);
+                        if (scaler != null && i == nLayers - 1) {
+                            scaler.scale(p.getFirst(), p.getSecond());
+                        }
+                        for (Map.Entry<String, INDArray> entry : p.getFirst().gradientForVariable().entrySet()) {
+                            String origName = entry.getKey();
+                            gradientList.addLast(new Triple<>(String.valueOf(i) + "_" + origName, entry.getValue(),
+                                    p.getFirst().flatteningOrderForVariable(origName)));
+                        }
+                        epsilon = p.getSecond();
+                        if (layerWiseConfigurations.getInputPreProcess(i) != null) {
+                            epsilon = layerWiseConfigurations.getInputPreProcess(i)
+                                    .backprop(epsilon, getInputMiniBatchSize(), segMgr);
+                        }
+                        if (i > 0) {
+                            applyHalfPrecision(epsilon);
+                        }
+                    }
+                }
+
+                if (last && computeScore) {
+                    try (MemoryWorkspace wsFF = segMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+                        score = outputLayer.computeScore(calcL1(true), calcL2(true), true, segMgr);
+                    }
+                }
+
+                //Epsilon for the previous segment: must outlive this segment's workspace
+                if (epsilon != null) {
+                    if (frozen || (k == 0 && !returnInputActGrad)) {
+                        epsilon = null;
+                    } else if (k == 0) {
+                        epsilon = epsilon.detach();
+                    } else {
+                        epsilon = mgr.leverageTo(ArrayType.ACTIVATIONS, epsilon);
+                    }
+                }
+            }
+            releaseSegment(seg[0], lastHidden, noWorkspaces);
+        }
+
+        //Add gradients to Gradients (map), in the same order as calcBackpropGradients
+        for (Triple<String, INDArray, Character> triple : gradientList) {
+            gradient.setGradientFor(triple.getFirst(), triple.getSecond(), triple.getThird());
+        }
+        if (scaler != null) {
+            unscaleGradients(scaler, lossScale, epsilon);
+        }
+        return new Pair<>(gradient, epsilon);
+    }
+
+    /**
+     * Mixed precision training: get the loss scaler for this network, creating it if required
+     *
+     * @return The loss scaler, or null if mixed precision training is not configured
+     */
+    public LossScaler getLossScaler() {
+        if (lossScaler == null && layerWiseConfigurations.getMixedPrecision() != null) {
+            lossScaler = new LossScaler(layerWiseConfigurations.getMixedPrecision());
+        }
+        return lossScaler;
+    }
+
+    /**
+     * Mixed precision training: round activations or activation gradients computed during training to FP16
+     * precision, in place. Arrays sharing the network input's buffer are never modified
+     */
+    private void applyHalfPrecision(INDArray arr) {
+        MixedPrecision mp = layerWiseConfigurations.getMixedPrecision();
+        if (mp != null && mp.isHalfPrecisionActivations() && arr != null
+                && (input == null || arr.data() != input.data())) {
+            MixedPrecisionUtils.roundToHalf(arr);
+        }
+    }
+
+    /**
+     * Mixed precision training: unscale the gradients after backprop (skipping the next update on overflow), and
+     * the input activation gradients, if any
+     *
+     * @param lossScale Loss scale that was used for this backprop pass
+     */
+    private void unscaleGradients(LossScaler scaler, double lossScale, INDArray inputActGrad) {
+        if (scaler.unscale(flattenedGradients) && inputActGrad != null && lossScale != 1.0) {
+            inputActGrad.divi(lossScale);
+        }
+    }
+
+    /**
+     * Forward pass (training mode) through layers from to to (inclusive). The layers draw their random numbers from
+     * a dedicated RNG seeded with the given seed, so the global RNG (and any seed set by the user) is not affected
+     */
+    private INDArray activateSegment(int from, int to, INDArray input, long seed, LayerWorkspaceMgr workspaceMgr) {
+        RandomFactory randomFactory = Nd4j.getRandomFactory();
+        Random globalRandom = randomFactory.getRandom();
+        if (checkpointRandom == null) {
+            checkpointRandom = randomFactory.getNewRandomInstance(seed);
+        } else {
+            checkpointRandom.setSeed(seed);
+        }
+        randomFactory.setRandom(checkpointRandom);
+        try {
+            for (int i = from; i <= to; i++) {
+                try (MemoryWorkspace wsFFWorking = workspaceMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+                    if (layerWiseConfigurations.getInputPreProcess(i) != null) {
+                        input = layerWiseConfigurations.getInputPreProcess(i).preProcess(input,
+                                getInputMiniBatchSize(), workspaceMgr);
+                    }
+                    input = layers[i].activate(input, true, workspaceMgr);
+                    if (input == null) {
+                        throw new IllegalStateException("Layer " + i + " returned null activations");
+                    }
+                    applyHalfPrecision(input);
+                }
+            }
+        } finally {
+            randomFactory.setRandom(globalRandom);
+        }
+        return input;
+    }
+
+    /**
+     * Release the per-iteration state of layers from to to (inclusive) once a segment has been processed: weight
+     * noise is cleared so that the recomputation draws the same random numbers as the first forward pass. Without
+     * workspaces, layer inputs are also cleared (keeping mask arrays), so the activations can be garbage collected
+     */
+    private void releaseSegment(int from, int to, boolean clearInputs) {
+        for (int i = from; i <= to; i++) {
+            if (clearInputs) {
+                INDArray layerMask = layers[i].getMaskArray();
+                layers[i].clear();
+                layers[i].setMaskArray(layerMask);
+            } else {
+                layers[i].clearNoiseWeightParams();
+            }
+        }
+    }
+
     protected void doTruncatedBPTT(INDArray input, INDArray labels, INDArray featuresMaskArray,
                                    INDArray labelsMaskArray, LayerWorkspaceMgr workspaceMgr) {
         if (input.rank() != 3 || labels.rank() != 3) {
@@ -2311,6 +2624,77 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         return output(input, TrainingMode.TEST);
     }
 
+    /**
+     * Thread safe, non blocking equivalent of {@link #output(INDArray)}: see {@link #outputConcurrent(INDArray, INDArray, INDArray)}
+     *
+     * @param input Input to the network
+     * @return The output of the network (detached)
+     */
+    public INDArray outputConcurrent(INDArray input) {
+        return outputConcurrent(input, null, null);
+    }
+
+    /**
+     * Thread safe, non blocking equivalent of {@link #output(INDArray, boolean, INDArray, INDArray)} at test time.<br>
+     * The other output methods are synchronized, as layers store their input and mask arrays during the forward pass.
+     * This method instead runs the forward pass on a replica of this network: replicas share this network's parameters
+     * array (no copy of the parameters is made) but have their own layers, and hence their own per call state.
+     * Idle replicas are pooled and reused; a new replica is only created when all existing replicas are in use, so
+     * N threads can call this method on the same network concurrently without blocking each other.<br>
+     * PLEASE NOTE: the parameters are read without synchronization: the network must not be trained or otherwise
+     * modified while this method is being called.
+     *
+     * @param input        Input to the network
+     * @param featuresMask Features mask array. May be null
+     * @param labelsMask   Labels mask array. May be null
+     * @return The output of the network (detached)
+     */
+    public INDArray outputConcurrent(INDArray input, INDArray featuresMask, INDArray labelsMask) {
+        MultiLayerNetwork replica = acquireInferenceReplica();
+        try {
+            return replica.output(input, false, featuresMask, labelsMask);
+        } finally {
+            replica.clearLayersStates();
+            inferenceReplicas().offer(replica);
+        }
+    }
+
+    /**
+     * Remove all pooled inference replicas used by {@link #outputConcurrent(INDArray, INDArray, INDArray)}, releasing
+     * their layers and workspaces once garbage collected.
+     */
+    public void clearInferenceReplicas() {
+        inferenceReplicas().clear();
+    }
+
+    protected MultiLayerNetwork acquireInferenceReplica() {
+        if (!initCalled)
+            throw new IllegalStateException("Network has not been initialized: call init() before outputConcurrent()");
+
+        Queue<MultiLayerNetwork> replicas = inferenceReplicas();
+        MultiLayerNetwork replica;
+        while ((replica = replicas.poll()) != null) {
+            //Replicas are dropped if the parameters array was replaced since they were created
+            if (replica.params() == params())
+                return replica;
+        }
+
+        replica = new MultiLayerNetwork(layerWiseConfigurations.clone());
+        replica.init(params(), false);
+        return replica;
+    }
+
+    private Queue<MultiLayerNetwork> inferenceReplicas() {
+        if (inferenceReplicas == null) {
+            //Java deserialization doesn't run field initializers
+            synchronized (this) {
+                if (inferenceReplicas == null)
+                    inferenceReplicas = new ConcurrentLinkedQueue<>();
+            }
+        }
+        return inferenceReplicas;
+    }
+
     /**
      * Generate the output for all examples/batches in the input iterator, and concatenate them into a single array
      *
@@ -2595,6 +2979,11 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         FwdPassType fwdType = (tbptt ? FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE : FwdPassType.STANDARD);
         synchronizeIterEpochCounts();
 
+        if (useActivationCheckpoints(tbptt)) {
+            computeGradientAndScoreWithActivationCheckpoints(mgr);
+            return;
+        }
+
         //Calculate activations (which are stored in each layer, and used in backprop)
         try(MemoryWorkspace ws = mgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
             //First: do a feed-forward through the network
@@ -2641,6 +3030,29 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         getOutputLayer().clearNoiseWeightParams();
     }
 
+    /**
+     * As per {@link #computeGradientAndScore()}, with activation checkpointing: only checkpoint activations are stored,
+     * and the score is calculated as part of the backward pass
+     */
+    private void computeGradientAndScoreWithActivationCheckpoints(LayerWorkspaceMgr mgr) {
+        try(MemoryWorkspace ws = mgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+            Pair<Gradient, INDArray> pair = calcGradientsWithActivationCheckpoints(true, false, mgr);
+            this.gradient = pair.getFirst();
+
+            //Listeners
+            if (!trainingListeners.isEmpty()) {
+                try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                    for (TrainingListener tl : trainingListeners) {
+                        tl.onBackwardPass(this);
+                    }
+                }
+            }
+        }
+
+        //Clear the post noise/dropconnect parameters on the output layer
+        getOutputLayer().clearNoiseWeightParams();
+    }
+
     /**
      * Clear the inputs. Clears optimizer state.
      */
@@ -3028,6 +3440,67 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         r.rnnSetPreviousState(state);
     }
 
+    /**
+     * Get the states of ALL RNN layers, as used in {@link #rnnTimeStep(INDArray)}.
+     * Layers that are not RNN layers will not have an entry in the returned map
+     *
+     * @return Map of states (keyed by layer index)
+     * @see #rnnSetPreviousStates(Map)
+     */
+    public Map<Integer, Map<String, INDArray>> rnnGetPreviousStates() {
+        Map<Integer, Map<String, INDArray>> states = new HashMap<>();
+        for (int i = 0; i < layers.length; i++) {
+            if (layers[i] instanceof RecurrentLayer) {
+                states.put(i, ((RecurrentLayer) layers[i]).rnnGetPreviousState());
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Set the states of the RNN layers, for use in {@link #rnnTimeStep(INDArray)}
+     *
+     * @param previousStates The previous time step states for the layers (key: layer index. Value: layer states)
+     * @see #rnnGetPreviousStates()
+     */
+    public void rnnSetPreviousStates(Map<Integer, Map<String, INDArray>> previousStates) {
+        for (Map.Entry<Integer, Map<String, INDArray>> entry : previousStates.entrySet()) {
+            rnnSetPreviousState(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Thread safe equivalent of {@link #rnnTimeStep(INDArray)}, where the RNN layer state is passed in and returned
+     * explicitly instead of being stored in the layers of this network. This allows one network instance to serve many
+     * independent streams (sessions): the caller keeps the state of each stream, and may batch time steps of different
+     * streams together by concatenating inputs and states along dimension 0.<br>
+     * As with {@link #outputConcurrent(INDArray, INDArray, INDArray)}, the forward pass is done on a pooled replica of
+     * this network, so this method can be called from multiple threads concurrently. The stored state of this network
+     * (as used by {@link #rnnTimeStep(INDArray)}) is neither used nor modified.
+     *
+     * @param input          Input to the network, as per {@link #rnnTimeStep(INDArray)}
+     * @param previousStates States of the RNN layers before this time step, keyed by layer index, as returned by an
+     *                       earlier call of this method or by {@link #rnnGetPreviousStates()}. Null (or no entry for a
+     *                       layer) to start from the default initial state
+     * @return Pair of (output activations, RNN layer states after the last time step of the input). All arrays are
+     * detached
+     */
+    public Pair<INDArray, Map<Integer, Map<String, INDArray>>> rnnTimeStepConcurrent(INDArray input,
+                    Map<Integer, Map<String, INDArray>> previousStates) {
+        MultiLayerNetwork replica = acquireInferenceReplica();
+        try {
+            replica.rnnClearPreviousState();
+            if (previousStates != null)
+                replica.rnnSetPreviousStates(previousStates);
+            INDArray out = replica.rnnTimeStep(input);
+            return new Pair<>(out, replica.rnnGetPreviousStates());
+        } finally {
+            replica.rnnClearPreviousState();
+            replica.clearLayersStates();
+            inferenceReplicas().offer(replica);
+        }
+    }
+
     /** Clear the previous state of the RNN layers (if any).
      */
     public void rnnClearPreviousState() {
@@ -3078,8 +3551,39 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         return null;
     }
 
+    /**
+     * Set the source of the updater state, to be loaded when the updater is first created (for example, when training
+     * starts) instead of immediately. Has no effect if the updater has already been created.
+     *
+     * @param updaterStateLoader Updater state loader. May be null
+     */
+    public void setUpdaterStateLoader(UpdaterStateLoader updaterStateLoader) {
+        this.updaterStateLoader = updaterStateLoader;
+    }
+
+    /**
+     * Load the updater state from the loader set by {@link #setUpdaterStateLoader(UpdaterStateLoader)}, if any. Each
+     * loader is used only once. Called when the updater is created.<br>
+     * Any failure is rethrown as an unchecked exception, as the updater is created on demand (from fit, etc)
+     *
+     * @return The updater state, or null if there is no pending updater state
+     */
+    public synchronized INDArray loadPendingUpdaterState() {
+        UpdaterStateLoader loader = updaterStateLoader;
+        updaterStateLoader = null;
+        if (loader == null) {
+            return null;
+        }
+        try {
+            return loader.loadUpdaterState();
+        } catch (IOException e) {
+            throw new IllegalStateException("Error loading updater state", e);
+        }
+    }
+
     /** Set the updater for the MultiLayerNetwork */
     public void setUpdater(Updater updater) {
+        updaterStateLoader = null;
         if (solver == null) {
             solver = new Solver.Builder().configure(conf()).listeners(getListeners()).model(this).build();
         }
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.transferlearning;
+
+import lombok.Getter;
+import org.apache.commons.io.FileUtils;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over featurized DataSets saved to disk by
+ * {@link TransferLearningHelper#featurizeToDisk(DataSetIterator, File, int, String)}: one file per minibatch, named
+ * as per {@link #DEFAULT_PATTERN}. Compressed arrays (for example, FLOAT16) are decompressed when loaded.<br>
+ * This iterator supports asynchronous prefetching: when passed to {@link TransferLearningHelper#fitFeaturized(DataSetIterator)}
+ * (or a network's fit method), the minibatches are loaded and decompressed in a background thread during training.
+ * A cache written in an earlier run can be reused by creating this iterator directly. Only complete caches can be loaded:
+ * the number of minibatches is recorded in {@link #COMPLETION_MARKER} once all of them have been saved.
+ */
+public class FeaturizedDataSetIterator implements DataSetIterator {
+    public static final String DEFAULT_PATTERN = "dataset-%d.bin";
+    public static final String COMPLETION_MARKER = "dataset-count.txt";
+
+    @Getter
+    private final File directory;
+    private final int numBatches;
+    private int cursor = 0;
+    private DataSetPreProcessor preProcessor;
+
+    /**
+     * @param directory Directory containing the featurized DataSets
+     */
+    public FeaturizedDataSetIterator(File directory) {
+        if (!directory.isDirectory()) {
+            throw new IllegalArgumentException("Not a directory: " + directory.getAbsolutePath());
+        }
+        this.directory = directory;
+        this.numBatches = readBatchCount(directory, DEFAULT_PATTERN, COMPLETION_MARKER);
+    }
+
+    /**
+     * @return Number of minibatches in the cache
+     */
+    public int numBatches() {
+        return numBatches;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursor < numBatches;
+    }
+
+    @Override
+    public DataSet next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No next element");
+        }
+        File f = new File(directory, String.format(DEFAULT_PATTERN, cursor++));
+        DataSet ds = new DataSet();
+        ds.load(f);
+        ds.setFeatures(decompress(ds.getFeatures()));
+        ds.setLabels(decompress(ds.getLabels()));
+        if (preProcessor != null) {
+            preProcessor.preProcess(ds);
+        }
+        return ds;
+    }
+
+    @Override
+    public DataSet next(int num) {
+        throw new UnsupportedOperationException("Unable to load custom number of examples");
+    }
+
+    @Override
+    public int inputColumns() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int totalOutcomes() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        cursor = 0;
+    }
+
+    @Override
+    public int batch() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Not supported");
+    }
+
+    /**
+     * Number of consecutive files (from index 0) that exist in the directory for the given filename pattern
+     */
+    static int countFiles(File directory, String pattern) {
+        int count = 0;
+        while (new File(directory, String.format(pattern, count)).exists()) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Number of minibatches in a complete cache, as recorded in the completion marker
+     */
+    static int readBatchCount(File directory, String pattern, String marker) {
+        File f = new File(directory, marker);
+        if (!f.exists()) {
+            throw new IllegalStateException("Incomplete featurized data in " + directory.getAbsolutePath()
+                            + ": completion marker " + marker + " not found (featurizing did not finish)");
+        }
+        int numBatches;
+        try {
+            numBatches = Integer.parseInt(FileUtils.readFileToString(f, StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("Could not read completion marker " + f.getAbsolutePath(), e);
+        }
+        int found = countFiles(directory, pattern);
+        if (found < numBatches) {
+            throw new IllegalStateException("Incomplete featurized data in " + directory.getAbsolutePath()
+                            + ": expected " + numBatches + " minibatches, found " + found);
+        }
+        return numBatches;
+    }
+
+    static INDArray decompress(INDArray arr) {
+        if (arr == null || !arr.isCompressed()) {
+            return arr;
+        }
+        return Nd4j.getCompressor().decompress(arr);
+    }
+}
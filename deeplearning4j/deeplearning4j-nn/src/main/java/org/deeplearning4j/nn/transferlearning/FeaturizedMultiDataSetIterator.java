@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.transferlearning;
+
+import lombok.Getter;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.MultiDataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over featurized MultiDataSets saved to disk by
+ * {@link TransferLearningHelper#featurizeToDisk(MultiDataSetIterator, File, int, String)}: one file per minibatch,
+ * named as per {@link #DEFAULT_PATTERN}. See {@link FeaturizedDataSetIterator} for details.
+ */
+public class FeaturizedMultiDataSetIterator implements MultiDataSetIterator {
+    public static final String DEFAULT_PATTERN = "multidataset-%d.bin";
+    public static final String COMPLETION_MARKER = "multidataset-count.txt";
+
+    @Getter
+    private final File directory;
+    private final int numBatches;
+    private int cursor = 0;
+    private MultiDataSetPreProcessor preProcessor;
+
+    /**
+     * @param directory Directory containing the featurized MultiDataSets
+     */
+    public FeaturizedMultiDataSetIterator(File directory) {
+        if (!directory.isDirectory()) {
+            throw new IllegalArgumentException("Not a directory: " + directory.getAbsolutePath());
+        }
+        this.directory = directory;
+        this.numBatches = FeaturizedDataSetIterator.readBatchCount(directory, DEFAULT_PATTERN, COMPLETION_MARKER);
+    }
+
+    /**
+     * @return Number of minibatches in the cache
+     */
+    public int numBatches() {
+        return numBatches;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursor < numBatches;
+    }
+
+    @Override
+    public MultiDataSet next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No next element");
+        }
+        File f = new File(directory, String.format(DEFAULT_PATTERN, cursor++));
+        MultiDataSet mds = new MultiDataSet();
+        try {
+            mds.load(f);
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading featurized MultiDataSet: " + f.getAbsolutePath(), e);
+        }
+        decompress(mds.getFeatures());
+        decompress(mds.getLabels());
+        if (preProcessor != null) {
+            preProcessor.preProcess(mds);
+        }
+        return mds;
+    }
+
+    @Override
+    public MultiDataSet next(int num) {
+        throw new UnsupportedOperationException("Unable to load custom number of examples");
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        cursor = 0;
+    }
+
+    @Override
+    public void setPreProcessor(MultiDataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public MultiDataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Not supported");
+    }
+
+    private static void decompress(INDArray[] arrays) {
+        if (arrays == null) {
+            return;
+        }
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = FeaturizedDataSetIterator.decompress(arrays[i]);
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.transferlearning;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.InputPreProcessor;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.ElementWiseVertex;
+import org.deeplearning4j.nn.conf.graph.GraphVertex;
+import org.deeplearning4j.nn.conf.graph.LayerVertex;
+import org.deeplearning4j.nn.conf.layers.ActivationLayer;
+import org.deeplearning4j.nn.conf.layers.BaseLayer;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.DropoutLayer;
+import org.deeplearning4j.nn.conf.layers.Layer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.BatchNormalizationParamInitializer;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.nd4j.linalg.activations.impl.ActivationIdentity;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Broadcast;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.*;
+
+/**
+ * Produces an inference-optimized copy of a trained MultiLayerNetwork or ComputationGraph. The returned network gives
+ * the same output (up to floating point rounding) as the original network in inference mode, but with fewer layers
+ * and operations:<br>
+ * - BatchNormalization layers directly following a {@link ConvolutionLayer} or {@link DenseLayer} with identity
+ * activation are folded into the weights and bias of that layer: W' = W * gamma / sqrt(var + eps) and
+ * b' = (b - mean) * gamma / sqrt(var + eps) + beta, per output channel<br>
+ * - Layers that are a no-op at inference time ({@link DropoutLayer}, {@link ActivationLayer} with identity activation)
+ * are removed, and dropout/weight noise is removed from all remaining layers<br>
+ * - (ComputationGraph only) consecutive {@link ElementWiseVertex} vertices with the same associative op (Add, Product,
+ * Max) are merged into a single vertex with more inputs<br>
+ * <br>
+ * The original network is not modified. The returned network should only be used for inference: it cannot be
+ * trained further (the folded BatchNormalization layers no longer use minibatch statistics), and has no updater state.
+ *
+ * @see TransferLearning
+ */
+@Slf4j
+public class InferenceOptimizer {
+
+    private InferenceOptimizer() {}
+
+    /**
+     * Create an inference-optimized copy of the specified network
+     *
+     * @param net Network to optimize. Not modified
+     * @return Optimized copy of the network
+     */
+    public static MultiLayerNetwork optimize(@NonNull MultiLayerNetwork net) {
+        MultiLayerConfiguration conf = net.getLayerWiseConfigurations().clone();
+        List<NeuralNetConfiguration> confs = conf.getConfs();
+        Map<Integer, InputPreProcessor> preProcessors = conf.getInputPreProcessors();
+
+        List<NeuralNetConfiguration> newConfs = new ArrayList<>();
+        Map<Integer, InputPreProcessor> newPreProcessors = new HashMap<>();
+        List<Integer> origIndexes = new ArrayList<>();
+        //Key: index in the new network; value: index of the batch norm layer (in the original network) folded into it
+        Map<Integer, Integer> foldedBatchNorm = new HashMap<>();
+        //Preprocessor of a removed layer, to be applied to the next (kept) layer instead
+        InputPreProcessor carried = null;
+        int removed = 0;
+        int nLayers = confs.size();
+        for (int i = 0; i < nLayers; i++) {
+            NeuralNetConfiguration c = confs.get(i);
+            Layer l = c.getLayer();
+            InputPreProcessor preProc = (carried != null ? carried : preProcessors.get(i));
+
+            if (l instanceof BatchNormalization && preProc == null && !newConfs.isEmpty()) {
+                int prevIdx = newConfs.size() - 1;
+                if (!foldedBatchNorm.containsKey(prevIdx) && canFold(newConfs.get(prevIdx).getLayer())) {
+                    foldBatchNormConf(newConfs.get(prevIdx), (BatchNormalization) l);
+                    foldedBatchNorm.put(prevIdx, i);
+                    continue;
+                }
+            }
+
+            if (isNoOp(l) && i < nLayers - 1 && (preProc == null || preProcessors.get(i + 1) == null)) {
+                carried = preProc;
+                removed++;
+                continue;
+            }
+
+            clearNoise(l);
+            if (preProc != null) {
+                newPreProcessors.put(newConfs.size(), preProc);
+            }
+            carried = null;
+            newConfs.add(c);
+            origIndexes.add(i);
+        }
+
+        conf.setConfs(newConfs);
+        conf.setInputPreProcessors(newPreProcessors);
+        conf.setActivationCheckpoints(null);
+
+        MultiLayerNetwork ret = new MultiLayerNetwork(conf);
+        ret.init();
+        for (int i = 0; i < newConfs.size(); i++) {
+            org.deeplearning4j.nn.api.Layer orig = net.getLayer(origIndexes.get(i));
+            org.deeplearning4j.nn.api.Layer l = ret.getLayer(i);
+            if (foldedBatchNorm.containsKey(i)) {
+                foldBatchNormParams(orig, net.getLayer(foldedBatchNorm.get(i)), l);
+            } else {
+                copyParams(orig, l);
+            }
+        }
+
+        log.info("Optimized MultiLayerNetwork for inference: {} batch normalization layers folded, {} layers removed",
+                        foldedBatchNorm.size(), removed);
+        return ret;
+    }
+
+    /**
+     * Create an inference-optimized copy of the specified network
+     *
+     * @param net Network to optimize. Not modified
+     * @return Optimized copy of the network
+     */
+    public static ComputationGraph optimize(@NonNull ComputationGraph net) {
+        ComputationGraphConfiguration conf = net.getConfiguration().clone();
+        Map<String, GraphVertex> vertices = conf.getVertices();
+        Map<String, List<String>> vertexInputs = conf.getVertexInputs();
+        List<String> outputs = conf.getNetworkOutputs();
+
+        //Key: layer name; value: name of the batch norm layer folded into it
+        Map<String, String> foldedBatchNorm = new HashMap<>();
+        int removed = 0;
+        int merged = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (String name : new ArrayList<>(vertices.keySet())) {
+                GraphVertex gv = vertices.get(name);
+                List<String> in = vertexInputs.get(name);
+                if (gv == null || in == null) {
+                    continue;
+                }
+
+                if (gv instanceof LayerVertex) {
+                    LayerVertex lv = (LayerVertex) gv;
+                    Layer l = lv.getLayerConf().getLayer();
+                    if (lv.getPreProcessor() != null || in.size() != 1 || outputs.contains(name)) {
+                        continue;
+                    }
+                    String inName = in.get(0);
+
+                    if (l instanceof BatchNormalization && vertices.get(inName) instanceof LayerVertex) {
+                        LayerVertex prev = (LayerVertex) vertices.get(inName);
+                        if (!foldedBatchNorm.containsKey(inName) && !outputs.contains(inName)
+                                        && countConsumers(vertexInputs, inName) == 1
+                                        && canFold(prev.getLayerConf().getLayer())) {
+                            foldBatchNormConf(prev.getLayerConf(), (BatchNormalization) l);
+                            foldedBatchNorm.put(inName, name);
+                            removeVertex(vertices, vertexInputs, name, inName);
+                            changed = true;
+                            continue;
+                        }
+                    }
+
+                    if (isNoOp(l)) {
+                        removeVertex(vertices, vertexInputs, name, inName);
+                        removed++;
+                        changed = true;
+                    }
+                } else if (gv instanceof ElementWiseVertex) {
+                    ElementWiseVertex.Op op = ((ElementWiseVertex) gv).getOp();
+                    if (op != ElementWiseVertex.Op.Add && op != ElementWiseVertex.Op.Product
+                                    && op != ElementWiseVertex.Op.Max) {
+                        continue;
+                    }
+                    for (int i = 0; i < in.size(); i++) {
+                        String inName = in.get(i);
+                        GraphVertex inVertex = vertices.get(inName);
+                        if (inVertex instanceof ElementWiseVertex && ((ElementWiseVertex) inVertex).getOp() == op
+                                        && !outputs.contains(inName) && countConsumers(vertexInputs, inName) == 1) {
+                            in.remove(i);
+                            in.addAll(i, vertexInputs.get(inName));
+                            vertices.remove(inName);
+                            vertexInputs.remove(inName);
+                            merged++;
+                            changed = true;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        for (GraphVertex gv : vertices.values()) {
+            if (gv instanceof LayerVertex) {
+                clearNoise(((LayerVertex) gv).getLayerConf().getLayer());
+            }
+        }
+        conf.setActivationCheckpoints(null);
+        conf.setTopologicalOrder(null);
+        conf.setTopologicalOrderStr(null);
+        conf.validate(false, false);
+
+        ComputationGraph ret = new ComputationGraph(conf);
+        ret.init();
+        for (org.deeplearning4j.nn.api.Layer l : ret.getLayers()) {
+            String name = l.conf().getLayer().getLayerName();
+            if (foldedBatchNorm.containsKey(name)) {
+                foldBatchNormParams(net.getLayer(name), net.getLayer(foldedBatchNorm.get(name)), l);
+            } else {
+                copyParams(net.getLayer(name), l);
+            }
+        }
+
+        log.info("Optimized ComputationGraph for inference: {} batch normalization layers folded, {} layers removed, "
+                        + "{} element-wise vertices merged", foldedBatchNorm.size(), removed, merged);
+        return ret;
+    }
+
+    /**
+     * Batch normalization can be folded into a layer if the layer's output is a per-channel affine function of its
+     * weights and bias, with no (non-identity) activation function before the batch normalization
+     */
+    private static boolean canFold(Layer l) {
+        //Exact class only: subclasses (depthwise/separable/deconvolution etc) have different weight layouts
+        if (l.getClass() != ConvolutionLayer.class && l.getClass() != DenseLayer.class) {
+            return false;
+        }
+        return ((BaseLayer) l).getActivationFn() instanceof ActivationIdentity;
+    }
+
+    private static boolean isNoOp(Layer l) {
+        if (l instanceof DropoutLayer) {
+            return true;
+        }
+        return l instanceof ActivationLayer && ((ActivationLayer) l).getActivationFn() instanceof ActivationIdentity;
+    }
+
+    private static void clearNoise(Layer l) {
+        l.setIDropout(null);
+        if (l instanceof BaseLayer) {
+            ((BaseLayer) l).setWeightNoise(null);
+        }
+    }
+
+    private static void foldBatchNormConf(NeuralNetConfiguration prev, BatchNormalization bn) {
+        Layer l = prev.getLayer();
+        if (l instanceof ConvolutionLayer) {
+            ((ConvolutionLayer) l).setHasBias(true);
+        } else {
+            ((DenseLayer) l).setHasBias(true);
+        }
+        ((BaseLayer) l).setActivationFn(bn.getActivationFn());
+        //Bias parameter may have been added
+        prev.clearVariables();
+    }
+
+    private static void foldBatchNormParams(org.deeplearning4j.nn.api.Layer orig, org.deeplearning4j.nn.api.Layer bn,
+                    org.deeplearning4j.nn.api.Layer target) {
+        BatchNormalization bnConf = (BatchNormalization) bn.conf().getLayer();
+        INDArray mean = bn.getParam(BatchNormalizationParamInitializer.GLOBAL_MEAN);
+        INDArray var = bn.getParam(BatchNormalizationParamInitializer.GLOBAL_VAR);
+        INDArray scale = Transforms.sqrt(var.add(bnConf.getEps()), false).rdivi(1.0);
+        INDArray shift;
+        if (bnConf.isLockGammaBeta()) {
+            //Same as BatchNormalization inference: fixed gamma/beta only applied if neither has the default value
+            double g = bnConf.getGamma();
+            double b = bnConf.getBeta();
+            if (g != 1.0 && b != 0.0) {
+                scale.muli(g);
+                shift = scale.dup().assign(b);
+            } else {
+                shift = scale.dup().assign(0.0);
+            }
+        } else {
+            scale.muli(bn.getParam(BatchNormalizationParamInitializer.GAMMA));
+            shift = bn.getParam(BatchNormalizationParamInitializer.BETA).dup();
+        }
+
+        INDArray w = target.getParam(DefaultParamInitializer.WEIGHT_KEY);
+        w.assign(orig.getParam(DefaultParamInitializer.WEIGHT_KEY));
+        if (w.rank() == 4) {
+            //Convolution weights: [nOut, nIn, kH, kW]
+            Broadcast.mul(w, scale, w, 0);
+        } else {
+            //Dense weights: [nIn, nOut]
+            w.muliRowVector(scale);
+        }
+
+        //b' = (b - mean) * scale + beta
+        INDArray b = target.getParam(DefaultParamInitializer.BIAS_KEY);
+        INDArray origBias = orig.getParam(DefaultParamInitializer.BIAS_KEY);
+        if (origBias != null) {
+            b.assign(origBias);
+        } else {
+            b.assign(0.0);
+        }
+        b.subi(mean).muli(scale).addi(shift);
+    }
+
+    private static void copyParams(org.deeplearning4j.nn.api.Layer from, org.deeplearning4j.nn.api.Layer to) {
+        for (Map.Entry<String, INDArray> e : from.paramTable().entrySet()) {
+            to.getParam(e.getKey()).assign(e.getValue());
+        }
+    }
+
+    private static int countConsumers(Map<String, List<String>> vertexInputs, String vertexName) {
+        int count = 0;
+        for (List<String> in : vertexInputs.values()) {
+            for (String s : in) {
+                if (vertexName.equals(s)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Remove a single-input vertex, connecting all of its consumers to its input instead
+     */
+    private static void removeVertex(Map<String, GraphVertex> vertices, Map<String, List<String>> vertexInputs,
+                    String vertexName, String replacement) {
+        vertices.remove(vertexName);
+        vertexInputs.remove(vertexName);
+        for (List<String> in : vertexInputs.values()) {
+            for (int i = 0; i < in.size(); i++) {
+                if (vertexName.equals(in.get(i))) {
+                    in.set(i, replacement);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,789 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.transferlearning;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.CNN2DFormat;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.InputPreProcessor;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.graph.GraphVertex;
+import org.deeplearning4j.nn.conf.graph.LayerVertex;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.ActivationLayer;
+import org.deeplearning4j.nn.conf.layers.BaseLayer;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.DropoutLayer;
+import org.deeplearning4j.nn.conf.layers.FeedForwardLayer;
+import org.deeplearning4j.nn.conf.layers.GlobalPoolingLayer;
+import org.deeplearning4j.nn.conf.layers.Layer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.layers.PoolingType;
+import org.deeplearning4j.nn.conf.layers.SubsamplingLayer;
+import org.deeplearning4j.nn.conf.preprocessor.CnnToFeedForwardPreProcessor;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.BatchNormalizationParamInitializer;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.activations.impl.ActivationSoftmax;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.*;
+
+/**
+ * Pruning and compaction of trained MultiLayerNetwork and ComputationGraph instances.<br>
+ * Pruning is applied to the weights of {@link DenseLayer} and {@link ConvolutionLayer} layers (output layers are not
+ * pruned), in place:<br>
+ * - {@link #pruneWeights(Model, double, String...)}: unstructured, magnitude-based pruning. The weights with the
+ * smallest absolute values are set to 0<br>
+ * - {@link #pruneChannels(Model, double, String...)}: structured pruning. The output units (dense layers) or filters
+ * (convolution layers) with the smallest L1 norm of their weights are removed, by setting their weights and bias to 0<br>
+ * Both methods return the pruning masks, which can be re-applied with {@link #applyMasks(Model, Map)} - for example,
+ * to keep pruned weights at 0 while fine-tuning the network. See also
+ * {@link org.deeplearning4j.optimize.listeners.PruningListener} for gradual pruning during training.<br>
+ * <br>
+ * Unstructured pruning does not make the network faster by itself. Structured pruning does, once the network has been
+ * compacted using {@link #compact(MultiLayerNetwork)} or {@link #compact(ComputationGraph)}: units/channels whose
+ * weights are all 0 are physically removed, and the nIn of the layer consuming them is reduced accordingly - as per
+ * {@link TransferLearning.Builder#nOutReplace(int, int, org.deeplearning4j.nn.weights.WeightInit)}, but keeping the
+ * remaining parameters. The compacted network gives the same output as the pruned network, up to floating point
+ * rounding.<br>
+ * <br>
+ * The FLOPs of a network (before and after compaction) can be calculated with
+ * {@link #flops(MultiLayerNetwork, InputType)} and {@link #flops(ComputationGraph, InputType...)}.
+ *
+ * @see InferenceOptimizer
+ */
+@Slf4j
+public class NetworkPruner {
+
+    private NetworkPruner() {}
+
+    /**
+     * Unstructured magnitude pruning: for each prunable layer, set the given fraction of weights with the smallest
+     * absolute values to 0. Biases are not pruned.
+     *
+     * @param model    Network (MultiLayerNetwork or ComputationGraph) to prune. Modified in place
+     * @param sparsity Fraction of weights to set to 0 in each layer, in range [0, 1)
+     * @param layers   Names (or, for MultiLayerNetwork, indices) of the layers to prune. If none: prune all
+     *                 {@link DenseLayer} and {@link ConvolutionLayer} layers
+     * @return Pruning masks (1 for kept weights, 0 for pruned weights), keyed by layer and parameter
+     * (for example "0_W", or "dense1_W")
+     */
+    public static Map<String, INDArray> pruneWeights(@NonNull Model model, double sparsity, String... layers) {
+        checkFraction(sparsity);
+        Map<String, INDArray> masks = new LinkedHashMap<>();
+        for (Map.Entry<String, org.deeplearning4j.nn.api.Layer> e : prunableLayers(model, layers).entrySet()) {
+            INDArray w = e.getValue().getParam(DefaultParamInitializer.WEIGHT_KEY);
+            int k = (int) (sparsity * w.length());
+            INDArray mask;
+            if (k == 0) {
+                mask = Nd4j.onesLike(w);
+            } else {
+                INDArray sorted = Nd4j.sort(Transforms.abs(Nd4j.toFlattened('c', w), false), true);
+                mask = Transforms.abs(w, true).gt(sorted.getDouble(k - 1));
+            }
+            w.muli(mask);
+            masks.put(e.getKey() + "_" + DefaultParamInitializer.WEIGHT_KEY, mask);
+        }
+        return masks;
+    }
+
+    /**
+     * Structured pruning: for each prunable layer, remove the given fraction of output units ({@link DenseLayer}) or
+     * filters ({@link ConvolutionLayer}) with the smallest L1 norm of their weights, by setting their weights and bias
+     * to 0. Use {@link #compact(MultiLayerNetwork)} or {@link #compact(ComputationGraph)} to physically remove them.
+     *
+     * @param model    Network (MultiLayerNetwork or ComputationGraph) to prune. Modified in place
+     * @param fraction Fraction of units/filters to remove in each layer, in range [0, 1). At least one unit is kept
+     * @param layers   Names (or, for MultiLayerNetwork, indices) of the layers to prune. If none: prune all
+     *                 {@link DenseLayer} and {@link ConvolutionLayer} layers
+     * @return Pruning masks (1 for kept parameters, 0 for pruned parameters), keyed by layer and parameter
+     * (for example "0_W" and "0_b")
+     */
+    public static Map<String, INDArray> pruneChannels(@NonNull Model model, double fraction, String... layers) {
+        checkFraction(fraction);
+        Map<String, INDArray> masks = new LinkedHashMap<>();
+        for (Map.Entry<String, org.deeplearning4j.nn.api.Layer> e : prunableLayers(model, layers).entrySet()) {
+            org.deeplearning4j.nn.api.Layer l = e.getValue();
+            INDArray w = l.getParam(DefaultParamInitializer.WEIGHT_KEY);
+            final double[] norms = channelNorms(w);
+            int k = Math.min((int) (fraction * norms.length), norms.length - 1);
+
+            Integer[] order = new Integer[norms.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Double.compare(norms[a], norms[b]);
+                }
+            });
+
+            INDArray wMask = Nd4j.onesLike(w);
+            INDArray b = l.getParam(DefaultParamInitializer.BIAS_KEY);
+            INDArray bMask = (b != null ? Nd4j.onesLike(b) : null);
+            for (int i = 0; i < k; i++) {
+                int c = order[i];
+                if (w.rank() == 4) {
+                    //Convolution weights: [nOut, nIn, kH, kW]
+                    wMask.slice(c).assign(0.0);
+                } else {
+                    //Dense weights: [nIn, nOut]
+                    wMask.getColumn(c).assign(0.0);
+                }
+                if (bMask != null) {
+                    bMask.putScalar(c, 0.0);
+                }
+            }
+
+            w.muli(wMask);
+            masks.put(e.getKey() + "_" + DefaultParamInitializer.WEIGHT_KEY, wMask);
+            if (bMask != null) {
+                b.muli(bMask);
+                masks.put(e.getKey() + "_" + DefaultParamInitializer.BIAS_KEY, bMask);
+            }
+        }
+        return masks;
+    }
+
+    /**
+     * Rebuild pruning masks from the parameters of an already pruned network: weights that are exactly 0 are masked.
+     * For structured pruning, the bias of each unit/filter whose weights are all 0 is masked too. Useful to continue
+     * pruning or fine-tuning a network that was pruned before (for example, after deserialization)
+     *
+     * @param model      Pruned network (MultiLayerNetwork or ComputationGraph)
+     * @param structured If true: masks as returned by {@link #pruneChannels(Model, double, String...)}; if false: as
+     *                   returned by {@link #pruneWeights(Model, double, String...)}
+     * @param layers     Names (or, for MultiLayerNetwork, indices) of the pruned layers. If none: all
+     *                   {@link DenseLayer} and {@link ConvolutionLayer} layers
+     * @return Pruning masks (1 for kept parameters, 0 for pruned parameters), keyed by layer and parameter
+     */
+    public static Map<String, INDArray> masksFromZeros(@NonNull Model model, boolean structured, String... layers) {
+        Map<String, INDArray> masks = new LinkedHashMap<>();
+        for (Map.Entry<String, org.deeplearning4j.nn.api.Layer> e : prunableLayers(model, layers).entrySet()) {
+            org.deeplearning4j.nn.api.Layer l = e.getValue();
+            INDArray w = l.getParam(DefaultParamInitializer.WEIGHT_KEY);
+            masks.put(e.getKey() + "_" + DefaultParamInitializer.WEIGHT_KEY, w.neq(0.0));
+            INDArray b = l.getParam(DefaultParamInitializer.BIAS_KEY);
+            if (structured && b != null) {
+                double[] norms = channelNorms(w);
+                INDArray bMask = Nd4j.onesLike(b);
+                for (int c = 0; c < norms.length; c++) {
+                    if (norms[c] == 0.0) {
+                        bMask.putScalar(c, 0.0);
+                    }
+                }
+                masks.put(e.getKey() + "_" + DefaultParamInitializer.BIAS_KEY, bMask);
+            }
+        }
+        return masks;
+    }
+
+    /**
+     * Apply pruning masks, as returned by {@link #pruneWeights(Model, double, String...)} or
+     * {@link #pruneChannels(Model, double, String...)}, to the parameters of the network (in place)
+     */
+    public static void applyMasks(@NonNull Model model, @NonNull Map<String, INDArray> masks) {
+        Map<String, org.deeplearning4j.nn.api.Layer> layers = allLayers(model);
+        for (Map.Entry<String, INDArray> e : masks.entrySet()) {
+            //Split on the last separator: layer names (ComputationGraph) may contain underscores
+            String key = e.getKey();
+            int idx = key.lastIndexOf('_');
+            org.deeplearning4j.nn.api.Layer l = (idx > 0 ? layers.get(key.substring(0, idx)) : null);
+            if (l == null || l.getParam(key.substring(idx + 1)) == null) {
+                throw new IllegalArgumentException("Invalid mask key: no parameter \"" + key + "\" in network");
+            }
+            l.getParam(key.substring(idx + 1)).muli(e.getValue());
+        }
+    }
+
+    /**
+     * @return Fraction of weights that are exactly 0, over all {@link DenseLayer} and {@link ConvolutionLayer} layers
+     * in the network
+     */
+    public static double sparsity(@NonNull Model model) {
+        long zeros = 0;
+        long total = 0;
+        for (org.deeplearning4j.nn.api.Layer l : prunableLayers(model).values()) {
+            INDArray w = l.getParam(DefaultParamInitializer.WEIGHT_KEY);
+            zeros += w.length() - w.neq(0.0).sumNumber().longValue();
+            total += w.length();
+        }
+        return (total == 0 ? 0.0 : (double) zeros / total);
+    }
+
+    /**
+     * Number of floating point operations (2 per multiply-add) of the dense, output and convolution layers of the
+     * network, for a single example. Other layers (activation, pooling, normalization etc) are not included.
+     *
+     * @param net       Network
+     * @param inputType Input type for the network
+     */
+    public static long flops(@NonNull MultiLayerNetwork net, @NonNull InputType inputType) {
+        MultiLayerConfiguration conf = net.getLayerWiseConfigurations();
+        List<InputType> types = conf.getLayerActivationTypes(inputType);
+        long flops = 0;
+        for (int i = 0; i < types.size(); i++) {
+            flops += flops(conf.getConf(i).getLayer(), types.get(i));
+        }
+        return flops;
+    }
+
+    /**
+     * Number of floating point operations (2 per multiply-add) of the dense, output and convolution layers of the
+     * network, for a single example. Other layers and vertices are not included.
+     *
+     * @param net        Network
+     * @param inputTypes Input types for the network
+     */
+    public static long flops(@NonNull ComputationGraph net, @NonNull InputType... inputTypes) {
+        ComputationGraphConfiguration conf = net.getConfiguration();
+        Map<String, InputType> types = conf.getLayerActivationTypes(inputTypes);
+        long flops = 0;
+        for (Map.Entry<String, GraphVertex> e : conf.getVertices().entrySet()) {
+            if (e.getValue() instanceof LayerVertex) {
+                flops += flops(((LayerVertex) e.getValue()).getLayerConf().getLayer(), types.get(e.getKey()));
+            }
+        }
+        return flops;
+    }
+
+    private static long flops(Layer l, InputType outputType) {
+        if (l.getClass() == DenseLayer.class || l.getClass() == OutputLayer.class) {
+            FeedForwardLayer f = (FeedForwardLayer) l;
+            return 2 * f.getNIn() * f.getNOut();
+        } else if (l.getClass() == ConvolutionLayer.class && outputType instanceof InputType.InputTypeConvolutional) {
+            ConvolutionLayer c = (ConvolutionLayer) l;
+            InputType.InputTypeConvolutional out = (InputType.InputTypeConvolutional) outputType;
+            return 2 * c.getNIn() * c.getKernelSize()[0] * c.getKernelSize()[1] * c.getNOut() * out.getHeight()
+                            * out.getWidth();
+        }
+        return 0;
+    }
+
+    /**
+     * Create a compacted copy of the network, with all units/channels that have only zero weights removed - for
+     * example, after {@link #pruneChannels(Model, double, String...)}.<br>
+     * A unit of a {@link DenseLayer} or {@link ConvolutionLayer} can be removed if all of its (incoming) weights are 0:
+     * its output is then a constant, activation(bias), which is folded into the bias of the next dense or convolution
+     * layer. {@link ActivationLayer}, {@link DropoutLayer}, {@link BatchNormalization}, {@link SubsamplingLayer} and
+     * {@link GlobalPoolingLayer} layers between the two layers are supported, and are adjusted accordingly.<br>
+     * Layers followed by any other layer type or input preprocessor (other than {@link CnnToFeedForwardPreProcessor})
+     * are not compacted.
+     *
+     * @param net Network to compact. Not modified
+     * @return Compacted copy of the network, with no updater state
+     */
+    public static MultiLayerNetwork compact(@NonNull MultiLayerNetwork net) {
+        final MultiLayerConfiguration conf = net.getLayerWiseConfigurations().clone();
+        final org.deeplearning4j.nn.api.Layer[] orig = net.getLayers();
+        final List<String> keys = new ArrayList<>();
+        for (int i = 0; i < orig.length; i++) {
+            keys.add(String.valueOf(i));
+        }
+
+        Plan plan = plan(new Topology() {
+            @Override
+            public List<String> layers() {
+                return keys;
+            }
+
+            @Override
+            public org.deeplearning4j.nn.api.Layer layer(String key) {
+                return orig[Integer.parseInt(key)];
+            }
+
+            @Override
+            public Layer conf(String key) {
+                return conf.getConf(Integer.parseInt(key)).getLayer();
+            }
+
+            @Override
+            public InputPreProcessor preProcessor(String key) {
+                return conf.getInputPreProcess(Integer.parseInt(key));
+            }
+
+            @Override
+            public String next(String key) {
+                int i = Integer.parseInt(key);
+                return (i < orig.length - 1 ? String.valueOf(i + 1) : null);
+            }
+        });
+
+        MultiLayerNetwork ret = new MultiLayerNetwork(conf);
+        ret.init();
+        for (int i = 0; i < orig.length; i++) {
+            copyParams(orig[i], ret.getLayer(i), plan, String.valueOf(i));
+        }
+        log.info("Compacted MultiLayerNetwork: {} units/channels removed from {} layers, {} -> {} parameters",
+                        plan.removed, plan.keepOut.size() - plan.perChannel.size(), net.numParams(), ret.numParams());
+        return ret;
+    }
+
+    /**
+     * Create a compacted copy of the network. See {@link #compact(MultiLayerNetwork)} for details. In addition, layers
+     * whose output is used by more than one vertex, or by a non-layer vertex (merge, element-wise etc), are not
+     * compacted.
+     *
+     * @param net Network to compact. Not modified
+     * @return Compacted copy of the network, with no updater state
+     */
+    public static ComputationGraph compact(@NonNull final ComputationGraph net) {
+        ComputationGraphConfiguration conf = net.getConfiguration().clone();
+        final Map<String, GraphVertex> vertices = conf.getVertices();
+        final Map<String, List<String>> vertexInputs = conf.getVertexInputs();
+        final List<String> outputs = conf.getNetworkOutputs();
+        final List<String> layerNames = new ArrayList<>();
+        for (int idx : net.topologicalSortOrder()) {
+            org.deeplearning4j.nn.graph.vertex.GraphVertex v = net.getVertices()[idx];
+            if (v.hasLayer()) {
+                layerNames.add(v.getVertexName());
+            }
+        }
+
+        Plan plan = plan(new Topology() {
+            @Override
+            public List<String> layers() {
+                return layerNames;
+            }
+
+            @Override
+            public org.deeplearning4j.nn.api.Layer layer(String key) {
+                return net.getLayer(key);
+            }
+
+            @Override
+            public Layer conf(String key) {
+                return ((LayerVertex) vertices.get(key)).getLayerConf().getLayer();
+            }
+
+            @Override
+            public InputPreProcessor preProcessor(String key) {
+                return ((LayerVertex) vertices.get(key)).getPreProcessor();
+            }
+
+            @Override
+            public String next(String key) {
+                if (outputs.contains(key)) {
+                    return null;
+                }
+                String next = null;
+                for (Map.Entry<String, List<String>> e : vertexInputs.entrySet()) {
+                    if (e.getValue().contains(key)) {
+                        if (next != null || e.getValue().size() != 1) {
+                            return null;
+                        }
+                        next = e.getKey();
+                    }
+                }
+                return (next != null && vertices.get(next) instanceof LayerVertex ? next : null);
+            }
+        });
+
+        ComputationGraph ret = new ComputationGraph(conf);
+        ret.init();
+        for (String name : layerNames) {
+            copyParams(net.getLayer(name), ret.getLayer(name), plan, name);
+        }
+        log.info("Compacted ComputationGraph: {} units/channels removed from {} layers, {} -> {} parameters",
+                        plan.removed, plan.keepOut.size() - plan.perChannel.size(), net.numParams(), ret.numParams());
+        return ret;
+    }
+
+    /**
+     * Minimal view of the (linear parts of the) network structure, shared by MultiLayerNetwork and ComputationGraph
+     */
+    private interface Topology {
+        /** Layer keys, in topological order */
+        List<String> layers();
+
+        /** Trained layer, with the original parameters */
+        org.deeplearning4j.nn.api.Layer layer(String key);
+
+        /** Layer configuration, of the (cloned) configuration for the compacted network */
+        Layer conf(String key);
+
+        InputPreProcessor preProcessor(String key);
+
+        /** The only layer consuming the output of the given layer, or null if there is no such layer */
+        String next(String key);
+    }
+
+    /**
+     * Changes to the layers of the network. Indices are relative to the original network
+     */
+    private static class Plan {
+        //Output units/channels kept: for pruned layers, and for the per-channel layers (batch norm) following them
+        private Map<String, int[]> keepOut = new HashMap<>();
+        //Inputs (rows of dense weights, or input channels of convolution weights) kept
+        private Map<String, int[]> keepIn = new HashMap<>();
+        //Constant outputs of removed units, folded into the bias of the next layer
+        private Map<String, INDArray> biasDelta = new HashMap<>();
+        private Set<String> perChannel = new HashSet<>();
+        private int removed;
+    }
+
+    private static Plan plan(Topology t) {
+        Plan plan = new Plan();
+        for (String key : t.layers()) {
+            Layer l = t.conf(key);
+            String next = t.next(key);
+            if (!isPrunable(l) || next == null) {
+                continue;
+            }
+            org.deeplearning4j.nn.api.Layer layer = t.layer(key);
+            INDArray w = layer.getParam(DefaultParamInitializer.WEIGHT_KEY);
+            if (plan.keepIn.containsKey(key)) {
+                w = select(w, (w.rank() == 4 ? 1 : 0), plan.keepIn.get(key));
+            }
+            double[] norms = channelNorms(w);
+            List<Integer> removable = new ArrayList<>();
+            for (int i = 0; i < norms.length; i++) {
+                //Always keep at least one unit
+                if (norms[i] == 0.0 && removable.size() < norms.length - 1) {
+                    removable.add(i);
+                }
+            }
+            if (removable.isEmpty()) {
+                continue;
+            }
+
+            //Output of the removed units: activation(bias), constant across spatial positions for convolution layers
+            INDArray bias = layer.getParam(DefaultParamInitializer.BIAS_KEY);
+            INDArray constant = Nd4j.create(1, removable.size());
+            for (int i = 0; i < removable.size(); i++) {
+                double b = (bias != null ? bias.getDouble(removable.get(i)) : 0.0);
+                if (plan.biasDelta.containsKey(key)) {
+                    b += plan.biasDelta.get(key).getDouble(removable.get(i));
+                }
+                constant.putScalar(i, b);
+            }
+            constant = ((BaseLayer) l).getActivationFn().getActivation(constant, false);
+
+            //Follow the constants through the per-channel layers, up to the next dense or convolution layer
+            List<String> perChannel = new ArrayList<>();
+            String consumer = null;
+            for (String k = next; k != null; k = t.next(k)) {
+                Layer c = t.conf(k);
+                if (isConsumer(c)) {
+                    consumer = k;
+                    break;
+                }
+                if (t.preProcessor(k) != null || !passThrough(c, t.layer(k), constant, removable)) {
+                    break;
+                }
+                if (c instanceof BatchNormalization) {
+                    perChannel.add(k);
+                }
+            }
+            if (consumer == null) {
+                log.debug("Layer {} not compacted: unsupported layer following it", key);
+                continue;
+            }
+
+            Layer c = t.conf(consumer);
+            InputPreProcessor preProc = t.preProcessor(consumer);
+            long nOut = norms.length;
+            long nIn = ((FeedForwardLayer) c).getNIn();
+            long rowsPerChannel = 1;
+            if (preProc instanceof CnnToFeedForwardPreProcessor && !(c instanceof ConvolutionLayer)) {
+                CnnToFeedForwardPreProcessor p = (CnnToFeedForwardPreProcessor) preProc;
+                if (p.getFormat() != CNN2DFormat.NCHW || p.getNumChannels() != nOut) {
+                    continue;
+                }
+                rowsPerChannel = p.getInputHeight() * p.getInputWidth();
+            } else if (preProc != null) {
+                continue;
+            }
+            if (nIn != nOut * rowsPerChannel) {
+                continue;
+            }
+
+            //Constants can only be folded into the bias if every output of the next layer sees the constant in full
+            INDArray cw = t.layer(consumer).getParam(DefaultParamInitializer.WEIGHT_KEY);
+            boolean hasBias = t.layer(consumer).getParam(DefaultParamInitializer.BIAS_KEY) != null;
+            boolean padded = (c instanceof ConvolutionLayer && isPadded(((ConvolutionLayer) c).getConvolutionMode(),
+                            ((ConvolutionLayer) c).getPadding()));
+            Set<Integer> removed = new TreeSet<>();
+            INDArray delta = (plan.biasDelta.containsKey(consumer) ? plan.biasDelta.get(consumer)
+                            : Nd4j.create(1, (c instanceof ConvolutionLayer ? cw.size(0) : cw.size(1))));
+            for (int i = 0; i < removable.size(); i++) {
+                double v = constant.getDouble(i);
+                if (v != 0.0 && (!hasBias || padded)) {
+                    continue;
+                }
+                int ch = removable.get(i);
+                removed.add(ch);
+                if (v == 0.0) {
+                    continue;
+                }
+                if (c instanceof ConvolutionLayer) {
+                    //Convolution weights: [nOut, nIn, kH, kW]
+                    INDArray s = cw.tensorAlongDimension(ch, 0, 2, 3).sum(1, 2);
+                    delta.addi(s.reshape(1, s.length()).muli(v));
+                } else {
+                    //Dense weights: [nIn, nOut]; rows ch*h*w to (ch+1)*h*w-1 for flattened CNN activations
+                    for (long r = ch * rowsPerChannel; r < (ch + 1) * rowsPerChannel; r++) {
+                        delta.addi(cw.getRow(r).mul(v));
+                    }
+                }
+            }
+            if (removed.isEmpty()) {
+                continue;
+            }
+
+            int[] kept = new int[(int) nOut - removed.size()];
+            int[] keptIn = new int[kept.length * (int) rowsPerChannel];
+            for (int i = 0, j = 0; i < nOut; i++) {
+                if (!removed.contains(i)) {
+                    for (int r = 0; r < rowsPerChannel; r++) {
+                        keptIn[j * (int) rowsPerChannel + r] = (int) (i * rowsPerChannel) + r;
+                    }
+                    kept[j++] = i;
+                }
+            }
+
+            ((FeedForwardLayer) l).setNOut(kept.length);
+            plan.keepOut.put(key, kept);
+            for (String k : perChannel) {
+                ((FeedForwardLayer) t.conf(k)).setNIn(kept.length);
+                ((FeedForwardLayer) t.conf(k)).setNOut(kept.length);
+                plan.keepOut.put(k, kept);
+                plan.perChannel.add(k);
+            }
+            ((FeedForwardLayer) c).setNIn(keptIn.length);
+            if (preProc instanceof CnnToFeedForwardPreProcessor && !(c instanceof ConvolutionLayer)) {
+                ((CnnToFeedForwardPreProcessor) preProc).setNumChannels(kept.length);
+            }
+            plan.keepIn.put(consumer, (c instanceof ConvolutionLayer ? kept : keptIn));
+            plan.biasDelta.put(consumer, delta);
+            plan.removed += removed.size();
+        }
+        return plan;
+    }
+
+    /**
+     * Update the constant outputs of the removed channels for a layer applied per channel.
+     *
+     * @return False if the layer is not supported, or the outputs for the removed channels are not constant
+     */
+    private static boolean passThrough(Layer l, org.deeplearning4j.nn.api.Layer layer, INDArray constant,
+                    List<Integer> channels) {
+        boolean allZero = constant.neq(0.0).sumNumber().doubleValue() == 0.0;
+        if (l instanceof DropoutLayer) {
+            return true;
+        } else if (l instanceof ActivationLayer) {
+            IActivation a = ((ActivationLayer) l).getActivationFn();
+            if (a instanceof ActivationSoftmax) {
+                return false;
+            }
+            constant.assign(a.getActivation(constant.dup(), false));
+            return true;
+        } else if (l instanceof BatchNormalization) {
+            //Same as batch normalization inference: (x - mean) / sqrt(var + eps) * gamma + beta
+            BatchNormalization bn = (BatchNormalization) l;
+            for (int i = 0; i < channels.size(); i++) {
+                int ch = channels.get(i);
+                double mean = layer.getParam(BatchNormalizationParamInitializer.GLOBAL_MEAN).getDouble(ch);
+                double var = layer.getParam(BatchNormalizationParamInitializer.GLOBAL_VAR).getDouble(ch);
+                double gamma;
+                double beta;
+                if (bn.isLockGammaBeta()) {
+                    boolean fixed = bn.getGamma() != 1.0 && bn.getBeta() != 0.0;
+                    gamma = (fixed ? bn.getGamma() : 1.0);
+                    beta = (fixed ? bn.getBeta() : 0.0);
+                } else {
+                    gamma = layer.getParam(BatchNormalizationParamInitializer.GAMMA).getDouble(ch);
+                    beta = layer.getParam(BatchNormalizationParamInitializer.BETA).getDouble(ch);
+                }
+                constant.putScalar(i, (constant.getDouble(i) - mean) / Math.sqrt(var + bn.getEps()) * gamma + beta);
+            }
+            IActivation a = bn.getActivationFn();
+            if (a instanceof ActivationSoftmax) {
+                return false;
+            }
+            constant.assign(a.getActivation(constant.dup(), false));
+            return true;
+        } else if (l instanceof SubsamplingLayer) {
+            //Pooling of a constant is the same constant, unless padding is included in the pooling window
+            SubsamplingLayer s = (SubsamplingLayer) l;
+            return allZero || (isMaxOrAvg(s.getPoolingType()) && !isPadded(s.getConvolutionMode(), s.getPadding()));
+        } else if (l instanceof GlobalPoolingLayer) {
+            return allZero || isMaxOrAvg(((GlobalPoolingLayer) l).getPoolingType());
+        }
+        return false;
+    }
+
+    private static boolean isMaxOrAvg(PoolingType p) {
+        return p == PoolingType.MAX || p == PoolingType.AVG;
+    }
+
+    private static boolean isPadded(ConvolutionMode mode, int[] padding) {
+        if (mode == ConvolutionMode.Same) {
+            return true;
+        }
+        if (padding != null) {
+            for (int p : padding) {
+                if (p != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void copyParams(org.deeplearning4j.nn.api.Layer from, org.deeplearning4j.nn.api.Layer to, Plan plan,
+                    String key) {
+        int[] keepOut = plan.keepOut.get(key);
+        int[] keepIn = plan.keepIn.get(key);
+        for (Map.Entry<String, INDArray> e : from.paramTable().entrySet()) {
+            INDArray p = e.getValue();
+            if (plan.perChannel.contains(key)) {
+                //Batch norm parameters: [1, nOut]
+                p = select(p, p.rank() - 1, keepOut);
+            } else if (DefaultParamInitializer.WEIGHT_KEY.equals(e.getKey())) {
+                //Convolution weights: [nOut, nIn, kH, kW]; dense weights: [nIn, nOut]
+                boolean conv = p.rank() == 4;
+                if (keepIn != null) {
+                    p = select(p, (conv ? 1 : 0), keepIn);
+                }
+                if (keepOut != null) {
+                    p = select(p, (conv ? 0 : 1), keepOut);
+                }
+            } else if (DefaultParamInitializer.BIAS_KEY.equals(e.getKey())) {
+                if (plan.biasDelta.containsKey(key)) {
+                    p = p.add(plan.biasDelta.get(key).reshape(p.shape()));
+                }
+                if (keepOut != null) {
+                    p = select(p, p.rank() - 1, keepOut);
+                }
+            }
+            to.getParam(e.getKey()).assign(p);
+        }
+    }
+
+    /**
+     * Select the given indices along one dimension of an array
+     */
+    private static INDArray select(INDArray arr, int dimension, int[] indices) {
+        int rank = arr.rank();
+        int[] perm = new int[rank];
+        int[] inverse = new int[rank];
+        perm[0] = dimension;
+        for (int i = 0, j = 1; i < rank; i++) {
+            if (i != dimension) {
+                perm[j++] = i;
+            }
+        }
+        for (int i = 0; i < rank; i++) {
+            inverse[perm[i]] = i;
+        }
+
+        INDArray p = arr.permute(perm).dup('c');
+        long[] shape = p.shape();
+        INDArray rows = p.reshape('c', shape[0], p.length() / shape[0]);
+        INDArray out = Nd4j.create(indices.length, (int) rows.size(1));
+        for (int i = 0; i < indices.length; i++) {
+            out.getRow(i).assign(rows.getRow(indices[i]));
+        }
+        shape[0] = indices.length;
+        return out.reshape('c', shape).permute(inverse);
+    }
+
+    /**
+     * @return L1 norm of the weights of each output unit/channel
+     */
+    private static double[] channelNorms(INDArray w) {
+        INDArray abs = Transforms.abs(w, true);
+        //Convolution weights: [nOut, nIn, kH, kW]; dense weights: [nIn, nOut]
+        INDArray sum = (w.rank() == 4 ? abs.sum(1, 2, 3) : abs.sum(0));
+        double[] norms = new double[(int) sum.length()];
+        for (int i = 0; i < norms.length; i++) {
+            norms[i] = sum.getDouble(i);
+        }
+        return norms;
+    }
+
+    private static boolean isPrunable(Layer l) {
+        //Exact class only: subclasses (depthwise/separable/deconvolution etc) have different weight layouts
+        if (l.getClass() != ConvolutionLayer.class && l.getClass() != DenseLayer.class) {
+            return false;
+        }
+        //Softmax is not an element-wise activation: removing a unit changes the output of the others
+        return !(((BaseLayer) l).getActivationFn() instanceof ActivationSoftmax);
+    }
+
+    private static boolean isConsumer(Layer l) {
+        return l.getClass() == ConvolutionLayer.class || l.getClass() == DenseLayer.class
+                        || l.getClass() == OutputLayer.class;
+    }
+
+    private static void checkFraction(double fraction) {
+        if (fraction < 0.0 || fraction >= 1.0) {
+            throw new IllegalArgumentException("Invalid pruning fraction: must be in range [0, 1), got " + fraction);
+        }
+    }
+
+    /**
+     * All layers of the network, keyed by index (MultiLayerNetwork) or name (ComputationGraph)
+     */
+    private static Map<String, org.deeplearning4j.nn.api.Layer> allLayers(Model model) {
+        Map<String, org.deeplearning4j.nn.api.Layer> out = new LinkedHashMap<>();
+        if (model instanceof MultiLayerNetwork) {
+            org.deeplearning4j.nn.api.Layer[] layers = ((MultiLayerNetwork) model).getLayers();
+            for (int i = 0; i < layers.length; i++) {
+                out.put(String.valueOf(i), layers[i]);
+            }
+        } else if (model instanceof ComputationGraph) {
+            for (org.deeplearning4j.nn.api.Layer l : ((ComputationGraph) model).getLayers()) {
+                out.put(l.conf().getLayer().getLayerName(), l);
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported model type: " + model.getClass().getName()
+                            + " - only MultiLayerNetwork and ComputationGraph are supported");
+        }
+        return out;
+    }
+
+    private static Map<String, org.deeplearning4j.nn.api.Layer> prunableLayers(Model model, String... names) {
+        Map<String, org.deeplearning4j.nn.api.Layer> out = new LinkedHashMap<>();
+        List<String> selected = (names == null ? Collections.<String>emptyList() : Arrays.asList(names));
+        for (Map.Entry<String, org.deeplearning4j.nn.api.Layer> e : allLayers(model).entrySet()) {
+            Layer l = e.getValue().conf().getLayer();
+            if (selected.isEmpty() || selected.contains(e.getKey()) || selected.contains(l.getLayerName())) {
+                if (isPrunable(l)) {
+                    out.put(e.getKey(), e.getValue());
+                } else if (!selected.isEmpty()) {
+                    throw new IllegalArgumentException("Layer \"" + e.getKey() + "\" cannot be pruned: only "
+                                    + "DenseLayer and ConvolutionLayer layers are supported, got "
+                                    + l.getClass().getSimpleName());
+                }
+            }
+        }
+        return out;
+    }
+}
@@ -16,7 +16,11 @@
 
 package org.deeplearning4j.nn.transferlearning;
 
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.ArrayUtils;
+import org.deeplearning4j.datasets.iterator.AsyncDataSetIterator;
+import org.deeplearning4j.datasets.iterator.AsyncMultiDataSetIterator;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.graph.ComputationGraph;
@@ -29,8 +33,14 @@ import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.dataset.MultiDataSet;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
 
 /**
  * This class is intended for use with the transfer learning API.
@@ -42,9 +52,12 @@ import java.util.*;
  * dataset can be fit with the smaller unfrozen part of the computation graph which allows for quicker iterations.
  * The class internally traverses the computation graph/MLN and builds an instance of the computation graph/MLN that is
  * equivalent to the unfrozen subset.
+ * {@link #featurizeToDisk(DataSetIterator, File, int, String)} featurizes an entire dataset once and caches it on disk,
+ * returning an iterator over the cached data that can be used for all subsequent epochs.
  *
  * @author susaneraly
  */
+@Slf4j
 public class TransferLearningHelper {
 
     private boolean isGraph = true;
@@ -380,6 +393,258 @@ public class TransferLearningHelper {
         }
     }
 
+    /**
+     * Featurize all of the data from the iterator once, and save the featurized minibatches to the specified directory,
+     * using one writer thread per available processor and no compression.
+     * See {@link #featurizeToDisk(DataSetIterator, File, int, String)}
+     */
+    public FeaturizedDataSetIterator featurizeToDisk(DataSetIterator iter, File directory) throws IOException {
+        return featurizeToDisk(iter, directory, Runtime.getRuntime().availableProcessors(), null);
+    }
+
+    /**
+     * Featurize all of the data from the iterator once, and save the featurized minibatches to the specified directory.
+     * The returned iterator can then be passed to {@link #fitFeaturized(DataSetIterator)} for each epoch, so that the
+     * frozen part of the network is not recomputed, and only the unfrozen part is trained.<br>
+     * The work is pipelined: minibatches are loaded asynchronously from the source iterator (where supported), the
+     * forward pass through the frozen layers is conducted on the calling thread, and compression and writing to disk
+     * is conducted by a pool of writer threads.<br>
+     * Compressing the features (for example, with "FLOAT16") halves the size of the cache, at the cost of some
+     * precision and some decompression time when loading; the labels are not compressed.<br>
+     * Once all minibatches have been saved, their number is written to a completion marker: incomplete caches (left by
+     * a failed run) can't be loaded, and are deleted when featurizing to the same directory again.
+     *
+     * @param iter             Source of the (unfeaturized) data
+     * @param directory        Directory to save the featurized data to. Created if it does not exist; must not already
+     *                         contain complete featurized data
+     * @param numWriterThreads Number of threads to use to compress and save the featurized minibatches
+     * @param compression      Compression algorithm for the features (see {@code Nd4j.getCompressor().getAvailableCompressors()}),
+     *                         or null for no compression
+     * @return Iterator over the saved featurized data
+     */
+    public FeaturizedDataSetIterator featurizeToDisk(DataSetIterator iter, File directory, int numWriterThreads,
+                    String compression) throws IOException {
+        prepareDirectory(directory, FeaturizedDataSetIterator.DEFAULT_PATTERN,
+                        FeaturizedDataSetIterator.COMPLETION_MARKER, numWriterThreads, compression);
+        DataSetIterator source = iter.asyncSupported() ? new AsyncDataSetIterator(iter, 2, false) : iter;
+        ExecutorService writers = writerPool(numWriterThreads);
+        List<Future<?>> pending = new ArrayList<>();
+        try {
+            int count = 0;
+            while (source.hasNext()) {
+                DataSet ds = featurize(source.next());
+                ds.detach();
+                pending.add(writers.submit(new ShardWriter(directory, FeaturizedDataSetIterator.DEFAULT_PATTERN,
+                                count++, compression, ds, null)));
+                checkWriters(pending, false);
+            }
+            checkWriters(pending, true);
+            writeCompletionMarker(directory, FeaturizedDataSetIterator.COMPLETION_MARKER, count);
+        } finally {
+            writers.shutdownNow();
+            if (source instanceof AsyncDataSetIterator) {
+                ((AsyncDataSetIterator) source).shutdown();
+            }
+        }
+        return new FeaturizedDataSetIterator(directory);
+    }
+
+    /**
+     * Featurize all of the data from the iterator once, and save the featurized minibatches to the specified directory,
+     * using one writer thread per available processor and no compression.
+     * See {@link #featurizeToDisk(MultiDataSetIterator, File, int, String)}
+     */
+    public FeaturizedMultiDataSetIterator featurizeToDisk(MultiDataSetIterator iter, File directory)
+                    throws IOException {
+        return featurizeToDisk(iter, directory, Runtime.getRuntime().availableProcessors(), null);
+    }
+
+    /**
+     * Featurize all of the data from the iterator once, and save the featurized minibatches to the specified directory.
+     * See {@link #featurizeToDisk(DataSetIterator, File, int, String)} for details.
+     *
+     * @param iter             Source of the (unfeaturized) data
+     * @param directory        Directory to save the featurized data to. Created if it does not exist; must not already
+     *                         contain complete featurized data
+     * @param numWriterThreads Number of threads to use to compress and save the featurized minibatches
+     * @param compression      Compression algorithm for the features, or null for no compression
+     * @return Iterator over the saved featurized data
+     */
+    public FeaturizedMultiDataSetIterator featurizeToDisk(MultiDataSetIterator iter, File directory,
+                    int numWriterThreads, String compression) throws IOException {
+        prepareDirectory(directory, FeaturizedMultiDataSetIterator.DEFAULT_PATTERN,
+                        FeaturizedMultiDataSetIterator.COMPLETION_MARKER, numWriterThreads, compression);
+        MultiDataSetIterator source = iter.asyncSupported() ? new AsyncMultiDataSetIterator(iter, 2, false) : iter;
+        ExecutorService writers = writerPool(numWriterThreads);
+        List<Future<?>> pending = new ArrayList<>();
+        try {
+            int count = 0;
+            while (source.hasNext()) {
+                org.nd4j.linalg.dataset.api.MultiDataSet next = source.next();
+                MultiDataSet mds = featurize(new MultiDataSet(next.getFeatures(), next.getLabels(),
+                                next.getFeaturesMaskArrays(), next.getLabelsMaskArrays()));
+                mds.detach();
+                pending.add(writers.submit(new ShardWriter(directory,
+                                FeaturizedMultiDataSetIterator.DEFAULT_PATTERN, count++, compression, null, mds)));
+                checkWriters(pending, false);
+            }
+            checkWriters(pending, true);
+            writeCompletionMarker(directory, FeaturizedMultiDataSetIterator.COMPLETION_MARKER, count);
+        } finally {
+            writers.shutdownNow();
+            if (source instanceof AsyncMultiDataSetIterator) {
+                ((AsyncMultiDataSetIterator) source).shutdown();
+            }
+        }
+        return new FeaturizedMultiDataSetIterator(directory);
+    }
+
+    private static void prepareDirectory(File directory, String pattern, String marker, int numWriterThreads,
+                    String compression) {
+        if (numWriterThreads < 1) {
+            throw new IllegalArgumentException("Number of writer threads must be >= 1: got " + numWriterThreads);
+        }
+        if (compression != null
+                        && !Nd4j.getCompressor().getAvailableCompressors().contains(compression.toUpperCase())) {
+            throw new IllegalArgumentException("Unknown compression algorithm: " + compression + ", available: "
+                            + Nd4j.getCompressor().getAvailableCompressors());
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IllegalStateException("Could not create directory: " + directory.getAbsolutePath());
+        }
+        if (!directory.isDirectory()) {
+            throw new IllegalArgumentException("Not a directory: " + directory.getAbsolutePath());
+        }
+        if (new File(directory, marker).exists()) {
+            throw new IllegalStateException("Directory already contains featurized data: "
+                            + directory.getAbsolutePath() + ". Use a new directory, or load the existing data with "
+                            + "FeaturizedDataSetIterator/FeaturizedMultiDataSetIterator");
+        }
+
+        //No completion marker: any minibatches present were left by a run that failed, and are not a usable cache
+        int idx = pattern.indexOf("%d");
+        Pattern shard = Pattern.compile(Pattern.quote(pattern.substring(0, idx)) + "\\d+"
+                        + Pattern.quote(pattern.substring(idx + 2)) + "(\\.tmp)?");
+        File[] files = directory.listFiles();
+        int deleted = 0;
+        if (files != null) {
+            for (File f : files) {
+                if (shard.matcher(f.getName()).matches()) {
+                    if (!f.delete()) {
+                        throw new IllegalStateException("Could not delete incomplete featurized data: "
+                                        + f.getAbsolutePath());
+                    }
+                    deleted++;
+                }
+            }
+        }
+        if (deleted > 0) {
+            log.warn("Deleted {} files of incomplete featurized data in {}", deleted, directory.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Record the number of minibatches once all of them have been saved. Written under a temporary name and then
+     * renamed, so that the marker only exists for complete caches
+     */
+    private static void writeCompletionMarker(File directory, String marker, int numBatches) throws IOException {
+        File f = new File(directory, marker);
+        File tmp = new File(directory, marker + ".tmp");
+        FileUtils.writeStringToFile(tmp, String.valueOf(numBatches), StandardCharsets.UTF_8);
+        if (!tmp.renameTo(f)) {
+            throw new IOException("Could not rename " + tmp.getAbsolutePath() + " to " + f.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Fixed size pool; when all threads are busy and the queue is full, the calling (featurizing) thread writes the
+     * minibatch itself. This limits the number of featurized minibatches held in memory
+     */
+    private static ExecutorService writerPool(int numThreads) {
+        return new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<Runnable>(2 * numThreads), new ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable r) {
+                                Thread t = Executors.defaultThreadFactory().newThread(r);
+                                t.setName("TransferLearningHelper-writer-" + t.getId());
+                                t.setDaemon(true);
+                                return t;
+                            }
+                        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Remove completed writes from the list, rethrowing any exception. If waitAll is true, wait for all writes
+     */
+    private static void checkWriters(List<Future<?>> pending, boolean waitAll) throws IOException {
+        Iterator<Future<?>> it = pending.iterator();
+        while (it.hasNext()) {
+            Future<?> f = it.next();
+            if (!waitAll && !f.isDone()) {
+                continue;
+            }
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while saving featurized data", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new RuntimeException("Error saving featurized data", e.getCause());
+            }
+            it.remove();
+        }
+    }
+
+    /**
+     * Compresses (optionally) and saves one featurized DataSet or MultiDataSet. Files are written under a temporary
+     * name and then renamed, so that an interrupted run never leaves a partially written minibatch in the cache
+     */
+    private static class ShardWriter implements Callable<Void> {
+        private final File directory;
+        private final String pattern;
+        private final int index;
+        private final String compression;
+        private final DataSet ds;
+        private final MultiDataSet mds;
+
+        private ShardWriter(File directory, String pattern, int index, String compression, DataSet ds,
+                        MultiDataSet mds) {
+            this.directory = directory;
+            this.pattern = pattern;
+            this.index = index;
+            this.compression = compression;
+            this.ds = ds;
+            this.mds = mds;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            File f = new File(directory, String.format(pattern, index));
+            File tmp = new File(directory, f.getName() + ".tmp");
+            if (ds != null) {
+                if (compression != null) {
+                    ds.setFeatures(Nd4j.getCompressor().compress(ds.getFeatures(), compression));
+                }
+                ds.save(tmp);
+            } else {
+                if (compression != null) {
+                    INDArray[] features = mds.getFeatures();
+                    for (int i = 0; i < features.length; i++) {
+                        features[i] = Nd4j.getCompressor().compress(features[i], compression);
+                    }
+                }
+                mds.save(tmp);
+            }
+            if (!tmp.renameTo(f)) {
+                throw new IOException("Could not rename " + tmp.getAbsolutePath() + " to " + f.getAbsolutePath());
+            }
+            return null;
+        }
+    }
+
     /**
      * Fit from a featurized dataset.
      * The fit is conducted on an internally instantiated subset model that is representative of the unfrozen part of the original model.
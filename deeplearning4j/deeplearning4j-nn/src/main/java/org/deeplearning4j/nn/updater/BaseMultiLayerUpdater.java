@@ -20,6 +20,7 @@ import lombok.Getter;
 import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.nn.api.Trainable;
 import org.deeplearning4j.nn.api.Updater;
+import org.deeplearning4j.nn.api.layers.SparseGradientLayer;
 import org.deeplearning4j.nn.conf.GradientNormalization;
 import org.deeplearning4j.nn.conf.layers.BaseLayer;
 import org.deeplearning4j.nn.gradient.DefaultGradient;
@@ -37,9 +38,12 @@ import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
 import org.nd4j.linalg.learning.config.IUpdater;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * BaseMultiLayerUpdater - core functionality for applying updaters to MultiLayerNetwork and ComputationGraph.
@@ -80,6 +84,7 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
         // (yet identical) ops.
         Trainable lastLayer = null;
         String lastVariable = null;
+        boolean lastSparse = false;
         UpdaterBlock currentBlock = null;
         updaterBlocks = new ArrayList<>();
 
@@ -109,8 +114,10 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
                     }
 
                     //First: decide whether to add to the existing updater block, or create a new one
-                    if (currentBlock == null || !UpdaterUtils.updaterConfigurationsEquals(lastLayer, lastVariable,
-                                    layers[i], var)) {
+                    //Parameters with row-sparse gradients always get their own block, for the lazy update
+                    SparseGradientLayer sparseLayer = UpdaterUtils.getSparseGradientLayer(layers[i], var);
+                    if (currentBlock == null || sparseLayer != null || lastSparse
+                                    || !UpdaterUtils.updaterConfigurationsEquals(lastLayer, lastVariable, layers[i], var)) {
 
                         // FIXME: int cast
                         //Create a new block
@@ -120,6 +127,7 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
                         currentBlock = new UpdaterBlock(paramsViewSoFar, (int) (paramsViewSoFar + paramSizeThisVariable),
                                         currentUpdaterOffset, currentUpdaterOffset + updaterStateSizeThisVariable,
                                         list);
+                        currentBlock.setSparseGradientLayer(sparseLayer);
 
                         updaterBlocks.add(currentBlock);
                     } else {
@@ -136,6 +144,7 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
 
                     lastLayer = layers[i];
                     lastVariable = variables.get(j);
+                    lastSparse = sparseLayer != null;
                     updaterStateSize += updaterStateSizeThisVariable;
                     paramsViewSoFar += paramSizeThisVariable;
                     currentUpdaterOffset += updaterStateSizeThisVariable;
@@ -174,6 +183,8 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
                 INDArray gradientViewSubset = gradientView.get(NDArrayIndex.point(0),
                                 NDArrayIndex.interval(paramsViewSoFar, paramsViewSoFar + gradSize));
                 ub.setGradientView(gradientViewSubset);
+                ub.setParamsView(paramsView.get(NDArrayIndex.point(0),
+                                NDArrayIndex.interval(paramsViewSoFar, paramsViewSoFar + gradSize)));
             }
 
             ub.init();
@@ -205,6 +216,13 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
      */
     protected abstract boolean isMiniBatch();
 
+    /**
+     * @return The loss scaler for the model if mixed precision training is used, null otherwise
+     */
+    protected LossScaler getLossScaler() {
+        return null;
+    }
+
     /**
      * Set the view array. Note that this does an assign operation - the provided array is not stored internally.
      *
@@ -245,6 +263,16 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
      */
     public void update(Gradient gradient, int iteration, int epoch, int batchSize, LayerWorkspaceMgr workspaceMgr) {
 
+        //Mixed precision training: skip the update if the gradients overflowed. The (zero) gradients are still
+        // applied by the step function, so the parameters and updater state are unchanged
+        LossScaler lossScaler = getLossScaler();
+        if (lossScaler != null && lossScaler.isSkipStep()) {
+            if (gradient.gradient() != null) {
+                gradient.gradient().assign(0);
+            }
+            return;
+        }
+
         //First: check if gradient is standard or external...
         //In a MultiLayerNetwork, the INDArray returned by .gradient() is always the standard full view array
         // hence should be the same object under normal circumstances
@@ -277,9 +305,14 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
         }
 
         //PRE apply (gradient clipping, etc): done on a per-layer basis
+        //Elementwise clipping is skipped here for layers where it is applied by the fused updater op
+        Set<String> fusedClipping = isExternal ? Collections.<String>emptySet() : layersWithFusedClipping();
         for (Map.Entry<String, Gradient> entry : layerGradients.entrySet()) {
             String layerName = entry.getKey();
             Trainable layer = layersByName.get(layerName);
+            if (fusedClipping.contains(layerName)) {
+                continue;
+            }
 
             preApply(layer, layerGradients.get(layerName), iteration);
         }
@@ -321,6 +354,28 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
         }
     }
 
+    /**
+     * @return Names of the layers with elementwise gradient clipping, where all updater blocks for the layer use the
+     * fused updater (which applies the clipping)
+     */
+    protected Set<String> layersWithFusedClipping() {
+        Set<String> fused = new HashSet<>();
+        Set<String> notFused = new HashSet<>();
+        for (UpdaterBlock ub : updaterBlocks) {
+            boolean fusedBlock = !ub.skipDueToPretrainConfig() && ub.usesFusedUpdater();
+            for (UpdaterBlock.ParamState p : ub.getLayersAndVariablesInBlock()) {
+                String name = p.getLayer().getConfig().getLayerName();
+                if (fusedBlock && FusedUpdaterHelper.appliesClipping(p.getLayer().getConfig())) {
+                    fused.add(name);
+                } else {
+                    notFused.add(name);
+                }
+            }
+        }
+        fused.removeAll(notFused);
+        return fused;
+    }
+
     protected boolean isSingleLayerUpdater() {
         return false;
     }
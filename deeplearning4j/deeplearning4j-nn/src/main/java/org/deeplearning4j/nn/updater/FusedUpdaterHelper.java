@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.updater;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Trainable;
+import org.deeplearning4j.nn.api.TrainingConfig;
+import org.deeplearning4j.nn.conf.GradientNormalization;
+import org.deeplearning4j.nn.layers.FrozenLayer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.CustomOp;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Native CPU helper for {@link UpdaterBlock}, based on the "fused_updater" libnd4j op. For the SGD, Nesterovs, Adam and
+ * RMSProp updaters, the whole update for a block - elementwise gradient clipping, the updater itself, and L1/L2
+ * regularization - is computed in a single pass over the gradient, updater state and parameters, instead of one pass
+ * per elementwise op (for example: 10 or more for Adam with L2).<br>
+ * The results are the same as for the standard implementation: clipping is applied before the updater, and L1/L2 are
+ * added to the update after the updater, as per {@link UpdaterBlock#postApply(Trainable, String, INDArray, INDArray)}.
+ * The parameters themselves are not modified: the update is subtracted from the parameters by the step function, as usual.<br>
+ * <br>
+ * The helper is disabled by default: it is used only when it has been enabled with {@link #setEnabled(boolean)}, the
+ * current ND4J backend is a CPU backend, and the op is present in the native library; otherwise, the standard
+ * implementation is used.
+ */
+@Slf4j
+public class FusedUpdaterHelper {
+    public static final String OP_NAME = "fused_updater";
+
+    private static final int SGD = 0;
+    private static final int NESTEROVS = 1;
+    private static final int ADAM = 2;
+    private static final int RMSPROP = 3;
+
+    private static volatile Boolean available;
+    private static volatile boolean enabled = false;
+
+    private FusedUpdaterHelper() {
+    }
+
+    /**
+     * @return True if the current ND4J backend is a CPU backend, and the op used by this helper is available
+     */
+    public static boolean isAvailable() {
+        if (available == null) {
+            available = checkAvailable();
+        }
+        return available;
+    }
+
+    private static boolean checkAvailable() {
+        try {
+            String backend = Nd4j.getExecutioner().getEnvironmentInformation().getProperty("backend");
+            if ("CUDA".equalsIgnoreCase(backend)) {
+                return false;
+            }
+            Map<String, ?> ops = Nd4j.getExecutioner().getCustomOperations();
+            return ops != null && ops.containsKey(OP_NAME);
+        } catch (Throwable t) {
+            log.debug("Could not check for native fused updater op", t);
+            return false;
+        }
+    }
+
+    /**
+     * Enable or disable the fused updater globally (disabled by default)
+     */
+    public static void setEnabled(boolean enabled) {
+        FusedUpdaterHelper.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return True if the fused updater can be used for the given updater configuration
+     */
+    public static boolean supports(IUpdater updater) {
+        return updaterType(updater) >= 0;
+    }
+
+    /**
+     * @return True if elementwise gradient clipping for the given layer is applied by the fused updater, in which
+     * case it does not need to be applied separately before the update
+     */
+    public static boolean appliesClipping(TrainingConfig config) {
+        return config != null && !config.isPretrain()
+                        && config.getGradientNormalization() == GradientNormalization.ClipElementWiseAbsoluteValue
+                        && config.getGradientNormalizationThreshold() > 0;
+    }
+
+    private static int updaterType(IUpdater updater) {
+        if (updater == null) {
+            return -1;
+        }
+        //Exact classes only: subclasses may change the update rule
+        Class<?> c = updater.getClass();
+        if (c == Sgd.class) {
+            return SGD;
+        } else if (c == Nesterovs.class) {
+            return NESTEROVS;
+        } else if (c == Adam.class) {
+            return ADAM;
+        } else if (c == RmsProp.class) {
+            return RMSPROP;
+        }
+        return -1;
+    }
+
+    /**
+     * Apply the updater, clipping and L1/L2 regularization for the given parameters, in place.
+     * All arrays must be contiguous row vectors.
+     *
+     * @param updater     Updater configuration. Must be supported, as per {@link #supports(IUpdater)}
+     * @param gradient    Gradient for the block. Modified in place: set to the update
+     * @param state       Updater state for the block (null for SGD). Modified in place
+     * @param params      Parameters for the block. Not modified
+     * @param paramStates Parameters in the block, as used by {@link UpdaterBlock}
+     * @param blockOffset Offset of the first parameter of the block, in the network parameters
+     * @param iteration   Current iteration
+     * @param epoch       Current epoch
+     */
+    public static void apply(IUpdater updater, INDArray gradient, INDArray state, INDArray params,
+                    List<UpdaterBlock.ParamState> paramStates, int blockOffset, int iteration, int epoch) {
+        int type = updaterType(updater);
+        List<Integer> iArgs = new ArrayList<>();
+        List<Double> tArgs = new ArrayList<>();
+        iArgs.add(type);
+        iArgs.add(iteration);
+        switch (type) {
+            case SGD:
+                tArgs.add(updater.getLearningRate(iteration, epoch));
+                break;
+            case NESTEROVS:
+                Nesterovs n = (Nesterovs) updater;
+                tArgs.add(n.getLearningRate(iteration, epoch));
+                tArgs.add(n.currentMomentum(iteration, epoch));
+                break;
+            case ADAM:
+                Adam a = (Adam) updater;
+                tArgs.add(a.getLearningRate(iteration, epoch));
+                tArgs.add(a.getBeta1());
+                tArgs.add(a.getBeta2());
+                tArgs.add(a.getEpsilon());
+                break;
+            case RMSPROP:
+                RmsProp r = (RmsProp) updater;
+                tArgs.add(r.getLearningRate(iteration, epoch));
+                tArgs.add(r.getRmsDecay());
+                tArgs.add(r.getEpsilon());
+                break;
+            default:
+                throw new IllegalArgumentException("Updater is not supported by fused updater: " + updater);
+        }
+
+        //One segment per parameter, merging consecutive parameters with the same clipping and L1/L2 values
+        double[] last = null;
+        int segmentStart = 0;
+        for (UpdaterBlock.ParamState p : paramStates) {
+            double[] args = segmentArgs(p.getLayer(), p.getParamName());
+            int start = p.getParamOffsetStart() - blockOffset;
+            if (last != null && !Arrays.equals(last, args)) {
+                addSegment(iArgs, tArgs, segmentStart, start, last);
+                segmentStart = start;
+            }
+            last = args;
+        }
+        addSegment(iArgs, tArgs, segmentStart, (int) gradient.length(), last);
+
+        DynamicCustomOp.DynamicCustomOpsBuilder b = DynamicCustomOp.builder(OP_NAME);
+        if (state != null) {
+            b.addInputs(gradient, state, params).addOutputs(gradient, state);
+        } else {
+            b.addInputs(gradient, params).addOutputs(gradient);
+        }
+        CustomOp op = b.addIntegerArguments(iArgs)
+                        .addFloatingPointArguments(tArgs.toArray(new Double[tArgs.size()]))
+                        .build();
+        Nd4j.getExecutioner().exec(op);
+    }
+
+    private static void addSegment(List<Integer> iArgs, List<Double> tArgs, int start, int end, double[] args) {
+        iArgs.add(start);
+        iArgs.add(end);
+        for (double d : args) {
+            tArgs.add(d);
+        }
+    }
+
+    /**
+     * @return [clip, l1, l2] for the given parameter: elementwise clipping threshold, L1 and L2; 0 if not used
+     */
+    private static double[] segmentArgs(Trainable layer, String paramName) {
+        TrainingConfig c = layer.getConfig();
+        double clip = appliesClipping(c) ? c.getGradientNormalizationThreshold() : 0.0;
+        if (layer instanceof FrozenLayer) {
+            //No L1/L2 for frozen layers - see UpdaterBlock.postApply
+            return new double[] {clip, 0.0, 0.0};
+        }
+        return new double[] {clip, Math.max(0.0, c.getL1ByParam(paramName)), Math.max(0.0, c.getL2ByParam(paramName))};
+    }
+}
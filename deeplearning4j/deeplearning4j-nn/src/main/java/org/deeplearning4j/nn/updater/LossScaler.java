@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.updater;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.conf.MixedPrecision;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.Serializable;
+
+/**
+ * Dynamic loss scaling for mixed precision training, as configured by {@link MixedPrecision}.<br>
+ * Usage, once per iteration:<br>
+ * 1. {@link #scale(Gradient, INDArray...)} the output layer gradients and epsilons, before backprop through the rest
+ * of the network<br>
+ * 2. {@link #unscale(INDArray)} the full (flattened) gradients after backprop: this checks for overflow and updates the
+ * loss scale<br>
+ * 3. The updater skips the parameter update if {@link #isSkipStep()} is true<br>
+ * The gradients returned by the network are always unscaled.
+ */
+@Slf4j
+public class LossScaler implements Serializable {
+
+    private final MixedPrecision config;
+    /**
+     * Current loss scale
+     */
+    @Getter
+    private double scale;
+    /**
+     * True if the gradients for the last iteration were not finite, and the parameter update should be skipped
+     */
+    @Getter
+    private boolean skipStep;
+    /**
+     * Total number of iterations skipped due to overflow
+     */
+    @Getter
+    private long skippedSteps;
+    private int stepsSinceOverflow;
+
+    public LossScaler(@NonNull MixedPrecision config) {
+        this.config = config;
+        this.scale = config.getInitialLossScale();
+    }
+
+    /**
+     * Multiply the gradients of the output layer, and the epsilons it backpropagates to the rest of the network, by
+     * the current loss scale (in place)
+     *
+     * @param outputLayerGradient Parameter gradients for the output layer. May be null
+     * @param epsilons            Epsilons from the output layer. Null entries are ignored
+     */
+    public void scale(Gradient outputLayerGradient, INDArray... epsilons) {
+        if (scale == 1.0) {
+            return;
+        }
+        if (outputLayerGradient != null) {
+            for (INDArray g : outputLayerGradient.gradientForVariable().values()) {
+                g.muli(scale);
+            }
+        }
+        if (epsilons != null) {
+            for (INDArray e : epsilons) {
+                if (e != null) {
+                    e.muli(scale);
+                }
+            }
+        }
+    }
+
+    /**
+     * Divide the gradients by the current loss scale (in place), check them for overflow, and update the loss scale.<br>
+     * If any gradient value is NaN or infinite, the gradients are not modified, {@link #isSkipStep()} is set, and the
+     * loss scale is reduced. Otherwise, the loss scale is increased after the configured number of iterations without
+     * overflow.
+     *
+     * @param gradients Flattened gradients for the whole network. May be null (network without parameters)
+     * @return True if the gradients are finite
+     */
+    public boolean unscale(INDArray gradients) {
+        //A single reduction: the sum is NaN or infinite if any element is
+        double sum = (gradients == null ? 0.0 : gradients.sumNumber().doubleValue());
+        if (Double.isNaN(sum) || Double.isInfinite(sum)) {
+            skipStep = true;
+            skippedSteps++;
+            stepsSinceOverflow = 0;
+            if (config.isDynamicLossScaling()) {
+                scale = Math.max(config.getMinLossScale(), scale * config.getBackoffFactor());
+            }
+            log.debug("Gradient overflow with mixed precision training: skipping parameter update, loss scale is now {}",
+                            scale);
+            return false;
+        }
+
+        skipStep = false;
+        if (scale != 1.0 && gradients != null) {
+            gradients.divi(scale);
+        }
+        if (config.isDynamicLossScaling() && ++stepsSinceOverflow >= config.getGrowthInterval()) {
+            scale = Math.min(config.getMaxLossScale(), scale * config.getGrowthFactor());
+            stepsSinceOverflow = 0;
+        }
+        return true;
+    }
+}
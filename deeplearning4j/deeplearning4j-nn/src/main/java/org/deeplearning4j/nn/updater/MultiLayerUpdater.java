@@ -38,7 +38,7 @@ import java.util.HashMap;
 public class MultiLayerUpdater extends BaseMultiLayerUpdater<MultiLayerNetwork> {
 
     public MultiLayerUpdater(MultiLayerNetwork network) {
-        this(network, null);
+        this(network, network.loadPendingUpdaterState());
     }
 
     public MultiLayerUpdater(MultiLayerNetwork network, INDArray updaterState) {
@@ -74,6 +74,11 @@ public class MultiLayerUpdater extends BaseMultiLayerUpdater<MultiLayerNetwork>
         return network.params();
     }
 
+    @Override
+    protected LossScaler getLossScaler() {
+        return network.getLossScaler();
+    }
+
     @Override
     protected boolean isMiniBatch() {
         return network.conf().isMiniBatch();
@@ -21,10 +21,12 @@ import lombok.Data;
 import lombok.val;
 import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.Trainable;
+import org.deeplearning4j.nn.api.layers.SparseGradientLayer;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.layers.BaseLayer;
 import org.deeplearning4j.nn.layers.FrozenLayer;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.custom.ScatterUpdate;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.learning.GradientUpdater;
@@ -41,6 +43,8 @@ import java.util.List;
  */
 @Data
 public class UpdaterBlock {
+    private static final int[] DIM_1 = new int[] {1};
+
     private int paramOffsetStart;
     private int paramOffsetEnd;
     private int updaterViewOffsetStart;
@@ -49,9 +53,12 @@ public class UpdaterBlock {
 
     private INDArray updaterView;
     private INDArray gradientView;
+    private INDArray paramsView;
     private boolean updaterViewRequiresInitialization;
 
     private GradientUpdater gradientUpdater;
+    //Non-null if this block contains a single parameter with row-sparse gradients: lazy update
+    private SparseGradientLayer sparseGradientLayer;
 
 
     @AllArgsConstructor
@@ -116,6 +123,22 @@ public class UpdaterBlock {
         return gradientUpdater;
     }
 
+    /**
+     * @return True if the update for this block (including elementwise gradient clipping and L1/L2 regularization)
+     * is done in a single op by {@link FusedUpdaterHelper}, false if the standard implementation is used
+     */
+    public boolean usesFusedUpdater() {
+        if (sparseGradientLayer != null || !FusedUpdaterHelper.isEnabled() || !FusedUpdaterHelper.isAvailable()) {
+            return false;
+        }
+        return FusedUpdaterHelper.supports(getGradientUpdater().getConfig()) && isContiguous(gradientView)
+                        && isContiguous(paramsView) && (updaterView == null || isContiguous(updaterView));
+    }
+
+    private static boolean isContiguous(INDArray arr) {
+        return arr != null && arr.isRowVector() && arr.elementWiseStride() == 1;
+    }
+
     /**
      * Update the gradient for this block
      *
@@ -157,6 +180,21 @@ public class UpdaterBlock {
             return;
         }
 
+        if (!externalGradient && sparseGradientLayer != null && updateSparseRows(iteration, epoch)) {
+            return;
+        }
+
+        if (usesFusedUpdater()) {
+            INDArray blockParamsArray = externalGradient ? fullNetworkParamsArray.get(NDArrayIndex.point(0),
+                            NDArrayIndex.interval(paramOffsetStart, paramOffsetEnd)) : paramsView;
+            if (isContiguous(blockGradViewArray) && isContiguous(blockParamsArray)) {
+                //Updater, L1 and L2 (and elementwise clipping, if configured) in one pass
+                FusedUpdaterHelper.apply(gradientUpdater.getConfig(), blockGradViewArray, updaterView,
+                                blockParamsArray, layersAndVariablesInBlock, paramOffsetStart, iteration, epoch);
+                return;
+            }
+        }
+
         //Apply the updater itself
         gradientUpdater.applyUpdater(blockGradViewArray, iteration, epoch);
 
@@ -178,6 +216,68 @@ public class UpdaterBlock {
         }
     }
 
+    /**
+     * Lazy update for a parameter with row-sparse gradients (see {@link SparseGradientLayer}): the updater is applied
+     * only to the rows with non-zero gradients. These rows of the gradients and updater state are gathered into
+     * temporary arrays, updated, and scattered back; all other rows of the parameter and updater state are unchanged.
+     * The updater state is assumed to be zero or more components (for example, Adam's m and v) each the same size as
+     * the parameter, one after the other - as for all the standard (elementwise) updaters.
+     *
+     * @return False if the lazy update can't be used for this iteration, in which case the standard update is used
+     */
+    private boolean updateSparseRows(int iteration, int epoch) {
+        ParamState p = layersAndVariablesInBlock.get(0);
+        int[] rows = sparseGradientLayer.getGradientRows(p.getParamName());
+        INDArray param = sparseGradientLayer.getParam(p.getParamName());
+        if (rows == null || rows.length == 0 || param == null || param.rank() != 2) {
+            return false;
+        }
+        long n = gradientView.length();
+        int nStateComponents = 0;
+        if (updaterView != null) {
+            if (updaterView.length() % n != 0) {
+                return false;
+            }
+            nStateComponents = (int) (updaterView.length() / n);
+        }
+
+        long[] shape = param.shape();
+        char order = param.ordering();
+        long rowsLength = rows.length * shape[1];
+
+        //Gather the rows of the gradients and updater state
+        INDArray gradFull = gradientView.reshape(order, shape);
+        INDArray gradRows = Nd4j.pullRows(gradFull, 1, rows, 'c');
+        INDArray[] stateFull = new INDArray[nStateComponents];
+        INDArray stateRows = null;
+        if (nStateComponents > 0) {
+            stateRows = Nd4j.createUninitialized(new long[] {1, nStateComponents * rowsLength}, 'c');
+            for (int j = 0; j < nStateComponents; j++) {
+                stateFull[j] = updaterView.get(NDArrayIndex.point(0), NDArrayIndex.interval(j * n, (j + 1) * n))
+                                .reshape(order, shape);
+                stateRows.get(NDArrayIndex.point(0), NDArrayIndex.interval(j * rowsLength, (j + 1) * rowsLength))
+                                .assign(Nd4j.pullRows(stateFull[j], 1, rows, 'c').reshape('c', 1, rowsLength));
+            }
+        }
+
+        //Apply the updater and L1/L2 to the rows only
+        GradientUpdater rowsUpdater = p.getLayer().getConfig().getUpdaterByParam(p.getParamName())
+                        .instantiate(stateRows, false);
+        rowsUpdater.applyUpdater(gradRows.reshape('c', 1, rowsLength), iteration, epoch);
+        postApply(p.getLayer(), p.getParamName(), gradRows, Nd4j.pullRows(param, 1, rows, 'c'));
+
+        //Scatter back. Gradients for all other rows are zero (set by the layer)
+        Nd4j.getExecutioner().exec(new ScatterUpdate(gradFull, gradRows, rows, DIM_1, ScatterUpdate.UpdateOp.ASSIGN));
+        for (int j = 0; j < nStateComponents; j++) {
+            INDArray updated = stateRows.get(NDArrayIndex.point(0),
+                            NDArrayIndex.interval(j * rowsLength, (j + 1) * rowsLength)).reshape('c', rows.length, shape[1]);
+            Nd4j.getExecutioner().exec(new ScatterUpdate(stateFull[j], updated, rows, DIM_1,
+                            ScatterUpdate.UpdateOp.ASSIGN));
+        }
+        sparseGradientLayer.sparseUpdateApplied(p.getParamName());
+        return true;
+    }
+
     /**
      * Apply L1 and L2 regularization, if necessary. Note that L1/L2 may differ for different layers in the same block
      *
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.updater;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.IOException;
+
+/**
+ * Source of the updater state for a network, used to load the updater state lazily: only when the updater is first
+ * created (usually, when training resumes), and not at all for networks used only for inference.
+ *
+ * @see org.deeplearning4j.util.ModelSerializer#restoreMultiLayerNetworkMemoryMapped(java.io.File)
+ */
+public interface UpdaterStateLoader {
+
+    /**
+     * @return The updater state view array, or null if no updater state is available
+     * @throws IOException If the updater state cannot be loaded
+     */
+    INDArray loadUpdaterState() throws IOException;
+}
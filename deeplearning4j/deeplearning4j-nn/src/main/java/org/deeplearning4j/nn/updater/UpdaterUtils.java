@@ -18,6 +18,8 @@ package org.deeplearning4j.nn.updater;
 
 import org.deeplearning4j.nn.api.Trainable;
 import org.deeplearning4j.nn.api.TrainingConfig;
+import org.deeplearning4j.nn.api.layers.SparseGradientLayer;
+import org.deeplearning4j.nn.graph.vertex.GraphVertex;
 import org.nd4j.linalg.learning.config.IUpdater;
 
 /**
@@ -53,4 +55,19 @@ public class UpdaterUtils {
 
         return true;
     }
+
+    /**
+     * @param layer Layer or graph vertex
+     * @param param Parameter name
+     * @return The layer, if the parameter has row-sparse gradients (and hence should use a lazy update). Null otherwise
+     */
+    public static SparseGradientLayer getSparseGradientLayer(Trainable layer, String param) {
+        if (layer instanceof GraphVertex && ((GraphVertex) layer).hasLayer()) {
+            layer = ((GraphVertex) layer).getLayer();
+        }
+        if (layer instanceof SparseGradientLayer && ((SparseGradientLayer) layer).isSparseGradientParam(param)) {
+            return (SparseGradientLayer) layer;
+        }
+        return null;
+    }
 }
@@ -21,6 +21,7 @@ import org.deeplearning4j.nn.api.Trainable;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.graph.vertex.GraphVertex;
 import org.deeplearning4j.nn.updater.BaseMultiLayerUpdater;
+import org.deeplearning4j.nn.updater.LossScaler;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
 import java.util.Arrays;
@@ -37,7 +38,7 @@ public class ComputationGraphUpdater extends BaseMultiLayerUpdater<ComputationGr
     protected Trainable[] orderedLayers;
 
     public ComputationGraphUpdater(ComputationGraph graph) {
-        this(graph, null);
+        this(graph, graph.loadPendingUpdaterState());
     }
 
     public ComputationGraphUpdater(ComputationGraph graph, INDArray updaterState) {
@@ -92,6 +93,11 @@ public class ComputationGraphUpdater extends BaseMultiLayerUpdater<ComputationGr
         return network.params();
     }
 
+    @Override
+    protected LossScaler getLossScaler() {
+        return network.getLossScaler();
+    }
+
     @Override
     protected boolean isMiniBatch() {
         return network.conf().isMiniBatch();
@@ -26,12 +26,15 @@ import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.optimize.api.BaseTrainingListener;
 import org.deeplearning4j.optimize.api.TrainingListener;
 import org.deeplearning4j.util.ModelSerializer;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
 
 import java.io.*;
 import java.nio.charset.Charset;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  *
@@ -81,6 +84,16 @@ import java.util.concurrent.TimeUnit;
  * {@code .saveEveryEpoch().saveEvery(15, TimeUnit.MINUTES, true)}<br>
  * Note that is this last example, the <i>sinceLast</i> parameter is true. This means the 15-minute counter will be
  * reset any time a model is saved.<br>
+ * <br>
+ * <b>Asynchronous saving</b>: by default, checkpoints are written on the training thread, and training is paused until
+ * the model file has been written. With {@link Builder#asyncSave()}, the parameters and updater state are instead
+ * copied into preallocated off-heap buffers, and the model file is written by a background thread. Training continues
+ * as soon as the copy is complete. The number of checkpoints being written at any time is bounded; when this limit
+ * is reached, the listener either waits for a pending write to finish, or skips the checkpoint
+ * (see {@link Builder#asyncSave(int, boolean)}). Use {@link #flush()} to wait for all pending checkpoints to be
+ * written - for example, at the end of training, before calling {@link #availableCheckpoints()}.<br>
+ * Save and write times and the number of skipped checkpoints are available via {@link #getLastSnapshotTimeMs()},
+ * {@link #getLastWriteTimeMs()}, {@link #getDroppedCheckpoints()} etc.<br>
  *
  * @author Alex Black
  */
@@ -113,6 +126,21 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
     private int startIter = -1;
     private Long lastSaveEveryMsNoSinceLast;
 
+    private boolean asyncSave;
+    private int asyncMaxPending;
+    private boolean asyncBlockWhenFull;
+    private transient BlockingQueue<Snapshot> freeSnapshots;
+    private transient ExecutorService asyncWriter;
+    private transient volatile Throwable asyncError;
+
+    private final AtomicLong lastSnapshotTimeMs = new AtomicLong();
+    private final AtomicLong totalSnapshotTimeMs = new AtomicLong();
+    private final AtomicLong lastWriteTimeMs = new AtomicLong();
+    private final AtomicLong totalWriteTimeMs = new AtomicLong();
+    private final AtomicLong backpressureWaitTimeMs = new AtomicLong();
+    private final AtomicLong droppedCheckpoints = new AtomicLong();
+    private final AtomicLong asyncCheckpointsWritten = new AtomicLong();
+
     private CheckpointListener(Builder builder){
         this.rootDir = builder.rootDir;
         this.keepMode = builder.keepMode;
@@ -127,6 +155,9 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
         this.saveEveryAmount = builder.saveEveryAmount;
         this.saveEveryUnit = builder.saveEveryUnit;
         this.saveEverySinceLast = builder.saveEverySinceLast;
+        this.asyncSave = builder.asyncSave;
+        this.asyncMaxPending = builder.asyncMaxPending;
+        this.asyncBlockWhenFull = builder.asyncBlockWhenFull;
 
         if(saveEveryAmount != null){
             saveEveryMs = TimeUnit.MILLISECONDS.convert(saveEveryAmount, saveEveryUnit);
@@ -215,7 +246,11 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
 
     private void saveCheckpoint(Model model) {
         try{
-            saveCheckpointHelper(model);
+            if(asyncSave){
+                saveCheckpointAsync(model);
+            } else {
+                saveCheckpointHelper(model);
+            }
         } catch (Exception e){
             throw new RuntimeException("Error saving checkpoint", e);
         }
@@ -232,7 +267,149 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
         setFileName(c);
 
         ModelSerializer.writeModel(model, new File(rootDir, c.getFilename()), true);
+        this.lastCheckpoint = c;
+        finishCheckpoint(c);
+    }
+
+    private void saveCheckpointAsync(Model model) throws Exception {
+        rethrowAsyncError();
+        initAsync();
+
+        long start = System.currentTimeMillis();
+        Snapshot snapshot = freeSnapshots.poll();
+        if(snapshot == null){
+            if(!asyncBlockWhenFull){
+                droppedCheckpoints.incrementAndGet();
+                if(logSaving){
+                    log.warn("Skipping model checkpoint at epoch {}, iteration {}: {} checkpoint(s) still being written",
+                            getEpoch(model), getIter(model), asyncMaxPending);
+                }
+                return;
+            }
+            snapshot = freeSnapshots.take();
+            long waited = System.currentTimeMillis() - start;
+            backpressureWaitTimeMs.addAndGet(waited);
+            start += waited;
+            //Writer may have failed while we were waiting
+            if(asyncError != null){
+                freeSnapshots.add(snapshot);
+                rethrowAsyncError();
+            }
+        }
+
+        Checkpoint c = new Checkpoint(++lastCheckpointNum, System.currentTimeMillis(), getIter(model), getEpoch(model),
+                getModelType(model), null);
+        setFileName(c);
+
+        INDArray updaterState = null;
+        if (model instanceof MultiLayerNetwork) {
+            snapshot.configJson = ((MultiLayerNetwork) model).getLayerWiseConfigurations().toJson();
+            updaterState = ((MultiLayerNetwork) model).getUpdater().getStateViewArray();
+        } else if (model instanceof ComputationGraph) {
+            snapshot.configJson = ((ComputationGraph) model).getConfiguration().toJson();
+            updaterState = ((ComputationGraph) model).getUpdater().getStateViewArray();
+        } else {
+            snapshot.configJson = "";
+        }
+        snapshot.checkpoint = c;
+        snapshot.params = copyInto(model.params(), snapshot.params);
+        snapshot.updaterState = copyInto(updaterState, snapshot.updaterState);
+        snapshot.hasParams = model.params() != null;
+        snapshot.hasUpdaterState = updaterState != null;
+
+        long time = System.currentTimeMillis() - start;
+        lastSnapshotTimeMs.set(time);
+        totalSnapshotTimeMs.addAndGet(time);
+        this.lastCheckpoint = c;
+
+        final Snapshot toWrite = snapshot;
+        asyncWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeSnapshot(toWrite);
+            }
+        });
+    }
 
+    private synchronized void initAsync(){
+        if(freeSnapshots == null){
+            freeSnapshots = new ArrayBlockingQueue<>(asyncMaxPending);
+            for( int i=0; i<asyncMaxPending; i++ ){
+                freeSnapshots.add(new Snapshot());
+            }
+        }
+        if(asyncWriter == null){
+            //Single writer thread, so checkpoints are always written (and old checkpoints deleted) in order
+            ThreadPoolExecutor e = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "CheckpointListener-writer");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            e.allowCoreThreadTimeOut(true);
+            asyncWriter = e;
+        }
+    }
+
+    private static INDArray copyInto(INDArray from, INDArray to){
+        if(from == null){
+            return to;
+        }
+        if(to == null || !Arrays.equals(to.shape(), from.shape()) || to.ordering() != from.ordering()){
+            //Snapshot buffers are reused for all subsequent checkpoints: must not be allocated in a workspace
+            try(MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()){
+                to = Nd4j.createUninitialized(from.shape(), from.ordering());
+            }
+        }
+        return to.assign(from);
+    }
+
+    private void writeSnapshot(Snapshot snapshot){
+        try {
+            long start = System.currentTimeMillis();
+            Checkpoint c = snapshot.checkpoint;
+            File f = new File(rootDir, c.getFilename());
+            //Write to a temporary file first, so a partially written checkpoint is never visible
+            File tmp = new File(rootDir, c.getFilename() + ".tmp");
+            try(OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp))){
+                ModelSerializer.writeModel(snapshot.configJson, (snapshot.hasParams ? snapshot.params : null),
+                        (snapshot.hasUpdaterState ? snapshot.updaterState : null), os, null, false);
+            }
+            if(!tmp.renameTo(f)){
+                throw new IOException("Could not rename temporary checkpoint file " + tmp.getAbsolutePath() + " to "
+                        + f.getAbsolutePath());
+            }
+            long time = System.currentTimeMillis() - start;
+            lastWriteTimeMs.set(time);
+            totalWriteTimeMs.addAndGet(time);
+
+            finishCheckpoint(c);
+            asyncCheckpointsWritten.incrementAndGet();
+        } catch (Throwable t){
+            log.error("Error writing model checkpoint {}", snapshot.checkpoint.getCheckpointNum(), t);
+            asyncError = t;
+        } finally {
+            snapshot.configJson = null;
+            snapshot.checkpoint = null;
+            synchronized (freeSnapshots) {
+                freeSnapshots.add(snapshot);
+                freeSnapshots.notifyAll();
+            }
+        }
+    }
+
+    private void rethrowAsyncError(){
+        Throwable t = asyncError;
+        if(t != null){
+            asyncError = null;
+            throw new IllegalStateException("Error writing model checkpoint in background thread", t);
+        }
+    }
+
+    private void finishCheckpoint(Checkpoint c){
         String s = c.toFileString();
         write(s + "\n", checkpointRecordFile);
 
@@ -240,7 +417,6 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
             log.info("Model checkpoint saved: epoch {}, iteration {}, path: {}", c.getEpoch(), c.getIteration(),
                     new File(rootDir, c.getFilename()).getPath() );
         }
-        this.lastCheckpoint = c;
 
 
         //Finally: determine if we should delete some old models...
@@ -261,7 +437,7 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
                 if(cp.getCheckpointNum() > 0 && (cp.getCheckpointNum()+1) % keepEvery == 0){
                     //One of the "every M to keep" models
                     continue;
-                } else if(cp.getCheckpointNum() > lastCheckpointNum - keepLast ){        //Example: latest is 5, keep last 2 -> keep checkpoints 4 and 5
+                } else if(cp.getCheckpointNum() > c.getCheckpointNum() - keepLast ){        //Example: latest is 5, keep last 2 -> keep checkpoints 4 and 5
                     //One of last N to keep
                     continue;
                 }
@@ -323,6 +499,79 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
         }
     }
 
+    /**
+     * Wait for all pending checkpoints to be written, when asynchronous saving is enabled (see
+     * {@link Builder#asyncSave()}). Returns immediately when asynchronous saving is not used.
+     *
+     * @throws IllegalStateException If writing a checkpoint in the background thread failed
+     */
+    public void flush(){
+        if(asyncSave && freeSnapshots != null){
+            synchronized (freeSnapshots) {
+                while(freeSnapshots.size() < asyncMaxPending && asyncError == null){
+                    try {
+                        freeSnapshots.wait(100);
+                    } catch (InterruptedException e){
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException("Interrupted while waiting for checkpoints to be written", e);
+                    }
+                }
+            }
+        }
+        rethrowAsyncError();
+    }
+
+    /**
+     * @return Time (milliseconds) training was paused to copy the model for the most recent asynchronous checkpoint,
+     * not including any time spent waiting for pending checkpoints to be written
+     */
+    public long getLastSnapshotTimeMs(){
+        return lastSnapshotTimeMs.get();
+    }
+
+    /**
+     * @return Total time (milliseconds) spent copying the model for all asynchronous checkpoints
+     */
+    public long getTotalSnapshotTimeMs(){
+        return totalSnapshotTimeMs.get();
+    }
+
+    /**
+     * @return Time (milliseconds) taken by the background thread to write the most recent asynchronous checkpoint
+     */
+    public long getLastWriteTimeMs(){
+        return lastWriteTimeMs.get();
+    }
+
+    /**
+     * @return Total time (milliseconds) taken by the background thread to write all asynchronous checkpoints
+     */
+    public long getTotalWriteTimeMs(){
+        return totalWriteTimeMs.get();
+    }
+
+    /**
+     * @return Total time (milliseconds) training was blocked, waiting for pending checkpoints to be written
+     */
+    public long getBackpressureWaitTimeMs(){
+        return backpressureWaitTimeMs.get();
+    }
+
+    /**
+     * @return Number of checkpoints skipped because the maximum number of checkpoints were still being written. Always
+     * 0 unless asynchronous saving is used with blockWhenFull == false
+     */
+    public long getDroppedCheckpoints(){
+        return droppedCheckpoints.get();
+    }
+
+    /**
+     * @return Number of checkpoints written by the background thread
+     */
+    public long getAsyncCheckpointsWritten(){
+        return asyncCheckpointsWritten.get();
+    }
+
     /**
      * List all available checkpoints. A checkpoint is 'available' if the file can be loaded. Any checkpoint files that
      * have been automatically deleted (given the configuration) will not be returned here.
@@ -442,6 +691,15 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
         }
     }
 
+    private static class Snapshot {
+        private Checkpoint checkpoint;
+        private String configJson;
+        private INDArray params;
+        private INDArray updaterState;
+        private boolean hasParams;
+        private boolean hasUpdaterState;
+    }
+
     public static class Builder {
 
         private File rootDir;
@@ -457,6 +715,9 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
         private Long saveEveryAmount;
         private TimeUnit saveEveryUnit;
         private boolean saveEverySinceLast;
+        private boolean asyncSave;
+        private int asyncMaxPending;
+        private boolean asyncBlockWhenFull;
 
         /**
          * @param rootDir Root directory to save models to
@@ -594,6 +855,38 @@ public class CheckpointListener extends BaseTrainingListener implements Serializ
             return this;
         }
 
+        /**
+         * Write checkpoints asynchronously: training is paused only while the parameters and updater state are copied
+         * to a preallocated buffer, and the model file is written in a background thread. At most one checkpoint
+         * may be pending; if the previous checkpoint is still being written, training waits for it to complete.<br>
+         * Equivalent to {@code asyncSave(1, true)}
+         */
+        public Builder asyncSave(){
+            return asyncSave(1, true);
+        }
+
+        /**
+         * Write checkpoints asynchronously: training is paused only while the parameters and updater state are copied
+         * to a preallocated buffer, and the model file is written in a background thread.<br>
+         * Note that each pending checkpoint requires a copy of the parameters and updater state in memory.
+         *
+         * @param maxPending    Maximum number of checkpoints that may be waiting to be written (or being written) at
+         *                      any time. Must be > 0
+         * @param blockWhenFull What to do when a checkpoint should be saved, but maxPending checkpoints are still
+         *                      being written: if true, wait for a pending checkpoint to be written. If false, skip
+         *                      this checkpoint (see {@link CheckpointListener#getDroppedCheckpoints()})
+         */
+        public Builder asyncSave(int maxPending, boolean blockWhenFull){
+            if(maxPending <= 0){
+                throw new IllegalArgumentException("Maximum number of pending checkpoints should be > 0 (got: "
+                        + maxPending + ")");
+            }
+            this.asyncSave = true;
+            this.asyncMaxPending = maxPending;
+            this.asyncBlockWhenFull = blockWhenFull;
+            return this;
+        }
+
         public CheckpointListener build(){
             if(saveEveryNEpochs == null && saveEveryAmount == null && saveEveryNIterations == null){
                 throw new IllegalStateException("Cannot construct listener: no models will be saved (must use at least" +
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.listeners;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.transferlearning.NetworkPruner;
+import org.deeplearning4j.optimize.api.BaseTrainingListener;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * PruningListener: gradually prunes a network during training (prune and fine-tune), using {@link NetworkPruner}.<br>
+ * Starting at iteration {@code startIteration}, the network is pruned every {@code pruneEveryNIterations} iterations,
+ * {@code numPruningSteps} times, with the sparsity increasing from 0 to the target sparsity following
+ * s(t) = target * (1 - (1 - t/n)^3) for pruning step t = 1..n: pruning is faster at the start, when there are many
+ * redundant weights, and slower towards the end. After each iteration, the pruning masks are applied to the network,
+ * so that pruned weights remain 0 while the rest of the network is fine-tuned.<br>
+ * <br>
+ * Pruning may be unstructured (magnitude pruning of individual weights - see
+ * {@link NetworkPruner#pruneWeights(Model, double, String...)}) or structured (removal of whole units/filters - see
+ * {@link NetworkPruner#pruneChannels(Model, double, String...)}). After training with structured pruning, use
+ * {@link NetworkPruner#compact(org.deeplearning4j.nn.multilayer.MultiLayerNetwork)} to physically remove the pruned
+ * units and make inference faster.<br>
+ * <br>
+ * <b>Example</b>: remove 50% of the filters of each convolution and dense layer, in 10 steps, one step every 500
+ * iterations
+ * <pre>
+ * {@code PruningListener l = new PruningListener.Builder(0.5)
+ *          .structured(true)
+ *          .pruneEveryNIterations(500)
+ *          .numPruningSteps(10)
+ *          .build();
+ * }
+ * </pre>
+ */
+@Slf4j
+public class PruningListener extends BaseTrainingListener implements Serializable {
+
+    private final double targetSparsity;
+    private final boolean structured;
+    private final int startIteration;
+    private final int pruneEveryNIterations;
+    private final int numPruningSteps;
+    private final String[] layers;
+
+    private int stepsDone;
+    private transient Map<String, INDArray> masks;
+
+    private PruningListener(Builder builder) {
+        this.targetSparsity = builder.targetSparsity;
+        this.structured = builder.structured;
+        this.startIteration = builder.startIteration;
+        this.pruneEveryNIterations = builder.pruneEveryNIterations;
+        this.numPruningSteps = builder.numPruningSteps;
+        this.layers = builder.layers;
+    }
+
+    @Override
+    public void iterationDone(Model model, int iteration, int epoch) {
+        if (masks == null && stepsDone > 0) {
+            //Masks are not serialized: after deserialization, rebuild them from the zeros of the pruned network
+            masks = NetworkPruner.masksFromZeros(model, structured, layers);
+        }
+        //Pruned weights may have been updated in this iteration
+        if (masks != null) {
+            NetworkPruner.applyMasks(model, masks);
+        }
+        if (stepsDone < numPruningSteps && iteration >= startIteration
+                        && (iteration - startIteration) % pruneEveryNIterations == 0) {
+            stepsDone++;
+            double s = currentSparsity();
+            masks = (structured ? NetworkPruner.pruneChannels(model, s, layers)
+                            : NetworkPruner.pruneWeights(model, s, layers));
+            log.info("Pruning step {} of {} at iteration {}: {} sparsity {}, network weight sparsity {}", stepsDone,
+                            numPruningSteps, iteration, (structured ? "channel" : "weight"), s,
+                            NetworkPruner.sparsity(model));
+        }
+    }
+
+    /**
+     * @return Sparsity for the current pruning step
+     */
+    protected double currentSparsity() {
+        double remaining = 1.0 - stepsDone / (double) numPruningSteps;
+        return targetSparsity * (1.0 - remaining * remaining * remaining);
+    }
+
+    /**
+     * @return Number of pruning steps done so far
+     */
+    public int getPruningStepsDone() {
+        return stepsDone;
+    }
+
+    /**
+     * @return The current pruning masks, or null if the network has not been pruned yet
+     */
+    public Map<String, INDArray> getMasks() {
+        return masks;
+    }
+
+    public static class Builder {
+
+        private double targetSparsity;
+        private boolean structured = false;
+        private int startIteration = 0;
+        private int pruneEveryNIterations = 100;
+        private int numPruningSteps = 10;
+        private String[] layers = new String[0];
+
+        /**
+         * @param targetSparsity Final fraction of weights (or, for structured pruning, units/filters) to remove in
+         *                       each layer, in range [0, 1)
+         */
+        public Builder(double targetSparsity) {
+            if (targetSparsity < 0.0 || targetSparsity >= 1.0) {
+                throw new IllegalArgumentException("Invalid target sparsity: must be in range [0, 1), got "
+                                + targetSparsity);
+            }
+            this.targetSparsity = targetSparsity;
+        }
+
+        /**
+         * If true: remove whole units (dense layers) or filters (convolution layers). If false (default): remove
+         * individual weights
+         */
+        public Builder structured(boolean structured) {
+            this.structured = structured;
+            return this;
+        }
+
+        /**
+         * Iteration of the first pruning step. Default: 0
+         */
+        public Builder startIteration(int startIteration) {
+            this.startIteration = startIteration;
+            return this;
+        }
+
+        /**
+         * Number of iterations between pruning steps (i.e., of fine-tuning after each step). Default: 100
+         */
+        public Builder pruneEveryNIterations(int pruneEveryNIterations) {
+            if (pruneEveryNIterations <= 0) {
+                throw new IllegalArgumentException("Invalid number of iterations: must be positive, got "
+                                + pruneEveryNIterations);
+            }
+            this.pruneEveryNIterations = pruneEveryNIterations;
+            return this;
+        }
+
+        /**
+         * Number of pruning steps to reach the target sparsity. Default: 10
+         */
+        public Builder numPruningSteps(int numPruningSteps) {
+            if (numPruningSteps <= 0) {
+                throw new IllegalArgumentException("Invalid number of pruning steps: must be positive, got "
+                                + numPruningSteps);
+            }
+            this.numPruningSteps = numPruningSteps;
+            return this;
+        }
+
+        /**
+         * Names (or, for MultiLayerNetwork, indices) of the layers to prune. Default: all DenseLayer and
+         * ConvolutionLayer layers
+         */
+        public Builder layers(String... layers) {
+            this.layers = layers;
+            return this;
+        }
+
+        public PruningListener build() {
+            return new PruningListener(this);
+        }
+    }
+}
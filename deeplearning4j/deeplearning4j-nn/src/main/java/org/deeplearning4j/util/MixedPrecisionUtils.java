@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.util;
+
+import org.bytedeco.javacpp.ShortPointer;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.NDArrayFactory;
+import org.nd4j.linalg.factory.Nd4j;
+
+/**
+ * Utilities for mixed precision training, see {@link org.deeplearning4j.nn.conf.MixedPrecision}
+ */
+public class MixedPrecisionUtils {
+
+    //Max size of the FP16 buffer held by each thread (2 MB): larger arrays are rounded in chunks of this size
+    public static final int MAX_HALF_BUFFER_LENGTH = 1 << 20;
+
+    //Reusable FP16 buffer for rounding, per thread (one network is trained by one thread at a time)
+    private static final ThreadLocal<ShortPointer> HALF_BUFFER = new ThreadLocal<>();
+    private static volatile Boolean cpuBackend;
+
+    private MixedPrecisionUtils() {}
+
+    /**
+     * Round the values of the array to FP16 (half) precision, in place. The array data type is unchanged.
+     * Values outside of the FP16 range become +/- infinity, as they would when stored in an FP16 array.
+     * HALF arrays are not modified.<br>
+     * On CPU, values are converted directly in the array's host memory, through a per thread FP16 buffer of at most
+     * {@link #MAX_HALF_BUFFER_LENGTH} elements. On other backends, the array is rounded with FLOAT16 compression, which
+     * synchronizes device and host memory.
+     *
+     * @param array Array to round. May be null
+     */
+    public static void roundToHalf(INDArray array) {
+        if (array == null || array.length() == 0) {
+            return;
+        }
+        DataBuffer.TypeEx type;
+        switch (array.data().dataType()) {
+            case FLOAT:
+                type = DataBuffer.TypeEx.FLOAT;
+                break;
+            case DOUBLE:
+                type = DataBuffer.TypeEx.DOUBLE;
+                break;
+            default:
+                return;
+        }
+
+        //Conversion is done on the whole buffer: views are copied first
+        INDArray target = array.isView() ? array.dup() : array;
+
+        if (isCpuBackend()) {
+            roundToHalfHost(target, type);
+        } else {
+            //Host memory may be stale: round trip through the backend's FP16 compression instead
+            target.assign(Nd4j.getCompressor().decompress(Nd4j.getCompressor().compress(target, "FLOAT16")));
+        }
+
+        if (target != array) {
+            array.assign(target);
+        }
+    }
+
+    private static void roundToHalfHost(INDArray target, DataBuffer.TypeEx type) {
+        long length = target.length();
+        int bufferLength = (int) Math.min(length, MAX_HALF_BUFFER_LENGTH);
+        ShortPointer half = HALF_BUFFER.get();
+        if (half == null || half.capacity() < bufferLength) {
+            if (half != null) {
+                half.deallocate();
+            }
+            half = new ShortPointer(bufferLength);
+            HALF_BUFFER.set(half);
+        }
+
+        NDArrayFactory factory = Nd4j.getNDArrayFactory();
+        DataBuffer data = target.data();
+        for (long offset = 0; offset < length; offset += bufferLength) {
+            long n = Math.min(bufferLength, length - offset);
+            DataBuffer chunk = n == length ? data : Nd4j.createBuffer(data, offset, n);
+            factory.convertDataEx(type, chunk.addressPointer(), DataBuffer.TypeEx.FLOAT16, half, n);
+            factory.convertDataEx(DataBuffer.TypeEx.FLOAT16, half, type, chunk.addressPointer(), n);
+        }
+    }
+
+    private static boolean isCpuBackend() {
+        if (cpuBackend == null) {
+            String backend = Nd4j.getExecutioner().getEnvironmentInformation().getProperty("backend");
+            cpuBackend = "CPU".equalsIgnoreCase(backend);
+        }
+        return cpuBackend;
+    }
+}
@@ -16,11 +16,14 @@
 
 package org.deeplearning4j.util;
 
+import com.google.common.collect.MapMaker;
 import com.google.common.io.Files;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.nn.api.Updater;
@@ -28,8 +31,10 @@ import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.updater.UpdaterStateLoader;
 import org.deeplearning4j.nn.updater.graph.ComputationGraphUpdater;
 import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataBuffer;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
 import org.nd4j.linalg.dataset.api.preprocessor.DataNormalization;
@@ -37,12 +42,20 @@ import org.nd4j.linalg.dataset.api.preprocessor.Normalizer;
 import org.nd4j.linalg.dataset.api.preprocessor.serializer.NormalizerSerializer;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.heartbeat.reports.Task;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.primitives.Pair;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.ReadOnlyFileSystemException;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -62,6 +75,16 @@ public class ModelSerializer {
     public static final String NO_PARAMS_MARKER = "noParams.marker";
     public static final String PREPROCESSOR_BIN = "preprocessor.bin";
 
+    //Uncompressed parameters format: see writeRawParams
+    private static final byte[] RAW_PARAMS_MAGIC = "DL4JRAWP".getBytes(StandardCharsets.US_ASCII);
+    private static final int RAW_PARAMS_VERSION = 1;
+    private static final int RAW_PARAMS_HEADER_BYTES = 64;
+    private static final int RAW_PARAMS_ALIGNMENT = 64;
+    private static final short RAW_PARAMS_ALIGNMENT_EXTRA_ID = (short) 0xD935;
+    private static final int RAW_PARAMS_CHUNK = 1 << 22;
+    private static final Map<DataBuffer, MappedByteBuffer> MAPPED_BUFFERS =
+            new MapMaker().weakKeys().concurrencyLevel(1).makeMap();
+
     private ModelSerializer() {}
 
     /**
@@ -86,8 +109,25 @@ public class ModelSerializer {
      * @throws IOException
      */
     public static void writeModel(@NonNull Model model, @NonNull File file, boolean saveUpdater,DataNormalization dataNormalization) throws IOException {
+        writeModel(model, file, saveUpdater, dataNormalization, false);
+    }
+
+    /**
+     * Write a model to a file
+     * @param model the model to write
+     * @param file the file to write to
+     * @param saveUpdater whether to save the updater or not
+     * @param dataNormalization the normalizer to save (optional)
+     * @param uncompressedParams If true: store the parameters uncompressed, in native byte order and aligned within the
+     *                           file, so they can be memory mapped by {@link #restoreMultiLayerNetworkMemoryMapped(File)}
+     *                           and {@link #restoreComputationGraphMemoryMapped(File)}. Files written this way are
+     *                           larger, but faster to load. They can also be loaded by the other restore methods
+     * @throws IOException
+     */
+    public static void writeModel(@NonNull Model model, @NonNull File file, boolean saveUpdater,
+                                  DataNormalization dataNormalization, boolean uncompressedParams) throws IOException {
         try (BufferedOutputStream stream = new BufferedOutputStream(new FileOutputStream(file))) {
-            writeModel(model, stream, saveUpdater,dataNormalization);
+            writeModel(model, stream, saveUpdater, dataNormalization, uncompressedParams);
         }
     }
 
@@ -131,52 +171,95 @@ public class ModelSerializer {
      */
     public static void writeModel(@NonNull Model model, @NonNull OutputStream stream, boolean saveUpdater,DataNormalization dataNormalization)
             throws IOException {
-        ZipOutputStream zipfile = new ZipOutputStream(new CloseShieldOutputStream(stream));
+        writeModel(model, stream, saveUpdater, dataNormalization, false);
+    }
 
-        // Save configuration as JSON
+    /**
+     * Write a model to an output stream
+     * @param model the model to save
+     * @param stream the output stream to write to
+     * @param saveUpdater whether to save the updater for the model or not
+     * @param dataNormalization the normalizer ot save (may be null)
+     * @param uncompressedParams If true: store the parameters uncompressed and aligned, so they can be memory mapped.
+     *                           See {@link #writeModel(Model, File, boolean, DataNormalization, boolean)}
+     * @throws IOException
+     */
+    public static void writeModel(@NonNull Model model, @NonNull OutputStream stream, boolean saveUpdater,
+                                  DataNormalization dataNormalization, boolean uncompressedParams) throws IOException {
         String json = "";
         if (model instanceof MultiLayerNetwork) {
             json = ((MultiLayerNetwork) model).getLayerWiseConfigurations().toJson();
         } else if (model instanceof ComputationGraph) {
             json = ((ComputationGraph) model).getConfiguration().toJson();
         }
-        ZipEntry config = new ZipEntry(CONFIGURATION_JSON);
-        zipfile.putNextEntry(config);
-        zipfile.write(json.getBytes());
-
-        // Save parameters as binary
-        ZipEntry coefficients = new ZipEntry(COEFFICIENTS_BIN);
-        zipfile.putNextEntry(coefficients);
-        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(zipfile));
-        INDArray params = model.params();
-        if(params != null) {
-            try {
-                Nd4j.write(model.params(), dos);
-            } finally {
-                dos.flush();
-            }
-        } else {
-            ZipEntry noParamsMarker = new ZipEntry(NO_PARAMS_MARKER);
-            zipfile.putNextEntry(noParamsMarker);
-        }
 
+        INDArray updaterState = null;
         if (saveUpdater) {
-            INDArray updaterState = null;
             if (model instanceof MultiLayerNetwork) {
                 updaterState = ((MultiLayerNetwork) model).getUpdater().getStateViewArray();
             } else if (model instanceof ComputationGraph) {
                 updaterState = ((ComputationGraph) model).getUpdater().getStateViewArray();
             }
+        }
 
-            if (updaterState != null && updaterState.length() > 0) {
-                ZipEntry updater = new ZipEntry(UPDATER_BIN);
-                zipfile.putNextEntry(updater);
+        writeModel(json, model.params(), updaterState, stream, dataNormalization, uncompressedParams);
+    }
 
+    /**
+     * Write a model, given its configuration, parameters and updater state. This can be used to write a snapshot of a
+     * model taken earlier (for example, during training - see
+     * {@link org.deeplearning4j.optimize.listeners.CheckpointListener}) without access to the model itself.<br>
+     * The resulting file can be restored in the same way as for {@link #writeModel(Model, OutputStream, boolean)}
+     *
+     * @param configJson         the model configuration, as JSON: {@link MultiLayerConfiguration#toJson()} or
+     *                           {@link ComputationGraphConfiguration#toJson()}
+     * @param params             the flattened parameters of the model. May be null (model without parameters)
+     * @param updaterState       the updater state view array. May be null (updater is not saved)
+     * @param stream             the output stream to write to
+     * @param dataNormalization  the normalizer to save (may be null)
+     * @param uncompressedParams If true: store the parameters uncompressed and aligned, so they can be memory mapped.
+     *                           See {@link #writeModel(Model, File, boolean, DataNormalization, boolean)}
+     * @throws IOException
+     */
+    public static void writeModel(@NonNull String configJson, INDArray params, INDArray updaterState,
+                                  @NonNull OutputStream stream, DataNormalization dataNormalization,
+                                  boolean uncompressedParams) throws IOException {
+        //Count bytes written, to align the uncompressed parameters relative to the start of the file
+        CountingOutputStream counting = new CountingOutputStream(new CloseShieldOutputStream(stream));
+        ZipOutputStream zipfile = new ZipOutputStream(counting);
+
+        // Save configuration as JSON
+        ZipEntry config = new ZipEntry(CONFIGURATION_JSON);
+        zipfile.putNextEntry(config);
+        zipfile.write(configJson.getBytes());
+
+        // Save parameters as binary
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(zipfile));
+        if (params != null && uncompressedParams) {
+            writeRawParams(zipfile, counting, params);
+        } else {
+            ZipEntry coefficients = new ZipEntry(COEFFICIENTS_BIN);
+            zipfile.putNextEntry(coefficients);
+            if (params != null) {
                 try {
-                    Nd4j.write(updaterState, dos);
+                    Nd4j.write(params, dos);
                 } finally {
                     dos.flush();
                 }
+            } else {
+                ZipEntry noParamsMarker = new ZipEntry(NO_PARAMS_MARKER);
+                zipfile.putNextEntry(noParamsMarker);
+            }
+        }
+
+        if (updaterState != null && updaterState.length() > 0) {
+            ZipEntry updater = new ZipEntry(UPDATER_BIN);
+            zipfile.putNextEntry(updater);
+
+            try {
+                Nd4j.write(updaterState, dos);
+            } finally {
+                dos.flush();
             }
         }
 
@@ -213,6 +296,32 @@ public class ModelSerializer {
      */
     public static MultiLayerNetwork restoreMultiLayerNetwork(@NonNull File file, boolean loadUpdater)
             throws IOException {
+        return restoreMultiLayerNetworkHelper(file, loadUpdater, false);
+    }
+
+    /**
+     * Load a multi layer network from a file, memory mapping the parameters if possible. This requires the model to have
+     * been saved with uncompressed parameters - see {@link #writeModel(Model, File, boolean, DataNormalization, boolean)}.
+     * The parameters are then used directly from the file (via the OS page cache), without being copied: startup time
+     * and memory use are much lower for large models. The mapping is private (copy on write): the network can still be
+     * trained, and the file is never modified.<br>
+     * The updater state (if present) is loaded only when the updater is first created, usually when training resumes.
+     * Consequently, the file should not be deleted or modified while the network is in use.<br>
+     * Models saved in the standard (compressed) format, with parameters of a different data type or byte order to
+     * the current environment, or in a file that can't be opened for writing (required for private mappings) are
+     * loaded as per {@link #restoreMultiLayerNetwork(File)}, with lazy loading of the
+     * updater state.
+     *
+     * @param file the file to load from
+     * @return the loaded multi layer network
+     * @throws IOException
+     */
+    public static MultiLayerNetwork restoreMultiLayerNetworkMemoryMapped(@NonNull File file) throws IOException {
+        return restoreMultiLayerNetworkHelper(file, true, true);
+    }
+
+    private static MultiLayerNetwork restoreMultiLayerNetworkHelper(@NonNull File file, boolean loadUpdater,
+                                                                    boolean memoryMapped) throws IOException {
         ZipFile zipFile = new ZipFile(file);
 
         boolean gotConfig = false;
@@ -249,11 +358,12 @@ public class ModelSerializer {
         ZipEntry coefficients = zipFile.getEntry(COEFFICIENTS_BIN);
         if (coefficients != null ) {
             if(coefficients.getSize() > 0) {
-                InputStream stream = zipFile.getInputStream(coefficients);
-                DataInputStream dis = new DataInputStream(new BufferedInputStream(stream));
-                params = Nd4j.read(dis);
-
-                dis.close();
+                params = (memoryMapped ? mapRawParams(file) : null);
+                if (params == null) {
+                    InputStream stream = zipFile.getInputStream(coefficients);
+                    params = readParams(stream);
+                    stream.close();
+                }
                 gotCoefficients = true;
             } else {
                 ZipEntry noParamsMarker = zipFile.getEntry(NO_PARAMS_MARKER);
@@ -261,7 +371,9 @@ public class ModelSerializer {
             }
         }
 
-        if (loadUpdater) {
+        //Memory mapped: updater state is loaded only when the updater is created
+        boolean lazyUpdaterState = memoryMapped && loadUpdater && zipFile.getEntry(UPDATER_BIN) != null;
+        if (loadUpdater && !memoryMapped) {
             ZipEntry updaterStateEntry = zipFile.getEntry(UPDATER_BIN);
             if (updaterStateEntry != null) {
                 InputStream stream = zipFile.getInputStream(updaterStateEntry);
@@ -315,6 +427,8 @@ public class ModelSerializer {
 
             if (gotUpdaterState && updaterState != null) {
                 network.getUpdater().setStateViewArray(network, updaterState, false);
+            } else if (lazyUpdaterState) {
+                network.setUpdaterStateLoader(new ZipUpdaterStateLoader(file));
             }
             return network;
         } else
@@ -539,6 +653,23 @@ public class ModelSerializer {
      * @throws IOException
      */
     public static ComputationGraph restoreComputationGraph(@NonNull File file, boolean loadUpdater) throws IOException {
+        return restoreComputationGraphHelper(file, loadUpdater, false);
+    }
+
+    /**
+     * Load a computation graph from a file, memory mapping the parameters if possible. See
+     * {@link #restoreMultiLayerNetworkMemoryMapped(File)} for details.
+     *
+     * @param file the file to load from
+     * @return the loaded computation graph
+     * @throws IOException
+     */
+    public static ComputationGraph restoreComputationGraphMemoryMapped(@NonNull File file) throws IOException {
+        return restoreComputationGraphHelper(file, true, true);
+    }
+
+    private static ComputationGraph restoreComputationGraphHelper(@NonNull File file, boolean loadUpdater,
+                                                                  boolean memoryMapped) throws IOException {
         ZipFile zipFile = new ZipFile(file);
 
         boolean gotConfig = false;
@@ -574,11 +705,12 @@ public class ModelSerializer {
         ZipEntry coefficients = zipFile.getEntry(COEFFICIENTS_BIN);
         if (coefficients != null) {
             if(coefficients.getSize() > 0) {
-                InputStream stream = zipFile.getInputStream(coefficients);
-                DataInputStream dis = new DataInputStream(new BufferedInputStream(stream));
-                params = Nd4j.read(dis);
-
-                dis.close();
+                params = (memoryMapped ? mapRawParams(file) : null);
+                if (params == null) {
+                    InputStream stream = zipFile.getInputStream(coefficients);
+                    params = readParams(stream);
+                    stream.close();
+                }
                 gotCoefficients = true;
             } else {
                 ZipEntry noParamsMarker = zipFile.getEntry(NO_PARAMS_MARKER);
@@ -587,7 +719,9 @@ public class ModelSerializer {
         }
 
 
-        if (loadUpdater) {
+        //Memory mapped: updater state is loaded only when the updater is created
+        boolean lazyUpdaterState = memoryMapped && loadUpdater && zipFile.getEntry(UPDATER_BIN) != null;
+        if (loadUpdater && !memoryMapped) {
             ZipEntry updaterStateEntry = zipFile.getEntry(UPDATER_BIN);
             if (updaterStateEntry != null) {
                 InputStream stream = zipFile.getInputStream(updaterStateEntry);
@@ -644,6 +778,8 @@ public class ModelSerializer {
 
             if (gotUpdaterState && updaterState != null) {
                 cg.getUpdater().setStateViewArray(updaterState);
+            } else if (lazyUpdaterState) {
+                cg.setUpdaterStateLoader(new ZipUpdaterStateLoader(file));
             }
             return cg;
         } else
@@ -966,6 +1102,228 @@ public class ModelSerializer {
     }
 
 
+    /**
+     * Write the parameters as an uncompressed (stored) zip entry: a {@link #RAW_PARAMS_HEADER_BYTES} byte header, followed
+     * by the raw parameter values in native byte order. The entry data is aligned to {@link #RAW_PARAMS_ALIGNMENT} bytes
+     * relative to the start of the stream, using padding in the local file header's extra field
+     */
+    private static void writeRawParams(ZipOutputStream zipfile, CountingOutputStream counting, INDArray params)
+            throws IOException {
+        INDArray flat = params.reshape(1, params.length());
+        ByteBuffer header = ByteBuffer.allocate(RAW_PARAMS_HEADER_BYTES);
+        header.put(RAW_PARAMS_MAGIC);
+        header.putInt(RAW_PARAMS_VERSION);
+        header.putInt(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0);
+        header.putInt(flat.data().dataType().ordinal());
+        header.putInt(0);
+        header.putLong(flat.length());
+        byte[] headerBytes = header.array();
+
+        //Stored entries need the size and CRC before the entry is written
+        CRC32 crc = new CRC32();
+        crc.update(headerBytes);
+        long size = headerBytes.length + writeRawChunks(flat, crc, null);
+
+        byte[] name = COEFFICIENTS_BIN.getBytes(StandardCharsets.UTF_8);
+        zipfile.closeEntry();
+        //Local file header: 30 bytes + name + extra (+ 20 bytes zip64 extra for large entries)
+        long dataStart = counting.getByteCount() + 30 + name.length + 4 + (size >= 0xFFFFFFFFL ? 20 : 0);
+        int padding = (int) ((RAW_PARAMS_ALIGNMENT - dataStart % RAW_PARAMS_ALIGNMENT) % RAW_PARAMS_ALIGNMENT);
+        ByteBuffer extra = ByteBuffer.allocate(4 + padding).order(ByteOrder.LITTLE_ENDIAN);
+        extra.putShort(RAW_PARAMS_ALIGNMENT_EXTRA_ID);
+        extra.putShort((short) padding);
+
+        ZipEntry coefficients = new ZipEntry(COEFFICIENTS_BIN);
+        coefficients.setMethod(ZipEntry.STORED);
+        coefficients.setSize(size);
+        coefficients.setCompressedSize(size);
+        coefficients.setCrc(crc.getValue());
+        coefficients.setExtra(extra.array());
+        zipfile.putNextEntry(coefficients);
+        zipfile.write(headerBytes);
+        writeRawChunks(flat, null, zipfile);
+        zipfile.closeEntry();
+    }
+
+    /**
+     * Copy the raw bytes of the (row vector) parameters in chunks, either to the CRC or the output stream
+     *
+     * @return Number of bytes
+     */
+    private static long writeRawChunks(INDArray flat, CRC32 crc, OutputStream os) throws IOException {
+        long length = flat.length();
+        long bytes = 0;
+        byte[] buffer = null;
+        for (long start = 0; start < length; start += RAW_PARAMS_CHUNK) {
+            long end = Math.min(length, start + RAW_PARAMS_CHUNK);
+            INDArray chunk = flat.get(NDArrayIndex.point(0), NDArrayIndex.interval(start, end)).dup();
+            ByteBuffer bb = chunk.data().asNio();
+            int n = (int) (chunk.length() * chunk.data().getElementSize());
+            if (buffer == null || buffer.length < n) {
+                buffer = new byte[n];
+            }
+            bb.position(0);
+            bb.get(buffer, 0, n);
+            if (crc != null) {
+                crc.update(buffer, 0, n);
+            }
+            if (os != null) {
+                os.write(buffer, 0, n);
+            }
+            bytes += n;
+        }
+        return bytes;
+    }
+
+    /**
+     * Parse the header of uncompressed parameters
+     *
+     * @return [byte order (1 = little endian), data type ordinal, length], or null if not an uncompressed parameters header
+     */
+    private static long[] parseRawParamsHeader(ByteBuffer header) {
+        if (header.remaining() < RAW_PARAMS_HEADER_BYTES) {
+            return null;
+        }
+        byte[] magic = new byte[RAW_PARAMS_MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, RAW_PARAMS_MAGIC) || header.getInt() != RAW_PARAMS_VERSION) {
+            return null;
+        }
+        long order = header.getInt();
+        long dataType = header.getInt();
+        header.getInt();
+        long length = header.getLong();
+        return new long[] {order, dataType, length};
+    }
+
+    /**
+     * Read the parameters from the coefficients entry: either uncompressed parameters (copied into a new array), or
+     * the standard {@link Nd4j#write(INDArray, DataOutputStream)} format
+     */
+    private static INDArray readParams(InputStream stream) throws IOException {
+        BufferedInputStream bis = new BufferedInputStream(stream);
+        bis.mark(RAW_PARAMS_HEADER_BYTES);
+        byte[] headerBytes = new byte[RAW_PARAMS_HEADER_BYTES];
+        int read = IOUtils.read(bis, headerBytes);
+        long[] header = parseRawParamsHeader(ByteBuffer.wrap(headerBytes, 0, read));
+        if (header == null) {
+            bis.reset();
+            return Nd4j.read(new DataInputStream(bis));
+        }
+
+        ByteOrder order = (header[0] == 1 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        DataBuffer.Type type = DataBuffer.Type.values()[(int) header[1]];
+        long length = header[2];
+        if (type != DataBuffer.Type.FLOAT && type != DataBuffer.Type.DOUBLE) {
+            throw new IOException("Unsupported data type for uncompressed parameters: " + type);
+        }
+        int elementSize = (type == DataBuffer.Type.DOUBLE ? 8 : 4);
+        INDArray params = Nd4j.createUninitialized(new long[] {1, length}, 'c');
+        byte[] buffer = new byte[(int) Math.min(length, RAW_PARAMS_CHUNK) * elementSize];
+        for (long start = 0; start < length; start += RAW_PARAMS_CHUNK) {
+            int n = (int) Math.min(length - start, RAW_PARAMS_CHUNK);
+            IOUtils.readFully(bis, buffer, 0, n * elementSize);
+            ByteBuffer bb = ByteBuffer.wrap(buffer, 0, n * elementSize).order(order);
+            INDArray chunk;
+            if (type == DataBuffer.Type.DOUBLE) {
+                double[] d = new double[n];
+                bb.asDoubleBuffer().get(d);
+                chunk = Nd4j.create(d, new int[] {1, n});
+            } else {
+                float[] f = new float[n];
+                bb.asFloatBuffer().get(f);
+                chunk = Nd4j.create(f, new int[] {1, n});
+            }
+            params.get(NDArrayIndex.point(0), NDArrayIndex.interval(start, start + n)).assign(chunk);
+        }
+        return params;
+    }
+
+    /**
+     * Memory map the uncompressed parameters of the specified model file, without copying them
+     *
+     * @return The parameters, or null if the file does not contain uncompressed parameters that can be used directly
+     * (different data type or byte order, or too large to map as a single buffer), or if the file can't be opened for
+     * writing
+     */
+    private static INDArray mapRawParams(File file) throws IOException {
+        long dataOffset;
+        try (org.apache.commons.compress.archivers.zip.ZipFile zf =
+                     new org.apache.commons.compress.archivers.zip.ZipFile(file)) {
+            ZipArchiveEntry entry = zf.getEntry(COEFFICIENTS_BIN);
+            if (entry == null || entry.getMethod() != ZipEntry.STORED) {
+                return null;
+            }
+            dataOffset = entry.getDataOffset();
+        }
+
+        //Private (copy on write) mappings need a channel opened for writing, even though the file is never written to
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (AccessDeniedException | ReadOnlyFileSystemException e) {
+            log.debug("Cannot memory map parameters: file {} is not writable - copying instead", file);
+            return null;
+        }
+        try {
+            ByteBuffer headerBytes = ByteBuffer.allocate(RAW_PARAMS_HEADER_BYTES);
+            while (headerBytes.hasRemaining() && channel.read(headerBytes, dataOffset + headerBytes.position()) > 0) {
+                //Read full header
+            }
+            headerBytes.flip();
+            long[] header = parseRawParamsHeader(headerBytes);
+            if (header == null) {
+                return null;
+            }
+            boolean nativeOrder = (header[0] == 1) == (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN);
+            DataBuffer.Type type = DataBuffer.Type.values()[(int) header[1]];
+            long length = header[2];
+            long bytes = length * (type == DataBuffer.Type.DOUBLE ? 8 : 4);
+            if (!nativeOrder || type != Nd4j.dataType() || bytes > Integer.MAX_VALUE) {
+                log.debug("Cannot memory map parameters (byte order: {}, data type: {}, length: {}) - copying instead",
+                        (header[0] == 1 ? "little endian" : "big endian"), type, length);
+                return null;
+            }
+
+            //Private (copy on write) mapping: in-place modification of the parameters never modifies the file
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.PRIVATE,
+                    dataOffset + RAW_PARAMS_HEADER_BYTES, bytes);
+            mapped.order(ByteOrder.nativeOrder());
+            DataBuffer buffer = Nd4j.createBuffer(mapped, type, (int) length);
+            //The mapping is released when the MappedByteBuffer is garbage collected: keep it reachable from the buffer
+            MAPPED_BUFFERS.put(buffer, mapped);
+            return Nd4j.create(buffer, new long[] {1, length});
+        } finally {
+            //The mapping remains valid after the channel is closed
+            channel.close();
+        }
+    }
+
+    /**
+     * Loads the updater state from a model file on demand
+     */
+    private static class ZipUpdaterStateLoader implements UpdaterStateLoader {
+        private final File file;
+
+        private ZipUpdaterStateLoader(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public INDArray loadUpdaterState() throws IOException {
+            try (ZipFile zipFile = new ZipFile(file)) {
+                ZipEntry updaterStateEntry = zipFile.getEntry(UPDATER_BIN);
+                if (updaterStateEntry == null) {
+                    return null;
+                }
+                try (DataInputStream dis = new DataInputStream(
+                        new BufferedInputStream(zipFile.getInputStream(updaterStateEntry)))) {
+                    return Nd4j.read(dis);
+                }
+            }
+        }
+    }
+
     private static void checkInputStream(InputStream inputStream) throws IOException {
 
         /*
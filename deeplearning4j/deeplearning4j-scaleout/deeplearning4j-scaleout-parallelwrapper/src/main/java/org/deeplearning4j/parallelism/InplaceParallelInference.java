@@ -31,6 +31,7 @@ import org.nd4j.linalg.factory.Nd4j;
 
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
@@ -95,6 +96,20 @@ public class InplaceParallelInference extends ParallelInference {
         return selector.output(input, inputMasks);
     }
 
+    /**
+     * Inference happens in the calling thread in this implementation, so returned future is already completed
+     */
+    @Override
+    protected CompletableFuture<INDArray[]> submitAsync(INDArray[] input, INDArray[] inputMasks, long deadline) {
+        CompletableFuture<INDArray[]> future = new CompletableFuture<>();
+        try {
+            future.complete(output(input, inputMasks));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
 
     protected static class ModelSelector {
         // this map stores collection of shared
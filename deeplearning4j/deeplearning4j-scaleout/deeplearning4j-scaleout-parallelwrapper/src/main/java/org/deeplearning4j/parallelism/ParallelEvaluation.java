@@ -0,0 +1,426 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.commons.lang3.SerializationUtils;
+import org.deeplearning4j.datasets.iterator.ExistingDataSetIterator;
+import org.deeplearning4j.eval.*;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Multi-threaded evaluation of a {@link MultiLayerNetwork} or {@link ComputationGraph}.<br>
+ * Minibatches from the iterator are distributed across a number of worker threads, each with its own copy of the
+ * model (sharing the parameters of the original model, on the same device) and its own copy of each
+ * {@link IEvaluation}. Once all data has been processed, the per-worker evaluations are merged into the evaluations
+ * passed in, using {@link IEvaluation#merge(IEvaluation)}.<br>
+ * Results are the same as for the single threaded {@link MultiLayerNetwork#doEvaluation(DataSetIterator, IEvaluation[])}
+ * and {@link ComputationGraph#doEvaluation(DataSetIterator, IEvaluation[])}, though the order in which minibatches are
+ * evaluated is not defined.<br>
+ * <br>
+ * Usage:
+ * <pre>
+ * {@code ParallelEvaluation pe = new ParallelEvaluation.Builder(net)
+ *          .workers(8)
+ *          .build();
+ *   Evaluation e = pe.evaluate(testIter);
+ * }
+ * </pre>
+ * PLEASE NOTE: the parameters of the model must not be modified while evaluation is in progress
+ */
+@Slf4j
+public class ParallelEvaluation {
+    public final static int DEFAULT_NUM_WORKERS = Runtime.getRuntime().availableProcessors();
+    public final static int DEFAULT_QUEUE_LIMIT = 16;
+
+    protected Model model;
+    protected int workers;
+    protected int queueLimit;
+
+    protected ParallelEvaluation(Builder builder) {
+        this.model = builder.model;
+        this.workers = builder.workers;
+        this.queueLimit = builder.queueLimit;
+
+        if (!(model instanceof MultiLayerNetwork) && !(model instanceof ComputationGraph))
+            throw new IllegalArgumentException("Only MultiLayerNetwork and ComputationGraph models are supported: got "
+                            + model.getClass());
+    }
+
+    /**
+     * Evaluate the network (classification performance), in parallel
+     *
+     * @param iterator Data to evaluate on
+     * @return Evaluation object, summarizing the results of the evaluation
+     */
+    public Evaluation evaluate(@NonNull DataSetIterator iterator) {
+        return doEvaluation(iterator, new Evaluation(iterator.getLabels()))[0];
+    }
+
+    /**
+     * Evaluate the network (regression performance), in parallel
+     *
+     * @param iterator Data to evaluate on
+     * @return Regression evaluation
+     */
+    public RegressionEvaluation evaluateRegression(@NonNull DataSetIterator iterator) {
+        return doEvaluation(iterator, new RegressionEvaluation())[0];
+    }
+
+    /**
+     * Evaluate the network (must be a binary classifier) on the specified data, in parallel, using the {@link ROC} class
+     *
+     * @param iterator          Data to evaluate on
+     * @param rocThresholdSteps Number of threshold steps to use with {@link ROC}
+     * @return ROC evaluation on the given dataset
+     */
+    public ROC evaluateROC(@NonNull DataSetIterator iterator, int rocThresholdSteps) {
+        return doEvaluation(iterator, new ROC(rocThresholdSteps))[0];
+    }
+
+    /**
+     * Evaluate the network on the specified data, in parallel, using the {@link ROCMultiClass} class
+     *
+     * @param iterator          Data to evaluate on
+     * @param rocThresholdSteps Number of threshold steps to use with {@link ROCMultiClass}
+     * @return Multi-class ROC evaluation on the given dataset
+     */
+    public ROCMultiClass evaluateROCMultiClass(@NonNull DataSetIterator iterator, int rocThresholdSteps) {
+        return doEvaluation(iterator, new ROCMultiClass(rocThresholdSteps))[0];
+    }
+
+    /**
+     * Perform evaluation in parallel, using arbitrary IEvaluation instances. Results are merged into (and returned in)
+     * the provided evaluation instances.
+     *
+     * @param iterator    Data to evaluate on
+     * @param evaluations IEvaluation instances to perform evaluation with
+     */
+    public <T extends IEvaluation> T[] doEvaluation(@NonNull DataSetIterator iterator, @NonNull T... evaluations) {
+        if (!iterator.hasNext() && iterator.resetSupported())
+            iterator.reset();
+        return doEvaluationHelper(iterator, false, evaluations);
+    }
+
+    /**
+     * Perform evaluation in parallel, using arbitrary IEvaluation instances. Results are merged into (and returned in)
+     * the provided evaluation instances. Only supported for ComputationGraph models.
+     *
+     * @param iterator    Data to evaluate on
+     * @param evaluations IEvaluation instances to perform evaluation with
+     */
+    public <T extends IEvaluation> T[] doEvaluation(@NonNull MultiDataSetIterator iterator, @NonNull T... evaluations) {
+        if (!(model instanceof ComputationGraph))
+            throw new IllegalStateException("Evaluation using a MultiDataSetIterator is only supported for "
+                            + "ComputationGraph models");
+        if (!iterator.hasNext() && iterator.resetSupported())
+            iterator.reset();
+        return doEvaluationHelper(iterator, true, evaluations);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected <T extends IEvaluation> T[] doEvaluationHelper(final Iterator<?> iterator, final boolean multiDataSet,
+                    T[] evaluations) {
+        final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(queueLimit);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Object terminator = new Object();
+
+        Model[] replicas = createReplicas();
+        final List<IEvaluation[]> workerEvaluations = new ArrayList<>();
+        Thread[] threads = new Thread[workers];
+        int numDevices = Nd4j.getAffinityManager().getNumberOfDevices();
+        boolean completed = false;
+        try {
+            for (int i = 0; i < workers; i++) {
+                final Model replica = replicas[i];
+                final IEvaluation[] evals = new IEvaluation[evaluations.length];
+                for (int j = 0; j < evaluations.length; j++) {
+                    evals[j] = SerializationUtils.clone(evaluations[j]);
+                    evals[j].reset();
+                }
+                workerEvaluations.add(evals);
+
+                threads[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            QueueIterator<Object> it = new QueueIterator<>(queue, terminator);
+                            if (multiDataSet) {
+                                ((ComputationGraph) replica).doEvaluation(new QueueMultiDataSetIterator(it), evals);
+                            } else if (replica instanceof MultiLayerNetwork) {
+                                ((MultiLayerNetwork) replica).doEvaluation(new ExistingDataSetIterator(
+                                                (Iterator<org.nd4j.linalg.dataset.DataSet>) (Iterator<?>) it), evals);
+                            } else {
+                                ((ComputationGraph) replica).doEvaluation(new ExistingDataSetIterator(
+                                                (Iterator<org.nd4j.linalg.dataset.DataSet>) (Iterator<?>) it), evals);
+                            }
+                        } catch (Throwable t) {
+                            log.error("Error during parallel evaluation", t);
+                            error.compareAndSet(null, t);
+                        }
+                    }
+                }, "ParallelEvaluation-worker-" + i);
+                threads[i].setDaemon(true);
+                Nd4j.getAffinityManager().attachThreadToDevice(threads[i], i % numDevices);
+                threads[i].start();
+            }
+
+            //Feed the workers from the calling thread, until the data is exhausted (or a worker fails)
+            while (iterator.hasNext() && error.get() == null) {
+                Object next = iterator.next();
+                while (!queue.offer(next, 100, TimeUnit.MILLISECONDS)) {
+                    if (error.get() != null)
+                        break;
+                }
+            }
+            for (int i = 0; i < workers && error.get() == null; i++) {
+                while (!queue.offer(terminator, 100, TimeUnit.MILLISECONDS)) {
+                    if (error.get() != null)
+                        break;
+                }
+            }
+            if (error.get() == null) {
+                for (Thread t : threads)
+                    t.join();
+                completed = true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted during parallel evaluation", e);
+        } finally {
+            if (!completed) {
+                //Worker failure, or exception on the calling thread (iterator, interruption): stop all workers, which
+                //may be waiting for data that will never arrive, so that the threads and replicas are released
+                queue.clear();
+                for (Thread t : threads) {
+                    if (t != null)
+                        t.interrupt();
+                }
+            }
+        }
+
+        if (error.get() != null)
+            throw new RuntimeException("Error during parallel evaluation", error.get());
+
+        for (IEvaluation[] evals : workerEvaluations) {
+            for (int j = 0; j < evaluations.length; j++)
+                evaluations[j].merge(evals[j]);
+        }
+
+        return evaluations;
+    }
+
+    /**
+     * Create one copy of the model per worker. Copies share the parameters of the original model on the same device;
+     * parameters are replicated once for each other device
+     */
+    protected Model[] createReplicas() {
+        int currentDevice = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+        int numDevices = Nd4j.getAffinityManager().getNumberOfDevices();
+        Map<Integer, INDArray> deviceParams = new HashMap<>();
+
+        Model[] replicas = new Model[workers];
+        for (int i = 0; i < workers; i++) {
+            int device = i % numDevices;
+            INDArray params = deviceParams.get(device);
+            if (params == null) {
+                if (device == currentDevice) {
+                    params = model.params();
+                } else {
+                    params = model.params().unsafeDuplication(true);
+                    Nd4j.getAffinityManager().replicateToDevice(device, params);
+                }
+                deviceParams.put(device, params);
+            }
+
+            if (model instanceof ComputationGraph) {
+                val replica = new ComputationGraph(((ComputationGraph) model).getConfiguration().clone());
+                replica.init(params, false);
+                replicas[i] = replica;
+            } else {
+                val replica = new MultiLayerNetwork(((MultiLayerNetwork) model).getLayerWiseConfigurations().clone());
+                replica.init(params, false);
+                replicas[i] = replica;
+            }
+        }
+        Nd4j.getExecutioner().commit();
+
+        return replicas;
+    }
+
+    /**
+     * Iterator over the shared work queue: blocks until the next element is available, and terminates when the
+     * terminator object is taken from the queue
+     */
+    protected static class QueueIterator<T> implements Iterator<T> {
+        private final BlockingQueue<T> queue;
+        private final Object terminator;
+        private T next;
+        private boolean done;
+
+        protected QueueIterator(BlockingQueue<T> queue, Object terminator) {
+            this.queue = queue;
+            this.terminator = terminator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (done)
+                return false;
+            if (next != null)
+                return true;
+            try {
+                T t = queue.take();
+                if (t == terminator) {
+                    done = true;
+                    return false;
+                }
+                next = t;
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            T t = next;
+            next = null;
+            return t;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    protected static class QueueMultiDataSetIterator implements MultiDataSetIterator {
+        private final Iterator<?> iterator;
+
+        protected QueueMultiDataSetIterator(Iterator<?> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public MultiDataSet next(int num) {
+            throw new UnsupportedOperationException("next(int) isn't supported");
+        }
+
+        @Override
+        public void setPreProcessor(MultiDataSetPreProcessor preProcessor) {
+            throw new UnsupportedOperationException("Preprocessors are applied by the source iterator");
+        }
+
+        @Override
+        public MultiDataSetPreProcessor getPreProcessor() {
+            return null;
+        }
+
+        @Override
+        public boolean resetSupported() {
+            return false;
+        }
+
+        @Override
+        public boolean asyncSupported() {
+            //Already prefetched by the calling thread
+            return false;
+        }
+
+        @Override
+        public void reset() {
+            throw new UnsupportedOperationException("Reset is not supported");
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public MultiDataSet next() {
+            return (MultiDataSet) iterator.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    public static class Builder {
+        private Model model;
+        private int workers = DEFAULT_NUM_WORKERS;
+        private int queueLimit = DEFAULT_QUEUE_LIMIT;
+
+        public Builder(@NonNull Model model) {
+            this.model = model;
+        }
+
+        /**
+         * Number of worker threads (each with its own copy of the model) to use for evaluation. Defaults to the number
+         * of available processors
+         *
+         * @param workers Number of workers
+         */
+        public Builder workers(int workers) {
+            if (workers < 1)
+                throw new IllegalStateException("Workers should be positive value");
+
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * Maximum number of minibatches waiting to be evaluated by the workers. Larger values smooth out variations
+         * in iterator and evaluation time, at the cost of memory.
+         *
+         * @param queueLimit Maximum number of queued minibatches
+         */
+        public Builder queueLimit(int queueLimit) {
+            if (queueLimit < 1)
+                throw new IllegalStateException("Queue limit should be positive value");
+
+            this.queueLimit = queueLimit;
+            return this;
+        }
+
+        public ParallelEvaluation build() {
+            return new ParallelEvaluation(this);
+        }
+    }
+}
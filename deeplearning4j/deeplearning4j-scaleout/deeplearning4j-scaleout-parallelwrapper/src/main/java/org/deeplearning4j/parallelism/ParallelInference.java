@@ -24,22 +24,38 @@ import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.AdaptiveBatchController;
+import org.deeplearning4j.parallelism.inference.AdmissionPolicy;
+import org.deeplearning4j.parallelism.inference.InferenceMetrics;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
 import org.deeplearning4j.parallelism.inference.LoadBalanceMode;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObservable;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
 import org.deeplearning4j.parallelism.inference.observers.BatchedInferenceObservable;
+import org.deeplearning4j.parallelism.inference.observers.FutureInferenceObserver;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.primitives.Pair;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Observer;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -60,10 +76,18 @@ public class ParallelInference {
     protected InferenceMode inferenceMode;
     protected int queueLimit;
     protected LoadBalanceMode loadBalanceMode;
+    protected long targetLatencyNanos;
+    protected long maxBatchWaitNanos;
+    protected AdmissionPolicy admissionPolicy = AdmissionPolicy.BLOCK;
+    protected int[] sequenceBuckets;
 
     // this queue holds data for inference
     private BlockingQueue<InferenceObservable> observables;
 
+    private InferenceMetrics metrics;
+    private AdaptiveBatchController batchController;
+    private final AtomicInteger asyncInFlight = new AtomicInteger(0);
+
     private final Object locker = new Object();
 
     private InferenceWorker[] zoo;
@@ -75,6 +99,7 @@ public class ParallelInference {
     public final static int DEFAULT_BATCH_LIMIT = 32;
     public final static InferenceMode DEFAULT_INFERENCE_MODE = InferenceMode.BATCHED;
     public final static int DEFAULT_QUEUE_LIMIT = 64;
+    public final static AdmissionPolicy DEFAULT_ADMISSION_POLICY = AdmissionPolicy.BLOCK;
 
 
 
@@ -116,8 +141,52 @@ public class ParallelInference {
         return models;
     }
 
+    /**
+     * This method returns runtime statistics for this instance: queue depth, batch sizes and request latencies
+     *
+     * @return
+     */
+    public InferenceMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * This method returns batch controller used in adaptive BATCHED mode, or null if fixed batch limit is used
+     *
+     * @return
+     */
+    public AdaptiveBatchController getBatchController() {
+        return batchController;
+    }
+
+    /**
+     * This method returns number of requests each worker is executing at this moment
+     *
+     * @return
+     */
+    public int[] getInFlightPerWorker() {
+        val workers = zoo;
+        if (workers == null)
+            return new int[0];
+
+        int[] result = new int[workers.length];
+        for (int i = 0; i < workers.length; i++)
+            result[i] = workers[i] == null ? 0 : workers[i].inFlight.get();
+        return result;
+    }
+
+    /**
+     * This method returns number of asynchronous requests submitted via outputAsync() and not completed yet
+     *
+     * @return
+     */
+    public int getAsyncInFlight() {
+        return asyncInFlight.get();
+    }
+
     protected void init() {
         observables = new LinkedBlockingQueue<>(queueLimit);
+        metrics = new InferenceMetrics(observables, batchLimit);
 
         int numDevices = Nd4j.getAffinityManager().getNumberOfDevices();
         int currentDevice = Nd4j.getAffinityManager().getDeviceForCurrentThread();
@@ -138,8 +207,18 @@ public class ParallelInference {
 
 
         if (inferenceMode == InferenceMode.BATCHED) {
-            log.info("Initializing ObservablesProvider...");
-            provider = new ObservablesProvider(nanos, batchLimit, observables);
+            if (targetLatencyNanos > 0) {
+                log.info("Initializing AdaptiveObservablesProvider with latency target of {} ms...",
+                                targetLatencyNanos / 1e6);
+                long maxWait = maxBatchWaitNanos > 0 ? maxBatchWaitNanos : targetLatencyNanos / 2;
+                batchController = new AdaptiveBatchController(targetLatencyNanos, maxWait, batchLimit, workers);
+                provider = new AdaptiveObservablesProvider(batchController, observables);
+            } else {
+                log.info("Initializing ObservablesProvider...");
+                provider = new ObservablesProvider(nanos, batchLimit, observables);
+            }
+            provider.admissionPolicy = admissionPolicy;
+            provider.sequenceBuckets = sequenceBuckets;
         }
     }
 
@@ -164,6 +243,9 @@ public class ParallelInference {
         }
         zoo = null;
 
+        if (provider != null)
+            provider.shutdown();
+
         System.gc();
     }
 
@@ -230,21 +312,9 @@ public class ParallelInference {
     public INDArray[] output(INDArray[] input, INDArray[] inputMasks){
         // basically, depending on model type we either throw stuff to specific model, or wait for batch
 
+        long start = System.nanoTime();
         BasicInferenceObserver observer = new BasicInferenceObserver();
-        InferenceObservable observable;
-
-        if (inferenceMode == InferenceMode.SEQUENTIAL) {
-            observable = new BasicInferenceObservable(input, inputMasks);
-            observable.addObserver(observer);
-            try {
-                observables.put(observable);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException(e);
-            }
-        } else {
-            observable = provider.setInput(observer, input, inputMasks);
-        }
+        InferenceObservable observable = submit(observer, input, inputMasks, BasicInferenceObservable.NO_DEADLINE, null);
 
         try {
             // submit query to processing
@@ -256,7 +326,128 @@ public class ParallelInference {
             throw new RuntimeException(e);
         }
 
-        return observable.getOutput();
+        INDArray[] output;
+        try {
+            output = observable.getOutput();
+        } catch (RejectedExecutionException e) {
+            metrics.recordRejected();
+            throw e;
+        }
+        metrics.recordRequestLatency(System.nanoTime() - start);
+        return output;
+    }
+
+    /**
+     * Generate predictions/output from the network, without blocking the calling thread
+     *
+     * @param input Input to the network
+     * @return Future holding output from the network
+     */
+    public CompletableFuture<INDArray[]> outputAsync(INDArray... input) {
+        return outputAsync(input, null);
+    }
+
+    /**
+     * Generate predictions/outputs from the network, optionally using input masks for predictions,
+     * without blocking the calling thread.
+     *
+     * Cancelling returned future before a worker picks the request up removes the request from its batch.
+     *
+     * PLEASE NOTE: With {@link AdmissionPolicy#BLOCK} this method still blocks if the queue is full
+     *
+     * @param input      Input to the network
+     * @param inputMasks Input masks for the network. May be null.
+     * @return Future holding output from the network
+     */
+    public CompletableFuture<INDArray[]> outputAsync(INDArray[] input, INDArray[] inputMasks) {
+        return submitAsync(input, inputMasks, BasicInferenceObservable.NO_DEADLINE);
+    }
+
+    /**
+     * Generate predictions/outputs from the network, optionally using input masks for predictions,
+     * without blocking the calling thread.
+     *
+     * If the request wasn't picked up by a worker within given timeout, it's dropped before being batched,
+     * and returned future completes exceptionally with {@link TimeoutException}.
+     *
+     * @param input      Input to the network
+     * @param inputMasks Input masks for the network. May be null.
+     * @param timeout    Time the request may wait for execution
+     * @param timeUnit   Unit for the timeout
+     * @return Future holding output from the network
+     */
+    public CompletableFuture<INDArray[]> outputAsync(INDArray[] input, INDArray[] inputMasks, long timeout,
+                    @NonNull TimeUnit timeUnit) {
+        return submitAsync(input, inputMasks, System.nanoTime() + timeUnit.toNanos(timeout));
+    }
+
+    protected CompletableFuture<INDArray[]> submitAsync(INDArray[] input, INDArray[] inputMasks, long deadline) {
+        final long start = System.nanoTime();
+        FutureInferenceObserver observer = new FutureInferenceObserver();
+        CompletableFuture<INDArray[]> future = observer.getFuture();
+
+        asyncInFlight.incrementAndGet();
+        future.whenComplete((output, t) -> {
+            if (t == null)
+                metrics.recordRequestLatency(System.nanoTime() - start);
+            else if (t instanceof TimeoutException)
+                metrics.recordDropped();
+            else if (t instanceof RejectedExecutionException)
+                metrics.recordRejected();
+            asyncInFlight.decrementAndGet();
+        });
+
+        try {
+            InferenceObservable observable = submit(observer, input, inputMasks, deadline, future);
+            int position = observable instanceof BatchedInferenceObservable
+                            ? ((BatchedInferenceObservable) observable).getPosition() : 0;
+            observer.bind(observable, position);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * This method sends request to the workers, either directly or via batching provider
+     */
+    protected InferenceObservable submit(@NonNull Observer observer, INDArray[] input, INDArray[] inputMasks,
+                    long deadline, Future<?> future) {
+        if (inferenceMode == InferenceMode.SEQUENTIAL) {
+            BasicInferenceObservable observable = new BasicInferenceObservable(input, inputMasks);
+            observable.setDeadline(deadline, future);
+            observable.addObserver(observer);
+            enqueue(observables, observable, admissionPolicy);
+            return observable;
+        } else {
+            return provider.setInput(observer, input, inputMasks, deadline, future);
+        }
+    }
+
+    /**
+     * This method puts observable into the queue, with respect to admission policy.
+     * If observable gets rejected, it's completed with {@link RejectedExecutionException}
+     *
+     * @return true if observable was accepted, false otherwise
+     */
+    protected static boolean enqueue(BlockingQueue<InferenceObservable> queue, InferenceObservable observable,
+                    AdmissionPolicy admissionPolicy) {
+        if (admissionPolicy == AdmissionPolicy.REJECT) {
+            if (!queue.offer(observable)) {
+                observable.setOutputException(new RejectedExecutionException(
+                                "Inference queue is full: " + queue.size() + " pending batches"));
+                return false;
+            }
+            return true;
+        }
+
+        try {
+            queue.put(observable);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
     }
 
 
@@ -266,6 +457,10 @@ public class ParallelInference {
         private int batchLimit = DEFAULT_BATCH_LIMIT;
         private InferenceMode inferenceMode = DEFAULT_INFERENCE_MODE;
         private int queueLimit = DEFAULT_QUEUE_LIMIT;
+        private long targetLatencyNanos;
+        private long maxBatchWaitNanos;
+        private AdmissionPolicy admissionPolicy = DEFAULT_ADMISSION_POLICY;
+        private int[] sequenceBuckets;
         protected LoadBalanceMode loadBalanceMode;
 
         public Builder(@NonNull Model model) {
@@ -336,6 +531,88 @@ public class ParallelInference {
             return this;
         }
 
+        /**
+         * This method enables adaptive batching with the given target latency per request.
+         * Instead of using fixed batch limit, batch size and batch wait window will be adjusted
+         * at runtime, based on measured execution time for each batch size, so that requests
+         * are answered within given time whenever possible. Requests are only batched with
+         * requests that have the same input shapes and masks.
+         *
+         * PLEASE NOTE: This value has effect in BATCHED inference mode only. Batch limit becomes upper bound for batch size
+         *
+         * @param time
+         * @param timeUnit
+         * @return
+         */
+        public Builder latencyTarget(long time, @NonNull TimeUnit timeUnit) {
+            if (time <= 0)
+                throw new IllegalStateException("Latency target should be positive value");
+
+            this.targetLatencyNanos = timeUnit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * This method defines upper bound for time the first request of a batch will wait for other requests
+         * to join the batch, when adaptive batching is enabled via {@link #latencyTarget(long, TimeUnit)}.
+         *
+         * Default value: half of the latency target
+         *
+         * @param time
+         * @param timeUnit
+         * @return
+         */
+        public Builder maxBatchWait(long time, @NonNull TimeUnit timeUnit) {
+            if (time < 0)
+                throw new IllegalStateException("Max batch wait should be non-negative value");
+
+            this.maxBatchWaitNanos = timeUnit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * This method defines what happens to new requests once queue limit is reached. Options are:
+         *
+         * BLOCK: caller is blocked until there's space in the queue
+         * REJECT: request fails immediately with RejectedExecutionException
+         *
+         * Default value: BLOCK
+         *
+         * @param admissionPolicy
+         * @return
+         */
+        public Builder admissionPolicy(@NonNull AdmissionPolicy admissionPolicy) {
+            this.admissionPolicy = admissionPolicy;
+            return this;
+        }
+
+        /**
+         * This method enables batching of variable length time series (rank 3 input) in BATCHED mode.
+         * Requests are grouped by sequence length into buckets, and requests from the same bucket are
+         * batched together even if their lengths differ: shorter sequences are padded and masked, and
+         * time series outputs are trimmed back to the length of each request. Since recurrent layers
+         * skip masked time steps, cost depends on the real sequence lengths, and padding is bounded by bucket width.
+         *
+         * Bucket i holds sequences with length in range (bucketBoundaries[i-1], bucketBoundaries[i]],
+         * sequences longer than the last boundary go to an additional bucket.
+         *
+         * PLEASE NOTE: Model outputs of rank 3 are assumed to have the same length as the input
+         *
+         * @param bucketBoundaries upper bounds (inclusive) for sequence lengths in each bucket, in ascending order
+         * @return
+         */
+        public Builder sequenceBucketing(@NonNull int... bucketBoundaries) {
+            if (bucketBoundaries.length == 0)
+                throw new IllegalStateException("At least one bucket boundary is required");
+            for (int i = 1; i < bucketBoundaries.length; i++) {
+                if (bucketBoundaries[i] <= bucketBoundaries[i - 1])
+                    throw new IllegalStateException("Bucket boundaries should be strictly ascending");
+            }
+
+            this.sequenceBuckets = bucketBoundaries.clone();
+            return this;
+        }
+
         /**
          * This method defines buffer queue size.
          *
@@ -376,6 +653,10 @@ public class ParallelInference {
                 inference.model = this.model;
                 inference.workers = this.workers;
                 inference.loadBalanceMode = this.loadBalanceMode;
+                inference.targetLatencyNanos = this.targetLatencyNanos;
+                inference.maxBatchWaitNanos = this.maxBatchWaitNanos;
+                inference.admissionPolicy = this.admissionPolicy;
+                inference.sequenceBuckets = this.sequenceBuckets;
 
                 inference.init();
 
@@ -396,6 +677,7 @@ public class ParallelInference {
         private Model protoModel;
         private Model replicatedModel;
         private AtomicLong counter = new AtomicLong(0);
+        private AtomicInteger inFlight = new AtomicInteger(0);
         private boolean rootDevice;
 
         private ReentrantReadWriteLock modelLock = new ReentrantReadWriteLock();
@@ -475,12 +757,14 @@ public class ParallelInference {
 
                     if (request != null) {
                         counter.incrementAndGet();
+                        inFlight.set(requestSize(request));
 
                         // FIXME: get rid of instanceof here, model won't change during runtime anyway
                         if (isCG) {
                             List<Pair<INDArray[],INDArray[]>> batches = request.getInputBatches();
                             List<INDArray[]> out = new ArrayList<>(batches.size());
                             try {
+                                long start = System.nanoTime();
                                 for (Pair<INDArray[],INDArray[]> inBatch : batches) {
                                     try {
                                         modelLock.readLock().lock();
@@ -492,6 +776,7 @@ public class ParallelInference {
                                     }
 
                                 }
+                                recordBatch(request, batches, System.nanoTime() - start);
                                 request.setOutputBatches(out);
                             } catch (Exception e){
                                 request.setOutputException(e);
@@ -500,6 +785,7 @@ public class ParallelInference {
                             List<Pair<INDArray[],INDArray[]>> batches = request.getInputBatches();
                             List<INDArray[]> out = new ArrayList<>(batches.size());
                             try {
+                                long start = System.nanoTime();
                                 for (Pair<INDArray[],INDArray[]> inBatch : batches) {
                                     INDArray f = inBatch.getFirst()[0];
                                     INDArray fm = (inBatch.getSecond() == null ? null : inBatch.getSecond()[0]);
@@ -512,13 +798,14 @@ public class ParallelInference {
                                         modelLock.readLock().unlock();
                                     }
                                 }
+                                recordBatch(request, batches, System.nanoTime() - start);
                                 request.setOutputBatches(out);
                             } catch (Exception e){
                                 request.setOutputException(e);
                             }
                         }
 
-
+                        inFlight.set(0);
                     } else {
                         // just do nothing, i guess and hope for next round?
                     }
@@ -533,6 +820,22 @@ public class ParallelInference {
             }
         }
 
+        private int requestSize(InferenceObservable request) {
+            return request instanceof BatchedInferenceObservable
+                            ? ((BatchedInferenceObservable) request).getCounter() : 1;
+        }
+
+        private void recordBatch(InferenceObservable request, List<Pair<INDArray[],INDArray[]>> batches, long nanos) {
+            // all requests were dropped: nothing was executed
+            if (batches.isEmpty())
+                return;
+
+            int size = requestSize(request);
+            metrics.recordBatch(size, nanos);
+            if (batchController != null)
+                batchController.recordExecution(size, nanos);
+        }
+
         protected void shutdown() {
             shouldWork.set(false);
             while (!isStopped.get()) {
@@ -543,12 +846,17 @@ public class ParallelInference {
 
 
     protected static class ObservablesProvider {
-        private BlockingQueue<InferenceObservable> targetQueue;
-        private long nanos;
-        private int batchLimit;
-
-        private volatile BatchedInferenceObservable currentObservable;
-        private final Object locker = new Object();
+        protected BlockingQueue<InferenceObservable> targetQueue;
+        protected long nanos;
+        protected int batchLimit;
+
+        protected volatile BatchedInferenceObservable currentObservable;
+        protected final Object locker = new Object();
+        protected AdmissionPolicy admissionPolicy = AdmissionPolicy.BLOCK;
+        // sequence length bucket boundaries, null if variable length batching is disabled
+        protected int[] sequenceBuckets;
+        // open batch per bucket, used instead of currentObservable if sequenceBuckets are set
+        protected final Map<String, BatchedInferenceObservable> bucketObservables = new HashMap<>();
 
         protected ObservablesProvider(long nanos, int batchLimit, @NonNull BlockingQueue<InferenceObservable> queue) {
             this.targetQueue = queue;
@@ -565,26 +873,203 @@ public class ParallelInference {
         }
 
         protected InferenceObservable setInput(@NonNull Observer observer, INDArray[] input, INDArray[] inputMask) {
+            return setInput(observer, input, inputMask, BasicInferenceObservable.NO_DEADLINE, null);
+        }
+
+        protected InferenceObservable setInput(@NonNull Observer observer, INDArray[] input, INDArray[] inputMask,
+                        long deadline, Future<?> future) {
+            String key = sequenceBuckets == null ? null : batchKey(input, inputMask, sequenceBuckets);
             synchronized (locker) {
+                BatchedInferenceObservable observable = key == null ? currentObservable : bucketObservables.get(key);
                 boolean isNew = false;
-                if (currentObservable == null || currentObservable.getCounter() >= batchLimit
-                                || currentObservable.isLocked()) {
+                if (observable == null || observable.getCounter() >= batchLimit || observable.isLocked()) {
                     isNew = true;
-                    currentObservable = new BatchedInferenceObservable();
+                    observable = new BatchedInferenceObservable(sequenceBuckets != null);
+                    setCurrent(key, observable);
+                }
+
+                observable.addInput(input, inputMask, deadline, future);
+                observable.addObserver(observer);
+
+                // rejected batch holds just this input, and must not be joined by any other input
+                if (isNew && !enqueue(targetQueue, observable, admissionPolicy))
+                    setCurrent(key, null);
+
+                return observable;
+            }
+        }
+
+        /**
+         * Releases resources held by this provider, if any. Called when ParallelInference is shut down
+         */
+        protected void shutdown() {
+            // no-op
+        }
+
+        private void setCurrent(String key, BatchedInferenceObservable observable) {
+            if (key == null)
+                currentObservable = observable;
+            else if (observable == null)
+                bucketObservables.remove(key);
+            else
+                bucketObservables.put(key, observable);
+        }
+
+        /**
+         * Key identifying inputs that can be batched together: shapes of inputs and masks, excluding minibatch dimension.
+         * If sequence buckets are set, time series length is replaced by the index of its bucket.
+         */
+        protected static String batchKey(INDArray[] input, INDArray[] inputMask, int[] sequenceBuckets) {
+            StringBuilder sb = new StringBuilder();
+            for (INDArray in : input) {
+                if (sequenceBuckets != null && in.rank() == 3)
+                    sb.append('[').append(in.size(1)).append(", #").append(bucket(in.size(2), sequenceBuckets)).append("];");
+                else
+                    sb.append(Arrays.toString(Arrays.copyOfRange(in.shape(), 1, in.rank()))).append(';');
+            }
+
+            sb.append('|');
+            if (inputMask != null) {
+                for (INDArray m : inputMask) {
+                    if (m == null)
+                        sb.append("null;");
+                    else if (sequenceBuckets != null && m.rank() == 2)
+                        sb.append("[#").append(bucket(m.size(1), sequenceBuckets)).append("];");
+                    else
+                        sb.append(Arrays.toString(Arrays.copyOfRange(m.shape(), 1, m.rank()))).append(';');
+                }
+            }
+            return sb.toString();
+        }
+
+        /**
+         * @return index of the bucket for the given sequence length
+         */
+        protected static int bucket(long length, int[] sequenceBuckets) {
+            for (int i = 0; i < sequenceBuckets.length; i++) {
+                if (length <= sequenceBuckets[i])
+                    return i;
+            }
+            return sequenceBuckets.length;
+        }
+    }
+
+
+    /**
+     * This provider holds batches open for a time window chosen by {@link AdaptiveBatchController},
+     * and keeps separate open batches for inputs with different shapes (or sequence length buckets,
+     * if enabled), so incompatible requests never end up in the same batch.
+     *
+     * A batch is dispatched to workers either when it reaches current batch limit, or when its wait window expires.
+     * Callers never wait for the window: expiration is handled by a timer thread, so setInput() only registers
+     * the input. Batches are taken out of the open batches under the lock, but queued for the workers after
+     * releasing it: with AdmissionPolicy.BLOCK a full queue blocks only the thread dispatching the batch,
+     * never other submitters.
+     */
+    protected static class AdaptiveObservablesProvider extends ObservablesProvider {
+        private final AdaptiveBatchController controller;
+        private final Map<String, OpenBatch> openBatches = new HashMap<>();
+        private final ScheduledExecutorService timer;
+
+        protected AdaptiveObservablesProvider(@NonNull AdaptiveBatchController controller,
+                        @NonNull BlockingQueue<InferenceObservable> queue) {
+            super(0L, Integer.MAX_VALUE, queue);
+            this.controller = controller;
+            this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = Executors.defaultThreadFactory().newThread(r);
+                    t.setName("ParallelInference batch timer");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        @Override
+        protected InferenceObservable setInput(@NonNull Observer observer, INDArray[] input, INDArray[] inputMask,
+                        long deadline, Future<?> future) {
+            String key = batchKey(input, inputMask, sequenceBuckets);
+            BatchedInferenceObservable observable;
+            boolean dispatch = false;
+            synchronized (locker) {
+                OpenBatch batch = openBatches.get(key);
+                boolean isNew = batch == null;
+                if (isNew) {
+                    batch = new OpenBatch(new BatchedInferenceObservable(sequenceBuckets != null));
+                    openBatches.put(key, batch);
+                }
+
+                observable = batch.observable;
+                observable.addInput(input, inputMask, deadline, future);
+                observable.addObserver(observer);
+
+                if (observable.getCounter() >= controller.getBatchLimit()) {
+                    dispatch = close(key, batch);
+                } else if (isNew) {
+                    // batch is dispatched when the window expires, unless it's filled up earlier
+                    long wait = controller.getBatchWaitNanos(targetQueue.size());
+                    if (wait <= 0)
+                        dispatch = close(key, batch);
+                    else
+                        batch.expiration = timer.schedule(new BatchExpiration(key, batch), wait, TimeUnit.NANOSECONDS);
                 }
+            }
+
+            // closed batch can't be joined anymore: queue it without holding the lock, since this may block
+            if (dispatch)
+                enqueue(targetQueue, observable, admissionPolicy);
+            return observable;
+        }
+
+        /**
+         * Removes the batch from the open batches, so no more inputs join it. Must be called while holding the lock
+         *
+         * @return true if the batch was closed by this call, false if it was already closed
+         */
+        private boolean close(String key, OpenBatch batch) {
+            if (batch.dispatched)
+                return false;
+            openBatches.remove(key);
+            batch.dispatched = true;
+            if (batch.expiration != null)
+                batch.expiration.cancel(false);
+            return true;
+        }
+
+        @Override
+        protected void shutdown() {
+            timer.shutdownNow();
+        }
 
-                currentObservable.addInput(input, inputMask);
-                currentObservable.addObserver(observer);
+        private class BatchExpiration implements Runnable {
+            private final String key;
+            private final OpenBatch batch;
 
-                try {
-                    if (isNew)
-                        targetQueue.put(currentObservable);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new RuntimeException(e);
+            private BatchExpiration(String key, OpenBatch batch) {
+                this.key = key;
+                this.batch = batch;
+            }
+
+            @Override
+            public void run() {
+                boolean dispatch;
+                synchronized (locker) {
+                    dispatch = close(key, batch);
                 }
 
-                return currentObservable;
+                if (dispatch)
+                    enqueue(targetQueue, batch.observable, admissionPolicy);
+            }
+        }
+
+        private static class OpenBatch {
+            private final BatchedInferenceObservable observable;
+            private ScheduledFuture<?> expiration;
+            private boolean dispatched;
+
+            private OpenBatch(BatchedInferenceObservable observable) {
+                this.observable = observable;
             }
         }
     }
@@ -0,0 +1,486 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.RnnSessionStateCache;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.INDArrayIndex;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Streaming inference for recurrent networks with many concurrent sessions (streams) on a single model.<br>
+ * {@code rnnTimeStep()} keeps the RNN state in the layers of the network, so one network can only follow one stream at
+ * a time. Here the state of each session is instead kept in a bounded {@link RnnSessionStateCache} (LRU eviction,
+ * optional compression), and the time steps of different sessions that are waiting for execution are batched into a
+ * single forward pass: inputs and states are concatenated along dimension 0, the network is run with
+ * {@code rnnTimeStepConcurrent()}, and the outputs and new states are split back per session.<br>
+ * <br>
+ * Requests for the same session are executed in submission order, and never in the same batch. Only requests with
+ * the same input shapes (other than the minibatch dimension) are batched together; each request must contain a single
+ * example (minibatch size 1), for one or more time steps.<br>
+ * Batching is natural (no waiting window): a batch is formed as soon as a worker is available, from the requests that
+ * queued up while all workers were busy.
+ */
+@Slf4j
+public class StatefulRnnInference {
+    public final static int DEFAULT_NUM_WORKERS = 1;
+    public final static int DEFAULT_BATCH_LIMIT = 64;
+    public final static int DEFAULT_QUEUE_LIMIT = 4096;
+    public final static int DEFAULT_MAX_SESSIONS = 10000;
+
+    protected Model model;
+    protected int workers;
+    protected int batchLimit;
+    protected int queueLimit;
+    protected RnnSessionStateCache stateCache;
+
+    private final Object lock = new Object();
+    private final LinkedList<Request> pending = new LinkedList<>();
+    private final Set<String> inFlight = new HashSet<>();
+    private int idleWorkers;
+    private volatile boolean shutdown = false;
+    private Thread dispatcher;
+    private ExecutorService executor;
+
+    //Shapes of the per example state arrays, used to create the initial state of new sessions batched with existing ones
+    private volatile Map<String, Map<String, long[]>> stateShapes;
+
+    protected StatefulRnnInference() {
+        //
+    }
+
+    protected void init() {
+        idleWorkers = workers;
+        executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            t.setName("StatefulRnnInference worker");
+            return t;
+        });
+        dispatcher = new Thread(this::dispatch);
+        dispatcher.setDaemon(true);
+        dispatcher.setName("StatefulRnnInference dispatcher");
+        dispatcher.start();
+    }
+
+    /**
+     * Run the network for one or more time steps of the given session, using and then updating the stored state of
+     * the session. Blocks until the output is available.
+     *
+     * @param sessionId Session (stream) identifier
+     * @param input     Input for a single example: shape [1,nIn] for one time step, or [1,nIn,timeSeriesLength]
+     * @return Network output (the first output, for ComputationGraph)
+     */
+    public INDArray output(@NonNull String sessionId, @NonNull INDArray input) {
+        return output(sessionId, new INDArray[] {input})[0];
+    }
+
+    /**
+     * As per {@link #output(String, INDArray)}, for networks with multiple inputs and/or outputs
+     */
+    public INDArray[] output(@NonNull String sessionId, @NonNull INDArray... inputs) {
+        try {
+            return outputAsync(sessionId, inputs).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Non-blocking equivalent of {@link #output(String, INDArray...)}. If the request queue is full, this method blocks
+     * until there is space in the queue.
+     *
+     * @return Future completed with the network outputs once the request has been executed
+     */
+    public CompletableFuture<INDArray[]> outputAsync(@NonNull String sessionId, @NonNull INDArray... inputs) {
+        for (INDArray in : inputs) {
+            if (in.rank() < 2 || in.size(0) != 1)
+                throw new IllegalArgumentException("Each request should contain exactly one example: got input with shape "
+                                + Arrays.toString(in.shape()));
+        }
+
+        Request request = new Request(sessionId, inputs);
+        synchronized (lock) {
+            while (!shutdown && pending.size() >= queueLimit) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+            if (shutdown)
+                throw new IllegalStateException("StatefulRnnInference has been shut down");
+            pending.add(request);
+            lock.notifyAll();
+        }
+        return request.future;
+    }
+
+    /**
+     * @return RNN state of the session (key: layer name, or layer index for MultiLayerNetwork), or null if no state
+     * is stored for the session
+     */
+    public Map<String, Map<String, INDArray>> getSessionState(@NonNull String sessionId) {
+        return stateCache.get(sessionId);
+    }
+
+    /**
+     * Set the RNN state of the session, for example to restore a session that was evicted or served elsewhere.
+     * State arrays should be for a single example (minibatch size 1).
+     */
+    public void setSessionState(@NonNull String sessionId, @NonNull Map<String, Map<String, INDArray>> state) {
+        learnStateShapes(state);
+        stateCache.put(sessionId, state);
+    }
+
+    /**
+     * Remove the stored state of the session. Its next request (if any) starts from the default initial state.
+     */
+    public void endSession(@NonNull String sessionId) {
+        stateCache.remove(sessionId);
+    }
+
+    public RnnSessionStateCache getStateCache() {
+        return stateCache;
+    }
+
+    /**
+     * Stop the dispatcher and worker threads. Requests that have not been executed yet are completed exceptionally.
+     */
+    public void shutdown() {
+        List<Request> dropped;
+        synchronized (lock) {
+            shutdown = true;
+            dropped = new ArrayList<>(pending);
+            pending.clear();
+            lock.notifyAll();
+        }
+        for (Request r : dropped)
+            r.future.completeExceptionally(new IllegalStateException("StatefulRnnInference has been shut down"));
+        if (executor != null)
+            executor.shutdown();
+    }
+
+    private void dispatch() {
+        while (!shutdown) {
+            final List<Request> batch;
+            synchronized (lock) {
+                List<Request> b = null;
+                while (!shutdown && (idleWorkers == 0 || (b = nextBatch()).isEmpty())) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (shutdown)
+                    return;
+                batch = b;
+                idleWorkers--;
+                for (Request r : batch)
+                    inFlight.add(r.sessionId);
+                //Space in the queue for blocked producers
+                lock.notifyAll();
+            }
+            executor.execute(() -> execute(batch));
+        }
+    }
+
+    /**
+     * Take the next batch from the pending requests: the oldest request of each session that is not already being
+     * executed, with the same input shapes as the first request of the batch. Must be called while holding the lock.
+     */
+    private List<Request> nextBatch() {
+        List<Request> batch = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        Iterator<Request> iter = pending.iterator();
+        while (iter.hasNext() && batch.size() < batchLimit) {
+            Request r = iter.next();
+            //Later requests of a session must wait for the earlier ones
+            if (!seen.add(r.sessionId) || inFlight.contains(r.sessionId))
+                continue;
+            if (!batch.isEmpty() && !batch.get(0).compatibleWith(r))
+                continue;
+            batch.add(r);
+            iter.remove();
+        }
+        return batch;
+    }
+
+    private void execute(List<Request> batch) {
+        try {
+            int n = batch.size();
+            int numInputs = batch.get(0).inputs.length;
+            INDArray[] inputs = new INDArray[numInputs];
+            for (int i = 0; i < numInputs; i++) {
+                if (n == 1) {
+                    inputs[i] = batch.get(0).inputs[i];
+                } else {
+                    INDArray[] toConcat = new INDArray[n];
+                    for (int j = 0; j < n; j++)
+                        toConcat[j] = batch.get(j).inputs[i];
+                    inputs[i] = Nd4j.concat(0, toConcat);
+                }
+            }
+
+            List<Map<String, Map<String, INDArray>>> states = new ArrayList<>(n);
+            for (Request r : batch)
+                states.add(stateCache.get(r.sessionId));
+            Map<String, Map<String, INDArray>> batchState = mergeStates(states);
+
+            Pair<INDArray[], Map<String, Map<String, INDArray>>> result = timeStep(inputs, batchState);
+            INDArray[] out = result.getFirst();
+            Map<String, Map<String, INDArray>> newState = result.getSecond();
+
+            for (int j = 0; j < n; j++) {
+                Request r = batch.get(j);
+                Map<String, Map<String, INDArray>> sessionState = n == 1 ? newState : slice(newState, j);
+                if (j == 0)
+                    learnStateShapes(sessionState);
+                stateCache.put(r.sessionId, sessionState);
+
+                INDArray[] sessionOut = new INDArray[out.length];
+                for (int i = 0; i < out.length; i++)
+                    sessionOut[i] = n == 1 ? out[i] : slice(out[i], j);
+                r.future.complete(sessionOut);
+            }
+        } catch (Throwable t) {
+            log.error("Error during stateful RNN inference", t);
+            for (Request r : batch)
+                r.future.completeExceptionally(t);
+        } finally {
+            synchronized (lock) {
+                for (Request r : batch)
+                    inFlight.remove(r.sessionId);
+                idleWorkers++;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private Pair<INDArray[], Map<String, Map<String, INDArray>>> timeStep(INDArray[] inputs,
+                    Map<String, Map<String, INDArray>> state) {
+        if (model instanceof ComputationGraph) {
+            return ((ComputationGraph) model).rnnTimeStepConcurrent(state, inputs);
+        }
+
+        //MultiLayerNetwork: state is keyed by layer index
+        Map<Integer, Map<String, INDArray>> mlnState = null;
+        if (state != null) {
+            mlnState = new HashMap<>();
+            for (Map.Entry<String, Map<String, INDArray>> e : state.entrySet())
+                mlnState.put(Integer.parseInt(e.getKey()), e.getValue());
+        }
+        Pair<INDArray, Map<Integer, Map<String, INDArray>>> p =
+                        ((MultiLayerNetwork) model).rnnTimeStepConcurrent(inputs[0], mlnState);
+        Map<String, Map<String, INDArray>> newState = new HashMap<>();
+        for (Map.Entry<Integer, Map<String, INDArray>> e : p.getSecond().entrySet())
+            newState.put(String.valueOf(e.getKey()), e.getValue());
+        return new Pair<>(new INDArray[] {p.getFirst()}, newState);
+    }
+
+    /**
+     * Concatenate the per session states along dimension 0. Sessions without state get the initial (zero) state,
+     * or null is returned if no session in the batch has state yet.
+     */
+    private Map<String, Map<String, INDArray>> mergeStates(List<Map<String, Map<String, INDArray>>> states) {
+        boolean anyState = false;
+        for (Map<String, Map<String, INDArray>> s : states)
+            anyState |= s != null;
+        if (!anyState)
+            return null;
+        if (states.size() == 1)
+            return states.get(0);
+
+        Map<String, Map<String, long[]>> shapes = stateShapes;
+        Map<String, Map<String, INDArray>> merged = new HashMap<>();
+        for (Map.Entry<String, Map<String, long[]>> layer : shapes.entrySet()) {
+            Map<String, INDArray> m = new HashMap<>();
+            for (Map.Entry<String, long[]> e : layer.getValue().entrySet()) {
+                INDArray[] toConcat = new INDArray[states.size()];
+                for (int j = 0; j < toConcat.length; j++) {
+                    Map<String, Map<String, INDArray>> s = states.get(j);
+                    INDArray arr = null;
+                    if (s != null && s.containsKey(layer.getKey()))
+                        arr = s.get(layer.getKey()).get(e.getKey());
+                    toConcat[j] = arr != null ? arr : Nd4j.zeros(e.getValue());
+                }
+                m.put(e.getKey(), Nd4j.concat(0, toConcat));
+            }
+            merged.put(layer.getKey(), m);
+        }
+        return merged;
+    }
+
+    private void learnStateShapes(Map<String, Map<String, INDArray>> state) {
+        if (stateShapes != null)
+            return;
+        Map<String, Map<String, long[]>> shapes = new HashMap<>();
+        for (Map.Entry<String, Map<String, INDArray>> layer : state.entrySet()) {
+            Map<String, long[]> m = new HashMap<>();
+            for (Map.Entry<String, INDArray> e : layer.getValue().entrySet())
+                m.put(e.getKey(), e.getValue().shape());
+            shapes.put(layer.getKey(), m);
+        }
+        stateShapes = shapes;
+    }
+
+    private static Map<String, Map<String, INDArray>> slice(Map<String, Map<String, INDArray>> state, int example) {
+        Map<String, Map<String, INDArray>> out = new HashMap<>();
+        for (Map.Entry<String, Map<String, INDArray>> layer : state.entrySet()) {
+            Map<String, INDArray> m = new HashMap<>();
+            for (Map.Entry<String, INDArray> e : layer.getValue().entrySet())
+                m.put(e.getKey(), slice(e.getValue(), example));
+            out.put(layer.getKey(), m);
+        }
+        return out;
+    }
+
+    private static INDArray slice(INDArray arr, int example) {
+        INDArrayIndex[] idx = new INDArrayIndex[arr.rank()];
+        idx[0] = NDArrayIndex.interval(example, example + 1);
+        for (int i = 1; i < idx.length; i++)
+            idx[i] = NDArrayIndex.all();
+        return arr.get(idx).dup(arr.ordering());
+    }
+
+    private static class Request {
+        private final String sessionId;
+        private final INDArray[] inputs;
+        private final CompletableFuture<INDArray[]> future = new CompletableFuture<>();
+
+        private Request(String sessionId, INDArray[] inputs) {
+            this.sessionId = sessionId;
+            this.inputs = inputs;
+        }
+
+        private boolean compatibleWith(Request other) {
+            if (inputs.length != other.inputs.length)
+                return false;
+            for (int i = 0; i < inputs.length; i++) {
+                if (!Arrays.equals(inputs[i].shape(), other.inputs[i].shape()))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+
+    public static class Builder {
+        private Model model;
+        private int workers = DEFAULT_NUM_WORKERS;
+        private int batchLimit = DEFAULT_BATCH_LIMIT;
+        private int queueLimit = DEFAULT_QUEUE_LIMIT;
+        private int maxSessions = DEFAULT_MAX_SESSIONS;
+        private String stateCompression;
+
+        public Builder(@NonNull Model model) {
+            if (!(model instanceof MultiLayerNetwork) && !(model instanceof ComputationGraph))
+                throw new IllegalArgumentException("Only MultiLayerNetwork and ComputationGraph models are supported, got "
+                                + model.getClass().getName());
+            this.model = model;
+        }
+
+        /**
+         * Number of batches that may be executed concurrently. Default: 1
+         */
+        public Builder workers(int workers) {
+            if (workers < 1)
+                throw new IllegalStateException("Workers should be positive value");
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * Maximum number of sessions (time steps) executed in a single batch
+         */
+        public Builder batchLimit(int limit) {
+            if (limit < 1)
+                throw new IllegalStateException("Batch limit should be positive value");
+            this.batchLimit = limit;
+            return this;
+        }
+
+        /**
+         * Maximum number of pending requests. Callers block when the queue is full
+         */
+        public Builder queueLimit(int limit) {
+            if (limit < 1)
+                throw new IllegalStateException("Queue limit should be positive value");
+            this.queueLimit = limit;
+            return this;
+        }
+
+        /**
+         * Maximum number of sessions to keep RNN state for. When exceeded, the state of the least recently used
+         * session is evicted
+         */
+        public Builder maxSessions(int maxSessions) {
+            if (maxSessions < 1)
+                throw new IllegalStateException("Maximum number of sessions should be positive value");
+            this.maxSessions = maxSessions;
+            return this;
+        }
+
+        /**
+         * Compression algorithm for the stored session state, for example "FLOAT16". Default: no compression
+         */
+        public Builder stateCompression(String algorithm) {
+            this.stateCompression = algorithm;
+            return this;
+        }
+
+        public StatefulRnnInference build() {
+            StatefulRnnInference inference = new StatefulRnnInference();
+            inference.model = this.model;
+            inference.workers = this.workers;
+            inference.batchLimit = this.batchLimit;
+            inference.queueLimit = this.queueLimit;
+            inference.stateCache = new RnnSessionStateCache(maxSessions, stateCompression);
+            inference.init();
+            return inference;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference;
+
+/**
+ * Chooses the batch size and batch wait window for BATCHED inference, given a target request latency.
+ *
+ * Execution time is measured online for every batch size seen so far (as an exponentially weighted moving average).
+ * Sizes that were not measured yet are estimated by linear extrapolation from the closest smaller measured size,
+ * which overestimates the cost of a larger batch (batching is sublinear) - so the batch limit only grows as far as
+ * measurements justify, and shrinks as soon as measured execution times go up.
+ *
+ * The effective batch limit is the largest batch size whose estimated execution time fits in half of the latency target.
+ * The wait window (how long the first request of a batch waits for more requests to arrive) is what is left of the target
+ * after the batch's own execution time and the execution of the batches already queued ahead of it.
+ */
+public class AdaptiveBatchController {
+    protected static final double ALPHA = 0.2;
+    protected static final double EXECUTION_FRACTION = 0.5;
+
+    private final long targetLatencyNanos;
+    private final long maxWaitNanos;
+    private final int maxBatchSize;
+    private final int workers;
+
+    // index: batch size, value: moving average of execution time in nanoseconds, 0 if not measured yet
+    private final double[] executionNanos;
+
+    private volatile int batchLimit = 1;
+
+    /**
+     * @param targetLatencyNanos target end to end latency for a single request
+     * @param maxWaitNanos       upper bound for the batch wait window
+     * @param maxBatchSize       upper bound for the batch size
+     * @param workers            number of workers executing batches concurrently
+     */
+    public AdaptiveBatchController(long targetLatencyNanos, long maxWaitNanos, int maxBatchSize, int workers) {
+        if (targetLatencyNanos <= 0)
+            throw new IllegalArgumentException("Target latency should be positive value");
+        if (maxWaitNanos < 0)
+            throw new IllegalArgumentException("Max wait should be non-negative value");
+        if (maxBatchSize < 1 || workers < 1)
+            throw new IllegalArgumentException("Max batch size and workers should be positive values");
+
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.maxWaitNanos = maxWaitNanos;
+        this.maxBatchSize = maxBatchSize;
+        this.workers = workers;
+        this.executionNanos = new double[maxBatchSize + 1];
+    }
+
+    /**
+     * Update the execution time estimate for the given batch size
+     *
+     * @param batchSize number of requests in the batch
+     * @param nanos     time spent executing the batch
+     */
+    public synchronized void recordExecution(int batchSize, long nanos) {
+        int b = Math.max(1, Math.min(batchSize, maxBatchSize));
+        double current = executionNanos[b];
+        executionNanos[b] = current == 0.0 ? nanos : (1.0 - ALPHA) * current + ALPHA * nanos;
+
+        long budget = (long) (targetLatencyNanos * EXECUTION_FRACTION);
+        int limit = 1;
+        for (int i = 1; i <= maxBatchSize; i++) {
+            if (estimate(i) <= budget)
+                limit = i;
+        }
+        batchLimit = limit;
+    }
+
+    /**
+     * @return the current maximum number of requests per batch
+     */
+    public int getBatchLimit() {
+        return batchLimit;
+    }
+
+    /**
+     * @param queueDepth number of batches already waiting for a worker
+     * @return how long a new batch should wait for additional requests before being dispatched, in nanoseconds
+     */
+    public long getBatchWaitNanos(int queueDepth) {
+        double execution;
+        synchronized (this) {
+            execution = estimate(batchLimit);
+        }
+        double ahead = execution * (1.0 + queueDepth / (double) workers);
+        long wait = (long) (targetLatencyNanos - ahead);
+        return Math.max(0, Math.min(wait, maxWaitNanos));
+    }
+
+    /**
+     * @return estimated execution time for a batch of the given size, in nanoseconds. 0 if nothing was measured yet
+     */
+    public synchronized double getEstimatedExecutionNanos(int batchSize) {
+        return estimate(Math.max(1, Math.min(batchSize, maxBatchSize)));
+    }
+
+    public long getTargetLatencyNanos() {
+        return targetLatencyNanos;
+    }
+
+    private double estimate(int batchSize) {
+        if (executionNanos[batchSize] > 0.0)
+            return executionNanos[batchSize];
+
+        for (int i = batchSize - 1; i >= 1; i--) {
+            if (executionNanos[i] > 0.0)
+                return executionNanos[i] * batchSize / i;
+        }
+
+        // only larger batches were measured: a smaller batch won't be slower
+        for (int i = batchSize + 1; i <= maxBatchSize; i++) {
+            if (executionNanos[i] > 0.0)
+                return executionNanos[i];
+        }
+        return 0.0;
+    }
+}
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.NonNull;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Runtime statistics for ParallelInference:
+ * queue depth, distribution of batch sizes (number of requests per executed batch),
+ * batch execution time, end to end request latency, and number of requests
+ * rejected at admission or dropped due to expired deadlines.
+ *
+ * Latencies are kept in a log-linear histogram (4 buckets per power of two of microseconds),
+ * so percentiles are accurate to within 25%.
+ *
+ * All methods are thread safe and lock free.
+ */
+public class InferenceMetrics {
+    private static final int NUM_LATENCY_BUCKETS = 160;
+
+    private final Queue<?> queue;
+    private final int maxBatchSize;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchedRequests = new AtomicLong();
+    private final AtomicLong executionNanos = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLongArray batchSizes;
+    private final AtomicLongArray latencies = new AtomicLongArray(NUM_LATENCY_BUCKETS);
+
+    /**
+     * @param queue        the queue of pending batches, used to report the queue depth
+     * @param maxBatchSize the maximum batch size tracked in the batch size distribution.
+     *                     Larger batches are counted in the last bucket
+     */
+    public InferenceMetrics(@NonNull Queue<?> queue, int maxBatchSize) {
+        this.queue = queue;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.batchSizes = new AtomicLongArray(this.maxBatchSize + 1);
+    }
+
+    /**
+     * Record the end to end latency (submission to output) of a single request
+     *
+     * @param nanos latency in nanoseconds
+     */
+    public void recordRequestLatency(long nanos) {
+        requests.incrementAndGet();
+        latencies.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos))));
+    }
+
+    /**
+     * Record the execution of a batch
+     *
+     * @param numRequests number of requests merged in to the batch
+     * @param nanos       time spent in the forward pass(es) for the batch
+     */
+    public void recordBatch(int numRequests, long nanos) {
+        batches.incrementAndGet();
+        batchedRequests.addAndGet(numRequests);
+        executionNanos.addAndGet(nanos);
+        batchSizes.incrementAndGet(Math.max(0, Math.min(numRequests, maxBatchSize)));
+    }
+
+    /**
+     * Record a request rejected because the queue was full
+     */
+    public void recordRejected() {
+        rejected.incrementAndGet();
+    }
+
+    /**
+     * Record a request dropped before execution, because its deadline expired
+     */
+    public void recordDropped() {
+        dropped.incrementAndGet();
+    }
+
+    /**
+     * @return number of batches currently waiting for a worker
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return mean number of requests per executed batch
+     */
+    public double getMeanBatchSize() {
+        long b = batches.get();
+        return b == 0 ? 0.0 : batchedRequests.get() / (double) b;
+    }
+
+    /**
+     * @return mean forward pass time per batch, in nanoseconds
+     */
+    public double getMeanExecutionNanos() {
+        long b = batches.get();
+        return b == 0 ? 0.0 : executionNanos.get() / (double) b;
+    }
+
+    /**
+     * Batch size distribution: element i is the number of batches executed with i requests.
+     * The last element also counts all batches larger than the max batch size
+     */
+    public long[] getBatchSizeHistogram() {
+        long[] out = new long[batchSizes.length()];
+        for (int i = 0; i < out.length; i++)
+            out[i] = batchSizes.get(i);
+        return out;
+    }
+
+    /**
+     * Estimate a percentile of the request latency
+     *
+     * @param percentile percentile, in the range (0, 100]
+     * @return upper bound of the histogram bucket holding the given percentile, in nanoseconds.
+     * 0 if no requests were recorded
+     */
+    public long getLatencyPercentile(double percentile) {
+        if (percentile <= 0.0 || percentile > 100.0)
+            throw new IllegalArgumentException("Percentile must be in range (0, 100], got " + percentile);
+
+        long[] counts = new long[NUM_LATENCY_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = latencies.get(i);
+            total += counts[i];
+        }
+        if (total == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return TimeUnit.MICROSECONDS.toNanos(upperBound(i));
+        }
+        return TimeUnit.MICROSECONDS.toNanos(upperBound(counts.length - 1));
+    }
+
+    /**
+     * Reset all counters and histograms
+     */
+    public void reset() {
+        requests.set(0);
+        batches.set(0);
+        batchedRequests.set(0);
+        executionNanos.set(0);
+        rejected.set(0);
+        dropped.set(0);
+        for (int i = 0; i < batchSizes.length(); i++)
+            batchSizes.set(i, 0);
+        for (int i = 0; i < latencies.length(); i++)
+            latencies.set(i, 0);
+    }
+
+    protected static int bucket(long micros) {
+        if (micros < 4)
+            return (int) micros;
+        int exp = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) ((micros >>> (exp - 2)) & 3);
+        return Math.min(4 * (exp - 1) + sub, NUM_LATENCY_BUCKETS - 1);
+    }
+
+    protected static long upperBound(int bucket) {
+        if (bucket < 4)
+            return bucket;
+        int exp = bucket / 4 + 1;
+        int sub = bucket % 4;
+        return ((5L + sub) << (exp - 2)) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "InferenceMetrics(requests=" + getRequests() + ", batches=" + getBatches() + ", queueDepth="
+                        + getQueueDepth() + ", meanBatchSize=" + String.format("%.2f", getMeanBatchSize())
+                        + ", meanExecutionMs=" + String.format("%.3f", getMeanExecutionNanos() / 1e6)
+                        + ", p50Ms=" + getLatencyPercentile(50) / 1e6 + ", p99Ms="
+                        + getLatencyPercentile(99) / 1e6 + ", rejected=" + getRejected() + ", dropped="
+                        + getDropped() + ")";
+    }
+}
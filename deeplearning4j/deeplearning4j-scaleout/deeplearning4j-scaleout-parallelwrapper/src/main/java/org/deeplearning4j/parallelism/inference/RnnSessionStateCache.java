@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of per session RNN layer states, as used by {@link org.deeplearning4j.parallelism.StatefulRnnInference}.
+ * State is keyed by session id; the value is the state of all RNN layers for that session (key: layer name or index,
+ * value: layer state map as returned by {@code rnnGetPreviousState()}), for a single example.<br>
+ * When the cache holds maxSessions sessions, the least recently used session is evicted: its next time step will
+ * start from the default initial state.<br>
+ * State arrays are held off-heap as all INDArrays are; optionally they are also compressed (for example with the
+ * "FLOAT16" algorithm), trading some precision and CPU time on each access for memory when serving many sessions.
+ */
+@Slf4j
+public class RnnSessionStateCache {
+    private final int maxSessions;
+    private final String compression;
+    private final LinkedHashMap<String, Map<String, Map<String, INDArray>>> states;
+    private final AtomicLong evictions = new AtomicLong(0);
+
+    /**
+     * @param maxSessions Maximum number of sessions to keep state for
+     */
+    public RnnSessionStateCache(int maxSessions) {
+        this(maxSessions, null);
+    }
+
+    /**
+     * @param maxSessions Maximum number of sessions to keep state for
+     * @param compression Compression algorithm for stored state (see {@code Nd4j.getCompressor().getAvailableCompressors()}),
+     *                    or null for no compression
+     */
+    public RnnSessionStateCache(int maxSessions, String compression) {
+        if (maxSessions < 1)
+            throw new IllegalArgumentException("Maximum number of sessions should be positive, got " + maxSessions);
+        if (compression != null) {
+            compression = compression.toUpperCase();
+            if (!Nd4j.getCompressor().getAvailableCompressors().contains(compression))
+                throw new IllegalArgumentException("Unknown compression algorithm: " + compression + ", available: "
+                                + Nd4j.getCompressor().getAvailableCompressors());
+        }
+
+        this.maxSessions = maxSessions;
+        this.compression = compression;
+        //Access order: iteration starts at the least recently used session
+        this.states = new LinkedHashMap<String, Map<String, Map<String, INDArray>>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, Map<String, INDArray>>> eldest) {
+                if (size() > RnnSessionStateCache.this.maxSessions) {
+                    evictions.incrementAndGet();
+                    log.debug("Evicting RNN state of session {}", eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return State of all RNN layers for the session (decompressed), or null if there is no state for the session
+     */
+    public Map<String, Map<String, INDArray>> get(@NonNull String sessionId) {
+        Map<String, Map<String, INDArray>> stored;
+        synchronized (states) {
+            stored = states.get(sessionId);
+        }
+        if (stored == null)
+            return null;
+        return compression == null ? stored : convert(stored, false);
+    }
+
+    /**
+     * Store the state of all RNN layers for the session, replacing any previous state
+     */
+    public void put(@NonNull String sessionId, @NonNull Map<String, Map<String, INDArray>> state) {
+        Map<String, Map<String, INDArray>> toStore = compression == null ? state : convert(state, true);
+        synchronized (states) {
+            states.put(sessionId, toStore);
+        }
+    }
+
+    /**
+     * Remove the state for the session
+     *
+     * @return True if the cache held state for the session
+     */
+    public boolean remove(@NonNull String sessionId) {
+        synchronized (states) {
+            return states.remove(sessionId) != null;
+        }
+    }
+
+    public boolean contains(@NonNull String sessionId) {
+        synchronized (states) {
+            return states.containsKey(sessionId);
+        }
+    }
+
+    /**
+     * @return Number of sessions with stored state
+     */
+    public int size() {
+        synchronized (states) {
+            return states.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (states) {
+            states.clear();
+        }
+    }
+
+    /**
+     * @return Number of sessions evicted so far, because the cache was full
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    public String getCompression() {
+        return compression;
+    }
+
+    private Map<String, Map<String, INDArray>> convert(Map<String, Map<String, INDArray>> state, boolean compress) {
+        Map<String, Map<String, INDArray>> out = new HashMap<>();
+        for (Map.Entry<String, Map<String, INDArray>> layer : state.entrySet()) {
+            Map<String, INDArray> m = new HashMap<>();
+            for (Map.Entry<String, INDArray> e : layer.getValue().entrySet()) {
+                m.put(e.getKey(), compress ? Nd4j.getCompressor().compress(e.getValue(), compression)
+                                : Nd4j.getCompressor().decompress(e.getValue()));
+            }
+            out.put(layer.getKey(), m);
+        }
+        return out;
+    }
+}
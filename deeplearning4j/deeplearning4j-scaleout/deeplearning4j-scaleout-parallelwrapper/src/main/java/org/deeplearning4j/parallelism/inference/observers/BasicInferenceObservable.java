@@ -27,18 +27,27 @@ import org.nd4j.linalg.primitives.Pair;
 import java.util.Collections;
 import java.util.List;
 import java.util.Observable;
+import java.util.concurrent.Future;
 
 /**
  * This class holds reference input, and implements basic use case: SEQUENTIAL inference
  */
 @Slf4j
 public class BasicInferenceObservable extends Observable implements InferenceObservable {
+    /**
+     * Deadline value for requests without a deadline
+     */
+    public static final long NO_DEADLINE = Long.MIN_VALUE;
+
     private INDArray[] input;
     private INDArray[] inputMasks;
     @Getter
     private long id;
     private INDArray[] output;
     protected Exception exception;
+    private long deadline = NO_DEADLINE;
+    private Future<?> future;
+    private volatile boolean dropped;
 
 
     public BasicInferenceObservable(INDArray... inputs) {
@@ -62,8 +71,40 @@ public class BasicInferenceObservable extends Observable implements InferenceObs
         this.inputMasks = inputMasks;
     }
 
+    /**
+     * Set deadline and (optionally) the future of this request. Request is dropped without being executed
+     * if its deadline expires or its future gets cancelled before a worker picks it up
+     *
+     * @param deadline deadline as {@link System#nanoTime()} value, or {@link #NO_DEADLINE}
+     * @param future   future holding the result of this request. May be null
+     */
+    public void setDeadline(long deadline, Future<?> future) {
+        this.deadline = deadline;
+        this.future = future;
+    }
+
+    /**
+     * @return true if request was dropped due to expired deadline or cancellation
+     */
+    public boolean isDropped() {
+        return dropped;
+    }
+
+    /**
+     * Check if request with given deadline and future should be dropped instead of being executed
+     */
+    protected static boolean shouldDrop(long deadline, Future<?> future, long now) {
+        return (future != null && future.isCancelled()) || (deadline != NO_DEADLINE && now - deadline > 0);
+    }
+
     @Override
     public void setOutputBatches(@NonNull List<INDArray[]> output) {
+        if (dropped) {
+            this.setChanged();
+            notifyObservers();
+            return;
+        }
+
         Preconditions.checkArgument(output.size() == 1, "Expected size 1 output: got size " + output.size());
         this.output = output.get(0);
         this.setChanged();
@@ -72,6 +113,10 @@ public class BasicInferenceObservable extends Observable implements InferenceObs
 
     @Override
     public List<Pair<INDArray[],INDArray[]>> getInputBatches(){
+        if (shouldDrop(deadline, future, System.nanoTime())) {
+            dropped = true;
+            return Collections.emptyList();
+        }
         return Collections.singletonList(new Pair<>(input, inputMasks));
     }
 
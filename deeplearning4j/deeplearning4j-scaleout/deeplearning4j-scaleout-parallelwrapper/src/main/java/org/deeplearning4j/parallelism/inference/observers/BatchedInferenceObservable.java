@@ -31,6 +31,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -45,6 +46,10 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
     private List<INDArray[]> inputs = new ArrayList<>();
     private List<INDArray[]> inputMasks = new ArrayList<>();
     private List<INDArray[]> outputs = new ArrayList<>();
+    private List<Long> deadlines = new ArrayList<>();
+    private List<Future<?>> futures = new ArrayList<>();
+    // original position -> position in compacted inputs/outputs, -1 for dropped requests. null if nothing was dropped
+    private int[] positionMap;
     private AtomicInteger counter = new AtomicInteger(0);
     private ThreadLocal<Integer> position = new ThreadLocal<>();
     private List<int[]> outputBatchInputArrays = new ArrayList<>();
@@ -54,16 +59,41 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
     private ReentrantReadWriteLock realLocker = new ReentrantReadWriteLock();
     private AtomicBoolean isLocked = new AtomicBoolean(false);
     private AtomicBoolean isReadLocked = new AtomicBoolean(false);
+    private final boolean padSequences;
 
     public BatchedInferenceObservable() {
+        this(false);
+    }
 
+    /**
+     * @param padSequences if true, time series inputs (rank 3) with different lengths are batched together:
+     *                     shorter inputs are padded and masked, and time series outputs are trimmed back
+     *                     to the length of the corresponding input
+     */
+    public BatchedInferenceObservable(boolean padSequences) {
+        this.padSequences = padSequences;
     }
 
     @Override
     public void addInput(INDArray[] input, INDArray[] inputMasks) {
+        addInput(input, inputMasks, NO_DEADLINE, null);
+    }
+
+    /**
+     * Add input to this batch. Input is dropped from the batch if its deadline expires, or its future gets cancelled,
+     * before a worker picks the batch up
+     *
+     * @param input      input arrays
+     * @param inputMasks input mask arrays. May be null
+     * @param deadline   deadline as {@link System#nanoTime()} value, or {@link #NO_DEADLINE}
+     * @param future     future holding the result for this input. May be null
+     */
+    public void addInput(INDArray[] input, INDArray[] inputMasks, long deadline, Future<?> future) {
         synchronized (locker) {
             inputs.add(input);
             this.inputMasks.add(inputMasks);
+            deadlines.add(deadline);
+            futures.add(future);
             position.set(counter.getAndIncrement());
 
             if (isReadLocked.get())
@@ -78,9 +108,16 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
 
         outputBatchInputArrays.clear();
 
+        // requests that expired or were cancelled while waiting are removed before batching
+        dropExpired();
+        if (inputs.isEmpty()) {
+            realLocker.writeLock().unlock();
+            return Collections.emptyList();
+        }
+
         // this method should pile individual examples into single batch
 
-        if (counter.get() > 1) {
+        if (inputs.size() > 1) {
 
             int pos = 0;
             List<Pair<INDArray[],INDArray[]>> out = new ArrayList<>();
@@ -90,7 +127,7 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
                 //First: determine which we can actually batch...
                 int lastPossible = pos;
                 for (int i = pos+1; i < inputs.size(); i++) {
-                    if (canBatch(inputs.get(pos), inputs.get(i))) {
+                    if (canBatch(inputs.get(pos), inputs.get(i), padSequences)) {
                         lastPossible = i;
                     } else {
                         break;
@@ -131,15 +168,47 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
         }
     }
 
-    private static boolean canBatch(INDArray[] first, INDArray[] candidate){
+    private void dropExpired() {
+        long now = System.nanoTime();
+        int numDropped = 0;
+        for (int i = 0; i < deadlines.size(); i++) {
+            if (shouldDrop(deadlines.get(i), futures.get(i), now))
+                numDropped++;
+        }
+
+        if (numDropped == 0)
+            return;
+
+        log.debug("Dropping {} expired or cancelled requests out of {}", numDropped, inputs.size());
+        positionMap = new int[inputs.size()];
+        List<INDArray[]> liveInputs = new ArrayList<>(inputs.size() - numDropped);
+        List<INDArray[]> liveMasks = new ArrayList<>(inputs.size() - numDropped);
+        for (int i = 0; i < inputs.size(); i++) {
+            if (shouldDrop(deadlines.get(i), futures.get(i), now)) {
+                positionMap[i] = -1;
+            } else {
+                positionMap[i] = liveInputs.size();
+                liveInputs.add(inputs.get(i));
+                liveMasks.add(inputMasks.get(i));
+            }
+        }
+        inputs = liveInputs;
+        inputMasks = liveMasks;
+    }
+
+    private static boolean canBatch(INDArray[] first, INDArray[] candidate, boolean padSequences){
         //Check if we can batch these inputs into the one array. This isn't always possible - for example, some fully
         // convolutional nets can support different input image sizes
         //For now: let's simply require that the inputs have the same shape
-        //In the future: we'll intelligently handle the RNN variable length case
+        //The exception is the RNN variable length case, if enabled: time series are padded to the same length and masked
         //Note also we can ignore input masks here - they should have shared dimensions with the input, thus if the
         // inputs can be batched, so can the masks
         for(int i=0; i<first.length; i++ ){
-            if(!Arrays.equals(first[i].shape(), candidate[i].shape())){
+            if(padSequences && first[i].rank() == 3 && candidate[i].rank() == 3){
+                if(first[i].size(0) != candidate[i].size(0) || first[i].size(1) != candidate[i].size(1)){
+                    return false;
+                }
+            } else if(!Arrays.equals(first[i].shape(), candidate[i].shape())){
                 return false;
             }
         }
@@ -190,10 +259,18 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
             for(int i=1; i<indices.length; i++ ){
                 indices[i] = NDArrayIndex.all();
             }
+            //Time series outputs of padded inputs are trimmed back to the input length
+            boolean trim = padSequences && netOutput.rank() == 3;
             int examplesSoFar = 0;
             for( int inNum = 0; inNum < numSplits; inNum++ ){
-                val inSizeEx = inputs.get(firstInputComponent + inNum)[0].size(0);
+                INDArray in = inputs.get(firstInputComponent + inNum)[0];
+                val inSizeEx = in.size(0);
                 indices[0] = NDArrayIndex.interval(examplesSoFar, examplesSoFar+inSizeEx);
+                if(trim && in.rank() == 3 && in.size(2) < netOutput.size(2)){
+                    indices[2] = NDArrayIndex.interval(0, in.size(2));
+                } else if(indices.length > 2){
+                    indices[2] = NDArrayIndex.all();
+                }
                 out[inNum] = netOutput.get(indices);
                 examplesSoFar += inSizeEx;
             }
@@ -222,6 +299,21 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
         return counter.get();
     }
 
+    /**
+     * @return position of the input added by the current thread
+     */
+    public int getPosition() {
+        return position.get();
+    }
+
+    /**
+     * @param position position of the input, as returned by {@link #getPosition()}
+     * @return true if input at given position was dropped due to expired deadline or cancellation
+     */
+    public boolean isDropped(int position) {
+        return positionMap != null && positionMap[position] < 0;
+    }
+
 
 
     public boolean isLocked() {
@@ -239,7 +331,20 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
     @Override
     public INDArray[] getOutput() {
         // basically we should take care of splits here: each client should get its own part of output, wrt order number
+        return getOutput(position.get());
+    }
+
+    /**
+     * Get output for the input at given position
+     *
+     * @param position position of the input, as returned by {@link #getPosition()}
+     * @return
+     */
+    public INDArray[] getOutput(int position) {
         checkOutputException();
-        return outputs.get(position.get());
+        int idx = positionMap == null ? position : positionMap[position];
+        if (idx < 0)
+            throw new ND4JIllegalStateException("Request at position " + position + " was dropped before execution");
+        return outputs.get(idx);
     }
 }
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference.observers;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.parallelism.inference.InferenceObservable;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Observer implementation for asynchronous inference: instead of blocking caller,
+ * it completes a {@link CompletableFuture} once output is available.
+ *
+ * Since observable may finish before caller knows its position within a batch,
+ * the future is completed once both {@link #update(Observable, Object)} and
+ * {@link #bind(InferenceObservable, int)} were called, whichever comes last.
+ */
+@Slf4j
+public class FutureInferenceObserver implements Observer {
+    @Getter
+    private final CompletableFuture<INDArray[]> future;
+    private InferenceObservable observable;
+    private int position;
+    private boolean finished;
+
+    public FutureInferenceObserver() {
+        this(new CompletableFuture<INDArray[]>());
+    }
+
+    public FutureInferenceObserver(@NonNull CompletableFuture<INDArray[]> future) {
+        this.future = future;
+    }
+
+    /**
+     * Bind this observer to the observable holding the request
+     *
+     * @param observable observable the request was added to
+     * @param position   position of the request within the observable. Ignored for non-batched observables
+     */
+    public synchronized void bind(@NonNull InferenceObservable observable, int position) {
+        this.observable = observable;
+        this.position = position;
+        if (finished)
+            complete();
+    }
+
+    @Override
+    public synchronized void update(Observable o, Object arg) {
+        finished = true;
+        if (observable != null)
+            complete();
+    }
+
+    private void complete() {
+        if (future.isDone())
+            return;
+
+        try {
+            if (observable instanceof BatchedInferenceObservable) {
+                BatchedInferenceObservable batched = (BatchedInferenceObservable) observable;
+                if (batched.isDropped(position))
+                    future.completeExceptionally(new TimeoutException("Request deadline expired before execution"));
+                else
+                    future.complete(batched.getOutput(position));
+            } else if (observable instanceof BasicInferenceObservable
+                            && ((BasicInferenceObservable) observable).isDropped()) {
+                future.completeExceptionally(new TimeoutException("Request deadline expired before execution"));
+            } else {
+                future.complete(observable.getOutput());
+            }
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.InferenceMetrics;
+import org.deeplearning4j.parallelism.inference.InferenceMode;
+import org.deeplearning4j.util.ModelSerializer;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.io.ClassPathResource;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator comparing fixed batch limit BATCHED inference with adaptive batching (latency target).
+ * Clients issue requests with exponentially distributed gaps, so that total offered load is the given rate,
+ * and the latency percentiles, batch sizes and achieved throughput are logged for each rate.
+ */
+@Slf4j
+@Ignore
+public class AdaptiveBatchingPerformanceTest {
+    private static final int NUM_CLIENTS = 64;
+    private static final long DURATION_MS = 10000;
+    private static final long LATENCY_TARGET_MS = 20;
+
+    @Test
+    public void testFixedVsAdaptive() throws Exception {
+        File file = new ClassPathResource("models/LenetMnistMLN.zip").getFile();
+        MultiLayerNetwork model = ModelSerializer.restoreMultiLayerNetwork(file, true);
+        INDArray input = Nd4j.rand(1, 784);
+
+        for (int rate : new int[] {50, 200, 1000, 4000}) {
+            for (boolean adaptive : new boolean[] {false, true}) {
+                ParallelInference.Builder builder = new ParallelInference.Builder(model)
+                                .inferenceMode(InferenceMode.BATCHED).batchLimit(64).queueLimit(256).workers(2);
+                if (adaptive)
+                    builder.latencyTarget(LATENCY_TARGET_MS, TimeUnit.MILLISECONDS);
+                ParallelInference pi = builder.build();
+
+                //warmup
+                runLoad(pi, input, rate, 2000);
+                pi.getMetrics().reset();
+
+                long completed = runLoad(pi, input, rate, DURATION_MS);
+                InferenceMetrics metrics = pi.getMetrics();
+
+                log.info("{} @ {} req/s offered: {} req/s completed; p50 {} ms, p99 {} ms, mean batch size {}; batch sizes: {}",
+                                adaptive ? "adaptive (" + LATENCY_TARGET_MS + " ms target)" : "fixed", rate,
+                                completed * 1000.0 / DURATION_MS, metrics.getLatencyPercentile(50) / 1e6,
+                                metrics.getLatencyPercentile(99) / 1e6,
+                                String.format("%.2f", metrics.getMeanBatchSize()),
+                                Arrays.toString(metrics.getBatchSizeHistogram()));
+                pi.shutdown();
+            }
+        }
+    }
+
+    private static long runLoad(final ParallelInference pi, final INDArray input, int rate, final long durationMs)
+                    throws InterruptedException {
+        final double meanGapNanos = 1e9 * NUM_CLIENTS / rate;
+        final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMs);
+        final long[] completed = new long[NUM_CLIENTS];
+        final CountDownLatch latch = new CountDownLatch(NUM_CLIENTS);
+
+        for (int c = 0; c < NUM_CLIENTS; c++) {
+            final int client = c;
+            new Thread(() -> {
+                Random rng = new Random(client);
+                long next = System.nanoTime();
+                while (true) {
+                    next += (long) (-Math.log(1.0 - rng.nextDouble()) * meanGapNanos);
+                    if (next >= end)
+                        break;
+                    long sleep = next - System.nanoTime();
+                    if (sleep > 0)
+                        LockSupport.parkNanos(sleep);
+
+                    pi.output(input);
+                    completed[client]++;
+                }
+                latch.countDown();
+            }).start();
+        }
+        latch.await();
+
+        long total = 0;
+        for (long l : completed)
+            total += l;
+        return total;
+    }
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.InferenceMode;
+import org.deeplearning4j.util.ModelSerializer;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.io.ClassPathResource;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Throughput of MultiLayerNetwork.outputConcurrent (one model, shared parameters)
+ * vs ParallelInference with one cloned model per worker, for a varying number of client threads
+ */
+@Slf4j
+@Ignore
+public class ConcurrentOutputPerformanceTest {
+
+    @Test
+    public void testThroughput() throws Exception {
+        File file = new ClassPathResource("models/LenetMnistMLN.zip").getFile();
+        final MultiLayerNetwork model = ModelSerializer.restoreMultiLayerNetwork(file, true);
+        final INDArray input = Nd4j.rand(1, 784);
+        final int requestsPerThread = 2000;
+
+        for (int numThreads : new int[] {1, 2, 4, 8, 16}) {
+            final ParallelInference pi = new ParallelInference.Builder(model).inferenceMode(InferenceMode.SEQUENTIAL)
+                            .workers(numThreads).build();
+
+            for (final boolean concurrent : new boolean[] {false, true}) {
+                //warmup
+                for (int i = 0; i < 100; i++) {
+                    if (concurrent)
+                        model.outputConcurrent(input);
+                    else
+                        pi.output(input);
+                }
+
+                final CountDownLatch latch = new CountDownLatch(numThreads);
+                long time1 = System.nanoTime();
+                for (int t = 0; t < numThreads; t++) {
+                    new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            for (int i = 0; i < requestsPerThread; i++) {
+                                if (concurrent)
+                                    model.outputConcurrent(input);
+                                else
+                                    pi.output(input);
+                            }
+                            latch.countDown();
+                        }
+                    }).start();
+                }
+                latch.await();
+                long time2 = System.nanoTime();
+
+                log.info("{} threads, {}: {} requests/s", numThreads,
+                                concurrent ? "outputConcurrent (shared params)" : "ParallelInference (cloned models)",
+                                (double) requestsPerThread * numThreads / ((time2 - time1) / 1e9));
+            }
+            pi.shutdown();
+        }
+    }
+}
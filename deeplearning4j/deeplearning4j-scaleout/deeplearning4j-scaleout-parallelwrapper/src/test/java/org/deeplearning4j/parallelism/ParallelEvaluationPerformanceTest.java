@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.datasets.iterator.ExistingDataSetIterator;
+import org.deeplearning4j.eval.Evaluation;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.util.ModelSerializer;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.io.ClassPathResource;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Evaluation throughput of MultiLayerNetwork.evaluate (single thread) vs ParallelEvaluation,
+ * for a varying number of worker threads
+ */
+@Slf4j
+@Ignore
+public class ParallelEvaluationPerformanceTest {
+
+    @Test
+    public void testThroughput() throws Exception {
+        File file = new ClassPathResource("models/LenetMnistMLN.zip").getFile();
+        MultiLayerNetwork model = ModelSerializer.restoreMultiLayerNetwork(file, true);
+
+        int nExamples = 20000;
+        DataSet ds = new DataSet(Nd4j.rand(nExamples, 784), Nd4j.zeros(nExamples, 10));
+        for (int i = 0; i < nExamples; i++) {
+            ds.getLabels().putScalar(i, i % 10, 1.0);
+        }
+        List<DataSet> batches = ds.batchBy(64);
+        DataSetIterator iter = new ExistingDataSetIterator(batches);
+
+        //warmup
+        model.evaluate(iter);
+
+        long time1 = System.nanoTime();
+        Evaluation exp = model.evaluate(iter);
+        long baseline = Math.max(1, (System.nanoTime() - time1) / 1000000);
+        log.info("Single threaded: {} ms ({} examples/sec)", baseline, 1000L * nExamples / baseline);
+
+        for (int workers : new int[] {1, 2, 4, 8, 16, 32}) {
+            ParallelEvaluation pe = new ParallelEvaluation.Builder(model).workers(workers).build();
+            pe.evaluate(iter);
+
+            long time2 = System.nanoTime();
+            Evaluation e = pe.evaluate(iter);
+            long time = Math.max(1, (System.nanoTime() - time2) / 1000000);
+            assertEquals(exp.getNumRowCounter(), e.getNumRowCounter());
+            assertEquals(exp.accuracy(), e.accuracy(), 1e-6);
+
+            log.info("ParallelEvaluation, {} workers: {} ms ({} examples/sec), speedup {}x", workers, time,
+                            1000L * nExamples / time, String.format("%.2f", baseline / (double) time));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism;
+
+import org.deeplearning4j.datasets.iterator.ExistingDataSetIterator;
+import org.deeplearning4j.datasets.iterator.impl.MultiDataSetIteratorAdapter;
+import org.deeplearning4j.eval.Evaluation;
+import org.deeplearning4j.eval.ROCMultiClass;
+import org.deeplearning4j.eval.RegressionEvaluation;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+public class ParallelEvaluationTest {
+
+    private static MultiLayerNetwork getNet() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345)
+                        .list()
+                        .layer(new DenseLayer.Builder().nIn(4).nOut(10).activation(Activation.TANH).build())
+                        .layer(new OutputLayer.Builder().nIn(10).nOut(3).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                        .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+
+    private static DataSetIterator getData(int nExamples, int nOut) {
+        Nd4j.getRandom().setSeed(12345);
+        DataSet ds = new DataSet(Nd4j.rand(nExamples, 4), Nd4j.zeros(nExamples, nOut));
+        for (int i = 0; i < nExamples; i++) {
+            ds.getLabels().putScalar(i, i % nOut, 1.0);
+        }
+        return new ExistingDataSetIterator(ds.batchBy(10));
+    }
+
+    @Test
+    public void testEvaluationMLN() {
+        MultiLayerNetwork net = getNet();
+        DataSetIterator iter = getData(500, 3);
+
+        Evaluation expEval = new Evaluation();
+        ROCMultiClass expRoc = new ROCMultiClass(0);
+        RegressionEvaluation expReg = new RegressionEvaluation();
+        net.doEvaluation(iter, expEval, expRoc, expReg);
+
+        for (int workers : new int[] {1, 3, 8}) {
+            ParallelEvaluation pe = new ParallelEvaluation.Builder(net).workers(workers).queueLimit(2).build();
+
+            Evaluation eval = new Evaluation();
+            ROCMultiClass roc = new ROCMultiClass(0);
+            RegressionEvaluation reg = new RegressionEvaluation();
+            pe.doEvaluation(iter, eval, roc, reg);
+
+            assertEquals(500, eval.getNumRowCounter());
+            assertEquals(expEval.stats(), eval.stats());
+            for (int i = 0; i < 3; i++) {
+                assertEquals(expRoc.calculateAUC(i), roc.calculateAUC(i), 1e-6);
+                assertEquals(expReg.meanSquaredError(i), reg.meanSquaredError(i), 1e-6);
+            }
+
+            assertEquals(expEval.stats(), pe.evaluate(iter).stats());
+        }
+    }
+
+    @Test
+    public void testEvaluationComputationGraph() {
+        ComputationGraph net = getNet().toComputationGraph();
+        DataSetIterator iter = getData(200, 3);
+
+        Evaluation exp = net.evaluate(iter);
+
+        ParallelEvaluation pe = new ParallelEvaluation.Builder(net).workers(4).build();
+        assertEquals(exp.stats(), pe.evaluate(iter).stats());
+
+        Evaluation mdsEval = pe.doEvaluation(new MultiDataSetIteratorAdapter(iter), new Evaluation())[0];
+        assertEquals(exp.stats(), mdsEval.stats());
+    }
+
+    @Test
+    public void testWorkerFailure() {
+        MultiLayerNetwork net = getNet();
+        //Labels with the wrong number of columns: evaluation should fail in the workers, and not hang
+        DataSetIterator iter = getData(500, 5);
+
+        ParallelEvaluation pe = new ParallelEvaluation.Builder(net).workers(4).queueLimit(1).build();
+        try {
+            pe.evaluate(iter);
+            fail("Expected exception");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("Error during parallel evaluation"));
+        }
+    }
+
+    @Test
+    public void testIteratorFailure() throws Exception {
+        MultiLayerNetwork net = getNet();
+        final Iterator<DataSet> data = getData(500, 3);
+        //Exception on the calling thread while feeding the workers: the workers must be stopped, not leaked
+        Iterator<DataSet> failing = new Iterator<DataSet>() {
+            private int count;
+
+            @Override
+            public boolean hasNext() {
+                return data.hasNext();
+            }
+
+            @Override
+            public DataSet next() {
+                if (++count == 5)
+                    throw new IllegalStateException("Iterator failure");
+                return data.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        ParallelEvaluation pe = new ParallelEvaluation.Builder(net).workers(4).queueLimit(1).build();
+        try {
+            pe.evaluate(new ExistingDataSetIterator(failing));
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertEquals("Iterator failure", e.getMessage());
+        }
+
+        long end = System.currentTimeMillis() + 10000;
+        while (countWorkers() > 0 && System.currentTimeMillis() < end)
+            Thread.sleep(50);
+        assertEquals(0, countWorkers());
+    }
+
+    private static int countWorkers() {
+        int count = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.isAlive() && t.getName().startsWith("ParallelEvaluation-worker-"))
+                count++;
+        }
+        return count;
+    }
+}
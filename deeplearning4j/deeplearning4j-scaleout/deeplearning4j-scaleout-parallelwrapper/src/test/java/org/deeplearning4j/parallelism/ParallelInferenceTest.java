@@ -31,10 +31,15 @@ import org.nd4j.linalg.io.ClassPathResource;
 import org.deeplearning4j.datasets.iterator.impl.MnistDataSetIterator;
 import org.deeplearning4j.eval.Evaluation;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.AdaptiveBatchController;
+import org.deeplearning4j.parallelism.inference.AdmissionPolicy;
+import org.deeplearning4j.parallelism.inference.InferenceMetrics;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
+import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObservable;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
 import org.deeplearning4j.parallelism.inference.observers.BatchedInferenceObservable;
+import org.deeplearning4j.parallelism.inference.observers.FutureInferenceObserver;
 import org.deeplearning4j.util.ModelSerializer;
 import org.junit.After;
 import org.junit.Before;
@@ -43,12 +48,18 @@ import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.primitives.Pair;
 
 import java.io.File;
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
@@ -324,6 +335,355 @@ public class ParallelInferenceTest {
     }
 
 
+    @Test(timeout = 30000L)
+    public void testAdaptiveProvider1() throws Exception {
+        final LinkedBlockingQueue<InferenceObservable> queue = new LinkedBlockingQueue<>();
+        final BasicInferenceObserver observer = new BasicInferenceObserver();
+
+        // 1 second latency target: once first batch is measured, batch limit grows to max batch size
+        AdaptiveBatchController controller = new AdaptiveBatchController(1000000000L, 1000000000L, 2, 1);
+        controller.recordExecution(1, 1000L);
+        assertEquals(2, controller.getBatchLimit());
+
+        final ParallelInference.AdaptiveObservablesProvider provider =
+                        new ParallelInference.AdaptiveObservablesProvider(controller, queue);
+
+        // batch is held open for the wait window, but the caller isn't blocked
+        InferenceObservable first = provider.setInput(observer, Nd4j.create(100).assign(1.0));
+        assertEquals(0, queue.size());
+
+        // second input fills the batch up: it's dispatched right away
+        InferenceObservable second = provider.setInput(observer, Nd4j.create(100).assign(2.0));
+
+        assertTrue(first == second);
+        assertEquals(1, queue.size());
+
+        List<Pair<INDArray[],INDArray[]>> l = second.getInputBatches();
+        assertEquals(1, l.size());
+        assertArrayEquals(new long[] {2, 100}, l.get(0).getFirst()[0].shape());
+
+        // batch that isn't filled up is dispatched once its window expires
+        InferenceObservable third = provider.setInput(observer, Nd4j.create(50));
+        assertEquals(1, queue.size());
+        while (queue.size() < 2)
+            Thread.sleep(5);
+        assertArrayEquals(new long[] {1, 50}, third.getInputBatches().get(0).getFirst()[0].shape());
+
+        provider.shutdown();
+    }
+
+    @Test(timeout = 30000L)
+    public void testAdaptiveProviderFullQueue() throws Exception {
+        // queue is full: batches can't be dispatched until a worker takes one
+        LinkedBlockingQueue<InferenceObservable> queue = new LinkedBlockingQueue<>(1);
+        queue.put(new BatchedInferenceObservable());
+        BasicInferenceObserver observer = new BasicInferenceObserver();
+
+        AdaptiveBatchController controller = new AdaptiveBatchController(1000000000L, 50000000L, 2, 1);
+        controller.recordExecution(1, 1000L);
+
+        ParallelInference.AdaptiveObservablesProvider provider =
+                        new ParallelInference.AdaptiveObservablesProvider(controller, queue);
+
+        // window expires while the queue is full: the timer thread blocks queueing this batch
+        InferenceObservable first = provider.setInput(observer, Nd4j.create(100));
+        Thread.sleep(500);
+
+        // ... but doesn't hold the provider lock, so other submitters aren't blocked
+        InferenceObservable second = provider.setInput(observer, Nd4j.create(50));
+        assertTrue(first != second);
+
+        queue.take();
+        assertTrue(first == queue.take());
+        assertArrayEquals(new long[] {1, 100}, first.getInputBatches().get(0).getFirst()[0].shape());
+
+        provider.shutdown();
+    }
+
+    @Test(timeout = 30000L)
+    public void testAdaptiveProvider2() throws Exception {
+        LinkedBlockingQueue<InferenceObservable> queue = new LinkedBlockingQueue<>();
+        BasicInferenceObserver observer = new BasicInferenceObserver();
+
+        // zero wait window: every batch is dispatched by the thread that opened it
+        AdaptiveBatchController controller = new AdaptiveBatchController(1000000000L, 0L, 8, 1);
+        controller.recordExecution(1, 1000L);
+
+        ParallelInference.AdaptiveObservablesProvider provider =
+                        new ParallelInference.AdaptiveObservablesProvider(controller, queue);
+
+        InferenceObservable observable1 = provider.setInput(observer, Nd4j.create(100));
+        InferenceObservable observable2 = provider.setInput(observer, Nd4j.create(50));
+
+        assertTrue(observable1 != observable2);
+        assertEquals(2, queue.size());
+        assertArrayEquals(new long[] {1, 100}, observable1.getInputBatches().get(0).getFirst()[0].shape());
+        assertArrayEquals(new long[] {1, 50}, observable2.getInputBatches().get(0).getFirst()[0].shape());
+    }
+
+    @Test(timeout = 60000L)
+    public void testAdaptiveBatchedInference() throws Exception {
+        Nd4j.getRandom().setSeed(12345);
+
+        int nIn = 10;
+        int[] tsLengths = {3, 5, 7, 10};
+
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .activation(Activation.TANH)
+                .seed(12345)
+                .list()
+                .layer(new LSTM.Builder().nIn(nIn).nOut(5).build())
+                .layer(new RnnOutputLayer.Builder().nIn(5).nOut(5).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        for (int w : new int[] {1, 2}) {
+            final ParallelInference inf = new ParallelInference.Builder(net)
+                    .inferenceMode(InferenceMode.BATCHED)
+                    .batchLimit(20)
+                    .latencyTarget(50, TimeUnit.MILLISECONDS)
+                    .queueLimit(64)
+                    .workers(w).build();
+
+            assertNotNull(inf.getBatchController());
+
+            List<INDArray> arrs = new ArrayList<>();
+            List<INDArray> exp = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                INDArray in = Nd4j.rand(new int[] {1, nIn, tsLengths[i % tsLengths.length]});
+                arrs.add(in);
+                exp.add(net.output(in));
+            }
+
+            testParallelInference(inf, arrs, exp);
+
+            InferenceMetrics metrics = inf.getMetrics();
+            assertEquals(40, metrics.getRequests());
+            long batched = 0;
+            long[] hist = metrics.getBatchSizeHistogram();
+            for (int i = 0; i < hist.length; i++)
+                batched += i * hist[i];
+            assertEquals(40, batched);
+            assertTrue(metrics.getLatencyPercentile(99) > 0);
+
+            inf.shutdown();
+        }
+    }
+
+    @Test(timeout = 30000L)
+    public void testSequenceBucketingProvider() throws Exception {
+        LinkedBlockingQueue<InferenceObservable> queue = new LinkedBlockingQueue<>();
+        BasicInferenceObserver observer = new BasicInferenceObserver();
+        ParallelInference.ObservablesProvider provider = new ParallelInference.ObservablesProvider(10000000L, 10, queue);
+        provider.sequenceBuckets = new int[] {8};
+
+        // lengths 3 and 5 share the first bucket, length 12 goes to the overflow bucket
+        InferenceObservable observable1 = provider.setInput(observer, Nd4j.create(new int[] {1, 4, 3}).assign(1.0));
+        InferenceObservable observable2 = provider.setInput(observer, Nd4j.create(new int[] {1, 4, 5}).assign(2.0));
+        InferenceObservable observable3 = provider.setInput(observer, Nd4j.create(new int[] {1, 4, 12}).assign(3.0));
+
+        assertTrue(observable1 == observable2);
+        assertTrue(observable1 != observable3);
+        assertEquals(2, queue.size());
+
+        List<Pair<INDArray[],INDArray[]>> l = observable1.getInputBatches();
+        assertEquals(1, l.size());
+        assertArrayEquals(new long[] {2, 4, 5}, l.get(0).getFirst()[0].shape());
+
+        // shorter sequence is padded and masked
+        INDArray expMask = Nd4j.create(new double[][] {{1, 1, 1, 0, 0}, {1, 1, 1, 1, 1}});
+        assertEquals(expMask, l.get(0).getSecond()[0]);
+
+        // time series output is trimmed back to the input length
+        INDArray out = Nd4j.rand(new int[] {2, 7, 5});
+        observable1.setOutputBatches(Collections.singletonList(new INDArray[] {out}));
+        BatchedInferenceObservable batched = (BatchedInferenceObservable) observable1;
+        assertEquals(out.get(NDArrayIndex.interval(0, 1), NDArrayIndex.all(), NDArrayIndex.interval(0, 3)),
+                        batched.getOutput(0)[0]);
+        assertEquals(out.get(NDArrayIndex.interval(1, 2), NDArrayIndex.all(), NDArrayIndex.all()),
+                        batched.getOutput(1)[0]);
+    }
+
+    @Test(timeout = 60000L)
+    public void testSequenceBucketingInference() throws Exception {
+        Nd4j.getRandom().setSeed(12345);
+
+        int nIn = 10;
+
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .activation(Activation.TANH)
+                .seed(12345)
+                .list()
+                .layer(new LSTM.Builder().nIn(nIn).nOut(5).build())
+                .layer(new RnnOutputLayer.Builder().nIn(5).nOut(5).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        for (boolean adaptive : new boolean[] {false, true}) {
+            ParallelInference.Builder builder = new ParallelInference.Builder(net)
+                    .inferenceMode(InferenceMode.BATCHED)
+                    .batchLimit(20)
+                    .queueLimit(64)
+                    .sequenceBucketing(8, 16)
+                    .workers(2);
+            if (adaptive)
+                builder.latencyTarget(50, TimeUnit.MILLISECONDS);
+            ParallelInference inf = builder.build();
+
+            List<INDArray> arrs = new ArrayList<>();
+            List<INDArray> exp = new ArrayList<>();
+            Random r = new Random(12345);
+            for (int i = 0; i < 100; i++) {
+                INDArray in = Nd4j.rand(new int[] {1, nIn, r.nextInt(24) + 1});
+                arrs.add(in);
+                exp.add(net.output(in));
+            }
+
+            testParallelInference(inf, arrs, exp);
+
+            inf.shutdown();
+        }
+    }
+
+    @Test(timeout = 30000L)
+    public void testProviderRejection() throws Exception {
+        LinkedBlockingQueue<InferenceObservable> queue = new LinkedBlockingQueue<>(1);
+        ParallelInference.ObservablesProvider provider = new ParallelInference.ObservablesProvider(10000000L, 1, queue);
+        provider.admissionPolicy = AdmissionPolicy.REJECT;
+
+        FutureInferenceObserver observer1 = new FutureInferenceObserver();
+        InferenceObservable observable1 = provider.setInput(observer1, new INDArray[] {Nd4j.create(100)}, null,
+                        BasicInferenceObservable.NO_DEADLINE, observer1.getFuture());
+        observer1.bind(observable1, ((BatchedInferenceObservable) observable1).getPosition());
+        assertEquals(1, queue.size());
+        assertFalse(observer1.getFuture().isDone());
+
+        // queue is full, and batch limit is reached: second request is rejected right away
+        FutureInferenceObserver observer2 = new FutureInferenceObserver();
+        InferenceObservable observable2 = provider.setInput(observer2, new INDArray[] {Nd4j.create(100)}, null,
+                        BasicInferenceObservable.NO_DEADLINE, observer2.getFuture());
+        observer2.bind(observable2, ((BatchedInferenceObservable) observable2).getPosition());
+        assertEquals(1, queue.size());
+        assertTrue(observer2.getFuture().isCompletedExceptionally());
+
+        try {
+            observer2.getFuture().get();
+            fail("Expected exception");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void testOutputAsync() throws Exception {
+        Nd4j.getRandom().setSeed(12345);
+
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .activation(Activation.TANH)
+                .seed(12345)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(10).nOut(10).build())
+                .layer(new OutputLayer.Builder().nIn(10).nOut(5).activation(Activation.SOFTMAX).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        for (InferenceMode m : InferenceMode.values()) {
+            ParallelInference inf = new ParallelInference.Builder(net)
+                    .inferenceMode(m)
+                    .batchLimit(8)
+                    .queueLimit(64)
+                    .workers(2).build();
+
+            List<INDArray> in = new ArrayList<>();
+            List<CompletableFuture<INDArray[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                INDArray arr = Nd4j.rand(1, 10);
+                in.add(arr);
+                futures.add(inf.outputAsync(arr));
+            }
+
+            for (int i = 0; i < in.size(); i++) {
+                INDArray[] out = futures.get(i).get(10, TimeUnit.SECONDS);
+                assertEquals(1, out.length);
+                assertEquals(net.output(in.get(i)), out[0]);
+            }
+
+            // bookkeeping callbacks run right after futures complete
+            while (inf.getAsyncInFlight() > 0)
+                Thread.sleep(10);
+            if (m != InferenceMode.INPLACE) {
+                assertEquals(2, inf.getInFlightPerWorker().length);
+                assertEquals(100, inf.getMetrics().getRequests());
+            }
+
+            // expired deadline: request is dropped without execution
+            CompletableFuture<INDArray[]> expired =
+                            inf.outputAsync(new INDArray[] {Nd4j.rand(1, 10)}, null, -1, TimeUnit.MILLISECONDS);
+            if (m == InferenceMode.INPLACE) {
+                // executed in calling thread, deadline has no effect
+                assertNotNull(expired.get());
+            } else {
+                try {
+                    expired.get(10, TimeUnit.SECONDS);
+                    fail("Expected exception");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof TimeoutException);
+                }
+                while (inf.getAsyncInFlight() > 0)
+                    Thread.sleep(10);
+                assertEquals(1, inf.getMetrics().getDropped());
+            }
+
+            inf.shutdown();
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void testOutputAsyncAdaptiveNonBlocking() throws Exception {
+        Nd4j.getRandom().setSeed(12345);
+
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .activation(Activation.TANH)
+                .seed(12345)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(10).nOut(10).build())
+                .layer(new OutputLayer.Builder().nIn(10).nOut(5).activation(Activation.SOFTMAX).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        ParallelInference inf = new ParallelInference.Builder(net)
+                .inferenceMode(InferenceMode.BATCHED)
+                .batchLimit(8)
+                .latencyTarget(10, TimeUnit.SECONDS)
+                .maxBatchWait(2, TimeUnit.SECONDS)
+                .workers(1).build();
+
+        // nothing is batched until the first execution is measured
+        inf.output(Nd4j.rand(1, 10));
+        while (inf.getBatchController().getBatchLimit() < 2)
+            Thread.sleep(10);
+
+        // batch of a single request is held open for 2 seconds: outputAsync must return before that
+        INDArray in = Nd4j.rand(1, 10);
+        long start = System.nanoTime();
+        CompletableFuture<INDArray[]> future = inf.outputAsync(in);
+        long elapsed = System.nanoTime() - start;
+        assertTrue("outputAsync took " + elapsed / 1000000 + " ms", elapsed < TimeUnit.SECONDS.toNanos(1));
+        assertFalse(future.isDone());
+
+        assertEquals(net.output(in), future.get(10, TimeUnit.SECONDS)[0]);
+
+        inf.shutdown();
+    }
+
     protected void evalClassifcationSingleThread(@NonNull ParallelInference inf, @NonNull DataSetIterator iterator) {
         DataSet ds = iterator.next();
         log.info("NumColumns: {}", ds.getLabels().columns());
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.datasets.iterator.ExistingDataSetIterator;
+import org.deeplearning4j.datasets.iterator.SequenceLengthBucketingIterator;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.LSTM;
+import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.InferenceMode;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Inference throughput for variable length sequences, with a long tailed (Pareto) length distribution:
+ * most sequences are short, a few are very long.
+ *
+ * Compares minibatches padded to the longest sequence in the minibatch against minibatches built by
+ * {@link SequenceLengthBucketingIterator}, and ParallelInference with and without sequence bucketing.
+ * Throughput is reported in real (unpadded) time steps per second.
+ */
+@Slf4j
+@Ignore
+public class SequenceBucketingPerformanceTest {
+    private static final int NUM_SEQUENCES = 2048;
+    private static final int MIN_LENGTH = 5;
+    private static final int MAX_LENGTH = 500;
+    private static final double PARETO_ALPHA = 1.2;
+    private static final int N_IN = 32;
+    private static final int BATCH_SIZE = 32;
+    private static final int[] BUCKETS = {10, 20, 40, 80, 160, 320};
+
+    @Test
+    public void testBucketingIterator() {
+        MultiLayerNetwork net = getNetwork();
+        List<INDArray> sequences = generateSequences();
+        long realSteps = 0;
+        for (INDArray s : sequences)
+            realSteps += s.size(2);
+
+        //Minibatches in arrival order, padded to the longest sequence in each
+        List<DataSet> padded = new ArrayList<>();
+        for (int i = 0; i < sequences.size(); i += BATCH_SIZE) {
+            List<DataSet> batch = new ArrayList<>();
+            for (int j = i; j < Math.min(i + BATCH_SIZE, sequences.size()); j++)
+                batch.add(new DataSet(sequences.get(j), null));
+            padded.add(DataSet.merge(batch));
+        }
+
+        List<DataSet> single = new ArrayList<>();
+        for (INDArray s : sequences)
+            single.add(new DataSet(s, null));
+
+        for (int rep = 0; rep < 3; rep++) {
+            long paddedSteps = 0;
+            long start = System.nanoTime();
+            for (DataSet ds : padded) {
+                net.output(ds.getFeatures(), false, ds.getFeaturesMaskArray(), null);
+                paddedSteps += ds.getFeatures().size(0) * ds.getFeatures().size(2);
+            }
+            long paddedTime = System.nanoTime() - start;
+
+            DataSetIterator iter = new SequenceLengthBucketingIterator(new ExistingDataSetIterator(single),
+                            BATCH_SIZE, BUCKETS);
+            long bucketedSteps = 0;
+            start = System.nanoTime();
+            while (iter.hasNext()) {
+                DataSet ds = iter.next();
+                net.output(ds.getFeatures(), false, ds.getFeaturesMaskArray(), null);
+                bucketedSteps += ds.getFeatures().size(0) * ds.getFeatures().size(2);
+            }
+            long bucketedTime = System.nanoTime() - start;
+
+            log.info("Real steps: {}; padded: {} steps, {} steps/s; bucketed: {} steps, {} steps/s", realSteps,
+                            paddedSteps, (long) (realSteps / (paddedTime / 1e9)), bucketedSteps,
+                            (long) (realSteps / (bucketedTime / 1e9)));
+        }
+    }
+
+    @Test
+    public void testParallelInferenceBucketing() throws Exception {
+        MultiLayerNetwork net = getNetwork();
+        List<INDArray> sequences = generateSequences();
+        long realSteps = 0;
+        for (INDArray s : sequences)
+            realSteps += s.size(2);
+
+        for (boolean bucketing : new boolean[] {false, true}) {
+            ParallelInference.Builder builder = new ParallelInference.Builder(net)
+                            .inferenceMode(InferenceMode.BATCHED).batchLimit(BATCH_SIZE).queueLimit(256).workers(2);
+            if (bucketing)
+                builder.sequenceBucketing(BUCKETS);
+            ParallelInference pi = builder.build();
+
+            //warmup
+            runRequests(pi, sequences.subList(0, 256));
+
+            long start = System.nanoTime();
+            runRequests(pi, sequences);
+            long time = System.nanoTime() - start;
+
+            log.info("{}: {} steps/s, mean batch size {}", bucketing ? "bucketing" : "exact length batching",
+                            (long) (realSteps / (time / 1e9)),
+                            String.format("%.2f", pi.getMetrics().getMeanBatchSize()));
+            pi.shutdown();
+        }
+    }
+
+    private static void runRequests(final ParallelInference pi, final List<INDArray> sequences)
+                    throws InterruptedException {
+        int numClients = 64;
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(numClients);
+        for (int c = 0; c < numClients; c++) {
+            new Thread(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < sequences.size())
+                    pi.output(sequences.get(i));
+                latch.countDown();
+            }).start();
+        }
+        latch.await();
+    }
+
+    private static List<INDArray> generateSequences() {
+        Random r = new Random(12345);
+        List<INDArray> out = new ArrayList<>(NUM_SEQUENCES);
+        long total = 0;
+        for (int i = 0; i < NUM_SEQUENCES; i++) {
+            int length = (int) Math.min(MAX_LENGTH, MIN_LENGTH / Math.pow(1.0 - r.nextDouble(), 1.0 / PARETO_ALPHA));
+            out.add(Nd4j.rand(new int[] {1, N_IN, length}));
+            total += length;
+        }
+        log.info("Generated {} sequences, mean length {}", NUM_SEQUENCES, total / (double) NUM_SEQUENCES);
+        return out;
+    }
+
+    private static MultiLayerNetwork getNetwork() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).list()
+                        .layer(new LSTM.Builder().nIn(N_IN).nOut(128).activation(Activation.TANH).build())
+                        .layer(new RnnOutputLayer.Builder(LossFunctions.LossFunction.MCXENT)
+                                        .activation(Activation.SOFTMAX).nIn(128).nOut(10).build())
+                        .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+}
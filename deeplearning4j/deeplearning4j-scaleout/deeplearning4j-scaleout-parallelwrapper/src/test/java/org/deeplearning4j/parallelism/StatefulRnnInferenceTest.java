@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.LSTM;
+import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+@Slf4j
+public class StatefulRnnInferenceTest {
+    private static final int N_IN = 3;
+    private static final int N_OUT = 4;
+
+    @Test(timeout = 60000L)
+    public void testInterleavedSessionsMLN() throws Exception {
+        MultiLayerNetwork net = getNetwork();
+        int numSessions = 20;
+        int tsLength = 6;
+
+        //Expected: each session on its own, with rnnTimeStep and stored state
+        List<INDArray> inputs = new ArrayList<>();
+        List<INDArray> expected = new ArrayList<>();
+        for (int i = 0; i < numSessions; i++) {
+            INDArray in = Nd4j.rand(new int[] {1, N_IN, tsLength});
+            inputs.add(in);
+            net.rnnClearPreviousState();
+            expected.add(net.rnnTimeStep(in));
+        }
+        net.rnnClearPreviousState();
+
+        StatefulRnnInference inf = new StatefulRnnInference.Builder(net).workers(2).batchLimit(8).build();
+        try {
+            //Submit all time steps of all sessions at once: steps of different sessions get batched together
+            List<List<CompletableFuture<INDArray[]>>> futures = new ArrayList<>();
+            for (int i = 0; i < numSessions; i++)
+                futures.add(new ArrayList<CompletableFuture<INDArray[]>>());
+            for (int t = 0; t < tsLength; t++) {
+                for (int i = 0; i < numSessions; i++) {
+                    INDArray step = inputs.get(i).get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(t));
+                    futures.get(i).add(inf.outputAsync("session" + i, step));
+                }
+            }
+
+            for (int i = 0; i < numSessions; i++) {
+                for (int t = 0; t < tsLength; t++) {
+                    INDArray exp = expected.get(i).get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(t));
+                    INDArray act = futures.get(i).get(t).get()[0];
+                    assertTrue("Session " + i + ", step " + t, exp.equalsWithEps(act, 1e-5));
+                }
+            }
+            assertEquals(numSessions, inf.getStateCache().size());
+
+            //Multiple time steps per request, continuing from the stored state
+            INDArray next = Nd4j.rand(new int[] {1, N_IN, 3});
+            net.rnnSetPreviousStates(toMlnState(inf.getSessionState("session0")));
+            INDArray exp = net.rnnTimeStep(next);
+            assertTrue(exp.equalsWithEps(inf.output("session0", next), 1e-5));
+
+            //Ending a session resets it to the initial state
+            inf.endSession("session1");
+            net.rnnClearPreviousState();
+            INDArray first = inputs.get(1).get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(0));
+            assertTrue(net.rnnTimeStep(first).equalsWithEps(inf.output("session1", first), 1e-5));
+        } finally {
+            inf.shutdown();
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void testComputationGraph() throws Exception {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).graphBuilder()
+                        .addInputs("in")
+                        .addLayer("lstm", new LSTM.Builder().nIn(N_IN).nOut(8).activation(Activation.TANH).build(), "in")
+                        .addLayer("out", new RnnOutputLayer.Builder().nIn(8).nOut(N_OUT).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "lstm")
+                        .setOutputs("out").build();
+        ComputationGraph net = new ComputationGraph(conf);
+        net.init();
+
+        INDArray in1 = Nd4j.rand(new int[] {1, N_IN, 4});
+        INDArray in2 = Nd4j.rand(new int[] {1, N_IN, 4});
+        INDArray exp1 = net.rnnTimeStep(in1)[0];
+        net.rnnClearPreviousState();
+        INDArray exp2 = net.rnnTimeStep(in2)[0];
+        net.rnnClearPreviousState();
+
+        StatefulRnnInference inf = new StatefulRnnInference.Builder(net).build();
+        try {
+            for (int t = 0; t < 4; t++) {
+                CompletableFuture<INDArray[]> f1 = inf.outputAsync("a",
+                                in1.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(t)));
+                CompletableFuture<INDArray[]> f2 = inf.outputAsync("b",
+                                in2.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(t)));
+                assertTrue(exp1.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(t))
+                                .equalsWithEps(f1.get()[0], 1e-5));
+                assertTrue(exp2.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(t))
+                                .equalsWithEps(f2.get()[0], 1e-5));
+            }
+            assertTrue(inf.getSessionState("a").containsKey("lstm"));
+        } finally {
+            inf.shutdown();
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void testEvictionAndCompression() {
+        MultiLayerNetwork net = getNetwork();
+        StatefulRnnInference inf = new StatefulRnnInference.Builder(net).maxSessions(2).stateCompression("float16")
+                        .build();
+        try {
+            //Compression name is normalized: the compressor lookup is case sensitive
+            assertEquals("FLOAT16", inf.getStateCache().getCompression());
+            INDArray in = Nd4j.rand(1, N_IN);
+            for (int i = 0; i < 3; i++)
+                inf.output("session" + i, in);
+
+            assertEquals(2, inf.getStateCache().size());
+            assertEquals(1, inf.getStateCache().getEvictions());
+            assertNull(inf.getSessionState("session0"));
+
+            //Compressed state is approximately equal to the actual state
+            net.rnnClearPreviousState();
+            net.rnnTimeStep(in);
+            Map<String, INDArray> exp = net.rnnGetPreviousState(0);
+            Map<String, INDArray> act = inf.getSessionState("session2").get("0");
+            for (String key : exp.keySet())
+                assertTrue(key, exp.get(key).equalsWithEps(act.get(key), 1e-2));
+        } finally {
+            inf.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMultipleExamplesPerRequest() {
+        StatefulRnnInference inf = new StatefulRnnInference.Builder(getNetwork()).build();
+        try {
+            inf.output("session", Nd4j.rand(2, N_IN));
+        } finally {
+            inf.shutdown();
+        }
+    }
+
+    private static MultiLayerNetwork getNetwork() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).list()
+                        .layer(new LSTM.Builder().nIn(N_IN).nOut(8).activation(Activation.TANH).build())
+                        .layer(new RnnOutputLayer.Builder().nIn(8).nOut(N_OUT).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                        .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+
+    private static Map<Integer, Map<String, INDArray>> toMlnState(Map<String, Map<String, INDArray>> state) {
+        Map<Integer, Map<String, INDArray>> out = new HashMap<>();
+        for (Map.Entry<String, Map<String, INDArray>> e : state.entrySet())
+            out.put(Integer.parseInt(e.getKey()), e.getValue());
+        return out;
+    }
+}
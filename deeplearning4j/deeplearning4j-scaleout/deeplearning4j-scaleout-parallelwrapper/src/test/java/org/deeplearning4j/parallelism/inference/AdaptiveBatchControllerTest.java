@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference;
+
+import org.junit.Test;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveBatchControllerTest {
+
+    @Test
+    public void testBatchLimitAdaptation() {
+        long target = TimeUnit.MILLISECONDS.toNanos(10);
+        AdaptiveBatchController controller = new AdaptiveBatchController(target, target, 64, 1);
+        assertEquals(1, controller.getBatchLimit());
+
+        // 1 ms for a single request: linear extrapolation allows 5 requests within half of the target
+        controller.recordExecution(1, TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(5, controller.getBatchLimit());
+
+        // batch of 5 turned out to be cheaper than expected: limit grows
+        controller.recordExecution(5, TimeUnit.MILLISECONDS.toNanos(2));
+        assertEquals(12, controller.getBatchLimit());
+
+        // batches of 5 slow down (eg: due to contention): limit shrinks back
+        for (int i = 0; i < 50; i++)
+            controller.recordExecution(5, TimeUnit.MILLISECONDS.toNanos(8));
+        assertEquals(4, controller.getBatchLimit());
+    }
+
+    @Test
+    public void testBatchWait() {
+        long target = TimeUnit.MILLISECONDS.toNanos(10);
+        long maxWait = TimeUnit.MILLISECONDS.toNanos(5);
+        AdaptiveBatchController controller = new AdaptiveBatchController(target, maxWait, 4, 2);
+
+        // nothing measured yet: max wait
+        assertEquals(maxWait, controller.getBatchWaitNanos(0));
+
+        controller.recordExecution(4, TimeUnit.MILLISECONDS.toNanos(4));
+        assertEquals(4, controller.getBatchLimit());
+
+        assertEquals(maxWait, controller.getBatchWaitNanos(0));
+        // 10 - 4 * (1 + 2/2) = 2 ms
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(2), controller.getBatchWaitNanos(2));
+        // queue is too deep to wait at all
+        assertEquals(0, controller.getBatchWaitNanos(10));
+    }
+
+    @Test
+    public void testMetrics() {
+        LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+        InferenceMetrics metrics = new InferenceMetrics(queue, 4);
+
+        queue.add(new Object());
+        assertEquals(1, metrics.getQueueDepth());
+
+        metrics.recordBatch(1, 100);
+        metrics.recordBatch(3, 300);
+        metrics.recordBatch(10, 500);
+        assertArrayEquals(new long[] {0, 1, 0, 1, 1}, metrics.getBatchSizeHistogram());
+        assertEquals(3, metrics.getBatches());
+        assertEquals(14 / 3.0, metrics.getMeanBatchSize(), 1e-6);
+        assertEquals(300.0, metrics.getMeanExecutionNanos(), 1e-6);
+
+        for (int i = 0; i < 99; i++)
+            metrics.recordRequestLatency(TimeUnit.MILLISECONDS.toNanos(1));
+        metrics.recordRequestLatency(TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(100, metrics.getRequests());
+
+        long p50 = metrics.getLatencyPercentile(50);
+        long p100 = metrics.getLatencyPercentile(100);
+        assertTrue(p50 >= TimeUnit.MILLISECONDS.toNanos(1) && p50 <= TimeUnit.MICROSECONDS.toNanos(1250));
+        assertTrue(p100 >= TimeUnit.MILLISECONDS.toNanos(100) && p100 <= TimeUnit.MILLISECONDS.toNanos(125));
+
+        metrics.reset();
+        assertEquals(0, metrics.getRequests());
+        assertEquals(0, metrics.getLatencyPercentile(99));
+    }
+
+    @Test
+    public void testLatencyBuckets() {
+        for (long v = 0; v < 100000; v++) {
+            int b = InferenceMetrics.bucket(v);
+            assertTrue(v <= InferenceMetrics.upperBound(b));
+            if (b > 0)
+                assertTrue(v > InferenceMetrics.upperBound(b - 1));
+        }
+    }
+}
@@ -22,15 +22,19 @@ import org.junit.Before;
 import org.junit.Test;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.primitives.Pair;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author raver119@gmail.com
@@ -140,4 +144,34 @@ public class BatchedInferenceObservableTest {
             assertEquals((float) i, outputs.get(i)[1].meanNumber().floatValue(), 0.001f);
         }
     }
+
+    @Test
+    public void testDropExpiredAndCancelled() throws Exception {
+        BatchedInferenceObservable observable = new BatchedInferenceObservable();
+        CompletableFuture<INDArray[]> cancelled = new CompletableFuture<>();
+        long past = System.nanoTime() - 1000000L;
+        long future = System.nanoTime() + 60000000000L;
+
+        observable.addInput(new INDArray[]{Nd4j.create(10).assign(0)}, null, future, null);
+        observable.addInput(new INDArray[]{Nd4j.create(10).assign(1)}, null, past, null);
+        observable.addInput(new INDArray[]{Nd4j.create(10).assign(2)}, null, BasicInferenceObservable.NO_DEADLINE, cancelled);
+        observable.addInput(new INDArray[]{Nd4j.create(10).assign(3)}, null);
+        cancelled.cancel(false);
+
+        List<Pair<INDArray[],INDArray[]>> batches = observable.getInputBatches();
+        assertEquals(1, batches.size());
+        INDArray merged = batches.get(0).getFirst()[0];
+        assertArrayEquals(new long[]{2, 10}, merged.shape());
+        assertEquals(0.0, merged.getRow(0).meanNumber().doubleValue(), 1e-6);
+        assertEquals(3.0, merged.getRow(1).meanNumber().doubleValue(), 1e-6);
+
+        observable.setOutputBatches(Collections.singletonList(new INDArray[]{merged.mul(10)}));
+
+        assertFalse(observable.isDropped(0));
+        assertTrue(observable.isDropped(1));
+        assertTrue(observable.isDropped(2));
+        assertFalse(observable.isDropped(3));
+        assertEquals(0.0, observable.getOutput(0)[0].meanNumber().doubleValue(), 1e-6);
+        assertEquals(30.0, observable.getOutput(3)[0].meanNumber().doubleValue(), 1e-6);
+    }
 }
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.zoo;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.transferlearning.InferenceOptimizer;
+import org.deeplearning4j.zoo.model.ResNet50;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Inference throughput for ResNet50 before and after {@link InferenceOptimizer} (batch normalization folded into the
+ * preceding convolution layers)
+ */
+@Slf4j
+@Ignore
+public class InferenceOptimizerPerformanceTest extends BaseDL4JTest {
+    private static final int MINIBATCH = 16;
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 20;
+
+    @Test
+    public void testResNet50Throughput() {
+        ComputationGraph net = ResNet50.builder().numClasses(1000).build().init();
+        ComputationGraph optimized = InferenceOptimizer.optimize(net);
+        log.info("Vertices: {} original, {} optimized", net.getVertices().length, optimized.getVertices().length);
+
+        INDArray in = Nd4j.rand(new int[] {MINIBATCH, 3, 224, 224});
+        INDArray exp = net.outputSingle(in);
+        INDArray out = optimized.outputSingle(in);
+        assertTrue(exp.equalsWithEps(out, 1e-3));
+
+        long original = time(net, in);
+        long opt = time(optimized, in);
+        log.info("ResNet50 inference, minibatch {}: original {} ms per iteration ({} examples/sec), optimized {} ms per "
+                        + "iteration ({} examples/sec)", MINIBATCH, original, 1000L * MINIBATCH / original, opt,
+                        1000L * MINIBATCH / opt);
+    }
+
+    private static long time(ComputationGraph net, INDArray in) {
+        for (int i = 0; i < WARMUP; i++) {
+            net.outputSingle(in);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            net.outputSingle(in);
+        }
+        return Math.max(1, (System.nanoTime() - start) / 1000000 / ITERATIONS);
+    }
+}
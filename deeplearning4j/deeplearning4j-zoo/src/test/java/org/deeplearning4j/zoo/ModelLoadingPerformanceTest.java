@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.zoo;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.Pointer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.util.ModelSerializer;
+import org.deeplearning4j.zoo.model.VGG16;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Startup time and memory use when loading a large zoo model (VGG16: 138M parameters) with
+ * {@link ModelSerializer#restoreComputationGraph(File)} (compressed parameters, copied) vs.
+ * {@link ModelSerializer#restoreComputationGraphMemoryMapped(File)} (uncompressed parameters, memory mapped).<br>
+ * Each restore method should be run in a separate JVM for accurate memory figures: the off-heap memory reported
+ * here is the JavaCPP allocated total, which does not include memory mapped files
+ */
+@Slf4j
+@Ignore
+public class ModelLoadingPerformanceTest extends BaseDL4JTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    @Test
+    public void testLoadingVGG16() throws Exception {
+        ComputationGraph net = VGG16.builder().numClasses(1000).build().init();
+        File standard = testDir.newFile();
+        File uncompressed = testDir.newFile();
+        ModelSerializer.writeModel(net, standard, true);
+        ModelSerializer.writeModel(net, uncompressed, true, null, true);
+        log.info("File size: {} MB standard, {} MB uncompressed", standard.length() / (1024 * 1024),
+                        uncompressed.length() / (1024 * 1024));
+        long nParams = net.numParams();
+        net = null;
+
+        for (boolean memoryMapped : new boolean[] {false, true}) {
+            System.gc();
+            long offHeapBefore = Pointer.totalBytes();
+            long start = System.nanoTime();
+            ComputationGraph restored;
+            if (memoryMapped) {
+                restored = ModelSerializer.restoreComputationGraphMemoryMapped(uncompressed);
+            } else {
+                restored = ModelSerializer.restoreComputationGraph(standard);
+            }
+            long time = (System.nanoTime() - start) / 1000000;
+            long offHeap = Pointer.totalBytes() - offHeapBefore;
+            assertEquals(nParams, restored.numParams());
+
+            log.info("{}: loaded in {} ms, off-heap memory allocated: {} MB",
+                            (memoryMapped ? "Memory mapped" : "Standard"), time, offHeap / (1024 * 1024));
+            restored = null;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.zoo;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.deeplearning4j.datasets.iterator.ExistingDataSetIterator;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.transferlearning.FeaturizedDataSetIterator;
+import org.deeplearning4j.nn.transferlearning.TransferLearning;
+import org.deeplearning4j.nn.transferlearning.TransferLearningHelper;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.deeplearning4j.zoo.model.VGG16;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Training time for a VGG16 transfer learning setup (all layers up to and including fc2 frozen, new output layer),
+ * fitting the full network every epoch vs. featurizing once to disk with
+ * {@link TransferLearningHelper#featurizeToDisk(org.nd4j.linalg.dataset.api.iterator.DataSetIterator, File, int, String)}
+ * and then fitting only the unfrozen output layer from the cache
+ */
+@Slf4j
+@Ignore
+public class TransferLearningFeaturizationPerformanceTest extends BaseDL4JTest {
+    private static final int MINIBATCH = 16;
+    private static final int NUM_MINIBATCHES = 20;
+    private static final int EPOCHS = 5;
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    @Test
+    public void testVGG16Featurization() throws Exception {
+        List<DataSet> data = new ArrayList<>();
+        for (int i = 0; i < NUM_MINIBATCHES; i++) {
+            DataSet ds = new DataSet(Nd4j.rand(new int[] {MINIBATCH, 3, 224, 224}), Nd4j.zeros(MINIBATCH, 5));
+            for (int j = 0; j < MINIBATCH; j++) {
+                ds.getLabels().putScalar(j, j % 5, 1.0);
+            }
+            data.add(ds);
+        }
+
+        //Baseline: frozen layers are recomputed every epoch
+        ComputationGraph net = transferModel();
+        long start = System.nanoTime();
+        for (int i = 0; i < EPOCHS; i++) {
+            net.fit(new ExistingDataSetIterator(data));
+        }
+        long fullFit = (System.nanoTime() - start) / 1000000;
+        log.info("Full network fit: {} ms for {} epochs ({} ms/epoch)", fullFit, EPOCHS, fullFit / EPOCHS);
+
+        for (String compression : new String[] {null, "FLOAT16"}) {
+            TransferLearningHelper helper = new TransferLearningHelper(transferModel(), "fc2");
+            File dir = testDir.newFolder();
+
+            start = System.nanoTime();
+            FeaturizedDataSetIterator iter = helper.featurizeToDisk(new ExistingDataSetIterator(data), dir,
+                            Runtime.getRuntime().availableProcessors(), compression);
+            long featurize = (System.nanoTime() - start) / 1000000;
+
+            start = System.nanoTime();
+            for (int i = 0; i < EPOCHS; i++) {
+                helper.fitFeaturized(iter);
+            }
+            long fit = (System.nanoTime() - start) / 1000000;
+
+            log.info("Compression {}: featurize to disk {} ms ({} kB), fit from cache {} ms for {} epochs ({} ms/epoch),"
+                            + " total {} ms vs. {} ms for full network fit", compression, featurize,
+                            FileUtils.sizeOfDirectory(dir) / 1024, fit, EPOCHS, fit / EPOCHS, featurize + fit,
+                            fullFit);
+        }
+    }
+
+    private static ComputationGraph transferModel() {
+        ComputationGraph vgg16 = VGG16.builder().numClasses(1000).build().init();
+        return new TransferLearning.GraphBuilder(vgg16)
+                        .setFeatureExtractor("fc2")
+                        .removeVertexKeepConnections("predictions")
+                        .addLayer("predictions", new OutputLayer.Builder(LossFunctions.LossFunction.NEGATIVELOGLIKELIHOOD)
+                                        .nIn(4096).nOut(5).weightInit(WeightInit.XAVIER)
+                                        .activation(Activation.SOFTMAX).build(), "fc2")
+                        .build();
+    }
+}
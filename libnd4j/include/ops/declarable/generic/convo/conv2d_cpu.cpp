@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+//
+// 2D convolution (NCHW) without im2col buffer: Winograd F(2x2,3x3) or direct algorithm
+//
+
+#include <op_boilerplate.h>
+#if NOT_EXCLUDED(OP_conv2d_cpu)
+
+#include <ops/declarable/CustomOperations.h>
+#include <ops/declarable/helpers/conv2d_cpu.h>
+#include <declarable/generic/helpers/convolutions.h>
+
+namespace nd4j {
+namespace ops {
+
+static const int CONV2D_CPU_WINOGRAD = 1;
+static const int CONV2D_CPU_DIRECT   = 2;
+
+//////////////////////////////////////////////////////////////////////////
+// helpers work with raw buffers of contiguous 'c' ordered arrays, anything else is copied
+template <typename T>
+static NDArray<T>* cOrder(NDArray<T>* arr) {
+    if (arr == nullptr || (arr->ordering() == 'c' && arr->ews() == 1))
+        return arr;
+    return arr->dup('c');
+}
+
+template <typename T>
+static void releaseInput(NDArray<T>* original, NDArray<T>* cOrdered) {
+    if (original != cOrdered)
+        delete cOrdered;
+}
+
+template <typename T>
+static void releaseOutput(NDArray<T>* original, NDArray<T>* cOrdered) {
+    if (original != cOrdered) {
+        original->assign(cOrdered);
+        delete cOrdered;
+    }
+}
+
+//////////////////////////////////////////////////////////////////////////
+CUSTOM_OP_IMPL(conv2d_cpu, 2, 1, false, 0, 10) {
+
+    NDArray<T>* input   = INPUT_VARIABLE(0);                                    // [bS, iC, iH, iW]
+    NDArray<T>* weights = INPUT_VARIABLE(1);                                    // [oC, iC, kH, kW]
+    NDArray<T>* bias    = block.width() > 2 ? INPUT_VARIABLE(2) : nullptr;      // [oC]
+
+    NDArray<T>* output  = OUTPUT_VARIABLE(0);                                   // [bS, oC, oH, oW]
+
+    const int kH = INT_ARG(0);                                                  // filter(kernel) height
+    const int kW = INT_ARG(1);                                                  // filter(kernel) width
+    const int sH = INT_ARG(2);                                                  // strides height
+    const int sW = INT_ARG(3);                                                  // strides width
+    const int pH = INT_ARG(4);                                                  // top padding
+    const int pW = INT_ARG(5);                                                  // left padding
+    const int dH = INT_ARG(6);                                                  // dilations height
+    const int dW = INT_ARG(7);                                                  // dilations width
+    const int algorithm = INT_ARG(9);                                           // 1-Winograd, 2-direct
+
+    REQUIRE_TRUE(input->rankOf() == 4 && weights->rankOf() == 4, 0, "CUSTOM CONV2D_CPU OP: input and weights must be rank 4 arrays, but got ranks %i and %i instead !", input->rankOf(), weights->rankOf());
+    REQUIRE_TRUE(weights->sizeAt(1) == input->sizeAt(1) && weights->sizeAt(2) == kH && weights->sizeAt(3) == kW, 0, "CUSTOM CONV2D_CPU OP: wrong shape of weights array, expected is [oC, %i, %i, %i], but got %s instead !", input->sizeAt(1), kH, kW, ShapeUtils<T>::shapeAsString(weights).c_str());
+    REQUIRE_TRUE(output->sizeAt(0) == input->sizeAt(0) && output->sizeAt(1) == weights->sizeAt(0), 0, "CUSTOM CONV2D_CPU OP: wrong shape of output array %s !", ShapeUtils<T>::shapeAsString(output).c_str());
+    if (bias)
+        REQUIRE_TRUE(bias->lengthOf() == weights->sizeAt(0), 0, "CUSTOM CONV2D_CPU OP: wrong length of biases, expected %i, but got %i instead !", weights->sizeAt(0), bias->lengthOf());
+    REQUIRE_TRUE(algorithm == CONV2D_CPU_WINOGRAD || algorithm == CONV2D_CPU_DIRECT, 0, "CUSTOM CONV2D_CPU OP: unknown algorithm %i !", algorithm);
+    if (algorithm == CONV2D_CPU_WINOGRAD)
+        REQUIRE_TRUE(kH == 3 && kW == 3 && sH == 1 && sW == 1 && dH == 1 && dW == 1, 0, "CUSTOM CONV2D_CPU OP: Winograd algorithm requires 3x3 kernel with unit strides and dilations !");
+
+    NDArray<T>* in = cOrder(input);
+    NDArray<T>* w  = cOrder(weights);
+    NDArray<T>* b  = cOrder(bias);
+    NDArray<T>* out = cOrder(output);
+
+    if (algorithm == CONV2D_CPU_WINOGRAD)
+        helpers::conv2dWinograd<T>(in, w, b, out, pH, pW);
+    else
+        helpers::conv2dDirect<T>(in, w, b, out, sH, sW, pH, pW, dH, dW);
+
+    releaseInput(input, in);
+    releaseInput(weights, w);
+    releaseInput(bias, b);
+    releaseOutput(output, out);
+
+    return Status::OK();
+}
+
+DECLARE_SHAPE_FN(conv2d_cpu) {
+
+    auto inputShapeInfo   = inputShape->at(0);
+    auto weightsShapeInfo = inputShape->at(1);
+
+    const int kH = INT_ARG(0);
+    const int kW = INT_ARG(1);
+    const int sH = INT_ARG(2);
+    const int sW = INT_ARG(3);
+    const int pH = INT_ARG(4);
+    const int pW = INT_ARG(5);
+    const int dH = INT_ARG(6);
+    const int dW = INT_ARG(7);
+    const int isSameMode = INT_ARG(8);
+
+    int oH, oW;
+    ConvolutionUtils<T>::calcOutSizePool2D(oH, oW, kH, kW, sH, sW, pH, pW, dH, dW, inputShapeInfo[3], inputShapeInfo[4], isSameMode);
+
+    Nd4jLong* outputShapeInfo = nullptr;
+    ALLOCATE(outputShapeInfo, block.getWorkspace(), shape::shapeInfoLength(4), Nd4jLong);
+    outputShapeInfo[0] = 4;
+    outputShapeInfo[1] = inputShapeInfo[1];
+    outputShapeInfo[2] = weightsShapeInfo[1];
+    outputShapeInfo[3] = oH;
+    outputShapeInfo[4] = oW;
+    shape::updateStrides(outputShapeInfo, 'c');
+
+    return SHAPELIST(outputShapeInfo);
+}
+
+//////////////////////////////////////////////////////////////////////////
+CUSTOM_OP_IMPL(conv2d_cpu_bp, 3, 3, false, 0, 10) {
+
+    NDArray<T>* input   = INPUT_VARIABLE(0);                                    // [bS, iC, iH, iW]
+    NDArray<T>* weights = INPUT_VARIABLE(1);                                    // [oC, iC, kH, kW]
+    NDArray<T>* gradO   = INPUT_VARIABLE(2);                                    // [bS, oC, oH, oW], epsilon_next
+
+    NDArray<T>* gradI = OUTPUT_VARIABLE(0);                                     // [bS, iC, iH, iW], epsilon
+    NDArray<T>* gradW = OUTPUT_VARIABLE(1);                                     // [oC, iC, kH, kW]
+    NDArray<T>* gradB = OUTPUT_VARIABLE(2);                                     // [oC]
+
+    const int kH = INT_ARG(0);
+    const int kW = INT_ARG(1);
+    const int sH = INT_ARG(2);
+    const int sW = INT_ARG(3);
+    const int pH = INT_ARG(4);
+    const int pW = INT_ARG(5);
+    const int dH = INT_ARG(6);
+    const int dW = INT_ARG(7);
+    const int algorithm = INT_ARG(9);
+
+    REQUIRE_TRUE(input->rankOf() == 4 && weights->rankOf() == 4 && gradO->rankOf() == 4, 0, "CUSTOM CONV2D_CPU_BP OP: input, weights and gradO must be rank 4 arrays !");
+    REQUIRE_TRUE(weights->sizeAt(1) == input->sizeAt(1) && weights->sizeAt(2) == kH && weights->sizeAt(3) == kW, 0, "CUSTOM CONV2D_CPU_BP OP: wrong shape of weights array, expected is [oC, %i, %i, %i], but got %s instead !", input->sizeAt(1), kH, kW, ShapeUtils<T>::shapeAsString(weights).c_str());
+    REQUIRE_TRUE(gradO->sizeAt(0) == input->sizeAt(0) && gradO->sizeAt(1) == weights->sizeAt(0), 0, "CUSTOM CONV2D_CPU_BP OP: wrong shape of gradO array %s !", ShapeUtils<T>::shapeAsString(gradO).c_str());
+    REQUIRE_TRUE(gradB->lengthOf() == weights->sizeAt(0), 0, "CUSTOM CONV2D_CPU_BP OP: wrong length of bias gradients, expected %i, but got %i instead !", weights->sizeAt(0), gradB->lengthOf());
+    REQUIRE_TRUE(algorithm == CONV2D_CPU_WINOGRAD || algorithm == CONV2D_CPU_DIRECT, 0, "CUSTOM CONV2D_CPU_BP OP: unknown algorithm %i !", algorithm);
+
+    const bool winograd = algorithm == CONV2D_CPU_WINOGRAD && kH == 3 && kW == 3 && sH == 1 && sW == 1 && dH == 1 && dW == 1;
+
+    NDArray<T>* in  = cOrder(input);
+    NDArray<T>* w   = cOrder(weights);
+    NDArray<T>* gO  = cOrder(gradO);
+    NDArray<T>* gI  = cOrder(gradI);
+    NDArray<T>* gW  = cOrder(gradW);
+    NDArray<T>* gB  = cOrder(gradB);
+
+    helpers::conv2dBpInput<T>(gO, w, gI, sH, sW, pH, pW, dH, dW, winograd);
+    helpers::conv2dBpWeights<T>(in, gO, gW, gB, sH, sW, pH, pW, dH, dW);
+
+    releaseInput(input, in);
+    releaseInput(weights, w);
+    releaseInput(gradO, gO);
+    releaseOutput(gradI, gI);
+    releaseOutput(gradW, gW);
+    releaseOutput(gradB, gB);
+
+    return Status::OK();
+}
+
+DECLARE_SHAPE_FN(conv2d_cpu_bp) {
+
+    auto inputShapeInfo   = inputShape->at(0);
+    auto weightsShapeInfo = inputShape->at(1);
+
+    Nd4jLong *gradIShapeInfo(nullptr), *gradWShapeInfo(nullptr), *gradBShapeInfo(nullptr);
+    COPY_SHAPE(inputShapeInfo, gradIShapeInfo);
+    COPY_SHAPE(weightsShapeInfo, gradWShapeInfo);
+    ALLOCATE(gradBShapeInfo, block.getWorkspace(), shape::shapeInfoLength(2), Nd4jLong);
+    gradBShapeInfo[0] = 2;
+    gradBShapeInfo[1] = 1;
+    gradBShapeInfo[2] = weightsShapeInfo[1];
+    shape::updateStrides(gradBShapeInfo, 'c');
+
+    return SHAPELIST(gradIShapeInfo, gradWShapeInfo, gradBShapeInfo);
+}
+
+}
+}
+
+#endif
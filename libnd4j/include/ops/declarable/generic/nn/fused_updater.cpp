@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+//
+// fused updater: SGD, Nesterovs, Adam or RMSProp with clipping and L1/L2, in one pass
+//
+
+#include <op_boilerplate.h>
+#if NOT_EXCLUDED(OP_fused_updater)
+
+#include <ops/declarable/CustomOperations.h>
+#include <ops/declarable/helpers/updaters.h>
+
+namespace nd4j {
+namespace ops {
+
+//////////////////////////////////////////////////////////////////////////
+CUSTOM_OP_IMPL(fused_updater, 2, -1, true, -2, -2) {
+
+    const int updaterType = INT_ARG(0);
+    const int iteration   = INT_ARG(1);
+
+    const int numStateComponents = helpers::fusedUpdaterStateComponents(updaterType);
+    const int numHyperParams     = helpers::fusedUpdaterNumHyperParams(updaterType);
+    REQUIRE_TRUE(numStateComponents >= 0, 0, "FUSED_UPDATER operation: unknown updater type %i !", updaterType);
+
+    const bool hasState = numStateComponents > 0;
+    REQUIRE_TRUE(block.width() == (hasState ? 3 : 2), 0, "FUSED_UPDATER operation: expected %i input arrays for updater type %i, but got %i instead !", hasState ? 3 : 2, updaterType, (int) block.width());
+
+    NDArray<T>* gradient = INPUT_VARIABLE(0);                              // gradient [1 x n]
+    NDArray<T>* state    = hasState ? INPUT_VARIABLE(1) : nullptr;         // updater state [1 x k*n]
+    NDArray<T>* params   = INPUT_VARIABLE(hasState ? 2 : 1);               // parameters [1 x n]
+
+    NDArray<T>* update   = OUTPUT_VARIABLE(0);
+    NDArray<T>* stateOut = hasState ? OUTPUT_VARIABLE(1) : nullptr;
+
+    const Nd4jLong n = gradient->lengthOf();
+
+    REQUIRE_TRUE(gradient->ews() == 1 && params->ews() == 1 && update->ews() == 1, 0, "FUSED_UPDATER operation: gradient, parameters and update arrays should be contiguous !");
+    REQUIRE_TRUE(params->lengthOf() == n && update->lengthOf() == n, 0, "FUSED_UPDATER operation: parameters and update should have same length as gradient (%i), but got %i and %i instead !", (int) n, (int) params->lengthOf(), (int) update->lengthOf());
+    if (hasState) {
+        REQUIRE_TRUE(state->ews() == 1 && stateOut->ews() == 1, 0, "FUSED_UPDATER operation: updater state arrays should be contiguous !");
+        REQUIRE_TRUE(state->lengthOf() == numStateComponents * n && stateOut->lengthOf() == state->lengthOf(), 0, "FUSED_UPDATER operation: wrong length of updater state, expected is %i, but got %i instead !", (int) (numStateComponents * n), (int) state->lengthOf());
+    }
+
+    // integer args: updater type, iteration, then [start, end) offsets of the segments
+    const int numSegments = (block.getIArguments()->size() - 2) / 2;
+    REQUIRE_TRUE(block.getIArguments()->size() == 2 + 2 * numSegments, 0, "FUSED_UPDATER operation: segments should be given as [start, end) offsets pairs !");
+    REQUIRE_TRUE(block.getTArguments()->size() == numHyperParams + 3 * numSegments, 0, "FUSED_UPDATER operation: expected %i T arguments (%i updater hyper parameters and [clip, l1, l2] for each of %i segments), but got %i instead !", numHyperParams + 3 * numSegments, numHyperParams, numSegments, (int) block.getTArguments()->size());
+
+    std::vector<Nd4jLong> segments(2 * numSegments);
+    Nd4jLong covered = 0;
+    for (int s = 0; s < numSegments; s++) {
+        segments[2*s]     = INT_ARG(2 + 2*s);
+        segments[2*s + 1] = INT_ARG(3 + 2*s);
+        REQUIRE_TRUE(segments[2*s] == covered && segments[2*s + 1] >= segments[2*s], 0, "FUSED_UPDATER operation: segments should be contiguous and in order, segment %i starts at %i !", s, (int) segments[2*s]);
+        covered = segments[2*s + 1];
+    }
+    REQUIRE_TRUE(covered == n, 0, "FUSED_UPDATER operation: segments should cover the whole gradient of length %i, but cover %i instead !", (int) n, (int) covered);
+
+    std::vector<T> hyperParams(block.getTArguments()->begin(), block.getTArguments()->begin() + numHyperParams);
+    std::vector<T> segmentParams(block.getTArguments()->begin() + numHyperParams, block.getTArguments()->end());
+
+    helpers::fusedUpdater<T>(gradient, state, params, update, stateOut, updaterType, iteration, hyperParams, segments, segmentParams);
+
+    return Status::OK();
+}
+
+DECLARE_SHAPE_FN(fused_updater) {
+
+    const bool hasState = helpers::fusedUpdaterStateComponents(INT_ARG(0)) > 0;
+
+    Nd4jLong *updateShapeInfo(nullptr);
+    COPY_SHAPE(inputShape->at(0), updateShapeInfo);
+    if (!hasState)
+        return SHAPELIST(updateShapeInfo);
+
+    Nd4jLong *stateShapeInfo(nullptr);
+    COPY_SHAPE(inputShape->at(1), stateShapeInfo);
+    return SHAPELIST(updateShapeInfo, stateShapeInfo);
+}
+
+}
+}
+
+#endif
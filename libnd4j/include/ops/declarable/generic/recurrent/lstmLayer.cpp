@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+//
+// fused LSTM layer (forward and backprop through time) with dl4j weights layout
+//
+
+#include <op_boilerplate.h>
+#if NOT_EXCLUDED(OP_lstmLayer)
+
+#include <ops/declarable/CustomOperations.h>
+#include<ops/declarable/helpers/lstm.h>
+
+namespace nd4j {
+namespace ops {
+
+//////////////////////////////////////////////////////////////////////////
+// helpers work with raw buffers of contiguous 'f' ordered arrays, anything else is copied
+template <typename T>
+static NDArray<T>* fOrder(NDArray<T>* arr) {
+    if (arr == nullptr || (arr->ordering() == 'f' && arr->ews() == 1))
+        return arr;
+    return arr->dup('f');
+}
+
+template <typename T>
+static void releaseInput(NDArray<T>* original, NDArray<T>* fOrdered) {
+    if (original != fOrdered)
+        delete fOrdered;
+}
+
+template <typename T>
+static void releaseOutput(NDArray<T>* original, NDArray<T>* fOrdered) {
+    if (original != fOrdered) {
+        original->assign(fOrdered);
+        delete fOrdered;
+    }
+}
+
+//////////////////////////////////////////////////////////////////////////
+CUSTOM_OP_IMPL(lstmLayer, 6, 3, false, 0, 3) {
+
+    NDArray<T>* x    = INPUT_VARIABLE(0);                   // input [bS x nIn x time]
+    NDArray<T>* Wx   = INPUT_VARIABLE(1);                   // input-to-hidden  weights, [nIn x 4*nOut], gates order [a, f, o, g]
+    NDArray<T>* Wr   = INPUT_VARIABLE(2);                   // hidden-to-hidden weights, [nOut x 4*nOut], or [nOut x 4*nOut+3] with peephole weights [wFF, wOO, wGG] in last 3 columns
+    NDArray<T>* b    = INPUT_VARIABLE(3);                   // biases, [1 x 4*nOut]
+    NDArray<T>* h0   = INPUT_VARIABLE(4);                   // initial cell output [bS x nOut]
+    NDArray<T>* c0   = INPUT_VARIABLE(5);                   // initial cell state  [bS x nOut]
+    NDArray<T>* mask = block.width() > 6 ? INPUT_VARIABLE(6) : nullptr;    // optional mask [bS x time]
+
+    NDArray<T>* h     = OUTPUT_VARIABLE(0);                 // cell outputs [bS x nOut x time]
+    NDArray<T>* c     = OUTPUT_VARIABLE(1);                 // training: cell states [bS x nOut x time], inference: last cell state [bS x nOut]
+    NDArray<T>* gates = OUTPUT_VARIABLE(2);                 // training: gate activations [bS x 4*nOut x time], inference: [bS x 4*nOut]
+
+    const bool peephole = INT_ARG(0) != 0;
+    const bool forwards = INT_ARG(1) != 0;
+    const bool training = INT_ARG(2) != 0;
+
+    REQUIRE_TRUE(x->rankOf() == 3, 0, "LSTMLAYER operation: input should be rank 3 [bS x nIn x time], but got rank %i instead !", x->rankOf());
+
+    const int bS   = x->sizeAt(0);
+    const int nIn  = x->sizeAt(1);
+    const int nOut = h0->sizeAt(1);
+
+    const std::string WxShape        = ShapeUtils<T>::shapeAsString(Wx);
+    const std::string correctWxShape = ShapeUtils<T>::shapeAsString({nIn, 4*nOut});
+    const std::string WrShape        = ShapeUtils<T>::shapeAsString(Wr);
+    const std::string correctWrShape = ShapeUtils<T>::shapeAsString({nOut, 4*nOut + (peephole ? 3 : 0)});
+    const std::string c0Shape        = ShapeUtils<T>::shapeAsString(c0);
+    const std::string correctC0Shape = ShapeUtils<T>::shapeAsString({bS, nOut});
+
+    REQUIRE_TRUE(correctWxShape == WxShape, 0, "LSTMLAYER operation: wrong shape of input-to-hidden weights, expected is %s, but got %s instead !", correctWxShape.c_str(), WxShape.c_str());
+    REQUIRE_TRUE(Wr->rankOf() == 2 && Wr->sizeAt(0) == nOut && (Wr->sizeAt(1) == 4*nOut + 3 || (!peephole && Wr->sizeAt(1) == 4*nOut)), 0, "LSTMLAYER operation: wrong shape of hidden-to-hidden weights, expected is %s, but got %s instead !", correctWrShape.c_str(), WrShape.c_str());
+    REQUIRE_TRUE(b->lengthOf() == 4*nOut, 0, "LSTMLAYER operation: wrong length of biases, expected is %i, but got %i instead !", 4*nOut, (int) b->lengthOf());
+    REQUIRE_TRUE(h0->sizeAt(0) == bS && correctC0Shape == c0Shape, 0, "LSTMLAYER operation: wrong shape of initial cell state, expected is %s, but got %s instead !", correctC0Shape.c_str(), c0Shape.c_str());
+    REQUIRE_TRUE(mask == nullptr || (mask->sizeAt(0) == bS && mask->lengthOf() == bS * x->sizeAt(2)), 0, "LSTMLAYER operation: mask should have shape [bS x time] !");
+
+    NDArray<T>* xF  = fOrder(x);
+    NDArray<T>* WxF = fOrder(Wx);
+    NDArray<T>* WrF = fOrder(Wr);
+    NDArray<T>* bF  = fOrder(b);
+    NDArray<T>* h0F = fOrder(h0);
+    NDArray<T>* c0F = fOrder(c0);
+    NDArray<T>* mF  = fOrder(mask);
+    NDArray<T>* hF  = fOrder(h);
+    NDArray<T>* cF  = fOrder(c);
+    NDArray<T>* gF  = fOrder(gates);
+
+    helpers::lstmLayerTimeLoop<T>(xF, WxF, WrF, bF, h0F, c0F, mF, hF, cF, gF, peephole, forwards, training);
+
+    releaseInput(x, xF);
+    releaseInput(Wx, WxF);
+    releaseInput(Wr, WrF);
+    releaseInput(b, bF);
+    releaseInput(h0, h0F);
+    releaseInput(c0, c0F);
+    releaseInput(mask, mF);
+    releaseOutput(h, hF);
+    releaseOutput(c, cF);
+    releaseOutput(gates, gF);
+
+    return Status::OK();
+}
+
+
+DECLARE_SHAPE_FN(lstmLayer) {
+
+    auto xShapeInfo  = inputShape->at(0);                   // input [bS x nIn x time]
+    auto h0ShapeInfo = inputShape->at(4);                   // initial cell output [bS x nOut]
+
+    const bool training = INT_ARG(2) != 0;
+
+    const int bS   = xShapeInfo[1];
+    const int sL   = xShapeInfo[3];
+    const int nOut = h0ShapeInfo[2];
+    const int cRank = training ? 3 : 2;
+
+    Nd4jLong *hShapeInfo(nullptr), *cShapeInfo(nullptr), *gShapeInfo(nullptr);
+    ALLOCATE(hShapeInfo, block.getWorkspace(), shape::shapeInfoLength(3), Nd4jLong);        // [bS x nOut x time]
+    ALLOCATE(cShapeInfo, block.getWorkspace(), shape::shapeInfoLength(cRank), Nd4jLong);    // [bS x nOut x time] or [bS x nOut]
+    ALLOCATE(gShapeInfo, block.getWorkspace(), shape::shapeInfoLength(cRank), Nd4jLong);    // [bS x 4*nOut x time] or [bS x 4*nOut]
+
+    hShapeInfo[0] = 3;
+    hShapeInfo[1] = cShapeInfo[1] = gShapeInfo[1] = bS;
+    hShapeInfo[2] = cShapeInfo[2] = nOut;
+    gShapeInfo[2] = 4*nOut;
+    hShapeInfo[3] = sL;
+    cShapeInfo[0] = gShapeInfo[0] = cRank;
+    if (training)
+        cShapeInfo[3] = gShapeInfo[3] = sL;
+
+    shape::updateStrides(hShapeInfo, 'f');
+    shape::updateStrides(cShapeInfo, 'f');
+    shape::updateStrides(gShapeInfo, 'f');
+
+    return SHAPELIST(hShapeInfo, cShapeInfo, gShapeInfo);
+}
+
+
+//////////////////////////////////////////////////////////////////////////
+CUSTOM_OP_IMPL(lstmLayer_bp, 9, 4, false, 0, 3) {
+
+    NDArray<T>* x     = INPUT_VARIABLE(0);                  // input [bS x nIn x time]
+    NDArray<T>* Wx    = INPUT_VARIABLE(1);                  // input-to-hidden  weights, [nIn x 4*nOut]
+    NDArray<T>* Wr    = INPUT_VARIABLE(2);                  // hidden-to-hidden weights, [nOut x 4*nOut(+3)]
+    NDArray<T>* h0    = INPUT_VARIABLE(3);                  // initial cell output [bS x nOut]
+    NDArray<T>* c0    = INPUT_VARIABLE(4);                  // initial cell state  [bS x nOut]
+    NDArray<T>* h     = INPUT_VARIABLE(5);                  // cell outputs of lstmLayer [bS x nOut x time]
+    NDArray<T>* c     = INPUT_VARIABLE(6);                  // cell states of lstmLayer (training mode) [bS x nOut x time]
+    NDArray<T>* gates = INPUT_VARIABLE(7);                  // gate activations of lstmLayer (training mode) [bS x 4*nOut x time]
+    NDArray<T>* eps   = INPUT_VARIABLE(8);                  // gradient wrt cell outputs [bS x nOut x time]
+    NDArray<T>* mask  = block.width() > 9 ? INPUT_VARIABLE(9) : nullptr;    // optional mask [bS x time]
+
+    NDArray<T>* epsNext = OUTPUT_VARIABLE(0);               // gradient wrt input [bS x nIn x time]
+    NDArray<T>* gradWx  = OUTPUT_VARIABLE(1);               // [nIn x 4*nOut]
+    NDArray<T>* gradWr  = OUTPUT_VARIABLE(2);               // [nOut x 4*nOut(+3)]
+    NDArray<T>* gradB   = OUTPUT_VARIABLE(3);               // [1 x 4*nOut]
+
+    const bool peephole   = INT_ARG(0) != 0;
+    const bool forwards   = INT_ARG(1) != 0;
+    const int tbpttLength = INT_ARG(2);                     // truncated BPTT backward length, <= 0 for full BPTT
+    const bool maskDeltas = block.getIArguments()->size() > 3 ? INT_ARG(3) != 0 : true;
+
+    REQUIRE_TRUE(x->rankOf() == 3, 0, "LSTMLAYER_BP operation: input should be rank 3 [bS x nIn x time], but got rank %i instead !", x->rankOf());
+    REQUIRE_TRUE(c->isSameShape(h) && eps->isSameShape(h), 0, "LSTMLAYER_BP operation: cell states, cell outputs and epsilon should have the same shape !");
+    REQUIRE_TRUE(gates->rankOf() == 3 && gates->sizeAt(1) == 4 * h0->sizeAt(1), 0, "LSTMLAYER_BP operation: gate activations should have shape [bS x 4*nOut x time] !");
+    REQUIRE_TRUE(!peephole || Wr->sizeAt(1) == 4 * h0->sizeAt(1) + 3, 0, "LSTMLAYER_BP operation: peephole connections require hidden-to-hidden weights with shape [nOut x 4*nOut+3] !");
+
+    NDArray<T>* xF  = fOrder(x);
+    NDArray<T>* WxF = fOrder(Wx);
+    NDArray<T>* WrF = fOrder(Wr);
+    NDArray<T>* h0F = fOrder(h0);
+    NDArray<T>* c0F = fOrder(c0);
+    NDArray<T>* hF  = fOrder(h);
+    NDArray<T>* cF  = fOrder(c);
+    NDArray<T>* gF  = fOrder(gates);
+    NDArray<T>* eF  = fOrder(eps);
+    NDArray<T>* mF  = fOrder(mask);
+    NDArray<T>* epsNextF = fOrder(epsNext);
+    NDArray<T>* gradWxF  = fOrder(gradWx);
+    NDArray<T>* gradWrF  = fOrder(gradWr);
+    NDArray<T>* gradBF   = fOrder(gradB);
+
+    helpers::lstmLayerTimeLoopBp<T>(xF, WxF, WrF, h0F, c0F, hF, cF, gF, eF, mF, epsNextF, gradWxF, gradWrF, gradBF, peephole, forwards, tbpttLength, maskDeltas);
+
+    releaseInput(x, xF);
+    releaseInput(Wx, WxF);
+    releaseInput(Wr, WrF);
+    releaseInput(h0, h0F);
+    releaseInput(c0, c0F);
+    releaseInput(h, hF);
+    releaseInput(c, cF);
+    releaseInput(gates, gF);
+    releaseInput(eps, eF);
+    releaseInput(mask, mF);
+    releaseOutput(epsNext, epsNextF);
+    releaseOutput(gradWx, gradWxF);
+    releaseOutput(gradWr, gradWrF);
+    releaseOutput(gradB, gradBF);
+
+    return Status::OK();
+}
+
+
+DECLARE_SHAPE_FN(lstmLayer_bp) {
+
+    auto xShapeInfo  = inputShape->at(0);
+    auto WxShapeInfo = inputShape->at(1);
+    auto WrShapeInfo = inputShape->at(2);
+
+    Nd4jLong *epsNextShapeInfo(nullptr), *gradWxShapeInfo(nullptr), *gradWrShapeInfo(nullptr), *gradBShapeInfo(nullptr);
+    ALLOCATE(epsNextShapeInfo, block.getWorkspace(), shape::shapeInfoLength(3), Nd4jLong);
+    ALLOCATE(gradWxShapeInfo,  block.getWorkspace(), shape::shapeInfoLength(2), Nd4jLong);
+    ALLOCATE(gradWrShapeInfo,  block.getWorkspace(), shape::shapeInfoLength(2), Nd4jLong);
+    ALLOCATE(gradBShapeInfo,   block.getWorkspace(), shape::shapeInfoLength(2), Nd4jLong);
+
+    epsNextShapeInfo[0] = 3;
+    epsNextShapeInfo[1] = xShapeInfo[1];
+    epsNextShapeInfo[2] = xShapeInfo[2];
+    epsNextShapeInfo[3] = xShapeInfo[3];
+
+    gradWxShapeInfo[0] = gradWrShapeInfo[0] = gradBShapeInfo[0] = 2;
+    gradWxShapeInfo[1] = WxShapeInfo[1];
+    gradWxShapeInfo[2] = WxShapeInfo[2];
+    gradWrShapeInfo[1] = WrShapeInfo[1];
+    gradWrShapeInfo[2] = WrShapeInfo[2];
+    gradBShapeInfo[1]  = 1;
+    gradBShapeInfo[2]  = WxShapeInfo[2];
+
+    shape::updateStrides(epsNextShapeInfo, 'f');
+    shape::updateStrides(gradWxShapeInfo, 'f');
+    shape::updateStrides(gradWrShapeInfo, 'f');
+    shape::updateStrides(gradBShapeInfo, 'f');
+
+    return SHAPELIST(epsNextShapeInfo, gradWxShapeInfo, gradWrShapeInfo, gradBShapeInfo);
+}
+
+}
+}
+
+#endif
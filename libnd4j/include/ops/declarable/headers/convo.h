@@ -68,6 +68,24 @@ namespace nd4j {
         DECLARE_CUSTOM_OP(conv2d_input_bp, 3, 1, false, 0, 9);
         #endif
 
+        /**
+         * 2D convolution for CPU without im2col buffer, NCHW data format only
+         * Expected input:
+         * x: 4D array [bS, iC, iH, iW]
+         * weight: 4D array [oC, iC, kH, kW]
+         * bias: optional vector, length of outputChannels
+         *
+         * IntArgs:
+         * 0-8: same as conv2d (padding is top/left padding)
+         * 9: algorithm: 1 Winograd F(2x2,3x3) (3x3 kernel, unit strides and dilations only), 2 direct
+         *
+         * conv2d_cpu_bp expects x, weight and gradO, and returns gradI, gradW and gradB
+         */
+        #if NOT_EXCLUDED(OP_conv2d_cpu)
+        DECLARE_CUSTOM_OP(conv2d_cpu, 2, 1, false, 0, 10);
+        DECLARE_CUSTOM_OP(conv2d_cpu_bp, 3, 3, false, 0, 10);
+        #endif
+
         /**
          * Depthwise convolution2d op:
          * Expected inputs:
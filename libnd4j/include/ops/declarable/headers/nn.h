@@ -152,6 +152,35 @@ namespace nd4j {
         DECLARE_CONFIGURABLE_OP(apply_sgd, 2, 1, true, -2, 0);   
         #endif
 
+        /**
+         * This operation applies updater (SGD, Nesterov momentum, Adam or RMSProp) to a flattened gradient in a single pass over
+         * gradient, updater state and parameters. Optional elementwise gradient clipping (before the updater) and L1/L2
+         * regularization (added to the update, after the updater) are applied per segment, in the same pass.
+         * The update is returned, parameters are not modified: params -= update should be applied by caller.
+         * All arrays are expected to be contiguous.
+         *
+         * Expected arguments:
+         * gradient: gradient, [1 x n]
+         * state: updater state, [1 x k*n], where k is 1 for Nesterovs and RMSProp, 2 for Adam ([m, v] layout). Not used for SGD
+         * params: parameters, [1 x n]
+         *
+         * T args:
+         * 0..: updater hyper parameters: SGD - [lr], Nesterovs - [lr, momentum], Adam - [lr, beta1, beta2, epsilon], RMSProp - [lr, decay, epsilon]
+         * then for each segment: [clip, l1, l2], zero values disable clipping/regularization
+         *
+         * Int args:
+         * 0: updater: 0 - SGD, 1 - Nesterovs, 2 - Adam, 3 - RMSProp
+         * 1: iteration, used for Adam bias correction
+         * 2..: segments as [start, end) offset pairs, should cover the whole gradient in order
+         *
+         * Output arrays:
+         * 0: update, same shape as gradient (can be the same array as gradient)
+         * 1: updated state, same shape as state, if state is used (can be the same array as state)
+         */
+        #if NOT_EXCLUDED(OP_fused_updater)
+        DECLARE_CUSTOM_OP(fused_updater, 2, -1, true, -2, -2);
+        #endif
+
         /**
          * This operation performs batch normalization of layer, it is based on following article http://arxiv.org/abs/1502.03167.
          * Expected arguments:
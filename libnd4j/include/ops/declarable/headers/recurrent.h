@@ -283,6 +283,61 @@ namespace nd4j {
         DECLARE_CUSTOM_OP(lstm, 8, 2, false, 3, 2);
         #endif
 
+    //////////////////////////////////////////////////////////////////////////
+    /**
+       * Implementation of whole LSTM layer with optional peephole connections, with weights layout of dl4j LSTM/GravesLSTM layers.
+       * Gates order is [a, f, o, g]: block input (tanh activation), forget, output and input modulation gates (sigmoid).
+       * Per time step, all four gates are computed with single gemm for inputs and single gemm for recurrent weights,
+       * activations and cell state update are fused in one loop. All arrays are used in 'f' order.
+       *
+       * Input arrays:
+       *    0: input with shape [bS x nIn x time]
+       *    1: input-to-hidden weights [nIn x 4*nOut]
+       *    2: hidden-to-hidden weights [nOut x 4*nOut], or [nOut x 4*nOut+3] with peephole weights [wFF, wOO, wGG] in last 3 columns
+       *    3: biases [1 x 4*nOut]
+       *    4: initial cell output [bS x nOut]
+       *    5: initial cell state  [bS x nOut]
+       *    6: optional, mask [bS x time]: masked time steps have zero cell output and cell state
+       *
+       *  Input integer arguments:
+       *    0: if not zero, provide peephole connections
+       *    1: if not zero, process time steps forwards, otherwise backwards
+       *    2: if not zero, training mode: all cell states and gate activations are returned for lstmLayer_bp
+       *
+       * Output arrays:
+       *    0: cell outputs [bS x nOut x time]
+       *    1: training: (unmasked) cell states [bS x nOut x time], otherwise last cell state [bS x nOut]
+       *    2: training: gate activations [bS x 4*nOut x time], otherwise scratch array [bS x 4*nOut]
+       */
+        #if NOT_EXCLUDED(OP_lstmLayer)
+        DECLARE_CUSTOM_OP(lstmLayer, 6, 3, false, 0, 3);
+
+    //////////////////////////////////////////////////////////////////////////
+    /**
+       * Backprop through time for lstmLayer op
+       *
+       * Input arrays:
+       *    0-2: input, input-to-hidden weights and hidden-to-hidden weights, same as for lstmLayer
+       *    3-4: initial cell output and cell state [bS x nOut]
+       *    5-7: outputs of lstmLayer in training mode: cell outputs, cell states and gate activations
+       *    8: gradient wrt cell outputs [bS x nOut x time]
+       *    9: optional, mask [bS x time]
+       *
+       *  Input integer arguments:
+       *    0: if not zero, provide peephole connections
+       *    1: if not zero, time steps were processed forwards, otherwise backwards
+       *    2: truncated BPTT backward length, zero or negative for full BPTT
+       *    3: optional, if zero the mask is applied to cell states only (as in forward pass), but not to the gradients. Default 1
+       *
+       * Output arrays:
+       *    0: gradient wrt input [bS x nIn x time]
+       *    1: gradient wrt input-to-hidden weights [nIn x 4*nOut]
+       *    2: gradient wrt hidden-to-hidden weights, same shape as input 2
+       *    3: gradient wrt biases [1 x 4*nOut]
+       */
+        DECLARE_CUSTOM_OP(lstmLayer_bp, 9, 4, false, 0, 3);
+        #endif
+
     //////////////////////////////////////////////////////////////////////////
     /**
        * Implementation of gated Recurrent Unit:
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+//
+// 2D convolution without im2col buffer: Winograd F(2x2,3x3) and direct (output channel blocked) algorithms
+//
+
+#ifndef LIBND4J_CONV2D_CPU_H
+#define LIBND4J_CONV2D_CPU_H
+
+#include <ops/declarable/helpers/helpers.h>
+
+namespace nd4j    {
+namespace ops     {
+namespace helpers {
+
+	// all arrays are expected in contiguous 'c' order, NCHW:
+	// input [bS, iC, iH, iW], weights [oC, iC, kH, kW], bias [oC] (may be nullptr), output [bS, oC, oH, oW]
+	// pH, pW are top/left paddings, output size is taken from output array, positions outside of input are zeros
+
+	// Winograd F(2x2,3x3): 3x3 kernel, unit strides and dilations only
+	template <typename T>
+	void conv2dWinograd(NDArray<T>* input, NDArray<T>* weights, NDArray<T>* bias, NDArray<T>* output, const int pH, const int pW);
+
+	// direct convolution, blocked over output channels
+	template <typename T>
+	void conv2dDirect(NDArray<T>* input, NDArray<T>* weights, NDArray<T>* bias, NDArray<T>* output, const int sH, const int sW, const int pH, const int pW, const int dH, const int dW);
+
+	// gradient wrt input, gradI [bS, iC, iH, iW]; winograd = true is only valid for the arguments supported by conv2dWinograd
+	template <typename T>
+	void conv2dBpInput(NDArray<T>* gradO, NDArray<T>* weights, NDArray<T>* gradI, const int sH, const int sW, const int pH, const int pW, const int dH, const int dW, const bool winograd);
+
+	// gradients wrt weights and bias, gradW [oC, iC, kH, kW], gradB [oC] (may be nullptr)
+	template <typename T>
+	void conv2dBpWeights(NDArray<T>* input, NDArray<T>* gradO, NDArray<T>* gradW, NDArray<T>* gradB, const int sH, const int sW, const int pH, const int pW, const int dH, const int dW);
+
+}
+}
+}
+
+
+#endif //LIBND4J_CONV2D_CPU_H
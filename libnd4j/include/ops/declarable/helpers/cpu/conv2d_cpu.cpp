@@ -0,0 +1,437 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+//
+// 2D convolution without im2col buffer
+//
+// Winograd F(2x2,3x3):
+// Andrew Lavin, Scott Gray. "Fast Algorithms for Convolutional Neural Networks", CVPR 2016. https://arxiv.org/abs/1509.09308
+// Y = A^T [ (G g G^T) . (B^T d B) ] A, for each 4x4 input tile d producing 2x2 output tile Y;
+// the element-wise products are summed over input channels as 16 independent gemm calls per block of tiles
+//
+// Direct convolution: weights are packed into blocks of OC_BLOCK output channels, so that the innermost loop
+// updates OC_BLOCK independent accumulators for each input value (vectorizable, no im2col buffer)
+//
+
+#include <ops/declarable/helpers/conv2d_cpu.h>
+#include <helpers/BlasHelper.h>
+
+namespace nd4j 	  {
+namespace ops 	  {
+namespace helpers {
+
+static const int OC_BLOCK = 8;
+// upper bound for the size of transformed input/output tiles buffers (number of elements)
+static const Nd4jLong WINOGRAD_BUFFER_LIMIT = 1 << 22;
+
+
+//////////////////////////////////////////////////////////////////////////
+// C = A * B, contiguous row-major matrices: A [M x K], B [K x N], C [M x N]
+template <typename T>
+static void gemmRowMajor(const int M, const int N, const int K, const T* A, const T* B, T* C) {
+
+    if (BlasHelper::getInstance()->template hasGEMM<T>() && (sizeof(T) == 4 || sizeof(T) == 8)) {
+        // row-major C = A * B is column-major C^T = B^T * A^T
+        if (sizeof(T) == 4)
+            BlasHelper::getInstance()->sgemm()(CblasColMajor, CblasNoTrans, CblasNoTrans, N, M, K, 1.f, reinterpret_cast<float*>(const_cast<T*>(B)), N, reinterpret_cast<float*>(const_cast<T*>(A)), K, 0.f, reinterpret_cast<float*>(C), N);
+        else
+            BlasHelper::getInstance()->dgemm()(CblasColMajor, CblasNoTrans, CblasNoTrans, N, M, K, 1.0, reinterpret_cast<double*>(const_cast<T*>(B)), N, reinterpret_cast<double*>(const_cast<T*>(A)), K, 0.0, reinterpret_cast<double*>(C), N);
+        return;
+    }
+
+#pragma omp parallel for schedule(guided)
+    for (int i = 0; i < M; ++i) {
+        T* c = C + (Nd4jLong) i * N;
+        for (int j = 0; j < N; ++j)
+            c[j] = (T) 0.f;
+        for (int k = 0; k < K; ++k) {
+            const T a = A[(Nd4jLong) i * K + k];
+            const T* b = B + (Nd4jLong) k * N;
+            for (int j = 0; j < N; ++j)
+                c[j] += a * b[j];
+        }
+    }
+}
+
+//////////////////////////////////////////////////////////////////////////
+// range [start, end) of output positions o for which o*s - p + k*d is inside [0, inSize)
+static FORCEINLINE void validRange(const int outSize, const int inSize, const int s, const int p, const int kd, int& start, int& end) {
+
+    const int lo = p - kd;
+    start = lo <= 0 ? 0 : (lo + s - 1) / s;
+    const int hi = inSize - 1 + p - kd;
+    end = hi < 0 ? 0 : nd4j::math::nd4j_min<int>(outSize, hi / s + 1);
+    if (end < start)
+        end = start;
+}
+
+//////////////////////////////////////////////////////////////////////////
+// Winograd F(2x2,3x3) on raw buffers; wRotated = true: use weights [iC, oC, 3, 3] rotated by 180 degrees and with swapped channels
+// (i.e. the transposed convolution, as used for the gradient wrt input)
+template <typename T>
+static void winogradRaw(const T* in, const T* w, const T* bias, T* out, const int bS, const int iC, const int iH, const int iW,
+                        const int oC, const int oH, const int oW, const int pH, const int pW, const bool wRotated) {
+
+    const int tH = (oH + 1) / 2;
+    const int tW = (oW + 1) / 2;
+    const Nd4jLong tilesPerImage = (Nd4jLong) tH * tW;
+    const Nd4jLong numTiles = tilesPerImage * bS;
+    const Nd4jLong filters = (Nd4jLong) oC * iC;
+
+    // weights transform U = G g G^T, layout [16, oC, iC]
+    std::vector<T> U(16 * filters);
+#pragma omp parallel for schedule(guided) collapse(2)
+    for (int oc = 0; oc < oC; ++oc) {
+        for (int ic = 0; ic < iC; ++ic) {
+            T g[9];
+            if (wRotated) {
+                const T* src = w + ((Nd4jLong) ic * oC + oc) * 9;
+                for (int e = 0; e < 9; ++e)
+                    g[e] = src[8 - e];
+            }
+            else {
+                const T* src = w + ((Nd4jLong) oc * iC + ic) * 9;
+                for (int e = 0; e < 9; ++e)
+                    g[e] = src[e];
+            }
+
+            T t[4][3];
+            for (int j = 0; j < 3; ++j) {
+                t[0][j] = g[j];
+                t[1][j] = (g[j] + g[3 + j] + g[6 + j]) * (T) 0.5f;
+                t[2][j] = (g[j] - g[3 + j] + g[6 + j]) * (T) 0.5f;
+                t[3][j] = g[6 + j];
+            }
+            T* u = U.data() + (Nd4jLong) oc * iC + ic;
+            for (int i = 0; i < 4; ++i) {
+                u[(i * 4 + 0) * filters] = t[i][0];
+                u[(i * 4 + 1) * filters] = (t[i][0] + t[i][1] + t[i][2]) * (T) 0.5f;
+                u[(i * 4 + 2) * filters] = (t[i][0] - t[i][1] + t[i][2]) * (T) 0.5f;
+                u[(i * 4 + 3) * filters] = t[i][2];
+            }
+        }
+    }
+
+    // tiles are processed in blocks, so that transformed tiles fit into bounded buffers
+    Nd4jLong block = WINOGRAD_BUFFER_LIMIT / (16 * (Nd4jLong) (iC + oC));
+    block = nd4j::math::nd4j_max<Nd4jLong>(64, nd4j::math::nd4j_min<Nd4jLong>(block, numTiles));
+    std::vector<T> V(16 * (Nd4jLong) iC * block);
+    std::vector<T> M(16 * (Nd4jLong) oC * block);
+
+    for (Nd4jLong t0 = 0; t0 < numTiles; t0 += block) {
+        const int nt = static_cast<int>(nd4j::math::nd4j_min<Nd4jLong>(block, numTiles - t0));
+
+        // input transform V = B^T d B, layout [16, iC, nt]
+#pragma omp parallel for schedule(guided) collapse(2)
+        for (int ic = 0; ic < iC; ++ic) {
+            for (int tt = 0; tt < nt; ++tt) {
+                const Nd4jLong tile = t0 + tt;
+                const Nd4jLong n = tile / tilesPerImage;
+                const int r  = static_cast<int>(tile % tilesPerImage);
+                const int y0 = (r / tW) * 2 - pH;
+                const int x0 = (r % tW) * 2 - pW;
+                const T* src = in + (n * iC + ic) * iH * iW;
+
+                T d[4][4];
+                for (int i = 0; i < 4; ++i) {
+                    const int y = y0 + i;
+                    for (int j = 0; j < 4; ++j) {
+                        const int x = x0 + j;
+                        d[i][j] = (y >= 0 && y < iH && x >= 0 && x < iW) ? src[(Nd4jLong) y * iW + x] : (T) 0.f;
+                    }
+                }
+
+                T t[4][4];
+                for (int j = 0; j < 4; ++j) {
+                    t[0][j] = d[0][j] - d[2][j];
+                    t[1][j] = d[1][j] + d[2][j];
+                    t[2][j] = d[2][j] - d[1][j];
+                    t[3][j] = d[1][j] - d[3][j];
+                }
+                T* v = V.data() + (Nd4jLong) ic * nt + tt;
+                const Nd4jLong vStep = (Nd4jLong) iC * nt;
+                for (int i = 0; i < 4; ++i) {
+                    v[(i * 4 + 0) * vStep] = t[i][0] - t[i][2];
+                    v[(i * 4 + 1) * vStep] = t[i][1] + t[i][2];
+                    v[(i * 4 + 2) * vStep] = t[i][2] - t[i][1];
+                    v[(i * 4 + 3) * vStep] = t[i][1] - t[i][3];
+                }
+            }
+        }
+
+        // element-wise products summed over input channels: M_xi [oC, nt] = U_xi [oC, iC] * V_xi [iC, nt]
+        for (int xi = 0; xi < 16; ++xi)
+            gemmRowMajor<T>(oC, nt, iC, U.data() + xi * filters, V.data() + (Nd4jLong) xi * iC * nt, M.data() + (Nd4jLong) xi * oC * nt);
+
+        // output transform Y = A^T m A
+#pragma omp parallel for schedule(guided) collapse(2)
+        for (int oc = 0; oc < oC; ++oc) {
+            for (int tt = 0; tt < nt; ++tt) {
+                const Nd4jLong tile = t0 + tt;
+                const Nd4jLong n = tile / tilesPerImage;
+                const int r  = static_cast<int>(tile % tilesPerImage);
+                const int y0 = (r / tW) * 2;
+                const int x0 = (r % tW) * 2;
+
+                const T* m = M.data() + (Nd4jLong) oc * nt + tt;
+                const Nd4jLong mStep = (Nd4jLong) oC * nt;
+                T t[2][4];
+                for (int j = 0; j < 4; ++j) {
+                    const T m0 = m[j * mStep], m1 = m[(4 + j) * mStep], m2 = m[(8 + j) * mStep], m3 = m[(12 + j) * mStep];
+                    t[0][j] = m0 + m1 + m2;
+                    t[1][j] = m1 - m2 - m3;
+                }
+
+                const T b = bias == nullptr ? (T) 0.f : bias[oc];
+                T* dst = out + (n * oC + oc) * oH * oW;
+                for (int i = 0; i < 2 && y0 + i < oH; ++i) {
+                    dst[(Nd4jLong) (y0 + i) * oW + x0] = t[i][0] + t[i][1] + t[i][2] + b;
+                    if (x0 + 1 < oW)
+                        dst[(Nd4jLong) (y0 + i) * oW + x0 + 1] = t[i][1] - t[i][2] - t[i][3] + b;
+                }
+            }
+        }
+    }
+}
+
+//////////////////////////////////////////////////////////////////////////
+template <typename T>
+static void directRaw(const T* in, const T* w, const T* bias, T* out, const int bS, const int iC, const int iH, const int iW,
+                      const int oC, const int oH, const int oW, const int kH, const int kW,
+                      const int sH, const int sW, const int pH, const int pW, const int dH, const int dW) {
+
+    const int nBlocks = (oC + OC_BLOCK - 1) / OC_BLOCK;
+    const int kHW = kH * kW;
+
+    // packed weights [nBlocks, iC, kH, kW, OC_BLOCK], zero padded in last block
+    std::vector<T> wp((Nd4jLong) nBlocks * iC * kHW * OC_BLOCK, (T) 0.f);
+#pragma omp parallel for schedule(guided) collapse(2)
+    for (int oc = 0; oc < oC; ++oc) {
+        for (int ic = 0; ic < iC; ++ic) {
+            const T* src = w + ((Nd4jLong) oc * iC + ic) * kHW;
+            T* dst = wp.data() + (((Nd4jLong) (oc / OC_BLOCK) * iC + ic) * kHW) * OC_BLOCK + oc % OC_BLOCK;
+            for (int k = 0; k < kHW; ++k)
+                dst[k * OC_BLOCK] = src[k];
+        }
+    }
+
+#pragma omp parallel
+    {
+        std::vector<T> acc((Nd4jLong) oW * OC_BLOCK);
+
+#pragma omp for schedule(guided) collapse(3)
+        for (int n = 0; n < bS; ++n) {
+            for (int blk = 0; blk < nBlocks; ++blk) {
+                for (int oh = 0; oh < oH; ++oh) {
+                    std::fill(acc.begin(), acc.end(), (T) 0.f);
+
+                    for (int ic = 0; ic < iC; ++ic) {
+                        const T* src = in + ((Nd4jLong) n * iC + ic) * iH * iW;
+                        for (int kh = 0; kh < kH; ++kh) {
+                            const int ih = oh * sH - pH + kh * dH;
+                            if (ih < 0 || ih >= iH)
+                                continue;
+                            const T* row = src + (Nd4jLong) ih * iW;
+                            for (int kw = 0; kw < kW; ++kw) {
+                                const T* w8 = wp.data() + ((((Nd4jLong) blk * iC + ic) * kH + kh) * kW + kw) * OC_BLOCK;
+                                int owStart, owEnd;
+                                validRange(oW, iW, sW, pW, kw * dW, owStart, owEnd);
+                                for (int ow = owStart; ow < owEnd; ++ow) {
+                                    const T x = row[ow * sW - pW + kw * dW];
+                                    T* a = acc.data() + (Nd4jLong) ow * OC_BLOCK;
+#pragma omp simd
+                                    for (int c = 0; c < OC_BLOCK; ++c)
+                                        a[c] += w8[c] * x;
+                                }
+                            }
+                        }
+                    }
+
+                    const int ocLimit = nd4j::math::nd4j_min<int>(OC_BLOCK, oC - blk * OC_BLOCK);
+                    for (int c = 0; c < ocLimit; ++c) {
+                        const int oc = blk * OC_BLOCK + c;
+                        const T b = bias == nullptr ? (T) 0.f : bias[oc];
+                        T* dst = out + (((Nd4jLong) n * oC + oc) * oH + oh) * oW;
+                        for (int ow = 0; ow < oW; ++ow)
+                            dst[ow] = acc[(Nd4jLong) ow * OC_BLOCK + c] + b;
+                    }
+                }
+            }
+        }
+    }
+}
+
+//////////////////////////////////////////////////////////////////////////
+template <typename T>
+static void directBpInputRaw(const T* gradO, const T* w, T* gradI, const int bS, const int iC, const int iH, const int iW,
+                             const int oC, const int oH, const int oW, const int kH, const int kW,
+                             const int sH, const int sW, const int pH, const int pW, const int dH, const int dW) {
+
+    // each (example, input channel) plane is written by a single thread: no atomics needed
+#pragma omp parallel for schedule(guided) collapse(2)
+    for (int n = 0; n < bS; ++n) {
+        for (int ic = 0; ic < iC; ++ic) {
+            T* gI = gradI + ((Nd4jLong) n * iC + ic) * iH * iW;
+            for (Nd4jLong e = 0; e < (Nd4jLong) iH * iW; ++e)
+                gI[e] = (T) 0.f;
+
+            for (int oc = 0; oc < oC; ++oc) {
+                const T* gO = gradO + ((Nd4jLong) n * oC + oc) * oH * oW;
+                const T* wk = w + ((Nd4jLong) oc * iC + ic) * kH * kW;
+                for (int oh = 0; oh < oH; ++oh) {
+                    const T* gORow = gO + (Nd4jLong) oh * oW;
+                    for (int kh = 0; kh < kH; ++kh) {
+                        const int ih = oh * sH - pH + kh * dH;
+                        if (ih < 0 || ih >= iH)
+                            continue;
+                        T* gIRow = gI + (Nd4jLong) ih * iW;
+                        for (int kw = 0; kw < kW; ++kw) {
+                            const T wv = wk[kh * kW + kw];
+                            int owStart, owEnd;
+                            validRange(oW, iW, sW, pW, kw * dW, owStart, owEnd);
+                            for (int ow = owStart; ow < owEnd; ++ow)
+                                gIRow[ow * sW - pW + kw * dW] += gORow[ow] * wv;
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
+
+
+//////////////////////////////////////////////////////////////////////////
+template <typename T>
+void conv2dWinograd(NDArray<T>* input, NDArray<T>* weights, NDArray<T>* bias, NDArray<T>* output, const int pH, const int pW) {
+
+    winogradRaw<T>(input->getBuffer(), weights->getBuffer(), bias == nullptr ? nullptr : bias->getBuffer(), output->getBuffer(),
+                   input->sizeAt(0), input->sizeAt(1), input->sizeAt(2), input->sizeAt(3),
+                   weights->sizeAt(0), output->sizeAt(2), output->sizeAt(3), pH, pW, false);
+}
+
+//////////////////////////////////////////////////////////////////////////
+template <typename T>
+void conv2dDirect(NDArray<T>* input, NDArray<T>* weights, NDArray<T>* bias, NDArray<T>* output, const int sH, const int sW, const int pH, const int pW, const int dH, const int dW) {
+
+    directRaw<T>(input->getBuffer(), weights->getBuffer(), bias == nullptr ? nullptr : bias->getBuffer(), output->getBuffer(),
+                 input->sizeAt(0), input->sizeAt(1), input->sizeAt(2), input->sizeAt(3),
+                 weights->sizeAt(0), output->sizeAt(2), output->sizeAt(3), weights->sizeAt(2), weights->sizeAt(3),
+                 sH, sW, pH, pW, dH, dW);
+}
+
+//////////////////////////////////////////////////////////////////////////
+template <typename T>
+void conv2dBpInput(NDArray<T>* gradO, NDArray<T>* weights, NDArray<T>* gradI, const int sH, const int sW, const int pH, const int pW, const int dH, const int dW, const bool winograd) {
+
+    const int bS = gradI->sizeAt(0);
+    const int iC = gradI->sizeAt(1);
+    const int iH = gradI->sizeAt(2);
+    const int iW = gradI->sizeAt(3);
+    const int oC = gradO->sizeAt(1);
+    const int oH = gradO->sizeAt(2);
+    const int oW = gradO->sizeAt(3);
+
+    if (winograd && pH <= 2 && pW <= 2) {
+        // for unit strides the gradient wrt input is the convolution of gradO with rotated and transposed weights, padding 2 - p
+        winogradRaw<T>(gradO->getBuffer(), weights->getBuffer(), nullptr, gradI->getBuffer(), bS, oC, oH, oW, iC, iH, iW, 2 - pH, 2 - pW, true);
+        return;
+    }
+
+    directBpInputRaw<T>(gradO->getBuffer(), weights->getBuffer(), gradI->getBuffer(), bS, iC, iH, iW, oC, oH, oW,
+                        weights->sizeAt(2), weights->sizeAt(3), sH, sW, pH, pW, dH, dW);
+}
+
+//////////////////////////////////////////////////////////////////////////
+template <typename T>
+void conv2dBpWeights(NDArray<T>* input, NDArray<T>* gradO, NDArray<T>* gradW, NDArray<T>* gradB, const int sH, const int sW, const int pH, const int pW, const int dH, const int dW) {
+
+    const int bS = input->sizeAt(0);
+    const int iC = input->sizeAt(1);
+    const int iH = input->sizeAt(2);
+    const int iW = input->sizeAt(3);
+    const int oC = gradO->sizeAt(1);
+    const int oH = gradO->sizeAt(2);
+    const int oW = gradO->sizeAt(3);
+    const int kH = gradW->sizeAt(2);
+    const int kW = gradW->sizeAt(3);
+
+    const T* in = input->getBuffer();
+    const T* gO = gradO->getBuffer();
+    T* gW = gradW->getBuffer();
+
+#pragma omp parallel for schedule(guided) collapse(2)
+    for (int oc = 0; oc < oC; ++oc) {
+        for (int ic = 0; ic < iC; ++ic) {
+            for (int kh = 0; kh < kH; ++kh) {
+                for (int kw = 0; kw < kW; ++kw) {
+                    int owStart, owEnd;
+                    validRange(oW, iW, sW, pW, kw * dW, owStart, owEnd);
+                    T sum = (T) 0.f;
+                    for (int n = 0; n < bS; ++n) {
+                        const T* src = in + ((Nd4jLong) n * iC + ic) * iH * iW;
+                        const T* gOPlane = gO + ((Nd4jLong) n * oC + oc) * oH * oW;
+                        for (int oh = 0; oh < oH; ++oh) {
+                            const int ih = oh * sH - pH + kh * dH;
+                            if (ih < 0 || ih >= iH)
+                                continue;
+                            const T* row = src + (Nd4jLong) ih * iW;
+                            const T* gORow = gOPlane + (Nd4jLong) oh * oW;
+                            for (int ow = owStart; ow < owEnd; ++ow)
+                                sum += gORow[ow] * row[ow * sW - pW + kw * dW];
+                        }
+                    }
+                    gW[(((Nd4jLong) oc * iC + ic) * kH + kh) * kW + kw] = sum;
+                }
+            }
+        }
+    }
+
+    if (gradB != nullptr) {
+        T* gB = gradB->getBuffer();
+#pragma omp parallel for schedule(guided)
+        for (int oc = 0; oc < oC; ++oc) {
+            T sum = (T) 0.f;
+            for (int n = 0; n < bS; ++n) {
+                const T* gOPlane = gO + ((Nd4jLong) n * oC + oc) * oH * oW;
+                for (Nd4jLong e = 0; e < (Nd4jLong) oH * oW; ++e)
+                    sum += gOPlane[e];
+            }
+            gB[oc] = sum;
+        }
+    }
+}
+
+
+template void conv2dWinograd<float>(NDArray<float>* input, NDArray<float>* weights, NDArray<float>* bias, NDArray<float>* output, const int pH, const int pW);
+template void conv2dWinograd<float16>(NDArray<float16>* input, NDArray<float16>* weights, NDArray<float16>* bias, NDArray<float16>* output, const int pH, const int pW);
+template void conv2dWinograd<double>(NDArray<double>* input, NDArray<double>* weights, NDArray<double>* bias, NDArray<double>* output, const int pH, const int pW);
+
+template void conv2dDirect<float>(NDArray<float>* input, NDArray<float>* weights, NDArray<float>* bias, NDArray<float>* output, const int sH, const int sW, const int pH, const int pW, const int dH, const int dW);
+template void conv2dDirect<float16>(NDArray<float16>* input, NDArray<float16>* weights, NDArray<float16>* bias, NDArray<float16>* output, const int sH, const int sW, const int pH, const int pW, const int dH, const int dW);
+template void conv2dDirect<double>(NDArray<double>* input, NDArray<double>* weights, NDArray<double>* bias, NDArray<double>* output, const int sH, const int sW, const int pH, const int pW, const int dH, const int dW);
+
+template void conv2dBpInput<float>(NDArray<float>* gradO, NDArray<float>* weights, NDArray<float>* gradI, const int sH, const int sW, const int pH, const int pW, const int dH, const int dW, const bool winograd);
+template void conv2dBpInput<float16>(NDArray<float16>* gradO, NDArray<float16>* weights, NDArray<float16>* gradI, const int sH, const int sW, const int pH, const int pW, const int dH, const int dW, const bool winograd);
+template void conv2dBpInput<double>(NDArray<double>* gradO, NDArray<double>* weights, NDArray<double>* gradI, const int sH, const int sW, const int pH, const int pW, const int dH, const int dW, const bool winograd);
+
+template void conv2dBpWeights<float>(NDArray<float>* input, NDArray<float>* gradO, NDArray<float>* gradW, NDArray<float>* gradB, const int sH, const int sW, const int pH, const int pW, const int dH, const int dW);
+template void conv2dBpWeights<float16>(NDArray<float16>* input, NDArray<float16>* gradO, NDArray<float16>* gradW, NDArray<float16>* gradB, const int sH, const int sW, const int pH, const int pW, const int dH, const int dW);
+template void conv2dBpWeights<double>(NDArray<double>* input, NDArray<double>* gradO, NDArray<double>* gradW, NDArray<double>* gradB, const int sH, const int sW, const int pH, const int pW, const int dH, const int dW);
+
+
+}
+}
+}
@@ -27,6 +27,7 @@
 
 
 #include<ops/declarable/helpers/lstm.h>
+#include <helpers/BlasHelper.h>
 
 namespace nd4j 	  {
 namespace ops 	  {
@@ -164,6 +165,263 @@ void lstmTimeLoop(const std::vector<NDArray<T>*>& inArrs, const std::vector<NDAr
 }
 
 
+//////////////////////////////////////////////////////////////////////////
+// C = op(A) * op(B) + beta * C, all matrices in column-major order with leading dimensions lda, ldb, ldc
+template <typename T>
+static void gemmColMajor(const bool transA, const bool transB, const int M, const int N, const int K, const T* A, const int lda, const T* B, const int ldb, const T beta, T* C, const int ldc) {
+
+    if (BlasHelper::getInstance()->template hasGEMM<T>() && (sizeof(T) == 4 || sizeof(T) == 8)) {
+        const CBLAS_TRANSPOSE tA = transA ? CblasTrans : CblasNoTrans;
+        const CBLAS_TRANSPOSE tB = transB ? CblasTrans : CblasNoTrans;
+        if (sizeof(T) == 4)
+            BlasHelper::getInstance()->sgemm()(CblasColMajor, tA, tB, M, N, K, 1.f, reinterpret_cast<float*>(const_cast<T*>(A)), lda, reinterpret_cast<float*>(const_cast<T*>(B)), ldb, (float) beta, reinterpret_cast<float*>(C), ldc);
+        else
+            BlasHelper::getInstance()->dgemm()(CblasColMajor, tA, tB, M, N, K, 1.0, reinterpret_cast<double*>(const_cast<T*>(A)), lda, reinterpret_cast<double*>(const_cast<T*>(B)), ldb, (double) beta, reinterpret_cast<double*>(C), ldc);
+        return;
+    }
+
+    // fallback, unlike blas::GEMM this one respects leading dimensions of strided sub-matrices
+#pragma omp parallel for schedule(guided)
+    for (int j = 0; j < N; ++j) {
+        for (int i = 0; i < M; ++i) {
+            T sum = (T) 0.f;
+            for (int k = 0; k < K; ++k) {
+                const T a = transA ? A[k + (Nd4jLong) i * lda] : A[i + (Nd4jLong) k * lda];
+                const T bb = transB ? B[j + (Nd4jLong) k * ldb] : B[k + (Nd4jLong) j * ldb];
+                sum += a * bb;
+            }
+            T* out = C + i + (Nd4jLong) j * ldc;
+            *out = beta == (T) 0.f ? sum : sum + beta * *out;
+        }
+    }
+}
+
+//////////////////////////////////////////////////////////////////////////
+// Forward pass of the whole LSTM layer, same equations as in LSTMHelpers of dl4j:
+//   z = x_t * Wx + h_{t-1} * Wr + b,  gates layout [a, f, o, g]
+//   a = tanh(z_a),  f = sigmoid(z_f + c_{t-1} * wFF),  g = sigmoid(z_g + c_{t-1} * wGG)
+//   c_t = f * c_{t-1} + g * a,  o = sigmoid(z_o + c_t * wOO),  h_t = o * tanh(c_t)
+// Per time step: two gemm calls for all four gates at once, then single fused loop for activations and cell update
+template <typename T>
+void lstmLayerTimeLoop(NDArray<T>* x, NDArray<T>* Wx, NDArray<T>* Wr, NDArray<T>* b, NDArray<T>* h0, NDArray<T>* c0, NDArray<T>* mask,
+                       NDArray<T>* h, NDArray<T>* c, NDArray<T>* gates, const bool peephole, const bool forwards, const bool training) {
+
+    // x [bS x nIn x time], Wx [nIn x 4*nOut], Wr [nOut x 4*nOut(+3)], b [1 x 4*nOut], h0, c0 [bS x nOut], mask [bS x time]
+    // h [bS x nOut x time]; training: c [bS x nOut x time], gates [bS x 4*nOut x time] (unmasked c, gate activations are kept for backprop)
+    // inference: c [bS x nOut] (last masked cell state), gates [bS x 4*nOut] used as scratch
+    const int bS     = x->sizeAt(0);
+    const int nIn    = x->sizeAt(1);
+    const int sL     = x->sizeAt(2);
+    const int nOut   = h0->sizeAt(1);
+    const int nGates = 4 * nOut;
+    const Nd4jLong hStep = (Nd4jLong) bS * nOut;
+    const Nd4jLong gStep = (Nd4jLong) bS * nGates;
+
+    const T* xBuf  = x->getBuffer();
+    const T* WxBuf = Wx->getBuffer();
+    const T* WrBuf = Wr->getBuffer();
+    const T* bBuf  = b->getBuffer();
+    const T* mBuf  = mask == nullptr ? nullptr : mask->getBuffer();
+    const T* wFF   = WrBuf + (Nd4jLong) nGates * nOut;
+    const T* wOO   = wFF + nOut;
+    const T* wGG   = wOO + nOut;
+    T* hBuf = h->getBuffer();
+    T* cBuf = c->getBuffer();
+    T* gBuf = gates->getBuffer();
+
+    if (!training)
+        c->assign(c0);
+
+    for (int i = 0; i < sL; ++i) {
+
+        const int t     = forwards ? i : sL - 1 - i;
+        const int tPrev = forwards ? t - 1 : t + 1;
+
+        const T* hPrev = i == 0 ? h0->getBuffer() : hBuf + tPrev * hStep;
+        const T* cPrev = !training ? cBuf : (i == 0 ? c0->getBuffer() : cBuf + tPrev * hStep);
+        const T* mPrev = (training && i > 0 && mBuf != nullptr) ? mBuf + (Nd4jLong) tPrev * bS : nullptr;
+        const T* mt    = mBuf == nullptr ? nullptr : mBuf + (Nd4jLong) t * bS;
+        T* zt = training ? gBuf + t * gStep : gBuf;
+        T* ht = hBuf + t * hStep;
+        T* ct = training ? cBuf + t * hStep : cBuf;
+
+        gemmColMajor<T>(false, false, bS, nGates, nIn, xBuf + (Nd4jLong) t * bS * nIn, bS, WxBuf, nIn, (T) 0.f, zt, bS);
+        gemmColMajor<T>(false, false, bS, nGates, nOut, hPrev, bS, WrBuf, nOut, (T) 1.f, zt, bS);
+
+#pragma omp parallel for schedule(guided)
+        for (int j = 0; j < nOut; ++j) {
+            for (int e = j * bS; e < (j + 1) * bS; ++e) {
+                const int ex = e - j * bS;
+                const T cp = mPrev == nullptr ? cPrev[e] : cPrev[e] * mPrev[ex];
+
+                const T a = nd4j::math::nd4j_tanh<T>(zt[e] + bBuf[j]);
+                T zf = zt[hStep + e] + bBuf[nOut + j];
+                T zg = zt[3 * hStep + e] + bBuf[3 * nOut + j];
+                if (peephole) {
+                    zf += cp * wFF[j];
+                    zg += cp * wGG[j];
+                }
+                const T f = nd4j::math::nd4j_sigmoid<T>(zf);
+                const T g = nd4j::math::nd4j_sigmoid<T>(zg);
+                const T cc = f * cp + g * a;
+
+                T zo = zt[2 * hStep + e] + bBuf[2 * nOut + j];
+                if (peephole)
+                    zo += cc * wOO[j];
+                const T o = nd4j::math::nd4j_sigmoid<T>(zo);
+
+                zt[e]             = a;
+                zt[hStep + e]     = f;
+                zt[2 * hStep + e] = o;
+                zt[3 * hStep + e] = g;
+
+                const T m = mt == nullptr ? (T) 1.f : mt[ex];
+                ht[e] = o * nd4j::math::nd4j_tanh<T>(cc) * m;
+                ct[e] = training ? cc : cc * m;
+            }
+        }
+    }
+}
+
+//////////////////////////////////////////////////////////////////////////
+// Backprop through time for lstmLayerTimeLoop, same as LSTMHelpers.backpropGradientHelper of dl4j:
+// deltas for all four gates are computed in single fused loop, and are then used in one gemm per gradient
+template <typename T>
+void lstmLayerTimeLoopBp(NDArray<T>* x, NDArray<T>* Wx, NDArray<T>* Wr, NDArray<T>* h0, NDArray<T>* c0, NDArray<T>* h, NDArray<T>* c, NDArray<T>* gates, NDArray<T>* eps, NDArray<T>* mask,
+                         NDArray<T>* epsNext, NDArray<T>* gradWx, NDArray<T>* gradWr, NDArray<T>* gradB, const bool peephole, const bool forwards, const int tbpttLength, const bool maskDeltas) {
+
+    const int bS     = x->sizeAt(0);
+    const int nIn    = x->sizeAt(1);
+    const int sL     = x->sizeAt(2);
+    const int nOut   = h0->sizeAt(1);
+    const int nGates = 4 * nOut;
+    const Nd4jLong hStep = (Nd4jLong) bS * nOut;
+    const Nd4jLong gStep = (Nd4jLong) bS * nGates;
+    const int endIdx = tbpttLength > 0 ? nd4j::math::nd4j_max<int>(0, sL - tbpttLength) : 0;
+
+    const T* xBuf   = x->getBuffer();
+    const T* WxBuf  = Wx->getBuffer();
+    const T* WrBuf  = Wr->getBuffer();
+    const T* hBuf   = h->getBuffer();
+    const T* cBuf   = c->getBuffer();
+    const T* gBuf   = gates->getBuffer();
+    const T* epsBuf = eps->getBuffer();
+    const T* mBuf   = mask == nullptr ? nullptr : mask->getBuffer();
+    const T* wFF    = WrBuf + (Nd4jLong) nGates * nOut;
+    const T* wOO    = wFF + nOut;
+    const T* wGG    = wOO + nOut;
+    T* epsNextBuf = epsNext->getBuffer();
+    T* gWxBuf = gradWx->getBuffer();
+    T* gWrBuf = gradWr->getBuffer();
+    T* gBBuf  = gradB->getBuffer();
+    T* gFF = gWrBuf + (Nd4jLong) nGates * nOut;
+    T* gOO = gFF + nOut;
+    T* gGG = gOO + nOut;
+
+    epsNext->assign((T) 0.f);
+    gradWx->assign((T) 0.f);
+    gradWr->assign((T) 0.f);
+    gradB->assign((T) 0.f);
+
+    // gate deltas of the current time step, kept as "next" deltas for the previous time step
+    std::vector<T> delta(gStep);
+    std::vector<T> dcNext(hStep);
+    std::vector<T> dh(hStep);
+
+    for (int i = sL - 1; i >= endIdx; --i) {
+
+        const int t     = forwards ? i : sL - 1 - i;
+        const int tPrev = forwards ? t - 1 : t + 1;
+        const int tNext = forwards ? t + 1 : t - 1;
+        const bool last = i == sL - 1;
+
+        const T* xt    = xBuf + (Nd4jLong) t * bS * nIn;
+        const T* hPrev = i == 0 ? h0->getBuffer() : hBuf + tPrev * hStep;
+        const T* cPrev = i == 0 ? c0->getBuffer() : cBuf + tPrev * hStep;
+        const T* mPrev = (i > 0 && mBuf != nullptr) ? mBuf + (Nd4jLong) tPrev * bS : nullptr;
+        const T* mt    = mBuf == nullptr ? nullptr : mBuf + (Nd4jLong) t * bS;
+        const T* ct    = cBuf + t * hStep;
+        const T* gt    = gBuf + t * gStep;
+        const T* fNext = last ? nullptr : gBuf + tNext * gStep + hStep;
+
+        // dL/dh = epsilon + recurrent contribution of the deltas of the next time step
+        std::copy(epsBuf + t * hStep, epsBuf + (t + 1) * hStep, dh.begin());
+        if (!last)
+            gemmColMajor<T>(false, true, bS, nOut, nGates, delta.data(), bS, WrBuf, nOut, (T) 1.f, dh.data(), bS);
+
+        T* d = delta.data();
+#pragma omp parallel for schedule(guided)
+        for (int j = 0; j < nOut; ++j) {
+            T sumFF = (T) 0.f, sumOO = (T) 0.f, sumGG = (T) 0.f;
+            T sumA = (T) 0.f, sumF = (T) 0.f, sumO = (T) 0.f, sumG = (T) 0.f;
+            for (int e = j * bS; e < (j + 1) * bS; ++e) {
+                const int ex = e - j * bS;
+                const T one = (T) 1.f;
+                const T m  = mt == nullptr ? one : mt[ex];
+                const T cp = mPrev == nullptr ? cPrev[e] : cPrev[e] * mPrev[ex];
+                const T cm = ct[e] * m;
+                const T tc = nd4j::math::nd4j_tanh<T>(ct[e]);
+                const T tcm = nd4j::math::nd4j_tanh<T>(cm);
+
+                const T a = gt[e];
+                const T f = gt[hStep + e];
+                const T o = gt[2 * hStep + e];
+                const T g = gt[3 * hStep + e];
+
+                // cell state error: peephole contributions of the next time step, computed before deltas are overwritten
+                T dc = (T) 0.f;
+                if (!last && peephole)
+                    dc = d[hStep + e] * wFF[j] + d[3 * hStep + e] * wGG[j];
+
+                const T dO = dh[e] * tc * o * (one - o);
+                dc += dh[e] * o * (one - tcm * tcm);
+                if (peephole)
+                    dc += dO * wOO[j];
+                if (!last)
+                    dc += fNext[e] * dcNext[e];
+                dcNext[e] = dc;
+
+                // mask of the forward pass is always applied to cell states, gate deltas are masked only if requested
+                const T md = maskDeltas ? m : one;
+                const T dA = dc * g * (one - a * a) * md;
+                const T dF = dc * cp * f * (one - f) * md;
+                const T dOm = dO * md;
+                const T dG = dc * a * g * (one - g) * md;
+
+                d[e]             = dA;
+                d[hStep + e]     = dF;
+                d[2 * hStep + e] = dOm;
+                d[3 * hStep + e] = dG;
+
+                sumA += dA;
+                sumF += dF;
+                sumO += dOm;
+                sumG += dG;
+                if (peephole) {
+                    sumFF += dF * cp;
+                    sumGG += dG * cp;
+                    sumOO += dOm * cm;
+                }
+            }
+            gBBuf[j]            += sumA;
+            gBBuf[nOut + j]     += sumF;
+            gBBuf[2 * nOut + j] += sumO;
+            gBBuf[3 * nOut + j] += sumG;
+            if (peephole) {
+                gFF[j] += sumFF;
+                gOO[j] += sumOO;
+                gGG[j] += sumGG;
+            }
+        }
+
+        gemmColMajor<T>(true, false, nIn, nGates, bS, xt, bS, d, bS, (T) 1.f, gWxBuf, nIn);
+        gemmColMajor<T>(true, false, nOut, nGates, bS, hPrev, bS, d, bS, (T) 1.f, gWrBuf, nOut);
+        // deltas are already masked (if requested), so are the rows of epsilonNext
+        gemmColMajor<T>(false, true, bS, nIn, nGates, d, bS, WxBuf, nIn, (T) 0.f, epsNextBuf + (Nd4jLong) t * bS * nIn, bS);
+    }
+}
+
+
 template void clipping<float>(NDArray<float>* arr, float limit);
 template void clipping<float16>(NDArray<float16>* arr, float16 limit);
 template void clipping<double>(NDArray<double>* arr, double limit);
@@ -176,6 +434,14 @@ template void lstmTimeLoop<float>(const std::vector<NDArray<float>*>& inArrs, co
 template void lstmTimeLoop<float16>(const std::vector<NDArray<float16>*>& inArrs, const std::vector<NDArray<float16>*>& outArrs, const std::vector<float16>& params);
 template void lstmTimeLoop<double>(const std::vector<NDArray<double>*>& inArrs, const std::vector<NDArray<double>*>& outArrs, const std::vector<double>& params);
 
+template void lstmLayerTimeLoop<float>(NDArray<float>* x, NDArray<float>* Wx, NDArray<float>* Wr, NDArray<float>* b, NDArray<float>* h0, NDArray<float>* c0, NDArray<float>* mask, NDArray<float>* h, NDArray<float>* c, NDArray<float>* gates, const bool peephole, const bool forwards, const bool training);
+template void lstmLayerTimeLoop<float16>(NDArray<float16>* x, NDArray<float16>* Wx, NDArray<float16>* Wr, NDArray<float16>* b, NDArray<float16>* h0, NDArray<float16>* c0, NDArray<float16>* mask, NDArray<float16>* h, NDArray<float16>* c, NDArray<float16>* gates, const bool peephole, const bool forwards, const bool training);
+template void lstmLayerTimeLoop<double>(NDArray<double>* x, NDArray<double>* Wx, NDArray<double>* Wr, NDArray<double>* b, NDArray<double>* h0, NDArray<double>* c0, NDArray<double>* mask, NDArray<double>* h, NDArray<double>* c, NDArray<double>* gates, const bool peephole, const bool forwards, const bool training);
+
+template void lstmLayerTimeLoopBp<float>(NDArray<float>* x, NDArray<float>* Wx, NDArray<float>* Wr, NDArray<float>* h0, NDArray<float>* c0, NDArray<float>* h, NDArray<float>* c, NDArray<float>* gates, NDArray<float>* eps, NDArray<float>* mask, NDArray<float>* epsNext, NDArray<float>* gradWx, NDArray<float>* gradWr, NDArray<float>* gradB, const bool peephole, const bool forwards, const int tbpttLength, const bool maskDeltas);
+template void lstmLayerTimeLoopBp<float16>(NDArray<float16>* x, NDArray<float16>* Wx, NDArray<float16>* Wr, NDArray<float16>* h0, NDArray<float16>* c0, NDArray<float16>* h, NDArray<float16>* c, NDArray<float16>* gates, NDArray<float16>* eps, NDArray<float16>* mask, NDArray<float16>* epsNext, NDArray<float16>* gradWx, NDArray<float16>* gradWr, NDArray<float16>* gradB, const bool peephole, const bool forwards, const int tbpttLength, const bool maskDeltas);
+template void lstmLayerTimeLoopBp<double>(NDArray<double>* x, NDArray<double>* Wx, NDArray<double>* Wr, NDArray<double>* h0, NDArray<double>* c0, NDArray<double>* h, NDArray<double>* c, NDArray<double>* gates, NDArray<double>* eps, NDArray<double>* mask, NDArray<double>* epsNext, NDArray<double>* gradWx, NDArray<double>* gradWr, NDArray<double>* gradB, const bool peephole, const bool forwards, const int tbpttLength, const bool maskDeltas);
+
 
 }
 }
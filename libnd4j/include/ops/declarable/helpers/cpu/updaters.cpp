@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+//
+// fused updaters: the whole update (clipping, updater state and step, L1/L2) is computed in one pass
+// over gradient, updater state and parameters, instead of one pass per elementwise op
+//
+
+#include <ops/declarable/helpers/updaters.h>
+#include <cmath>
+
+namespace nd4j 	  {
+namespace ops 	  {
+namespace helpers {
+
+//////////////////////////////////////////////////////////////////////////
+int fusedUpdaterStateComponents(const int updaterType) {
+
+    switch (updaterType) {
+        case UPDATER_SGD:       return 0;
+        case UPDATER_NESTEROVS: return 1;
+        case UPDATER_ADAM:      return 2;
+        case UPDATER_RMSPROP:   return 1;
+        default:                return -1;
+    }
+}
+
+//////////////////////////////////////////////////////////////////////////
+int fusedUpdaterNumHyperParams(const int updaterType) {
+
+    switch (updaterType) {
+        case UPDATER_SGD:       return 1;       // lr
+        case UPDATER_NESTEROVS: return 2;       // lr, momentum
+        case UPDATER_ADAM:      return 4;       // lr, beta1, beta2, epsilon
+        case UPDATER_RMSPROP:   return 3;       // lr, decay, epsilon
+        default:                return -1;
+    }
+}
+
+//////////////////////////////////////////////////////////////////////////
+// elementwise gradient clipping to [-clip, clip], disabled if clip is 0
+template <typename T>
+static FORCEINLINE T clipGradient(const T g, const T clip, const bool doClip) {
+
+    if (!doClip)
+        return g;
+    const T minusClip = (T) 0.f - clip;
+    return g > clip ? clip : (g < minusClip ? minusClip : g);
+}
+
+//////////////////////////////////////////////////////////////////////////
+// L1/L2 regularization is added to the update, i.e. after the updater, same as DL4J's UpdaterBlock.postApply
+template <typename T>
+static FORCEINLINE T regularize(T u, const T p, const T l1, const T l2) {
+
+    if (l2 > (T) 0.f)
+        u += l2 * p;
+    if (l1 > (T) 0.f)
+        u += l1 * nd4j::math::nd4j_sign<T>(p);
+    return u;
+}
+
+//////////////////////////////////////////////////////////////////////////
+template <typename T>
+static void sgdSegment(const T* grad, const T* params, T* upd, const Nd4jLong start, const Nd4jLong end,
+                       const T lr, const T clip, const T l1, const T l2) {
+
+    const bool doClip = clip > (T) 0.f;
+
+#pragma omp parallel for simd if(end - start > Environment::getInstance()->elementwiseThreshold()) schedule(static)
+    for (Nd4jLong i = start; i < end; i++) {
+        const T g = clipGradient<T>(grad[i], clip, doClip);
+        upd[i] = regularize<T>(g * lr, params[i], l1, l2);
+    }
+}
+
+//////////////////////////////////////////////////////////////////////////
+template <typename T>
+static void nesterovsSegment(const T* grad, const T* vIn, const T* params, T* upd, T* vOut, const Nd4jLong start, const Nd4jLong end,
+                             const T lr, const T momentum, const T clip, const T l1, const T l2) {
+
+    const bool doClip = clip > (T) 0.f;
+    const T minusMomentumMinusOne = (T) -1.f - momentum;
+
+#pragma omp parallel for simd if(end - start > Environment::getInstance()->elementwiseThreshold()) schedule(static)
+    for (Nd4jLong i = start; i < end; i++) {
+        const T g = clipGradient<T>(grad[i], clip, doClip);
+        const T vPrev = vIn[i];
+        const T v = vPrev * momentum - g * lr;                 // v = mu * v - lr * gradient
+        vOut[i] = v;
+        upd[i] = regularize<T>(vPrev * momentum + v * minusMomentumMinusOne, params[i], l1, l2);
+    }
+}
+
+//////////////////////////////////////////////////////////////////////////
+template <typename T>
+static void adamSegment(const T* grad, const T* mIn, const T* vIn, const T* params, T* upd, T* mOut, T* vOut, const Nd4jLong start, const Nd4jLong end,
+                        const T beta1, const T beta2, const T epsilon, const T alphat, const T clip, const T l1, const T l2) {
+
+    const bool doClip = clip > (T) 0.f;
+    const T oneMinusBeta1 = (T) 1.f - beta1;
+    const T oneMinusBeta2 = (T) 1.f - beta2;
+
+#pragma omp parallel for simd if(end - start > Environment::getInstance()->elementwiseThreshold()) schedule(static)
+    for (Nd4jLong i = start; i < end; i++) {
+        const T g = clipGradient<T>(grad[i], clip, doClip);
+        const T m = mIn[i] * beta1 + g * oneMinusBeta1;
+        const T v = vIn[i] * beta2 + (g * g) * oneMinusBeta2;
+        mOut[i] = m;
+        vOut[i] = v;
+        upd[i] = regularize<T>((m * alphat) / (nd4j::math::nd4j_sqrt<T>(v) + epsilon), params[i], l1, l2);
+    }
+}
+
+//////////////////////////////////////////////////////////////////////////
+template <typename T>
+static void rmsPropSegment(const T* grad, const T* cacheIn, const T* params, T* upd, T* cacheOut, const Nd4jLong start, const Nd4jLong end,
+                           const T lr, const T decay, const T epsilon, const T clip, const T l1, const T l2) {
+
+    const bool doClip = clip > (T) 0.f;
+    const T oneMinusDecay = (T) 1.f - decay;
+
+#pragma omp parallel for simd if(end - start > Environment::getInstance()->elementwiseThreshold()) schedule(static)
+    for (Nd4jLong i = start; i < end; i++) {
+        const T g = clipGradient<T>(grad[i], clip, doClip);
+        const T c = cacheIn[i] * decay + (g * g) * oneMinusDecay;
+        cacheOut[i] = c;
+        upd[i] = regularize<T>((g * lr) / (nd4j::math::nd4j_sqrt<T>(c) + epsilon), params[i], l1, l2);
+    }
+}
+
+//////////////////////////////////////////////////////////////////////////
+template <typename T>
+void fusedUpdater(NDArray<T>* gradient, NDArray<T>* state, NDArray<T>* params, NDArray<T>* update, NDArray<T>* stateOut,
+                  const int updaterType, const int iteration, const std::vector<T>& hyperParams,
+                  const std::vector<Nd4jLong>& segments, const std::vector<T>& segmentParams) {
+
+    const Nd4jLong n = gradient->lengthOf();
+    const T* grad = gradient->getBuffer();
+    const T* par  = params->getBuffer();
+    T* upd        = update->getBuffer();
+    const T* stIn = state != nullptr ? state->getBuffer() : nullptr;
+    T* stOut      = stateOut != nullptr ? stateOut->getBuffer() : nullptr;
+
+    // Adam bias correction is computed once per call, in double precision
+    T alphat = (T) 0.f;
+    if (updaterType == UPDATER_ADAM) {
+        const double lr    = (double) hyperParams[0];
+        const double beta1 = (double) hyperParams[1];
+        const double beta2 = (double) hyperParams[2];
+        const double beta1t = std::pow(beta1, (double) iteration + 1.);
+        const double beta2t = std::pow(beta2, (double) iteration + 1.);
+        double a = lr * std::sqrt(1. - beta2t) / (1. - beta1t);
+        if (std::isnan(a) || a == 0.)
+            a = (double) hyperParams[3];
+        alphat = (T) a;
+    }
+
+    const int numSegments = (int) segments.size() / 2;
+    for (int s = 0; s < numSegments; s++) {
+        const Nd4jLong start = segments[2*s];
+        const Nd4jLong end   = segments[2*s + 1];
+        const T clip = segmentParams[3*s];
+        const T l1   = segmentParams[3*s + 1];
+        const T l2   = segmentParams[3*s + 2];
+
+        switch (updaterType) {
+            case UPDATER_SGD:
+                sgdSegment<T>(grad, par, upd, start, end, hyperParams[0], clip, l1, l2);
+                break;
+            case UPDATER_NESTEROVS:
+                nesterovsSegment<T>(grad, stIn, par, upd, stOut, start, end, hyperParams[0], hyperParams[1], clip, l1, l2);
+                break;
+            case UPDATER_ADAM:
+                // state layout: [m, v]
+                adamSegment<T>(grad, stIn, stIn + n, par, upd, stOut, stOut + n, start, end, hyperParams[1], hyperParams[2], hyperParams[3], alphat, clip, l1, l2);
+                break;
+            case UPDATER_RMSPROP:
+                rmsPropSegment<T>(grad, stIn, par, upd, stOut, start, end, hyperParams[0], hyperParams[1], hyperParams[2], clip, l1, l2);
+                break;
+        }
+    }
+}
+
+
+template void fusedUpdater<float>(NDArray<float>* gradient, NDArray<float>* state, NDArray<float>* params, NDArray<float>* update, NDArray<float>* stateOut, const int updaterType, const int iteration, const std::vector<float>& hyperParams, const std::vector<Nd4jLong>& segments, const std::vector<float>& segmentParams);
+template void fusedUpdater<float16>(NDArray<float16>* gradient, NDArray<float16>* state, NDArray<float16>* params, NDArray<float16>* update, NDArray<float16>* stateOut, const int updaterType, const int iteration, const std::vector<float16>& hyperParams, const std::vector<Nd4jLong>& segments, const std::vector<float16>& segmentParams);
+template void fusedUpdater<double>(NDArray<double>* gradient, NDArray<double>* state, NDArray<double>* params, NDArray<double>* update, NDArray<double>* stateOut, const int updaterType, const int iteration, const std::vector<double>& hyperParams, const std::vector<Nd4jLong>& segments, const std::vector<double>& segmentParams);
+
+}
+}
+}
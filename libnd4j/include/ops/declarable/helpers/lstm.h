@@ -33,6 +33,15 @@ namespace helpers {
 
 	template <typename T>
 	void lstmTimeLoop(const std::vector<NDArray<T>*>& inArrs, const std::vector<NDArray<T>*>& outArrs, const std::vector<T>& params);
+
+	// fused LSTM layer with DL4J gate layout [a, f, o, g], all arrays are expected in contiguous 'f' order
+	template <typename T>
+	void lstmLayerTimeLoop(NDArray<T>* x, NDArray<T>* Wx, NDArray<T>* Wr, NDArray<T>* b, NDArray<T>* h0, NDArray<T>* c0, NDArray<T>* mask,
+						   NDArray<T>* h, NDArray<T>* c, NDArray<T>* gates, const bool peephole, const bool forwards, const bool training);
+
+	template <typename T>
+	void lstmLayerTimeLoopBp(NDArray<T>* x, NDArray<T>* Wx, NDArray<T>* Wr, NDArray<T>* h0, NDArray<T>* c0, NDArray<T>* h, NDArray<T>* c, NDArray<T>* gates, NDArray<T>* eps, NDArray<T>* mask,
+							 NDArray<T>* epsNext, NDArray<T>* gradWx, NDArray<T>* gradWr, NDArray<T>* gradB, const bool peephole, const bool forwards, const int tbpttLength, const bool maskDeltas);
 	
     
 
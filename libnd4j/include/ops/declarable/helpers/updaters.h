@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+//
+// fused updaters (SGD, Nesterovs, Adam, RMSProp) with clipping and L1/L2 regularization
+//
+
+#ifndef LIBND4J_UPDATERS_H
+#define LIBND4J_UPDATERS_H
+
+#include <ops/declarable/helpers/helpers.h>
+
+namespace nd4j    {
+namespace ops     {
+namespace helpers {
+
+	enum FusedUpdaterType {
+		UPDATER_SGD = 0,
+		UPDATER_NESTEROVS = 1,
+		UPDATER_ADAM = 2,
+		UPDATER_RMSPROP = 3
+	};
+
+	// number of updater state components (each the same length as gradient) and hyper parameters for given updater type, -1 if unknown type
+	int fusedUpdaterStateComponents(const int updaterType);
+	int fusedUpdaterNumHyperParams(const int updaterType);
+
+	// all arrays are expected to be contiguous (ews == 1), update/stateOut may be the same arrays as gradient/state
+	// segments: [start, end) pairs, segmentParams: [clip, l1, l2] per segment
+	template <typename T>
+	void fusedUpdater(NDArray<T>* gradient, NDArray<T>* state, NDArray<T>* params, NDArray<T>* update, NDArray<T>* stateOut,
+					  const int updaterType, const int iteration, const std::vector<T>& hyperParams,
+					  const std::vector<Nd4jLong>& segments, const std::vector<T>& segmentParams);
+
+}
+}
+}
+
+#endif //LIBND4J_UPDATERS_H
@@ -2406,5 +2406,133 @@ TEST_F(ConvolutionTests, conv2D_input_BP_test1) {
     delete results;
 }
 
+//////////////////////////////////////////////////////////////////////
+TEST_F(ConvolutionTests, conv2d_cpu_winograd_test1) {
+
+    int bS=2, iH=6,iW=7,  iC=4,oC=5,  kH=3,kW=3,  sH=1,sW=1,  pH=1,pW=1,  dH=1,dW=1;
+    int paddingMode = 0;             // 1-SAME, 0-VALID;
+    int dataFormat  = 0;             // 1-NHWC, 0-NCHW
+
+    NDArray<double> input   ('c', {bS, iC, iH, iW});
+    NDArray<double> weights ('c', {oC, iC, kH, kW});
+    NDArray<double> bias    ('c', {oC}, {1,2,3,4,5});
+
+    input.linspace(-1., 0.01);
+    weights.linspace(-0.5, 0.006);
+
+    nd4j::ops::conv2d<double> op;
+    ResultSet<double>* expected = op.execute({&input, &weights, &bias}, {}, {kH,kW,  sH,sW,  pH,pW,  dH,dW, paddingMode, dataFormat});
+
+    nd4j::ops::conv2d_cpu<double> opCpu;
+    ResultSet<double>* results = opCpu.execute({&input, &weights, &bias}, {}, {kH,kW,  sH,sW,  pH,pW,  dH,dW, paddingMode, 1});
+
+    ASSERT_EQ(Status::OK(), results->status());
+    ASSERT_TRUE(expected->at(0)->isSameShape(results->at(0)));
+    ASSERT_TRUE(expected->at(0)->equalsTo(results->at(0)));
+
+    delete expected;
+    delete results;
+}
+
+//////////////////////////////////////////////////////////////////////
+TEST_F(ConvolutionTests, conv2d_cpu_direct_test1) {
+
+    int bS=2, iH=9,iW=8,  iC=3,oC=10,  kH=3,kW=2,  sH=2,sW=1,  pH=1,pW=0,  dH=1,dW=2;
+    int paddingMode = 0;             // 1-SAME, 0-VALID;
+    int dataFormat  = 0;             // 1-NHWC, 0-NCHW
+
+    NDArray<double> input   ('c', {bS, iC, iH, iW});
+    NDArray<double> weights ('c', {oC, iC, kH, kW});
+    NDArray<double> bias    ('c', {oC});
+
+    input.linspace(-1., 0.005);
+    weights.linspace(-0.5, 0.006);
+    bias.linspace(0.1, 0.1);
+
+    nd4j::ops::conv2d<double> op;
+    ResultSet<double>* expected = op.execute({&input, &weights, &bias}, {}, {kH,kW,  sH,sW,  pH,pW,  dH,dW, paddingMode, dataFormat});
+
+    nd4j::ops::conv2d_cpu<double> opCpu;
+    ResultSet<double>* results = opCpu.execute({&input, &weights, &bias}, {}, {kH,kW,  sH,sW,  pH,pW,  dH,dW, paddingMode, 2});
+
+    ASSERT_EQ(Status::OK(), results->status());
+    ASSERT_TRUE(expected->at(0)->isSameShape(results->at(0)));
+    ASSERT_TRUE(expected->at(0)->equalsTo(results->at(0)));
+
+    delete expected;
+    delete results;
+}
+
+//////////////////////////////////////////////////////////////////////
+TEST_F(ConvolutionTests, conv2d_cpu_bp_test1) {
+
+    int bS=2, iH=5,iW=6,  iC=4,oC=3,  kH=3,kW=3,  sH=1,sW=1,  pH=1,pW=1,  dH=1,dW=1;
+    int       oH=5,oW=6;
+    int paddingMode = 0;             // 1-SAME, 0-VALID;
+    int dataFormat  = 0;             // 1-NHWC, 0-NCHW
+
+    NDArray<double> input   ('c', {bS, iC, iH, iW});
+    NDArray<double> weights ('c', {oC, iC, kH, kW});
+    NDArray<double> bias    ('c', {oC}, {1,2,3});
+    NDArray<double> gradO   ('c', {bS, oC, oH, oW});
+
+    input.linspace(-1., 0.01);
+    weights.linspace(-0.5, 0.01);
+    gradO.linspace(0.01, 0.01);
+
+    nd4j::ops::conv2d_bp<double> op;
+    ResultSet<double>* expected = op.execute({&input, &weights, &bias, &gradO}, {}, {kH,kW,  sH,sW,  pH,pW,  dH,dW, paddingMode, dataFormat});
+
+    // both algorithms: Winograd and direct
+    for (int algorithm = 1; algorithm <= 2; ++algorithm) {
+        nd4j::ops::conv2d_cpu_bp<double> opCpu;
+        ResultSet<double>* results = opCpu.execute({&input, &weights, &gradO}, {}, {kH,kW,  sH,sW,  pH,pW,  dH,dW, paddingMode, algorithm});
+
+        ASSERT_EQ(Status::OK(), results->status());
+        ASSERT_TRUE(expected->at(0)->equalsTo(results->at(0)));
+        ASSERT_TRUE(expected->at(1)->equalsTo(results->at(1)));
+        ASSERT_TRUE(expected->at(2)->lengthOf() == results->at(2)->lengthOf());
+        for (int i = 0; i < oC; ++i)
+            ASSERT_NEAR((*expected->at(2))(i), (*results->at(2))(i), 1e-5);
+
+        delete results;
+    }
+
+    delete expected;
+}
+
+//////////////////////////////////////////////////////////////////////
+TEST_F(ConvolutionTests, conv2d_cpu_bp_test2) {
+
+    int bS=2, iH=7,iW=6,  iC=2,oC=4,  kH=2,kW=3,  sH=2,sW=2,  pH=0,pW=1,  dH=1,dW=1;
+    int       oH=3,oW=3;
+    int paddingMode = 0;             // 1-SAME, 0-VALID;
+    int dataFormat  = 0;             // 1-NHWC, 0-NCHW
+
+    NDArray<double> input   ('c', {bS, iC, iH, iW});
+    NDArray<double> weights ('c', {oC, iC, kH, kW});
+    NDArray<double> bias    ('c', {oC}, {1,2,3,4});
+    NDArray<double> gradO   ('c', {bS, oC, oH, oW});
+
+    input.linspace(-1., 0.02);
+    weights.linspace(-0.5, 0.02);
+    gradO.linspace(0.01, 0.01);
+
+    nd4j::ops::conv2d_bp<double> op;
+    ResultSet<double>* expected = op.execute({&input, &weights, &bias, &gradO}, {}, {kH,kW,  sH,sW,  pH,pW,  dH,dW, paddingMode, dataFormat});
+
+    nd4j::ops::conv2d_cpu_bp<double> opCpu;
+    ResultSet<double>* results = opCpu.execute({&input, &weights, &gradO}, {}, {kH,kW,  sH,sW,  pH,pW,  dH,dW, paddingMode, 2});
+
+    ASSERT_EQ(Status::OK(), results->status());
+    ASSERT_TRUE(expected->at(0)->isSameShape(results->at(0)));
+    ASSERT_TRUE(expected->at(0)->equalsTo(results->at(0)));
+    ASSERT_TRUE(expected->at(1)->isSameShape(results->at(1)));
+    ASSERT_TRUE(expected->at(1)->equalsTo(results->at(1)));
+
+    delete expected;
+    delete results;
+}
+
 #endif //LIBND4J_CONVOLUTIONTESTS_H
 
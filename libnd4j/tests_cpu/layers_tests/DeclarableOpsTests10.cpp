@@ -361,3 +361,212 @@ TEST_F(DeclarableOpsTests10, atan2_test6) {
 
     delete result;
 }
+
+//////////////////////////////////////////////////////////////////////////////
+TEST_F(DeclarableOpsTests10, lstmLayer_test1) {
+
+    const int bS   = 2;
+    const int nIn  = 2;
+    const int nOut = 3;
+    const int sL   = 1;
+
+    NDArray<double> x ('f', {bS, nIn, sL});
+    NDArray<double> Wx('f', {nIn, 4*nOut});
+    NDArray<double> Wr('f', {nOut, 4*nOut});
+    NDArray<double> b ('f', {1, 4*nOut});
+    NDArray<double> h0('f', {bS, nOut});
+    NDArray<double> c0('f', {bS, nOut});
+
+    // all gate pre-activations are 0.5
+    x.assign(1.);
+    Wx.assign(0.25);
+    Wr.assign(0.5);
+    b.assign(0.);
+    h0.assign(0.);
+    c0.assign(0.);
+
+    NDArray<double> expH('f', {bS, nOut, sL});
+    NDArray<double> expC('f', {bS, nOut});
+    expH.assign(0.17426971865610508);
+    expC.assign(0.28764913664496794);
+
+    nd4j::ops::lstmLayer<double> op;
+    nd4j::ResultSet<double>* results = op.execute({&x, &Wx, &Wr, &b, &h0, &c0}, {}, {0, 1, 0});
+
+    ASSERT_EQ(ND4J_STATUS_OK, results->status());
+
+    NDArray<double> *h = results->at(0);
+    NDArray<double> *c = results->at(1);
+
+    ASSERT_TRUE(expH.isSameShape(h));
+    ASSERT_TRUE(expH.equalsTo(h));
+    ASSERT_TRUE(expC.isSameShape(c));
+    ASSERT_TRUE(expC.equalsTo(c));
+
+    delete results;
+}
+
+//////////////////////////////////////////////////////////////////////////////
+TEST_F(DeclarableOpsTests10, lstmLayer_test2) {
+
+    // training and inference modes should give same outputs, including peephole connections, masking and backwards direction
+    const int bS   = 3;
+    const int nIn  = 4;
+    const int nOut = 5;
+    const int sL   = 6;
+
+    NDArray<double> x   ('c', {bS, nIn, sL});
+    NDArray<double> Wx  ('c', {nIn, 4*nOut});
+    NDArray<double> Wr  ('f', {nOut, 4*nOut+3});
+    NDArray<double> b   ('c', {1, 4*nOut});
+    NDArray<double> h0  ('c', {bS, nOut});
+    NDArray<double> c0  ('c', {bS, nOut});
+    NDArray<double> mask('c', {bS, sL});
+
+    x.linspace(-1., 0.03);
+    Wx.linspace(-0.5, 0.0125);
+    Wr.linspace(0.4, -0.007);
+    b.linspace(-0.1, 0.01);
+    h0.linspace(0.1, 0.02);
+    c0.linspace(-0.2, 0.03);
+    mask.assign(1.);
+    mask.putScalar(0, sL - 1, 0.);
+    mask.putScalar(1, sL - 2, 0.);
+    mask.putScalar(1, sL - 1, 0.);
+
+    nd4j::ops::lstmLayer<double> op;
+    for (int forwards = 0; forwards < 2; ++forwards) {
+        nd4j::ResultSet<double>* training  = op.execute({&x, &Wx, &Wr, &b, &h0, &c0, &mask}, {}, {1, forwards, 1});
+        nd4j::ResultSet<double>* inference = op.execute({&x, &Wx, &Wr, &b, &h0, &c0, &mask}, {}, {1, forwards, 0});
+
+        ASSERT_EQ(ND4J_STATUS_OK, training->status());
+        ASSERT_EQ(ND4J_STATUS_OK, inference->status());
+
+        ASSERT_TRUE(training->at(0)->equalsTo(inference->at(0)));
+        ASSERT_EQ(3, training->at(1)->rankOf());
+        ASSERT_EQ(2, inference->at(1)->rankOf());
+
+        // masked examples have zero output
+        ASSERT_NEAR(0., training->at(0)->getScalar(0, 0, sL - 1), 1e-12);
+        ASSERT_NEAR(0., training->at(0)->getScalar(1, 2, sL - 2), 1e-12);
+
+        delete training;
+        delete inference;
+    }
+}
+
+//////////////////////////////////////////////////////////////////////////////
+TEST_F(DeclarableOpsTests10, lstmLayer_bp_test1) {
+
+    // gradients of loss = sum(h * eps) are checked against finite differences
+    const int bS   = 2;
+    const int nIn  = 3;
+    const int nOut = 2;
+    const int sL   = 4;
+    const double delta = 1e-6;
+
+    NDArray<double> x   ('f', {bS, nIn, sL});
+    NDArray<double> Wx  ('f', {nIn, 4*nOut});
+    NDArray<double> Wr  ('f', {nOut, 4*nOut+3});
+    NDArray<double> b   ('f', {1, 4*nOut});
+    NDArray<double> h0  ('f', {bS, nOut});
+    NDArray<double> c0  ('f', {bS, nOut});
+    NDArray<double> eps ('f', {bS, nOut, sL});
+    NDArray<double> mask('f', {bS, sL});
+
+    x.linspace(-0.6, 0.05);
+    Wx.linspace(-0.4, 0.03);
+    Wr.linspace(0.3, -0.02);
+    b.linspace(-0.2, 0.05);
+    h0.linspace(0.1, 0.1);
+    c0.linspace(-0.3, 0.2);
+    eps.linspace(-1., 0.13);
+    mask.assign(1.);
+    mask.putScalar(1, sL - 1, 0.);
+    // as in dl4j, no errors at masked time steps
+    for (int j = 0; j < nOut; ++j)
+        eps.putScalar(1, j, sL - 1, 0.);
+
+    nd4j::ops::lstmLayer<double> opFF;
+    nd4j::ops::lstmLayer_bp<double> opBP;
+
+    for (int forwards = 0; forwards < 2; ++forwards) {
+        auto loss = [&]() -> double {
+            nd4j::ResultSet<double>* res = opFF.execute({&x, &Wx, &Wr, &b, &h0, &c0, &mask}, {}, {1, forwards, 1});
+            double sum = 0.;
+            for (int i = 0; i < eps.lengthOf(); ++i)
+                sum += res->at(0)->getScalar(i) * eps.getScalar(i);
+            delete res;
+            return sum;
+        };
+
+        nd4j::ResultSet<double>* ff = opFF.execute({&x, &Wx, &Wr, &b, &h0, &c0, &mask}, {}, {1, forwards, 1});
+        ASSERT_EQ(ND4J_STATUS_OK, ff->status());
+        nd4j::ResultSet<double>* bp = opBP.execute({&x, &Wx, &Wr, &h0, &c0, ff->at(0), ff->at(1), ff->at(2), &eps, &mask}, {}, {1, forwards, -1});
+        ASSERT_EQ(ND4J_STATUS_OK, bp->status());
+
+        std::vector<NDArray<double>*> params = {&x, &Wx, &Wr, &b};
+        for (int p = 0; p < params.size(); ++p) {
+            NDArray<double>* param = params[p];
+            NDArray<double>* grad  = bp->at(p);
+            ASSERT_TRUE(param->isSameShape(grad));
+
+            for (int i = 0; i < param->lengthOf(); ++i) {
+                const double orig = param->getScalar(i);
+                param->putScalar(i, orig + delta);
+                const double lossPlus = loss();
+                param->putScalar(i, orig - delta);
+                const double lossMinus = loss();
+                param->putScalar(i, orig);
+
+                ASSERT_NEAR((lossPlus - lossMinus) / (2 * delta), grad->getScalar(i), 1e-6);
+            }
+        }
+
+        delete ff;
+        delete bp;
+    }
+}
+
+//////////////////////////////////////////////////////////////////////////////
+TEST_F(DeclarableOpsTests10, fused_updater_test1) {
+
+    // Adam, single segment, no clipping or regularization
+    NDArray<double> grad  ('c', {1, 4}, {0.1, -0.2, 0.3, -0.4});
+    NDArray<double> state ('c', {1, 8}, {0.01, 0.02, -0.03, 0.04, 0.001, 0.002, 0.003, 0.004});
+    NDArray<double> params('c', {1, 4}, {1., 2., 3., 4.});
+
+    NDArray<double> expUpdate('c', {1, 4}, {0.00120832019536925, -8.94956574278629e-05, 0.000109075450372976, -0.000125341909780533});
+    NDArray<double> expState ('c', {1, 8}, {0.019, -0.002, 0.003, -0.004, 0.001009, 0.002038, 0.003087, 0.004156});
+
+    nd4j::ops::fused_updater<double> op;
+    nd4j::ResultSet<double>* results = op.execute({&grad, &state, &params}, {0.01, 0.9, 0.999, 1e-8, 0., 0., 0.}, {2, 2, 0, 4});
+
+    ASSERT_EQ(ND4J_STATUS_OK, results->status());
+
+    NDArray<double> *update   = results->at(0);
+    NDArray<double> *newState = results->at(1);
+
+    ASSERT_TRUE(expUpdate.isSameShape(update));
+    ASSERT_TRUE(expUpdate.equalsTo(update));
+    ASSERT_TRUE(expState.isSameShape(newState));
+    ASSERT_TRUE(expState.equalsTo(newState));
+
+    delete results;
+}
+
+//////////////////////////////////////////////////////////////////////////////
+TEST_F(DeclarableOpsTests10, fused_updater_test2) {
+
+    // SGD in place, two segments: clipping and L2 for the first one, L1 for the second one
+    NDArray<double> grad  ('c', {1, 6}, {0.5, -0.1, 0.2, -0.3, 0.4, 0.0});
+    NDArray<double> params('c', {1, 6}, {1., 2., -1., 0., 3., -2.});
+
+    NDArray<double> expUpdate('c', {1, 6}, {0.225, 0.15, -0.4, -0.15, 0.7, -0.5});
+
+    nd4j::ops::fused_updater<double> op;
+    Nd4jStatus status = op.execute({&grad, &params}, {&grad}, {0.5, 0.25, 0., 0.1, 0., 0.5, 0.}, {0, 0, 0, 2, 2, 6});
+
+    ASSERT_EQ(ND4J_STATUS_OK, status);
+    ASSERT_TRUE(expUpdate.equalsTo(&grad));
+}
@@ -26,9 +26,9 @@ import org.nd4j.linalg.api.ops.impl.transforms.gradient.HardTanhDerivative;
 import org.nd4j.linalg.factory.Nd4j;
 
 /**
- *        ⎧  1, if x >  1
- f(x) =   ⎨ -1, if x < -1
-          ⎩  x, otherwise
+ *        ???  1, if x >  1
+ f(x) =   ??? -1, if x < -1
+          ???  x, otherwise
  */
 @EqualsAndHashCode
 @Getter
@@ -2309,18 +2309,18 @@ public interface INDArray extends Serializable {
      * Examples originally from the theano docs:
      * http://deeplearning.net/software/theano/library/tensor/basic.html
      *
-     *  Returns a view of this tensor with permuted dimensions. Typically the pattern will include the integers 0, 1, ... ndim-1, and any number of ‘x’ characters in dimensions where this tensor should be broadcasted.
+     *  Returns a view of this tensor with permuted dimensions. Typically the pattern will include the integers 0, 1, ... ndim-1, and any number of ???x??? characters in dimensions where this tensor should be broadcasted.
     
      A few examples of patterns and their effect:
     
-     (‘x’) -> make a 0d (scalar) into a 1d vector
+     (???x???) -> make a 0d (scalar) into a 1d vector
      (0, 1) -> identity for 2d vectors
      (1, 0) -> inverts the first and second dimensions
-     (‘x’, 0) -> make a row out of a 1d vector (N to 1xN)
-     (0, ‘x’) -> make a column out of a 1d vector (N to Nx1)
+     (???x???, 0) -> make a row out of a 1d vector (N to 1xN)
+     (0, ???x???) -> make a column out of a 1d vector (N to Nx1)
      (2, 0, 1) -> AxBxC to CxAxB
-     (0, ‘x’, 1) -> AxB to Ax1xB
-     (1, ‘x’, 0) -> AxB to Bx1xA
+     (0, ???x???, 1) -> AxB to Ax1xB
+     (1, ???x???, 0) -> AxB to Bx1xA
      (1,) -> This remove dimensions 0. It must be a broadcastable dimension (1xA to A)
     
      * @param rearrange     the dimensions to swap to
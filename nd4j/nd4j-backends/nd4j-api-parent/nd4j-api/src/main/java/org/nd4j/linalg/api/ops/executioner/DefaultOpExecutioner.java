@@ -34,6 +34,7 @@ import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.primitives.AtomicBoolean;
 import org.nd4j.linalg.profiler.OpProfiler;
+import org.nd4j.linalg.profiler.RuntimeMetrics;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -378,6 +379,8 @@ public class DefaultOpExecutioner implements OpExecutioner {
     }
 
     public long profilingHookIn(Op op, DataBuffer... tadBuffers) {
+        RuntimeMetrics.getInstance().recordOp();
+
         switch (profilingMode) {
             case ALL:
                 OpProfiler.getInstance().processOpCall(op, tadBuffers);
@@ -447,6 +450,8 @@ public class DefaultOpExecutioner implements OpExecutioner {
     }
 
     public long profilingHookIn(Op op) {
+        RuntimeMetrics.getInstance().recordOp();
+
         switch (profilingMode) {
             case ALL:
                 OpProfiler.getInstance().processOpCall(op);
@@ -468,6 +473,8 @@ public class DefaultOpExecutioner implements OpExecutioner {
     }
 
     public long profilingHookIn(CustomOp op) {
+        RuntimeMetrics.getInstance().recordCustomOp();
+
         switch (profilingMode) {
             case ALL:
                 OpProfiler.getInstance().processOpCall(op);
@@ -30,7 +30,7 @@ import java.util.List;
  * Derivative of ELU: Exponential Linear Unit (alpha=1.0)<br>
  * Introduced in paper:<br>
  * Fast and Accurate Deep Network Learning by Exponential Linear Units (ELUs)<br>
- * Djork-Arné Clevert, Thomas Unterthiner, Sepp Hochreiter (2015)<br>
+ * Djork-Arn?? Clevert, Thomas Unterthiner, Sepp Hochreiter (2015)<br>
  * <a href="http://arxiv.org/abs/1511.07289">http://arxiv.org/abs/1511.07289</a>
  *
  * @author Alex Black
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.api.rng;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * {@link Random} implementation backed by a counter based {@link PhiloxRandomGenerator}.
+ *
+ * Each instance generates one stream, addressed by (seed, stream id, offset).
+ * Unlike {@link DefaultRandom} the generator isn't synchronized: instances are meant to be
+ * used by a single thread (or worker), with a distinct stream id per thread.
+ * Use {@link org.nd4j.linalg.factory.RandomFactory#getNewPhiloxInstance(long, long)} to create them.
+ *
+ * Please note: like DefaultRandom, this implementation has no native state, so it can't be used for NativeOps
+ * execution: random ops (Nd4j.rand with a Random argument, distributions, dropout, weight initialization) still need
+ * the native Random from {@link org.nd4j.linalg.factory.Nd4j#getRandom()}. It is meant for Java side consumers only,
+ * i.e. code calling nextInt()/nextDouble()/nextGaussian() etc directly - for example shuffling, sampling or
+ * augmentation done in Java.
+ */
+public class PhiloxRandom extends DefaultRandom {
+
+    public PhiloxRandom() {
+        this(System.currentTimeMillis());
+    }
+
+    public PhiloxRandom(long seed) {
+        this(seed, 0);
+    }
+
+    public PhiloxRandom(long seed, long streamId) {
+        this(seed, streamId, 0);
+    }
+
+    /**
+     * @param seed the seed
+     * @param streamId the id of the stream
+     * @param offset the number of 32 bit outputs to skip at the start of the stream
+     */
+    public PhiloxRandom(long seed, long streamId, long offset) {
+        super(new PhiloxRandomGenerator(seed, streamId, offset));
+        this.seed = seed;
+    }
+
+    @Override
+    public RandomGenerator getRandomGenerator() {
+        return randomGenerator;
+    }
+
+    @Override
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getStreamId() {
+        return generator().getStreamId();
+    }
+
+    /**
+     * Switch to the start of another stream, keeping the seed
+     * @param streamId the id of the stream
+     */
+    public void setStreamId(long streamId) {
+        generator().setStreamId(streamId);
+    }
+
+    /**
+     * @return the number of 32 bit outputs generated so far in the current stream
+     */
+    public long getOffset() {
+        return generator().getOffset();
+    }
+
+    /**
+     * Move to the given position in the current stream
+     * @param offset the number of 32 bit outputs to skip from the start of the stream
+     */
+    public void setOffset(long offset) {
+        generator().setOffset(offset);
+    }
+
+    /**
+     * Create a new instance generating another stream with the same seed
+     * @param streamId the id of the stream
+     * @return the new instance
+     */
+    public PhiloxRandom split(long streamId) {
+        return new PhiloxRandom(seed, streamId);
+    }
+
+    private PhiloxRandomGenerator generator() {
+        return (PhiloxRandomGenerator) randomGenerator;
+    }
+}
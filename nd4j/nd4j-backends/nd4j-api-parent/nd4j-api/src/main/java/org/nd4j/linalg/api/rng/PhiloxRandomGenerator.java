@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.api.rng;
+
+import org.apache.commons.math3.random.BitsStreamGenerator;
+
+/**
+ * Counter based Philox4x32-10 random number generator
+ * (Salmon et al., "Parallel random numbers: as easy as 1, 2, 3").
+ *
+ * The n-th 32 bit output of the generator is a pure function of (seed, stream id, n):
+ * block n / 4 of the stream is obtained by encrypting the 128 bit counter
+ * (block index in the low 64 bits, stream id in the high 64 bits) with the seed as key.
+ * This means that
+ * - streams with different ids are independent, and can be handed out per thread or per worker without any locking
+ * - any position in a stream can be reached in constant time with {@link #setOffset(long)}
+ * - results don't depend on how work is spread over threads, as long as stream ids are assigned deterministically
+ *   (for example by worker or example index rather than by thread)
+ *
+ * Instances are not thread safe: use one instance (stream) per thread.
+ */
+public class PhiloxRandomGenerator extends BitsStreamGenerator {
+    private static final long MASK_32 = 0xFFFFFFFFL;
+    private static final long M0 = 0xD2511F53L;
+    private static final long M1 = 0xCD9E8D57L;
+    private static final int W0 = 0x9E3779B9;
+    private static final int W1 = 0xBB67AE85;
+    private static final int ROUNDS = 10;
+
+    private long seed;
+    private long streamId;
+    //index of the next 32 bit output within the stream
+    private long offset;
+    private final int[] block = new int[4];
+    private long blockIndex = -1;
+
+    public PhiloxRandomGenerator(long seed) {
+        this(seed, 0, 0);
+    }
+
+    /**
+     * @param seed the seed (key) of the generator
+     * @param streamId the id of the stream to generate
+     * @param offset the number of 32 bit outputs to skip at the start of the stream
+     */
+    public PhiloxRandomGenerator(long seed, long streamId, long offset) {
+        this.seed = seed;
+        this.streamId = streamId;
+        setOffset(offset);
+    }
+
+    /**
+     * Compute one Philox4x32-10 block
+     * @param counter the low 64 bits of the counter (the block index within the stream)
+     * @param streamId the high 64 bits of the counter (the stream id)
+     * @param key the key (seed)
+     * @param out array of length 4 to write the 4 32 bit outputs to
+     */
+    public static void block(long counter, long streamId, long key, int[] out) {
+        int c0 = (int) counter;
+        int c1 = (int) (counter >>> 32);
+        int c2 = (int) streamId;
+        int c3 = (int) (streamId >>> 32);
+        int k0 = (int) key;
+        int k1 = (int) (key >>> 32);
+
+        for (int i = 0; i < ROUNDS; i++) {
+            long p0 = M0 * (c0 & MASK_32);
+            long p1 = M1 * (c2 & MASK_32);
+            c0 = (int) (p1 >>> 32) ^ c1 ^ k0;
+            c1 = (int) p1;
+            c2 = (int) (p0 >>> 32) ^ c3 ^ k1;
+            c3 = (int) p0;
+            k0 += W0;
+            k1 += W1;
+        }
+
+        out[0] = c0;
+        out[1] = c1;
+        out[2] = c2;
+        out[3] = c3;
+    }
+
+    @Override
+    protected int next(int bits) {
+        long index = offset >>> 2;
+        if (index != blockIndex) {
+            block(index, streamId, seed, block);
+            blockIndex = index;
+        }
+        int ret = block[(int) (offset & 3)];
+        offset++;
+        return ret >>> (32 - bits);
+    }
+
+    /**
+     * Reset the generator to the start of the current stream, with a new seed
+     */
+    @Override
+    public void setSeed(long seed) {
+        this.seed = seed;
+        setOffset(0);
+    }
+
+    @Override
+    public void setSeed(int seed) {
+        setSeed((long) seed);
+    }
+
+    /**
+     * Seed the generator with (up to) the first two values of the given array
+     */
+    @Override
+    public void setSeed(int[] seed) {
+        long s = seed.length > 0 ? seed[0] & MASK_32 : 0;
+        if (seed.length > 1)
+            s |= ((long) seed[1]) << 32;
+        setSeed(s);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getStreamId() {
+        return streamId;
+    }
+
+    /**
+     * Switch to the start of another stream, keeping the seed
+     * @param streamId the id of the stream
+     */
+    public void setStreamId(long streamId) {
+        this.streamId = streamId;
+        this.blockIndex = -1;
+        setOffset(0);
+    }
+
+    /**
+     * @return the number of 32 bit outputs generated so far in the current stream
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Move to the given position in the current stream.
+     * Note that nextInt()/nextFloat() consume one 32 bit output, nextLong()/nextDouble() two.
+     * @param offset the number of 32 bit outputs to skip from the start of the stream
+     */
+    public void setOffset(long offset) {
+        if (offset < 0)
+            throw new IllegalArgumentException("Offset must be >= 0, got " + offset);
+        this.offset = offset;
+        //the cached gaussian belongs to the previous position
+        clear();
+    }
+}
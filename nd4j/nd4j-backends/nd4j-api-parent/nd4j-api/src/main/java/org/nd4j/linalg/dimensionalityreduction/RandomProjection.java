@@ -64,9 +64,9 @@ public class RandomProjection {
      * The minimum number n' of components to guarantee the eps-embedding is
      * given by:
      *
-     * n' >= 4 log(n) / (eps² / 2 - eps³ / 3)
+     * n' >= 4 log(n) / (eps?? / 2 - eps?? / 3)
      *
-     * see http://cseweb.ucsd.edu/~dasgupta/papers/jl.pdf §2.1
+     * see http://cseweb.ucsd.edu/~dasgupta/papers/jl.pdf ??2.1
      * @param n Number of samples. If an array is given, it will compute
      *        a safe number of components array-wise.
      * @param eps Maximum distortion rate as defined by the Johnson-Lindenstrauss lemma.
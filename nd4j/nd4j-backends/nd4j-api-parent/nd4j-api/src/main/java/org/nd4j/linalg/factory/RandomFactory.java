@@ -16,6 +16,7 @@
 
 package org.nd4j.linalg.factory;
 
+import org.nd4j.linalg.api.rng.PhiloxRandom;
 import org.nd4j.linalg.api.rng.Random;
 
 import java.lang.reflect.Constructor;
@@ -57,6 +58,16 @@ public class RandomFactory {
         }
     }
 
+    /**
+     * This method replaces Random implementation instance associated with calling thread.
+     * Can be used to temporarily switch to a dedicated instance: the previous one (as returned by getRandom()) should be restored after use.
+     *
+     * @param random object implementing Random interface
+     */
+    public void setRandom(Random random) {
+        threadRandom.set(random);
+    }
+
     /**
      * This method returns new onject implementing Random interface, initialized with System.currentTimeMillis() as seed
      *
@@ -104,4 +115,35 @@ public class RandomFactory {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * This method returns new counter based (Philox) Random instance, generating stream streamId for the given seed.
+     *
+     * Streams with different ids are independent, and the numbers generated for a given (seed, streamId) don't depend
+     * on the number of threads in use: assign stream ids per worker or per example (not per thread) to get results that
+     * are reproducible across thread counts. Returned instances aren't synchronized: use one instance per thread.
+     *
+     * Please note: Philox instances have no native state, so they are for Java side consumers only, and can't be used
+     * for native random ops (distributions, dropout etc).
+     *
+     * @param seed rng seed
+     * @param streamId id of the stream
+     * @return PhiloxRandom instance positioned at the start of the stream
+     */
+    public PhiloxRandom getNewPhiloxInstance(long seed, long streamId) {
+        return new PhiloxRandom(seed, streamId);
+    }
+
+    /**
+     * This method returns new counter based (Philox) Random instance, generating stream streamId for the given seed,
+     * starting at the given offset (number of 32 bit outputs) within the stream
+     *
+     * @param seed rng seed
+     * @param streamId id of the stream
+     * @param offset number of 32 bit outputs to skip at the start of the stream
+     * @return PhiloxRandom instance
+     */
+    public PhiloxRandom getNewPhiloxInstance(long seed, long streamId, long offset) {
+        return new PhiloxRandom(seed, streamId, offset);
+    }
 }
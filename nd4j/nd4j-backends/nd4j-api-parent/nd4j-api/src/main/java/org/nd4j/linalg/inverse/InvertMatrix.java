@@ -90,7 +90,7 @@ public class InvertMatrix {
     /**
      * Compute the left pseudo inverse. Input matrix must have full column rank.
      *
-     * See also: <a href="https://en.wikipedia.org/wiki/Moore%E2%80%93Penrose_inverse#Definition">Moore–Penrose inverse</a>
+     * See also: <a href="https://en.wikipedia.org/wiki/Moore%E2%80%93Penrose_inverse#Definition">Moore???Penrose inverse</a>
      *
      * @param arr Input matrix
      * @param inPlace Whether to store the result in {@code arr}
@@ -111,7 +111,7 @@ public class InvertMatrix {
     /**
      * Compute the right pseudo inverse. Input matrix must have full row rank.
      *
-     * See also: <a href="https://en.wikipedia.org/wiki/Moore%E2%80%93Penrose_inverse#Definition">Moore–Penrose inverse</a>
+     * See also: <a href="https://en.wikipedia.org/wiki/Moore%E2%80%93Penrose_inverse#Definition">Moore???Penrose inverse</a>
      *
      * @param arr Input matrix
      * @param inPlace Whether to store the result in {@code arr}
@@ -39,7 +39,7 @@ import java.util.List;
 import java.util.Map;
 
 /**
- * F–measure loss function is a loss function design for training on imbalanced datasets.
+ * F???measure loss function is a loss function design for training on imbalanced datasets.
  * Essentially, this loss function is a continuous approximation of the F_Beta evaluation measure, of which F_1 is
  * a special case.<br>
  * <br>
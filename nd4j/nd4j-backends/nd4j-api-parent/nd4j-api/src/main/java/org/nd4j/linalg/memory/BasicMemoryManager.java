@@ -25,8 +25,11 @@ import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.ops.performance.PerformanceTracker;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.memory.abstracts.DummyWorkspace;
+import org.nd4j.linalg.profiler.RuntimeMetrics;
 
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -57,6 +60,9 @@ public abstract class BasicMemoryManager implements MemoryManager {
 
     private ThreadLocal<MemoryWorkspace> tempWorkspace = new ThreadLocal<>();
 
+    // sizes of the chunks allocated while RuntimeMetrics counting is enabled, by address
+    private final Map<Long, Long> allocationSizes = new ConcurrentHashMap<>();
+
 
     /**
      * This method returns
@@ -213,4 +219,33 @@ public abstract class BasicMemoryManager implements MemoryManager {
             return new DummyWorkspace().notifyScopeEntered();//workspace.tagOutOfScopeUse();
         }
     }
+
+    /**
+     * This method records allocation of a memory chunk in {@link RuntimeMetrics}, if enabled.
+     * Implementations should call it after each successful allocation.
+     *
+     * @param pointer
+     * @param bytes
+     */
+    protected void recordAllocation(Pointer pointer, long bytes) {
+        RuntimeMetrics metrics = RuntimeMetrics.getInstance();
+        if (metrics.isEnabled()) {
+            allocationSizes.put(pointer.address(), bytes);
+            metrics.recordAllocation(bytes);
+        }
+    }
+
+    /**
+     * This method records release of a memory chunk in {@link RuntimeMetrics}, along with its size if it was allocated while metrics were enabled.
+     * Implementations should call it before each release.
+     *
+     * @param pointer
+     */
+    protected void recordRelease(Pointer pointer) {
+        RuntimeMetrics metrics = RuntimeMetrics.getInstance();
+        if (metrics.isEnabled() || !allocationSizes.isEmpty()) {
+            Long bytes = allocationSizes.remove(pointer.address());
+            metrics.recordRelease(bytes == null ? 0 : bytes);
+        }
+    }
 }
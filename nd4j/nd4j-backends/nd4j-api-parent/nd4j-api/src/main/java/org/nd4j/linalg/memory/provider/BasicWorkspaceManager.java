@@ -27,6 +27,7 @@ import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.memory.abstracts.DummyWorkspace;
 import org.nd4j.linalg.memory.abstracts.Nd4jWorkspace;
 import org.nd4j.linalg.primitives.SynchronizedObject;
+import org.nd4j.linalg.profiler.RuntimeMetrics;
 import org.nd4j.util.StringUtils;
 
 import java.lang.ref.ReferenceQueue;
@@ -328,6 +329,7 @@ public abstract class BasicWorkspaceManager implements MemoryWorkspaceManager {
                         }
 
                         referenceMap.remove(reference.getKey());
+                        RuntimeMetrics.getInstance().recordWorkspaceReleasedByGc();
                     }
                 } catch (InterruptedException e) {
                     return; /* terminate thread when being interrupted */
@@ -338,6 +340,36 @@ public abstract class BasicWorkspaceManager implements MemoryWorkspaceManager {
         }
     }
 
+    /**
+     * This method returns all workspaces that are still reachable, in all threads.
+     * PLEASE NOTE: This method is meant for monitoring purposes only: returned workspaces must not be used outside of their own threads.
+     *
+     * @return
+     */
+    public List<MemoryWorkspace> getAllTrackedWorkspaces() {
+        List<MemoryWorkspace> workspaces = new ArrayList<>();
+        for (Nd4jWorkspace.GarbageWorkspaceReference reference : referenceMap.values()) {
+            MemoryWorkspace workspace = reference.get();
+            if (workspace != null)
+                workspaces.add(workspace);
+        }
+        return workspaces;
+    }
+
+    /**
+     * This method returns number of workspaces that were garbage collected, but weren't released by the deallocator thread yet
+     *
+     * @return
+     */
+    public int getPendingDeallocations() {
+        int pending = 0;
+        for (Nd4jWorkspace.GarbageWorkspaceReference reference : referenceMap.values()) {
+            if (reference.get() == null)
+                pending++;
+        }
+        return pending;
+    }
+
     /**
      * This method prints out basic statistics for workspaces allocated in current thread
      */
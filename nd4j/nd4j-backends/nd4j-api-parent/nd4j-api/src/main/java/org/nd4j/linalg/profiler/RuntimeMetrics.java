@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.profiler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Always available, low overhead counters for the running backend:
+ * ops executed, off heap allocations made via the MemoryManager
+ * and workspaces released by the deallocator thread after being garbage collected.
+ *
+ * Each op execution is one native call, so op counts can be used as a proxy for the native call rate:
+ * other native calls (memory management, workspaces, etc) aren't counted.
+ * Allocation counters only cover {@link org.nd4j.linalg.memory.MemoryManager#allocate(long, org.nd4j.linalg.api.memory.enums.MemoryKind, boolean)}
+ * (workspaces and other memory manager allocations): ordinary array buffers aren't counted.
+ *
+ * Counting is disabled by default: when disabled each hook is a single volatile read.
+ * Counters are monotonic; rates are meant to be derived by whoever samples them
+ * (for example the nd4j-instrumentation metrics endpoint).
+ * The only gauge is {@link #getBytesInUse()}: bytes allocated via the MemoryManager while counting was enabled,
+ * and not released yet.
+ *
+ * Unlike {@link OpProfiler} this class is thread safe.
+ */
+public class RuntimeMetrics {
+    private static final RuntimeMetrics INSTANCE = new RuntimeMetrics();
+
+    private volatile boolean enabled = false;
+
+    private final AtomicLong opInvocations = new AtomicLong();
+    private final AtomicLong customOpInvocations = new AtomicLong();
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong bytesAllocated = new AtomicLong();
+    private final AtomicLong releases = new AtomicLong();
+    private final AtomicLong bytesReleased = new AtomicLong();
+    private final AtomicLong bytesInUse = new AtomicLong();
+    private final AtomicLong workspacesReleasedByGc = new AtomicLong();
+
+    private RuntimeMetrics() {}
+
+    public static RuntimeMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable or disable counting. Counters keep their values when disabled.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void recordOp() {
+        if (enabled)
+            opInvocations.incrementAndGet();
+    }
+
+    public void recordCustomOp() {
+        if (enabled)
+            customOpInvocations.incrementAndGet();
+    }
+
+    public void recordAllocation(long bytes) {
+        if (enabled) {
+            allocations.incrementAndGet();
+            bytesAllocated.addAndGet(bytes);
+            bytesInUse.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * @param bytes the size of the released chunk, or 0 if it wasn't allocated while counting was enabled
+     */
+    public void recordRelease(long bytes) {
+        //chunks allocated while enabled are always subtracted, so that bytes in use stay consistent after disabling
+        if (bytes > 0)
+            bytesInUse.addAndGet(-bytes);
+        if (enabled) {
+            releases.incrementAndGet();
+            bytesReleased.addAndGet(bytes);
+        }
+    }
+
+    public void recordWorkspaceReleasedByGc() {
+        if (enabled)
+            workspacesReleasedByGc.incrementAndGet();
+    }
+
+    /**
+     * @return the number of legacy (transform, accumulation, broadcast, etc) ops executed
+     */
+    public long getOpInvocations() {
+        return opInvocations.get();
+    }
+
+    /**
+     * @return the number of custom (libnd4j declarable) ops executed
+     */
+    public long getCustomOpInvocations() {
+        return customOpInvocations.get();
+    }
+
+    /**
+     * @return the number of off heap allocations made via {@link org.nd4j.linalg.memory.MemoryManager#allocate(long, org.nd4j.linalg.api.memory.enums.MemoryKind, boolean)}
+     */
+    public long getAllocations() {
+        return allocations.get();
+    }
+
+    /**
+     * @return the number of bytes allocated via the MemoryManager
+     */
+    public long getBytesAllocated() {
+        return bytesAllocated.get();
+    }
+
+    /**
+     * @return the number of off heap memory chunks released via the MemoryManager
+     */
+    public long getReleases() {
+        return releases.get();
+    }
+
+    /**
+     * @return the number of bytes released via the MemoryManager, for chunks allocated while counting was enabled
+     */
+    public long getBytesReleased() {
+        return bytesReleased.get();
+    }
+
+    /**
+     * @return the number of bytes allocated via the MemoryManager while counting was enabled, and not released yet.
+     * Unlike the other values, this isn't reset by {@link #reset()}
+     */
+    public long getBytesInUse() {
+        return bytesInUse.get();
+    }
+
+    /**
+     * @return the number of workspaces whose memory was released after they were garbage collected
+     */
+    public long getWorkspacesReleasedByGc() {
+        return workspacesReleasedByGc.get();
+    }
+
+    /**
+     * Reset all counters to zero. Bytes in use are kept: they describe memory that is still allocated
+     */
+    public void reset() {
+        opInvocations.set(0);
+        customOpInvocations.set(0);
+        allocations.set(0);
+        bytesAllocated.set(0);
+        releases.set(0);
+        bytesReleased.set(0);
+        workspacesReleasedByGc.set(0);
+    }
+}
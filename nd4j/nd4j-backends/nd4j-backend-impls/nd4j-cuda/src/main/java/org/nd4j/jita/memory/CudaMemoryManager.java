@@ -65,6 +65,7 @@ public class CudaMemoryManager extends BasicMemoryManager {
             if (initialize)
                 Pointer.memset(ptr, 0, bytes);
 
+            recordAllocation(ptr, bytes);
             return ptr;//allocator.getMemoryHandler().alloc(AllocationStatus.HOST, null, null, initialize).getHostPointer();
         } else if (kind == MemoryKind.DEVICE) {
             Pointer ptr = NativeOpsHolder.getInstance().getDeviceNativeOps().mallocDevice(bytes, null, 0);
@@ -85,7 +86,7 @@ public class CudaMemoryManager extends BasicMemoryManager {
                 context.getSpecialStream().synchronize();
             }
 
-
+            recordAllocation(ptr, bytes);
             return ptr; //allocator.getMemoryHandler().alloc(AllocationStatus.HOST, null, null, initialize).getDevicePointer();
         } else
             throw new RuntimeException("Unknown MemoryKind requested: " + kind);
@@ -209,6 +210,7 @@ public class CudaMemoryManager extends BasicMemoryManager {
      */
     @Override
     public void release(Pointer pointer, MemoryKind kind) {
+        recordRelease(pointer);
         if (kind == MemoryKind.DEVICE) {
             NativeOpsHolder.getInstance().getDeviceNativeOps().freeDevice(pointer, null);
         } else if (kind == MemoryKind.HOST) {
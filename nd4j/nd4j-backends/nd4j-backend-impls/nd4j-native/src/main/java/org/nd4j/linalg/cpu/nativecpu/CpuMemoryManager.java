@@ -54,6 +54,7 @@ public class CpuMemoryManager extends BasicMemoryManager {
         if (initialize)
             Pointer.memset(ptr, 0, bytes);
 
+        recordAllocation(ptr, bytes);
         return ptr;
     }
 
@@ -66,6 +67,7 @@ public class CpuMemoryManager extends BasicMemoryManager {
      */
     @Override
     public void release(@NonNull Pointer pointer, MemoryKind kind) {
+        recordRelease(pointer);
         Pointer.free(pointer);
     }
 
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.profiling;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.bytedeco.javacpp.Pointer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.memory.enums.MemoryKind;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+import org.nd4j.linalg.profiler.RuntimeMetrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link RuntimeMetrics} counters: ops, MemoryManager allocations/releases and workspaces released after gc
+ */
+@Slf4j
+@RunWith(Parameterized.class)
+public class RuntimeMetricsTests extends BaseNd4jTest {
+    public RuntimeMetricsTests(Nd4jBackend backend) {
+        super(backend);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        RuntimeMetrics.getInstance().setEnabled(true);
+        RuntimeMetrics.getInstance().reset();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        RuntimeMetrics.getInstance().setEnabled(false);
+        RuntimeMetrics.getInstance().reset();
+    }
+
+    @Test
+    public void testDisabled() {
+        val metrics = RuntimeMetrics.getInstance();
+        metrics.setEnabled(false);
+        long inUse = metrics.getBytesInUse();
+
+        Nd4j.create(10).addi(1.0);
+        Pointer pointer = Nd4j.getMemoryManager().allocate(1024, MemoryKind.HOST, false);
+        Nd4j.getMemoryManager().release(pointer, MemoryKind.HOST);
+
+        assertEquals(0, metrics.getOpInvocations());
+        assertEquals(0, metrics.getAllocations());
+        assertEquals(0, metrics.getBytesAllocated());
+        assertEquals(0, metrics.getReleases());
+        assertEquals(0, metrics.getBytesReleased());
+        assertEquals(inUse, metrics.getBytesInUse());
+    }
+
+    @Test
+    public void testOps() {
+        val metrics = RuntimeMetrics.getInstance();
+        Nd4j.create(10).addi(1.0);
+        Nd4j.getExecutioner().commit();
+
+        assertTrue(metrics.getOpInvocations() > 0);
+
+        metrics.reset();
+        assertEquals(0, metrics.getOpInvocations());
+    }
+
+    @Test
+    public void testAllocationAndRelease() {
+        val metrics = RuntimeMetrics.getInstance();
+        long inUse = metrics.getBytesInUse();
+
+        Pointer pointer = Nd4j.getMemoryManager().allocate(1024, MemoryKind.HOST, false);
+        assertEquals(1, metrics.getAllocations());
+        assertEquals(1024, metrics.getBytesAllocated());
+        assertEquals(inUse + 1024, metrics.getBytesInUse());
+
+        Nd4j.getMemoryManager().release(pointer, MemoryKind.HOST);
+        assertEquals(1, metrics.getReleases());
+        assertEquals(1024, metrics.getBytesReleased());
+        assertEquals(inUse, metrics.getBytesInUse());
+    }
+
+    @Test
+    public void testReleaseAfterDisabling() {
+        val metrics = RuntimeMetrics.getInstance();
+        long inUse = metrics.getBytesInUse();
+
+        Pointer pointer = Nd4j.getMemoryManager().allocate(2048, MemoryKind.HOST, false);
+        assertEquals(inUse + 2048, metrics.getBytesInUse());
+
+        // counters stop, but memory allocated while enabled is still accounted for when released
+        metrics.setEnabled(false);
+        Nd4j.getMemoryManager().release(pointer, MemoryKind.HOST);
+        assertEquals(0, metrics.getReleases());
+        assertEquals(inUse, metrics.getBytesInUse());
+    }
+
+    @Test
+    public void testWorkspaceReleasedByGc() throws Exception {
+        val metrics = RuntimeMetrics.getInstance();
+        final WorkspaceConfiguration configuration = WorkspaceConfiguration.builder().initialSize(1024 * 1024)
+                        .policyAllocation(AllocationPolicy.STRICT).policyLearning(LearningPolicy.NONE).build();
+
+        // workspaces are referenced from their thread only: once the thread is gone they can be collected
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (MemoryWorkspace workspace = Nd4j.getWorkspaceManager().getAndActivateWorkspace(configuration, "RM_GC")) {
+                    Nd4j.create(100).addi(1.0);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+
+        for (int i = 0; i < 100 && metrics.getWorkspacesReleasedByGc() == 0; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+
+        assertTrue(metrics.getWorkspacesReleasedByGc() > 0);
+        assertTrue(metrics.getReleases() > 0);
+    }
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+}
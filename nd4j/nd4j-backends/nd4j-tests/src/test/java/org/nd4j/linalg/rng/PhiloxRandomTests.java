@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.rng;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.rng.PhiloxRandom;
+import org.nd4j.linalg.api.rng.PhiloxRandomGenerator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the counter based PhiloxRandom
+ */
+@RunWith(Parameterized.class)
+public class PhiloxRandomTests extends BaseNd4jTest {
+
+    public PhiloxRandomTests(Nd4jBackend backend) {
+        super(backend);
+    }
+
+    @Test
+    public void testKnownAnswers() {
+        //Philox4x32-10 known answer vectors from the Random123 distribution
+        int[] out = new int[4];
+        PhiloxRandomGenerator.block(0, 0, 0, out);
+        assertArrayEquals(new int[] {0x6627e8d5, 0xe169c58d, 0xbc57ac4c, 0x9b00dbd8}, out);
+
+        PhiloxRandomGenerator.block(-1L, -1L, -1L, out);
+        assertArrayEquals(new int[] {0x408f276d, 0x41c83b0e, 0xa20bc7c6, 0x6d5451fd}, out);
+
+        PhiloxRandomGenerator.block(0x85a308d3243f6a88L, 0x0370734413198a2eL, 0x299f31d0a4093822L, out);
+        assertArrayEquals(new int[] {0xd16cfe09, 0x94fdcceb, 0x5001e420, 0x24126ea1}, out);
+    }
+
+    @Test
+    public void testStreamsAreReproducibleAndIndependent() {
+        PhiloxRandom r1 = Nd4j.getRandomFactory().getNewPhiloxInstance(12345, 7);
+        PhiloxRandom r2 = Nd4j.getRandomFactory().getNewPhiloxInstance(12345, 7);
+        PhiloxRandom other = r1.split(8);
+
+        List<Integer> s1 = new ArrayList<>();
+        boolean allEqual = true;
+        for (int i = 0; i < 100; i++) {
+            int v = r1.nextInt();
+            s1.add(v);
+            assertEquals(v, r2.nextInt());
+            allEqual &= v == other.nextInt();
+        }
+        assertFalse(allEqual);
+        assertEquals(100, r1.getOffset());
+
+        //random access within the stream
+        PhiloxRandom seek = Nd4j.getRandomFactory().getNewPhiloxInstance(12345, 7, 37);
+        for (int i = 37; i < 100; i++)
+            assertEquals((int) s1.get(i), seek.nextInt());
+
+        seek.setOffset(5);
+        assertEquals((int) s1.get(5), seek.nextInt());
+
+        //reseeding restarts the stream
+        r1.setSeed(12345);
+        assertEquals(0, r1.getOffset());
+        assertEquals((int) s1.get(0), r1.nextInt());
+    }
+
+    @Test
+    public void testDistribution() {
+        PhiloxRandom r = new PhiloxRandom(42, 3);
+        int n = 100000;
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            double d = r.nextDouble();
+            assertTrue(d >= 0.0 && d < 1.0);
+            sum += d;
+        }
+        assertEquals(0.5, sum / n, 0.01);
+    }
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+}
@@ -17,6 +17,7 @@
 package org.nd4j.linalg.rng;
 
 import lombok.extern.slf4j.Slf4j;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
@@ -25,9 +26,13 @@ import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.ops.executioner.GridExecutioner;
 import org.nd4j.linalg.api.ops.impl.transforms.LegacyDropOutInverted;
 import org.nd4j.linalg.api.ops.random.impl.DropOutInverted;
+import org.nd4j.linalg.api.rng.DefaultRandom;
+import org.nd4j.linalg.api.rng.Random;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.factory.Nd4jBackend;
 
+import java.util.concurrent.CountDownLatch;
+
 /**
  * @author raver119@gmail.com
  */
@@ -83,6 +88,43 @@ public class RandomPerformanceTests extends BaseNd4jTest {
     }
 
 
+    /**
+     * Uncontended throughput of per thread Philox streams vs a single shared DefaultRandom, for up to 32 threads
+     */
+    @Test
+    @Ignore
+    public void testPerThreadStreamsThroughput() throws Exception {
+        final int numbersPerThread = 10000000;
+        final Random shared = new DefaultRandom(119);
+
+        for (int numThreads = 1; numThreads <= 32; numThreads *= 2) {
+            for (final boolean philox : new boolean[] {false, true}) {
+                final CountDownLatch latch = new CountDownLatch(numThreads);
+                long time1 = System.nanoTime();
+                for (int t = 0; t < numThreads; t++) {
+                    final long streamId = t;
+                    new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Random rng = philox ? Nd4j.getRandomFactory().getNewPhiloxInstance(119, streamId) : shared;
+                            double sum = 0;
+                            for (int i = 0; i < numbersPerThread; i++)
+                                sum += rng.nextFloat();
+                            if (sum < 0)
+                                log.info("Unexpected sum: {}", sum);
+                            latch.countDown();
+                        }
+                    }).start();
+                }
+                latch.await();
+                long time2 = System.nanoTime();
+
+                log.info("{} threads, {}: {} million numbers/s", numThreads, philox ? "per thread Philox" : "shared DefaultRandom",
+                                (double) numbersPerThread * numThreads / ((time2 - time1) / 1000.0));
+            }
+        }
+    }
+
     @Override
     public char ordering() {
         return 'c';
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.instrumentation.metrics;
+
+import org.bytedeco.javacpp.Pointer;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.MemoryWorkspaceManager;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.memory.abstracts.Nd4jWorkspace;
+import org.nd4j.linalg.memory.provider.BasicWorkspaceManager;
+import org.nd4j.linalg.profiler.RuntimeMetrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects live executioner, memory and gc statistics
+ * and renders them in the prometheus text exposition format.
+ *
+ * Counters (suffix _total) are monotonic: rates (ops per second, allocations per second)
+ * are left to the scraper. Everything else is a gauge sampled at collection time.
+ * Collection only reads counters and walks the tracked workspaces, so it is cheap enough to be scraped every few seconds.
+ *
+ * Op and memory manager counters come from {@link RuntimeMetrics}, which is disabled by default: creating a collector
+ * doesn't enable it. Call {@code RuntimeMetrics.getInstance().setEnabled(true)} to start counting.
+ * The memory manager metrics only cover allocations made via the MemoryManager (workspaces and other
+ * manager allocations), not ordinary array buffers: nd4j_offheap_bytes covers all off heap memory allocated by javacpp.
+ */
+public class Nd4jMetricsCollector {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * @return all metrics in the prometheus text format
+     */
+    public String collect() {
+        StringBuilder sb = new StringBuilder();
+        RuntimeMetrics metrics = RuntimeMetrics.getInstance();
+
+        //op executions stand in for the native call rate: other native calls (memory, workspaces, etc) aren't counted
+        metric(sb, "nd4j_ops_total", "counter",
+                        "Number of legacy ops executed (one native call each): a proxy for the native call rate",
+                        metrics.getOpInvocations());
+        metric(sb, "nd4j_custom_ops_total", "counter",
+                        "Number of custom ops executed (one native call each): a proxy for the native call rate",
+                        metrics.getCustomOpInvocations());
+        metric(sb, "nd4j_memory_manager_allocations_total", "counter",
+                        "Number of off heap allocations made via the memory manager (not including array buffers)",
+                        metrics.getAllocations());
+        metric(sb, "nd4j_memory_manager_allocated_bytes_total", "counter",
+                        "Number of off heap bytes allocated via the memory manager (not including array buffers)",
+                        metrics.getBytesAllocated());
+        metric(sb, "nd4j_memory_manager_releases_total", "counter",
+                        "Number of off heap chunks released via the memory manager (not including array buffers)",
+                        metrics.getReleases());
+        metric(sb, "nd4j_memory_manager_released_bytes_total", "counter",
+                        "Number of off heap bytes released via the memory manager (not including array buffers)",
+                        metrics.getBytesReleased());
+        metric(sb, "nd4j_memory_manager_in_use_bytes", "gauge",
+                        "Off heap bytes allocated via the memory manager while metrics were enabled, and not released yet",
+                        metrics.getBytesInUse());
+
+        metric(sb, "nd4j_offheap_bytes", "gauge", "Off heap bytes currently allocated by javacpp pointers",
+                        Pointer.totalBytes());
+        metric(sb, "nd4j_offheap_max_bytes", "gauge", "Limit for off heap bytes allocated by javacpp pointers",
+                        Pointer.maxBytes());
+        try {
+            metric(sb, "nd4j_physical_bytes", "gauge", "Physical memory used by the process", Pointer.physicalBytes());
+        } catch (Throwable t) {
+            //javacpp native library not available: skip
+        }
+
+        collectWorkspaces(sb, metrics);
+        collectJvm(sb);
+        return sb.toString();
+    }
+
+    private void collectWorkspaces(StringBuilder sb, RuntimeMetrics metrics) {
+        metric(sb, "nd4j_workspaces_released_by_gc_total", "counter",
+                        "Number of workspaces released by the deallocator thread after being garbage collected",
+                        metrics.getWorkspacesReleasedByGc());
+
+        MemoryWorkspaceManager manager = Nd4j.getWorkspaceManager();
+        if (!(manager instanceof BasicWorkspaceManager))
+            return;
+        BasicWorkspaceManager workspaceManager = (BasicWorkspaceManager) manager;
+        metric(sb, "nd4j_workspace_pending_deallocations", "gauge",
+                        "Number of garbage collected workspaces waiting for the deallocator thread",
+                        workspaceManager.getPendingDeallocations());
+
+        //workspaces with the same id in different threads are summed up
+        List<MemoryWorkspace> workspaces = workspaceManager.getAllTrackedWorkspaces();
+        Map<String, long[]> sizes = new TreeMap<>();
+        for (MemoryWorkspace workspace : workspaces) {
+            long[] s = sizes.get(workspace.getId());
+            if (s == null) {
+                s = new long[4];
+                sizes.put(workspace.getId(), s);
+            }
+            s[0]++;
+            s[1] += workspace.getCurrentSize();
+            if (workspace instanceof Nd4jWorkspace) {
+                s[2] += ((Nd4jWorkspace) workspace).getSpilledSize();
+                s[3] += ((Nd4jWorkspace) workspace).getPinnedSize();
+            }
+        }
+
+        metric(sb, "nd4j_workspaces", "gauge", "Number of live workspaces in all threads", workspaces.size());
+        header(sb, "nd4j_workspace_bytes", "gauge",
+                        "Workspace memory by workspace id (summed over threads) and type: allocated, spilled or pinned");
+        for (Map.Entry<String, long[]> e : sizes.entrySet()) {
+            String id = escape(e.getKey());
+            sample(sb, "nd4j_workspace_bytes{workspace=\"" + id + "\",type=\"allocated\"}", e.getValue()[1]);
+            sample(sb, "nd4j_workspace_bytes{workspace=\"" + id + "\",type=\"spilled\"}", e.getValue()[2]);
+            sample(sb, "nd4j_workspace_bytes{workspace=\"" + id + "\",type=\"pinned\"}", e.getValue()[3]);
+        }
+    }
+
+    private void collectJvm(StringBuilder sb) {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        metric(sb, "jvm_heap_used_bytes", "gauge", "Used heap memory", heap.getUsed());
+
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        header(sb, "jvm_gc_collections_total", "counter", "Number of garbage collections by collector");
+        for (GarbageCollectorMXBean gc : collectors)
+            sample(sb, "jvm_gc_collections_total{gc=\"" + escape(gc.getName()) + "\"}", gc.getCollectionCount());
+        header(sb, "jvm_gc_collection_seconds_total", "counter", "Time spent in garbage collection by collector");
+        for (GarbageCollectorMXBean gc : collectors)
+            sample(sb, "jvm_gc_collection_seconds_total{gc=\"" + escape(gc.getName()) + "\"}",
+                            gc.getCollectionTime() / 1000.0);
+    }
+
+    private static void metric(StringBuilder sb, String name, String type, String help, Number value) {
+        header(sb, name, type, help);
+        sample(sb, name, value);
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String nameAndLabels, Number value) {
+        sb.append(nameAndLabels).append(' ').append(value).append('\n');
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -27,7 +27,13 @@ import java.io.FileOutputStream;
 import java.io.InputStream;
 
 /**
- * The instrumentation application
+ * The instrumentation application.
+ *
+ * Besides the array lifecycle endpoints under /instrumentation,
+ * it serves live op, memory and gc statistics under /metrics in the prometheus text format.
+ * It can be embedded in any application using nd4j: call {@link #start()} on startup.
+ * Op and memory manager counters are only collected while {@link org.nd4j.linalg.profiler.RuntimeMetrics}
+ * is enabled, which is up to the application.
  *
  * @author Adam Gibson
  */
@@ -46,6 +52,7 @@ public class InstrumentationApplication extends Application<Nd4jInstrumentationC
     public void run(Nd4jInstrumentationConfiguration nd4jInstrumentationConfiguration, Environment environment)
                     throws Exception {
         environment.jersey().register(new InstrumentationResource());
+        environment.jersey().register(new MetricsResource());
         this.env = environment;
     }
 
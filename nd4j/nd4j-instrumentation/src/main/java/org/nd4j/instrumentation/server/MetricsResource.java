@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.instrumentation.server;
+
+import org.nd4j.instrumentation.metrics.Nd4jMetricsCollector;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+
+/**
+ * Live executioner and memory statistics
+ * in the prometheus text format
+ */
+@Path("/metrics")
+public class MetricsResource {
+    private final Nd4jMetricsCollector collector;
+
+    public MetricsResource() {
+        this(new Nd4jMetricsCollector());
+    }
+
+    public MetricsResource(Nd4jMetricsCollector collector) {
+        this.collector = collector;
+    }
+
+    @GET
+    @Produces(Nd4jMetricsCollector.CONTENT_TYPE)
+    public Response getMetrics() {
+        return Response.ok(collector.collect()).build();
+    }
+}
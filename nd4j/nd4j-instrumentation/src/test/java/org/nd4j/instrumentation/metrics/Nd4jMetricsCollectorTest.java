@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.instrumentation.metrics;
+
+import org.bytedeco.javacpp.Pointer;
+import org.junit.After;
+import org.junit.Test;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.MemoryKind;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.profiler.RuntimeMetrics;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link Nd4jMetricsCollector} output is valid prometheus text format, with the expected metrics
+ */
+public class Nd4jMetricsCollectorTest {
+    private static final Pattern SAMPLE = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*(\\{[^}]*\\})? -?[0-9.E\\-]+");
+    private static final Pattern TYPE = Pattern.compile("# TYPE [a-zA-Z_:][a-zA-Z0-9_:]* (counter|gauge)");
+
+    @After
+    public void tearDown() {
+        RuntimeMetrics.getInstance().setEnabled(false);
+        RuntimeMetrics.getInstance().reset();
+    }
+
+    @Test
+    public void testPrometheusFormat() {
+        Nd4jMetricsCollector collector = new Nd4jMetricsCollector();
+        //counting has to be enabled explicitly
+        assertFalse(RuntimeMetrics.getInstance().isEnabled());
+        RuntimeMetrics.getInstance().setEnabled(true);
+        RuntimeMetrics.getInstance().reset();
+
+        Nd4j.create(10).addi(1.0);
+        Pointer pointer = Nd4j.getMemoryManager().allocate(1024, MemoryKind.HOST, false);
+        Nd4j.getMemoryManager().release(pointer, MemoryKind.HOST);
+
+        String output;
+        try (MemoryWorkspace workspace = Nd4j.getWorkspaceManager()
+                        .getAndActivateWorkspace(WorkspaceConfiguration.builder().initialSize(1024 * 1024).build(), "METRICS_WS")) {
+            output = collector.collect();
+        }
+
+        Map<String, Double> samples = new HashMap<>();
+        Set<String> typed = new HashSet<>();
+        for (String line : output.split("\n")) {
+            if (line.startsWith("# HELP "))
+                continue;
+            if (line.startsWith("# TYPE ")) {
+                assertTrue(line, TYPE.matcher(line).matches());
+                typed.add(line.split(" ")[2]);
+                continue;
+            }
+            assertTrue(line, SAMPLE.matcher(line).matches());
+            String name = line.substring(0, line.lastIndexOf(' '));
+            samples.put(name, Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1)));
+            // every sample is preceded by the TYPE line of its metric
+            String metric = name.contains("{") ? name.substring(0, name.indexOf('{')) : name;
+            assertTrue(metric, typed.contains(metric));
+        }
+
+        assertTrue(samples.get("nd4j_ops_total") > 0);
+        assertEquals(1.0, samples.get("nd4j_memory_manager_allocations_total"), 0.0);
+        assertEquals(1024.0, samples.get("nd4j_memory_manager_allocated_bytes_total"), 0.0);
+        assertEquals(1.0, samples.get("nd4j_memory_manager_releases_total"), 0.0);
+        assertEquals(1024.0, samples.get("nd4j_memory_manager_released_bytes_total"), 0.0);
+        assertTrue(samples.containsKey("nd4j_memory_manager_in_use_bytes"));
+        assertTrue(samples.containsKey("nd4j_workspaces_released_by_gc_total"));
+        assertTrue(samples.get("nd4j_workspaces") >= 1);
+        assertTrue(samples.get("nd4j_workspace_bytes{workspace=\"METRICS_WS\",type=\"allocated\"}") >= 1024 * 1024);
+        assertTrue(samples.containsKey("jvm_heap_used_bytes"));
+    }
+}
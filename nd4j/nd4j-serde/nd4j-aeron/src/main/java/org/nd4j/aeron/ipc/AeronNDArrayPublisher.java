@@ -19,11 +19,15 @@ package org.nd4j.aeron.ipc;
 import io.aeron.Aeron;
 import io.aeron.Publication;
 import io.aeron.exceptions.DriverTimeoutException;
+import io.aeron.logbuffer.BufferClaim;
 import lombok.Builder;
 import lombok.Data;
 import org.agrona.CloseHelper;
 import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.BackoffIdleStrategy;
 import org.agrona.concurrent.BusySpinIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
 import org.agrona.concurrent.UnsafeBuffer;
 import org.nd4j.aeron.ipc.chunk.NDArrayMessageChunk;
 import org.nd4j.linalg.api.ndarray.INDArray;
@@ -33,11 +37,25 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * NDArray publisher
  * for aeron
  *
+ * When streaming is enabled, arrays are sent as
+ * {@link NDArrayMessageChunk}s sized to fit in a single aeron frame
+ * ({@link Publication#maxPayloadLength()}) and written directly in to
+ * the publication's term buffer via {@link Publication#tryClaim(int, BufferClaim)}.
+ * This avoids both aeron level fragmentation and a per chunk buffer copy.
+ * Subscribers should use a {@link org.nd4j.aeron.ipc.chunk.DirectChunkAccumulator}
+ * to receive streamed messages.
+ *
+ * Offer/claim failures (back pressure, not connected, admin actions)
+ * and retries are counted in {@link #getMetrics()}.
+ *
  * @author Adam Gibson
  */
 @Data
@@ -57,12 +75,18 @@ public class AeronNDArrayPublisher implements AutoCloseable {
     private boolean compress = true;
     private static final BusySpinIdleStrategy busySpinIdleStrategy = new BusySpinIdleStrategy();
     private int publishRetryTimeOut = 3000;
+    private boolean streaming;
+    private AeronPublicationMetrics metrics;
+    private final BufferClaim bufferClaim = new BufferClaim();
+    private final IdleStrategy claimIdleStrategy = new BackoffIdleStrategy(100, 10, TimeUnit.MICROSECONDS.toNanos(1),
+                    TimeUnit.MICROSECONDS.toNanos(100));
 
     private void init() {
         channel = channel == null ? "aeron:udp?endpoint=localhost:40123" : channel;
         streamId = streamId == 0 ? 10 : streamId;
         publishRetryTimeOut = publishRetryTimeOut == 0 ? 3000 : publishRetryTimeOut;
         ctx = ctx == null ? ctx = new Aeron.Context() : ctx;
+        metrics = metrics == null ? new AeronPublicationMetrics() : metrics;
         init = true;
         log.info("Channel publisher" + channel + " and stream " + streamId);
     }
@@ -124,8 +148,10 @@ public class AeronNDArrayPublisher implements AutoCloseable {
 
 
 
-        //array is large, need to segment
-        if (NDArrayMessage.byteBufferSizeForMessage(message) >= publication.maxMessageLength()) {
+        if (streaming) {
+            streamChunks(message);
+        } else if (NDArrayMessage.byteBufferSizeForMessage(message) >= publication.maxMessageLength()) {
+            //array is large, need to segment
             NDArrayMessageChunk[] chunks = NDArrayMessage.chunks(message, publication.maxMessageLength() / 128);
             for (int i = 0; i < chunks.length; i++) {
                 ByteBuffer sendBuff = NDArrayMessageChunk.toBuffer(chunks[i]);
@@ -140,6 +166,56 @@ public class AeronNDArrayPublisher implements AutoCloseable {
 
         }
 
+        metrics.recordMessage();
+    }
+
+    /**
+     * Stream a message as chunks that each fit in one aeron frame.
+     * Each chunk (see {@link NDArrayMessageChunk#toBuffer(NDArrayMessageChunk)} for the layout)
+     * is written straight in to the claimed region of the term buffer.
+     * @param message the message to stream
+     */
+    private void streamChunks(NDArrayMessage message) throws Exception {
+        DirectBuffer wholeBuffer = NDArrayMessage.toBuffer(message);
+        byte[] id = UUID.randomUUID().toString().getBytes();
+        //message opType, number of chunks, chunk size, id length, id, chunk index
+        int headerLength = 5 * 4 + id.length;
+        int chunkSize = publication.maxPayloadLength() - headerLength;
+        int numChunks = (wholeBuffer.capacity() + chunkSize - 1) / chunkSize;
+        for (int i = 0; i < numChunks; i++) {
+            int dataOffset = i * chunkSize;
+            int dataLength = Math.min(chunkSize, wholeBuffer.capacity() - dataOffset);
+            claim(headerLength + dataLength);
+
+            MutableDirectBuffer buffer = bufferClaim.buffer();
+            int offset = bufferClaim.offset();
+            buffer.putInt(offset, NDArrayMessage.MessageType.CHUNKED.ordinal(), ByteOrder.nativeOrder());
+            buffer.putInt(offset + 4, numChunks, ByteOrder.nativeOrder());
+            buffer.putInt(offset + 8, chunkSize, ByteOrder.nativeOrder());
+            buffer.putInt(offset + 12, id.length, ByteOrder.nativeOrder());
+            buffer.putBytes(offset + 16, id);
+            buffer.putInt(offset + 16 + id.length, i, ByteOrder.nativeOrder());
+            buffer.putBytes(offset + headerLength, wholeBuffer, dataOffset, dataLength);
+            bufferClaim.commit();
+            metrics.recordChunk(headerLength + dataLength);
+        }
+    }
+
+    private void claim(int length) {
+        claimIdleStrategy.reset();
+        long deadline = System.currentTimeMillis() + publishRetryTimeOut;
+        long result;
+        while ((result = publication.tryClaim(length, bufferClaim)) < 0L) {
+            metrics.recordFailedOffer(result);
+            if (result == Publication.CLOSED || System.currentTimeMillis() > deadline) {
+                metrics.recordFailedMessage();
+                throw new IllegalStateException("Failed to claim " + length + " bytes on channel " + channel
+                                + " and stream " + streamId + " (result " + result + ")");
+            }
+
+            metrics.recordRetry();
+            claimIdleStrategy.idle();
+        }
     }
 
 
@@ -150,6 +226,7 @@ public class AeronNDArrayPublisher implements AutoCloseable {
         long result;
         int tries = 0;
         while ((result = publication.offer(buffer, 0, buffer.capacity())) < 0L && tries < 5) {
+            metrics.recordFailedOffer(result);
             if (result == Publication.BACK_PRESSURED) {
                 log.info("Offer failed due to back pressure");
             } else if (result == Publication.NOT_CONNECTED) {
@@ -168,9 +245,15 @@ public class AeronNDArrayPublisher implements AutoCloseable {
 
             Thread.sleep(publishRetryTimeOut);
             tries++;
+            metrics.recordRetry();
 
         }
 
+        if (result < 0L)
+            metrics.recordFailedMessage();
+        else
+            metrics.recordChunk(buffer.capacity());
+
         if (tries >= 5 && result == 0)
             throw new IllegalStateException("Failed to send message");
 
@@ -17,12 +17,14 @@
 package org.nd4j.aeron.ipc;
 
 import io.aeron.Aeron;
-import io.aeron.FragmentAssembler;
+import io.aeron.ControlledFragmentAssembler;
 import io.aeron.Subscription;
 import lombok.Builder;
 import lombok.Data;
 import org.agrona.CloseHelper;
 import org.agrona.concurrent.SigInt;
+import org.nd4j.aeron.ipc.chunk.ChunkAccumulator;
+import org.nd4j.aeron.ipc.chunk.InMemoryChunkAccumulator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,6 +64,8 @@ public class AeronNDArraySubscriber implements AutoCloseable {
     private Subscription subscription;
     private AtomicBoolean launched = new AtomicBoolean(false);
     private Executor executors;
+    //used for reassembling chunked messages, defaults to an InMemoryChunkAccumulator
+    private ChunkAccumulator chunkAccumulator;
 
 
 
@@ -71,6 +75,7 @@ public class AeronNDArraySubscriber implements AutoCloseable {
         fragmentLimitCount = fragmentLimitCount == 0 ? 1000 : fragmentLimitCount;
         streamId = streamId == 0 ? 10 : streamId;
         running = running == null ? new AtomicBoolean(true) : running;
+        chunkAccumulator = chunkAccumulator == null ? new InMemoryChunkAccumulator() : chunkAccumulator;
         if (ndArrayCallback == null)
             throw new IllegalStateException("NDArray callback must be specified in the builder.");
         init.set(true);
@@ -128,7 +133,10 @@ public class AeronNDArraySubscriber implements AutoCloseable {
             try (final Subscription subscription = aeron.addSubscription(channel, streamId)) {
                 this.subscription = subscription;
                 log.info("Beginning subscribe on channel " + channel + " and stream " + streamId);
-                AeronUtil.subscriberLoop(new FragmentAssembler(new NDArrayFragmentHandler(ndArrayCallback)),
+                //chunks the accumulator has no room for are left in the log, back pressuring the publisher
+                AeronUtil.controlledSubscriberLoop(
+                                new ControlledFragmentAssembler(
+                                                new NDArrayControlledFragmentHandler(ndArrayCallback, chunkAccumulator)),
                                 fragmentLimitCount, running, launched).accept(subscription);
                 started = true;
 
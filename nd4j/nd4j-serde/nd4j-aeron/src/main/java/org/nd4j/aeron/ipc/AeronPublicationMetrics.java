@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.aeron.ipc;
+
+import io.aeron.Publication;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for an {@link AeronNDArrayPublisher}:
+ * messages, chunks and bytes sent as well as
+ * failed offers broken down by reason
+ * (back pressure, not connected, admin action)
+ * and the number of retries performed.
+ */
+public class AeronPublicationMetrics {
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong chunksSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong backPressured = new AtomicLong();
+    private final AtomicLong notConnected = new AtomicLong();
+    private final AtomicLong adminActions = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong failedMessages = new AtomicLong();
+
+    /**
+     * Record the result of a failed
+     * {@link Publication#offer(org.agrona.DirectBuffer)} or
+     * {@link Publication#tryClaim(int, io.aeron.logbuffer.BufferClaim)}
+     * @param result the (negative) result of the offer
+     */
+    public void recordFailedOffer(long result) {
+        if (result == Publication.BACK_PRESSURED)
+            backPressured.incrementAndGet();
+        else if (result == Publication.NOT_CONNECTED)
+            notConnected.incrementAndGet();
+        else if (result == Publication.ADMIN_ACTION)
+            adminActions.incrementAndGet();
+    }
+
+    public void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    public void recordChunk(int bytes) {
+        chunksSent.incrementAndGet();
+        bytesSent.addAndGet(bytes);
+    }
+
+    public void recordMessage() {
+        messagesSent.incrementAndGet();
+    }
+
+    public void recordFailedMessage() {
+        failedMessages.incrementAndGet();
+    }
+
+    public long getMessagesSent() {
+        return messagesSent.get();
+    }
+
+    public long getChunksSent() {
+        return chunksSent.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getBackPressured() {
+        return backPressured.get();
+    }
+
+    public long getNotConnected() {
+        return notConnected.get();
+    }
+
+    public long getAdminActions() {
+        return adminActions.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getFailedMessages() {
+        return failedMessages.get();
+    }
+
+    /**
+     * Reset all counters to zero
+     */
+    public void reset() {
+        messagesSent.set(0);
+        chunksSent.set(0);
+        bytesSent.set(0);
+        backPressured.set(0);
+        notConnected.set(0);
+        adminActions.set(0);
+        retries.set(0);
+        failedMessages.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "AeronPublicationMetrics(messagesSent=" + getMessagesSent() + ", chunksSent=" + getChunksSent()
+                        + ", bytesSent=" + getBytesSent() + ", backPressured=" + getBackPressured()
+                        + ", notConnected=" + getNotConnected() + ", adminActions=" + getAdminActions()
+                        + ", retries=" + getRetries() + ", failedMessages=" + getFailedMessages() + ")";
+    }
+}
@@ -16,6 +16,7 @@ import io.aeron.Image;
 import io.aeron.Subscription;
 import io.aeron.driver.MediaDriver;
 import io.aeron.driver.ThreadingMode;
+import io.aeron.logbuffer.ControlledFragmentHandler;
 import io.aeron.logbuffer.FragmentHandler;
 import io.aeron.protocol.HeaderFlyweight;
 import org.agrona.BitUtil;
@@ -115,6 +116,32 @@ public class AeronUtil {
         };
     }
 
+    /**
+     * Return a reusable, parameterized event
+     * loop that polls with a {@link ControlledFragmentHandler}
+     * (fragments the handler aborts stay in the log)
+     * and calls a busy spin idler when no messages are received
+     *
+     * @param fragmentHandler to be called back for each message.
+     * @param limit           passed to {@link Subscription#controlledPoll(ControlledFragmentHandler, int)}
+     * @param running         indication for loop
+     * @return loop function
+     */
+    public static Consumer<Subscription> controlledSubscriberLoop(final ControlledFragmentHandler fragmentHandler,
+                    final int limit, final AtomicBoolean running, final AtomicBoolean launched) {
+        final IdleStrategy idleStrategy = new BusySpinIdleStrategy();
+        return (subscription) -> {
+            try {
+                while (running.get()) {
+                    idleStrategy.idle(subscription.controlledPoll(fragmentHandler, limit));
+                    launched.set(true);
+                }
+            } catch (final Exception ex) {
+                LangUtil.rethrowUnchecked(ex);
+            }
+        };
+    }
+
     /**
      * Return a reusable, parameterized {@link FragmentHandler} that prints to stdout
      *
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.aeron.ipc;
+
+import io.aeron.logbuffer.ControlledFragmentHandler;
+import io.aeron.logbuffer.Header;
+import org.agrona.DirectBuffer;
+import org.nd4j.aeron.ipc.chunk.ChunkAccumulator;
+
+/**
+ * NDArray fragment handler for
+ * {@link io.aeron.Subscription#controlledPoll(ControlledFragmentHandler, int)}.
+ *
+ * Handles fragments the same way as {@link NDArrayFragmentHandler}, except that
+ * chunks are offered with {@link ChunkAccumulator#tryAccumulateChunk(org.nd4j.aeron.ipc.chunk.NDArrayMessageChunk)}:
+ * a rejected chunk aborts the poll and stays in the log, to be handled again on the next poll.
+ * Once the subscriber falls far enough behind, publishers are back pressured
+ * (see {@link AeronPublicationMetrics#getBackPressured()}) instead of messages being dropped.
+ */
+public class NDArrayControlledFragmentHandler implements ControlledFragmentHandler {
+    private final NDArrayFragmentHandler fragmentHandler;
+
+    /**
+     * @param ndArrayCallback the callback to invoke for each received message
+     * @param chunkAccumulator the accumulator to use for reassembling chunked messages
+     */
+    public NDArrayControlledFragmentHandler(NDArrayCallback ndArrayCallback, ChunkAccumulator chunkAccumulator) {
+        this.fragmentHandler = new NDArrayFragmentHandler(ndArrayCallback, chunkAccumulator);
+    }
+
+    @Override
+    public Action onFragment(DirectBuffer buffer, int offset, int length, Header header) {
+        return fragmentHandler.handle(buffer, offset, length, true) ? Action.CONTINUE : Action.ABORT;
+    }
+}
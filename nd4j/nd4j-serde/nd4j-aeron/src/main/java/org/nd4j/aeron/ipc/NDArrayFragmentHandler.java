@@ -37,10 +37,19 @@ import java.nio.ByteOrder;
 @Slf4j
 public class NDArrayFragmentHandler implements FragmentHandler {
     private NDArrayCallback ndArrayCallback;
-    private ChunkAccumulator chunkAccumulator = new InMemoryChunkAccumulator();
+    private ChunkAccumulator chunkAccumulator;
 
     public NDArrayFragmentHandler(NDArrayCallback ndArrayCallback) {
+        this(ndArrayCallback, new InMemoryChunkAccumulator());
+    }
+
+    /**
+     * @param ndArrayCallback the callback to invoke for each received message
+     * @param chunkAccumulator the accumulator to use for reassembling chunked messages
+     */
+    public NDArrayFragmentHandler(NDArrayCallback ndArrayCallback, ChunkAccumulator chunkAccumulator) {
         this.ndArrayCallback = ndArrayCallback;
+        this.chunkAccumulator = chunkAccumulator;
     }
 
     /**
@@ -54,6 +63,18 @@ public class NDArrayFragmentHandler implements FragmentHandler {
      */
     @Override
     public void onFragment(DirectBuffer buffer, int offset, int length, Header header) {
+        handle(buffer, offset, length, false);
+    }
+
+    /**
+     * Handle a fragment
+     * @param buffer containing the data.
+     * @param offset at which the data begins.
+     * @param length of the data in bytes.
+     * @param backPressure if true, chunks are offered with {@link ChunkAccumulator#tryAccumulateChunk(NDArrayMessageChunk)}
+     * @return false if the fragment was a chunk rejected by the accumulator, and should be handled again later
+     */
+    boolean handle(DirectBuffer buffer, int offset, int length, boolean backPressure) {
         ByteBuffer byteBuffer = buffer.byteBuffer();
         boolean byteArrayInput = false;
         if (byteBuffer == null) {
@@ -83,9 +104,15 @@ public class NDArrayFragmentHandler implements FragmentHandler {
             if (chunk.getNumChunks() < 1)
                 throw new IllegalStateException("Found invalid number of chunks " + chunk.getNumChunks()
                                 + " on chunk index " + chunk.getChunkIndex());
-            chunkAccumulator.accumulateChunk(chunk);
-            log.info("Number of chunks " + chunk.getNumChunks() + " and number of chunks " + chunk.getNumChunks()
-                            + " for id " + chunk.getId() + " is " + chunkAccumulator.numChunksSoFar(chunk.getId()));
+            if (backPressure) {
+                if (!chunkAccumulator.tryAccumulateChunk(chunk))
+                    return false;
+            } else {
+                chunkAccumulator.accumulateChunk(chunk);
+            }
+            if (log.isDebugEnabled())
+                log.debug("Number of chunks " + chunk.getNumChunks() + " and number of chunks so far for id "
+                                + chunk.getId() + " is " + chunkAccumulator.numChunksSoFar(chunk.getId()));
 
             if (chunkAccumulator.allPresent(chunk.getId())) {
                 NDArrayMessage message = chunkAccumulator.reassemble(chunk.getId());
@@ -96,6 +123,6 @@ public class NDArrayFragmentHandler implements FragmentHandler {
             ndArrayCallback.onNDArrayMessage(message);
         }
 
-
+        return true;
     }
 }
@@ -62,4 +62,21 @@ public interface ChunkAccumulator {
      * @param chunk the chunk to accumulate
      */
     void accumulateChunk(NDArrayMessageChunk chunk);
+
+    /**
+     * Accumulate a chunk if there is room for it.
+     * Accumulators that bound the number of messages
+     * received at once reject chunks of new messages
+     * when the bound is reached, so the caller can
+     * retry later (applying back pressure to the publisher)
+     * instead of dropping data.
+     * By default every chunk is accepted.
+     * @param chunk the chunk to accumulate
+     * @return true if the chunk was accumulated, false if it
+     * was rejected and should be offered again later
+     */
+    default boolean tryAccumulateChunk(NDArrayMessageChunk chunk) {
+        accumulateChunk(chunk);
+        return true;
+    }
 }
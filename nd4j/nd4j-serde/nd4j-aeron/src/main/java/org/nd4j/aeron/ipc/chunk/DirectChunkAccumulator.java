@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.aeron.ipc.chunk;
+
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.nd4j.aeron.ipc.NDArrayControlledFragmentHandler;
+import org.nd4j.aeron.ipc.NDArrayMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ChunkAccumulator} that streams
+ * chunks straight in to a pre allocated off heap
+ * destination buffer as they arrive.
+ *
+ * Unlike {@link InMemoryChunkAccumulator} no chunk is retained
+ * after {@link #accumulateChunk(NDArrayMessageChunk)} returns:
+ * the chunk data is copied to its final position
+ * (chunkIndex * chunkSize) in the destination buffer right away.
+ * This also means the chunk data may safely be a view
+ * of a transient buffer (for example an aeron term buffer).
+ *
+ * The number of partially received messages is bounded by
+ * maxInFlight. When a chunk for a new message arrives and the bound
+ * is reached, {@link #tryAccumulateChunk(NDArrayMessageChunk)} rejects it
+ * (counted in {@link #getRejectedChunks()}) until a message completes:
+ * subscribers polling with a {@link NDArrayControlledFragmentHandler} then leave the
+ * chunk in the log, which back pressures the publisher.
+ * Incomplete messages that received no chunk for staleTimeoutMillis (for example
+ * because their publisher went away) are dropped to make room.
+ * {@link #accumulateChunk(NDArrayMessageChunk)} can't reject chunks: it drops the oldest
+ * incomplete message instead.
+ * Dropped messages are logged and counted in {@link #getDroppedMessages()}.
+ */
+@Slf4j
+public class DirectChunkAccumulator implements ChunkAccumulator {
+    public final static int DEFAULT_MAX_IN_FLIGHT = 4;
+    public final static long DEFAULT_STALE_TIMEOUT_MS = 30000;
+
+    private final int maxInFlight;
+    private final long staleTimeoutNanos;
+    //insertion ordered: the first entry is always the oldest in flight message
+    private final Map<String, PendingMessage> pending = new LinkedHashMap<>();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong rejectedChunks = new AtomicLong();
+    private final AtomicLong bytesAccumulated = new AtomicLong();
+
+    public DirectChunkAccumulator() {
+        this(DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param maxInFlight the maximum number of messages
+     *                    that may be partially received at any one time
+     */
+    public DirectChunkAccumulator(int maxInFlight) {
+        this(maxInFlight, DEFAULT_STALE_TIMEOUT_MS);
+    }
+
+    /**
+     * @param maxInFlight the maximum number of messages
+     *                    that may be partially received at any one time
+     * @param staleTimeoutMillis how long an incomplete message may go without
+     *                           receiving a chunk before it may be dropped to make room
+     */
+    public DirectChunkAccumulator(int maxInFlight, long staleTimeoutMillis) {
+        if (maxInFlight < 1)
+            throw new IllegalArgumentException("Max in flight messages must be >= 1, got " + maxInFlight);
+        if (staleTimeoutMillis < 0)
+            throw new IllegalArgumentException("Stale timeout must be >= 0, got " + staleTimeoutMillis);
+        this.maxInFlight = maxInFlight;
+        this.staleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(staleTimeoutMillis);
+    }
+
+    /**
+     * Returns the number of chunks
+     * accumulated for a given id so far
+     *
+     * @param id the id to get the
+     *           number of chunks for
+     * @return the number of chunks accumulated
+     * for a given id so far
+     */
+    @Override
+    public synchronized int numChunksSoFar(String id) {
+        PendingMessage message = pending.get(id);
+        return message == null ? 0 : message.numReceived;
+    }
+
+    /**
+     * Returns true if all chunks are present
+     *
+     * @param id the id to check for
+     * @return true if all the chunks are present,false otherwise
+     */
+    @Override
+    public synchronized boolean allPresent(String id) {
+        PendingMessage message = pending.get(id);
+        return message != null && message.numReceived == message.numChunks;
+    }
+
+    /**
+     * Reassemble an ndarray message
+     * from the destination buffer.
+     * No copy of the chunk data happens here:
+     * the message is read from the buffer the chunks were written to.
+     *
+     * @param id the id to reassemble
+     * @return the reassembled message
+     */
+    @Override
+    public NDArrayMessage reassemble(String id) {
+        PendingMessage message;
+        synchronized (this) {
+            message = pending.get(id);
+            if (message == null)
+                throw new IllegalStateException("No chunks found for message " + id);
+            if (message.numReceived != message.numChunks)
+                throw new IllegalStateException("Unable to reassemble message chunk " + id + " missing "
+                                + (message.numChunks - message.numReceived) + " chunks");
+            pending.remove(id);
+        }
+
+        message.destination.rewind();
+        return NDArrayMessage.fromBuffer(new UnsafeBuffer(message.destination), 0);
+    }
+
+    /**
+     * Copy the chunk data in to the destination
+     * buffer for the chunk's message, allocating the destination
+     * on the first chunk seen for a given id.
+     * Duplicate chunks are ignored.
+     *
+     * @param chunk the chunk to accumulate
+     */
+    @Override
+    public synchronized void accumulateChunk(NDArrayMessageChunk chunk) {
+        if (!pending.containsKey(chunk.getId()))
+            evict(false);
+        accumulate(chunk);
+    }
+
+    /**
+     * Accumulate a chunk, unless it's the first chunk of a new message
+     * and maxInFlight messages are already partially received
+     * (after dropping stale ones).
+     *
+     * @param chunk the chunk to accumulate
+     * @return true if the chunk was accumulated, false if it was rejected
+     */
+    @Override
+    public synchronized boolean tryAccumulateChunk(NDArrayMessageChunk chunk) {
+        if (!pending.containsKey(chunk.getId()) && !evict(true)) {
+            if (rejectedChunks.getAndIncrement() == 0)
+                log.info("Max in flight messages ({}) reached: rejecting chunks of new messages until one completes",
+                                maxInFlight);
+            return false;
+        }
+        accumulate(chunk);
+        return true;
+    }
+
+    private void accumulate(NDArrayMessageChunk chunk) {
+        String id = chunk.getId();
+        PendingMessage message = pending.get(id);
+        if (message == null) {
+            message = new PendingMessage(chunk.getNumChunks(), chunk.getChunkSize());
+            pending.put(id, message);
+        }
+        message.lastChunkNanos = System.nanoTime();
+
+        if (chunk.getChunkIndex() < 0 || chunk.getChunkIndex() >= message.numChunks)
+            throw new IllegalStateException("Invalid chunk index " + chunk.getChunkIndex() + " for message " + id
+                            + " with " + message.numChunks + " chunks");
+
+        if (message.received.get(chunk.getChunkIndex())) {
+            log.debug("Ignoring duplicate chunk {} for id {}", chunk.getChunkIndex(), id);
+            return;
+        }
+
+        //the data view may extend past the chunk (eg: to the end of a term buffer): only copy chunkSize bytes
+        ByteBuffer data = chunk.getData().duplicate();
+        int length = Math.min(data.remaining(), message.chunkSize);
+        data.limit(data.position() + length);
+
+        ByteBuffer destination = message.destination.duplicate();
+        destination.position(chunk.getChunkIndex() * message.chunkSize);
+        destination.put(data);
+
+        message.received.set(chunk.getChunkIndex());
+        message.numReceived++;
+        bytesAccumulated.addAndGet(length);
+        log.debug("Accumulating chunk {} of {} for id {}", chunk.getChunkIndex(), message.numChunks, id);
+    }
+
+    /**
+     * @return the number of messages currently partially received
+     */
+    public synchronized int numInFlight() {
+        return pending.size();
+    }
+
+    /**
+     * @return the number of incomplete messages dropped to make room for new ones:
+     * stale messages, or (with {@link #accumulateChunk(NDArrayMessageChunk)}) the oldest ones
+     */
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    /**
+     * @return the number of chunks rejected by {@link #tryAccumulateChunk(NDArrayMessageChunk)}
+     * because the max in flight bound was reached
+     */
+    public long getRejectedChunks() {
+        return rejectedChunks.get();
+    }
+
+    /**
+     * @return the total number of chunk bytes written in to destination buffers
+     */
+    public long getBytesAccumulated() {
+        return bytesAccumulated.get();
+    }
+
+    /**
+     * Make room for a new message if the max in flight bound is reached, dropping
+     * incomplete messages from the oldest: only stale ones if staleOnly is true
+     *
+     * @return true if there is room for a new message
+     */
+    private boolean evict(boolean staleOnly) {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<String, PendingMessage>> iter = pending.entrySet().iterator();
+        while (pending.size() >= maxInFlight && iter.hasNext()) {
+            Map.Entry<String, PendingMessage> oldest = iter.next();
+            boolean stale = now - oldest.getValue().lastChunkNanos >= staleTimeoutNanos;
+            if (staleOnly && !stale)
+                continue;
+            iter.remove();
+            droppedMessages.incrementAndGet();
+            log.warn("Dropping incomplete message {} ({} of {} chunks received): max in flight messages ({}) reached{}",
+                            oldest.getKey(), oldest.getValue().numReceived, oldest.getValue().numChunks, maxInFlight,
+                            stale ? " and no chunk received for " + TimeUnit.NANOSECONDS.toMillis(now
+                                            - oldest.getValue().lastChunkNanos) + " ms" : "");
+        }
+        return pending.size() < maxInFlight;
+    }
+
+    private static class PendingMessage {
+        private final int numChunks;
+        private final int chunkSize;
+        private final BitSet received;
+        private final ByteBuffer destination;
+        private int numReceived;
+        private long lastChunkNanos;
+
+        private PendingMessage(int numChunks, int chunkSize) {
+            long capacity = (long) numChunks * chunkSize;
+            if (numChunks < 1 || chunkSize < 1 || capacity > Integer.MAX_VALUE)
+                throw new IllegalStateException("Unable to allocate destination buffer for " + numChunks
+                                + " chunks of size " + chunkSize);
+            this.numChunks = numChunks;
+            this.chunkSize = chunkSize;
+            this.received = new BitSet(numChunks);
+            this.destination = ByteBuffer.allocateDirect((int) capacity).order(ByteOrder.nativeOrder());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.aeron.ipc;
+
+import io.aeron.Aeron;
+import io.aeron.driver.MediaDriver;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.CloseHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.aeron.ipc.chunk.DirectChunkAccumulator;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Throughput of streamed (frame sized, claimed) chunks
+ * over aeron ipc with an embedded media driver,
+ * for arrays from 1 MB to 1 GB.
+ */
+@Slf4j
+@Ignore
+public class StreamingIpcPerformanceTests {
+    private MediaDriver mediaDriver;
+    private Aeron aeron;
+    private String channel = "aeron:ipc";
+    private int streamId = 10;
+
+    @Before
+    public void before() {
+        mediaDriver = MediaDriver.launchEmbedded(AeronUtil.getMediaDriverContext(0));
+        aeron = Aeron.connect(new Aeron.Context().publicationConnectionTimeout(-1)
+                        .aeronDirectoryName(mediaDriver.aeronDirectoryName()).keepAliveInterval(10000)
+                        .errorHandler(err -> err.printStackTrace()));
+    }
+
+    @After
+    public void after() {
+        CloseHelper.quietClose(aeron);
+        CloseHelper.quietClose(mediaDriver);
+    }
+
+    @Test
+    public void testStreamingThroughput() throws Exception {
+        long[] sizesInBytes = {1L << 20, 16L << 20, 128L << 20, 1L << 30};
+        int iterations = 5;
+
+        for (long bytes : sizesInBytes) {
+            INDArray arr = Nd4j.create((int) (bytes / 4)).assign(1.0);
+            final CountDownLatch received = new CountDownLatch(iterations);
+            AtomicBoolean running = new AtomicBoolean(true);
+            DirectChunkAccumulator accumulator = new DirectChunkAccumulator();
+
+            AeronNDArraySubscriber subscriber = AeronNDArraySubscriber.builder().streamId(streamId).aeron(aeron)
+                            .channel(channel).running(running).chunkAccumulator(accumulator)
+                            .ndArrayCallback(new NDArrayCallback() {
+                                @Override
+                                public void onNDArrayMessage(NDArrayMessage message) {
+                                    received.countDown();
+                                }
+
+                                @Override
+                                public void onNDArrayPartial(INDArray arr, long idx, int... dimensions) {
+
+                                }
+
+                                @Override
+                                public void onNDArray(INDArray arr) {
+                                    received.countDown();
+                                }
+                            }).build();
+
+            Thread t = new Thread(() -> {
+                try {
+                    subscriber.launch();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            t.start();
+            while (!subscriber.launched())
+                Thread.sleep(100);
+
+            AeronNDArrayPublisher publisher = AeronNDArrayPublisher.builder().streamId(streamId).channel(channel)
+                            .aeron(aeron).compress(false).streaming(true).publishRetryTimeOut(30000).build();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++)
+                publisher.publish(arr);
+            assertTrue(received.await(10, TimeUnit.MINUTES));
+            long time = System.nanoTime() - start;
+
+            AeronPublicationMetrics metrics = publisher.getMetrics();
+            log.info("Array size: {} bytes; throughput: {} MB/s; {}; dropped messages: {}", bytes,
+                            (bytes * iterations / (1024.0 * 1024.0)) / (time / 1e9), metrics,
+                            accumulator.getDroppedMessages());
+            assertEquals(iterations, metrics.getMessagesSent());
+
+            running.set(false);
+            t.join();
+            CloseHelper.quietClose(publisher);
+            CloseHelper.quietClose(subscriber);
+        }
+    }
+}
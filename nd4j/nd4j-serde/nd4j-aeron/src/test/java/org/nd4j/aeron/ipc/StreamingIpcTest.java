@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.aeron.ipc;
+
+import io.aeron.Aeron;
+import io.aeron.driver.MediaDriver;
+import org.agrona.CloseHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nd4j.aeron.ipc.chunk.DirectChunkAccumulator;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reassembly of an array streamed in frame sized chunks
+ * over aeron ipc with a {@link DirectChunkAccumulator}
+ */
+public class StreamingIpcTest {
+    private MediaDriver mediaDriver;
+    private Aeron aeron;
+    private String channel = "aeron:ipc";
+    private int streamId = 10;
+
+    @Before
+    public void before() {
+        mediaDriver = MediaDriver.launchEmbedded(AeronUtil.getMediaDriverContext(0));
+        aeron = Aeron.connect(new Aeron.Context().publicationConnectionTimeout(-1)
+                        .aeronDirectoryName(mediaDriver.aeronDirectoryName()).keepAliveInterval(10000)
+                        .errorHandler(err -> err.printStackTrace()));
+    }
+
+    @After
+    public void after() {
+        CloseHelper.quietClose(aeron);
+        CloseHelper.quietClose(mediaDriver);
+    }
+
+    @Test(timeout = 60000L)
+    public void testStreamedChunksReassembled() throws Exception {
+        //much bigger than a single frame: sent as many chunks
+        INDArray arr = Nd4j.linspace(1, 100000, 100000);
+        final CountDownLatch received = new CountDownLatch(1);
+        final AtomicReference<INDArray> result = new AtomicReference<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+        DirectChunkAccumulator accumulator = new DirectChunkAccumulator();
+
+        AeronNDArraySubscriber subscriber = AeronNDArraySubscriber.builder().streamId(streamId).aeron(aeron)
+                        .channel(channel).running(running).chunkAccumulator(accumulator)
+                        .ndArrayCallback(new NDArrayCallback() {
+                            @Override
+                            public void onNDArrayMessage(NDArrayMessage message) {
+                                result.set(message.getArr().dup());
+                                received.countDown();
+                            }
+
+                            @Override
+                            public void onNDArrayPartial(INDArray arr, long idx, int... dimensions) {
+
+                            }
+
+                            @Override
+                            public void onNDArray(INDArray arr) {
+                                result.set(arr.dup());
+                                received.countDown();
+                            }
+                        }).build();
+
+        Thread t = new Thread(() -> {
+            try {
+                subscriber.launch();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        t.start();
+        while (!subscriber.launched())
+            Thread.sleep(100);
+
+        AeronNDArrayPublisher publisher = AeronNDArrayPublisher.builder().streamId(streamId).channel(channel)
+                        .aeron(aeron).compress(false).streaming(true).publishRetryTimeOut(30000).build();
+        try {
+            publisher.publish(arr);
+            assertTrue(received.await(30, TimeUnit.SECONDS));
+
+            AeronPublicationMetrics metrics = publisher.getMetrics();
+            assertEquals(1, metrics.getMessagesSent());
+            assertTrue(metrics.getChunksSent() > 1);
+            assertEquals(0, accumulator.getDroppedMessages());
+            assertEquals(0, accumulator.numInFlight());
+            assertEquals(arr, result.get());
+        } finally {
+            running.set(false);
+            t.join();
+            CloseHelper.quietClose(publisher);
+            CloseHelper.quietClose(subscriber);
+        }
+    }
+}
@@ -21,6 +21,8 @@ import org.nd4j.aeron.ipc.NDArrayMessage;
 import org.nd4j.linalg.factory.Nd4j;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by agibsonccc on 11/20/16.
@@ -41,4 +43,88 @@ public class ChunkAccumulatorTests {
         assertEquals(message, message1);
     }
 
+    @Test
+    public void testDirectAccumulatorOutOfOrder() {
+        DirectChunkAccumulator chunkAccumulator = new DirectChunkAccumulator();
+        NDArrayMessage message = NDArrayMessage.wholeArrayUpdate(Nd4j.linspace(1, 1000, 1000));
+        int chunkSize = 128;
+        NDArrayMessageChunk[] chunks = NDArrayMessage.chunks(message, chunkSize);
+        for (int i = chunks.length - 1; i >= 0; i--) {
+            assertFalse(chunkAccumulator.allPresent(chunks[0].getId()));
+            chunkAccumulator.accumulateChunk(chunks[i]);
+        }
+
+        //duplicates are ignored
+        chunkAccumulator.accumulateChunk(chunks[0]);
+        assertEquals(chunks.length, chunkAccumulator.numChunksSoFar(chunks[0].getId()));
+        assertTrue(chunkAccumulator.allPresent(chunks[0].getId()));
+
+        NDArrayMessage message1 = chunkAccumulator.reassemble(chunks[0].getId());
+        assertEquals(message, message1);
+        assertEquals(0, chunkAccumulator.numInFlight());
+    }
+
+    @Test
+    public void testDirectAccumulatorMaxInFlight() {
+        DirectChunkAccumulator chunkAccumulator = new DirectChunkAccumulator(2);
+        int chunkSize = 128;
+        NDArrayMessageChunk[][] chunks = new NDArrayMessageChunk[3][];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = NDArrayMessage.chunks(NDArrayMessage.wholeArrayUpdate(Nd4j.ones(1000)), chunkSize);
+            chunkAccumulator.accumulateChunk(chunks[i][0]);
+        }
+
+        //the oldest incomplete message is dropped
+        assertEquals(2, chunkAccumulator.numInFlight());
+        assertEquals(1, chunkAccumulator.getDroppedMessages());
+        assertEquals(0, chunkAccumulator.numChunksSoFar(chunks[0][0].getId()));
+
+        for (int i = 1; i < chunks[2].length; i++)
+            chunkAccumulator.accumulateChunk(chunks[2][i]);
+        assertTrue(chunkAccumulator.allPresent(chunks[2][0].getId()));
+        assertEquals(Nd4j.ones(1000), chunkAccumulator.reassemble(chunks[2][0].getId()).getArr());
+    }
+
+    @Test
+    public void testDirectAccumulatorBackPressure() {
+        DirectChunkAccumulator chunkAccumulator = new DirectChunkAccumulator(2, 60000);
+        int chunkSize = 128;
+        NDArrayMessageChunk[][] chunks = new NDArrayMessageChunk[3][];
+        for (int i = 0; i < chunks.length; i++)
+            chunks[i] = NDArrayMessage.chunks(NDArrayMessage.wholeArrayUpdate(Nd4j.ones(1000)), chunkSize);
+
+        assertTrue(chunkAccumulator.tryAccumulateChunk(chunks[0][0]));
+        assertTrue(chunkAccumulator.tryAccumulateChunk(chunks[1][0]));
+        //no room for a new message: rejected, nothing is dropped
+        assertFalse(chunkAccumulator.tryAccumulateChunk(chunks[2][0]));
+        assertEquals(1, chunkAccumulator.getRejectedChunks());
+        assertEquals(0, chunkAccumulator.getDroppedMessages());
+        assertEquals(0, chunkAccumulator.numChunksSoFar(chunks[2][0].getId()));
+
+        //chunks of messages in flight are still accepted
+        for (int i = 1; i < chunks[0].length; i++)
+            assertTrue(chunkAccumulator.tryAccumulateChunk(chunks[0][i]));
+        assertEquals(Nd4j.ones(1000), chunkAccumulator.reassemble(chunks[0][0].getId()).getArr());
+
+        //once a message completes, the rejected chunk is accepted
+        assertTrue(chunkAccumulator.tryAccumulateChunk(chunks[2][0]));
+        assertEquals(2, chunkAccumulator.numInFlight());
+    }
+
+    @Test
+    public void testDirectAccumulatorDropsStale() throws Exception {
+        DirectChunkAccumulator chunkAccumulator = new DirectChunkAccumulator(1, 10);
+        int chunkSize = 128;
+        NDArrayMessageChunk[] first = NDArrayMessage.chunks(NDArrayMessage.wholeArrayUpdate(Nd4j.ones(1000)), chunkSize);
+        NDArrayMessageChunk[] second = NDArrayMessage.chunks(NDArrayMessage.wholeArrayUpdate(Nd4j.ones(1000)), chunkSize);
+
+        assertTrue(chunkAccumulator.tryAccumulateChunk(first[0]));
+        Thread.sleep(50);
+        //the first message received no chunk for longer than the stale timeout: dropped to make room
+        assertTrue(chunkAccumulator.tryAccumulateChunk(second[0]));
+        assertEquals(1, chunkAccumulator.getDroppedMessages());
+        assertEquals(0, chunkAccumulator.getRejectedChunks());
+        assertEquals(0, chunkAccumulator.numChunksSoFar(first[0].getId()));
+    }
+
 }
@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.arrow;
+
+import com.google.flatbuffers.FlatBufferBuilder;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.apache.arrow.flatbuf.Field;
+import org.apache.arrow.flatbuf.FixedSizeList;
+import org.apache.arrow.flatbuf.FloatingPoint;
+import org.apache.arrow.flatbuf.Int;
+import org.apache.arrow.flatbuf.KeyValue;
+import org.apache.arrow.flatbuf.Precision;
+import org.apache.arrow.flatbuf.Type;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.Arrays;
+
+/**
+ * Describes one array of a minibatch (for example the first features array)
+ * as an arrow column.
+ *
+ * Each row of the column is one example: the column is a
+ * {@link FixedSizeList} of (number of elements per example) values of the array's data type.
+ * The per example shape is stored in the field's custom metadata under the key "shape",
+ * so the data buffer of the list's child is exactly the c ordered buffer of the {@link INDArray}.
+ *
+ * Column names are of the form group_index, for example features_0 or labelsMask_1.
+ */
+@Data
+@AllArgsConstructor
+public class ArrowBatchColumn {
+    public final static String FEATURES = "features";
+    public final static String LABELS = "labels";
+    public final static String FEATURES_MASK = "featuresMask";
+    public final static String LABELS_MASK = "labelsMask";
+    private final static String SHAPE_KEY = "shape";
+    private final static String CHILD_NAME = "item";
+
+    private String name;
+    private DataBuffer.Type dataType;
+    //the shape of a single example: the array shape without the minibatch dimension
+    private long[] exampleShape;
+
+    /**
+     * Create the column for an array in a minibatch
+     * @param group the group of the array (features, labels, featuresMask or labelsMask)
+     * @param index the index of the array in its group
+     * @param arr the array
+     * @return the column describing the array
+     */
+    public static ArrowBatchColumn forArray(String group, int index, INDArray arr) {
+        long[] shape = arr.shape();
+        return new ArrowBatchColumn(group + "_" + index, arr.data().dataType(), Arrays.copyOfRange(shape, 1, shape.length));
+    }
+
+    /**
+     * @return the group (features, labels, featuresMask or labelsMask) of this column
+     */
+    public String group() {
+        return name.substring(0, name.lastIndexOf('_'));
+    }
+
+    /**
+     * @return the index of this column within its group
+     */
+    public int index() {
+        return Integer.parseInt(name.substring(name.lastIndexOf('_') + 1));
+    }
+
+    /**
+     * @return the number of elements per example
+     */
+    public long listSize() {
+        long ret = 1;
+        for (long l : exampleShape)
+            ret *= l;
+        return ret;
+    }
+
+    /**
+     * @param numExamples the number of examples in the batch
+     * @return the full array shape for the given number of examples
+     */
+    public long[] arrayShape(long numExamples) {
+        long[] ret = new long[exampleShape.length + 1];
+        ret[0] = numExamples;
+        System.arraycopy(exampleShape, 0, ret, 1, exampleShape.length);
+        return ret;
+    }
+
+    /**
+     * Add this column as a {@link Field} to the given builder
+     * @param bufferBuilder the buffer builder in use
+     * @return the offset of the field
+     */
+    public int createField(FlatBufferBuilder bufferBuilder) {
+        int childName = bufferBuilder.createString(CHILD_NAME);
+        int childType;
+        byte childTypeType;
+        switch (dataType) {
+            case HALF:
+                childTypeType = Type.FloatingPoint;
+                childType = FloatingPoint.createFloatingPoint(bufferBuilder, Precision.HALF);
+                break;
+            case FLOAT:
+                childTypeType = Type.FloatingPoint;
+                childType = FloatingPoint.createFloatingPoint(bufferBuilder, Precision.SINGLE);
+                break;
+            case DOUBLE:
+                childTypeType = Type.FloatingPoint;
+                childType = FloatingPoint.createFloatingPoint(bufferBuilder, Precision.DOUBLE);
+                break;
+            case INT:
+                childTypeType = Type.Int;
+                childType = Int.createInt(bufferBuilder, 32, true);
+                break;
+            case LONG:
+                childTypeType = Type.Int;
+                childType = Int.createInt(bufferBuilder, 64, true);
+                break;
+            default:
+                throw new IllegalArgumentException("Unable to create arrow column for data type " + dataType);
+        }
+        int childChildren = Field.createChildrenVector(bufferBuilder, new int[0]);
+        int child = Field.createField(bufferBuilder, childName, false, childTypeType, childType, 0, childChildren, 0);
+
+        int fieldName = bufferBuilder.createString(name);
+        int listType = FixedSizeList.createFixedSizeList(bufferBuilder, (int) listSize());
+        int children = Field.createChildrenVector(bufferBuilder, new int[] {child});
+        int shapeKey = bufferBuilder.createString(SHAPE_KEY);
+        int shapeValue = bufferBuilder.createString(shapeToString(exampleShape));
+        int metadata = Field.createCustomMetadataVector(bufferBuilder,
+                        new int[] {KeyValue.createKeyValue(bufferBuilder, shapeKey, shapeValue)});
+        return Field.createField(bufferBuilder, fieldName, false, Type.FixedSizeList, listType, 0, children, metadata);
+    }
+
+    /**
+     * Create a column from a {@link Field} created with {@link #createField(FlatBufferBuilder)}
+     * @param field the field to read
+     * @return the equivalent column
+     */
+    public static ArrowBatchColumn fromField(Field field) {
+        if (field.typeType() != Type.FixedSizeList || field.childrenLength() != 1)
+            throw new IllegalArgumentException("Field " + field.name() + " is not a fixed size list column");
+
+        long[] exampleShape = null;
+        for (int i = 0; i < field.customMetadataLength(); i++) {
+            KeyValue keyValue = field.customMetadata(i);
+            if (SHAPE_KEY.equals(keyValue.key()))
+                exampleShape = shapeFromString(keyValue.value());
+        }
+        if (exampleShape == null) {
+            FixedSizeList list = (FixedSizeList) field.type(new FixedSizeList());
+            exampleShape = new long[] {list.listSize()};
+        }
+
+        Field child = field.children(0);
+        DataBuffer.Type dataType;
+        if (child.typeType() == Type.FloatingPoint) {
+            FloatingPoint floatingPoint = (FloatingPoint) child.type(new FloatingPoint());
+            if (floatingPoint.precision() == Precision.HALF)
+                dataType = DataBuffer.Type.HALF;
+            else if (floatingPoint.precision() == Precision.SINGLE)
+                dataType = DataBuffer.Type.FLOAT;
+            else
+                dataType = DataBuffer.Type.DOUBLE;
+        } else if (child.typeType() == Type.Int) {
+            Int intType = (Int) child.type(new Int());
+            dataType = intType.bitWidth() == 64 ? DataBuffer.Type.LONG : DataBuffer.Type.INT;
+        } else {
+            throw new IllegalArgumentException("Unsupported child type " + Type.name(child.typeType()) + " for field "
+                            + field.name());
+        }
+
+        return new ArrowBatchColumn(field.name(), dataType, exampleShape);
+    }
+
+    private static String shapeToString(long[] shape) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < shape.length; i++) {
+            if (i > 0)
+                sb.append(",");
+            sb.append(shape[i]);
+        }
+        return sb.toString();
+    }
+
+    private static long[] shapeFromString(String shape) {
+        if (shape.isEmpty())
+            return new long[0];
+        String[] split = shape.split(",");
+        long[] ret = new long[split.length];
+        for (int i = 0; i < split.length; i++)
+            ret[i] = Long.parseLong(split[i]);
+        return ret;
+    }
+}
@@ -0,0 +1,352 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.arrow;
+
+import com.google.common.collect.MapMaker;
+import org.apache.arrow.flatbuf.Block;
+import org.apache.arrow.flatbuf.Buffer;
+import org.apache.arrow.flatbuf.Endianness;
+import org.apache.arrow.flatbuf.Footer;
+import org.apache.arrow.flatbuf.Message;
+import org.apache.arrow.flatbuf.MessageHeader;
+import org.apache.arrow.flatbuf.RecordBatch;
+import org.apache.arrow.flatbuf.Schema;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.Pointer;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.MultiDataSet;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.ReadOnlyFileSystemException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads minibatches written by {@link ArrowBatchWriter}.
+ *
+ * Files in the arrow file format are memory mapped: {@link #getMultiDataSet(int)}
+ * only maps the requested record batch, and the returned arrays are backed directly
+ * by the mapped file (no copy is made). The mapping is private (copy on write): modifying
+ * the arrays in place never modifies the file. Private mappings need the file to be opened
+ * for writing: if that isn't possible (for example for read only files), each record batch
+ * is copied in to an off heap buffer instead.
+ *
+ * Arrow streams are read with {@link #readStream(InputStream)}, which reads each record batch body
+ * straight in to an off heap buffer that then backs the arrays.
+ *
+ * Arrays are read in native byte order: files written on a machine with a different byte order are rejected.
+ */
+public class ArrowBatchReader implements Closeable {
+    //Wrapping a nio buffer doesn't keep it reachable, and the mapping (or direct memory) is released when it is
+    //garbage collected: keep each record batch body reachable from the data buffers backed by it
+    private static final Map<DataBuffer, ByteBuffer> BODIES = new MapMaker().weakKeys().concurrencyLevel(1).makeMap();
+
+    private final FileChannel channel;
+    private final boolean mapped;
+    private final List<ArrowBatchColumn> columns;
+    private final Block[] blocks;
+
+    /**
+     * Open an arrow file written with {@link ArrowBatchWriter#forFile(File)}
+     * @param file the file to read
+     */
+    public ArrowBatchReader(File file) throws IOException {
+        FileChannel channel;
+        boolean mapped;
+        try {
+            //The file is never written to: write access is only needed for private mappings
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            mapped = true;
+        } catch (AccessDeniedException | ReadOnlyFileSystemException e) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            mapped = false;
+        }
+        this.channel = channel;
+        this.mapped = mapped;
+        try {
+            long size = channel.size();
+            int magicLength = ArrowBatchWriter.MAGIC.length;
+            if (size < 2 * magicLength + 4)
+                throw new IllegalStateException("File " + file + " is too small to be an arrow file");
+
+            ByteBuffer trailer = readFully(channel, size - magicLength - 4, magicLength + 4);
+            byte[] magic = new byte[magicLength];
+            trailer.position(4);
+            trailer.get(magic);
+            if (!Arrays.equals(magic, ArrowBatchWriter.MAGIC))
+                throw new IllegalStateException("File " + file + " is not an arrow file: invalid magic bytes");
+
+            int footerLength = trailer.getInt(0);
+            ByteBuffer footerBuffer = readFully(channel, size - magicLength - 4 - footerLength, footerLength);
+            Footer footer = Footer.getRootAsFooter(footerBuffer);
+            this.columns = columnsFor(footer.schema());
+            this.blocks = new Block[footer.recordBatchesLength()];
+            for (int i = 0; i < blocks.length; i++)
+                blocks[i] = footer.recordBatches(i);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of minibatches in the file
+     */
+    public int numBatches() {
+        return blocks.length;
+    }
+
+    /**
+     * @return the columns (one per array) of the minibatches
+     */
+    public List<ArrowBatchColumn> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Get a minibatch from the file. The arrays are backed by a private mapping of the file (or, if the file
+     * couldn't be opened for writing, by a copy of the record batch).
+     * @param i the index of the minibatch
+     * @return the minibatch
+     */
+    public MultiDataSet getMultiDataSet(int i) throws IOException {
+        if (i < 0 || i >= blocks.length)
+            throw new IllegalArgumentException("Invalid batch index " + i + ": file has " + blocks.length + " batches");
+        Block block = blocks[i];
+        ByteBuffer metadata = readFully(channel, block.offset(), block.metaDataLength());
+        RecordBatch recordBatch = readRecordBatch(metadata);
+        long bodyOffset = block.offset() + block.metaDataLength();
+        ByteBuffer body;
+        if (mapped) {
+            body = channel.map(FileChannel.MapMode.PRIVATE, bodyOffset, block.bodyLength());
+        } else {
+            body = ByteBuffer.allocateDirect((int) block.bodyLength());
+            while (body.hasRemaining()) {
+                if (channel.read(body, bodyOffset + body.position()) < 0)
+                    throw new EOFException("Unexpected end of arrow file");
+            }
+            body.flip();
+        }
+        return toMultiDataSet(columns, recordBatch, body);
+    }
+
+    /**
+     * Get a minibatch written with {@link ArrowBatchWriter#write(org.nd4j.linalg.dataset.api.DataSet)}
+     * @param i the index of the minibatch
+     * @return the minibatch
+     */
+    public DataSet getDataSet(int i) throws IOException {
+        return toDataSet(getMultiDataSet(i));
+    }
+
+    /**
+     * Read all minibatches from an arrow stream written with {@link ArrowBatchWriter#forStream(java.io.OutputStream)}
+     * @param inputStream the stream to read from
+     * @return the minibatches in the stream
+     */
+    public static List<MultiDataSet> readStream(InputStream inputStream) throws IOException {
+        ReadableByteChannel channel = Channels.newChannel(inputStream);
+        List<ArrowBatchColumn> columns = null;
+        List<MultiDataSet> ret = new ArrayList<>();
+        while (true) {
+            ByteBuffer lengthBuffer = readFully(channel, 4, false);
+            if (lengthBuffer == null)
+                break;
+            int metadataLength = lengthBuffer.getInt(0);
+            if (metadataLength == 0)
+                break;
+
+            Message message = Message.getRootAsMessage(readFully(channel, metadataLength, false));
+            if (message.headerType() == MessageHeader.Schema) {
+                columns = columnsFor((Schema) message.header(new Schema()));
+            } else if (message.headerType() == MessageHeader.RecordBatch) {
+                if (columns == null)
+                    throw new IllegalStateException("Invalid arrow stream: record batch before schema");
+                RecordBatch recordBatch = (RecordBatch) message.header(new RecordBatch());
+                ByteBuffer body = readFully(channel, (int) message.bodyLength(), true);
+                ret.add(toMultiDataSet(columns, recordBatch, body));
+            } else {
+                throw new IllegalStateException("Unsupported arrow message type "
+                                + MessageHeader.name(message.headerType()));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Convert a {@link MultiDataSet} with at most one array per group to a {@link DataSet}
+     * @param multiDataSet the multi data set to convert
+     * @return the equivalent data set
+     */
+    public static DataSet toDataSet(MultiDataSet multiDataSet) {
+        if (multiDataSet.numFeatureArrays() > 1 || multiDataSet.numLabelsArrays() > 1)
+            throw new IllegalStateException("Unable to convert minibatch with " + multiDataSet.numFeatureArrays()
+                            + " features arrays and " + multiDataSet.numLabelsArrays()
+                            + " labels arrays to a DataSet");
+        return new DataSet(first(multiDataSet.getFeatures()), first(multiDataSet.getLabels()),
+                        first(multiDataSet.getFeaturesMaskArrays()), first(multiDataSet.getLabelsMaskArrays()));
+    }
+
+    private static INDArray first(INDArray[] arrays) {
+        return arrays == null || arrays.length == 0 ? null : arrays[0];
+    }
+
+    private static List<ArrowBatchColumn> columnsFor(Schema schema) {
+        ByteOrder byteOrder = schema.endianness() == Endianness.Little ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        if (byteOrder != ByteOrder.nativeOrder())
+            throw new IllegalStateException("Unable to read arrow data written in " + byteOrder + " byte order: native"
+                            + " byte order is " + ByteOrder.nativeOrder());
+        List<ArrowBatchColumn> ret = new ArrayList<>();
+        for (int i = 0; i < schema.fieldsLength(); i++)
+            ret.add(ArrowBatchColumn.fromField(schema.fields(i)));
+        return ret;
+    }
+
+    private static RecordBatch readRecordBatch(ByteBuffer encapsulated) {
+        //encapsulated message: int32 metadata length followed by the flatbuffer message
+        encapsulated.order(ByteOrder.LITTLE_ENDIAN);
+        int metadataLength = encapsulated.getInt(0);
+        encapsulated.position(4);
+        encapsulated.limit(4 + metadataLength);
+        Message message = Message.getRootAsMessage(encapsulated.slice());
+        if (message.headerType() != MessageHeader.RecordBatch)
+            throw new IllegalStateException("Expected a record batch message but got "
+                            + MessageHeader.name(message.headerType()));
+        return (RecordBatch) message.header(new RecordBatch());
+    }
+
+    private static MultiDataSet toMultiDataSet(List<ArrowBatchColumn> columns, RecordBatch recordBatch,
+                    ByteBuffer body) {
+        if (recordBatch.buffersLength() != 3 * columns.size())
+            throw new IllegalStateException("Expected " + 3 * columns.size() + " buffers for " + columns.size()
+                            + " columns but got " + recordBatch.buffersLength());
+
+        long numExamples = recordBatch.length();
+        List<INDArray> features = new ArrayList<>();
+        List<INDArray> labels = new ArrayList<>();
+        List<INDArray> featuresMasks = new ArrayList<>();
+        List<INDArray> labelsMasks = new ArrayList<>();
+        for (int i = 0; i < columns.size(); i++) {
+            ArrowBatchColumn column = columns.get(i);
+            Buffer values = recordBatch.buffers(3 * i + 2);
+            long length = numExamples * column.listSize();
+            ByteBuffer slice = body.duplicate();
+            slice.position((int) values.offset());
+            slice.limit((int) (values.offset() + values.length()));
+            DataBuffer buffer = createBuffer(slice.slice().order(ByteOrder.nativeOrder()), column.getDataType(),
+                            length);
+            if (buffer.dataType() != DataBuffer.Type.HALF)
+                BODIES.put(buffer, body);
+            INDArray arr = Nd4j.create(buffer, column.arrayShape(numExamples));
+
+            switch (column.group()) {
+                case ArrowBatchColumn.FEATURES:
+                    add(features, column.index(), arr);
+                    break;
+                case ArrowBatchColumn.LABELS:
+                    add(labels, column.index(), arr);
+                    break;
+                case ArrowBatchColumn.FEATURES_MASK:
+                    add(featuresMasks, column.index(), arr);
+                    break;
+                case ArrowBatchColumn.LABELS_MASK:
+                    add(labelsMasks, column.index(), arr);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown column " + column.getName());
+            }
+        }
+
+        //Masks are positional (mask i is for features/labels array i): null masks aren't written, keep their slots
+        pad(featuresMasks, features.size());
+        pad(labelsMasks, labels.size());
+        return new MultiDataSet(toArray(features), toArray(labels), toArray(featuresMasks), toArray(labelsMasks));
+    }
+
+    private static DataBuffer createBuffer(ByteBuffer data, DataBuffer.Type dataType, long length) {
+        if (dataType != DataBuffer.Type.HALF)
+            return Nd4j.createBuffer(data, dataType, (int) length);
+
+        //half precision buffers can't wrap a nio buffer: copy
+        DataBuffer ret = Nd4j.getDataBufferFactory().createHalf(length, false);
+        Pointer.memcpy(ret.addressPointer(), new BytePointer(data), length * ret.getElementSize());
+        return ret;
+    }
+
+    private static void add(List<INDArray> group, int index, INDArray arr) {
+        while (group.size() <= index)
+            group.add(null);
+        group.set(index, arr);
+    }
+
+    private static void pad(List<INDArray> masks, int size) {
+        while (!masks.isEmpty() && masks.size() < size)
+            masks.add(null);
+    }
+
+    private static INDArray[] toArray(List<INDArray> group) {
+        return group.isEmpty() ? null : group.toArray(new INDArray[group.size()]);
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer ret = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (ret.hasRemaining()) {
+            if (channel.read(ret, position + ret.position()) < 0)
+                throw new EOFException("Unexpected end of arrow file");
+        }
+        ret.flip();
+        return ret;
+    }
+
+    /**
+     * @return the bytes read or null if the stream ended before any byte was read
+     */
+    private static ByteBuffer readFully(ReadableByteChannel channel, int length, boolean direct) throws IOException {
+        ByteBuffer ret = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+        ret.order(ByteOrder.LITTLE_ENDIAN);
+        while (ret.hasRemaining()) {
+            if (channel.read(ret) < 0) {
+                if (ret.position() == 0)
+                    return null;
+                throw new EOFException("Unexpected end of arrow stream");
+            }
+        }
+        ret.flip();
+        return ret;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.arrow;
+
+import com.google.flatbuffers.FlatBufferBuilder;
+import org.apache.arrow.flatbuf.Block;
+import org.apache.arrow.flatbuf.Buffer;
+import org.apache.arrow.flatbuf.Endianness;
+import org.apache.arrow.flatbuf.FieldNode;
+import org.apache.arrow.flatbuf.Footer;
+import org.apache.arrow.flatbuf.Message;
+import org.apache.arrow.flatbuf.MessageHeader;
+import org.apache.arrow.flatbuf.MetadataVersion;
+import org.apache.arrow.flatbuf.RecordBatch;
+import org.apache.arrow.flatbuf.Schema;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.DataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes {@link DataSet}s and {@link MultiDataSet}s as arrow record batches
+ * in either the arrow streaming format or the arrow (random access) file format.
+ *
+ * Every feature, label and mask array becomes one column (see {@link ArrowBatchColumn})
+ * and every minibatch becomes one record batch.
+ * The record batch body is written straight from the arrays' off heap buffers
+ * (no copy is made on the java side), except for views and 'f' ordered arrays
+ * which are first duplicated in to 'c' order. The body is written in native byte order,
+ * which is recorded in the schema.
+ *
+ * All minibatches written with the same writer must have the same columns (array shapes
+ * may only differ in the number of examples). Use {@link ArrowBatchReader} to read the batches back.
+ */
+public class ArrowBatchWriter implements Closeable {
+    public final static byte[] MAGIC = {'A', 'R', 'R', 'O', 'W', '1'};
+    //body buffers and metadata are aligned to 8 bytes
+    public final static int ALIGNMENT = 8;
+
+    private final WritableByteChannel channel;
+    private final boolean fileFormat;
+    private final List<long[]> recordBatchBlocks = new ArrayList<>();
+    private List<ArrowBatchColumn> columns;
+    private long position;
+    private boolean closed;
+
+    protected ArrowBatchWriter(WritableByteChannel channel, boolean fileFormat) throws IOException {
+        this.channel = channel;
+        this.fileFormat = fileFormat;
+        if (fileFormat) {
+            writeFully(ByteBuffer.wrap(MAGIC));
+            writePadding(ALIGNMENT - MAGIC.length);
+        }
+    }
+
+    /**
+     * Create a writer for the arrow streaming format
+     * @param outputStream the stream to write to. It is closed when the writer is closed.
+     * @return the writer
+     */
+    public static ArrowBatchWriter forStream(OutputStream outputStream) throws IOException {
+        return new ArrowBatchWriter(Channels.newChannel(outputStream), false);
+    }
+
+    /**
+     * Create a writer for the arrow file format. Files written
+     * in this format can be memory mapped with {@link ArrowBatchReader#ArrowBatchReader(File)}
+     * @param file the file to write to
+     * @return the writer
+     */
+    public static ArrowBatchWriter forFile(File file) throws IOException {
+        return new ArrowBatchWriter(new FileOutputStream(file).getChannel(), true);
+    }
+
+    /**
+     * Write a {@link DataSet} as one record batch
+     * @param dataSet the data set to write
+     */
+    public void write(DataSet dataSet) throws IOException {
+        writeBatch(new INDArray[][] {{dataSet.getFeatures()}, {dataSet.getLabels()},
+                        {dataSet.getFeaturesMaskArray()}, {dataSet.getLabelsMaskArray()}});
+    }
+
+    /**
+     * Write a {@link MultiDataSet} as one record batch
+     * @param multiDataSet the multi data set to write
+     */
+    public void write(MultiDataSet multiDataSet) throws IOException {
+        writeBatch(new INDArray[][] {multiDataSet.getFeatures(), multiDataSet.getLabels(),
+                        multiDataSet.getFeaturesMaskArrays(), multiDataSet.getLabelsMaskArrays()});
+    }
+
+    private void writeBatch(INDArray[][] groups) throws IOException {
+        String[] groupNames = {ArrowBatchColumn.FEATURES, ArrowBatchColumn.LABELS, ArrowBatchColumn.FEATURES_MASK,
+                        ArrowBatchColumn.LABELS_MASK};
+        List<ArrowBatchColumn> batchColumns = new ArrayList<>();
+        List<INDArray> arrays = new ArrayList<>();
+        for (int g = 0; g < groups.length; g++) {
+            if (groups[g] == null)
+                continue;
+            for (int i = 0; i < groups[g].length; i++) {
+                INDArray arr = groups[g][i];
+                if (arr == null)
+                    continue;
+                if (arr.isView() || arr.ordering() != 'c' || arr.offset() != 0 || arr.data().length() != arr.length())
+                    arr = arr.dup('c');
+                batchColumns.add(ArrowBatchColumn.forArray(groupNames[g], i, arr));
+                arrays.add(arr);
+            }
+        }
+
+        if (arrays.isEmpty())
+            throw new IllegalArgumentException("Unable to write a minibatch without any arrays");
+
+        if (columns == null) {
+            columns = batchColumns;
+            FlatBufferBuilder bufferBuilder = new FlatBufferBuilder(1024);
+            int schema = createSchema(bufferBuilder);
+            writeMessage(bufferBuilder, MessageHeader.Schema, schema, 0);
+        } else if (!columns.equals(batchColumns)) {
+            throw new IllegalStateException("All minibatches must have the same arrays with the same per example shapes."
+                            + " Expected " + columns + " but got " + batchColumns);
+        }
+
+        long numExamples = arrays.get(0).size(0);
+        long[] bodyOffsets = new long[arrays.size()];
+        long[] bodyLengths = new long[arrays.size()];
+        long bodyLength = 0;
+        for (int i = 0; i < arrays.size(); i++) {
+            INDArray arr = arrays.get(i);
+            if (arr.size(0) != numExamples)
+                throw new IllegalArgumentException("All arrays must have the same number of examples: expected "
+                                + numExamples + " but got " + arr.size(0) + " for column " + columns.get(i).getName());
+            bodyOffsets[i] = bodyLength;
+            bodyLengths[i] = arr.length() * arr.data().getElementSize();
+            bodyLength += pad(bodyLengths[i]);
+        }
+
+        FlatBufferBuilder bufferBuilder = new FlatBufferBuilder(1024);
+        //structs are prepended: add them in reverse order
+        RecordBatch.startNodesVector(bufferBuilder, 2 * arrays.size());
+        for (int i = arrays.size() - 1; i >= 0; i--) {
+            FieldNode.createFieldNode(bufferBuilder, arrays.get(i).length(), 0);
+            FieldNode.createFieldNode(bufferBuilder, numExamples, 0);
+        }
+        int nodes = bufferBuilder.endVector();
+
+        //per column: list validity, values validity (both empty: no nulls) and the values themselves
+        RecordBatch.startBuffersVector(bufferBuilder, 3 * arrays.size());
+        for (int i = arrays.size() - 1; i >= 0; i--) {
+            Buffer.createBuffer(bufferBuilder, bodyOffsets[i], bodyLengths[i]);
+            Buffer.createBuffer(bufferBuilder, bodyOffsets[i], 0);
+            Buffer.createBuffer(bufferBuilder, bodyOffsets[i], 0);
+        }
+        int buffers = bufferBuilder.endVector();
+        int recordBatch = RecordBatch.createRecordBatch(bufferBuilder, numExamples, nodes, buffers);
+        long[] block = writeMessage(bufferBuilder, MessageHeader.RecordBatch, recordBatch, bodyLength);
+        recordBatchBlocks.add(block);
+
+        for (int i = 0; i < arrays.size(); i++) {
+            ByteBuffer data = arrays.get(i).data().asNio().duplicate();
+            data.clear();
+            data.limit((int) bodyLengths[i]);
+            writeFully(data);
+            writePadding(pad(bodyLengths[i]) - bodyLengths[i]);
+        }
+    }
+
+    private int createSchema(FlatBufferBuilder bufferBuilder) {
+        int[] fields = new int[columns.size()];
+        for (int i = 0; i < fields.length; i++)
+            fields[i] = columns.get(i).createField(bufferBuilder);
+        int fieldsOffset = Schema.createFieldsVector(bufferBuilder, fields);
+        //the body is written straight from the off heap buffers, in native byte order
+        short endianness = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? Endianness.Little : Endianness.Big;
+        return Schema.createSchema(bufferBuilder, endianness, fieldsOffset, 0);
+    }
+
+    /**
+     * Write an encapsulated message: the metadata length, the flatbuffer {@link Message} and padding.
+     * @return the block (offset, metadata length, body length) of the message
+     */
+    private long[] writeMessage(FlatBufferBuilder bufferBuilder, byte headerType, int header, long bodyLength)
+                    throws IOException {
+        int message = Message.createMessage(bufferBuilder, MetadataVersion.V4, headerType, header, bodyLength);
+        bufferBuilder.finish(message);
+        ByteBuffer metadata = bufferBuilder.dataBuffer();
+        int metadataLength = metadata.remaining();
+        int paddedLength = (int) pad(4 + metadataLength) - 4;
+
+        long offset = position;
+        writeInt(paddedLength);
+        writeFully(metadata);
+        writePadding(paddedLength - metadataLength);
+        return new long[] {offset, 4 + paddedLength, bodyLength};
+    }
+
+    private void writeFooter() throws IOException {
+        FlatBufferBuilder bufferBuilder = new FlatBufferBuilder(1024);
+        int schema = createSchema(bufferBuilder);
+        Footer.startDictionariesVector(bufferBuilder, 0);
+        int dictionaries = bufferBuilder.endVector();
+        Footer.startRecordBatchesVector(bufferBuilder, recordBatchBlocks.size());
+        for (int i = recordBatchBlocks.size() - 1; i >= 0; i--) {
+            long[] block = recordBatchBlocks.get(i);
+            Block.createBlock(bufferBuilder, block[0], (int) block[1], block[2]);
+        }
+        int recordBatches = bufferBuilder.endVector();
+        int footer = Footer.createFooter(bufferBuilder, MetadataVersion.V4, schema, dictionaries, recordBatches);
+        bufferBuilder.finish(footer);
+        ByteBuffer footerBuffer = bufferBuilder.dataBuffer();
+        int footerLength = footerBuffer.remaining();
+        writeFully(footerBuffer);
+        writeInt(footerLength);
+        writeFully(ByteBuffer.wrap(MAGIC));
+    }
+
+    private void writeInt(int value) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(value);
+        buffer.flip();
+        writeFully(buffer);
+    }
+
+    private void writePadding(long numBytes) throws IOException {
+        if (numBytes > 0)
+            writeFully(ByteBuffer.allocate((int) numBytes));
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer);
+    }
+
+    private static long pad(long length) {
+        return (length + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * Finish the stream (end of stream marker) or file (footer) and close the underlying channel
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (fileFormat) {
+                if (columns == null)
+                    throw new IllegalStateException("Unable to write an arrow file without any record batches");
+                writeFooter();
+            } else {
+                writeInt(0);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.arrow;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.MultiDataSet;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ArrowBatchWriterReaderTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    @Test
+    public void testDataSetFileBackAndForth() throws Exception {
+        DataSet first = new DataSet(Nd4j.rand(5, 3), Nd4j.rand(5, 2));
+        //'f' order array: written in 'c' order
+        DataSet second = new DataSet(Nd4j.rand('f', 7, 3), Nd4j.rand(7, 2));
+
+        File f = testDir.newFile("batches.arrow");
+        try (ArrowBatchWriter writer = ArrowBatchWriter.forFile(f)) {
+            writer.write(first);
+            writer.write(second);
+        }
+
+        try (ArrowBatchReader reader = new ArrowBatchReader(f)) {
+            assertEquals(2, reader.numBatches());
+            DataSet firstRead = reader.getDataSet(0);
+            DataSet secondRead = reader.getDataSet(1);
+            assertEquals(first.getFeatures(), firstRead.getFeatures());
+            assertEquals(first.getLabels(), firstRead.getLabels());
+            assertNull(firstRead.getFeaturesMaskArray());
+            assertEquals(second.getFeatures(), secondRead.getFeatures());
+            assertEquals(second.getLabels(), secondRead.getLabels());
+        }
+    }
+
+    @Test
+    public void testMultiDataSetStreamBackAndForth() throws Exception {
+        INDArray[] features = {Nd4j.rand(new int[] {4, 3, 5}), Nd4j.linspace(1, 8, 8).reshape(4, 2)};
+        INDArray[] labels = {Nd4j.rand(new int[] {4, 2, 5})};
+        INDArray[] featuresMasks = {Nd4j.ones(4, 5), null};
+        MultiDataSet mds = new MultiDataSet(features, labels, featuresMasks, null);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ArrowBatchWriter writer = ArrowBatchWriter.forStream(baos)) {
+            writer.write(mds);
+            writer.write(mds);
+        }
+
+        List<MultiDataSet> read = ArrowBatchReader.readStream(new ByteArrayInputStream(baos.toByteArray()));
+        assertEquals(2, read.size());
+        for (MultiDataSet m : read) {
+            assertEquals(2, m.numFeatureArrays());
+            assertArrayEquals(features[0].shape(), m.getFeatures(0).shape());
+            assertEquals(features[0], m.getFeatures(0));
+            assertEquals(features[1], m.getFeatures(1));
+            assertEquals(labels[0], m.getLabels(0));
+            assertEquals(featuresMasks[0], m.getFeaturesMaskArray(0));
+            assertEquals(2, m.getFeaturesMaskArrays().length);
+            assertNull(m.getFeaturesMaskArray(1));
+            assertNull(m.getLabelsMaskArrays());
+        }
+    }
+
+    @Test
+    public void testInPlaceModificationDoesNotChangeFile() throws Exception {
+        DataSet ds = new DataSet(Nd4j.rand(5, 3), Nd4j.rand(5, 2));
+        File f = testDir.newFile("batches.arrow");
+        try (ArrowBatchWriter writer = ArrowBatchWriter.forFile(f)) {
+            writer.write(ds);
+        }
+
+        for (boolean readOnly : new boolean[] {false, true}) {
+            if (readOnly)
+                f.setReadOnly();
+            try (ArrowBatchReader reader = new ArrowBatchReader(f)) {
+                DataSet read = reader.getDataSet(0);
+                read.getFeatures().addi(1.0);
+                assertEquals(ds.getFeatures().add(1.0), read.getFeatures());
+            }
+            try (ArrowBatchReader reader = new ArrowBatchReader(f)) {
+                assertEquals(ds.getFeatures(), reader.getDataSet(0).getFeatures());
+            }
+        }
+    }
+
+    @Test
+    public void testArraysOutliveReader() throws Exception {
+        DataSet ds = new DataSet(Nd4j.linspace(1, 15, 15).reshape(5, 3), Nd4j.rand(5, 2));
+        File f = testDir.newFile("batches.arrow");
+        try (ArrowBatchWriter writer = ArrowBatchWriter.forFile(f)) {
+            writer.write(ds);
+        }
+
+        DataSet read;
+        try (ArrowBatchReader reader = new ArrowBatchReader(f)) {
+            read = reader.getDataSet(0);
+        }
+        //the mapping must stay valid while the arrays are reachable
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertEquals(ds.getFeatures(), read.getFeatures());
+        assertEquals(ds.getLabels(), read.getLabels());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMismatchedSchema() throws Exception {
+        try (ArrowBatchWriter writer = ArrowBatchWriter.forStream(new ByteArrayOutputStream())) {
+            writer.write(new DataSet(Nd4j.rand(5, 3), Nd4j.rand(5, 2)));
+            writer.write(new DataSet(Nd4j.rand(5, 4), Nd4j.rand(5, 2)));
+        }
+    }
+}
@@ -18,8 +18,12 @@ package org.nd4j;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import org.bytedeco.javacpp.BytePointer;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.factory.DataBufferFactory;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
@@ -28,9 +32,25 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 
 /**
+ * Kryo serializer for INDArrays.
+ *
+ * Dense, uncompressed arrays are written as their shape and ordering followed by
+ * the raw (native byte order) contents of their off heap buffer. The buffer contents are copied
+ * directly between off heap memory and Kryo's own input/output buffers,
+ * so no intermediate byte[] holding the whole array is created in either direction.
+ * Views are duplicated first, so that only the elements of the view are written.
+ *
+ * Compressed, sparse and empty arrays are written with {@link Nd4j#write(INDArray, DataOutputStream)}.
+ *
  * Created by agibsonccc on 5/22/16.
  */
 public class Nd4jSerializer extends Serializer<INDArray> {
+    private static final byte FORMAT_RAW = 0;
+    private static final byte FORMAT_ND4J = 1;
+    //used only when Kryo's input/output buffers can't be accessed directly
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<byte[]> transferBuffer = new ThreadLocal<>();
+
     /**
      * Writes the bytes for the object to the output.
      * <p>
@@ -43,13 +63,32 @@ public class Nd4jSerializer extends Serializer<INDArray> {
      */
     @Override
     public void write(Kryo kryo, Output output, INDArray object) {
-        DataOutputStream dos = new DataOutputStream(output);
-        try {
-            Nd4j.write(object, dos);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        if (object.isCompressed() || object.isSparse() || object.isEmpty()) {
+            output.writeByte(FORMAT_ND4J);
+            DataOutputStream dos = new DataOutputStream(output);
+            try {
+                Nd4j.write(object, dos);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            //Note: output should NOT be closed manually here - may be needed elsewhere (and closing here will cause serialization to fail)
+            return;
         }
-        //Note: output should NOT be closed manually here - may be needed elsewhere (and closing here will cause serialization to fail)
+
+        INDArray arr = object;
+        if (arr.isView() || arr.offset() != 0 || arr.data().length() != arr.length())
+            arr = arr.dup(arr.ordering());
+
+        DataBuffer data = arr.data();
+        long[] shape = arr.shape();
+        output.writeByte(FORMAT_RAW);
+        output.writeByte(data.dataType().ordinal());
+        output.writeChar(arr.ordering());
+        output.writeInt(shape.length);
+        for (long l : shape)
+            output.writeLong(l);
+
+        writeRaw(output, new BytePointer(data.addressPointer()), arr.length() * data.getElementSize());
     }
 
     /**
@@ -69,15 +108,112 @@ public class Nd4jSerializer extends Serializer<INDArray> {
      */
     @Override
     public INDArray read(Kryo kryo, Input input, Class<INDArray> type) {
-        DataInputStream dis = new DataInputStream(input);
-        try {
-            return Nd4j.read(dis);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        byte format = input.readByte();
+        if (format == FORMAT_ND4J) {
+            DataInputStream dis = new DataInputStream(input);
+            try {
+                return Nd4j.read(dis);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            //Note: input should NOT be closed manually here - may be needed elsewhere (and closing here will cause serialization to fail)
+        } else if (format != FORMAT_RAW) {
+            throw new IllegalStateException("Unknown INDArray serialization format: " + format);
+        }
+
+        DataBuffer.Type dataType = DataBuffer.Type.values()[input.readByte()];
+        char ordering = input.readChar();
+        long[] shape = new long[input.readInt()];
+        long length = 1;
+        for (int i = 0; i < shape.length; i++) {
+            shape[i] = input.readLong();
+            length *= shape[i];
+        }
+
+        DataBuffer data = createBuffer(dataType, length);
+        readRaw(input, new BytePointer(data.addressPointer()), length * data.getElementSize());
+        return Nd4j.create(data, shape, Nd4j.getStrides(shape, ordering), 0, ordering);
+    }
+
+    private static DataBuffer createBuffer(DataBuffer.Type dataType, long length) {
+        DataBufferFactory factory = Nd4j.getDataBufferFactory();
+        switch (dataType) {
+            case DOUBLE:
+                return factory.createDouble(length, false);
+            case FLOAT:
+                return factory.createFloat(length, false);
+            case HALF:
+                return factory.createHalf(length, false);
+            case INT:
+                return factory.createInt(length, false);
+            case LONG:
+                return factory.createLong(length, false);
+            default:
+                throw new IllegalStateException("Unable to deserialize array with data type " + dataType);
         }
-        //Note: input should NOT be closed manually here - may be needed elsewhere (and closing here will cause serialization to fail)
     }
 
+    /**
+     * Copy numBytes from off heap memory straight in to the output's buffer,
+     * flushing the output whenever the buffer is full
+     */
+    private static void writeRaw(Output output, BytePointer src, long numBytes) {
+        byte[] buffer = output instanceof ByteBufferOutput ? null : output.getBuffer();
+        long offset = 0;
+        while (offset < numBytes) {
+            int space = buffer == null ? 0 : buffer.length - output.position();
+            if (space == 0 && buffer != null) {
+                output.flush();
+                space = buffer.length - output.position();
+            }
+
+            if (space > 0) {
+                int n = (int) Math.min(space, numBytes - offset);
+                src.position(offset).get(buffer, output.position(), n);
+                output.setPosition(output.position() + n);
+                offset += n;
+            } else {
+                //in memory output without a stream (or a byte buffer output): let kryo grow/manage the buffer
+                byte[] transfer = getTransferBuffer();
+                int n = (int) Math.min(transfer.length, numBytes - offset);
+                src.position(offset).get(transfer, 0, n);
+                output.writeBytes(transfer, 0, n);
+                offset += n;
+                buffer = output instanceof ByteBufferOutput ? null : output.getBuffer();
+            }
+        }
+    }
 
+    /**
+     * Copy numBytes from the input straight in to off heap memory,
+     * consuming whatever is already buffered in the input first
+     */
+    private static void readRaw(Input input, BytePointer dst, long numBytes) {
+        long offset = 0;
+        while (offset < numBytes) {
+            byte[] buffer = input.getBuffer();
+            int available = buffer == null ? 0 : input.limit() - input.position();
+            if (available > 0) {
+                int n = (int) Math.min(available, numBytes - offset);
+                dst.position(offset).put(buffer, input.position(), n);
+                input.setPosition(input.position() + n);
+                offset += n;
+            } else {
+                byte[] transfer = getTransferBuffer();
+                int n = (int) Math.min(transfer.length, numBytes - offset);
+                input.readBytes(transfer, 0, n);
+                dst.position(offset).put(transfer, 0, n);
+                offset += n;
+            }
+        }
+    }
 
+    private static byte[] getTransferBuffer() {
+        byte[] transfer = transferBuffer.get();
+        if (transfer == null) {
+            transfer = new byte[TRANSFER_BUFFER_SIZE];
+            transferBuffer.set(transfer);
+        }
+        return transfer;
+    }
 }
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.dataset;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.nd4j.Nd4jSerializer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Kryo serializer for {@link DataSet}.
+ * Features, labels and mask arrays are written with {@link Nd4jSerializer}, so the array contents
+ * are copied directly from/to off heap memory. Label names, column names and example meta data
+ * are written with Kryo's default serializers.
+ */
+public class DataSetSerializer extends Serializer<DataSet> {
+    private final Nd4jSerializer arraySerializer = new Nd4jSerializer();
+
+    @Override
+    public void write(Kryo kryo, Output output, DataSet ds) {
+        writeArray(kryo, output, ds.getFeatures());
+        writeArray(kryo, output, ds.getLabels());
+        writeArray(kryo, output, ds.getFeaturesMaskArray());
+        writeArray(kryo, output, ds.getLabelsMaskArray());
+        kryo.writeClassAndObject(output, ds.getLabelNamesList());
+        kryo.writeClassAndObject(output, ds.getColumnNames());
+        kryo.writeClassAndObject(output, ds.getExampleMetaData());
+    }
+
+    @Override
+    public DataSet read(Kryo kryo, Input input, Class<DataSet> type) {
+        INDArray features = readArray(kryo, input);
+        INDArray labels = readArray(kryo, input);
+        INDArray featuresMask = readArray(kryo, input);
+        INDArray labelsMask = readArray(kryo, input);
+        DataSet ds = new DataSet(features, labels, featuresMask, labelsMask);
+        List<String> labelNames = (List<String>) kryo.readClassAndObject(input);
+        List<String> columnNames = (List<String>) kryo.readClassAndObject(input);
+        List<Serializable> exampleMetaData = (List<Serializable>) kryo.readClassAndObject(input);
+        if (labelNames != null)
+            ds.setLabelNames(labelNames);
+        if (columnNames != null)
+            ds.setColumnNames(columnNames);
+        if (exampleMetaData != null)
+            ds.setExampleMetaData(exampleMetaData);
+        return ds;
+    }
+
+    private void writeArray(Kryo kryo, Output output, INDArray arr) {
+        output.writeBoolean(arr != null);
+        if (arr != null)
+            arraySerializer.write(kryo, output, arr);
+    }
+
+    private INDArray readArray(Kryo kryo, Input input) {
+        return input.readBoolean() ? arraySerializer.read(kryo, input, INDArray.class) : null;
+    }
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.dataset;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.nd4j.Nd4jSerializer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.MultiDataSet;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Kryo serializer for {@link MultiDataSet}.
+ * All feature, label and mask arrays are written with {@link Nd4jSerializer}, so the array contents
+ * are copied directly from/to off heap memory. Example meta data is written with Kryo's default serializers.
+ */
+public class MultiDataSetSerializer extends Serializer<MultiDataSet> {
+    private final Nd4jSerializer arraySerializer = new Nd4jSerializer();
+
+    @Override
+    public void write(Kryo kryo, Output output, MultiDataSet mds) {
+        writeArrays(kryo, output, mds.getFeatures());
+        writeArrays(kryo, output, mds.getLabels());
+        writeArrays(kryo, output, mds.getFeaturesMaskArrays());
+        writeArrays(kryo, output, mds.getLabelsMaskArrays());
+        kryo.writeClassAndObject(output, mds.getExampleMetaData());
+    }
+
+    @Override
+    public MultiDataSet read(Kryo kryo, Input input, Class<MultiDataSet> type) {
+        INDArray[] features = readArrays(kryo, input);
+        INDArray[] labels = readArrays(kryo, input);
+        INDArray[] featuresMasks = readArrays(kryo, input);
+        INDArray[] labelsMasks = readArrays(kryo, input);
+        MultiDataSet mds = new MultiDataSet(features, labels, featuresMasks, labelsMasks);
+        List<Serializable> exampleMetaData = (List<Serializable>) kryo.readClassAndObject(input);
+        if (exampleMetaData != null)
+            mds.setExampleMetaData(exampleMetaData);
+        return mds;
+    }
+
+    private void writeArrays(Kryo kryo, Output output, INDArray[] arrays) {
+        //-1 length: null array of arrays
+        output.writeInt(arrays == null ? -1 : arrays.length);
+        if (arrays == null)
+            return;
+        for (INDArray arr : arrays) {
+            output.writeBoolean(arr != null);
+            if (arr != null)
+                arraySerializer.write(kryo, output, arr);
+        }
+    }
+
+    private INDArray[] readArrays(Kryo kryo, Input input) {
+        int length = input.readInt();
+        if (length < 0)
+            return null;
+        INDArray[] arrays = new INDArray[length];
+        for (int i = 0; i < length; i++) {
+            if (input.readBoolean())
+                arrays[i] = arraySerializer.read(kryo, input, INDArray.class);
+        }
+        return arrays;
+    }
+}
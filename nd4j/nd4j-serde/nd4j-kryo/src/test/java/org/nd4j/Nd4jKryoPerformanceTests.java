@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.spark.SparkConf;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.Function;
+import org.apache.spark.serializer.KryoRegistrator;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spark local shuffle throughput for INDArrays, comparing {@link Nd4jRegistrator}
+ * with Kryo serialization via {@link Nd4j#write(INDArray, DataOutputStream)}
+ */
+@Slf4j
+@Ignore
+public class Nd4jKryoPerformanceTests {
+
+    @Test
+    public void testShuffleThroughput() {
+        int numArrays = 64;
+        int arrayLength = 4_000_000;
+        int iterations = 5;
+
+        for (String registrator : new String[] {LegacyRegistrator.class.getName(), Nd4jRegistrator.class.getName()}) {
+            SparkConf sparkConf = new SparkConf();
+            sparkConf.setMaster("local[*]");
+            sparkConf.set("spark.driver.host", "localhost");
+            sparkConf.setAppName("Nd4jKryoPerformanceTests");
+            sparkConf.set("spark.serializer", "org.apache.spark.serializer.KryoSerializer");
+            sparkConf.set("spark.kryo.registrator", registrator);
+            sparkConf.set("spark.kryoserializer.buffer.max", "1g");
+
+            try (JavaSparkContext sc = new JavaSparkContext(sparkConf)) {
+                List<Integer> seeds = new ArrayList<>();
+                for (int i = 0; i < numArrays; i++)
+                    seeds.add(i);
+                JavaRDD<INDArray> rdd = sc.parallelize(seeds).map(new CreateArrayFn(arrayLength)).cache();
+                rdd.count();
+
+                long bytes = (long) numArrays * arrayLength * 4;
+                for (int i = 0; i < iterations; i++) {
+                    long start = System.currentTimeMillis();
+                    rdd.repartition(8).count();
+                    long time = System.currentTimeMillis() - start;
+                    log.info("{}: shuffled {} MB in {} ms ({} MB/s)", registrator, bytes / (1024 * 1024), time,
+                                    (bytes / (1024.0 * 1024.0)) / (time / 1000.0));
+                }
+            }
+        }
+    }
+
+    public static class CreateArrayFn implements Function<Integer, INDArray> {
+        private final int length;
+
+        public CreateArrayFn(int length) {
+            this.length = length;
+        }
+
+        @Override
+        public INDArray call(Integer seed) throws Exception {
+            return Nd4j.rand(new int[] {1, length}, seed);
+        }
+    }
+
+    public static class LegacyRegistrator implements KryoRegistrator {
+        @Override
+        public void registerClasses(Kryo kryo) {
+            kryo.register(Nd4j.getBackend().getNDArrayClass(), new Serializer<INDArray>() {
+                @Override
+                public void write(Kryo kryo, Output output, INDArray object) {
+                    try {
+                        Nd4j.write(object, new DataOutputStream(output));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+
+                @Override
+                public INDArray read(Kryo kryo, Input input, Class<INDArray> type) {
+                    try {
+                        return Nd4j.read(new DataInputStream(input));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+    }
+}
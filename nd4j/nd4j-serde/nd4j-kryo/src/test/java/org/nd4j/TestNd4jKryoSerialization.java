@@ -27,12 +27,16 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.MultiDataSet;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.primitives.*;
 import scala.Tuple2;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
@@ -107,6 +111,30 @@ public class TestNd4jKryoSerialization {
         }
     }
 
+    @Test
+    public void testSerializationArraysAndDataSets() {
+        SerializerInstance si = sc.env().serializer().newInstance();
+
+        INDArray c = Nd4j.rand(new int[] {3, 4, 5});
+        INDArray f = Nd4j.rand(new int[] {3, 4, 5}, 'f');
+        INDArray view = Nd4j.linspace(1, 100, 100).reshape(10, 10).get(NDArrayIndex.interval(2, 5),
+                        NDArrayIndex.interval(1, 8));
+        INDArray large = Nd4j.rand(1000, 1000);
+        for (INDArray arr : new INDArray[] {c, f, view, large, Nd4j.scalar(3.0)}) {
+            INDArray out = si.deserialize(si.serialize(arr, null), null);
+            assertEquals(arr, out);
+            assertEquals(arr.ordering(), out.ordering());
+        }
+
+        DataSet ds = new DataSet(Nd4j.rand(5, 10), Nd4j.rand(5, 3), null, Nd4j.ones(5, 1));
+        ds.setLabelNames(Arrays.asList("a", "b", "c"));
+        testSerialization(ds, si);
+
+        MultiDataSet mds = new MultiDataSet(new INDArray[] {Nd4j.rand(5, 10), Nd4j.rand(new int[] {5, 3, 7})},
+                        new INDArray[] {Nd4j.rand(5, 3)}, null, new INDArray[] {null});
+        testSerialization(mds, si);
+    }
+
     private <T> void testSerialization(T in, SerializerInstance si) {
         ByteBuffer bb = si.serialize(in, null);
         T deserialized = (T)si.deserialize(bb, null);